@@ -0,0 +1,6 @@
+-- Lease on an environment, held by the job that is running on it.
+-- Conflicting jobs wait or fail fast until the lease is released or expires.
+
+ALTER TABLE `ENVIRONMENT`
+  ADD COLUMN `ENV_LEASE_OWNER` varchar(64) DEFAULT NULL,
+  ADD COLUMN `ENV_LEASE_TIME` datetime DEFAULT NULL;
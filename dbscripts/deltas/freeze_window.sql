@@ -0,0 +1,17 @@
+CREATE TABLE `FREEZE_WINDOW` (
+  `FRZWIN_ID` bigint(20) NOT NULL AUTO_INCREMENT,
+  `FRZWIN_BUDGET_EXCEEDED` bit(1) NOT NULL,
+  `FRZWIN_BUDGET_SECONDS` bigint(20) NOT NULL,
+  `FRZWIN_ENV_NAME` varchar(32) NOT NULL,
+  `FRZWIN_FREEZE_REQUESTED` datetime DEFAULT NULL,
+  `FRZWIN_FROZEN` datetime DEFAULT NULL,
+  `FRZWIN_NORMAL` datetime DEFAULT NULL,
+  `FRZWIN_SNAPSHOT_AVAILABLE` datetime DEFAULT NULL,
+  `FRZWIN_SNAPSHOT_STARTED` datetime DEFAULT NULL,
+  `FRZWIN_THAW_REQUESTED` datetime DEFAULT NULL,
+  `FRZWIN_WINDOW_MILLIS` bigint(20) NOT NULL,
+  `FK_JOBHIST_ID` bigint(20) NOT NULL,
+  PRIMARY KEY (`FRZWIN_ID`),
+  KEY `FK_FRZWIN_JOBHIST` (`FK_JOBHIST_ID`),
+  CONSTRAINT `FK_FRZWIN_JOBHIST` FOREIGN KEY (`FK_JOBHIST_ID`) REFERENCES `JOB_HISTORY` (`JOBHIST_ID`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
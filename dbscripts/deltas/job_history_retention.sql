@@ -0,0 +1,56 @@
+-- Indexes for the last-relevant-job lookup, and for loading the task histories of a job in position order.
+
+ALTER TABLE `JOB_HISTORY`
+  ADD KEY `IDX_JOBHIST_NAME_ENVS_START` (`JOBHIST_NAME`,`JOBHIST_ENV1`,`JOBHIST_ENV2`,`JOBHIST_START_TIME`);
+
+ALTER TABLE `TASK_HISTORY`
+  ADD KEY `IDX_TASKHIST_JOBHIST_POSITION` (`FK_JOBHIST_ID`,`TASKHIST_POSITION`);
+
+-- Archive tables for old history, moved there by the daemon (see bluegreen.history.retentionDays).
+-- Same columns and ids as the live tables, so archived job, task and freeze window rows still join.
+
+CREATE TABLE `JOB_HISTORY_ARCHIVE` (
+  `JOBHIST_ID` bigint(20) NOT NULL,
+  `JOBHIST_CMDLINE` longtext NOT NULL,
+  `JOBHIST_END_TIME` datetime DEFAULT NULL,
+  `JOBHIST_ENV1` varchar(32) NOT NULL,
+  `JOBHIST_ENV2` varchar(32) DEFAULT NULL,
+  `JOBHIST_NAME` varchar(64) NOT NULL,
+  `JOBHIST_START_TIME` datetime NOT NULL,
+  `JOBHIST_STATUS` varchar(20) NOT NULL,
+  PRIMARY KEY (`JOBHIST_ID`),
+  KEY `IDX_JOBHISTARC_NAME_ENVS_START` (`JOBHIST_NAME`,`JOBHIST_ENV1`,`JOBHIST_ENV2`,`JOBHIST_START_TIME`),
+  KEY `IDX_JOBHISTARC_START` (`JOBHIST_START_TIME`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
+
+CREATE TABLE `TASK_HISTORY_ARCHIVE` (
+  `TASKHIST_ID` bigint(20) NOT NULL,
+  `TASKHIST_END_TIME` datetime DEFAULT NULL,
+  `TASKHIST_POSITION` int(11) NOT NULL,
+  `TASKHIST_START_TIME` datetime NOT NULL,
+  `TASKHIST_STATUS` varchar(20) NOT NULL,
+  `TASKHIST_NAME` varchar(64) NOT NULL,
+  `TASKHIST_EXIT_VALUE` int(11) DEFAULT NULL,
+  `TASKHIST_PROCESS_MILLIS` bigint(20) DEFAULT NULL,
+  `TASKHIST_PROCESS_CPU_MILLIS` bigint(20) DEFAULT NULL,
+  `FK_JOBHIST_ID` bigint(20) NOT NULL,
+  PRIMARY KEY (`TASKHIST_ID`),
+  KEY `IDX_TASKHISTARC_JOBHIST_POSITION` (`FK_JOBHIST_ID`,`TASKHIST_POSITION`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
+
+CREATE TABLE `FREEZE_WINDOW_ARCHIVE` (
+  `FRZWIN_ID` bigint(20) NOT NULL,
+  `FRZWIN_BUDGET_EXCEEDED` bit(1) NOT NULL,
+  `FRZWIN_BUDGET_SECONDS` bigint(20) NOT NULL,
+  `FRZWIN_ENV_NAME` varchar(32) NOT NULL,
+  `FRZWIN_FREEZE_REQUESTED` datetime DEFAULT NULL,
+  `FRZWIN_FROZEN` datetime DEFAULT NULL,
+  `FRZWIN_NORMAL` datetime DEFAULT NULL,
+  `FRZWIN_SNAPSHOT_AVAILABLE` datetime DEFAULT NULL,
+  `FRZWIN_SNAPSHOT_STARTED` datetime DEFAULT NULL,
+  `FRZWIN_THAW_REQUESTED` datetime DEFAULT NULL,
+  `FRZWIN_WINDOW_MILLIS` bigint(20) NOT NULL,
+  `FK_JOBHIST_ID` bigint(20) NOT NULL,
+  PRIMARY KEY (`FRZWIN_ID`),
+  KEY `IDX_FRZWINARC_JOBHIST` (`FK_JOBHIST_ID`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
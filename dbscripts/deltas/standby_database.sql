@@ -0,0 +1,13 @@
+CREATE TABLE `STANDBY_DATABASE` (
+  `STANDBY_ID` bigint(20) NOT NULL AUTO_INCREMENT,
+  `STANDBY_ENV_NAME` varchar(32) NOT NULL,
+  `STANDBY_INST_NAME` varchar(64) NOT NULL,
+  `STANDBY_LEASE_OWNER` varchar(64) DEFAULT NULL,
+  `STANDBY_LEASE_TIME` datetime DEFAULT NULL,
+  `STANDBY_LOGICAL_NAME` varchar(32) NOT NULL,
+  `STANDBY_SNAPSHOT_ID` varchar(255) NOT NULL,
+  `STANDBY_SNAPSHOT_TIME` datetime NOT NULL,
+  `STANDBY_STATUS` varchar(20) NOT NULL,
+  PRIMARY KEY (`STANDBY_ID`),
+  KEY `IDX_STANDBY_ENV_LOGICAL_STATUS` (`STANDBY_ENV_NAME`,`STANDBY_LOGICAL_NAME`,`STANDBY_STATUS`,`STANDBY_SNAPSHOT_TIME`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
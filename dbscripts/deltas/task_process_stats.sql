@@ -0,0 +1,7 @@
+-- Exit value and timings of the local command run by a shell task.
+-- Null for tasks that run no local command.
+
+ALTER TABLE `TASK_HISTORY`
+  ADD COLUMN `TASKHIST_EXIT_VALUE` int(11) DEFAULT NULL,
+  ADD COLUMN `TASKHIST_PROCESS_MILLIS` bigint(20) DEFAULT NULL,
+  ADD COLUMN `TASKHIST_PROCESS_CPU_MILLIS` bigint(20) DEFAULT NULL;
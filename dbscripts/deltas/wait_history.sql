@@ -0,0 +1,12 @@
+CREATE TABLE `WAIT_HISTORY` (
+  `WAITHIST_ID` bigint(20) NOT NULL AUTO_INCREMENT,
+  `WAITHIST_DETECTION_LAG_MILLIS` bigint(20) NOT NULL,
+  `WAITHIST_DONE` bit(1) NOT NULL,
+  `WAITHIST_ELAPSED_MILLIS` bigint(20) NOT NULL,
+  `WAITHIST_NUM_CHECKS` int(11) NOT NULL,
+  `WAITHIST_OPERATION` varchar(64) NOT NULL,
+  `WAITHIST_POLICY` varchar(20) NOT NULL,
+  `WAITHIST_START_TIME` datetime NOT NULL,
+  PRIMARY KEY (`WAITHIST_ID`),
+  KEY `IDX_WAITHIST_OPERATION_START` (`WAITHIST_OPERATION`,`WAITHIST_DONE`,`WAITHIST_START_TIME`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
@@ -59,6 +59,8 @@ DROP TABLE IF EXISTS `ENVIRONMENT`;
 CREATE TABLE `ENVIRONMENT` (
   `ENV_ID` bigint(20) NOT NULL AUTO_INCREMENT,
   `ENV_NAME` varchar(32) NOT NULL,
+  `ENV_LEASE_OWNER` varchar(64) DEFAULT NULL,
+  `ENV_LEASE_TIME` datetime DEFAULT NULL,
   PRIMARY KEY (`ENV_ID`),
   UNIQUE KEY `UK_pt48ej5vl68yt0wv93r3tctrw` (`ENV_NAME`)
 ) ENGINE=InnoDB DEFAULT CHARSET=latin1;
@@ -80,7 +82,8 @@ CREATE TABLE `JOB_HISTORY` (
   `JOBHIST_NAME` varchar(64) NOT NULL,
   `JOBHIST_START_TIME` datetime NOT NULL,
   `JOBHIST_STATUS` varchar(20) NOT NULL,
-  PRIMARY KEY (`JOBHIST_ID`)
+  PRIMARY KEY (`JOBHIST_ID`),
+  KEY `IDX_JOBHIST_NAME_ENVS_START` (`JOBHIST_NAME`,`JOBHIST_ENV1`,`JOBHIST_ENV2`,`JOBHIST_START_TIME`)
 ) ENGINE=InnoDB DEFAULT CHARSET=latin1;
 /*!40101 SET character_set_client = @saved_cs_client */;
 
@@ -138,12 +141,155 @@ CREATE TABLE `TASK_HISTORY` (
   `TASKHIST_START_TIME` datetime NOT NULL,
   `TASKHIST_STATUS` varchar(20) NOT NULL,
   `TASKHIST_NAME` varchar(64) NOT NULL,
+  `TASKHIST_EXIT_VALUE` int(11) DEFAULT NULL,
+  `TASKHIST_PROCESS_MILLIS` bigint(20) DEFAULT NULL,
+  `TASKHIST_PROCESS_CPU_MILLIS` bigint(20) DEFAULT NULL,
   `FK_JOBHIST_ID` bigint(20) NOT NULL,
   PRIMARY KEY (`TASKHIST_ID`),
   KEY `FK_h8v90lry1jla3fe4t6qo6w854` (`FK_JOBHIST_ID`),
+  KEY `IDX_TASKHIST_JOBHIST_POSITION` (`FK_JOBHIST_ID`,`TASKHIST_POSITION`),
   CONSTRAINT `FK_h8v90lry1jla3fe4t6qo6w854` FOREIGN KEY (`FK_JOBHIST_ID`) REFERENCES `JOB_HISTORY` (`JOBHIST_ID`)
 ) ENGINE=InnoDB DEFAULT CHARSET=latin1;
 /*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Table structure for table `WAIT_HISTORY`
+--
+
+DROP TABLE IF EXISTS `WAIT_HISTORY`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!40101 SET character_set_client = utf8 */;
+CREATE TABLE `WAIT_HISTORY` (
+  `WAITHIST_ID` bigint(20) NOT NULL AUTO_INCREMENT,
+  `WAITHIST_DETECTION_LAG_MILLIS` bigint(20) NOT NULL,
+  `WAITHIST_DONE` bit(1) NOT NULL,
+  `WAITHIST_ELAPSED_MILLIS` bigint(20) NOT NULL,
+  `WAITHIST_NUM_CHECKS` int(11) NOT NULL,
+  `WAITHIST_OPERATION` varchar(64) NOT NULL,
+  `WAITHIST_POLICY` varchar(20) NOT NULL,
+  `WAITHIST_START_TIME` datetime NOT NULL,
+  PRIMARY KEY (`WAITHIST_ID`),
+  KEY `IDX_WAITHIST_OPERATION_START` (`WAITHIST_OPERATION`,`WAITHIST_DONE`,`WAITHIST_START_TIME`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Table structure for table `STANDBY_DATABASE`
+--
+
+DROP TABLE IF EXISTS `STANDBY_DATABASE`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!40101 SET character_set_client = utf8 */;
+CREATE TABLE `STANDBY_DATABASE` (
+  `STANDBY_ID` bigint(20) NOT NULL AUTO_INCREMENT,
+  `STANDBY_ENV_NAME` varchar(32) NOT NULL,
+  `STANDBY_INST_NAME` varchar(64) NOT NULL,
+  `STANDBY_LEASE_OWNER` varchar(64) DEFAULT NULL,
+  `STANDBY_LEASE_TIME` datetime DEFAULT NULL,
+  `STANDBY_LOGICAL_NAME` varchar(32) NOT NULL,
+  `STANDBY_SNAPSHOT_ID` varchar(255) NOT NULL,
+  `STANDBY_SNAPSHOT_TIME` datetime NOT NULL,
+  `STANDBY_STATUS` varchar(20) NOT NULL,
+  PRIMARY KEY (`STANDBY_ID`),
+  KEY `IDX_STANDBY_ENV_LOGICAL_STATUS` (`STANDBY_ENV_NAME`,`STANDBY_LOGICAL_NAME`,`STANDBY_STATUS`,`STANDBY_SNAPSHOT_TIME`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Table structure for table `FREEZE_WINDOW`
+--
+
+DROP TABLE IF EXISTS `FREEZE_WINDOW`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!40101 SET character_set_client = utf8 */;
+CREATE TABLE `FREEZE_WINDOW` (
+  `FRZWIN_ID` bigint(20) NOT NULL AUTO_INCREMENT,
+  `FRZWIN_BUDGET_EXCEEDED` bit(1) NOT NULL,
+  `FRZWIN_BUDGET_SECONDS` bigint(20) NOT NULL,
+  `FRZWIN_ENV_NAME` varchar(32) NOT NULL,
+  `FRZWIN_FREEZE_REQUESTED` datetime DEFAULT NULL,
+  `FRZWIN_FROZEN` datetime DEFAULT NULL,
+  `FRZWIN_NORMAL` datetime DEFAULT NULL,
+  `FRZWIN_SNAPSHOT_AVAILABLE` datetime DEFAULT NULL,
+  `FRZWIN_SNAPSHOT_STARTED` datetime DEFAULT NULL,
+  `FRZWIN_THAW_REQUESTED` datetime DEFAULT NULL,
+  `FRZWIN_WINDOW_MILLIS` bigint(20) NOT NULL,
+  `FK_JOBHIST_ID` bigint(20) NOT NULL,
+  PRIMARY KEY (`FRZWIN_ID`),
+  KEY `FK_FRZWIN_JOBHIST` (`FK_JOBHIST_ID`),
+  CONSTRAINT `FK_FRZWIN_JOBHIST` FOREIGN KEY (`FK_JOBHIST_ID`) REFERENCES `JOB_HISTORY` (`JOBHIST_ID`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Table structure for table `JOB_HISTORY_ARCHIVE`
+--
+
+DROP TABLE IF EXISTS `JOB_HISTORY_ARCHIVE`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!40101 SET character_set_client = utf8 */;
+CREATE TABLE `JOB_HISTORY_ARCHIVE` (
+  `JOBHIST_ID` bigint(20) NOT NULL,
+  `JOBHIST_CMDLINE` longtext NOT NULL,
+  `JOBHIST_END_TIME` datetime DEFAULT NULL,
+  `JOBHIST_ENV1` varchar(32) NOT NULL,
+  `JOBHIST_ENV2` varchar(32) DEFAULT NULL,
+  `JOBHIST_NAME` varchar(64) NOT NULL,
+  `JOBHIST_START_TIME` datetime NOT NULL,
+  `JOBHIST_STATUS` varchar(20) NOT NULL,
+  PRIMARY KEY (`JOBHIST_ID`),
+  KEY `IDX_JOBHISTARC_NAME_ENVS_START` (`JOBHIST_NAME`,`JOBHIST_ENV1`,`JOBHIST_ENV2`,`JOBHIST_START_TIME`),
+  KEY `IDX_JOBHISTARC_START` (`JOBHIST_START_TIME`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Table structure for table `TASK_HISTORY_ARCHIVE`
+--
+
+DROP TABLE IF EXISTS `TASK_HISTORY_ARCHIVE`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!40101 SET character_set_client = utf8 */;
+CREATE TABLE `TASK_HISTORY_ARCHIVE` (
+  `TASKHIST_ID` bigint(20) NOT NULL,
+  `TASKHIST_END_TIME` datetime DEFAULT NULL,
+  `TASKHIST_POSITION` int(11) NOT NULL,
+  `TASKHIST_START_TIME` datetime NOT NULL,
+  `TASKHIST_STATUS` varchar(20) NOT NULL,
+  `TASKHIST_NAME` varchar(64) NOT NULL,
+  `TASKHIST_EXIT_VALUE` int(11) DEFAULT NULL,
+  `TASKHIST_PROCESS_MILLIS` bigint(20) DEFAULT NULL,
+  `TASKHIST_PROCESS_CPU_MILLIS` bigint(20) DEFAULT NULL,
+  `FK_JOBHIST_ID` bigint(20) NOT NULL,
+  PRIMARY KEY (`TASKHIST_ID`),
+  KEY `IDX_TASKHISTARC_JOBHIST_POSITION` (`FK_JOBHIST_ID`,`TASKHIST_POSITION`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Table structure for table `FREEZE_WINDOW_ARCHIVE`
+--
+
+DROP TABLE IF EXISTS `FREEZE_WINDOW_ARCHIVE`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!40101 SET character_set_client = utf8 */;
+CREATE TABLE `FREEZE_WINDOW_ARCHIVE` (
+  `FRZWIN_ID` bigint(20) NOT NULL,
+  `FRZWIN_BUDGET_EXCEEDED` bit(1) NOT NULL,
+  `FRZWIN_BUDGET_SECONDS` bigint(20) NOT NULL,
+  `FRZWIN_ENV_NAME` varchar(32) NOT NULL,
+  `FRZWIN_FREEZE_REQUESTED` datetime DEFAULT NULL,
+  `FRZWIN_FROZEN` datetime DEFAULT NULL,
+  `FRZWIN_NORMAL` datetime DEFAULT NULL,
+  `FRZWIN_SNAPSHOT_AVAILABLE` datetime DEFAULT NULL,
+  `FRZWIN_SNAPSHOT_STARTED` datetime DEFAULT NULL,
+  `FRZWIN_THAW_REQUESTED` datetime DEFAULT NULL,
+  `FRZWIN_WINDOW_MILLIS` bigint(20) NOT NULL,
+  `FK_JOBHIST_ID` bigint(20) NOT NULL,
+  PRIMARY KEY (`FRZWIN_ID`),
+  KEY `IDX_FRZWINARC_JOBHIST` (`FK_JOBHIST_ID`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
+/*!40101 SET character_set_client = @saved_cs_client */;
 /*!40103 SET TIME_ZONE=@OLD_TIME_ZONE */;
 
 /*!40101 SET SQL_MODE=@OLD_SQL_MODE */;
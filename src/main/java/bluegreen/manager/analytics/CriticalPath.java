@@ -0,0 +1,72 @@
+package bluegreen.manager.analytics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import bluegreen.manager.model.domain.JobHistory;
+import bluegreen.manager.model.domain.TaskHistory;
+
+/**
+ * Finds the critical path of a job run from its task history timings: the chain of tasks that decided when the job
+ * finished.
+ * <p/>
+ * Task history does not record which tasks a task waited for, so the chain is inferred.  Starting from the task that
+ * finished last, each step goes back to the earlier-positioned task that finished last before it started.  (A
+ * prerequisite always has a lower position, see TaskGraph.)  For a job that runs its tasks in sequence that is every
+ * task; for a job with concurrent tasks it leaves out the tasks that finished early enough not to hold anything up.
+ */
+public class CriticalPath
+{
+  private CriticalPath()
+  {
+    //Do not instantiate me
+  }
+
+  /**
+   * Returns the tasks on the critical path, in order.  Tasks without start and end times are ignored.
+   */
+  public static List<TaskHistory> find(JobHistory jobHistory)
+  {
+    List<TaskHistory> finished = new ArrayList<TaskHistory>();
+    if (jobHistory.getTaskHistories() != null)
+    {
+      for (TaskHistory taskHistory : jobHistory.getTaskHistories())
+      {
+        if (taskHistory.getStartTime() != null && taskHistory.getEndTime() != null)
+        {
+          finished.add(taskHistory);
+        }
+      }
+    }
+    List<TaskHistory> path = new ArrayList<TaskHistory>();
+    TaskHistory current = findLastFinished(finished, Integer.MAX_VALUE, Long.MAX_VALUE);
+    while (current != null)
+    {
+      path.add(current);
+      current = findLastFinished(finished, current.getPosition(), current.getStartTime().getTime());
+    }
+    Collections.reverse(path);
+    return path;
+  }
+
+  /**
+   * Returns the task positioned before maxPosition that finished last, no later than maxEndTime.  Ties go to the
+   * higher position.  Null if none.
+   */
+  private static TaskHistory findLastFinished(List<TaskHistory> finished, int maxPosition, long maxEndTime)
+  {
+    TaskHistory last = null;
+    for (TaskHistory taskHistory : finished)
+    {
+      long endTime = taskHistory.getEndTime().getTime();
+      if (taskHistory.getPosition() < maxPosition && endTime <= maxEndTime
+          && (last == null || endTime > last.getEndTime().getTime()
+          || (endTime == last.getEndTime().getTime() && taskHistory.getPosition() > last.getPosition())))
+      {
+        last = taskHistory;
+      }
+    }
+    return last;
+  }
+}
@@ -0,0 +1,210 @@
+package bluegreen.manager.analytics;
+
+import java.io.PrintStream;
+import java.sql.Timestamp;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import bluegreen.manager.main.ArgumentParser;
+import bluegreen.manager.main.CmdlineException;
+import bluegreen.manager.main.ReturnCode;
+import bluegreen.manager.model.domain.JobHistory;
+import bluegreen.manager.model.tx.JobHistoryTx;
+import bluegreen.manager.utils.NowFactory;
+
+/**
+ * Analyzes job and task durations over the job history, archived and live: see HistoryReport.
+ * <p/>
+ * Streams over the history a page of task histories at a time, each page in its own short read, and keeps nothing of
+ * a run once it is counted.  So memory stays bounded however large the history tables are.
+ * <p/>
+ * Also serves the "historyReport" command, which prints the report.
+ */
+@Lazy
+@Component
+public class HistoryAnalyzer
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(HistoryAnalyzer.class);
+
+  public static final String COMMAND_HISTORY_REPORT = "historyReport";
+  public static final String PARAMNAME_JOB_NAME = "jobName";
+  public static final String PARAMNAME_ENV = "env";
+  public static final String PARAMNAME_DAYS = "days";
+  public static final String PARAMNAME_PERIOD_DAYS = "periodDays";
+  public static final String PARAMNAME_RECENT_RUNS = "recentRuns";
+
+  private static final int DEFAULT_DAYS = 365;
+  private static final int DEFAULT_PERIOD_DAYS = 30;
+  private static final int DEFAULT_RECENT_RUNS = 5;
+  private static final int DEFAULT_PAGE_SIZE = 1000;
+  private static final int DEFAULT_REGRESSION_PERCENT = 25;
+  private static final long DEFAULT_MIN_SAMPLES = 3L;
+  private static final long MILLISECONDS_PER_DAY = 1000L * 60L * 60L * 24L;
+
+  @Autowired
+  private NowFactory nowFactory;
+
+  @Autowired
+  private JobHistoryTx jobHistoryTx;
+
+  @Autowired
+  private ArgumentParser argumentParser;
+
+  @Value("${bluegreen.analytics.pageSize:" + DEFAULT_PAGE_SIZE + "}")
+  private int pageSize = DEFAULT_PAGE_SIZE;
+
+  @Value("${bluegreen.analytics.regressionPercent:" + DEFAULT_REGRESSION_PERCENT + "}")
+  private int regressionPercent = DEFAULT_REGRESSION_PERCENT;
+
+  @Value("${bluegreen.analytics.minSamples:" + DEFAULT_MIN_SAMPLES + "}")
+  private long minSamples = DEFAULT_MIN_SAMPLES;
+
+  /**
+   * Analyzes the runs of the last given days, optionally only of the given job name and env (null for all).
+   * Durations are grouped into periods of periodDays, and the critical paths of the last numRecentRuns runs are kept.
+   */
+  public HistoryReport analyze(String jobName, String envName, int days, int periodDays, int numRecentRuns)
+  {
+    Timestamp since = new Timestamp(nowFactory.now().getTime() - days * MILLISECONDS_PER_DAY);
+    HistoryReport report = new HistoryReport(since, periodDays, numRecentRuns, regressionPercent, minSamples);
+    addRuns(report, true, since, jobName, envName);
+    addRuns(report, false, since, jobName, envName);
+    return report;
+  }
+
+  /**
+   * Adds the runs of the archive or live tables to the report, a page at a time.
+   */
+  private void addRuns(HistoryReport report, boolean archived, Timestamp since, String jobName, String envName)
+  {
+    long lastJobHistoryId = 0L;
+    List<JobHistory> runs;
+    do
+    {
+      runs = jobHistoryTx.findRunsAfter(archived, lastJobHistoryId, since, jobName, envName, pageSize);
+      for (JobHistory run : runs)
+      {
+        report.addRun(run);
+        lastJobHistoryId = run.getId();
+      }
+    }
+    while (!runs.isEmpty());
+  }
+
+  /**
+   * Runs the historyReport command: parses the args, prints the report to out, and returns how it went.
+   */
+  public ReturnCode runCommand(String[] args, PrintStream out)
+  {
+    try
+    {
+      argumentParser.parseArgs(args);
+      List<List<String>> parameters = argumentParser.getParameters();
+      verifyParameterNames(parameters);
+      HistoryReport report = analyze(getParameter(PARAMNAME_JOB_NAME, parameters),
+          getParameter(PARAMNAME_ENV, parameters),
+          getPositiveNumber(PARAMNAME_DAYS, parameters, DEFAULT_DAYS),
+          getPositiveNumber(PARAMNAME_PERIOD_DAYS, parameters, DEFAULT_PERIOD_DAYS),
+          getPositiveNumber(PARAMNAME_RECENT_RUNS, parameters, DEFAULT_RECENT_RUNS));
+      out.print(report.format());
+      return ReturnCode.SUCCESS;
+    }
+    catch (CmdlineException e)
+    {
+      LOGGER.info("Invoke as follows:\n" + makeExplanation());
+      LOGGER.error(e.getMessage());
+      return ReturnCode.CMDLINE_ERROR;
+    }
+  }
+
+  /**
+   * Returns the single value of the named parameter, or null if absent.
+   */
+  private String getParameter(String paramName, List<List<String>> parameters)
+  {
+    for (List<String> parameter : parameters)
+    {
+      if (StringUtils.equals(paramName, parameter.get(0)))
+      {
+        if (parameter.size() != 2)
+        {
+          throw new CmdlineException("Parameter '" + paramName + "' expects 1 value, but found "
+              + (parameter.size() - 1));
+        }
+        return parameter.get(1);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Throws if any parameter is not one of the historyReport parameters.
+   */
+  private void verifyParameterNames(List<List<String>> parameters)
+  {
+    for (List<String> parameter : parameters)
+    {
+      String paramName = parameter.get(0);
+      if (!PARAMNAME_JOB_NAME.equals(paramName) && !PARAMNAME_ENV.equals(paramName) && !PARAMNAME_DAYS.equals(paramName)
+          && !PARAMNAME_PERIOD_DAYS.equals(paramName) && !PARAMNAME_RECENT_RUNS.equals(paramName))
+      {
+        throw new CmdlineException("Unrecognized parameter '" + paramName + "'");
+      }
+    }
+  }
+
+  private int getPositiveNumber(String paramName, List<List<String>> parameters, int defaultValue)
+  {
+    String value = getParameter(paramName, parameters);
+    if (value == null)
+    {
+      return defaultValue;
+    }
+    try
+    {
+      int number = Integer.parseInt(value);
+      if (number > 0)
+      {
+        return number;
+      }
+    }
+    catch (NumberFormatException e)
+    {
+      //Fall through
+    }
+    throw new CmdlineException("Parameter '" + paramName + "' expects a positive number, but found '" + value + "'");
+  }
+
+  private String makeExplanation()
+  {
+    StringBuilder sb = new StringBuilder();
+    sb.append("BlueGreenManager argument format: " + COMMAND_HISTORY_REPORT + " <parameters>\n");
+    sb.append("Description: Prints task and job duration percentiles by period, regressions of the latest\n");
+    sb.append("             period, and critical paths, from the job history.\n");
+    sb.append("Optional Parameters:\n");
+    sb.append("\t" + ArgumentParser.DOUBLE_HYPHEN + PARAMNAME_JOB_NAME + " <jobName>\n");
+    sb.append("\t\t\tOnly runs of this job, named as in the job history (e.g. StagingDeployJob).\n");
+    sb.append("\t" + ArgumentParser.DOUBLE_HYPHEN + PARAMNAME_ENV + " <envName>\n");
+    sb.append("\t\t\tOnly runs on this env.\n");
+    sb.append("\t" + ArgumentParser.DOUBLE_HYPHEN + PARAMNAME_DAYS + " <number>\n");
+    sb.append("\t\t\tHow far back to look.  Default " + DEFAULT_DAYS + ".\n");
+    sb.append("\t" + ArgumentParser.DOUBLE_HYPHEN + PARAMNAME_PERIOD_DAYS + " <number>\n");
+    sb.append("\t\t\tLength of each period.  Default " + DEFAULT_PERIOD_DAYS + ".\n");
+    sb.append("\t" + ArgumentParser.DOUBLE_HYPHEN + PARAMNAME_RECENT_RUNS + " <number>\n");
+    sb.append("\t\t\tHow many of the latest runs to show critical paths of.  Default " + DEFAULT_RECENT_RUNS + ".\n");
+    return sb.toString();
+  }
+
+  //Test purposes only
+  void setPageSize(int pageSize)
+  {
+    this.pageSize = pageSize;
+  }
+}
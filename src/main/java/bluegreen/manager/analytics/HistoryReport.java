@@ -0,0 +1,396 @@
+package bluegreen.manager.analytics;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import bluegreen.manager.model.domain.JobHistory;
+import bluegreen.manager.model.domain.JobStatus;
+import bluegreen.manager.model.domain.TaskHistory;
+import bluegreen.manager.model.domain.TaskStatus;
+import bluegreen.manager.utils.DurationHistogram;
+
+/**
+ * Duration statistics of job runs: percentiles per job, env and task, per period of time; regressions of the latest
+ * period; and critical paths.
+ * <p/>
+ * Runs are added one at a time and not kept, so the report stays small however many runs it covers.  Its size grows
+ * only with the number of distinct jobs, envs, tasks and periods.
+ * <p/>
+ * Durations count only tasks that finished DONE, and jobs that finished DONE, since a skipped or failed step says
+ * nothing about how long the step takes.
+ */
+public class HistoryReport
+{
+  public static final String WHOLE_JOB = "(job)";
+  private static final long MILLISECONDS_PER_DAY = 1000L * 60L * 60L * 24L;
+
+  private final Date since;
+  private final int periodDays;
+  private final int numRecentRuns;
+  private final int regressionPercent;
+  private final long minSamples;
+
+  private final Map<String, Series> seriesByKey = new TreeMap<String, Series>();
+  private final Map<String, CriticalPathShare> criticalPathShares = new TreeMap<String, CriticalPathShare>();
+  private final LinkedList<String> recentCriticalPaths = new LinkedList<String>();
+  private long numRuns;
+
+  public HistoryReport(Date since, int periodDays, int numRecentRuns, int regressionPercent, long minSamples)
+  {
+    if (periodDays <= 0)
+    {
+      throw new IllegalArgumentException("periodDays must be positive: " + periodDays);
+    }
+    this.since = new Date(since.getTime());
+    this.periodDays = periodDays;
+    this.numRecentRuns = numRecentRuns;
+    this.regressionPercent = regressionPercent;
+    this.minSamples = minSamples;
+  }
+
+  /**
+   * Durations of one job, env and task (or the whole job), by period.
+   */
+  public static class Series
+  {
+    private final String jobName;
+    private final String envName;
+    private final String taskName;
+    private final TreeMap<Integer, DurationHistogram> byPeriod = new TreeMap<Integer, DurationHistogram>();
+
+    private Series(String jobName, String envName, String taskName)
+    {
+      this.jobName = jobName;
+      this.envName = envName;
+      this.taskName = taskName;
+    }
+
+    private void record(int period, long milliseconds)
+    {
+      DurationHistogram histogram = byPeriod.get(period);
+      if (histogram == null)
+      {
+        histogram = new DurationHistogram();
+        byPeriod.put(period, histogram);
+      }
+      histogram.record(milliseconds);
+    }
+
+    public String getJobName()
+    {
+      return jobName;
+    }
+
+    public String getEnvName()
+    {
+      return envName;
+    }
+
+    public String getTaskName()
+    {
+      return taskName;
+    }
+
+    /**
+     * Durations by period number, counting from the start of the report.
+     */
+    public Map<Integer, DurationHistogram> getByPeriod()
+    {
+      return byPeriod;
+    }
+
+    /**
+     * Durations of the latest period with any.
+     */
+    public DurationHistogram getLatest()
+    {
+      return byPeriod.lastEntry().getValue();
+    }
+
+    /**
+     * Durations of all the periods before the latest, merged.
+     */
+    public DurationHistogram getBaseline()
+    {
+      DurationHistogram baseline = new DurationHistogram();
+      for (DurationHistogram histogram : byPeriod.headMap(byPeriod.lastKey()).values())
+      {
+        baseline.add(histogram);
+      }
+      return baseline;
+    }
+
+    @Override
+    public String toString()
+    {
+      return jobName + " on " + envName + ", " + taskName;
+    }
+  }
+
+  /**
+   * How often, and for how long, one task of a job was on the critical path.
+   */
+  private static class CriticalPathShare
+  {
+    private long numRuns;
+    private long milliseconds;
+  }
+
+  /**
+   * Adds the durations and critical path of one run.
+   */
+  void addRun(JobHistory run)
+  {
+    ++numRuns;
+    int period = (int) ((run.getStartTime().getTime() - since.getTime()) / (periodDays * MILLISECONDS_PER_DAY));
+    if (run.getTaskHistories() != null)
+    {
+      for (TaskHistory taskHistory : run.getTaskHistories())
+      {
+        if (taskHistory.getStatus() == TaskStatus.DONE && taskHistory.getEndTime() != null)
+        {
+          getSeries(run, taskHistory.getTaskName()).record(period, getMilliseconds(taskHistory));
+        }
+      }
+    }
+    if (run.getStatus() == JobStatus.DONE && run.getEndTime() != null)
+    {
+      long jobMilliseconds = run.getEndTime().getTime() - run.getStartTime().getTime();
+      getSeries(run, WHOLE_JOB).record(period, jobMilliseconds);
+      addCriticalPath(run, jobMilliseconds);
+    }
+  }
+
+  private Series getSeries(JobHistory run, String taskName)
+  {
+    String key = run.getJobName() + " " + run.getEnv1() + " " + taskName;
+    Series series = seriesByKey.get(key);
+    if (series == null)
+    {
+      series = new Series(run.getJobName(), run.getEnv1(), taskName);
+      seriesByKey.put(key, series);
+    }
+    return series;
+  }
+
+  private static long getMilliseconds(TaskHistory taskHistory)
+  {
+    return taskHistory.getEndTime().getTime() - taskHistory.getStartTime().getTime();
+  }
+
+  /**
+   * Counts the critical path tasks of the run into their shares, and keeps the path if the run is among the most
+   * recent.
+   */
+  private void addCriticalPath(JobHistory run, long jobMilliseconds)
+  {
+    List<TaskHistory> path = CriticalPath.find(run);
+    CriticalPathShare jobShare = getShare(run.getJobName(), WHOLE_JOB);
+    jobShare.numRuns++;
+    jobShare.milliseconds += jobMilliseconds;
+    for (TaskHistory taskHistory : path)
+    {
+      CriticalPathShare share = getShare(run.getJobName(), taskHistory.getTaskName());
+      share.numRuns++;
+      share.milliseconds += getMilliseconds(taskHistory);
+    }
+    if (numRecentRuns > 0)
+    {
+      recentCriticalPaths.addLast(formatCriticalPath(run, jobMilliseconds, path));
+      if (recentCriticalPaths.size() > numRecentRuns)
+      {
+        recentCriticalPaths.removeFirst();
+      }
+    }
+  }
+
+  private CriticalPathShare getShare(String jobName, String taskName)
+  {
+    String key = jobName + " " + taskName;
+    CriticalPathShare share = criticalPathShares.get(key);
+    if (share == null)
+    {
+      share = new CriticalPathShare();
+      criticalPathShares.put(key, share);
+    }
+    return share;
+  }
+
+  public long getNumRuns()
+  {
+    return numRuns;
+  }
+
+  public List<Series> getSeries()
+  {
+    return new ArrayList<Series>(seriesByKey.values());
+  }
+
+  /**
+   * Returns the series whose latest period is slower than the periods before it: p50 or p90 up by more than the
+   * regression percent, with at least minSamples durations on each side.
+   */
+  public List<Series> findRegressions()
+  {
+    List<Series> regressions = new ArrayList<Series>();
+    for (Series series : seriesByKey.values())
+    {
+      if (series.byPeriod.size() > 1)
+      {
+        DurationHistogram latest = series.getLatest();
+        DurationHistogram baseline = series.getBaseline();
+        if (latest.getCount() >= minSamples && baseline.getCount() >= minSamples
+            && (isRegression(latest, baseline, 0.5) || isRegression(latest, baseline, 0.9)))
+        {
+          regressions.add(series);
+        }
+      }
+    }
+    return regressions;
+  }
+
+  private boolean isRegression(DurationHistogram latest, DurationHistogram baseline, double fraction)
+  {
+    return latest.getPercentileMilliseconds(fraction)
+        > baseline.getPercentileMilliseconds(fraction) * (100L + regressionPercent) / 100L;
+  }
+
+  /**
+   * Critical paths of the most recent runs, oldest first, one line each.
+   */
+  public List<String> getRecentCriticalPaths()
+  {
+    return new ArrayList<String>(recentCriticalPaths);
+  }
+
+  private String formatCriticalPath(JobHistory run, long jobMilliseconds, List<TaskHistory> path)
+  {
+    StringBuilder sb = new StringBuilder();
+    sb.append("#" + run.getId() + " " + run.getJobName() + " on " + run.getEnv1());
+    if (run.getEnv2() != null)
+    {
+      sb.append("/" + run.getEnv2());
+    }
+    sb.append(" at " + formatDate(run.getStartTime()) + ", " + formatDuration(jobMilliseconds) + ":");
+    long lastEndTime = run.getStartTime().getTime();
+    String separator = " ";
+    for (TaskHistory taskHistory : path)
+    {
+      long waitMilliseconds = taskHistory.getStartTime().getTime() - lastEndTime;
+      sb.append(separator + "(" + taskHistory.getPosition() + ") " + taskHistory.getTaskName() + " "
+          + formatDuration(getMilliseconds(taskHistory)));
+      if (waitMilliseconds >= 1000L)
+      {
+        sb.append(" [after " + formatDuration(waitMilliseconds) + " gap]");
+      }
+      lastEndTime = taskHistory.getEndTime().getTime();
+      separator = " > ";
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Produces a printable report.
+   */
+  public String format()
+  {
+    StringBuilder sb = new StringBuilder();
+    sb.append("\n");
+    sb.append("=========================== HISTORY REPORT ===========================\n");
+    sb.append("\n");
+    sb.append("Runs since " + formatDate(since) + ": " + numRuns + "\n");
+    sb.append("\n");
+    sb.append("Durations of DONE tasks and jobs, by " + periodDays + "-day period:\n");
+    if (seriesByKey.isEmpty())
+    {
+      sb.append("(none)\n");
+    }
+    for (Series series : seriesByKey.values())
+    {
+      sb.append(series + "\n");
+      for (Map.Entry<Integer, DurationHistogram> entry : series.byPeriod.entrySet())
+      {
+        sb.append("  " + formatDate(getPeriodStart(entry.getKey())) + "  " + formatHistogram(entry.getValue()) + "\n");
+      }
+    }
+    sb.append("\n");
+    sb.append("Regressions (latest period vs earlier, p50 or p90 up more than " + regressionPercent + "%):\n");
+    List<Series> regressions = findRegressions();
+    if (regressions.isEmpty())
+    {
+      sb.append("(none)\n");
+    }
+    for (Series series : regressions)
+    {
+      sb.append(series + ": " + formatHistogram(series.getBaseline()) + "  ==>  " + formatHistogram(series.getLatest())
+          + "\n");
+    }
+    sb.append("\n");
+    sb.append("Time on the critical path, by job and task (runs on the path, share of job time):\n");
+    if (criticalPathShares.isEmpty())
+    {
+      sb.append("(none)\n");
+    }
+    for (Map.Entry<String, CriticalPathShare> entry : criticalPathShares.entrySet())
+    {
+      CriticalPathShare share = entry.getValue();
+      String jobName = entry.getKey().substring(0, entry.getKey().indexOf(' '));
+      long jobMilliseconds = criticalPathShares.get(jobName + " " + WHOLE_JOB).milliseconds;
+      sb.append(entry.getKey() + ": " + share.numRuns + " runs, " + formatDuration(share.milliseconds) + ", "
+          + (jobMilliseconds == 0 ? 0 : 100L * share.milliseconds / jobMilliseconds) + "%\n");
+    }
+    sb.append("\n");
+    sb.append("Critical paths of the latest runs:\n");
+    if (recentCriticalPaths.isEmpty())
+    {
+      sb.append("(none)\n");
+    }
+    for (String line : recentCriticalPaths)
+    {
+      sb.append(line + "\n");
+    }
+    sb.append("======================================================================\n");
+    sb.append("\n");
+    return sb.toString();
+  }
+
+  private Date getPeriodStart(int period)
+  {
+    return new Date(since.getTime() + period * periodDays * MILLISECONDS_PER_DAY);
+  }
+
+  private static String formatHistogram(DurationHistogram histogram)
+  {
+    return "n=" + histogram.getCount() + ", p50<=" + formatDuration(histogram.getPercentileMilliseconds(0.5))
+        + ", p90<=" + formatDuration(histogram.getPercentileMilliseconds(0.9))
+        + ", p99<=" + formatDuration(histogram.getPercentileMilliseconds(0.99))
+        + ", max=" + formatDuration(histogram.getMaxMilliseconds());
+  }
+
+  private static String formatDate(Date date)
+  {
+    return new SimpleDateFormat("yyyy-MM-dd HH:mm").format(date);
+  }
+
+  /**
+   * Formats milliseconds as e.g. "42s", "12m05s" or "2h03m".
+   */
+  static String formatDuration(long milliseconds)
+  {
+    long seconds = (milliseconds + 500L) / 1000L;
+    if (seconds < 60L)
+    {
+      return seconds + "s";
+    }
+    else if (seconds < 3600L)
+    {
+      return String.format("%dm%02ds", seconds / 60L, seconds % 60L);
+    }
+    return String.format("%dh%02dm", seconds / 3600L, (seconds % 3600L) / 60L);
+  }
+}
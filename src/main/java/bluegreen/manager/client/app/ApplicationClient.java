@@ -1,7 +1,11 @@
 package bluegreen.manager.client.app;
 
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.StopWatch;
+import org.apache.http.HttpStatus;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.CookieStore;
+import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.fluent.Executor;
 import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.message.BasicNameValuePair;
@@ -14,11 +18,17 @@ import bluegreen.manager.client.http.ExecutorFactory;
 import bluegreen.manager.client.http.HttpHelper;
 import bluegreen.manager.client.http.HttpMethodType;
 import bluegreen.manager.model.domain.Application;
+import bluegreen.manager.utils.MetricRegistry;
+import bluegreen.manager.utils.Span;
 import bluegreen.manager.utils.ThreadSleeper;
+import bluegreen.manager.utils.Tracing;
 
 /**
  * HTTP client that makes requests to a blue-green compliant application, and knows to try again if
  * it gets a lock error.
+ * <p/>
+ * Each login and each request (with its retries) is traced as an "app" span, and counted and timed in the
+ * bluegreen_app_* metrics.
  */
 public class ApplicationClient
 {
@@ -34,12 +44,29 @@ public class ApplicationClient
   private ThreadSleeper threadSleeper;
   private String applicationUsername;
   private String applicationPassword;
+  private ApplicationSessionCache applicationSessionCache;
+  private MetricRegistry metricRegistry;
 
+  /**
+   * Makes a client without a session cache, whose metrics are not exported.
+   */
   public ApplicationClient(ExecutorFactory executorFactory,
                            HttpHelper httpHelper,
                            Gson gson,
                            ThreadSleeper threadSleeper,
                            String applicationUsername, String applicationPassword)
+  {
+    this(executorFactory, httpHelper, gson, threadSleeper, applicationUsername, applicationPassword, null,
+        new MetricRegistry());
+  }
+
+  public ApplicationClient(ExecutorFactory executorFactory,
+                           HttpHelper httpHelper,
+                           Gson gson,
+                           ThreadSleeper threadSleeper,
+                           String applicationUsername, String applicationPassword,
+                           ApplicationSessionCache applicationSessionCache,
+                           MetricRegistry metricRegistry)
   {
     this.executorFactory = executorFactory;
     this.httpHelper = httpHelper;
@@ -47,6 +74,21 @@ public class ApplicationClient
     this.threadSleeper = threadSleeper;
     this.applicationUsername = applicationUsername;
     this.applicationPassword = applicationPassword;
+    this.applicationSessionCache = applicationSessionCache;
+    this.metricRegistry = metricRegistry;
+  }
+
+  /**
+   * Returns a session with the application: a cached one if still valid, else a new one.  Without a cache, always
+   * a new one.
+   */
+  public ApplicationSession openSession(Application application)
+  {
+    if (applicationSessionCache == null)
+    {
+      return authenticate(application);
+    }
+    return applicationSessionCache.getSession(this, application, applicationUsername, applicationPassword);
   }
 
   /**
@@ -58,12 +100,59 @@ public class ApplicationClient
     Executor httpExecutor = executorFactory.makeExecutor();
     CookieStore cookieStore = new BasicCookieStore();
     httpExecutor.cookieStore(cookieStore);
-    NameValuePair[] authParams = new NameValuePair[] {
+    Span span = startSpan(HttpMethodType.POST + " " + DbFreezeRest.POST_LOGIN, application);
+    try
+    {
+      httpHelper.postAuthForCookie(httpExecutor, uri, makeAuthParams());
+    }
+    finally
+    {
+      span.end();
+      countLogin("new");
+    }
+    return new ApplicationSession(httpExecutor, cookieStore);
+  }
+
+  /**
+   * Logs in again within an existing session, after the application rejected its cookie.
+   */
+  void reauthenticate(Application application, ApplicationSession session)
+  {
+    String uri = application.makeHostnameUri() + "/" + DbFreezeRest.POST_LOGIN;
+    Span span = startSpan(HttpMethodType.POST + " " + DbFreezeRest.POST_LOGIN, application);
+    try
+    {
+      synchronized (session)
+      {
+        session.getCookieStore().clear();
+        httpHelper.postAuthForCookie(session.getHttpExecutor(), uri, makeAuthParams());
+      }
+    }
+    finally
+    {
+      span.end();
+      countLogin("rejected");
+    }
+    if (applicationSessionCache != null)
+    {
+      applicationSessionCache.recordRelogin();
+    }
+  }
+
+  /**
+   * Counts a login, for a new session or after the application rejected a session.
+   */
+  private void countLogin(String reason)
+  {
+    metricRegistry.counter("bluegreen_app_logins_total", "Logins to applications", "reason", reason).increment();
+  }
+
+  private NameValuePair[] makeAuthParams()
+  {
+    return new NameValuePair[] {
         new BasicNameValuePair(PARAMNAME_AUTHUSERNAME, applicationUsername),
         new BasicNameValuePair(PARAMNAME_AUTHPASSWORD, applicationPassword)
     };
-    httpHelper.postAuthForCookie(httpExecutor, uri, authParams);
-    return new ApplicationSession(httpExecutor, cookieStore);
   }
 
   /**
@@ -78,6 +167,27 @@ public class ApplicationClient
         DbFreezeRest.GET_DB_FREEZE_PROGRESS, DbFreezeProgress.class, outerTryNum);
   }
 
+  /**
+   * Long-polls dbfreeze progress from the application: the application is asked to respond as soon as its mode is no
+   * longer fromMode, or after waitSeconds.  An application that does not support long-polling ignores the extra
+   * parameters and responds right away, same as {@link #getDbFreezeProgress}.
+   * <p/>
+   * Tries up to MAX_NUM_TRIES times to get a non-null response with no lock error.  Try-messaging can include an
+   * optional outerTryNum if caller is in its own for-loop.
+   */
+  public DbFreezeProgress getDbFreezeProgressChange(Application application,
+                                                    ApplicationSession session,
+                                                    DbFreezeMode fromMode,
+                                                    int waitSeconds,
+                                                    Integer outerTryNum)
+  {
+    String methodPath = DbFreezeRest.GET_DB_FREEZE_PROGRESS
+        + "?" + DbFreezeRest.PARAMNAME_WAIT_FOR_CHANGE_FROM + "=" + fromMode.getCode()
+        + "&" + DbFreezeRest.PARAMNAME_WAIT_SECONDS + "=" + waitSeconds;
+    return (DbFreezeProgress) requestWithRetry(application, session, HttpMethodType.GET,
+        methodPath, DbFreezeProgress.class, outerTryNum);
+  }
+
   /**
    * Requests that the application enter/exit a dbfreeze, and returns initial progress.
    * <p/>
@@ -107,7 +217,8 @@ public class ApplicationClient
 
   /**
    * Makes an application request that responds with a Lockable.  If the application returns a lock error, then
-   * the client waits a bit and tries again.
+   * the client waits a bit and tries again.  If the application rejects the session, then the client logs in again
+   * and retries once.
    */
   Lockable requestWithRetry(Application application, ApplicationSession session, HttpMethodType httpMethodType,
                             String methodPath, Class<? extends Lockable> responseClass, Integer outerTryNum)
@@ -115,26 +226,115 @@ public class ApplicationClient
     String uri = application.makeHostnameUri() + "/" + methodPath;
     int tryNum = 0;
     Lockable response = null;
-    while (tryNum < MAX_NUM_TRIES)
+    String path = StringUtils.substringBefore(methodPath, "?");
+    Span span = startSpan(httpMethodType + " " + path, application);
+    StopWatch stopWatch = new StopWatch();
+    String outcome = "error";
+    try
     {
-      response = tryRequest(httpMethodType, session, uri, responseClass, tryNum, outerTryNum);
-      if (response == null || response.isLockError())
+      stopWatch.start();
+      while (tryNum < MAX_NUM_TRIES)
       {
-        if (++tryNum < MAX_NUM_TRIES)
+        span.addArg("tries", tryNum + 1);
+        countTry(httpMethodType, path);
+        response = tryRequestInSession(application, httpMethodType, session, uri, responseClass, tryNum, outerTryNum);
+        if (response == null || response.isLockError())
         {
-          sleep();
+          if (response != null)
+          {
+            countLockError(httpMethodType, path);
+          }
+          if (++tryNum < MAX_NUM_TRIES)
+          {
+            sleep();
+          }
+          else
+          {
+            LOGGER.error("Request failed after " + MAX_NUM_TRIES + " tries, final response: " + response);
+          }
         }
         else
         {
-          LOGGER.error("Request failed after " + MAX_NUM_TRIES + " tries, final response: " + response);
+          break;
         }
       }
-      else
+      outcome = response == null ? "noResponse" : response.isLockError() ? "lockError" : "ok";
+    }
+    finally
+    {
+      span.end();
+      stopWatch.stop();
+      recordRequest(httpMethodType, path, outcome, stopWatch.getTime());
+    }
+    return response;
+  }
+
+  private void countTry(HttpMethodType httpMethodType, String path)
+  {
+    metricRegistry.counter("bluegreen_app_request_tries_total", "Tries of application requests, retries included",
+        "method", httpMethodType.name(), "path", path).increment();
+  }
+
+  private void countLockError(HttpMethodType httpMethodType, String path)
+  {
+    metricRegistry.counter("bluegreen_app_lock_errors_total", "Lock errors returned by applications, each retried "
+        + "unless out of tries", "method", httpMethodType.name(), "path", path).increment();
+  }
+
+  /**
+   * Counts the request by its final outcome, and records its time including retries.
+   */
+  private void recordRequest(HttpMethodType httpMethodType, String path, String outcome, long milliseconds)
+  {
+    metricRegistry.counter("bluegreen_app_requests_total", "Application requests by final outcome",
+        "method", httpMethodType.name(), "path", path, "outcome", outcome).increment();
+    metricRegistry.histogram("bluegreen_app_request_milliseconds", "Time of application requests, retries included",
+        "method", httpMethodType.name(), "path", path).record(milliseconds);
+  }
+
+  /**
+   * Starts the trace span of a login or request to the application.
+   */
+  private Span startSpan(String name, Application application)
+  {
+    return Tracing.start("app", name).addArg("host", application.getHostname());
+  }
+
+  /**
+   * Tries the request, and if the application rejects the session (e.g. a reused session that expired on the
+   * application side), logs in again and tries once more.
+   */
+  private Lockable tryRequestInSession(Application application, HttpMethodType httpMethodType,
+                                       ApplicationSession session, String uri,
+                                       Class<? extends Lockable> responseClass, int tryNum, Integer outerTryNum)
+  {
+    try
+    {
+      return tryRequest(httpMethodType, session, uri, responseClass, tryNum, outerTryNum);
+    }
+    catch (RuntimeException e)
+    {
+      if (!isSessionRejected(e))
       {
-        break;
+        throw e;
       }
+      LOGGER.info("Application rejected the session on " + httpMethodType + " " + uri + ", logging in again");
+      reauthenticate(application, session);
+      return tryRequest(httpMethodType, session, uri, responseClass, tryNum, outerTryNum);
     }
-    return response;
+  }
+
+  /**
+   * True if the request failed with an http status meaning the session is not (or no longer) logged in.
+   */
+  boolean isSessionRejected(RuntimeException e)
+  {
+    if (e.getCause() instanceof HttpResponseException)
+    {
+      int statusCode = ((HttpResponseException) e.getCause()).getStatusCode();
+      return statusCode == HttpStatus.SC_UNAUTHORIZED || statusCode == HttpStatus.SC_FORBIDDEN;
+    }
+    return false;
   }
 
   /**
@@ -182,14 +382,17 @@ public class ApplicationClient
    */
   private String httpExecute(HttpMethodType httpMethodType, ApplicationSession session, String uri)
   {
-    switch (httpMethodType)
+    synchronized (session) //Executor is not thread-safe, and a cached session can be shared
     {
-      case GET:
-        return httpHelper.executeGet(session.getHttpExecutor(), uri);
-      case PUT:
-        return httpHelper.executePut(session.getHttpExecutor(), uri);
-      default:
-        throw new UnsupportedOperationException("Not expecting to send a '" + httpMethodType + "' request to a bluegreen application");
+      switch (httpMethodType)
+      {
+        case GET:
+          return httpHelper.executeGet(session.getHttpExecutor(), uri);
+        case PUT:
+          return httpHelper.executePut(session.getHttpExecutor(), uri);
+        default:
+          throw new UnsupportedOperationException("Not expecting to send a '" + httpMethodType + "' request to a bluegreen application");
+      }
     }
   }
 
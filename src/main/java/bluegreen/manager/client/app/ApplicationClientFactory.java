@@ -8,6 +8,7 @@ import com.google.gson.Gson;
 
 import bluegreen.manager.client.http.ExecutorFactory;
 import bluegreen.manager.client.http.HttpHelper;
+import bluegreen.manager.utils.MetricRegistry;
 import bluegreen.manager.utils.ThreadSleeper;
 
 /**
@@ -29,11 +30,19 @@ public class ApplicationClientFactory
   @Autowired
   private ThreadSleeper threadSleeper;
 
+  @Autowired
+  private ApplicationSessionCache applicationSessionCache;
+
+  @Autowired
+  private MetricRegistry metricRegistry;
+
   /**
-   * Creates a client that can communicate with a bluegreen application, using the specified credentials.
+   * Creates a client that can communicate with a bluegreen application, using the specified credentials.  Clients
+   * share the session cache, so tasks of a job reuse one login per application.
    */
   public ApplicationClient create(String applicationUsername, String applicationPassword)
   {
-    return new ApplicationClient(executorFactory, httpHelper, gson, threadSleeper, applicationUsername, applicationPassword);
+    return new ApplicationClient(executorFactory, httpHelper, gson, threadSleeper, applicationUsername, applicationPassword,
+        applicationSessionCache, metricRegistry);
   }
 }
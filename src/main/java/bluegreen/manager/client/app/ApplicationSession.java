@@ -5,11 +5,16 @@ import org.apache.http.client.fluent.Executor;
 
 /**
  * Tracks a fluent http executor and its cookieStore for communication with a secure bluegreen application.
+ * <p/>
+ * A session may be shared by several tasks via the {@link ApplicationSessionCache}.  The executor is not
+ * thread-safe, so requests in the session synchronize on the session.  The cookieStore must be thread-safe, like
+ * BasicCookieStore, since the cache checks it without the session lock.
  */
 public class ApplicationSession
 {
   private Executor httpExecutor;
   private CookieStore cookieStore;
+  private volatile long lastUsedTime; //Not guarded by the session lock, which long polls hold
 
   public ApplicationSession(Executor httpExecutor, CookieStore cookieStore)
   {
@@ -26,4 +31,17 @@ public class ApplicationSession
   {
     return cookieStore;
   }
+
+  /**
+   * Time in ms when the session was last handed out by the cache, or zero if never cached.
+   */
+  public long getLastUsedTime()
+  {
+    return lastUsedTime;
+  }
+
+  public void setLastUsedTime(long lastUsedTime)
+  {
+    this.lastUsedTime = lastUsedTime;
+  }
 }
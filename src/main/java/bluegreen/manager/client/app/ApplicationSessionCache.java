@@ -0,0 +1,160 @@
+package bluegreen.manager.client.app;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import bluegreen.manager.model.domain.Application;
+import bluegreen.manager.utils.NowFactory;
+
+/**
+ * Keeps one authenticated session per application and credentials, so that the tasks of a job (freeze, thaw,
+ * discovery, smoke test...) log in to an application once instead of once per task.
+ * <p/>
+ * A cached session is reused while its cookies are unexpired and it has been used within maxIdleMinutes, which should
+ * be shorter than the applications' own session timeout.  If an application rejects a reused session anyway, the
+ * {@link ApplicationClient} logs in again within the same session and retries the request.
+ * <p/>
+ * Counts logins made and avoided.  Each avoided login saves a POST round trip to the application.
+ * <p/>
+ * Logins happen outside the cache lock, under a per-key lock, so a slow login only holds up tasks wanting the same
+ * session.  Validity checks read the thread-safe cookie store without the session lock, which long polls hold for
+ * their whole request.
+ */
+@Lazy
+@Component
+public class ApplicationSessionCache
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(ApplicationSessionCache.class);
+  static final long DEFAULT_MAX_IDLE_MINUTES = 15L;
+  private static final long MILLISECONDS_PER_MINUTE = 60L * 1000L;
+
+  @Autowired
+  private NowFactory nowFactory;
+
+  @Value("${bluegreen.app.session.maxIdleMinutes:" + DEFAULT_MAX_IDLE_MINUTES + "}")
+  private long maxIdleMinutes = DEFAULT_MAX_IDLE_MINUTES;
+
+  /**
+   * Keyed by application uri and credentials.  Keys hold passwords, so never log them.
+   */
+  private final Map<String, SessionSlot> slots = new HashMap<String, SessionSlot>();
+
+  private int numLogins;
+  private int numLoginsAvoided;
+  private int numRelogins;
+
+  /**
+   * Returns a valid cached session for the application and credentials, else logs in with the client and caches the
+   * new session.
+   */
+  public ApplicationSession getSession(ApplicationClient applicationClient, Application application,
+                                       String username, String password)
+  {
+    SessionSlot slot = getSlot(application.makeHostnameUri() + "\n" + username + "\n" + password);
+    synchronized (slot) //Tasks wanting the same session wait for one login, tasks wanting others don't
+    {
+      Date now = nowFactory.now();
+      ApplicationSession session = slot.session;
+      if (session != null && isValid(session, now))
+      {
+        LOGGER.debug("Reusing session with " + application.makeHostnameUri() + ", " + countLoginAvoided()
+            + " logins avoided so far");
+      }
+      else
+      {
+        session = applicationClient.authenticate(application);
+        countLogin();
+        slot.session = session;
+      }
+      session.setLastUsedTime(now.getTime());
+      return session;
+    }
+  }
+
+  /**
+   * Returns the slot for the key, adding an empty one if new.
+   */
+  private synchronized SessionSlot getSlot(String key)
+  {
+    SessionSlot slot = slots.get(key);
+    if (slot == null)
+    {
+      slot = new SessionSlot();
+      slots.put(key, slot);
+    }
+    return slot;
+  }
+
+  private synchronized void countLogin()
+  {
+    ++numLogins;
+  }
+
+  private synchronized int countLoginAvoided()
+  {
+    return ++numLoginsAvoided;
+  }
+
+  /**
+   * True if the session was used recently and still has unexpired cookies.
+   * <p/>
+   * Doesn't take the session lock: a long poll may hold it for minutes, and the cookie store is thread-safe.
+   */
+  private boolean isValid(ApplicationSession session, Date now)
+  {
+    if (now.getTime() - session.getLastUsedTime() > maxIdleMinutes * MILLISECONDS_PER_MINUTE)
+    {
+      return false;
+    }
+    session.getCookieStore().clearExpired(now);
+    return !session.getCookieStore().getCookies().isEmpty();
+  }
+
+  /**
+   * Notes that an application rejected a cached session, so the client had to log in again.
+   */
+  public synchronized void recordRelogin()
+  {
+    ++numRelogins;
+  }
+
+  public synchronized int getNumLogins()
+  {
+    return numLogins;
+  }
+
+  /**
+   * Logins, and their POST round trips, saved by reusing sessions.
+   */
+  public synchronized int getNumLoginsAvoided()
+  {
+    return numLoginsAvoided;
+  }
+
+  public synchronized int getNumRelogins()
+  {
+    return numRelogins;
+  }
+
+  public synchronized String summarize()
+  {
+    return "Application sessions: " + numLogins + " logins, " + numLoginsAvoided + " logins avoided, "
+        + numRelogins + " re-logins after rejection";
+  }
+
+  /**
+   * Holds the cached session of one key, null until the first login.  Guarded by its own lock.
+   */
+  private static class SessionSlot
+  {
+    private ApplicationSession session;
+  }
+}
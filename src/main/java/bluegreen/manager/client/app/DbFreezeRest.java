@@ -14,6 +14,14 @@ public class DbFreezeRest
 
   public static final String GET_DB_FREEZE_PROGRESS = "dbFreezeProgress";
 
+  /**
+   * Optional long-poll parameters of GET_DB_FREEZE_PROGRESS: hold the response until the mode is no longer the given
+   * mode code, or until the given number of seconds has passed.
+   */
+  public static final String PARAMNAME_WAIT_FOR_CHANGE_FROM = "waitForChangeFrom";
+
+  public static final String PARAMNAME_WAIT_SECONDS = "waitSeconds";
+
   public static final String PUT_ENTER_DB_FREEZE = "enterDbFreeze";
 
   public static final String PUT_EXIT_DB_FREEZE = "exitDbFreeze";
@@ -0,0 +1,9 @@
+package bluegreen.manager.client.aws;
+
+/**
+ * One request to an AWS service, as submitted to the {@link AwsCallGovernor}.  May be invoked again if throttled.
+ */
+interface AwsCall<T>
+{
+  T call();
+}
@@ -0,0 +1,415 @@
+package bluegreen.manager.client.aws;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.commons.lang3.time.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import com.amazonaws.AmazonServiceException;
+
+import bluegreen.manager.utils.Gauge;
+import bluegreen.manager.utils.LatencyHistogram;
+import bluegreen.manager.utils.MetricRegistry;
+import bluegreen.manager.utils.Span;
+import bluegreen.manager.utils.ThreadSleeper;
+import bluegreen.manager.utils.Tracing;
+
+/**
+ * Every AWS request made by the RDS, ELB and EC2 clients passes through here, so that all the jobs and tasks of this
+ * process share one budget per AWS service.
+ * <p/>
+ * Per service: a token bucket limits the request rate, and an adaptive limit caps the requests in flight.  The limit
+ * halves whenever AWS throttles us and creeps back up as requests succeed.  A throttled request is retried after a
+ * jittered exponential backoff, so clients that were throttled together do not retry together.  Other errors are
+ * thrown to the caller as before.
+ * <p/>
+ * Also keeps a latency histogram per service operation, and traces each call (retries and backoffs included) as an
+ * "aws" span.  Calls by outcome, latencies, throttles and limits are exported as bluegreen_aws_* metrics.
+ */
+@Lazy
+@Component
+public class AwsCallGovernor
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(AwsCallGovernor.class);
+
+  static final double DEFAULT_REQUESTS_PER_SECOND = 5.0;
+  static final int DEFAULT_BURST = 10;
+  static final int DEFAULT_MAX_CONCURRENCY = 4;
+  static final int DEFAULT_MAX_RETRIES = 6;
+  static final long DEFAULT_BASE_BACKOFF_MILLISECONDS = 200L;
+  static final long DEFAULT_MAX_BACKOFF_MILLISECONDS = 20000L;
+  private static final int HTTP_TOO_MANY_REQUESTS = 429;
+  private static final Set<String> THROTTLING_ERROR_CODES = new HashSet<String>(Arrays.asList(
+      "Throttling", "ThrottlingException", "RequestLimitExceeded", "RequestThrottled", "RequestThrottledException",
+      "TooManyRequestsException", "ProvisionedThroughputExceededException", "SlowDown", "PriorRequestNotComplete"));
+
+  @Autowired
+  private ThreadSleeper threadSleeper;
+
+  @Autowired
+  private MetricRegistry metricRegistry;
+
+  @Value("${bluegreen.aws.governor.requestsPerSecond:" + DEFAULT_REQUESTS_PER_SECOND + "}")
+  private double requestsPerSecond = DEFAULT_REQUESTS_PER_SECOND;
+
+  @Value("${bluegreen.aws.governor.burst:" + DEFAULT_BURST + "}")
+  private int burst = DEFAULT_BURST;
+
+  @Value("${bluegreen.aws.governor.maxConcurrency:" + DEFAULT_MAX_CONCURRENCY + "}")
+  private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+
+  @Value("${bluegreen.aws.governor.maxRetries:" + DEFAULT_MAX_RETRIES + "}")
+  private int maxRetries = DEFAULT_MAX_RETRIES;
+
+  @Value("${bluegreen.aws.governor.baseBackoffMilliseconds:" + DEFAULT_BASE_BACKOFF_MILLISECONDS + "}")
+  private long baseBackoffMilliseconds = DEFAULT_BASE_BACKOFF_MILLISECONDS;
+
+  @Value("${bluegreen.aws.governor.maxBackoffMilliseconds:" + DEFAULT_MAX_BACKOFF_MILLISECONDS + "}")
+  private long maxBackoffMilliseconds = DEFAULT_MAX_BACKOFF_MILLISECONDS;
+
+  private final Map<String, ServiceGovernor> serviceGovernors = new TreeMap<String, ServiceGovernor>();
+  private final Map<String, LatencyHistogram> latencyHistograms = new TreeMap<String, LatencyHistogram>();
+  private final Random random = new Random();
+
+  /**
+   * Runs the request under the service's rate and concurrency limits, retrying if throttled.  Returns its result, or
+   * throws its error if not throttling, or if still throttled after maxRetries.
+   */
+  public <T> T call(String serviceName, String operation, AwsCall<T> awsCall)
+  {
+    Span span = Tracing.start("aws", serviceName + "." + operation);
+    String outcome = "error";
+    try
+    {
+      T result = governedCall(serviceName, operation, awsCall, span);
+      outcome = "ok";
+      return result;
+    }
+    catch (RuntimeException e)
+    {
+      span.addArg("error", e.getClass().getSimpleName());
+      if (e instanceof AmazonServiceException && isThrottling((AmazonServiceException) e))
+      {
+        outcome = "throttled";
+      }
+      throw e;
+    }
+    finally
+    {
+      span.end();
+      metricRegistry.counter("bluegreen_aws_calls_total", "AWS requests by outcome, retries not counted separately",
+          "service", serviceName, "operation", operation, "outcome", outcome).increment();
+    }
+  }
+
+  private <T> T governedCall(String serviceName, String operation, AwsCall<T> awsCall, Span span)
+  {
+    ServiceGovernor serviceGovernor = getServiceGovernor(serviceName);
+    LatencyHistogram latencyHistogram = getLatencyHistogram(serviceName, operation);
+    for (int attempt = 0; ; ++attempt)
+    {
+      span.addArg("attempts", attempt + 1);
+      serviceGovernor.acquire();
+      StopWatch stopWatch = new StopWatch();
+      boolean succeeded = false;
+      try
+      {
+        stopWatch.start();
+        T result = awsCall.call();
+        stopWatch.stop();
+        latencyHistogram.record(stopWatch.getTime());
+        succeeded = true;
+        return result;
+      }
+      catch (AmazonServiceException e)
+      {
+        if (!isThrottling(e))
+        {
+          throw e;
+        }
+        serviceGovernor.throttled();
+        if (attempt >= maxRetries)
+        {
+          LOGGER.error(serviceName + "." + operation + " still throttled after " + maxRetries + " retries");
+          throw e;
+        }
+      }
+      finally
+      {
+        serviceGovernor.release(succeeded);
+      }
+      backoff(serviceName + "." + operation, attempt);
+    }
+  }
+
+  /**
+   * True if AWS rejected the request for exceeding a rate limit.
+   */
+  static boolean isThrottling(AmazonServiceException e)
+  {
+    return e.getStatusCode() == HTTP_TOO_MANY_REQUESTS || THROTTLING_ERROR_CODES.contains(e.getErrorCode());
+  }
+
+  /**
+   * Sleeps a random time up to base*2^attempt, capped at the max backoff ("full jitter").
+   */
+  private void backoff(String operationName, int attempt)
+  {
+    long ceiling = Math.min(maxBackoffMilliseconds, baseBackoffMilliseconds << Math.min(attempt, 30));
+    long delay = 1L + (long) (random.nextDouble() * ceiling);
+    LOGGER.warn(operationName + " was throttled, retry #" + (attempt + 1) + " in " + delay + " ms");
+    try
+    {
+      threadSleeper.sleep(delay);
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while backing off " + operationName, e);
+    }
+  }
+
+  private synchronized ServiceGovernor getServiceGovernor(String serviceName)
+  {
+    ServiceGovernor serviceGovernor = serviceGovernors.get(serviceName);
+    if (serviceGovernor == null)
+    {
+      serviceGovernor = new ServiceGovernor(serviceName);
+      serviceGovernors.put(serviceName, serviceGovernor);
+      exportMetrics(serviceGovernor);
+    }
+    return serviceGovernor;
+  }
+
+  private void exportMetrics(final ServiceGovernor serviceGovernor)
+  {
+    metricRegistry.counter("bluegreen_aws_throttles_total", "Throttling errors returned by AWS", new Gauge()
+    {
+      @Override
+      public double getValue()
+      {
+        return serviceGovernor.getNumThrottles();
+      }
+    }, "service", serviceGovernor.serviceName);
+    metricRegistry.gauge("bluegreen_aws_concurrency_limit", "Current cap on AWS requests in flight", new Gauge()
+    {
+      @Override
+      public double getValue()
+      {
+        return serviceGovernor.getConcurrencyLimit();
+      }
+    }, "service", serviceGovernor.serviceName);
+    metricRegistry.gauge("bluegreen_aws_in_flight", "AWS requests in flight", new Gauge()
+    {
+      @Override
+      public double getValue()
+      {
+        return serviceGovernor.getNumInFlight();
+      }
+    }, "service", serviceGovernor.serviceName);
+  }
+
+  private synchronized LatencyHistogram getLatencyHistogram(String serviceName, String operation)
+  {
+    String operationName = serviceName + "." + operation;
+    LatencyHistogram latencyHistogram = latencyHistograms.get(operationName);
+    if (latencyHistogram == null)
+    {
+      latencyHistogram = metricRegistry.histogram("bluegreen_aws_call_milliseconds",
+          "Latency of successful AWS requests", "service", serviceName, "operation", operation);
+      latencyHistograms.put(operationName, latencyHistogram);
+    }
+    return latencyHistogram;
+  }
+
+  /**
+   * Latency histograms of successful requests, keyed by "service.operation".
+   */
+  public synchronized Map<String, LatencyHistogram> getLatencyHistograms()
+  {
+    return Collections.unmodifiableMap(new TreeMap<String, LatencyHistogram>(latencyHistograms));
+  }
+
+  /**
+   * Number of throttling errors AWS returned for the service so far.
+   */
+  public int getNumThrottles(String serviceName)
+  {
+    return getServiceGovernor(serviceName).getNumThrottles();
+  }
+
+  /**
+   * Number of requests in flight to the service.
+   */
+  public int getNumInFlight(String serviceName)
+  {
+    return getServiceGovernor(serviceName).getNumInFlight();
+  }
+
+  /**
+   * Current cap on requests in flight to the service.
+   */
+  public int getConcurrencyLimit(String serviceName)
+  {
+    return getServiceGovernor(serviceName).getConcurrencyLimit();
+  }
+
+  /**
+   * One line per service with its throttle count and concurrency limit, and one per operation with its latencies.
+   */
+  public synchronized List<String> summarize()
+  {
+    List<String> lines = new ArrayList<String>();
+    for (ServiceGovernor serviceGovernor : serviceGovernors.values())
+    {
+      lines.add(serviceGovernor.summarize());
+    }
+    for (Map.Entry<String, LatencyHistogram> entry : latencyHistograms.entrySet())
+    {
+      lines.add(entry.getKey() + ": " + entry.getValue().summarize());
+    }
+    return lines;
+  }
+
+  /**
+   * Token bucket and adaptive concurrency limit of one service.
+   */
+  private class ServiceGovernor
+  {
+    private final String serviceName;
+    private double tokens = burst;
+    private long lastRefillNanos = System.nanoTime();
+    private double concurrencyLimit = maxConcurrency;
+    private int numInFlight;
+    private int numThrottles;
+
+    private ServiceGovernor(String serviceName)
+    {
+      this.serviceName = serviceName;
+    }
+
+    /**
+     * Blocks until the request may go: a slot under the concurrency limit, then a token.  If interrupted while
+     * waiting for the token, gives the slot back, since the caller will not release it.
+     */
+    private void acquire()
+    {
+      boolean slotTaken = false;
+      try
+      {
+        synchronized (this)
+        {
+          while (numInFlight >= (int) concurrencyLimit)
+          {
+            wait();
+          }
+          ++numInFlight;
+          slotTaken = true;
+        }
+        long waitMilliseconds = reserveToken();
+        if (waitMilliseconds > 0)
+        {
+          threadSleeper.sleep(waitMilliseconds);
+        }
+      }
+      catch (InterruptedException e)
+      {
+        if (slotTaken)
+        {
+          giveBackSlot();
+        }
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Interrupted while waiting to call " + serviceName, e);
+      }
+    }
+
+    /**
+     * Frees a slot whose request never went, without changing the limit.
+     */
+    private synchronized void giveBackSlot()
+    {
+      --numInFlight;
+      notifyAll();
+    }
+
+    /**
+     * Takes a token, going into debt if there are none.  Returns how long to wait for the debt to be repaid.
+     */
+    private synchronized long reserveToken()
+    {
+      long nowNanos = System.nanoTime();
+      tokens = Math.min(burst, tokens + (nowNanos - lastRefillNanos) * requestsPerSecond / 1e9);
+      lastRefillNanos = nowNanos;
+      tokens -= 1.0;
+      return tokens >= 0 ? 0L : (long) Math.ceil(-tokens * 1000.0 / requestsPerSecond);
+    }
+
+    /**
+     * Frees the slot.  A success raises the limit by about one per limit's worth of successes.
+     */
+    private synchronized void release(boolean success)
+    {
+      --numInFlight;
+      if (success)
+      {
+        concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + 1.0 / concurrencyLimit);
+      }
+      notifyAll();
+    }
+
+    /**
+     * Halves the concurrency limit, down to one request at a time.
+     */
+    private synchronized void throttled()
+    {
+      ++numThrottles;
+      concurrencyLimit = Math.max(1.0, concurrencyLimit / 2.0);
+    }
+
+    private synchronized int getNumThrottles()
+    {
+      return numThrottles;
+    }
+
+    private synchronized int getConcurrencyLimit()
+    {
+      return (int) concurrencyLimit;
+    }
+
+    private synchronized int getNumInFlight()
+    {
+      return numInFlight;
+    }
+
+    private synchronized String summarize()
+    {
+      return serviceName + ": throttles=" + numThrottles + ", concurrencyLimit=" + (int) concurrencyLimit
+          + "/" + maxConcurrency;
+    }
+  }
+
+  //Test purposes only
+  void setRequestsPerSecond(double requestsPerSecond)
+  {
+    this.requestsPerSecond = requestsPerSecond;
+  }
+
+  //Test purposes only
+  void setMaxRetries(int maxRetries)
+  {
+    this.maxRetries = maxRetries;
+  }
+}
@@ -1,24 +1,68 @@
 package bluegreen.manager.client.aws;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceClient;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.regions.Region;
 import com.amazonaws.regions.Regions;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.retry.RetryPolicy;
 import com.amazonaws.services.ec2.AmazonEC2Client;
 import com.amazonaws.services.elasticloadbalancing.AmazonElasticLoadBalancingClient;
 import com.amazonaws.services.rds.AmazonRDSClient;
 
+import bluegreen.manager.utils.Gauge;
+import bluegreen.manager.utils.MetricRegistry;
+
 /**
- * Makes client objects for communicating with AWS.
+ * Registry of the AWS SDK clients, one per service and region, each made on first use and shared for the life of
+ * the process.
+ * <p/>
+ * SDK clients are thread-safe, and each holds its own HTTP connection pool, so sharing them lets all jobs and tasks
+ * reuse pooled keep-alive connections rather than paying new TLS handshakes on every task.  The pool size, timeouts
+ * and keep-alive are configurable, and each client reports its pool statistics after every request.  The pool
+ * statistics are exported as bluegreen_aws_http_pool_* metrics.
+ * <p/>
+ * The clients never retry throttling errors themselves: AwsCallGovernor owns those retries, and would otherwise see
+ * neither the throttles nor the requests that the SDK retried underneath it.  Other retryable errors still get the
+ * SDK's default retries.
  */
 @Component
 public class AwsClientFactory
 {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AwsClientFactory.class);
+
+  static final int DEFAULT_MAX_CONNECTIONS = 10;
+  static final int DEFAULT_CONNECTION_TIMEOUT_MILLISECONDS = 10000;
+  static final int DEFAULT_SOCKET_TIMEOUT_MILLISECONDS = 30000;
+  static final long DEFAULT_CONNECTION_TTL_MILLISECONDS = 300000L;
+  static final boolean DEFAULT_TCP_KEEP_ALIVE = true;
+  private static final String SERVICE_EC2 = "ec2";
+  private static final String SERVICE_ELB = "elb";
+  private static final String SERVICE_RDS = "rds";
+
+  @Autowired
+  private MetricRegistry metricRegistry;
+
   @Value("${bluegreen.aws.access.key.id}")
   private String awsAccessKeyId;
 
@@ -28,8 +72,29 @@ public class AwsClientFactory
   @Value("${bluegreen.aws.region}")
   private String awsRegionName;
 
+  @Value("${bluegreen.aws.http.maxConnections:" + DEFAULT_MAX_CONNECTIONS + "}")
+  private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+  @Value("${bluegreen.aws.http.connectionTimeoutMilliseconds:" + DEFAULT_CONNECTION_TIMEOUT_MILLISECONDS + "}")
+  private int connectionTimeoutMilliseconds = DEFAULT_CONNECTION_TIMEOUT_MILLISECONDS;
+
+  @Value("${bluegreen.aws.http.socketTimeoutMilliseconds:" + DEFAULT_SOCKET_TIMEOUT_MILLISECONDS + "}")
+  private int socketTimeoutMilliseconds = DEFAULT_SOCKET_TIMEOUT_MILLISECONDS;
+
+  /**
+   * Pooled connections older than this are closed rather than reused, so endpoint DNS changes are picked up.
+   */
+  @Value("${bluegreen.aws.http.connectionTtlMilliseconds:" + DEFAULT_CONNECTION_TTL_MILLISECONDS + "}")
+  private long connectionTtlMilliseconds = DEFAULT_CONNECTION_TTL_MILLISECONDS;
+
+  @Value("${bluegreen.aws.http.tcpKeepAlive:" + DEFAULT_TCP_KEEP_ALIVE + "}")
+  private boolean tcpKeepAlive = DEFAULT_TCP_KEEP_ALIVE;
+
   private Region awsRegion;
 
+  private final Map<String, AmazonWebServiceClient> clients = new TreeMap<String, AmazonWebServiceClient>();
+  private final Map<String, ConnectionPoolStats> poolStats = new TreeMap<String, ConnectionPoolStats>();
+
   /**
    * Converts the configured region name to an aws region enum constant.
    */
@@ -40,38 +105,193 @@ public class AwsClientFactory
   }
 
   /**
-   * Constructs an AmazonEC2Client and sets the region.
+   * Releases the connection pools of all clients made so far.
+   */
+  @PreDestroy
+  public synchronized void shutdown()
+  {
+    for (AmazonWebServiceClient client : clients.values())
+    {
+      client.shutdown();
+    }
+    clients.clear();
+  }
+
+  /**
+   * Returns the shared AmazonEC2Client for the region.
    */
-  public AmazonEC2Client makeRegionalEc2Client()
+  public synchronized AmazonEC2Client makeRegionalEc2Client()
   {
-    AWSCredentials credentials = new BasicAWSCredentials(awsAccessKeyId, awsSecretAccessKey);
-    AmazonEC2Client ec2 = new AmazonEC2Client(credentials);
-    ec2.setRegion(awsRegion);
+    AmazonEC2Client ec2 = (AmazonEC2Client) clients.get(makeKey(SERVICE_EC2));
+    if (ec2 == null)
+    {
+      ConnectionPoolStats stats = makePoolStats(SERVICE_EC2);
+      ec2 = new AmazonEC2Client(makeCredentialsProvider(), makeClientConfiguration(), stats);
+      ec2.setRegion(awsRegion);
+      addClient(SERVICE_EC2, ec2);
+    }
     return ec2;
   }
 
   /**
-   * Constructs an AmazonElasticLoadBalancingClient and sets the region.
+   * Returns the shared AmazonElasticLoadBalancingClient for the region.
    */
-  public AmazonElasticLoadBalancingClient makeRegionalElbClient()
+  public synchronized AmazonElasticLoadBalancingClient makeRegionalElbClient()
   {
-    AWSCredentials credentials = new BasicAWSCredentials(awsAccessKeyId, awsSecretAccessKey);
-    AmazonElasticLoadBalancingClient elb = new AmazonElasticLoadBalancingClient(credentials);
-    elb.setRegion(awsRegion);
+    AmazonElasticLoadBalancingClient elb = (AmazonElasticLoadBalancingClient) clients.get(makeKey(SERVICE_ELB));
+    if (elb == null)
+    {
+      ConnectionPoolStats stats = makePoolStats(SERVICE_ELB);
+      elb = new AmazonElasticLoadBalancingClient(makeCredentialsProvider(), makeClientConfiguration(), stats);
+      elb.setRegion(awsRegion);
+      addClient(SERVICE_ELB, elb);
+    }
     return elb;
   }
 
   /**
-   * Constructs an AmazonRDSClient and sets the region.
+   * Returns the shared AmazonRDSClient for the region.
    */
-  public AmazonRDSClient makeRegionalRdsClient()
+  public synchronized AmazonRDSClient makeRegionalRdsClient()
   {
-    AWSCredentials credentials = new BasicAWSCredentials(awsAccessKeyId, awsSecretAccessKey);
-    AmazonRDSClient rds = new AmazonRDSClient(credentials);
-    rds.setRegion(awsRegion);
+    AmazonRDSClient rds = (AmazonRDSClient) clients.get(makeKey(SERVICE_RDS));
+    if (rds == null)
+    {
+      ConnectionPoolStats stats = makePoolStats(SERVICE_RDS);
+      rds = new AmazonRDSClient(makeCredentialsProvider(), makeClientConfiguration(), stats);
+      rds.setRegion(awsRegion);
+      addClient(SERVICE_RDS, rds);
+    }
     return rds;
   }
 
+  private String makeKey(String serviceName)
+  {
+    return serviceName + "/" + awsRegion.getName();
+  }
+
+  private ConnectionPoolStats makePoolStats(String serviceName)
+  {
+    ConnectionPoolStats stats = new ConnectionPoolStats();
+    poolStats.put(makeKey(serviceName), stats);
+    exportMetrics(makeKey(serviceName), stats);
+    return stats;
+  }
+
+  /**
+   * Exports the pool statistics of one client.  Counts are as of the client's latest request.
+   */
+  private void exportMetrics(String clientKey, final ConnectionPoolStats stats)
+  {
+    metricRegistry.gauge("bluegreen_aws_http_pool_leased", "AWS client connections in use", new Gauge()
+    {
+      @Override
+      public double getValue()
+      {
+        return stats.getLeased();
+      }
+    }, "client", clientKey);
+    metricRegistry.gauge("bluegreen_aws_http_pool_available", "AWS client idle pooled connections", new Gauge()
+    {
+      @Override
+      public double getValue()
+      {
+        return stats.getAvailable();
+      }
+    }, "client", clientKey);
+    metricRegistry.gauge("bluegreen_aws_http_pool_pending", "AWS client requests waiting for a connection", new Gauge()
+    {
+      @Override
+      public double getValue()
+      {
+        return stats.getPending();
+      }
+    }, "client", clientKey);
+    metricRegistry.gauge("bluegreen_aws_http_pool_max", "AWS client connection pool size", new Gauge()
+    {
+      @Override
+      public double getValue()
+      {
+        return maxConnections;
+      }
+    }, "client", clientKey);
+  }
+
+  private void addClient(String serviceName, AmazonWebServiceClient client)
+  {
+    LOGGER.debug("Made shared " + makeKey(serviceName) + " client, maxConnections " + maxConnections);
+    clients.put(makeKey(serviceName), client);
+  }
+
+  /**
+   * The SDK's default retry policy, except that throttling errors are not retried.
+   */
+  static final RetryPolicy RETRY_POLICY = new RetryPolicy(new RetryPolicy.RetryCondition()
+  {
+    @Override
+    public boolean shouldRetry(AmazonWebServiceRequest originalRequest, AmazonClientException exception,
+                               int retriesAttempted)
+    {
+      if (exception instanceof AmazonServiceException && AwsCallGovernor.isThrottling((AmazonServiceException) exception))
+      {
+        return false;
+      }
+      return PredefinedRetryPolicies.DEFAULT_RETRY_CONDITION.shouldRetry(originalRequest, exception, retriesAttempted);
+    }
+  }, PredefinedRetryPolicies.DEFAULT_BACKOFF_STRATEGY, PredefinedRetryPolicies.DEFAULT_MAX_ERROR_RETRY, true);
+
+  ClientConfiguration makeClientConfiguration()
+  {
+    ClientConfiguration clientConfiguration = new ClientConfiguration();
+    clientConfiguration.setRetryPolicy(RETRY_POLICY);
+    clientConfiguration.setMaxConnections(maxConnections);
+    clientConfiguration.setConnectionTimeout(connectionTimeoutMilliseconds);
+    clientConfiguration.setSocketTimeout(socketTimeoutMilliseconds);
+    clientConfiguration.setConnectionTTL(connectionTtlMilliseconds);
+    clientConfiguration.setUseTcpKeepAlive(tcpKeepAlive);
+    return clientConfiguration;
+  }
+
+  private AWSCredentialsProvider makeCredentialsProvider()
+  {
+    final AWSCredentials credentials = new BasicAWSCredentials(awsAccessKeyId, awsSecretAccessKey);
+    return new AWSCredentialsProvider()
+    {
+      @Override
+      public AWSCredentials getCredentials()
+      {
+        return credentials;
+      }
+
+      @Override
+      public void refresh()
+      {
+        //Static credentials, nothing to refresh
+      }
+    };
+  }
+
+  /**
+   * Connection pool statistics of each client made so far, keyed by "service/region".
+   */
+  public synchronized Map<String, ConnectionPoolStats> getPoolStats()
+  {
+    return Collections.unmodifiableMap(new TreeMap<String, ConnectionPoolStats>(poolStats));
+  }
+
+  /**
+   * One line of pool statistics per client made so far.
+   */
+  public synchronized List<String> summarizePoolStats()
+  {
+    List<String> lines = new ArrayList<String>();
+    for (Map.Entry<String, ConnectionPoolStats> entry : poolStats.entrySet())
+    {
+      lines.add(entry.getKey() + ": " + entry.getValue().summarize() + ", max " + maxConnections);
+    }
+    return lines;
+  }
+
   //Test purposes only
   void setAwsAccessKeyId(String awsAccessKeyId)
   {
@@ -89,4 +309,16 @@ public class AwsClientFactory
   {
     this.awsRegionName = awsRegionName;
   }
+
+  //Test purposes only
+  void setMetricRegistry(MetricRegistry metricRegistry)
+  {
+    this.metricRegistry = metricRegistry;
+  }
+
+  //Test purposes only
+  void setMaxConnections(int maxConnections)
+  {
+    this.maxConnections = maxConnections;
+  }
 }
@@ -0,0 +1,91 @@
+package bluegreen.manager.client.aws;
+
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.metrics.RequestMetricCollector;
+import com.amazonaws.util.AWSRequestMetrics;
+import com.amazonaws.util.TimingInfo;
+
+/**
+ * HTTP connection pool statistics of one shared AWS SDK client.
+ * <p/>
+ * The SDK samples its pool (available, leased and pending connections) as each request starts, but only reports the
+ * sample to an enabled request metric collector, so this is one.  Keeps the latest sample and the peaks.
+ */
+public class ConnectionPoolStats extends RequestMetricCollector
+{
+  private long numRequests;
+  private long available;
+  private long leased;
+  private long pending;
+  private long maxLeased;
+  private long maxPending;
+
+  @Override
+  public synchronized void collectMetrics(Request<?> request, Response<?> response)
+  {
+    ++numRequests;
+    AWSRequestMetrics awsRequestMetrics = request.getAWSRequestMetrics();
+    if (awsRequestMetrics == null)
+    {
+      return;
+    }
+    TimingInfo timingInfo = awsRequestMetrics.getTimingInfo();
+    available = getCounter(timingInfo, AWSRequestMetrics.Field.HttpClientPoolAvailableCount, available);
+    leased = getCounter(timingInfo, AWSRequestMetrics.Field.HttpClientPoolLeasedCount, leased);
+    pending = getCounter(timingInfo, AWSRequestMetrics.Field.HttpClientPoolPendingCount, pending);
+    maxLeased = Math.max(maxLeased, leased);
+    maxPending = Math.max(maxPending, pending);
+  }
+
+  private long getCounter(TimingInfo timingInfo, AWSRequestMetrics.Field field, long defaultValue)
+  {
+    Number value = timingInfo.getCounter(field.name());
+    return value == null ? defaultValue : value.longValue();
+  }
+
+  public synchronized long getNumRequests()
+  {
+    return numRequests;
+  }
+
+  /**
+   * Idle pooled connections, ready for reuse, as of the latest request.
+   */
+  public synchronized long getAvailable()
+  {
+    return available;
+  }
+
+  /**
+   * Connections in use, as of the latest request.
+   */
+  public synchronized long getLeased()
+  {
+    return leased;
+  }
+
+  /**
+   * Requests waiting for a connection, as of the latest request.
+   */
+  public synchronized long getPending()
+  {
+    return pending;
+  }
+
+  public synchronized long getMaxLeased()
+  {
+    return maxLeased;
+  }
+
+  public synchronized long getMaxPending()
+  {
+    return maxPending;
+  }
+
+  public synchronized String summarize()
+  {
+    return "requests=" + numRequests + ", available=" + available + ", leased=" + leased + " (peak " + maxLeased
+        + "), pending=" + pending + " (peak " + maxPending + ")";
+  }
+}
@@ -22,20 +22,32 @@ import static bluegreen.manager.client.aws.Ec2InstanceFilter.PRIVATE_IP_ADDRESS;
 /**
  * Sends commands to Amazon EC2.
  * <p/>
- * All methods here communicate with Amazon and use a StopWatch.
+ * All methods here communicate with Amazon through the AwsCallGovernor, and use a StopWatch.
  */
 public class Ec2Client
 {
   private static final Logger LOGGER = LoggerFactory.getLogger(Ec2Client.class);
+  static final String SERVICE_NAME = "ec2";
 
   /**
    * Synchronous client, requests will block til done.
    */
   private AmazonEC2Client awsEc2Client;
 
+  /**
+   * Shared rate limits and throttling retries, or null to call AWS directly.
+   */
+  private AwsCallGovernor awsCallGovernor;
+
   public Ec2Client(AmazonEC2Client awsEc2Client)
+  {
+    this(awsEc2Client, null);
+  }
+
+  public Ec2Client(AmazonEC2Client awsEc2Client, AwsCallGovernor awsCallGovernor)
   {
     this.awsEc2Client = awsEc2Client;
+    this.awsCallGovernor = awsCallGovernor;
   }
 
   /**
@@ -54,9 +66,16 @@ public class Ec2Client
       stopWatch.start();
       List<Filter> filters = new ArrayList<Filter>();
       filters.add(new Filter(PRIVATE_IP_ADDRESS.toString(), Arrays.asList(privateIpAddress)));
-      DescribeInstancesRequest request = new DescribeInstancesRequest();
+      final DescribeInstancesRequest request = new DescribeInstancesRequest();
       request.setFilters(filters);
-      DescribeInstancesResult result = awsEc2Client.describeInstances(request);
+      DescribeInstancesResult result = governed("describeInstances", new AwsCall<DescribeInstancesResult>()
+      {
+        @Override
+        public DescribeInstancesResult call()
+        {
+          return awsEc2Client.describeInstances(request);
+        }
+      });
       final String context = "privateIpAddress " + privateIpAddress;
       if (result == null || CollectionUtils.isEmpty(result.getReservations()))
       {
@@ -94,4 +113,11 @@ public class Ec2Client
     return reservation.getInstances().get(0);
   }
 
+  /**
+   * Runs the request through the governor, or directly if there is none.
+   */
+  private <T> T governed(String operation, AwsCall<T> awsCall)
+  {
+    return awsCallGovernor == null ? awsCall.call() : awsCallGovernor.call(SERVICE_NAME, operation, awsCall);
+  }
 }
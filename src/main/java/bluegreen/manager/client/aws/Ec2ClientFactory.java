@@ -14,8 +14,11 @@ public class Ec2ClientFactory
   @Autowired
   private AwsClientFactory awsClientFactory;
 
+  @Autowired
+  private AwsCallGovernor awsCallGovernor;
+
   public Ec2Client create()
   {
-    return new Ec2Client(awsClientFactory.makeRegionalEc2Client());
+    return new Ec2Client(awsClientFactory.makeRegionalEc2Client(), awsCallGovernor);
   }
 }
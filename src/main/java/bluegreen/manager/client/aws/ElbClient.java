@@ -10,6 +10,7 @@ import org.slf4j.LoggerFactory;
 
 import com.amazonaws.services.elasticloadbalancing.AmazonElasticLoadBalancingClient;
 import com.amazonaws.services.elasticloadbalancing.model.DeregisterInstancesFromLoadBalancerRequest;
+import com.amazonaws.services.elasticloadbalancing.model.DeregisterInstancesFromLoadBalancerResult;
 import com.amazonaws.services.elasticloadbalancing.model.DescribeInstanceHealthRequest;
 import com.amazonaws.services.elasticloadbalancing.model.DescribeInstanceHealthResult;
 import com.amazonaws.services.elasticloadbalancing.model.DescribeLoadBalancersRequest;
@@ -18,24 +19,37 @@ import com.amazonaws.services.elasticloadbalancing.model.Instance;
 import com.amazonaws.services.elasticloadbalancing.model.InstanceState;
 import com.amazonaws.services.elasticloadbalancing.model.LoadBalancerDescription;
 import com.amazonaws.services.elasticloadbalancing.model.RegisterInstancesWithLoadBalancerRequest;
+import com.amazonaws.services.elasticloadbalancing.model.RegisterInstancesWithLoadBalancerResult;
 
 /**
  * Sends commands to Amazon ElasticLoadBalancing.
  * <p/>
- * All methods here communicate with Amazon and use a StopWatch.
+ * All methods here communicate with Amazon through the AwsCallGovernor, and use a StopWatch.
  */
 public class ElbClient
 {
   private static final Logger LOGGER = LoggerFactory.getLogger(ElbClient.class);
+  static final String SERVICE_NAME = "elb";
 
   /**
    * Synchronous client, requests will block til done.
    */
   private AmazonElasticLoadBalancingClient awsElbClient;
 
+  /**
+   * Shared rate limits and throttling retries, or null to call AWS directly.
+   */
+  private AwsCallGovernor awsCallGovernor;
+
   public ElbClient(AmazonElasticLoadBalancingClient awsElbClient)
+  {
+    this(awsElbClient, null);
+  }
+
+  public ElbClient(AmazonElasticLoadBalancingClient awsElbClient, AwsCallGovernor awsCallGovernor)
   {
     this.awsElbClient = awsElbClient;
+    this.awsCallGovernor = awsCallGovernor;
   }
 
   /**
@@ -52,10 +66,17 @@ public class ElbClient
     try
     {
       stopWatch.start();
-      RegisterInstancesWithLoadBalancerRequest request = new RegisterInstancesWithLoadBalancerRequest();
+      final RegisterInstancesWithLoadBalancerRequest request = new RegisterInstancesWithLoadBalancerRequest();
       request.setLoadBalancerName(elbName);
       request.setInstances(Arrays.asList(new Instance(ec2InstanceId)));
-      awsElbClient.registerInstancesWithLoadBalancer(request);
+      governed("registerInstancesWithLoadBalancer", new AwsCall<RegisterInstancesWithLoadBalancerResult>()
+      {
+        @Override
+        public RegisterInstancesWithLoadBalancerResult call()
+        {
+          return awsElbClient.registerInstancesWithLoadBalancer(request);
+        }
+      });
       //Currently not doing anything with the RegisterInstancesWithLoadBalancerResult
     }
     finally
@@ -78,10 +99,17 @@ public class ElbClient
     try
     {
       stopWatch.start();
-      DeregisterInstancesFromLoadBalancerRequest request = new DeregisterInstancesFromLoadBalancerRequest();
+      final DeregisterInstancesFromLoadBalancerRequest request = new DeregisterInstancesFromLoadBalancerRequest();
       request.setLoadBalancerName(elbName);
       request.setInstances(Arrays.asList(new Instance(ec2InstanceId)));
-      awsElbClient.deregisterInstancesFromLoadBalancer(request);
+      governed("deregisterInstancesFromLoadBalancer", new AwsCall<DeregisterInstancesFromLoadBalancerResult>()
+      {
+        @Override
+        public DeregisterInstancesFromLoadBalancerResult call()
+        {
+          return awsElbClient.deregisterInstancesFromLoadBalancer(request);
+        }
+      });
       //Currently not doing anything with the DeregisterInstancesFromLoadBalancerResult
     }
     finally
@@ -102,10 +130,18 @@ public class ElbClient
     try
     {
       stopWatch.start();
-      DescribeInstanceHealthRequest request = new DescribeInstanceHealthRequest();
+      final DescribeInstanceHealthRequest request = new DescribeInstanceHealthRequest();
       request.setLoadBalancerName(elbName);
       request.setInstances(Arrays.asList(new Instance(ec2InstanceId)));
-      DescribeInstanceHealthResult result = awsElbClient.describeInstanceHealth(request);
+      DescribeInstanceHealthResult result = governed("describeInstanceHealth",
+          new AwsCall<DescribeInstanceHealthResult>()
+          {
+            @Override
+            public DescribeInstanceHealthResult call()
+            {
+              return awsElbClient.describeInstanceHealth(request);
+            }
+          });
       if (result == null || CollectionUtils.isEmpty(result.getInstanceStates()))
       {
         throw new RuntimeException("ELB '" + elbName + "' didn't match instance id '" + ec2InstanceId + "'");
@@ -138,9 +174,16 @@ public class ElbClient
     try
     {
       stopWatch.start();
-      DescribeLoadBalancersRequest request = new DescribeLoadBalancersRequest();
+      final DescribeLoadBalancersRequest request = new DescribeLoadBalancersRequest();
       request.setLoadBalancerNames(Arrays.asList(elbName));
-      DescribeLoadBalancersResult result = awsElbClient.describeLoadBalancers(request);
+      DescribeLoadBalancersResult result = governed("describeLoadBalancers", new AwsCall<DescribeLoadBalancersResult>()
+      {
+        @Override
+        public DescribeLoadBalancersResult call()
+        {
+          return awsElbClient.describeLoadBalancers(request);
+        }
+      });
       if (result == null || CollectionUtils.isEmpty(result.getLoadBalancerDescriptions()))
       {
         throw new RuntimeException("ELB '" + elbName + "' was not found");
@@ -159,6 +202,14 @@ public class ElbClient
     }
   }
 
+  /**
+   * Runs the request through the governor, or directly if there is none.
+   */
+  private <T> T governed(String operation, AwsCall<T> awsCall)
+  {
+    return awsCallGovernor == null ? awsCall.call() : awsCallGovernor.call(SERVICE_NAME, operation, awsCall);
+  }
+
   private void assertNonBlankArgs(String elbName, String ec2InstanceId)
   {
     if (StringUtils.isBlank(elbName))
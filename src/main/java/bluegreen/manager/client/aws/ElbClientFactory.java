@@ -14,8 +14,11 @@ public class ElbClientFactory
   @Autowired
   private AwsClientFactory awsClientFactory;
 
+  @Autowired
+  private AwsCallGovernor awsCallGovernor;
+
   public ElbClient create()
   {
-    return new ElbClient(awsClientFactory.makeRegionalElbClient());
+    return new ElbClient(awsClientFactory.makeRegionalElbClient(), awsCallGovernor);
   }
 }
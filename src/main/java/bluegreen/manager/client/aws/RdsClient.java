@@ -1,6 +1,8 @@
 package bluegreen.manager.client.aws;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -10,6 +12,7 @@ import org.slf4j.LoggerFactory;
 
 import com.amazonaws.services.rds.AmazonRDSClient;
 import com.amazonaws.services.rds.model.CopyDBParameterGroupRequest;
+import com.amazonaws.services.rds.model.CopyDBSnapshotRequest;
 import com.amazonaws.services.rds.model.CreateDBSnapshotRequest;
 import com.amazonaws.services.rds.model.DBInstance;
 import com.amazonaws.services.rds.model.DBParameterGroup;
@@ -22,6 +25,7 @@ import com.amazonaws.services.rds.model.DescribeDBInstancesRequest;
 import com.amazonaws.services.rds.model.DescribeDBInstancesResult;
 import com.amazonaws.services.rds.model.DescribeDBSnapshotsRequest;
 import com.amazonaws.services.rds.model.DescribeDBSnapshotsResult;
+import com.amazonaws.services.rds.model.Filter;
 import com.amazonaws.services.rds.model.ModifyDBInstanceRequest;
 import com.amazonaws.services.rds.model.RebootDBInstanceRequest;
 import com.amazonaws.services.rds.model.RestoreDBInstanceFromDBSnapshotRequest;
@@ -29,21 +33,44 @@ import com.amazonaws.services.rds.model.RestoreDBInstanceFromDBSnapshotRequest;
 /**
  * CRUD operations on Amazon RDS instances.
  * <p/>
- * All operations communicate with Amazon and use a StopWatch.
+ * All operations communicate with Amazon through the AwsCallGovernor, and use a StopWatch.
  */
 public class RdsClient
 {
   private static final Logger LOGGER = LoggerFactory.getLogger(RdsClient.class);
+  static final String SERVICE_NAME = "rds";
   private static final String PARAM_GROUP_DESCRIPTION = "Nonshared so we can toggle read_only param.";
+  private static final String FILTER_INSTANCE_ID = "db-instance-id";
+  private static final String FILTER_SNAPSHOT_ID = "db-snapshot-id";
+  private static final String SNAPSHOT_TYPE_MANUAL = "manual";
+  private static final int MAX_RECORDS = 100;
 
   /**
    * Synchronous client, requests will block til done.
    */
   private AmazonRDSClient awsRdsClient;
 
+  /**
+   * Shared rate limits and throttling retries, or null to call AWS directly.
+   */
+  private AwsCallGovernor awsCallGovernor;
+
+  /**
+   * Shared by all clients to batch status polls, or null to describe each one separately.
+   */
+  private RdsDescribeCoalescer rdsDescribeCoalescer;
+
   public RdsClient(AmazonRDSClient awsRdsClient)
+  {
+    this(awsRdsClient, null, null);
+  }
+
+  public RdsClient(AmazonRDSClient awsRdsClient, AwsCallGovernor awsCallGovernor,
+                   RdsDescribeCoalescer rdsDescribeCoalescer)
   {
     this.awsRdsClient = awsRdsClient;
+    this.awsCallGovernor = awsCallGovernor;
+    this.rdsDescribeCoalescer = rdsDescribeCoalescer;
   }
 
   /**
@@ -56,9 +83,16 @@ public class RdsClient
     try
     {
       stopWatch.start();
-      DescribeDBInstancesRequest request = new DescribeDBInstancesRequest();
+      final DescribeDBInstancesRequest request = new DescribeDBInstancesRequest();
       request.setDBInstanceIdentifier(instanceName);
-      DescribeDBInstancesResult result = awsRdsClient.describeDBInstances(request);
+      DescribeDBInstancesResult result = governed("describeDBInstances", new AwsCall<DescribeDBInstancesResult>()
+      {
+        @Override
+        public DescribeDBInstancesResult call()
+        {
+          return awsRdsClient.describeDBInstances(request);
+        }
+      });
       if (result == null || CollectionUtils.isEmpty(result.getDBInstances()))
       {
         // Note: this branch should never execute.  We expect Amazon to throw DBInstanceNotFoundException instead.
@@ -87,9 +121,16 @@ public class RdsClient
     try
     {
       stopWatch.start();
-      DescribeDBSnapshotsRequest request = new DescribeDBSnapshotsRequest();
+      final DescribeDBSnapshotsRequest request = new DescribeDBSnapshotsRequest();
       request.setDBSnapshotIdentifier(snapshotId);
-      DescribeDBSnapshotsResult result = awsRdsClient.describeDBSnapshots(request);
+      DescribeDBSnapshotsResult result = governed("describeDBSnapshots", new AwsCall<DescribeDBSnapshotsResult>()
+      {
+        @Override
+        public DescribeDBSnapshotsResult call()
+        {
+          return awsRdsClient.describeDBSnapshots(request);
+        }
+      });
       if (result == null || CollectionUtils.isEmpty(result.getDBSnapshots()))
       {
         throw new RuntimeException("RDS cannot find snapshot '" + snapshotId + "'");
@@ -107,6 +148,186 @@ public class RdsClient
     }
   }
 
+  /**
+   * Gets descriptions of all the requested RDS instances that exist, in one filtered request per page of results.
+   * Instances not found are simply absent from the list.
+   */
+  public List<DBInstance> describeInstances(Collection<String> instanceNames)
+  {
+    LOGGER.debug("describeDBInstances(instanceNames: " + StringUtils.join(instanceNames, ", ") + ")");
+    StopWatch stopWatch = new StopWatch();
+    try
+    {
+      stopWatch.start();
+      List<DBInstance> dbInstances = new ArrayList<DBInstance>();
+      final DescribeDBInstancesRequest request = new DescribeDBInstancesRequest();
+      request.setFilters(makeFilters(FILTER_INSTANCE_ID, instanceNames));
+      request.setMaxRecords(MAX_RECORDS);
+      String marker = null;
+      do
+      {
+        request.setMarker(marker);
+        DescribeDBInstancesResult result = governed("describeDBInstances", new AwsCall<DescribeDBInstancesResult>()
+        {
+          @Override
+          public DescribeDBInstancesResult call()
+          {
+            return awsRdsClient.describeDBInstances(request);
+          }
+        });
+        if (result == null)
+        {
+          break;
+        }
+        if (result.getDBInstances() != null)
+        {
+          dbInstances.addAll(result.getDBInstances());
+        }
+        marker = result.getMarker();
+      }
+      while (StringUtils.isNotBlank(marker));
+      return dbInstances;
+    }
+    finally
+    {
+      stopWatch.stop();
+      LOGGER.debug("describeDBInstances time elapsed: " + stopWatch);
+    }
+  }
+
+  /**
+   * Gets descriptions of all the requested RDS snapshots that exist, in one filtered request per page of results.
+   * Snapshots not found are simply absent from the list.
+   */
+  public List<DBSnapshot> describeSnapshots(Collection<String> snapshotIds)
+  {
+    LOGGER.debug("describeDBSnapshots(snapshotIds: " + StringUtils.join(snapshotIds, ", ") + ")");
+    StopWatch stopWatch = new StopWatch();
+    try
+    {
+      stopWatch.start();
+      List<DBSnapshot> dbSnapshots = new ArrayList<DBSnapshot>();
+      final DescribeDBSnapshotsRequest request = new DescribeDBSnapshotsRequest();
+      request.setFilters(makeFilters(FILTER_SNAPSHOT_ID, snapshotIds));
+      request.setMaxRecords(MAX_RECORDS);
+      String marker = null;
+      do
+      {
+        request.setMarker(marker);
+        DescribeDBSnapshotsResult result = governed("describeDBSnapshots", new AwsCall<DescribeDBSnapshotsResult>()
+        {
+          @Override
+          public DescribeDBSnapshotsResult call()
+          {
+            return awsRdsClient.describeDBSnapshots(request);
+          }
+        });
+        if (result == null)
+        {
+          break;
+        }
+        if (result.getDBSnapshots() != null)
+        {
+          dbSnapshots.addAll(result.getDBSnapshots());
+        }
+        marker = result.getMarker();
+      }
+      while (StringUtils.isNotBlank(marker));
+      return dbSnapshots;
+    }
+    finally
+    {
+      stopWatch.stop();
+      LOGGER.debug("describeDBSnapshots time elapsed: " + stopWatch);
+    }
+  }
+
+  /**
+   * Gets descriptions of all the manual snapshots of the RDS instance, one request per page of results.
+   */
+  public List<DBSnapshot> describeInstanceSnapshots(String instanceName)
+  {
+    LOGGER.debug("describeDBSnapshots(instanceName: " + instanceName + ")");
+    StopWatch stopWatch = new StopWatch();
+    try
+    {
+      stopWatch.start();
+      List<DBSnapshot> dbSnapshots = new ArrayList<DBSnapshot>();
+      final DescribeDBSnapshotsRequest request = new DescribeDBSnapshotsRequest();
+      request.setDBInstanceIdentifier(instanceName);
+      request.setSnapshotType(SNAPSHOT_TYPE_MANUAL);
+      request.setMaxRecords(MAX_RECORDS);
+      String marker = null;
+      do
+      {
+        request.setMarker(marker);
+        DescribeDBSnapshotsResult result = governed("describeDBSnapshots", new AwsCall<DescribeDBSnapshotsResult>()
+        {
+          @Override
+          public DescribeDBSnapshotsResult call()
+          {
+            return awsRdsClient.describeDBSnapshots(request);
+          }
+        });
+        if (result == null)
+        {
+          break;
+        }
+        if (result.getDBSnapshots() != null)
+        {
+          dbSnapshots.addAll(result.getDBSnapshots());
+        }
+        marker = result.getMarker();
+      }
+      while (StringUtils.isNotBlank(marker));
+      return dbSnapshots;
+    }
+    finally
+    {
+      stopWatch.stop();
+      LOGGER.debug("describeDBSnapshots time elapsed: " + stopWatch);
+    }
+  }
+
+  private List<Filter> makeFilters(String filterName, Collection<String> values)
+  {
+    List<Filter> filters = new ArrayList<Filter>();
+    filters.add(new Filter().withName(filterName).withValues(values));
+    return filters;
+  }
+
+  /**
+   * Gets the current description of an RDS instance whose progress is being polled.  Throws
+   * DBInstanceNotFoundException if not found.
+   * <p/>
+   * Same as describeInstance, except that concurrent polls of different instances may be served by one shared
+   * request, so the description may be a few seconds old.
+   */
+  public DBInstance pollInstance(String instanceName)
+  {
+    if (rdsDescribeCoalescer == null)
+    {
+      return describeInstance(instanceName);
+    }
+    return rdsDescribeCoalescer.describeInstance(this, instanceName);
+  }
+
+  /**
+   * Gets the current description of an RDS snapshot whose progress is being polled.  Throws
+   * DBSnapshotNotFoundException if not found.
+   * <p/>
+   * Same as describeSnapshot, except that concurrent polls of different snapshots may be served by one shared
+   * request, so the description may be a few seconds old.
+   */
+  public DBSnapshot pollSnapshot(String snapshotId)
+  {
+    if (rdsDescribeCoalescer == null)
+    {
+      return describeSnapshot(snapshotId);
+    }
+    return rdsDescribeCoalescer.describeSnapshot(this, snapshotId);
+  }
+
   /**
    * Creates an RDS instance snapshot using the specified snapshot id.
    * <p/>
@@ -119,8 +340,17 @@ public class RdsClient
     try
     {
       stopWatch.start();
-      CreateDBSnapshotRequest request = new CreateDBSnapshotRequest(snapshotId, instanceName);
-      return awsRdsClient.createDBSnapshot(request);
+      final CreateDBSnapshotRequest request = new CreateDBSnapshotRequest(snapshotId, instanceName);
+      DBSnapshot result = governed("createDBSnapshot", new AwsCall<DBSnapshot>()
+      {
+        @Override
+        public DBSnapshot call()
+        {
+          return awsRdsClient.createDBSnapshot(request);
+        }
+      });
+      evictSnapshot(snapshotId);
+      return result;
     }
     finally
     {
@@ -129,6 +359,39 @@ public class RdsClient
     }
   }
 
+  /**
+   * Copies an RDS snapshot to a new snapshot id.
+   * <p/>
+   * Caller must wait for status=available afterwards.
+   */
+  public DBSnapshot copySnapshot(String sourceSnapshotId, String targetSnapshotId)
+  {
+    LOGGER.debug("copyDBSnapshot(sourceSnapshotId: " + sourceSnapshotId + ", targetSnapshotId: " + targetSnapshotId + ")");
+    StopWatch stopWatch = new StopWatch();
+    try
+    {
+      stopWatch.start();
+      final CopyDBSnapshotRequest request = new CopyDBSnapshotRequest();
+      request.setSourceDBSnapshotIdentifier(sourceSnapshotId);
+      request.setTargetDBSnapshotIdentifier(targetSnapshotId);
+      DBSnapshot result = governed("copyDBSnapshot", new AwsCall<DBSnapshot>()
+      {
+        @Override
+        public DBSnapshot call()
+        {
+          return awsRdsClient.copyDBSnapshot(request);
+        }
+      });
+      evictSnapshot(targetSnapshotId);
+      return result;
+    }
+    finally
+    {
+      stopWatch.stop();
+      LOGGER.debug("copyDBSnapshot time elapsed: " + stopWatch);
+    }
+  }
+
   /**
    * Copies an RDS parameter group.
    */
@@ -140,11 +403,18 @@ public class RdsClient
     try
     {
       stopWatch.start();
-      CopyDBParameterGroupRequest request = new CopyDBParameterGroupRequest();
+      final CopyDBParameterGroupRequest request = new CopyDBParameterGroupRequest();
       request.setSourceDBParameterGroupIdentifier(sourceParamGroupName);
       request.setTargetDBParameterGroupIdentifier(destParamGroupName);
       request.setTargetDBParameterGroupDescription(PARAM_GROUP_DESCRIPTION);
-      return awsRdsClient.copyDBParameterGroup(request);
+      return governed("copyDBParameterGroup", new AwsCall<DBParameterGroup>()
+      {
+        @Override
+        public DBParameterGroup call()
+        {
+          return awsRdsClient.copyDBParameterGroup(request);
+        }
+      });
     }
     finally
     {
@@ -168,10 +438,19 @@ public class RdsClient
     try
     {
       stopWatch.start();
-      RestoreDBInstanceFromDBSnapshotRequest request = new RestoreDBInstanceFromDBSnapshotRequest(
+      final RestoreDBInstanceFromDBSnapshotRequest request = new RestoreDBInstanceFromDBSnapshotRequest(
           instanceName, snapshotId);
       request.setDBSubnetGroupName(subnetGroupName);
-      return awsRdsClient.restoreDBInstanceFromDBSnapshot(request);
+      DBInstance result = governed("restoreDBInstanceFromDBSnapshot", new AwsCall<DBInstance>()
+      {
+        @Override
+        public DBInstance call()
+        {
+          return awsRdsClient.restoreDBInstanceFromDBSnapshot(request);
+        }
+      });
+      evictInstance(instanceName);
+      return result;
     }
     finally
     {
@@ -195,10 +474,53 @@ public class RdsClient
     try
     {
       stopWatch.start();
-      ModifyDBInstanceRequest request = new ModifyDBInstanceRequest(instanceName);
+      final ModifyDBInstanceRequest request = new ModifyDBInstanceRequest(instanceName);
       request.setVpcSecurityGroupIds(vpcSecurityGroupIds);
       request.setDBParameterGroupName(paramGroupName);
-      return awsRdsClient.modifyDBInstance(request);
+      DBInstance result = governed("modifyDBInstance", new AwsCall<DBInstance>()
+      {
+        @Override
+        public DBInstance call()
+        {
+          return awsRdsClient.modifyDBInstance(request);
+        }
+      });
+      evictInstance(instanceName);
+      return result;
+    }
+    finally
+    {
+      stopWatch.stop();
+      LOGGER.debug("modifyDBInstance time elapsed: " + stopWatch);
+    }
+  }
+
+  /**
+   * Renames the instance, effective immediately.  The response still describes the instance under its old name.
+   * <p/>
+   * Caller must wait for the new name to be found with status=available afterwards.
+   */
+  public DBInstance renameInstance(String instanceName, String newInstanceName)
+  {
+    LOGGER.debug("modifyDBInstance(instanceName: " + instanceName + ", newInstanceName: " + newInstanceName + ")");
+    StopWatch stopWatch = new StopWatch();
+    try
+    {
+      stopWatch.start();
+      final ModifyDBInstanceRequest request = new ModifyDBInstanceRequest(instanceName);
+      request.setNewDBInstanceIdentifier(newInstanceName);
+      request.setApplyImmediately(true);
+      DBInstance result = governed("modifyDBInstance", new AwsCall<DBInstance>()
+      {
+        @Override
+        public DBInstance call()
+        {
+          return awsRdsClient.modifyDBInstance(request);
+        }
+      });
+      evictInstance(instanceName);
+      evictInstance(newInstanceName);
+      return result;
     }
     finally
     {
@@ -220,9 +542,18 @@ public class RdsClient
     try
     {
       stopWatch.start();
-      DeleteDBInstanceRequest request = new DeleteDBInstanceRequest(instanceName);
+      final DeleteDBInstanceRequest request = new DeleteDBInstanceRequest(instanceName);
       request.setSkipFinalSnapshot(true);
-      return awsRdsClient.deleteDBInstance(request);
+      DBInstance result = governed("deleteDBInstance", new AwsCall<DBInstance>()
+      {
+        @Override
+        public DBInstance call()
+        {
+          return awsRdsClient.deleteDBInstance(request);
+        }
+      });
+      evictInstance(instanceName);
+      return result;
     }
     finally
     {
@@ -243,8 +574,17 @@ public class RdsClient
     try
     {
       stopWatch.start();
-      RebootDBInstanceRequest request = new RebootDBInstanceRequest(instanceId);
-      return awsRdsClient.rebootDBInstance(request);
+      final RebootDBInstanceRequest request = new RebootDBInstanceRequest(instanceId);
+      DBInstance result = governed("rebootDBInstance", new AwsCall<DBInstance>()
+      {
+        @Override
+        public DBInstance call()
+        {
+          return awsRdsClient.rebootDBInstance(request);
+        }
+      });
+      evictInstance(instanceId);
+      return result;
     }
     finally
     {
@@ -263,8 +603,16 @@ public class RdsClient
     try
     {
       stopWatch.start();
-      DeleteDBParameterGroupRequest request = new DeleteDBParameterGroupRequest(paramGroupName);
-      awsRdsClient.deleteDBParameterGroup(request);
+      final DeleteDBParameterGroupRequest request = new DeleteDBParameterGroupRequest(paramGroupName);
+      governed("deleteDBParameterGroup", new AwsCall<Void>()
+      {
+        @Override
+        public Void call()
+        {
+          awsRdsClient.deleteDBParameterGroup(request);
+          return null;
+        }
+      });
     }
     finally
     {
@@ -285,8 +633,17 @@ public class RdsClient
     try
     {
       stopWatch.start();
-      DeleteDBSnapshotRequest request = new DeleteDBSnapshotRequest(snapshotId);
-      return awsRdsClient.deleteDBSnapshot(request);
+      final DeleteDBSnapshotRequest request = new DeleteDBSnapshotRequest(snapshotId);
+      DBSnapshot result = governed("deleteDBSnapshot", new AwsCall<DBSnapshot>()
+      {
+        @Override
+        public DBSnapshot call()
+        {
+          return awsRdsClient.deleteDBSnapshot(request);
+        }
+      });
+      evictSnapshot(snapshotId);
+      return result;
     }
     finally
     {
@@ -294,4 +651,34 @@ public class RdsClient
       LOGGER.debug("deleteDBSnapshot time elapsed: " + stopWatch);
     }
   }
+
+  /**
+   * Drops any batched description of the instance, so that the next poll sees the effect of a change just requested.
+   */
+  private void evictInstance(String instanceName)
+  {
+    if (rdsDescribeCoalescer != null)
+    {
+      rdsDescribeCoalescer.evictInstance(instanceName);
+    }
+  }
+
+  /**
+   * Drops any batched description of the snapshot, so that the next poll sees the effect of a change just requested.
+   */
+  private void evictSnapshot(String snapshotId)
+  {
+    if (rdsDescribeCoalescer != null)
+    {
+      rdsDescribeCoalescer.evictSnapshot(snapshotId);
+    }
+  }
+
+  /**
+   * Runs the request through the governor, or directly if there is none.
+   */
+  private <T> T governed(String operation, AwsCall<T> awsCall)
+  {
+    return awsCallGovernor == null ? awsCall.call() : awsCallGovernor.call(SERVICE_NAME, operation, awsCall);
+  }
 }
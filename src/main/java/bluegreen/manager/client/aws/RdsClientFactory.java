@@ -14,8 +14,17 @@ public class RdsClientFactory
   @Autowired
   private AwsClientFactory awsClientFactory;
 
+  @Autowired
+  private AwsCallGovernor awsCallGovernor;
+
+  @Autowired
+  private RdsDescribeCoalescer rdsDescribeCoalescer;
+
+  /**
+   * Makes a client whose status polls are batched with those of all other clients.
+   */
   public RdsClient create()
   {
-    return new RdsClient(awsClientFactory.makeRegionalRdsClient());
+    return new RdsClient(awsClientFactory.makeRegionalRdsClient(), awsCallGovernor, rdsDescribeCoalescer);
   }
 }
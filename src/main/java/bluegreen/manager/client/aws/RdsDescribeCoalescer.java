@@ -0,0 +1,302 @@
+package bluegreen.manager.client.aws;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import com.amazonaws.services.rds.model.DBInstance;
+import com.amazonaws.services.rds.model.DBInstanceNotFoundException;
+import com.amazonaws.services.rds.model.DBSnapshot;
+import com.amazonaws.services.rds.model.DBSnapshotNotFoundException;
+
+import bluegreen.manager.utils.NowFactory;
+
+/**
+ * Batches the status polls of all in-flight RDS operations, so that several restores or snapshots waiting at once
+ * do not each issue their own describe request and trip RDS api throttling.
+ * <p/>
+ * An identifier is in flight from its first poll until it has not been polled for a while.  When a poll finds no
+ * fresh description of its identifier, one filtered describe request fetches every in-flight identifier of that
+ * resource type, and the results serve all polls that follow within maxAgeMilliseconds.  Polls that arrive while
+ * the request is out wait for it rather than issuing their own.
+ * <p/>
+ * RdsClient evicts an identifier whenever it requests a change to it, so that a wait never starts from a description
+ * fetched before the change.
+ * <p/>
+ * Keeps count of polls and describe requests, to report how many api calls were saved.
+ */
+@Lazy
+@Component
+public class RdsDescribeCoalescer
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(RdsDescribeCoalescer.class);
+  static final long DEFAULT_MAX_AGE_MILLISECONDS = 3000L;
+  static final long DEFAULT_IN_FLIGHT_MILLISECONDS = 600000L;
+
+  @Autowired
+  private NowFactory nowFactory;
+
+  /**
+   * A batched description older than this is not used; the poll triggers a new request.
+   */
+  @Value("${bluegreen.rds.describe.maxAgeMilliseconds:" + DEFAULT_MAX_AGE_MILLISECONDS + "}")
+  private long maxAgeMilliseconds = DEFAULT_MAX_AGE_MILLISECONDS;
+
+  /**
+   * An identifier not polled for this long is no longer included in batched requests.
+   */
+  @Value("${bluegreen.rds.describe.inFlightMilliseconds:" + DEFAULT_IN_FLIGHT_MILLISECONDS + "}")
+  private long inFlightMilliseconds = DEFAULT_IN_FLIGHT_MILLISECONDS;
+
+  private final Batch<DBInstance> instanceBatch = new Batch<DBInstance>("instance")
+  {
+    @Override
+    protected DBInstance describeOne(RdsClient rdsClient, String id)
+    {
+      return rdsClient.describeInstance(id);
+    }
+
+    @Override
+    protected List<DBInstance> describeMany(RdsClient rdsClient, List<String> ids)
+    {
+      return rdsClient.describeInstances(ids);
+    }
+
+    @Override
+    protected String getId(DBInstance dbInstance)
+    {
+      return dbInstance.getDBInstanceIdentifier();
+    }
+
+    @Override
+    protected RuntimeException notFound(String id)
+    {
+      return new DBInstanceNotFoundException("RDS cannot find instance '" + id + "'");
+    }
+  };
+
+  private final Batch<DBSnapshot> snapshotBatch = new Batch<DBSnapshot>("snapshot")
+  {
+    @Override
+    protected DBSnapshot describeOne(RdsClient rdsClient, String id)
+    {
+      return rdsClient.describeSnapshot(id);
+    }
+
+    @Override
+    protected List<DBSnapshot> describeMany(RdsClient rdsClient, List<String> ids)
+    {
+      return rdsClient.describeSnapshots(ids);
+    }
+
+    @Override
+    protected String getId(DBSnapshot dbSnapshot)
+    {
+      return dbSnapshot.getDBSnapshotIdentifier();
+    }
+
+    @Override
+    protected RuntimeException notFound(String id)
+    {
+      return new DBSnapshotNotFoundException("RDS cannot find snapshot '" + id + "'");
+    }
+  };
+
+  /**
+   * Returns a recent description of the instance, using the rdsClient if a new request is needed.  Throws
+   * DBInstanceNotFoundException if not found.
+   */
+  public DBInstance describeInstance(RdsClient rdsClient, String instanceName)
+  {
+    return instanceBatch.poll(rdsClient, instanceName);
+  }
+
+  /**
+   * Returns a recent description of the snapshot, using the rdsClient if a new request is needed.  Throws
+   * DBSnapshotNotFoundException if not found.
+   */
+  public DBSnapshot describeSnapshot(RdsClient rdsClient, String snapshotId)
+  {
+    return snapshotBatch.poll(rdsClient, snapshotId);
+  }
+
+  /**
+   * Forgets the batched description of the instance, if any.  The next poll of it fetches a new one.
+   */
+  public void evictInstance(String instanceName)
+  {
+    instanceBatch.evict(instanceName);
+  }
+
+  /**
+   * Forgets the batched description of the snapshot, if any.  The next poll of it fetches a new one.
+   */
+  public void evictSnapshot(String snapshotId)
+  {
+    snapshotBatch.evict(snapshotId);
+  }
+
+  /**
+   * Total polls served so far.
+   */
+  public int getNumPolls()
+  {
+    return instanceBatch.getNumPolls() + snapshotBatch.getNumPolls();
+  }
+
+  /**
+   * Total describe requests sent to RDS so far.
+   */
+  public int getNumDescribeCalls()
+  {
+    return instanceBatch.getNumDescribeCalls() + snapshotBatch.getNumDescribeCalls();
+  }
+
+  /**
+   * Describe requests avoided so far, compared to one request per poll.
+   */
+  public int getNumSavedCalls()
+  {
+    return getNumPolls() - getNumDescribeCalls();
+  }
+
+  /**
+   * One-line report of the savings so far.
+   */
+  public String summarize()
+  {
+    return "RDS status polls so far: " + getNumPolls() + " polls took " + getNumDescribeCalls()
+        + " describe calls, saved " + getNumSavedCalls();
+  }
+
+  /**
+   * Polling state of one RDS resource type.
+   */
+  private abstract class Batch<T>
+  {
+    private final String resourceType;
+    private final Map<String, Long> lastPollTimes = new HashMap<String, Long>();
+    private Map<String, T> results = new HashMap<String, T>();
+    private long resultTime;
+    private int numPolls;
+    private int numDescribeCalls;
+
+    private Batch(String resourceType)
+    {
+      this.resourceType = resourceType;
+    }
+
+    protected abstract T describeOne(RdsClient rdsClient, String id);
+
+    protected abstract List<T> describeMany(RdsClient rdsClient, List<String> ids);
+
+    protected abstract String getId(T description);
+
+    protected abstract RuntimeException notFound(String id);
+
+    /**
+     * Serves the poll from the last batch if fresh and covering the id, else fetches a new batch.
+     */
+    private synchronized T poll(RdsClient rdsClient, String id)
+    {
+      long now = nowFactory.now().getTime();
+      ++numPolls;
+      lastPollTimes.put(id, now);
+      if (!results.containsKey(id) || now - resultTime >= maxAgeMilliseconds)
+      {
+        fetch(rdsClient, id, now);
+      }
+      T description = results.get(id);
+      if (description == null)
+      {
+        throw notFound(id);
+      }
+      return description;
+    }
+
+    /**
+     * Drops the id from the last batch.  Waits for a fetch in progress, so its result cannot outlive the eviction.
+     */
+    private synchronized void evict(String id)
+    {
+      results.remove(id);
+    }
+
+    /**
+     * Describes all in-flight ids.  A lone id gets a plain describe, which throws if not found.  Ids missing from a
+     * batched result are kept as null results, meaning not found.
+     */
+    private void fetch(RdsClient rdsClient, String id, long now)
+    {
+      List<String> ids = findInFlightIds(now);
+      Map<String, T> newResults = new HashMap<String, T>();
+      ++numDescribeCalls;
+      results = newResults;
+      resultTime = now;
+      if (ids.size() == 1)
+      {
+        newResults.put(id, describeOne(rdsClient, id));
+        return;
+      }
+      for (String oneId : ids)
+      {
+        newResults.put(oneId, null);
+      }
+      for (T description : describeMany(rdsClient, ids))
+      {
+        if (newResults.containsKey(getId(description)))
+        {
+          newResults.put(getId(description), description);
+        }
+      }
+      LOGGER.debug("Described " + ids.size() + " in-flight RDS " + resourceType + "s in one request");
+    }
+
+    /**
+     * Returns the ids polled recently, forgetting the others.
+     */
+    private List<String> findInFlightIds(long now)
+    {
+      List<String> ids = new ArrayList<String>();
+      Iterator<Map.Entry<String, Long>> iter = lastPollTimes.entrySet().iterator();
+      while (iter.hasNext())
+      {
+        Map.Entry<String, Long> entry = iter.next();
+        if (now - entry.getValue() > inFlightMilliseconds)
+        {
+          iter.remove();
+        }
+        else
+        {
+          ids.add(entry.getKey());
+        }
+      }
+      return ids;
+    }
+
+    private synchronized int getNumPolls()
+    {
+      return numPolls;
+    }
+
+    private synchronized int getNumDescribeCalls()
+    {
+      return numDescribeCalls;
+    }
+  }
+
+  //Test purposes only
+  void setMaxAgeMilliseconds(long maxAgeMilliseconds)
+  {
+    this.maxAgeMilliseconds = maxAgeMilliseconds;
+  }
+}
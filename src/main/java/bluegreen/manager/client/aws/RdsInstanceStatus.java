@@ -13,6 +13,7 @@ public enum RdsInstanceStatus
   FAILED,
   MODIFYING,
   REBOOTING,
+  RENAMING,
   RESETTING_MASTER_CREDENTIALS,
   STORAGE_FULL,
   INCOMPATIBLE_PARAMETERS,
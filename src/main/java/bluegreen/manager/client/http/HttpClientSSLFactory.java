@@ -17,14 +17,26 @@ import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import bluegreen.manager.utils.Gauge;
+import bluegreen.manager.utils.MetricRegistry;
+
 /**
  * Makes an httpclient with some tweaks for ssl convenience on internal networks.
+ * <p/>
+ * The connection pool's totals are exported as bluegreen_http_pool_* metrics, to show pool saturation.
  */
 @Component
 public class HttpClientSSLFactory
 {
+  private static final int MAX_PER_ROUTE = 50;
+  private static final int MAX_TOTAL = 200;
+
+  @Autowired
+  private MetricRegistry metricRegistry;
+
   /**
    * Returns a thread-safe (pooled) httpClient, with freely trusting ssl for convenience.
    * Assumes https on internal networks.
@@ -42,11 +54,51 @@ public class HttpClientSSLFactory
   {
     Registry<ConnectionSocketFactory> socketFactoryRegistry = makeConnectionSocketFactoryRegistry();
     PoolingHttpClientConnectionManager poolingHttpClientConnectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
-    poolingHttpClientConnectionManager.setDefaultMaxPerRoute(50);
-    poolingHttpClientConnectionManager.setMaxTotal(200);
+    poolingHttpClientConnectionManager.setDefaultMaxPerRoute(MAX_PER_ROUTE);
+    poolingHttpClientConnectionManager.setMaxTotal(MAX_TOTAL);
+    exportMetrics(poolingHttpClientConnectionManager);
     return poolingHttpClientConnectionManager;
   }
 
+  /**
+   * Exports the pool totals, across all routes.
+   */
+  private void exportMetrics(final PoolingHttpClientConnectionManager connectionManager)
+  {
+    metricRegistry.gauge("bluegreen_http_pool_leased", "Application http connections in use", new Gauge()
+    {
+      @Override
+      public double getValue()
+      {
+        return connectionManager.getTotalStats().getLeased();
+      }
+    });
+    metricRegistry.gauge("bluegreen_http_pool_available", "Application http idle pooled connections", new Gauge()
+    {
+      @Override
+      public double getValue()
+      {
+        return connectionManager.getTotalStats().getAvailable();
+      }
+    });
+    metricRegistry.gauge("bluegreen_http_pool_pending", "Application http requests awaiting a connection", new Gauge()
+    {
+      @Override
+      public double getValue()
+      {
+        return connectionManager.getTotalStats().getPending();
+      }
+    });
+    metricRegistry.gauge("bluegreen_http_pool_max", "Application http connection pool size", new Gauge()
+    {
+      @Override
+      public double getValue()
+      {
+        return connectionManager.getTotalStats().getMax();
+      }
+    });
+  }
+
   /**
    * Makes a socket factory registry for http and https, which is freely trusting for ssl connections.
    */
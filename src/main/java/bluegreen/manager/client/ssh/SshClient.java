@@ -14,6 +14,8 @@ import org.springframework.stereotype.Component;
 
 import bluegreen.manager.substituter.SubstituterResult;
 import bluegreen.manager.utils.ShellResult;
+import bluegreen.manager.utils.Span;
+import bluegreen.manager.utils.Tracing;
 import ch.ethz.ssh2.Connection;
 import ch.ethz.ssh2.Session;
 
@@ -21,6 +23,7 @@ import ch.ethz.ssh2.Session;
  * Ganymed-based ssh client.  Tries to be simple and only offer a minimum feature set.
  * Converts IOException to RuntimeException.
  * Assumes the sshTarget login produces a bash shell.
+ * Traces the connection and each command as "ssh" spans.
  */
 @Lazy
 @Component
@@ -51,6 +54,7 @@ public class SshClient
     final int kexTimeout = (int) sshTarget.getKeyExchangeTimeoutMilliseconds();
     connection = sshConnectionFactory.create(hostname);
     boolean authenticated = false;
+    Span span = Tracing.start("ssh", "connect").addArg("host", hostname);
     try
     {
       connection.connect(null, connectTimeout, kexTimeout);//Not specified: ServerHostKeyVerifier
@@ -60,6 +64,10 @@ public class SshClient
     {
       throw new RuntimeException("Failed to make ssh connection to hostname '" + hostname + "'", e);
     }
+    finally
+    {
+      span.end();
+    }
     if (!authenticated)
     {
       throw new RuntimeException("Failed to authenticate ssh to hostname '" + hostname + "' as user '" + username + "'");
@@ -87,6 +95,7 @@ public class SshClient
     SubstituterResult wrappedCommand = wrapSubstituterResultForStdout(command);
     LOGGER.debug(context() + "Executing command '" + wrappedCommand.getExpurgated() + "'");
     StopWatch stopWatch = new StopWatch();
+    Span span = Tracing.start("ssh", "execCommand").addArg("host", sshTarget.getHostname());
     Session session = null;
     try
     {
@@ -112,6 +121,7 @@ public class SshClient
       {
         session.close();
       }
+      span.end();
     }
   }
 
@@ -0,0 +1,191 @@
+package bluegreen.manager.jobs;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import bluegreen.manager.model.domain.Environment;
+import bluegreen.manager.model.tx.EnvironmentTx;
+import bluegreen.manager.utils.NowFactory;
+
+/**
+ * Keeps jobs from running against the same env at the same time, by leasing the envs of a job for as long as it runs.
+ * <p/>
+ * Leases live on the ENVIRONMENT rows, so they hold across processes (any mix of standalone runs and daemons).  An
+ * env that does not exist yet (e.g. the stage env of a stagingDeploy) has no row, so it is tracked in this process
+ * only.  Held leases are renewed in the background; a lease not renewed within the expiry belonged to a process that
+ * died, and may be taken over.
+ */
+@Lazy
+@Component
+public class EnvironmentLeaseKeeper
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(EnvironmentLeaseKeeper.class);
+  private static final long DEFAULT_EXPIRY_MINUTES = 10L;
+  private static final long MILLISECONDS_PER_MINUTE = 60L * 1000L;
+  private static final AtomicInteger LEASE_NUM = new AtomicInteger();
+
+  @Autowired
+  private EnvironmentTx environmentTx;
+
+  @Autowired
+  private NowFactory nowFactory;
+
+  /**
+   * Leases are renewed at a third of this interval.
+   */
+  @Value("${bluegreen.envLease.expiryMinutes:" + DEFAULT_EXPIRY_MINUTES + "}")
+  private long expiryMinutes = DEFAULT_EXPIRY_MINUTES;
+
+  private final Set<String> localEnvNames = new HashSet<String>();
+  private final Set<String> heldOwners = new HashSet<String>();
+  private ScheduledExecutorService renewalService;
+
+  /**
+   * Returns the non-null env names of the job.
+   */
+  public static List<String> getEnvNames(Job job)
+  {
+    List<String> envNames = new ArrayList<String>();
+    if (job.getEnv1() != null)
+    {
+      envNames.add(job.getEnv1());
+    }
+    if (job.getEnv2() != null && !job.getEnv2().equals(job.getEnv1()))
+    {
+      envNames.add(job.getEnv2());
+    }
+    return envNames;
+  }
+
+  /**
+   * Makes a lease owner name unique to one job run: process id, host, and a sequence number.
+   */
+  public String makeLeaseOwner()
+  {
+    return StringUtils.left(ManagementFactory.getRuntimeMXBean().getName() + "#" + LEASE_NUM.incrementAndGet(),
+        Environment.LENGTH_LEASE_OWNER);
+  }
+
+  /**
+   * Leases all the envs to the owner, or none.  Returns null if leased, else a description of what blocked.
+   */
+  public synchronized String tryAcquire(Collection<String> envNames, String leaseOwner)
+  {
+    for (String envName : envNames)
+    {
+      if (localEnvNames.contains(envName))
+      {
+        return "env '" + envName + "' is in use by another job in this process";
+      }
+    }
+    Date now = nowFactory.now();
+    String blocker = environmentTx.acquireLeases(envNames, leaseOwner, now,
+        new Date(now.getTime() - expiryMinutes * MILLISECONDS_PER_MINUTE));
+    if (blocker == null)
+    {
+      localEnvNames.addAll(envNames);
+      heldOwners.add(leaseOwner);
+      startRenewals();
+      LOGGER.debug("Lease owner '" + leaseOwner + "' acquired envs " + envNames);
+    }
+    return blocker;
+  }
+
+  /**
+   * Gives up the owner's leases.  If the db is unreachable the leases are left to expire.
+   */
+  public synchronized void release(Collection<String> envNames, String leaseOwner)
+  {
+    localEnvNames.removeAll(envNames);
+    heldOwners.remove(leaseOwner);
+    try
+    {
+      environmentTx.releaseLeases(leaseOwner);
+      LOGGER.debug("Lease owner '" + leaseOwner + "' released envs " + envNames);
+    }
+    catch (RuntimeException e)
+    {
+      LOGGER.warn("Failed to release env leases of '" + leaseOwner + "', they will expire in " + expiryMinutes
+          + " minutes", e);
+    }
+  }
+
+  /**
+   * Renews the leases of all jobs running in this process.
+   */
+  synchronized void renewAll()
+  {
+    Date now = nowFactory.now();
+    for (String leaseOwner : heldOwners)
+    {
+      try
+      {
+        environmentTx.renewLeases(leaseOwner, now);
+      }
+      catch (RuntimeException e)
+      {
+        LOGGER.warn("Failed to renew env leases of '" + leaseOwner + "'", e);
+      }
+    }
+  }
+
+  private void startRenewals()
+  {
+    if (renewalService == null)
+    {
+      long periodMilliseconds = Math.max(1L, expiryMinutes * MILLISECONDS_PER_MINUTE / 3L);
+      renewalService = Executors.newSingleThreadScheduledExecutor(new RenewalThreadFactory());
+      renewalService.scheduleAtFixedRate(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          renewAll();
+        }
+      }, periodMilliseconds, periodMilliseconds, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @PreDestroy
+  public synchronized void stopRenewals()
+  {
+    if (renewalService != null)
+    {
+      renewalService.shutdownNow();
+      renewalService = null;
+    }
+  }
+
+  /**
+   * Daemon thread, so renewals never hold up jvm exit.
+   */
+  private static class RenewalThreadFactory implements ThreadFactory
+  {
+    @Override
+    public Thread newThread(Runnable runnable)
+    {
+      Thread thread = new Thread(runnable, "env-lease-renewal");
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -7,6 +7,7 @@ import javax.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import bluegreen.manager.model.domain.JobHistory;
@@ -27,6 +28,7 @@ import bluegreen.manager.tasks.ThawTask;
  */
 @Lazy
 @Component
+@Scope("prototype")
 public class GoLiveJob extends TaskSequenceJob
 {
   @Autowired
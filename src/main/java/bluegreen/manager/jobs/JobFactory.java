@@ -17,6 +17,7 @@ import bluegreen.manager.main.ArgumentParser;
 import bluegreen.manager.main.CmdlineException;
 import bluegreen.manager.model.domain.JobHistory;
 import bluegreen.manager.model.tx.EnvironmentTx;
+import bluegreen.manager.model.tx.HistoryRecorder;
 import bluegreen.manager.model.tx.JobHistoryTx;
 
 /**
@@ -30,6 +31,7 @@ public class JobFactory
   public static final String JOBNAME_STAGING_DEPLOY = "stagingDeploy";
   public static final String JOBNAME_GO_LIVE = "goLive";
   public static final String JOBNAME_TEARDOWN = "teardown";
+  public static final String JOBNAME_WARM_POOL = "warmPool";
 
   public static final String PARAMNAME_LIVE_ENV = "liveEnv";
   public static final String PARAMNAME_STAGE_ENV = "stageEnv";
@@ -40,6 +42,7 @@ public class JobFactory
   public static final String PARAMNAME_FIXED_LB = "fixedLB";
   public static final String PARAMNAME_DELETE_ENV = "deleteEnv";
   public static final String PARAMNAME_STOP_SERVICES = "stopServices";
+  public static final String PARAMNAME_POOL_SIZE = "poolSize";
   public static final String PARAMNAME_NOOP = "noop";
   public static final String PARAMNAME_FORCE = "force";
 
@@ -52,6 +55,9 @@ public class JobFactory
   @Autowired
   private JobHistoryTx jobHistoryTx;
 
+  @Autowired
+  private HistoryRecorder historyRecorder;
+
   @Autowired
   private EnvironmentTx environmentTx;
 
@@ -118,6 +124,16 @@ public class JobFactory
     sb.append("\t\t\tSpecify services running on the " + PARAMNAME_DELETE_ENV + " which we should\n");
     sb.append("\t\t\ttry to shutdown gracefully prior to vm deletion.\n");
     sb.append("\n");
+    sb.append("Job '" + JOBNAME_WARM_POOL + "'\n");
+    sb.append("Description: Keeps a pool of standby RDS instances restored from the\n");
+    sb.append("             latest stagingDeploy snapshot of each live database, for\n");
+    sb.append("             stagingDeploy to claim when bluegreen.standby.enabled=true.\n");
+    sb.append("             Retires standbys made from superseded or stale snapshots.\n");
+    sb.append("Required Parameters:\n");
+    sb.append("\t" + ArgumentParser.DOUBLE_HYPHEN + PARAMNAME_LIVE_ENV + " <envName>\n");
+    sb.append("\t" + ArgumentParser.DOUBLE_HYPHEN + PARAMNAME_POOL_SIZE + " <number>\n");
+    sb.append("\t\t\tNumber of standbys to keep for each live logical database.\n");
+    sb.append("\n");
     sb.append("Common Optional Parameters:\n");
     sb.append("\t" + ArgumentParser.DOUBLE_HYPHEN + PARAMNAME_NOOP + "\n");
     sb.append("\t\t\tNo-op means print out what this job WOULD do, without taking any\n");
@@ -149,6 +165,10 @@ public class JobFactory
       {
         return makeTeardownJob(parameters, commandLine);
       }
+      else if (jobName.equals(JOBNAME_WARM_POOL))
+      {
+        return makeWarmPoolJob(parameters, commandLine);
+      }
     }
     throw new CmdlineException("Unrecognized jobName: " + jobName);
   }
@@ -184,11 +204,34 @@ public class JobFactory
     return makeGenericJob(TeardownJob.class, parameters, commandLine, PARAMNAME_DELETE_ENV, null, false, stopServices);
   }
 
+  /**
+   * Constructs a new WarmPoolJob with the specified parameters.
+   */
+  private Job makeWarmPoolJob(List<List<String>> parameters, String commandLine)
+  {
+    String poolSizeString = getParameter(PARAMNAME_POOL_SIZE, parameters, 1).get(1);
+    Integer poolSize;
+    try
+    {
+      poolSize = Integer.valueOf(poolSizeString);
+    }
+    catch (NumberFormatException e)
+    {
+      throw new CmdlineException("Parameter '" + PARAMNAME_POOL_SIZE + "' expects a number, but found '" + poolSizeString + "'");
+    }
+    if (poolSize < 0)
+    {
+      throw new CmdlineException("Parameter '" + PARAMNAME_POOL_SIZE + "' cannot be negative");
+    }
+    return makeGenericJob(WarmPoolJob.class, parameters, commandLine, PARAMNAME_LIVE_ENV, null, false, poolSize);
+  }
+
   /**
    * Constructs a new Job implementation with the specified parameters.
    * <p/>
    * Looks for boilerplate arguments: noop, force, env1, env2.  Verifies the environment names exist in the database.
-   * Also obtains the last relevant job history, if any.
+   * Also obtains the last relevant job history, if any, after writing any history backlog to the db.  Throws if the
+   * backlog can't be written, rather than run the job on incomplete history.
    */
   private Job makeGenericJob(Class<? extends TaskSequenceJob> jobClass,
                              List<List<String>> parameters,
@@ -203,6 +246,7 @@ public class JobFactory
     String env1 = getParameter(env1ParamName, parameters, 1).get(1);
     String env2 = env2ParamName == null ? null : getParameter(env2ParamName, parameters, 1).get(1);
     verifyOneOrTwoEnvNames(env1, env2, verifyBothEnvs);
+    historyRecorder.flushBacklog();
     JobHistory oldJobHistory = jobHistoryTx.findLastRelevantJobHistory(
         jobClass.getSimpleName(), env1, env2, commandLine, noop, MAX_AGE_RELEVANT_PRIOR_JOB);
     Object[] allArgs = combineKnownArgsWithOtherArgs(commandLine, noop, force, oldJobHistory,
@@ -7,15 +7,24 @@ import java.util.TreeMap;
 import javax.annotation.PostConstruct;
 
 import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import bluegreen.manager.model.domain.JobHistory;
+import bluegreen.manager.model.domain.JobStatus;
+import bluegreen.manager.model.domain.TaskStatus;
+import bluegreen.manager.model.tx.FreezeWindowTx;
+import bluegreen.manager.model.tx.HistoryRecorder;
 import static bluegreen.manager.substituter.SubstitutionKeys.PACKAGES;
 import bluegreen.manager.tasks.EnvironmentBuildTask;
 import bluegreen.manager.tasks.FreezeTask;
+import bluegreen.manager.tasks.FreezeWindowTracker;
 import bluegreen.manager.tasks.LocalShellTask;
 import bluegreen.manager.tasks.RdsSnapshotRestoreTask;
 import bluegreen.manager.tasks.RegisterApplicationTask;
@@ -23,15 +32,24 @@ import bluegreen.manager.tasks.ShellConfig;
 import bluegreen.manager.tasks.SmokeTestTask;
 import bluegreen.manager.tasks.Task;
 import bluegreen.manager.tasks.ThawTask;
+import bluegreen.manager.tasks.TransitionTask;
+import bluegreen.manager.utils.MetricRegistry;
+import bluegreen.manager.utils.NowFactory;
 
 /**
  * Deploys to the stage env a copy of the pkgs that are on the live env except for explicitly specified packages that
  * must be deployed to stage.  Maps live logical databases to new stage physical db instances.
+ * <p/>
+ * Records the freeze window of the live env, and bounds it by the freeze budget: if the snapshots overrun it, the job
+ * thaws the live env early and fails.  The rerun then freezes again, even though the last run's freeze succeeded.
  */
 @Lazy
 @Component
+@Scope("prototype")
 public class StagingDeployJob extends TaskSequenceJob
 {
+  private static Logger LOGGER = LoggerFactory.getLogger(StagingDeployJob.class);
+
   @Autowired
   @Qualifier("buildStageEnv")
   private ShellConfig buildStageEnvConfig;
@@ -44,11 +62,38 @@ public class StagingDeployJob extends TaskSequenceJob
   @Qualifier("validateVm")
   private ShellConfig validateVmConfig;
 
+  @Autowired
+  private FreezeWindowTx freezeWindowTx;
+
+  @Autowired
+  private HistoryRecorder historyRecorder;
+
+  @Autowired
+  private NowFactory nowFactory;
+
+  @Autowired
+  private MetricRegistry metricRegistry;
+
+  /**
+   * Longest the live env may stay frozen waiting for its snapshots.  Zero means unlimited.
+   */
+  @Value("${bluegreen.freeze.budgetSeconds:0}")
+  private long freezeBudgetSeconds;
+
   private String liveEnvName;
   private String stageEnvName;
   private Map<String, String> dbMap;
   private List<String> packages;
 
+  private FreezeWindowTracker freezeWindowTracker;
+  private TransitionTask freezeTask;
+  private TransitionTask thawTask;
+
+  /**
+   * True if the last relevant run thawed the live env before its snapshots were done.
+   */
+  private boolean refreezeRequired;
+
   public StagingDeployJob(String commandLine, boolean noop, boolean force,
                           JobHistory oldJobHistory, String liveEnvName, String stageEnvName,
                           Map<String, String> dbMap, List<String> packages)
@@ -63,17 +108,33 @@ public class StagingDeployJob extends TaskSequenceJob
   /**
    * Instantiates the sequence of tasks for the staging deploy job.
    * <p/>
+   * The live env only needs to stay frozen while its databases are snapshotted.  Restoring the snapshots to stage
+   * does not need the freeze, so the thaw runs side by side with the restore, and the stage env build follows the
+   * restore.
+   * <p/>
    * Is PostConstruct to have access to applicationContext.
    */
   @PostConstruct
   private void instantiateTasks()
   {
     defineSubstitutionsForDeployPackages();
+    freezeWindowTracker = new FreezeWindowTracker(nowFactory, liveEnvName, freezeBudgetSeconds);
+    refreezeRequired = getOldJobHistory() != null && freezeWindowTx.wasThawedEarly(getOldJobHistory());
     int position = 1;
     List<Task> tasks = new ArrayList<Task>();
-    tasks.add(applicationContext.getBean(FreezeTask.class).assignTransition(position++, liveEnvName));
-    tasks.add(applicationContext.getBean(RdsSnapshotRestoreTask.class).assign(position++, liveEnvName, stageEnvName, dbMap));
-    tasks.add(applicationContext.getBean(ThawTask.class).assignTransition(position++, liveEnvName));
+    freezeTask = applicationContext.getBean(FreezeTask.class).assignTransition(position++, liveEnvName)
+        .trackFreezeWindow(freezeWindowTracker);
+    tasks.add(freezeTask);
+    Task snapshotTask = applicationContext.getBean(RdsSnapshotRestoreTask.class).trackFreezeWindow(freezeWindowTracker)
+        .assign(position++, liveEnvName, stageEnvName, dbMap, RdsSnapshotRestoreTask.Phase.SNAPSHOT);
+    tasks.add(snapshotTask);
+    thawTask = applicationContext.getBean(ThawTask.class).assignTransition(position++, liveEnvName)
+        .trackFreezeWindow(freezeWindowTracker);
+    tasks.add(thawTask);
+    Task restoreTask = applicationContext.getBean(RdsSnapshotRestoreTask.class).assign(position++, liveEnvName, stageEnvName, dbMap,
+        RdsSnapshotRestoreTask.Phase.RESTORE);
+    tasks.add(restoreTask);
+    declarePrerequisites(restoreTask, snapshotTask);
     tasks.add(applicationContext.getBean(EnvironmentBuildTask.class).assign(position++, liveEnvName, stageEnvName, buildStageEnvConfig, false));
     tasks.add(applicationContext.getBean(LocalShellTask.class).assign(position++, liveEnvName, stageEnvName, validateVmConfig, true));
     tasks.add(applicationContext.getBean(LocalShellTask.class).assign(position++, liveEnvName, stageEnvName, deployPackagesConfig, true));
@@ -89,6 +150,60 @@ public class StagingDeployJob extends TaskSequenceJob
     deployPackagesConfig.setExtraSubstitutions(substitutions);
   }
 
+  /**
+   * The freeze task must run again if the last run's freeze was undone by an early thaw.
+   */
+  @Override
+  protected boolean isForced(Task task)
+  {
+    return super.isForced(task) || (refreezeRequired && task == freezeTask);
+  }
+
+  /**
+   * Thaws the live env right away if the snapshots overran the freeze budget, then records the freeze window, in the
+   * history and in the freeze window histogram.
+   * <p/>
+   * The early thaw is attempted like any task, forced, so it is recorded in the task history.  If it fails, the live
+   * env is left frozen and needs attention.
+   */
+  @Override
+  protected JobStatus concludeTasks(JobStatus jobStatus, JobHistory newJobHistory)
+  {
+    if (freezeWindowTracker.isBudgetExceeded() && freezeWindowTracker.isThawPending())
+    {
+      LOGGER.warn("Thawing live env '" + liveEnvName + "' early, because its snapshots overran the freeze budget");
+      TaskStatus thawStatus = null;
+      try
+      {
+        thawStatus = attemptTask(thawTask, true);
+      }
+      catch (RuntimeException e)
+      {
+        LOGGER.error("Early thaw of live env '" + liveEnvName + "' threw", e);
+      }
+      if (thawStatus != TaskStatus.DONE)
+      {
+        LOGGER.error("Live env '" + liveEnvName + "' is still FROZEN: its early thaw ended with status " + thawStatus
+            + ", thaw it by hand");
+      }
+      jobStatus = JobStatus.ERROR;
+    }
+    if (freezeWindowTracker.isOpened())
+    {
+      LOGGER.info("Freeze window of live env '" + liveEnvName + "': " + freezeWindowTracker.getWindowMilliseconds()
+          + "ms" + (freezeWindowTracker.isBudgetExceeded() ? ", budget exceeded" : ""));
+      metricRegistry.histogram("bluegreen_freeze_window_milliseconds", "Time the live env could not write to its "
+          + "database during stagingDeploy, from the freeze request to NORMAL", MetricRegistry.LONG_DURATION_BUCKETS,
+          "outcome", freezeWindowTracker.isBudgetExceeded() ? "budget_exceeded" : "within_budget")
+          .record(freezeWindowTracker.getWindowMilliseconds());
+      if (newJobHistory != null)
+      {
+        historyRecorder.newFreezeWindow(freezeWindowTracker.makeFreezeWindow(), newJobHistory);
+      }
+    }
+    return jobStatus;
+  }
+
   @Override
   public String getEnv1()
   {
@@ -0,0 +1,136 @@
+package bluegreen.manager.jobs;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import bluegreen.manager.tasks.Task;
+
+/**
+ * Dependency graph of the tasks of a job, keyed by task position.
+ * <p/>
+ * A task with declared prerequisites may start as soon as all of them have finished successfully.  A task with no
+ * declaration depends on the task immediately before it, so a job that declares nothing runs one task at a time in
+ * position order, exactly like the classic sequence.  A task declared with an empty list of prerequisites may start
+ * right away.
+ * <p/>
+ * Prerequisites must have a lower position than their dependent task.  This makes the graph acyclic by construction,
+ * and position order remains a valid sequential order of the job.
+ * <p/>
+ * Not threadsafe: the job's scheduling loop is the only caller.
+ */
+public class TaskGraph
+{
+  private List<Task> tasks;
+
+  /**
+   * Maps each task position to the positions of its prerequisites.
+   */
+  private Map<Integer, List<Integer>> prerequisitePositions = new TreeMap<Integer, List<Integer>>();
+
+  private Set<Integer> startedPositions = new HashSet<Integer>();
+
+  private Set<Integer> finishedPositions = new HashSet<Integer>();
+
+  /**
+   * Builds the graph.  Declared prerequisites are keyed by dependent task; tasks missing from the map depend on the
+   * preceding task.
+   */
+  public TaskGraph(List<Task> tasks, Map<Task, List<Task>> declaredPrerequisites)
+  {
+    if (tasks == null || tasks.size() == 0)
+    {
+      throw new IllegalArgumentException("No tasks");
+    }
+    this.tasks = tasks;
+    for (int idx = 0; idx < tasks.size(); ++idx)
+    {
+      Task task = tasks.get(idx);
+      if (idx + 1 != task.getPosition())
+      {
+        throw new IllegalStateException("Invalid task position: " + task.getPosition() + ", expected " + (idx + 1));
+      }
+      prerequisitePositions.put(task.getPosition(), findPrerequisitePositions(idx, task, declaredPrerequisites));
+    }
+  }
+
+  /**
+   * Returns the prerequisite positions of the task at the given list index, checking any declared prerequisites.
+   */
+  private List<Integer> findPrerequisitePositions(int idx, Task task, Map<Task, List<Task>> declaredPrerequisites)
+  {
+    List<Integer> positions = new ArrayList<Integer>();
+    if (declaredPrerequisites == null || !declaredPrerequisites.containsKey(task))
+    {
+      if (idx > 0)
+      {
+        positions.add(tasks.get(idx - 1).getPosition());
+      }
+      return positions;
+    }
+    for (Task prerequisite : declaredPrerequisites.get(task))
+    {
+      final int prereqPosition = prerequisite.getPosition();
+      if (prereqPosition < 1 || prereqPosition >= task.getPosition() || tasks.get(prereqPosition - 1) != prerequisite)
+      {
+        throw new IllegalStateException("Task #" + task.getPosition() + " " + task.getName()
+            + " has invalid prerequisite #" + prereqPosition + " " + prerequisite.getName()
+            + ": must be an earlier task of the same job");
+      }
+      positions.add(prereqPosition);
+    }
+    return positions;
+  }
+
+  /**
+   * Finds all tasks that have not yet started and whose prerequisites have all finished, and marks them started.
+   */
+  public List<Task> startReadyTasks()
+  {
+    List<Task> readyTasks = new ArrayList<Task>();
+    for (Task task : tasks)
+    {
+      final int position = task.getPosition();
+      if (!startedPositions.contains(position) && finishedPositions.containsAll(prerequisitePositions.get(position)))
+      {
+        readyTasks.add(task);
+      }
+    }
+    for (Task task : readyTasks)
+    {
+      startedPositions.add(task.getPosition());
+    }
+    return readyTasks;
+  }
+
+  /**
+   * Records that the task finished successfully, which may make its dependents ready.
+   */
+  public void finish(Task task)
+  {
+    if (!startedPositions.contains(task.getPosition()))
+    {
+      throw new IllegalStateException("Task #" + task.getPosition() + " " + task.getName() + " finished before it started");
+    }
+    finishedPositions.add(task.getPosition());
+  }
+
+  /**
+   * True if every task has finished successfully.
+   */
+  public boolean isFinished()
+  {
+    return finishedPositions.size() == tasks.size();
+  }
+
+  /**
+   * Returns the prerequisite positions of the task at the given position.
+   */
+  public List<Integer> getPrerequisitePositions(int position)
+  {
+    return prerequisitePositions.get(position);
+  }
+}
@@ -1,30 +1,54 @@
 package bluegreen.manager.jobs;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
 
 import bluegreen.manager.model.domain.JobHistory;
 import bluegreen.manager.model.domain.JobStatus;
 import bluegreen.manager.model.domain.TaskHistory;
 import bluegreen.manager.model.domain.TaskStatus;
-import bluegreen.manager.model.tx.JobHistoryTx;
+import bluegreen.manager.model.tx.EnvironmentCache;
+import bluegreen.manager.model.tx.HistoryRecorder;
 import bluegreen.manager.tasks.Task;
 import bluegreen.manager.tasks.TaskRun;
 import bluegreen.manager.tasks.TaskRunProcessor;
 import bluegreen.manager.utils.NowFactory;
+import bluegreen.manager.utils.Span;
+import bluegreen.manager.utils.TraceRecorder;
+import bluegreen.manager.utils.Tracing;
 
 /**
  * Knows how to execute a sequence of tasks.  If there is a relevant recent prior job, we will not repeat its
  * successfully completed steps.
+ * <p/>
+ * By default each task waits for the task before it.  A derived class may declare a task's real prerequisites
+ * instead, in which case independent tasks run concurrently (see TaskGraph).  Skip/force decisions and task history
+ * still happen per task, so a rerun after failure resumes correctly regardless of the order tasks finished in.
+ * <p/>
+ * Each run is traced (see TraceRecorder): the job span is current on the job thread and on the task threads, so task,
+ * wait and remote call spans nest under it.  The job's own EnvironmentCache is current on the same threads, so the
+ * tasks of concurrent jobs never share a cache.
  */
 public abstract class TaskSequenceJob implements Job
 {
   private static Logger LOGGER = LoggerFactory.getLogger(TaskSequenceJob.class);
+  private static final int DEFAULT_MAX_PARALLEL_TASKS = 4;
 
   @Autowired
   protected ApplicationContext applicationContext;
@@ -33,16 +57,34 @@ public abstract class TaskSequenceJob implements Job
   private NowFactory nowFactory;
 
   @Autowired
-  private JobHistoryTx jobHistoryTx;
+  private HistoryRecorder historyRecorder;
 
   @Autowired
   private TaskRunProcessor taskRunProcessor;
 
+  @Autowired
+  private EnvironmentCache environmentCache;
+
+  @Autowired
+  private TraceRecorder traceRecorder;
+
+  /**
+   * Upper bound on the number of tasks of this job that may run at the same time.
+   */
+  @Value("${bluegreen.job.maxParallelTasks:" + DEFAULT_MAX_PARALLEL_TASKS + "}")
+  private int maxParallelTasks = DEFAULT_MAX_PARALLEL_TASKS;
+
   /**
    * The sequence of tasks.  Initialized by PostConstruct method in derived class.
    */
   protected List<Task> tasks;
 
+  /**
+   * Prerequisites declared by the derived class, keyed by dependent task.  Tasks absent from this map depend on the
+   * task before them.
+   */
+  private Map<Task, List<Task>> declaredPrerequisites = new HashMap<Task, List<Task>>();
+
   /**
    * The original command-line, for reference.
    */
@@ -89,7 +131,9 @@ public abstract class TaskSequenceJob implements Job
       throw new IllegalStateException("No tasks");
     }
     Date jobStartTime = nowFactory.now();
+    Span jobSpan = traceRecorder.startJobTrace(makeTraceName());
     openJobHistory(jobStartTime);
+    EnvironmentCache.JobCache jobEnvironmentCache = environmentCache.open();
     JobStatus jobStatus = null;
     try
     {
@@ -101,59 +145,266 @@ public abstract class TaskSequenceJob implements Job
       {
         jobStatus = JobStatus.ERROR;
       }
+      jobStatus = safelyConcludeTasks(jobStatus);
+      environmentCache.close(jobEnvironmentCache);
       closeJobHistory(newJobHistory, jobStatus);
+      traceRecorder.endJobTrace(jobSpan, jobStatus);
       logSummaryOfJobAndHistory();
     }
     return jobStatus;
   }
 
   /**
-   * Executes the tasks of the job.  Returns silently if success, throws if error.
+   * Names the trace after the job and its envs.
+   */
+  private String makeTraceName()
+  {
+    return getName() + " " + getEnv1() + (getEnv2() == null ? "" : " " + getEnv2());
+  }
+
+  /**
+   * Called once no task is running, whether the tasks succeeded or not, before the job history is closed.  A derived
+   * class may put things right after a failed task here.
+   *
+   * @param newJobHistory Persistent record of the current job run, or null if noop.
+   * @return The final job status.
+   */
+  protected JobStatus concludeTasks(JobStatus jobStatus, JobHistory newJobHistory)
+  {
+    return jobStatus;
+  }
+
+  /**
+   * Concludes the tasks without letting an exception mask the job outcome or prevent the job history from closing.
+   */
+  private JobStatus safelyConcludeTasks(JobStatus jobStatus)
+  {
+    try
+    {
+      return concludeTasks(jobStatus, newJobHistory);
+    }
+    catch (RuntimeException e)
+    {
+      LOGGER.error("Failed to conclude the tasks of the job", e);
+      return JobStatus.ERROR;
+    }
+  }
+
+  /**
+   * Attempts a task outside the task sequence, e.g. to put things right in concludeTasks.  The attempt gets task
+   * history, a task span and task metrics like the tasks of the sequence.
+   */
+  protected TaskStatus attemptTask(Task task, boolean force)
+  {
+    return taskRunProcessor.attemptTask(new TaskRun(task, noop, force, newJobHistory, oldJobHistory));
+  }
+
+  /**
+   * True if the task must run even though the last relevant job run completed it.  By default, only if the job was
+   * forced.
+   */
+  protected boolean isForced(Task task)
+  {
+    return force;
+  }
+
+  /**
+   * Declares that the task may start as soon as the given prerequisites have finished successfully, instead of
+   * waiting for the task immediately before it.  No prerequisites means the task may start right away.
+   * <p/>
+   * Prerequisites must be earlier tasks of this job.  Call from the derived class PostConstruct method.
+   */
+  protected void declarePrerequisites(Task task, Task... prerequisites)
+  {
+    List<Task> prerequisiteList = new ArrayList<Task>();
+    if (prerequisites != null)
+    {
+      for (Task prerequisite : prerequisites)
+      {
+        prerequisiteList.add(prerequisite);
+      }
+    }
+    declaredPrerequisites.put(task, prerequisiteList);
+  }
+
+  /**
+   * Executes the tasks of the job, starting each one as soon as its prerequisites are done.  Returns DONE if all
+   * tasks succeed.  If a task fails then no new tasks are started, tasks already underway are allowed to finish, and
+   * the job returns ERROR (or rethrows, if the failing task threw).
    */
   private JobStatus processTasks()
   {
-    for (int idx = 0; idx < tasks.size(); ++idx)
+    TaskGraph taskGraph = new TaskGraph(tasks, declaredPrerequisites);
+    ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, Math.min(maxParallelTasks, tasks.size())));
+    try
     {
-      Task task = tasks.get(idx);
-      if (idx + 1 != task.getPosition())
+      return processTaskGraph(taskGraph, new ExecutorCompletionService<TaskResult>(executorService));
+    }
+    finally
+    {
+      executorService.shutdown();
+    }
+  }
+
+  /**
+   * Scheduling loop: submits every ready task, then waits for the next one to finish.
+   */
+  private JobStatus processTaskGraph(TaskGraph taskGraph, CompletionService<TaskResult> completionService)
+  {
+    JobStatus jobStatus = JobStatus.DONE;
+    RuntimeException failure = null;
+    int numRunning = 0;
+    while (true)
+    {
+      if (jobStatus == JobStatus.DONE && failure == null)
+      {
+        for (Task task : taskGraph.startReadyTasks())
+        {
+          LOGGER.info("TASK #" + task.getPosition() + " of " + tasks.size() + " BEGIN: " + task.getName()
+              + describeConcurrency(numRunning));
+          completionService.submit(makeTaskCallable(task));
+          ++numRunning;
+        }
+      }
+      if (numRunning == 0)
+      {
+        break;
+      }
+      TaskResult taskResult = takeNextResult(completionService);
+      --numRunning;
+      Task task = taskResult.task;
+      if (taskResult.failure != null)
       {
-        throw new IllegalStateException("Invalid task position: " + task.getPosition() + ", expected " + (idx + 1));
+        LOGGER.info("TASK #" + task.getPosition() + " of " + tasks.size() + " END: " + task.getName() + " " + TaskStatus.ERROR);
+        failure = failure == null ? taskResult.failure : failure;
+        continue;
       }
-      LOGGER.info("TASK #" + task.getPosition() + " of " + tasks.size() + " BEGIN: " + task.getName());
-      TaskRun taskRun = new TaskRun(task, noop, force, newJobHistory, oldJobHistory);
-      TaskStatus taskStatus = taskRunProcessor.attemptTask(taskRun);
+      TaskStatus taskStatus = taskResult.taskStatus;
       LOGGER.info("TASK #" + task.getPosition() + " of " + tasks.size() + " END: " + task.getName() + " " + taskStatus);
       if (taskStatus == TaskStatus.PROCESSING)
       {
-        throw new IllegalStateException("Task #" + task.getPosition() + " " + task.getName() + " ended but status is 'processing'");
+        failure = failure == null ? new IllegalStateException("Task #" + task.getPosition() + " " + task.getName()
+            + " ended but status is 'processing'") : failure;
       }
-      if (taskStatus == TaskStatus.ERROR)
+      else if (taskStatus == TaskStatus.ERROR)
       {
-        return JobStatus.ERROR;
+        jobStatus = JobStatus.ERROR;
       }
+      else
+      {
+        taskGraph.finish(task);
+      }
+    }
+    if (failure != null)
+    {
+      throw failure;
+    }
+    if (jobStatus == JobStatus.DONE && !taskGraph.isFinished())
+    {
+      throw new IllegalStateException("Job ended with unfinished tasks");
+    }
+    return jobStatus;
+  }
+
+  /**
+   * Makes a callable that attempts the task and captures its outcome, so the scheduling loop knows which task
+   * finished.
+   */
+  private Callable<TaskResult> makeTaskCallable(final Task task)
+  {
+    final Span jobSpan = Tracing.getCurrent();
+    final EnvironmentCache.JobCache jobEnvironmentCache = environmentCache.getCurrent();
+    return new Callable<TaskResult>()
+    {
+      @Override
+      public TaskResult call()
+      {
+        TaskResult taskResult = new TaskResult(task);
+        Span previous = Tracing.setCurrent(jobSpan);
+        EnvironmentCache.JobCache previousEnvironmentCache = environmentCache.setCurrent(jobEnvironmentCache);
+        try
+        {
+          TaskRun taskRun = new TaskRun(task, noop, isForced(task), newJobHistory, oldJobHistory);
+          taskResult.taskStatus = taskRunProcessor.attemptTask(taskRun);
+        }
+        catch (RuntimeException e)
+        {
+          taskResult.failure = e;
+        }
+        finally
+        {
+          environmentCache.setCurrent(previousEnvironmentCache);
+          Tracing.setCurrent(previous);
+        }
+        return taskResult;
+      }
+    };
+  }
+
+  /**
+   * Blocks until the next running task finishes.
+   */
+  private TaskResult takeNextResult(CompletionService<TaskResult> completionService)
+  {
+    try
+    {
+      return completionService.take().get();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for tasks", e);
+    }
+    catch (ExecutionException e)
+    {
+      throw new RuntimeException("Task runner failed", e.getCause());
     }
-    return JobStatus.DONE;
   }
 
   /**
-   * Calls to persist a new JobHistory in PROCESSING state.
+   * Returns a tiny remark about concurrently running tasks, for logging clarity.
+   */
+  private String describeConcurrency(int numRunning)
+  {
+    return numRunning > 0 ? " (alongside " + numRunning + " running)" : "";
+  }
+
+  /**
+   * Outcome of one task attempt: either a status or the exception the task threw.
+   */
+  private static class TaskResult
+  {
+    private final Task task;
+    private TaskStatus taskStatus;
+    private RuntimeException failure;
+
+    private TaskResult(Task task)
+    {
+      this.task = task;
+    }
+  }
+
+  /**
+   * Calls to record a new JobHistory in PROCESSING state.
    */
   private void openJobHistory(Date jobStartTime)
   {
     if (!noop)
     {
-      newJobHistory = jobHistoryTx.newJobHistoryProcessing(this, jobStartTime);
+      newJobHistory = historyRecorder.newJobHistoryProcessing(this, jobStartTime);
     }
   }
 
   /**
-   * Calls to persist a closed JobHistory, which means setting endTime and final status.
+   * Calls to record a closed JobHistory, which means setting endTime and final status.  Waits for the job's history
+   * to be durable, so the next run of the job sees it.
    */
   private void closeJobHistory(JobHistory newJobHistory, JobStatus jobStatus)
   {
     if (!noop)
     {
-      jobHistoryTx.closeJobHistory(newJobHistory, jobStatus);
+      historyRecorder.closeJobHistory(newJobHistory, jobStatus);
+      historyRecorder.flush();
     }
   }
 
@@ -188,27 +439,35 @@ public abstract class TaskSequenceJob implements Job
     sb.append("JobStatus: " + newJobHistory.getStatus() + "\n");
     sb.append("\n");
     sb.append("Tasks Attempted:\n");
-    final int numAttempted = newJobHistory.getTaskHistories() == null ? 0 : newJobHistory.getTaskHistories().size();
-    if (numAttempted == 0)
+    Map<Integer, TaskHistory> attempted = new TreeMap<Integer, TaskHistory>();
+    if (newJobHistory.getTaskHistories() != null)
+    {
+      for (TaskHistory taskHistory : newJobHistory.getTaskHistories())
+      {
+        attempted.put(taskHistory.getPosition(), taskHistory);
+      }
+    }
+    if (attempted.isEmpty())
     {
       sb.append("(none)\n");
     }
     else
     {
-      for (int idx = 0; idx < numAttempted; ++idx)
+      for (TaskHistory taskHistory : attempted.values())
       {
-        TaskHistory taskHistory = newJobHistory.getTaskHistories().get(idx);
-        sb.append("(" + (idx + 1) + ") " + taskHistory.getTaskName() + ": " + taskHistory.getStatus() + "\n");
+        sb.append("(" + taskHistory.getPosition() + ") " + taskHistory.getTaskName() + ": " + taskHistory.getStatus() + "\n");
       }
     }
     sb.append("\n");
-    if (numAttempted < tasks.size())
+    if (attempted.size() < tasks.size())
     {
       sb.append("Tasks Not Attempted:\n");
-      for (int idx = numAttempted; idx < tasks.size(); ++idx)
+      for (Task task : tasks)
       {
-        Task task = tasks.get(idx);
-        sb.append("(" + (idx + 1) + ") " + task.getName() + "\n");
+        if (!attempted.containsKey(task.getPosition()))
+        {
+          sb.append("(" + task.getPosition() + ") " + task.getName() + "\n");
+        }
       }
       sb.append("\n");
     }
@@ -217,6 +476,16 @@ public abstract class TaskSequenceJob implements Job
     return sb.toString();
   }
 
+  protected boolean isNoop()
+  {
+    return noop;
+  }
+
+  protected JobHistory getOldJobHistory()
+  {
+    return oldJobHistory;
+  }
+
   @Override
   public String getName()
   {
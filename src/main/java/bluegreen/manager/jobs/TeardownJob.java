@@ -10,6 +10,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import bluegreen.manager.model.domain.JobHistory;
@@ -25,6 +26,7 @@ import bluegreen.manager.tasks.Task;
  */
 @Lazy
 @Component
+@Scope("prototype")
 public class TeardownJob extends TaskSequenceJob
 {
   @Autowired
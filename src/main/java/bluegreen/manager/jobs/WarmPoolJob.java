@@ -0,0 +1,61 @@
+package bluegreen.manager.jobs;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.PostConstruct;
+
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import bluegreen.manager.model.domain.JobHistory;
+import bluegreen.manager.tasks.RdsStandbyPoolTask;
+import bluegreen.manager.tasks.Task;
+
+/**
+ * Tops up the warm pool of standby RDS instances for the live env, so that the next stagingDeploy can claim one
+ * instead of restoring from scratch.  Does not touch the live env itself.
+ */
+@Lazy
+@Component
+@Scope("prototype")
+public class WarmPoolJob extends TaskSequenceJob
+{
+  private String liveEnvName;
+  private int poolSize;
+
+  public WarmPoolJob(String commandLine, boolean noop, boolean force,
+                     JobHistory oldJobHistory, String liveEnvName,
+                     Integer poolSize)
+  {
+    super(commandLine, noop, force, oldJobHistory);
+    this.liveEnvName = liveEnvName;
+    this.poolSize = poolSize;
+  }
+
+  /**
+   * Instantiates the sequence of tasks for the warm pool job.
+   * <p/>
+   * Is PostConstruct to have access to applicationContext.
+   */
+  @PostConstruct
+  private void instantiateTasks()
+  {
+    int position = 1;
+    List<Task> tasks = new ArrayList<Task>();
+    tasks.add(applicationContext.getBean(RdsStandbyPoolTask.class).assign(position++, liveEnvName, poolSize));
+    this.tasks = tasks;
+  }
+
+  @Override
+  public String getEnv1()
+  {
+    return liveEnvName;
+  }
+
+  @Override
+  public String getEnv2()
+  {
+    return null;
+  }
+}
@@ -1,5 +1,7 @@
 package bluegreen.manager.main;
 
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -7,13 +9,29 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 import org.springframework.stereotype.Component;
 
+import bluegreen.manager.analytics.HistoryAnalyzer;
+import bluegreen.manager.jobs.EnvironmentLeaseKeeper;
 import bluegreen.manager.jobs.Job;
 import bluegreen.manager.jobs.JobFactory;
 import static bluegreen.manager.main.ReturnCode.CMDLINE_ERROR;
 import static bluegreen.manager.main.ReturnCode.PROCESSING_ERROR;
 import static bluegreen.manager.main.ReturnCode.SUCCESS;
 import bluegreen.manager.model.domain.JobStatus;
+import bluegreen.manager.utils.MetricRegistry;
 
+/**
+ * Entry point.  Normally runs one job and exits.
+ * <p/>
+ * In daemon mode, keeps the application context (db connections, clients, etc.) warm and runs jobs submitted by
+ * the thin client (see JobServer and JobClient), so a job does not pay the JVM/Spring/JPA startup.
+ * <p/>
+ * Either way a job leases its envs while it runs, so no two jobs touch the same env at once.
+ * <p/>
+ * The historyReport command analyzes the job history instead of running a job (see HistoryAnalyzer).
+ * <p/>
+ * A job run from the command line writes its metrics to a file when done (see MetricRegistry).  The daemon serves
+ * them instead.
+ */
 @Component
 public class BlueGreenManager
 {
@@ -25,57 +43,118 @@ public class BlueGreenManager
   @Autowired
   private JobFactory jobFactory;
 
+  @Autowired
+  private EnvironmentLeaseKeeper environmentLeaseKeeper;
+
   /**
    * Parses input args, decides what job to run.  Returns true if args are valid.
+   * <p/>
+   * Synchronized since the argument parser holds the parse state.
    */
-  public Job parseArgsToJob(String[] args)
+  public synchronized Job parseArgsToJob(String[] args)
   {
     argumentParser.parseArgs(args);
     return jobFactory.makeJob(argumentParser.getJobName(), argumentParser.getParameters(), argumentParser.getCommandLine());
   }
 
-  private void explainValidJobs()
+  /**
+   * Explains valid jobs along with the cmdline error.
+   */
+  public ReturnCode explainCmdlineError(CmdlineException e)
   {
     jobFactory.explainValidJobs();
+    LOGGER.error(e.getMessage());
+    return CMDLINE_ERROR;
+  }
+
+  /**
+   * Runs the job, whose envs the caller has leased, and returns how it went.
+   */
+  public ReturnCode processJob(Job job)
+  {
+    JobStatus jobStatus = job.process();
+    switch (jobStatus)
+    {
+      case DONE:
+        return SUCCESS;
+      case ERROR:
+      default:
+        return PROCESSING_ERROR;
+    }
+  }
+
+  /**
+   * Parses the args and runs the job, returning how it went.  Fails right away if another job holds one of the envs.
+   */
+  public ReturnCode processArgs(String[] args)
+  {
+    Job job;
+    try
+    {
+      job = parseArgsToJob(args);
+    }
+    catch (CmdlineException e)
+    {
+      return explainCmdlineError(e);
+    }
+    if (job == null)
+    {
+      return SUCCESS;
+    }
+    List<String> envNames = EnvironmentLeaseKeeper.getEnvNames(job);
+    String leaseOwner = environmentLeaseKeeper.makeLeaseOwner();
+    String blocker = environmentLeaseKeeper.tryAcquire(envNames, leaseOwner);
+    if (blocker != null)
+    {
+      LOGGER.error("Cannot run " + job.getName() + " now, " + blocker);
+      return PROCESSING_ERROR;
+    }
+    try
+    {
+      return processJob(job);
+    }
+    finally
+    {
+      environmentLeaseKeeper.release(envNames, leaseOwner);
+    }
   }
 
   public static void main(String[] args)
   {
+    if (args != null && args.length > 0 && JobClient.isClientCommand(args[0]))
+    {
+      System.exit(JobClient.runCommand(args, System.out).getCode()); //NOSONAR
+    }
     ReturnCode returnCode = SUCCESS;
-    BlueGreenManager blueGreenManager = null;
     try
     {
       ApplicationContext context =
           new ClassPathXmlApplicationContext(new String[] { "applicationContext/main.xml" });
 
-      blueGreenManager = context.getBean(BlueGreenManager.class);
-      Job job = blueGreenManager.parseArgsToJob(args);
-      if (job != null)
+      if (args != null && args.length == 1 && JobServer.COMMAND_DAEMON.equals(args[0]))
       {
-        JobStatus jobStatus = job.process();
-        switch (jobStatus)
+        context.getBean(JobServer.class).serve();
+      }
+      else if (args != null && args.length > 0 && HistoryAnalyzer.COMMAND_HISTORY_REPORT.equals(args[0]))
+      {
+        returnCode = context.getBean(HistoryAnalyzer.class).runCommand(args, System.out);
+      }
+      else
+      {
+        try
+        {
+          returnCode = context.getBean(BlueGreenManager.class).processArgs(args);
+        }
+        finally
         {
-          case DONE:
-            break; //returnCode already set
-          case ERROR:
-          default:
-            returnCode = PROCESSING_ERROR;
-            break;
+          context.getBean(MetricRegistry.class).writeFile(args != null && args.length > 0 ? args[0] : null);
         }
       }
     }
     catch (CmdlineException e)
     {
       returnCode = CMDLINE_ERROR;
-      if (blueGreenManager != null)
-      {
-        blueGreenManager.explainValidJobs();
-        LOGGER.error(e.getMessage());
-      }
-      else
-      {
-        LOGGER.error("Inexplicable cmdline error", e);
-      }
+      LOGGER.error("Inexplicable cmdline error", e);
     }
     catch (Throwable e)
     {
@@ -0,0 +1,97 @@
+package bluegreen.manager.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Shared secret between the daemon and its thin client, kept in a file only its owner can read or write (0600).
+ * Whoever can read the file can submit jobs to the daemon, so it is as private as the user's own shell.
+ * <p/>
+ * The daemon creates the file with a random token if missing, and refuses to use a file that others can read.  The
+ * client reads the token from the same file and sends it with each request.
+ */
+public class DaemonToken
+{
+  public static final String DEFAULT_TOKEN_FILE = "bluegreen-daemon.token";
+  private static final int NUM_TOKEN_BYTES = 32;
+  private static final Charset CHARSET = Charset.forName(JobServer.CHARSET);
+  private static final Set<PosixFilePermission> OWNER_ONLY = EnumSet.of(PosixFilePermission.OWNER_READ,
+      PosixFilePermission.OWNER_WRITE);
+
+  private DaemonToken()
+  {
+  }
+
+  /**
+   * Returns the token in the file, first creating the file with a new random token if missing.
+   */
+  public static String readOrCreate(File file) throws IOException
+  {
+    if (!file.exists())
+    {
+      try
+      {
+        Path path = Files.createFile(file.toPath(), PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+        Files.write(path, makeToken().getBytes(CHARSET));
+      }
+      catch (FileAlreadyExistsException e)
+      {
+        //Another process created it first, use theirs
+      }
+    }
+    return read(file);
+  }
+
+  /**
+   * Random hex string.
+   */
+  private static String makeToken()
+  {
+    byte[] bytes = new byte[NUM_TOKEN_BYTES];
+    new SecureRandom().nextBytes(bytes);
+    StringBuilder sb = new StringBuilder();
+    for (byte b : bytes)
+    {
+      sb.append(String.format("%02x", b));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Returns the token in the file, or throws if the file is missing, empty, or accessible to others than its owner.
+   */
+  public static String read(File file) throws IOException
+  {
+    Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(file.toPath());
+    if (!OWNER_ONLY.containsAll(permissions))
+    {
+      throw new IOException("Daemon token file " + file + " must be accessible to its owner only (chmod 600), but is "
+          + PosixFilePermissions.toString(permissions));
+    }
+    String token = new String(Files.readAllBytes(file.toPath()), CHARSET).trim();
+    if (token.isEmpty())
+    {
+      throw new IOException("Daemon token file " + file + " is empty");
+    }
+    return token;
+  }
+
+  /**
+   * True if the presented token is the expected one.  Takes the same time wherever they differ, so timing tells an
+   * attacker nothing.
+   */
+  public static boolean matches(String expected, String presented)
+  {
+    return presented != null && MessageDigest.isEqual(expected.getBytes(CHARSET), presented.getBytes(CHARSET));
+  }
+}
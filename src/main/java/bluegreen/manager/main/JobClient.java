@@ -0,0 +1,158 @@
+package bluegreen.manager.main;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+
+import com.google.gson.Gson;
+
+/**
+ * Thin client for daemon mode: sends a job to a running JobServer and prints the job's output as it streams back.
+ * Does not start Spring, so costs little more than the JVM.
+ * <p/>
+ * Usage: "submit &lt;jobName&gt; &lt;parameters&gt;" runs a job, "daemonStatus" and "stopDaemon" query and stop the
+ * daemon.  The port is the system property bluegreen.daemon.port, defaulting to JobServer.DEFAULT_PORT.  The daemon
+ * token is read from the file in the system property bluegreen.daemon.tokenFile, defaulting to the daemon's default
+ * (see DaemonToken).
+ */
+public class JobClient
+{
+  public static final String COMMAND_SUBMIT = "submit";
+  public static final String COMMAND_STATUS = "daemonStatus";
+  public static final String COMMAND_STOP = "stopDaemon";
+  public static final String PROPERTY_PORT = "bluegreen.daemon.port";
+  public static final String PROPERTY_TOKEN_FILE = "bluegreen.daemon.tokenFile";
+
+  private int port;
+  private String token;
+
+  public JobClient(int port, String token)
+  {
+    this.port = port;
+    this.token = token;
+  }
+
+  public static boolean isClientCommand(String command)
+  {
+    return COMMAND_SUBMIT.equals(command) || COMMAND_STATUS.equals(command) || COMMAND_STOP.equals(command);
+  }
+
+  /**
+   * Runs a client command against the daemon on the configured port.
+   */
+  public static ReturnCode runCommand(String[] args, PrintStream out)
+  {
+    String tokenFile = System.getProperty(PROPERTY_TOKEN_FILE, DaemonToken.DEFAULT_TOKEN_FILE);
+    String token;
+    try
+    {
+      token = DaemonToken.read(new File(tokenFile));
+    }
+    catch (IOException e)
+    {
+      System.err.println("Cannot read bluegreen-manager daemon token from " + tokenFile + ": " + e);
+      return ReturnCode.PROCESSING_ERROR;
+    }
+    JobClient jobClient = new JobClient(Integer.getInteger(PROPERTY_PORT, JobServer.DEFAULT_PORT), token);
+    if (COMMAND_STATUS.equals(args[0]))
+    {
+      return jobClient.request("GET", JobServer.PATH_STATUS, null, out);
+    }
+    else if (COMMAND_STOP.equals(args[0]))
+    {
+      return jobClient.request("POST", JobServer.PATH_SHUTDOWN, null, out);
+    }
+    return jobClient.submit(Arrays.copyOfRange(args, 1, args.length), out);
+  }
+
+  /**
+   * Submits the job args, and prints job output until the result line.  Returns the job's return code.
+   */
+  public ReturnCode submit(String[] jobArgs, PrintStream out)
+  {
+    if (jobArgs.length == 0)
+    {
+      System.err.println("Syntax Error: Please specify a job to submit");
+      return ReturnCode.CMDLINE_ERROR;
+    }
+    return request("POST", JobServer.PATH_JOBS, new Gson().toJson(jobArgs), out);
+  }
+
+  /**
+   * Sends the request and copies response lines to out.  A result line from the server sets the return code,
+   * otherwise success means a complete response.
+   */
+  ReturnCode request(String method, String path, String body, PrintStream out)
+  {
+    HttpURLConnection connection = null;
+    try
+    {
+      connection = (HttpURLConnection) new URL("http://" + JobServer.LOOPBACK_ADDRESS + ":" + port + path).openConnection();
+      connection.setRequestMethod(method);
+      connection.setReadTimeout(0); //Jobs can take hours
+      connection.setRequestProperty("Authorization", JobServer.AUTH_SCHEME + token);
+      if ("POST".equals(method))
+      {
+        connection.setRequestProperty("Content-Type", JobServer.CONTENT_TYPE_JSON + "; charset=" + JobServer.CHARSET);
+      }
+      if (body != null)
+      {
+        connection.setDoOutput(true);
+        OutputStream outputStream = connection.getOutputStream();
+        outputStream.write(body.getBytes(JobServer.CHARSET));
+        outputStream.close();
+      }
+      if (connection.getResponseCode() != HttpURLConnection.HTTP_OK)
+      {
+        System.err.println("Daemon replied " + connection.getResponseCode() + " " + connection.getResponseMessage());
+        return ReturnCode.PROCESSING_ERROR;
+      }
+      return readResponse(connection, JobServer.PATH_JOBS.equals(path), out);
+    }
+    catch (IOException e)
+    {
+      System.err.println("Cannot reach bluegreen-manager daemon on port " + port + ": " + e);
+      return ReturnCode.PROCESSING_ERROR;
+    }
+    finally
+    {
+      if (connection != null)
+      {
+        connection.disconnect();
+      }
+    }
+  }
+
+  private ReturnCode readResponse(HttpURLConnection connection, boolean expectResult, PrintStream out) throws IOException
+  {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), JobServer.CHARSET));
+    try
+    {
+      String line;
+      while ((line = reader.readLine()) != null)
+      {
+        if (expectResult && line.startsWith(JobServer.RESULT_PREFIX))
+        {
+          return ReturnCode.valueOf(line.substring(JobServer.RESULT_PREFIX.length()).trim());
+        }
+        out.println(line);
+      }
+    }
+    finally
+    {
+      reader.close();
+    }
+    if (expectResult)
+    {
+      System.err.println("Lost connection to daemon before the job finished");
+      return ReturnCode.PROCESSING_ERROR;
+    }
+    return ReturnCode.SUCCESS;
+  }
+}
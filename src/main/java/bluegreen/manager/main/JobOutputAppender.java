@@ -0,0 +1,85 @@
+package bluegreen.manager.main;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * Copies INFO and above log events to the response of a job submitted to the daemon, so the client sees the same
+ * progress as the console of a standalone run.
+ * <p/>
+ * Attached to the root logger while the job runs, and passes only the events tagged with the job's MDC key, since
+ * other jobs may be running at the same time.  If the client goes away, output is dropped and the job continues.
+ */
+class JobOutputAppender extends AppenderSkeleton
+{
+  private static final String CONVERSION_PATTERN = "%d{MM/dd/yy HH:mm:ss} %5p %c{1} - %m%n";
+
+  private Writer writer;
+  private String jobKey;
+  private boolean broken;
+
+  JobOutputAppender(Writer writer, String jobKey)
+  {
+    this.writer = writer;
+    this.jobKey = jobKey;
+    setLayout(new PatternLayout(CONVERSION_PATTERN));
+    setThreshold(Level.INFO);
+  }
+
+  void attach()
+  {
+    Logger.getRootLogger().addAppender(this);
+  }
+
+  void detach()
+  {
+    Logger.getRootLogger().removeAppender(this);
+  }
+
+  /**
+   * Called under the appender lock, so events from the job thread and waiter threads do not interleave.
+   */
+  @Override
+  protected void append(LoggingEvent event)
+  {
+    if (broken || !jobKey.equals(event.getMDC(JobScheduler.MDC_JOB_KEY)))
+    {
+      return;
+    }
+    try
+    {
+      writer.write(layout.format(event));
+      String[] throwableLines = event.getThrowableStrRep();
+      if (throwableLines != null && layout.ignoresThrowable())
+      {
+        for (String throwableLine : throwableLines)
+        {
+          writer.write(throwableLine + "\n");
+        }
+      }
+      writer.flush();
+    }
+    catch (IOException e)
+    {
+      broken = true;
+    }
+  }
+
+  @Override
+  public void close()
+  {
+    closed = true;
+  }
+
+  @Override
+  public boolean requiresLayout()
+  {
+    return true;
+  }
+}
@@ -0,0 +1,317 @@
+package bluegreen.manager.main;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import bluegreen.manager.jobs.EnvironmentLeaseKeeper;
+import bluegreen.manager.jobs.Job;
+
+/**
+ * Runs the jobs submitted to the daemon, many at once, while keeping jobs on the same env apart.
+ * <p/>
+ * A job starts when a worker is free and the leases on its envs can be taken (see EnvironmentLeaseKeeper).  Until
+ * then it waits in the queue, and jobs behind it on other envs may go first.  Jobs on the same env start in the order
+ * submitted.  Jobs blocked by a lease held by another process are retried periodically.
+ * <p/>
+ * Args are checked when submitted, but the job is made again when it starts, so that it sees the job history of
+ * any job that ran on its envs in the meantime.
+ */
+@Lazy
+@Component
+public class JobScheduler
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(JobScheduler.class);
+  private static final int DEFAULT_MAX_CONCURRENT_JOBS = 4;
+  private static final long DEFAULT_LEASE_RETRY_SECONDS = 30L;
+
+  /**
+   * MDC key naming the job a log event belongs to, on every thread working for it.
+   */
+  public static final String MDC_JOB_KEY = "bluegreenJob";
+
+  @Autowired
+  private BlueGreenManager blueGreenManager;
+
+  @Autowired
+  private EnvironmentLeaseKeeper environmentLeaseKeeper;
+
+  @Value("${bluegreen.scheduler.maxConcurrentJobs:" + DEFAULT_MAX_CONCURRENT_JOBS + "}")
+  private int maxConcurrentJobs = DEFAULT_MAX_CONCURRENT_JOBS;
+
+  @Value("${bluegreen.scheduler.leaseRetrySeconds:" + DEFAULT_LEASE_RETRY_SECONDS + "}")
+  private long leaseRetrySeconds = DEFAULT_LEASE_RETRY_SECONDS;
+
+  private final LinkedList<ScheduledJob> pending = new LinkedList<ScheduledJob>();
+  private final List<ScheduledJob> running = new ArrayList<ScheduledJob>();
+  private ExecutorService workerService;
+  private ScheduledExecutorService retryService;
+
+  public synchronized void start()
+  {
+    workerService = Executors.newFixedThreadPool(Math.max(1, maxConcurrentJobs));
+    retryService = Executors.newSingleThreadScheduledExecutor();
+    retryService.scheduleWithFixedDelay(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        dispatch();
+      }
+    }, leaseRetrySeconds, leaseRetrySeconds, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Cancels queued jobs, and waits for running jobs to finish.
+   */
+  public void stop() throws InterruptedException
+  {
+    ExecutorService stoppingWorkerService;
+    synchronized (this)
+    {
+      if (workerService == null)
+      {
+        return;
+      }
+      retryService.shutdownNow();
+      for (ScheduledJob scheduledJob : pending)
+      {
+        scheduledJob.futureTask.cancel(false);
+      }
+      pending.clear();
+      stoppingWorkerService = workerService;
+      workerService = null;
+    }
+    stoppingWorkerService.shutdown();
+    while (!stoppingWorkerService.awaitTermination(1L, TimeUnit.MINUTES))
+    {
+      LOGGER.info("Waiting for " + running.size() + " running job(s) to finish");
+    }
+  }
+
+  /**
+   * Checks the args and queues the job.  The future yields the job's return code, or CMDLINE_ERROR right away if
+   * the args are bad.  Log events of the job are tagged with the jobKey.
+   */
+  public Future<ReturnCode> submit(String[] args, String jobKey)
+  {
+    Job job;
+    try
+    {
+      job = blueGreenManager.parseArgsToJob(args);
+    }
+    catch (CmdlineException e)
+    {
+      return completed(blueGreenManager.explainCmdlineError(e));
+    }
+    if (job == null)
+    {
+      return completed(ReturnCode.SUCCESS);
+    }
+    ScheduledJob scheduledJob = new ScheduledJob(args, jobKey, EnvironmentLeaseKeeper.getEnvNames(job));
+    synchronized (this)
+    {
+      if (workerService == null)
+      {
+        throw new IllegalStateException("Job scheduler is not running");
+      }
+      pending.add(scheduledJob);
+    }
+    LOGGER.info("Queued job: " + scheduledJob.commandLine);
+    dispatch();
+    return scheduledJob.futureTask;
+  }
+
+  /**
+   * Starts every queued job that has a free worker and can lease its envs.  An env wanted by a job still waiting
+   * is not given to a job queued after it.
+   */
+  synchronized void dispatch()
+  {
+    Set<String> blockedEnvNames = new HashSet<String>();
+    Iterator<ScheduledJob> iterator = pending.iterator();
+    while (iterator.hasNext() && workerService != null && running.size() < maxConcurrentJobs)
+    {
+      ScheduledJob scheduledJob = iterator.next();
+      if (containsAny(blockedEnvNames, scheduledJob.envNames))
+      {
+        continue;
+      }
+      String blocker = tryAcquire(scheduledJob);
+      if (blocker == null)
+      {
+        iterator.remove();
+        running.add(scheduledJob);
+        workerService.execute(scheduledJob.futureTask);
+      }
+      else
+      {
+        blockedEnvNames.addAll(scheduledJob.envNames);
+        if (!blocker.equals(scheduledJob.lastBlocker))
+        {
+          logForJob(scheduledJob, "Job waiting: " + blocker);
+          scheduledJob.lastBlocker = blocker;
+        }
+      }
+    }
+  }
+
+  private String tryAcquire(ScheduledJob scheduledJob)
+  {
+    try
+    {
+      return environmentLeaseKeeper.tryAcquire(scheduledJob.envNames, scheduledJob.leaseOwner);
+    }
+    catch (RuntimeException e)
+    {
+      LOGGER.warn("Failed to lease envs " + scheduledJob.envNames + ", will retry", e);
+      return "lease lookup failed";
+    }
+  }
+
+  private static boolean containsAny(Set<String> set, Collection<String> items)
+  {
+    for (String item : items)
+    {
+      if (set.contains(item))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void logForJob(ScheduledJob scheduledJob, String message)
+  {
+    MDC.put(MDC_JOB_KEY, scheduledJob.jobKey);
+    try
+    {
+      LOGGER.info(message);
+    }
+    finally
+    {
+      MDC.remove(MDC_JOB_KEY);
+    }
+  }
+
+  /**
+   * Lines describing the running and queued jobs, or empty if none.
+   */
+  public synchronized List<String> describeJobs()
+  {
+    List<String> lines = new ArrayList<String>();
+    for (ScheduledJob scheduledJob : running)
+    {
+      lines.add("running " + scheduledJob.commandLine);
+    }
+    for (ScheduledJob scheduledJob : pending)
+    {
+      lines.add("queued " + scheduledJob.commandLine
+          + (scheduledJob.lastBlocker == null ? "" : " (" + scheduledJob.lastBlocker + ")"));
+    }
+    return lines;
+  }
+
+  /**
+   * Called on the worker thread: remakes the job, runs it, and gives up its leases.
+   */
+  private ReturnCode runJob(ScheduledJob scheduledJob)
+  {
+    MDC.put(MDC_JOB_KEY, scheduledJob.jobKey);
+    try
+    {
+      LOGGER.info("Starting job: " + scheduledJob.commandLine);
+      return blueGreenManager.processJob(blueGreenManager.parseArgsToJob(scheduledJob.args));
+    }
+    catch (CmdlineException e)
+    {
+      return blueGreenManager.explainCmdlineError(e);
+    }
+    catch (Throwable e)
+    {
+      LOGGER.error("Processing error", e);
+      return ReturnCode.PROCESSING_ERROR;
+    }
+    finally
+    {
+      environmentLeaseKeeper.release(scheduledJob.envNames, scheduledJob.leaseOwner);
+      MDC.remove(MDC_JOB_KEY);
+      synchronized (this)
+      {
+        running.remove(scheduledJob);
+      }
+      dispatch();
+    }
+  }
+
+  private static Future<ReturnCode> completed(ReturnCode returnCode)
+  {
+    FutureTask<ReturnCode> futureTask = new FutureTask<ReturnCode>(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        //Nothing to do
+      }
+    }, returnCode);
+    futureTask.run();
+    return futureTask;
+  }
+
+  /**
+   * A submitted job, from queue to finish.
+   */
+  private class ScheduledJob
+  {
+    private final String[] args;
+    private final String jobKey;
+    private final String commandLine;
+    private final List<String> envNames;
+    private final String leaseOwner;
+    private final FutureTask<ReturnCode> futureTask;
+    private String lastBlocker;
+
+    private ScheduledJob(String[] args, String jobKey, List<String> envNames)
+    {
+      this.args = args;
+      this.jobKey = jobKey;
+      this.commandLine = StringUtils.join(args, " ");
+      this.envNames = envNames;
+      this.leaseOwner = environmentLeaseKeeper.makeLeaseOwner();
+      this.futureTask = new FutureTask<ReturnCode>(new Callable<ReturnCode>()
+      {
+        @Override
+        public ReturnCode call()
+        {
+          return runJob(ScheduledJob.this);
+        }
+      });
+    }
+  }
+
+  //Test purposes only
+  void setMaxConcurrentJobs(int maxConcurrentJobs)
+  {
+    this.maxConcurrentJobs = maxConcurrentJobs;
+  }
+}
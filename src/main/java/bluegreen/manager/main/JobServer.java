@@ -0,0 +1,409 @@
+package bluegreen.manager.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import bluegreen.manager.model.tx.HistoryRetention;
+import bluegreen.manager.utils.MetricRegistry;
+
+/**
+ * Daemon mode: accepts jobs over a local http endpoint and runs them in this warm application context.
+ * <p/>
+ * Listens on the loopback interface only.  POST /jobs with the job args as a JSON array of strings; the response
+ * streams the job's log output as it runs, and ends with a line holding the return code.  GET /status tells if a job
+ * is running.  GET /metrics returns the metrics in Prometheus text format (see MetricRegistry).  POST /shutdown stops
+ * the daemon after the running jobs (if any) finish.
+ * <p/>
+ * Every request must carry the token of the daemon's token file (see DaemonToken) as "Authorization: Bearer", so
+ * other local users can't run jobs.  Requests whose Host is not loopback are refused, so a web page can't reach the
+ * daemon by DNS rebinding, and POSTs must be application/json, which a browser can't send cross-origin without a
+ * preflight the daemon never answers.
+ * <p/>
+ * Jobs run concurrently on the JobScheduler, except jobs on the same env which run one after the other.  Old job
+ * history is archived periodically while the daemon runs (see HistoryRetention).
+ */
+@Lazy
+@Component
+public class JobServer
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(JobServer.class);
+
+  public static final String COMMAND_DAEMON = "daemon";
+  public static final int DEFAULT_PORT = 8089;
+  static final String LOOPBACK_ADDRESS = "127.0.0.1";
+  static final String PATH_JOBS = "/jobs";
+  static final String PATH_STATUS = "/status";
+  static final String PATH_METRICS = "/metrics";
+  static final String PATH_SHUTDOWN = "/shutdown";
+  static final String RESULT_PREFIX = "RESULT ";
+  static final String CHARSET = "UTF-8";
+  static final String CONTENT_TYPE_JSON = "application/json";
+  static final String AUTH_SCHEME = "Bearer ";
+  private static final List<String> LOOPBACK_HOSTS = Arrays.asList(LOOPBACK_ADDRESS, "localhost", "[::1]");
+  private static final Gson GSON = new Gson();
+
+  private static final AtomicInteger JOB_NUM = new AtomicInteger();
+
+  @Autowired
+  private JobScheduler jobScheduler;
+
+  @Autowired
+  private HistoryRetention historyRetention;
+
+  @Autowired
+  private MetricRegistry metricRegistry;
+
+  @Value("${bluegreen.daemon.port:" + DEFAULT_PORT + "}")
+  private int port = DEFAULT_PORT;
+
+  @Value("${bluegreen.daemon.tokenFile:" + DaemonToken.DEFAULT_TOKEN_FILE + "}")
+  private String tokenFile = DaemonToken.DEFAULT_TOKEN_FILE;
+
+  private String token;
+
+  private HttpServer httpServer;
+  private ExecutorService executorService;
+  private final CountDownLatch shutdownRequested = new CountDownLatch(1);
+
+  /**
+   * Starts serving, and blocks until shutdown is requested.
+   */
+  public void serve() throws IOException, InterruptedException
+  {
+    start();
+    try
+    {
+      awaitShutdownRequest();
+    }
+    finally
+    {
+      stop();
+    }
+  }
+
+  /**
+   * Starts the http server without blocking.
+   */
+  public void start() throws IOException
+  {
+    token = DaemonToken.readOrCreate(new File(tokenFile));
+    jobScheduler.start();
+    historyRetention.start();
+    httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getByName(LOOPBACK_ADDRESS), port), 0);
+    createGuardedContext(PATH_JOBS, new JobHandler());
+    createGuardedContext(PATH_STATUS, new StatusHandler());
+    createGuardedContext(PATH_METRICS, new MetricsHandler());
+    createGuardedContext(PATH_SHUTDOWN, new ShutdownHandler());
+    executorService = Executors.newCachedThreadPool();
+    httpServer.setExecutor(executorService);
+    httpServer.start();
+    LOGGER.info("Daemon accepting jobs at http://" + LOOPBACK_ADDRESS + ":" + getPort() + PATH_JOBS);
+  }
+
+  private void createGuardedContext(String path, HttpHandler handler)
+  {
+    HttpContext context = httpServer.createContext(path, handler);
+    context.getFilters().add(new GuardFilter());
+  }
+
+  /**
+   * Waits for the running jobs to finish, then stops the http server.
+   */
+  public void stop() throws InterruptedException
+  {
+    historyRetention.stop();
+    jobScheduler.stop();
+    if (httpServer != null)
+    {
+      httpServer.stop(0);
+      executorService.shutdownNow();
+      httpServer = null;
+      LOGGER.info("Daemon stopped");
+    }
+  }
+
+  /**
+   * Blocks until a client requests shutdown.
+   */
+  public void awaitShutdownRequest() throws InterruptedException
+  {
+    shutdownRequested.await();
+  }
+
+  /**
+   * The bound port, which differs from the configured port if that was 0 (any free port).
+   */
+  public int getPort()
+  {
+    return httpServer == null ? port : httpServer.getAddress().getPort();
+  }
+
+  /**
+   * Submits the job and waits for it, with its log output copied to the writer.
+   */
+  ReturnCode runJob(String[] args, Writer writer)
+  {
+    String jobKey = "job-" + JOB_NUM.incrementAndGet();
+    JobOutputAppender appender = new JobOutputAppender(writer, jobKey);
+    appender.attach();
+    MDC.put(JobScheduler.MDC_JOB_KEY, jobKey);
+    try
+    {
+      return jobScheduler.submit(args, jobKey).get();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      LOGGER.error("Interrupted while waiting for job");
+      return ReturnCode.PROCESSING_ERROR;
+    }
+    catch (CancellationException e)
+    {
+      LOGGER.error("Job cancelled, daemon is shutting down");
+      return ReturnCode.PROCESSING_ERROR;
+    }
+    catch (ExecutionException e)
+    {
+      LOGGER.error("Processing error", e.getCause());
+      return ReturnCode.PROCESSING_ERROR;
+    }
+    catch (RuntimeException e)
+    {
+      LOGGER.error("Processing error", e);
+      return ReturnCode.PROCESSING_ERROR;
+    }
+    finally
+    {
+      MDC.remove(JobScheduler.MDC_JOB_KEY);
+      appender.detach();
+    }
+  }
+
+  /**
+   * Reads the request body as a JSON array of args, or returns null if it isn't one.
+   */
+  private static String[] readArgs(HttpExchange exchange) throws IOException
+  {
+    try
+    {
+      return GSON.fromJson(new InputStreamReader(exchange.getRequestBody(), CHARSET), String[].class);
+    }
+    catch (JsonParseException e)
+    {
+      return null;
+    }
+  }
+
+  /**
+   * True if the Host header names the loopback interface, with or without a port.
+   */
+  static boolean isLoopbackHost(String host)
+  {
+    if (host == null)
+    {
+      return false;
+    }
+    int portStart = host.lastIndexOf(':');
+    String hostname = portStart > host.lastIndexOf(']') ? host.substring(0, portStart) : host;
+    return LOOPBACK_HOSTS.contains(hostname.toLowerCase());
+  }
+
+  /**
+   * True if the Content-Type header is JSON, ignoring parameters like charset.
+   */
+  static boolean isJsonContentType(String contentType)
+  {
+    if (contentType == null)
+    {
+      return false;
+    }
+    int paramStart = contentType.indexOf(';');
+    String mediaType = paramStart < 0 ? contentType : contentType.substring(0, paramStart);
+    return CONTENT_TYPE_JSON.equalsIgnoreCase(mediaType.trim());
+  }
+
+  private static void respond(HttpExchange exchange, int statusCode, String body) throws IOException
+  {
+    byte[] bytes = body.getBytes(CHARSET);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=" + CHARSET);
+    exchange.sendResponseHeaders(statusCode, bytes.length);
+    exchange.getResponseBody().write(bytes);
+    exchange.close();
+  }
+
+  private static boolean isMethod(HttpExchange exchange, String method) throws IOException
+  {
+    if (!method.equals(exchange.getRequestMethod()))
+    {
+      respond(exchange, 405, "Use " + method + "\n");
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Runs a submitted job, streaming its output in a chunked response.
+   */
+  private class JobHandler implements HttpHandler
+  {
+    @Override
+    public void handle(HttpExchange exchange) throws IOException
+    {
+      if (!isMethod(exchange, "POST"))
+      {
+        return;
+      }
+      String[] args = readArgs(exchange);
+      if (args == null)
+      {
+        respond(exchange, 400, "Expected a JSON array of job args\n");
+        return;
+      }
+      exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=" + CHARSET);
+      exchange.sendResponseHeaders(200, 0);
+      Writer writer = new OutputStreamWriter(exchange.getResponseBody(), CHARSET);
+      ReturnCode returnCode = runJob(args, writer);
+      try
+      {
+        writer.write(RESULT_PREFIX + returnCode.name() + "\n");
+        writer.flush();
+      }
+      catch (IOException e)
+      {
+        LOGGER.warn("Client went away before job result " + returnCode + " could be sent");
+      }
+      finally
+      {
+        exchange.close();
+      }
+    }
+  }
+
+  /**
+   * Refuses requests from off the loopback interface, without the daemon token, or (for POSTs) not JSON, before they
+   * reach a handler.
+   */
+  private class GuardFilter extends Filter
+  {
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException
+    {
+      if (!isLoopbackHost(exchange.getRequestHeaders().getFirst("Host")))
+      {
+        LOGGER.warn("Refused " + exchange.getRequestMethod() + " " + exchange.getRequestURI()
+            + " for non-loopback host");
+        respond(exchange, 403, "Host must be " + LOOPBACK_ADDRESS + "\n");
+      }
+      else if (!isAuthorized(exchange.getRequestHeaders().getFirst("Authorization")))
+      {
+        LOGGER.warn("Refused " + exchange.getRequestMethod() + " " + exchange.getRequestURI() + " without valid token");
+        respond(exchange, 401, "Missing or wrong daemon token\n");
+      }
+      else if ("POST".equals(exchange.getRequestMethod())
+          && !isJsonContentType(exchange.getRequestHeaders().getFirst("Content-Type")))
+      {
+        respond(exchange, 415, "Content-Type must be " + CONTENT_TYPE_JSON + "\n");
+      }
+      else
+      {
+        chain.doFilter(exchange);
+      }
+    }
+
+    @Override
+    public String description()
+    {
+      return "Checks host, daemon token and content type";
+    }
+  }
+
+  private boolean isAuthorized(String authorization)
+  {
+    return authorization != null && authorization.startsWith(AUTH_SCHEME)
+        && DaemonToken.matches(token, authorization.substring(AUTH_SCHEME.length()).trim());
+  }
+
+  private class StatusHandler implements HttpHandler
+  {
+    @Override
+    public void handle(HttpExchange exchange) throws IOException
+    {
+      if (!isMethod(exchange, "GET"))
+      {
+        return;
+      }
+      List<String> lines = jobScheduler.describeJobs();
+      respond(exchange, 200, (lines.isEmpty() ? "idle" : StringUtils.join(lines, "\n")) + "\n");
+    }
+  }
+
+  private class MetricsHandler implements HttpHandler
+  {
+    @Override
+    public void handle(HttpExchange exchange) throws IOException
+    {
+      if (!isMethod(exchange, "GET"))
+      {
+        return;
+      }
+      respond(exchange, 200, metricRegistry.formatPrometheus());
+    }
+  }
+
+  private class ShutdownHandler implements HttpHandler
+  {
+    @Override
+    public void handle(HttpExchange exchange) throws IOException
+    {
+      if (!isMethod(exchange, "POST"))
+      {
+        return;
+      }
+      LOGGER.info("Daemon shutdown requested");
+      respond(exchange, 200, "shutting down\n");
+      shutdownRequested.countDown();
+    }
+  }
+
+  //Test purposes only
+  void setPort(int port)
+  {
+    this.port = port;
+  }
+
+  //Test purposes only
+  void setTokenFile(String tokenFile)
+  {
+    this.tokenFile = tokenFile;
+  }
+}
@@ -1,11 +1,16 @@
 package bluegreen.manager.model.dao;
 
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import javax.persistence.LockModeType;
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
 
 import org.springframework.stereotype.Repository;
 
+import bluegreen.manager.model.domain.ApplicationVm;
 import bluegreen.manager.model.domain.Environment;
 
 @Repository
@@ -54,6 +59,78 @@ public class EnvironmentDAO extends GenericDAO<Environment>
     return query;
   }
 
+  /**
+   * Returns the single named environment with its whole graph loaded: datacenter, logical and physical databases,
+   * application vms and applications.  Throws if not found.
+   * <p/>
+   * Takes three statements however big the graph, where walking the lazy associations takes one per association.
+   * (Hibernate cannot join-fetch two bags in one statement, so databases, vms and applications are fetched separately
+   * into the same persistence context.)
+   */
+  public Environment findNamedEnvGraph(String envName)
+  {
+    if (envName == null)
+    {
+      return null;
+    }
+    Environment environment = findNamedEnvGraphQuery(envName).getSingleResult();
+    fetchApplicationVms(environment);
+    return environment;
+  }
+
+  /**
+   * Returns the single named environment with its whole graph loaded.  Null if not found.
+   */
+  public Environment findNamedEnvGraphAllowNull(String envName)
+  {
+    if (envName == null)
+    {
+      return null;
+    }
+    List<Environment> list = findNamedEnvGraphQuery(envName).getResultList();
+    if (list != null && list.size() > 0)
+    {
+      Environment environment = list.get(0);
+      fetchApplicationVms(environment);
+      return environment;
+    }
+    return null; //Not found
+  }
+
+  /**
+   * Makes (but does not run) a query for a named env, join-fetching its datacenter and databases.
+   */
+  private TypedQuery<Environment> findNamedEnvGraphQuery(String envName)
+  {
+    String queryString = "SELECT DISTINCT e FROM " + Environment.class.getSimpleName() + " e "
+        + "JOIN FETCH e.datacenter "
+        + "LEFT JOIN FETCH e.logicalDatabases ld "
+        + "LEFT JOIN FETCH ld.physicalDatabase "
+        + "WHERE e.envName = :envName";
+    TypedQuery<Environment> query = entityManager.createQuery(queryString, Environment.class);
+    query.setParameter("envName", envName);
+    return query;
+  }
+
+  /**
+   * Fetches the application vms of the managed environment, then their applications.
+   */
+  private void fetchApplicationVms(Environment environment)
+  {
+    if (environment == null)
+    {
+      return;
+    }
+    Query vmQuery = entityManager.createQuery("SELECT DISTINCT e FROM " + Environment.class.getSimpleName() + " e "
+        + "LEFT JOIN FETCH e.applicationVms WHERE e = :environment");
+    vmQuery.setParameter("environment", environment);
+    vmQuery.getResultList();
+    Query applicationQuery = entityManager.createQuery("SELECT DISTINCT vm FROM " + ApplicationVm.class.getSimpleName()
+        + " vm LEFT JOIN FETCH vm.applications WHERE vm.environment = :environment");
+    applicationQuery.setParameter("environment", environment);
+    applicationQuery.getResultList();
+  }
+
   /**
    * Returns a list of the named environments (assuming they exist).
    */
@@ -93,6 +170,59 @@ public class EnvironmentDAO extends GenericDAO<Environment>
     return sb.toString();
   }
 
+  /**
+   * Returns those of the named environments that exist, ordered by name, and locks their rows until the transaction
+   * ends.  Locking in name order keeps two lease takers from deadlocking.
+   */
+  public List<Environment> findNamedEnvsForUpdate(Collection<String> envNames)
+  {
+    String queryString = "SELECT e FROM " + Environment.class.getSimpleName() + " e WHERE "
+        + "e.envName IN :envNames ORDER BY e.envName";
+    TypedQuery<Environment> query = entityManager.createQuery(queryString, Environment.class);
+    query.setParameter("envNames", envNames);
+    query.setLockMode(LockModeType.PESSIMISTIC_WRITE);
+    return query.getResultList();
+  }
+
+  /**
+   * Sets the lease owner and time of the named environments.  Returns the number updated.
+   */
+  public int updateLeases(Collection<String> envNames, String leaseOwner, Timestamp leaseTime)
+  {
+    String queryString = "UPDATE " + Environment.class.getSimpleName() + " e "
+        + "SET e.leaseOwner = :leaseOwner, e.leaseTime = :leaseTime WHERE e.envName IN :envNames";
+    Query query = entityManager.createQuery(queryString);
+    query.setParameter("leaseOwner", leaseOwner);
+    query.setParameter("leaseTime", leaseTime);
+    query.setParameter("envNames", envNames);
+    return query.executeUpdate();
+  }
+
+  /**
+   * Updates the lease time of every environment leased by the owner.  Returns the number updated.
+   */
+  public int renewLeases(String leaseOwner, Timestamp leaseTime)
+  {
+    String queryString = "UPDATE " + Environment.class.getSimpleName() + " e "
+        + "SET e.leaseTime = :leaseTime WHERE e.leaseOwner = :leaseOwner";
+    Query query = entityManager.createQuery(queryString);
+    query.setParameter("leaseTime", leaseTime);
+    query.setParameter("leaseOwner", leaseOwner);
+    return query.executeUpdate();
+  }
+
+  /**
+   * Clears the leases held by the owner.  Returns the number cleared.
+   */
+  public int clearLeases(String leaseOwner)
+  {
+    String queryString = "UPDATE " + Environment.class.getSimpleName() + " e "
+        + "SET e.leaseOwner = NULL, e.leaseTime = NULL WHERE e.leaseOwner = :leaseOwner";
+    Query query = entityManager.createQuery(queryString);
+    query.setParameter("leaseOwner", leaseOwner);
+    return query.executeUpdate();
+  }
+
   /**
    * Returns all environments.
    */
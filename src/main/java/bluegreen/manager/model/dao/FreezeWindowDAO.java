@@ -0,0 +1,40 @@
+package bluegreen.manager.model.dao;
+
+import java.util.List;
+import javax.persistence.TypedQuery;
+
+import org.springframework.stereotype.Repository;
+
+import bluegreen.manager.model.domain.FreezeWindow;
+import bluegreen.manager.model.domain.JobHistory;
+
+/**
+ * Data access object for FreezeWindow.
+ */
+@Repository
+public class FreezeWindowDAO extends GenericDAO<FreezeWindow>
+{
+  /**
+   * Finds the freeze windows recorded by the given job run.
+   */
+  public List<FreezeWindow> findByJobHistory(JobHistory jobHistory)
+  {
+    String queryString = "SELECT fw FROM " + FreezeWindow.class.getSimpleName() + " fw "
+        + "WHERE fw." + FreezeWindow.FIELD_JOB_HISTORY + " = :jobHistory";
+    TypedQuery<FreezeWindow> query = entityManager.createQuery(queryString, FreezeWindow.class);
+    query.setParameter("jobHistory", jobHistory);
+    return query.getResultList();
+  }
+
+  /**
+   * Moves the freeze windows of the given job histories to the archive table.  Returns the number moved.
+   */
+  public int archiveByJobHistoryIds(List<Long> jobHistoryIds)
+  {
+    return moveToArchive(FreezeWindow.TABLE_NAME, FreezeWindow.ARCHIVE_TABLE_NAME, FreezeWindow.COLUMN_FK_JOBHIST_ID,
+        jobHistoryIds, FreezeWindow.COLUMN_ID, FreezeWindow.COLUMN_FK_JOBHIST_ID, FreezeWindow.COLUMN_ENV_NAME,
+        FreezeWindow.COLUMN_FREEZE_REQUESTED, FreezeWindow.COLUMN_FROZEN, FreezeWindow.COLUMN_SNAPSHOT_STARTED,
+        FreezeWindow.COLUMN_SNAPSHOT_AVAILABLE, FreezeWindow.COLUMN_THAW_REQUESTED, FreezeWindow.COLUMN_NORMAL,
+        FreezeWindow.COLUMN_WINDOW_MILLIS, FreezeWindow.COLUMN_BUDGET_SECONDS, FreezeWindow.COLUMN_BUDGET_EXCEEDED);
+  }
+}
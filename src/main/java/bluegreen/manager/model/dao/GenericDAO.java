@@ -1,9 +1,12 @@
 package bluegreen.manager.model.dao;
 
 import java.lang.reflect.ParameterizedType;
+import java.util.List;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
 
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,6 +33,14 @@ public abstract class GenericDAO<T>
     return entityManager.find(entityClass, id);
   }
 
+  /**
+   * Returns a reference to the entity with the given id, without loading it.  Enough to link a new entity to it.
+   */
+  public T getReference(long id)
+  {
+    return entityManager.getReference(entityClass, id);
+  }
+
   /**
    * Persists a new entity.
    */
@@ -69,4 +80,31 @@ public abstract class GenericDAO<T>
   {
     return entityManager.contains(entity);
   }
+
+  /**
+   * Copies the rows whose keyColumn is one of the keys from the table to its archive table, which has the same
+   * columns, then deletes them from the table.  Returns the number of rows moved.
+   * <p/>
+   * Native sql, since the archive table is not mapped.  Entities of the moved rows already in the persistence context
+   * are not evicted, so call this in a transaction of its own.
+   */
+  protected int moveToArchive(String tableName, String archiveTableName, String keyColumn, List<Long> keys,
+                              String... columns)
+  {
+    String columnList = StringUtils.join(columns, ", ");
+    String whereClause = " WHERE " + keyColumn + " IN (:keys)";
+    Query insertQuery = entityManager.createNativeQuery("INSERT INTO " + archiveTableName + " (" + columnList + ") "
+        + "SELECT " + columnList + " FROM " + tableName + whereClause);
+    insertQuery.setParameter("keys", keys);
+    int numCopied = insertQuery.executeUpdate();
+    Query deleteQuery = entityManager.createNativeQuery("DELETE FROM " + tableName + whereClause);
+    deleteQuery.setParameter("keys", keys);
+    int numDeleted = deleteQuery.executeUpdate();
+    if (numCopied != numDeleted)
+    {
+      throw new IllegalStateException("Copied " + numCopied + " rows from " + tableName + " to " + archiveTableName
+          + " but deleted " + numDeleted);
+    }
+    return numDeleted;
+  }
 }
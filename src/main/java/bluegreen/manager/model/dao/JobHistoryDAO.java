@@ -1,13 +1,18 @@
 package bluegreen.manager.model.dao;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.List;
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
 import bluegreen.manager.model.domain.JobHistory;
+import bluegreen.manager.model.domain.JobStatus;
+import bluegreen.manager.model.domain.TaskHistory;
+import bluegreen.manager.model.domain.TaskStatus;
 import bluegreen.manager.utils.NowFactory;
 
 /**
@@ -21,19 +26,28 @@ public class JobHistoryDAO extends GenericDAO<JobHistory>
 
   /**
    * Finds the most recently started job history record matching the given jobName/env1/env2 which is no older
-   * than maxAge.  Null if none found.
+   * than maxAge, with its task histories fetched in the same statement.  Null if none found.
+   * <p/>
+   * A collection fetch cannot be combined with a row limit in the database, so the latest start time is picked by
+   * subquery instead.
    */
   public JobHistory findLastRelevantJobHistory(String jobName, String env1, String env2, long maxAge)
   {
-    String queryString = "SELECT jh FROM " + JobHistory.class.getSimpleName() + " jh WHERE "
-        + "jh.jobName = '" + jobName + "' "
-        + "AND jh.env1 = '" + env1 + "' "
-        + "AND " + makeNullableCondition("jh.env2", env2) + " "
-        + "AND jh.startTime > :oldestAllowedStartTime "
-        + "ORDER BY jh.startTime DESC ";
+    String queryString = "SELECT DISTINCT jh FROM " + JobHistory.class.getSimpleName() + " jh "
+        + "LEFT JOIN FETCH jh.taskHistories WHERE "
+        + makeRelevanceConditions("jh", env2) + " "
+        + "AND jh.startTime = (SELECT MAX(jh2.startTime) FROM " + JobHistory.class.getSimpleName() + " jh2 WHERE "
+        + makeRelevanceConditions("jh2", env2) + " "
+        + "AND jh2.startTime > :oldestAllowedStartTime) "
+        + "ORDER BY jh.id DESC ";
     Query query = entityManager.createQuery(queryString);
+    query.setParameter("jobName", jobName);
+    query.setParameter("env1", env1);
+    if (env2 != null)
+    {
+      query.setParameter("env2", env2);
+    }
     query.setParameter("oldestAllowedStartTime", makeTimestampBeforeNow(maxAge));
-    query.setMaxResults(1);
     List<JobHistory> results = query.getResultList();
     if (results != null && results.size() > 0)
     {
@@ -46,19 +60,141 @@ public class JobHistoryDAO extends GenericDAO<JobHistory>
   }
 
   /**
-   * Returns a short condition string to be used in a WHERE clause, essentially "where fieldName = filterValue"
-   * but allowing for null.
+   * Finds the ids of up to maxResults closed job histories that started before the cutoff, oldest first.
+   */
+  public List<Long> findClosedIdsStartedBefore(Timestamp cutoff, int maxResults)
+  {
+    String queryString = "SELECT jh.id FROM " + JobHistory.class.getSimpleName() + " jh "
+        + "WHERE jh.startTime < :cutoff AND jh.endTime IS NOT NULL ORDER BY jh.id";
+    TypedQuery<Long> query = entityManager.createQuery(queryString, Long.class);
+    query.setParameter("cutoff", cutoff);
+    query.setMaxResults(maxResults);
+    return query.getResultList();
+  }
+
+  /**
+   * Moves the job histories with the given ids to the archive table.  Their task histories and freeze windows must
+   * be moved first.  Returns the number moved.
+   */
+  public int archive(List<Long> ids)
+  {
+    return moveToArchive(JobHistory.TABLE_NAME, JobHistory.ARCHIVE_TABLE_NAME, JobHistory.COLUMN_ID, ids,
+        JobHistory.COLUMN_ID, JobHistory.COLUMN_START_TIME, JobHistory.COLUMN_END_TIME, JobHistory.COLUMN_NAME,
+        JobHistory.COLUMN_ENV1, JobHistory.COLUMN_ENV2, JobHistory.COLUMN_CMDLINE, JobHistory.COLUMN_STATUS);
+  }
+
+  /**
+   * Finds the job runs after the given job history id that started since the given time, with their task histories,
+   * in id order.  Reads at most maxRows task histories, and returns only the runs read in full, so the next call can
+   * carry on after the id of the last run returned.  The entities are built from the rows and are not managed.
+   * <p/>
+   * Reads the archive tables if archived, else the live tables.  Optionally only runs of the given job name, and on
+   * the given env (either env of the job).  Only the columns needed for timings are read.  Ordered by the task history
+   * index on job history id and position, so each page is an index range.
    */
-  private String makeNullableCondition(String fieldName, String filterValue)
+  public List<JobHistory> findRunsAfter(boolean archived, long afterJobHistoryId, Timestamp since, String jobName,
+                                        String envName, int maxRows)
   {
-    if (filterValue == null)
+    if (maxRows <= TaskHistory.CONSTRAINT_MAX_POSITION)
     {
-      return fieldName + " IS NULL";
+      throw new IllegalArgumentException("maxRows " + maxRows + " must exceed the most tasks of one job");
     }
-    else
+    String jobTable = archived ? JobHistory.ARCHIVE_TABLE_NAME : JobHistory.TABLE_NAME;
+    String taskTable = archived ? TaskHistory.ARCHIVE_TABLE_NAME : TaskHistory.TABLE_NAME;
+    String queryString = "SELECT j." + JobHistory.COLUMN_ID + ", j." + JobHistory.COLUMN_NAME
+        + ", j." + JobHistory.COLUMN_ENV1 + ", j." + JobHistory.COLUMN_ENV2
+        + ", j." + JobHistory.COLUMN_START_TIME + ", j." + JobHistory.COLUMN_END_TIME + ", j." + JobHistory.COLUMN_STATUS
+        + ", t." + TaskHistory.COLUMN_POSITION + ", t." + TaskHistory.COLUMN_NAME
+        + ", t." + TaskHistory.COLUMN_START_TIME + ", t." + TaskHistory.COLUMN_END_TIME + ", t." + TaskHistory.COLUMN_STATUS
+        + " FROM " + taskTable + " t JOIN " + jobTable + " j ON j." + JobHistory.COLUMN_ID
+        + " = t." + TaskHistory.COLUMN_FK_JOBHIST_ID
+        + " WHERE t." + TaskHistory.COLUMN_FK_JOBHIST_ID + " > :afterJobHistoryId"
+        + " AND j." + JobHistory.COLUMN_START_TIME + " >= :since"
+        + (jobName == null ? "" : " AND j." + JobHistory.COLUMN_NAME + " = :jobName")
+        + (envName == null ? "" : " AND (j." + JobHistory.COLUMN_ENV1 + " = :envName OR j." + JobHistory.COLUMN_ENV2
+        + " = :envName)")
+        + " ORDER BY t." + TaskHistory.COLUMN_FK_JOBHIST_ID + ", t." + TaskHistory.COLUMN_POSITION;
+    Query query = entityManager.createNativeQuery(queryString);
+    query.setParameter("afterJobHistoryId", afterJobHistoryId);
+    query.setParameter("since", since);
+    if (jobName != null)
     {
-      return fieldName + " = '" + filterValue + "'";
+      query.setParameter("jobName", jobName);
     }
+    if (envName != null)
+    {
+      query.setParameter("envName", envName);
+    }
+    query.setMaxResults(maxRows);
+    @SuppressWarnings("unchecked") //Native query of several columns returns object arrays
+    List<Object[]> rows = query.getResultList();
+    List<JobHistory> runs = makeRuns(rows);
+    if (rows.size() >= maxRows)
+    {
+      runs.remove(runs.size() - 1); //May be cut short by the row limit
+    }
+    return runs;
+  }
+
+  /**
+   * Builds job histories with their task histories from the rows of findRunsAfter, which are grouped by job.
+   */
+  private List<JobHistory> makeRuns(List<Object[]> rows)
+  {
+    List<JobHistory> runs = new ArrayList<JobHistory>();
+    JobHistory run = null;
+    for (Object[] row : rows)
+    {
+      long id = ((Number) row[0]).longValue();
+      if (run == null || run.getId() != id)
+      {
+        run = new JobHistory();
+        run.setId(id);
+        run.setJobName((String) row[1]);
+        run.setEnv1((String) row[2]);
+        run.setEnv2((String) row[3]);
+        run.setStartTime((Timestamp) row[4]);
+        run.setEndTime((Timestamp) row[5]);
+        run.setStatus(JobStatus.valueOf((String) row[6]));
+        runs.add(run);
+      }
+      TaskHistory taskHistory = new TaskHistory();
+      taskHistory.setJobHistory(run);
+      taskHistory.setPosition(((Number) row[7]).intValue());
+      taskHistory.setTaskName((String) row[8]);
+      taskHistory.setStartTime((Timestamp) row[9]);
+      taskHistory.setEndTime((Timestamp) row[10]);
+      taskHistory.setStatus(TaskStatus.valueOf((String) row[11]));
+      run.addTaskHistory(taskHistory);
+    }
+    return runs;
+  }
+
+  /**
+   * Sets the endTime and status of the job history with the given id, without loading it.  Returns the number updated.
+   */
+  public int updateClosed(long id, Timestamp endTime, JobStatus status)
+  {
+    String queryString = "UPDATE " + JobHistory.class.getSimpleName() + " jh "
+        + "SET jh.endTime = :endTime, jh.status = :status WHERE jh.id = :id";
+    Query query = entityManager.createQuery(queryString);
+    query.setParameter("endTime", endTime);
+    query.setParameter("status", status);
+    query.setParameter("id", id);
+    return query.executeUpdate();
+  }
+
+  /**
+   * Returns the WHERE conditions that match the job name and envs, on the job history with the given alias.
+   * <p/>
+   * The values are bound parameters, so there are only two query strings (with or without env2) for the statement
+   * cache, matching the JOB_HISTORY index on (name, env1, env2, start time).
+   */
+  private String makeRelevanceConditions(String alias, String env2)
+  {
+    return alias + ".jobName = :jobName "
+        + "AND " + alias + ".env1 = :env1 "
+        + "AND " + alias + ".env2 " + (env2 == null ? "IS NULL" : "= :env2");
   }
 
   /**
@@ -0,0 +1,53 @@
+package bluegreen.manager.model.dao;
+
+import java.sql.Timestamp;
+import java.util.List;
+import javax.persistence.LockModeType;
+import javax.persistence.TypedQuery;
+
+import org.springframework.stereotype.Repository;
+
+import bluegreen.manager.model.domain.StandbyDatabase;
+import bluegreen.manager.model.domain.StandbyStatus;
+
+/**
+ * Data access object for StandbyDatabase.
+ */
+@Repository
+public class StandbyDatabaseDAO extends GenericDAO<StandbyDatabase>
+{
+  /**
+   * Finds all standbys of the live logical database, in any status.
+   */
+  public List<StandbyDatabase> findByEnvAndLogicalName(String envName, String logicalName)
+  {
+    String queryString = "SELECT sd FROM " + StandbyDatabase.class.getSimpleName() + " sd "
+        + "WHERE sd.envName = :envName AND sd.logicalName = :logicalName "
+        + "ORDER BY sd.id";
+    TypedQuery<StandbyDatabase> query = entityManager.createQuery(queryString, StandbyDatabase.class);
+    query.setParameter("envName", envName);
+    query.setParameter("logicalName", logicalName);
+    return query.getResultList();
+  }
+
+  /**
+   * Finds the freshest ready standby of the live logical database whose snapshot is no older than minSnapshotTime,
+   * or null if none.  Locks the row until the transaction ends, so two jobs cannot claim the same standby.
+   */
+  public StandbyDatabase findFreshestReady(String envName, String logicalName, Timestamp minSnapshotTime)
+  {
+    String queryString = "SELECT sd FROM " + StandbyDatabase.class.getSimpleName() + " sd "
+        + "WHERE sd.envName = :envName AND sd.logicalName = :logicalName "
+        + "AND sd.status = :status AND sd.snapshotTime >= :minSnapshotTime "
+        + "ORDER BY sd.snapshotTime DESC";
+    TypedQuery<StandbyDatabase> query = entityManager.createQuery(queryString, StandbyDatabase.class);
+    query.setParameter("envName", envName);
+    query.setParameter("logicalName", logicalName);
+    query.setParameter("status", StandbyStatus.READY);
+    query.setParameter("minSnapshotTime", minSnapshotTime);
+    query.setLockMode(LockModeType.PESSIMISTIC_WRITE);
+    query.setMaxResults(1);
+    List<StandbyDatabase> results = query.getResultList();
+    return results.isEmpty() ? null : results.get(0);
+  }
+}
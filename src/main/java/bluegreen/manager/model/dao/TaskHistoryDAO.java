@@ -1,8 +1,13 @@
 package bluegreen.manager.model.dao;
 
+import java.sql.Timestamp;
+import java.util.List;
+import javax.persistence.Query;
+
 import org.springframework.stereotype.Repository;
 
 import bluegreen.manager.model.domain.TaskHistory;
+import bluegreen.manager.model.domain.TaskStatus;
 
 /**
  * Data access object for TaskHistory.
@@ -10,5 +15,35 @@ import bluegreen.manager.model.domain.TaskHistory;
 @Repository
 public class TaskHistoryDAO extends GenericDAO<TaskHistory>
 {
-  // Currently all functionality is inherited.
+  /**
+   * Sets the endTime, status and process stats of the task history with the given id, without loading it.  Returns
+   * the number updated.
+   */
+  public int updateClosed(long id, Timestamp endTime, TaskStatus status, Integer exitValue, Long processMilliseconds,
+                          Long processCpuMilliseconds)
+  {
+    String queryString = "UPDATE " + TaskHistory.class.getSimpleName() + " th "
+        + "SET th.endTime = :endTime, th.status = :status, th.exitValue = :exitValue, "
+        + "th.processMilliseconds = :processMilliseconds, th.processCpuMilliseconds = :processCpuMilliseconds "
+        + "WHERE th.id = :id";
+    Query query = entityManager.createQuery(queryString);
+    query.setParameter("endTime", endTime);
+    query.setParameter("status", status);
+    query.setParameter("exitValue", exitValue);
+    query.setParameter("processMilliseconds", processMilliseconds);
+    query.setParameter("processCpuMilliseconds", processCpuMilliseconds);
+    query.setParameter("id", id);
+    return query.executeUpdate();
+  }
+
+  /**
+   * Moves the task histories of the given job histories to the archive table.  Returns the number moved.
+   */
+  public int archiveByJobHistoryIds(List<Long> jobHistoryIds)
+  {
+    return moveToArchive(TaskHistory.TABLE_NAME, TaskHistory.ARCHIVE_TABLE_NAME, TaskHistory.COLUMN_FK_JOBHIST_ID,
+        jobHistoryIds, TaskHistory.COLUMN_ID, TaskHistory.COLUMN_FK_JOBHIST_ID, TaskHistory.COLUMN_START_TIME,
+        TaskHistory.COLUMN_END_TIME, TaskHistory.COLUMN_POSITION, TaskHistory.COLUMN_NAME, TaskHistory.COLUMN_STATUS,
+        TaskHistory.COLUMN_EXIT_VALUE, TaskHistory.COLUMN_PROCESS_MILLIS, TaskHistory.COLUMN_PROCESS_CPU_MILLIS);
+  }
 }
@@ -0,0 +1,29 @@
+package bluegreen.manager.model.dao;
+
+import java.util.List;
+import javax.persistence.TypedQuery;
+
+import org.springframework.stereotype.Repository;
+
+import bluegreen.manager.model.domain.WaitHistory;
+
+/**
+ * Data access object for WaitHistory.
+ */
+@Repository
+public class WaitHistoryDAO extends GenericDAO<WaitHistory>
+{
+  /**
+   * Finds the most recent waits on the given operation that reached their conclusion, newest first.
+   */
+  public List<WaitHistory> findRecentDone(String operation, int maxResults)
+  {
+    String queryString = "SELECT wh FROM " + WaitHistory.class.getSimpleName() + " wh "
+        + "WHERE wh.operation = :operation AND wh.done = true "
+        + "ORDER BY wh.startTime DESC";
+    TypedQuery<WaitHistory> query = entityManager.createQuery(queryString, WaitHistory.class);
+    query.setParameter("operation", operation);
+    query.setMaxResults(maxResults);
+    return query.getResultList();
+  }
+}
@@ -1,5 +1,6 @@
 package bluegreen.manager.model.domain;
 
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.List;
 import javax.persistence.CascadeType;
@@ -25,7 +26,10 @@ public class Environment
   public static final String COLUMN_ID = "ENV_ID";
   public static final String COLUMN_ENV_NAME = "ENV_NAME";
   public static final String COLUMN_FK_DATACENTER_ID = "FK_DATACENTER_ID";
+  public static final String COLUMN_LEASE_OWNER = "ENV_LEASE_OWNER";
+  public static final String COLUMN_LEASE_TIME = "ENV_LEASE_TIME";
   public static final int LENGTH_ENV_NAME = 32;
+  public static final int LENGTH_LEASE_OWNER = 64;
 
   @Id
   @GeneratedValue
@@ -45,6 +49,19 @@ public class Environment
   @OneToMany(mappedBy = ApplicationVm.FIELD_ENVIRONMENT, cascade = CascadeType.ALL, orphanRemoval = true)
   private List<ApplicationVm> applicationVms;
 
+  /**
+   * Job currently holding this env, or null.  Written only by lease queries, never by merging an entity, so a job's
+   * own env updates cannot clobber its lease.
+   */
+  @Column(name = COLUMN_LEASE_OWNER, length = LENGTH_LEASE_OWNER, insertable = false, updatable = false)
+  private String leaseOwner;
+
+  /**
+   * When the lease was taken or last renewed.  An old lease was abandoned by a dead process.
+   */
+  @Column(name = COLUMN_LEASE_TIME, insertable = false, updatable = false)
+  private Timestamp leaseTime;
+
   public long getEnvId()
   {
     return envId;
@@ -105,6 +122,26 @@ public class Environment
     }
   }
 
+  public String getLeaseOwner()
+  {
+    return leaseOwner;
+  }
+
+  public void setLeaseOwner(String leaseOwner)
+  {
+    this.leaseOwner = leaseOwner;
+  }
+
+  public Timestamp getLeaseTime()
+  {
+    return leaseTime;
+  }
+
+  public void setLeaseTime(Timestamp leaseTime)
+  {
+    this.leaseTime = leaseTime;
+  }
+
   public void addLogicalDatabase(LogicalDatabase logicalDatabase)
   {
     if (logicalDatabases == null)
@@ -0,0 +1,280 @@
+package bluegreen.manager.model.domain;
+
+import java.sql.Timestamp;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+
+import bluegreen.manager.utils.HashUtil;
+
+/**
+ * The freeze window of one stagingDeploy run: the time during which the live app could not write to its database.
+ * <p/>
+ * Records when each step of the window happened.  A step that never happened (e.g. the job failed first) is null.
+ * The window length is measured from the freeze request to the return to NORMAL, or to the last recorded step if the
+ * app did not get back to NORMAL during the job.
+ */
+@Entity
+@Table(name = FreezeWindow.TABLE_NAME)
+public class FreezeWindow
+{
+  public static final String TABLE_NAME = "FREEZE_WINDOW";
+  public static final String ARCHIVE_TABLE_NAME = "FREEZE_WINDOW_ARCHIVE";
+  public static final String COLUMN_ID = "FRZWIN_ID";
+  public static final String COLUMN_FK_JOBHIST_ID = "FK_JOBHIST_ID";
+  public static final String COLUMN_ENV_NAME = "FRZWIN_ENV_NAME";
+  public static final String COLUMN_FREEZE_REQUESTED = "FRZWIN_FREEZE_REQUESTED";
+  public static final String COLUMN_FROZEN = "FRZWIN_FROZEN";
+  public static final String COLUMN_SNAPSHOT_STARTED = "FRZWIN_SNAPSHOT_STARTED";
+  public static final String COLUMN_SNAPSHOT_AVAILABLE = "FRZWIN_SNAPSHOT_AVAILABLE";
+  public static final String COLUMN_THAW_REQUESTED = "FRZWIN_THAW_REQUESTED";
+  public static final String COLUMN_NORMAL = "FRZWIN_NORMAL";
+  public static final String COLUMN_WINDOW_MILLIS = "FRZWIN_WINDOW_MILLIS";
+  public static final String COLUMN_BUDGET_SECONDS = "FRZWIN_BUDGET_SECONDS";
+  public static final String COLUMN_BUDGET_EXCEEDED = "FRZWIN_BUDGET_EXCEEDED";
+  public static final String FIELD_JOB_HISTORY = "jobHistory";
+
+  @Id
+  @GeneratedValue
+  @Column(name = COLUMN_ID)
+  private long id;
+
+  @ManyToOne
+  @JoinColumn(name = COLUMN_FK_JOBHIST_ID, nullable = false)
+  private JobHistory jobHistory; //FIELD_JOB_HISTORY
+
+  /**
+   * The live env.
+   */
+  @Column(name = COLUMN_ENV_NAME, nullable = false, length = Environment.LENGTH_ENV_NAME)
+  private String envName;
+
+  /**
+   * When the live app was asked to freeze.
+   */
+  @Column(name = COLUMN_FREEZE_REQUESTED)
+  private Timestamp freezeRequestedTime;
+
+  /**
+   * When the live app reached FROZEN.
+   */
+  @Column(name = COLUMN_FROZEN)
+  private Timestamp frozenTime;
+
+  /**
+   * When the live database snapshots were requested.
+   */
+  @Column(name = COLUMN_SNAPSHOT_STARTED)
+  private Timestamp snapshotStartedTime;
+
+  /**
+   * When all the live database snapshots were available.
+   */
+  @Column(name = COLUMN_SNAPSHOT_AVAILABLE)
+  private Timestamp snapshotAvailableTime;
+
+  /**
+   * When the live app was asked to thaw.
+   */
+  @Column(name = COLUMN_THAW_REQUESTED)
+  private Timestamp thawRequestedTime;
+
+  /**
+   * When the live app was back to NORMAL.
+   */
+  @Column(name = COLUMN_NORMAL)
+  private Timestamp normalTime;
+
+  @Column(name = COLUMN_WINDOW_MILLIS, nullable = false)
+  private long windowMilliseconds;
+
+  /**
+   * Longest the app was allowed to stay frozen waiting for snapshots, or zero if unlimited.
+   */
+  @Column(name = COLUMN_BUDGET_SECONDS, nullable = false)
+  private long budgetSeconds;
+
+  /**
+   * True if the snapshots overran the budget, so the app was thawed early and the job failed.
+   */
+  @Column(name = COLUMN_BUDGET_EXCEEDED, nullable = false)
+  private boolean budgetExceeded;
+
+  /**
+   * Equality based solely on database identity.
+   */
+  @Override
+  public boolean equals(Object obj)
+  {
+    if (obj instanceof FreezeWindow)
+    {
+      FreezeWindow other = (FreezeWindow) obj;
+      return id == other.id;
+    }
+    return false;
+  }
+
+  /**
+   * Hashcode based solely on database identity.
+   */
+  @Override
+  public int hashCode()
+  {
+    return HashUtil.hashId(id);
+  }
+
+  @Override
+  public String toString()
+  {
+    StringBuilder sb = new StringBuilder();
+    sb.append("FreezeWindow[");
+    sb.append("id: ");
+    sb.append(id);
+    sb.append(", envName: ");
+    sb.append(envName);
+    sb.append(", freezeRequestedTime: ");
+    sb.append(freezeRequestedTime);
+    sb.append(", frozenTime: ");
+    sb.append(frozenTime);
+    sb.append(", snapshotStartedTime: ");
+    sb.append(snapshotStartedTime);
+    sb.append(", snapshotAvailableTime: ");
+    sb.append(snapshotAvailableTime);
+    sb.append(", thawRequestedTime: ");
+    sb.append(thawRequestedTime);
+    sb.append(", normalTime: ");
+    sb.append(normalTime);
+    sb.append(", windowMilliseconds: ");
+    sb.append(windowMilliseconds);
+    sb.append(", budgetSeconds: ");
+    sb.append(budgetSeconds);
+    sb.append(", budgetExceeded: ");
+    sb.append(budgetExceeded);
+    sb.append("]");
+    return sb.toString();
+  }
+
+  public long getId()
+  {
+    return id;
+  }
+
+  public void setId(long id)
+  {
+    this.id = id;
+  }
+
+  public JobHistory getJobHistory()
+  {
+    return jobHistory;
+  }
+
+  public void setJobHistory(JobHistory jobHistory)
+  {
+    this.jobHistory = jobHistory;
+  }
+
+  public String getEnvName()
+  {
+    return envName;
+  }
+
+  public void setEnvName(String envName)
+  {
+    this.envName = envName;
+  }
+
+  public Timestamp getFreezeRequestedTime()
+  {
+    return freezeRequestedTime;
+  }
+
+  public void setFreezeRequestedTime(Timestamp freezeRequestedTime)
+  {
+    this.freezeRequestedTime = freezeRequestedTime;
+  }
+
+  public Timestamp getFrozenTime()
+  {
+    return frozenTime;
+  }
+
+  public void setFrozenTime(Timestamp frozenTime)
+  {
+    this.frozenTime = frozenTime;
+  }
+
+  public Timestamp getSnapshotStartedTime()
+  {
+    return snapshotStartedTime;
+  }
+
+  public void setSnapshotStartedTime(Timestamp snapshotStartedTime)
+  {
+    this.snapshotStartedTime = snapshotStartedTime;
+  }
+
+  public Timestamp getSnapshotAvailableTime()
+  {
+    return snapshotAvailableTime;
+  }
+
+  public void setSnapshotAvailableTime(Timestamp snapshotAvailableTime)
+  {
+    this.snapshotAvailableTime = snapshotAvailableTime;
+  }
+
+  public Timestamp getThawRequestedTime()
+  {
+    return thawRequestedTime;
+  }
+
+  public void setThawRequestedTime(Timestamp thawRequestedTime)
+  {
+    this.thawRequestedTime = thawRequestedTime;
+  }
+
+  public Timestamp getNormalTime()
+  {
+    return normalTime;
+  }
+
+  public void setNormalTime(Timestamp normalTime)
+  {
+    this.normalTime = normalTime;
+  }
+
+  public long getWindowMilliseconds()
+  {
+    return windowMilliseconds;
+  }
+
+  public void setWindowMilliseconds(long windowMilliseconds)
+  {
+    this.windowMilliseconds = windowMilliseconds;
+  }
+
+  public long getBudgetSeconds()
+  {
+    return budgetSeconds;
+  }
+
+  public void setBudgetSeconds(long budgetSeconds)
+  {
+    this.budgetSeconds = budgetSeconds;
+  }
+
+  public boolean isBudgetExceeded()
+  {
+    return budgetExceeded;
+  }
+
+  public void setBudgetExceeded(boolean budgetExceeded)
+  {
+    this.budgetExceeded = budgetExceeded;
+  }
+}
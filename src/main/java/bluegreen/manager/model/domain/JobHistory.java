@@ -25,6 +25,7 @@ import bluegreen.manager.utils.HashUtil;
 public class JobHistory
 {
   public static final String TABLE_NAME = "JOB_HISTORY";
+  public static final String ARCHIVE_TABLE_NAME = "JOB_HISTORY_ARCHIVE";
   public static final String COLUMN_ID = "JOBHIST_ID";
   public static final String COLUMN_START_TIME = "JOBHIST_START_TIME";
   public static final String COLUMN_END_TIME = "JOBHIST_END_TIME";
@@ -0,0 +1,215 @@
+package bluegreen.manager.model.domain;
+
+import java.sql.Timestamp;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import bluegreen.manager.utils.HashUtil;
+
+/**
+ * An RDS instance kept warm in the standby pool: already restored from a recent snapshot of one live logical
+ * database, so a staging deploy can claim it instead of waiting for a fresh restore.
+ * <p/>
+ * The lease owner and lease time say who last took responsibility for the standby (the pool job while BUILDING, a
+ * staging deploy while CLAIMED) and since when.  A lease which outlives its job is expired, and the pool job cleans
+ * up after it.
+ */
+@Entity
+@Table(name = StandbyDatabase.TABLE_NAME)
+public class StandbyDatabase
+{
+  public static final String TABLE_NAME = "STANDBY_DATABASE";
+  public static final String COLUMN_ID = "STANDBY_ID";
+  public static final String COLUMN_ENV_NAME = "STANDBY_ENV_NAME";
+  public static final String COLUMN_LOGICAL_NAME = "STANDBY_LOGICAL_NAME";
+  public static final String COLUMN_INST_NAME = "STANDBY_INST_NAME";
+  public static final String COLUMN_SNAPSHOT_ID = "STANDBY_SNAPSHOT_ID";
+  public static final String COLUMN_SNAPSHOT_TIME = "STANDBY_SNAPSHOT_TIME";
+  public static final String COLUMN_STATUS = "STANDBY_STATUS";
+  public static final String COLUMN_LEASE_OWNER = "STANDBY_LEASE_OWNER";
+  public static final String COLUMN_LEASE_TIME = "STANDBY_LEASE_TIME";
+  public static final int LENGTH_SNAPSHOT_ID = 255;
+  public static final int LENGTH_STATUS = 20;
+  public static final int LENGTH_LEASE_OWNER = 64;
+
+  @Id
+  @GeneratedValue
+  @Column(name = COLUMN_ID)
+  private long id;
+
+  /**
+   * Name of the live env whose database this is a copy of.
+   */
+  @Column(name = COLUMN_ENV_NAME, nullable = false, length = Environment.LENGTH_ENV_NAME)
+  private String envName;
+
+  @Column(name = COLUMN_LOGICAL_NAME, nullable = false, length = LogicalDatabase.LENGTH_LOGICAL_NAME)
+  private String logicalName;
+
+  @Column(name = COLUMN_INST_NAME, nullable = false, length = PhysicalDatabase.LENGTH_INST_NAME)
+  private String instanceName;
+
+  @Column(name = COLUMN_SNAPSHOT_ID, nullable = false, length = LENGTH_SNAPSHOT_ID)
+  private String snapshotId;
+
+  /**
+   * When the source snapshot was taken, i.e. how current the standby data is.
+   */
+  @Column(name = COLUMN_SNAPSHOT_TIME, nullable = false)
+  private Timestamp snapshotTime;
+
+  @Enumerated(EnumType.STRING)
+  @Column(name = COLUMN_STATUS, nullable = false, length = LENGTH_STATUS)
+  private StandbyStatus status;
+
+  @Column(name = COLUMN_LEASE_OWNER, length = LENGTH_LEASE_OWNER)
+  private String leaseOwner;
+
+  @Column(name = COLUMN_LEASE_TIME)
+  private Timestamp leaseTime;
+
+  /**
+   * Equality based solely on database identity.
+   */
+  @Override
+  public boolean equals(Object obj)
+  {
+    if (obj instanceof StandbyDatabase)
+    {
+      StandbyDatabase other = (StandbyDatabase) obj;
+      return id == other.id;
+    }
+    return false;
+  }
+
+  /**
+   * Hashcode based solely on database identity.
+   */
+  @Override
+  public int hashCode()
+  {
+    return HashUtil.hashId(id);
+  }
+
+  @Override
+  public String toString()
+  {
+    StringBuilder sb = new StringBuilder();
+    sb.append("StandbyDatabase[");
+    sb.append("id: ");
+    sb.append(id);
+    sb.append(", envName: ");
+    sb.append(envName);
+    sb.append(", logicalName: ");
+    sb.append(logicalName);
+    sb.append(", instanceName: ");
+    sb.append(instanceName);
+    sb.append(", snapshotId: ");
+    sb.append(snapshotId);
+    sb.append(", snapshotTime: ");
+    sb.append(snapshotTime);
+    sb.append(", status: ");
+    sb.append(status);
+    sb.append(", leaseOwner: ");
+    sb.append(leaseOwner);
+    sb.append(", leaseTime: ");
+    sb.append(leaseTime);
+    sb.append("]");
+    return sb.toString();
+  }
+
+  public long getId()
+  {
+    return id;
+  }
+
+  public void setId(long id)
+  {
+    this.id = id;
+  }
+
+  public String getEnvName()
+  {
+    return envName;
+  }
+
+  public void setEnvName(String envName)
+  {
+    this.envName = envName;
+  }
+
+  public String getLogicalName()
+  {
+    return logicalName;
+  }
+
+  public void setLogicalName(String logicalName)
+  {
+    this.logicalName = logicalName;
+  }
+
+  public String getInstanceName()
+  {
+    return instanceName;
+  }
+
+  public void setInstanceName(String instanceName)
+  {
+    this.instanceName = instanceName;
+  }
+
+  public String getSnapshotId()
+  {
+    return snapshotId;
+  }
+
+  public void setSnapshotId(String snapshotId)
+  {
+    this.snapshotId = snapshotId;
+  }
+
+  public Timestamp getSnapshotTime()
+  {
+    return snapshotTime;
+  }
+
+  public void setSnapshotTime(Timestamp snapshotTime)
+  {
+    this.snapshotTime = snapshotTime;
+  }
+
+  public StandbyStatus getStatus()
+  {
+    return status;
+  }
+
+  public void setStatus(StandbyStatus status)
+  {
+    this.status = status;
+  }
+
+  public String getLeaseOwner()
+  {
+    return leaseOwner;
+  }
+
+  public void setLeaseOwner(String leaseOwner)
+  {
+    this.leaseOwner = leaseOwner;
+  }
+
+  public Timestamp getLeaseTime()
+  {
+    return leaseTime;
+  }
+
+  public void setLeaseTime(Timestamp leaseTime)
+  {
+    this.leaseTime = leaseTime;
+  }
+}
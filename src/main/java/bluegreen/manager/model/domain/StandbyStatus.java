@@ -0,0 +1,22 @@
+package bluegreen.manager.model.domain;
+
+/**
+ * Status of a standby database in the warm pool.
+ */
+public enum StandbyStatus
+{
+  /**
+   * Being restored from a live snapshot.
+   */
+  BUILDING,
+
+  /**
+   * Restored and available, may be claimed by a staging deploy.
+   */
+  READY,
+
+  /**
+   * Leased to a staging deploy which is turning it into a stage database.
+   */
+  CLAIMED;
+}
@@ -25,6 +25,7 @@ import bluegreen.manager.utils.HashUtil;
 public class TaskHistory
 {
   public static final String TABLE_NAME = "TASK_HISTORY";
+  public static final String ARCHIVE_TABLE_NAME = "TASK_HISTORY_ARCHIVE";
   public static final String COLUMN_ID = "TASKHIST_ID";
   public static final String COLUMN_FK_JOBHIST_ID = "FK_JOBHIST_ID";
   public static final String COLUMN_START_TIME = "TASKHIST_START_TIME";
@@ -32,6 +33,9 @@ public class TaskHistory
   public static final String COLUMN_POSITION = "TASKHIST_POSITION";
   public static final String COLUMN_NAME = "TASKHIST_NAME";
   public static final String COLUMN_STATUS = "TASKHIST_STATUS";
+  public static final String COLUMN_EXIT_VALUE = "TASKHIST_EXIT_VALUE";
+  public static final String COLUMN_PROCESS_MILLIS = "TASKHIST_PROCESS_MILLIS";
+  public static final String COLUMN_PROCESS_CPU_MILLIS = "TASKHIST_PROCESS_CPU_MILLIS";
   public static final int LENGTH_NAME = 64;
   public static final int LENGTH_STATUS = 20;
   public static final String FIELD_JOB_HISTORY = "jobHistory";
@@ -64,6 +68,24 @@ public class TaskHistory
   @Column(name = COLUMN_STATUS, nullable = false, length = LENGTH_STATUS)
   private TaskStatus status;
 
+  /**
+   * Exit value of the local command run by a shell task, or null if the task ran none.
+   */
+  @Column(name = COLUMN_EXIT_VALUE)
+  private Integer exitValue;
+
+  /**
+   * Wall-clock time of the local command, or null.
+   */
+  @Column(name = COLUMN_PROCESS_MILLIS)
+  private Long processMilliseconds;
+
+  /**
+   * Cpu time of the local command, or null if unknown.
+   */
+  @Column(name = COLUMN_PROCESS_CPU_MILLIS)
+  private Long processCpuMilliseconds;
+
   /**
    * Equality based solely on database identity.
    */
@@ -104,6 +126,15 @@ public class TaskHistory
     sb.append(taskName);
     sb.append(", status: ");
     sb.append(status);
+    if (exitValue != null)
+    {
+      sb.append(", exitValue: ");
+      sb.append(exitValue);
+      sb.append(", processMilliseconds: ");
+      sb.append(processMilliseconds);
+      sb.append(", processCpuMilliseconds: ");
+      sb.append(processCpuMilliseconds);
+    }
     sb.append("]");
     return sb.toString();
   }
@@ -177,4 +208,34 @@ public class TaskHistory
   {
     this.status = status;
   }
+
+  public Integer getExitValue()
+  {
+    return exitValue;
+  }
+
+  public void setExitValue(Integer exitValue)
+  {
+    this.exitValue = exitValue;
+  }
+
+  public Long getProcessMilliseconds()
+  {
+    return processMilliseconds;
+  }
+
+  public void setProcessMilliseconds(Long processMilliseconds)
+  {
+    this.processMilliseconds = processMilliseconds;
+  }
+
+  public Long getProcessCpuMilliseconds()
+  {
+    return processCpuMilliseconds;
+  }
+
+  public void setProcessCpuMilliseconds(Long processCpuMilliseconds)
+  {
+    this.processCpuMilliseconds = processCpuMilliseconds;
+  }
 }
@@ -0,0 +1,191 @@
+package bluegreen.manager.model.domain;
+
+import java.sql.Timestamp;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import bluegreen.manager.utils.HashUtil;
+
+/**
+ * The history of one wait on an external operation, such as a snapshot creation or an app freeze.
+ * <p/>
+ * Past durations of each operation type drive adaptive polling.  The detection lag is the time between the last two
+ * progress checks, i.e. an upper bound on how late we noticed the operation was done, and is what adaptive polling
+ * aims to shrink.
+ */
+@Entity
+@Table(name = WaitHistory.TABLE_NAME)
+public class WaitHistory
+{
+  public static final String TABLE_NAME = "WAIT_HISTORY";
+  public static final String COLUMN_ID = "WAITHIST_ID";
+  public static final String COLUMN_OPERATION = "WAITHIST_OPERATION";
+  public static final String COLUMN_POLICY = "WAITHIST_POLICY";
+  public static final String COLUMN_START_TIME = "WAITHIST_START_TIME";
+  public static final String COLUMN_DONE = "WAITHIST_DONE";
+  public static final String COLUMN_NUM_CHECKS = "WAITHIST_NUM_CHECKS";
+  public static final String COLUMN_ELAPSED_MILLIS = "WAITHIST_ELAPSED_MILLIS";
+  public static final String COLUMN_DETECTION_LAG_MILLIS = "WAITHIST_DETECTION_LAG_MILLIS";
+  public static final int LENGTH_OPERATION = 64;
+  public static final int LENGTH_POLICY = 20;
+
+  @Id
+  @GeneratedValue
+  @Column(name = COLUMN_ID)
+  private long id;
+
+  @Column(name = COLUMN_OPERATION, nullable = false, length = LENGTH_OPERATION)
+  private String operation;
+
+  @Column(name = COLUMN_POLICY, nullable = false, length = LENGTH_POLICY)
+  private String policy;
+
+  @Column(name = COLUMN_START_TIME, nullable = false)
+  private Timestamp startTime;
+
+  /**
+   * True if the operation reached its conclusion, false if the wait timed out.
+   */
+  @Column(name = COLUMN_DONE, nullable = false)
+  private boolean done;
+
+  @Column(name = COLUMN_NUM_CHECKS, nullable = false)
+  private int numChecks;
+
+  @Column(name = COLUMN_ELAPSED_MILLIS, nullable = false)
+  private long elapsedMilliseconds;
+
+  @Column(name = COLUMN_DETECTION_LAG_MILLIS, nullable = false)
+  private long detectionLagMilliseconds;
+
+  /**
+   * Equality based solely on database identity.
+   */
+  @Override
+  public boolean equals(Object obj)
+  {
+    if (obj instanceof WaitHistory)
+    {
+      WaitHistory other = (WaitHistory) obj;
+      return id == other.id;
+    }
+    return false;
+  }
+
+  /**
+   * Hashcode based solely on database identity.
+   */
+  @Override
+  public int hashCode()
+  {
+    return HashUtil.hashId(id);
+  }
+
+  @Override
+  public String toString()
+  {
+    StringBuilder sb = new StringBuilder();
+    sb.append("WaitHistory[");
+    sb.append("id: ");
+    sb.append(id);
+    sb.append(", operation: ");
+    sb.append(operation);
+    sb.append(", policy: ");
+    sb.append(policy);
+    sb.append(", startTime: ");
+    sb.append(startTime);
+    sb.append(", done: ");
+    sb.append(done);
+    sb.append(", numChecks: ");
+    sb.append(numChecks);
+    sb.append(", elapsedMilliseconds: ");
+    sb.append(elapsedMilliseconds);
+    sb.append(", detectionLagMilliseconds: ");
+    sb.append(detectionLagMilliseconds);
+    sb.append("]");
+    return sb.toString();
+  }
+
+  public long getId()
+  {
+    return id;
+  }
+
+  public void setId(long id)
+  {
+    this.id = id;
+  }
+
+  public String getOperation()
+  {
+    return operation;
+  }
+
+  public void setOperation(String operation)
+  {
+    this.operation = operation;
+  }
+
+  public String getPolicy()
+  {
+    return policy;
+  }
+
+  public void setPolicy(String policy)
+  {
+    this.policy = policy;
+  }
+
+  public Timestamp getStartTime()
+  {
+    return startTime;
+  }
+
+  public void setStartTime(Timestamp startTime)
+  {
+    this.startTime = startTime;
+  }
+
+  public boolean isDone()
+  {
+    return done;
+  }
+
+  public void setDone(boolean done)
+  {
+    this.done = done;
+  }
+
+  public int getNumChecks()
+  {
+    return numChecks;
+  }
+
+  public void setNumChecks(int numChecks)
+  {
+    this.numChecks = numChecks;
+  }
+
+  public long getElapsedMilliseconds()
+  {
+    return elapsedMilliseconds;
+  }
+
+  public void setElapsedMilliseconds(long elapsedMilliseconds)
+  {
+    this.elapsedMilliseconds = elapsedMilliseconds;
+  }
+
+  public long getDetectionLagMilliseconds()
+  {
+    return detectionLagMilliseconds;
+  }
+
+  public void setDetectionLagMilliseconds(long detectionLagMilliseconds)
+  {
+    this.detectionLagMilliseconds = detectionLagMilliseconds;
+  }
+}
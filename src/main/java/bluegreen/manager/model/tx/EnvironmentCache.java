@@ -0,0 +1,199 @@
+package bluegreen.manager.model.tx;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import bluegreen.manager.model.domain.Environment;
+
+/**
+ * Job-scoped caches of fully loaded environments, each shared by the env loaders (and so the string substituters) of
+ * all the tasks in one job.  Saves reloading the same environment graph for every task.
+ * <p/>
+ * Each job opens its own cache, which is current on the job thread.  Code that hands the job's work to another
+ * thread (the task runners) passes the current cache along with the work, the same way as the trace span, using
+ * {@link #getCurrent} and {@link #setCurrent}.  Lookups on a thread with no current cache go to the database, as
+ * before.
+ * <p/>
+ * The cached entities are detached and shared by the tasks of one job.  Any persisted change to an environment (new,
+ * update, delete) evicts it from every open cache, so the next task reloads it from the database.  Tasks must not
+ * change a cached entity without persisting it.
+ */
+@Component
+public class EnvironmentCache
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(EnvironmentCache.class);
+
+  @Autowired
+  private EnvironmentTx environmentTx;
+
+  private final ThreadLocal<JobCache> current = new ThreadLocal<JobCache>();
+
+  private final List<JobCache> openCaches = new ArrayList<JobCache>();
+
+  /**
+   * Starts a new cache for the duration of a job, current on this thread.
+   */
+  public JobCache open()
+  {
+    JobCache jobCache = new JobCache();
+    synchronized (openCaches)
+    {
+      openCaches.add(jobCache);
+    }
+    current.set(jobCache);
+    return jobCache;
+  }
+
+  /**
+   * Stops the job's cache and drops everything in it, at the end of the job.
+   */
+  public void close(JobCache jobCache)
+  {
+    synchronized (openCaches)
+    {
+      openCaches.remove(jobCache);
+    }
+    jobCache.close();
+    if (current.get() == jobCache)
+    {
+      current.remove();
+    }
+  }
+
+  /**
+   * Returns the cache current on this thread, or null if none.
+   */
+  public JobCache getCurrent()
+  {
+    return current.get();
+  }
+
+  /**
+   * Makes the cache current on this thread (null for none), and returns the cache that was current before.
+   */
+  public JobCache setCurrent(JobCache jobCache)
+  {
+    JobCache previous = current.get();
+    if (jobCache == null)
+    {
+      current.remove();
+    }
+    else
+    {
+      current.set(jobCache);
+    }
+    return previous;
+  }
+
+  /**
+   * Returns the named environment from the current job's cache, or else loads it.  Throws if not found.
+   */
+  public Environment findNamedEnv(String envName)
+  {
+    JobCache jobCache = current.get();
+    return jobCache == null ? environmentTx.findNamedEnv(envName) : jobCache.findNamedEnv(envName);
+  }
+
+  /**
+   * Drops the named environment from every open cache, since it has changed in the database.
+   */
+  public void evict(String envName)
+  {
+    for (JobCache jobCache : copyOpenCaches())
+    {
+      jobCache.evict(envName);
+    }
+  }
+
+  private List<JobCache> copyOpenCaches()
+  {
+    synchronized (openCaches)
+    {
+      return new ArrayList<JobCache>(openCaches);
+    }
+  }
+
+  /**
+   * The environments cached for one job.
+   */
+  public class JobCache
+  {
+    private final Map<String, Environment> environments = new HashMap<String, Environment>();
+
+    private boolean open = true;
+    private long generation; //Bumped by every eviction, so a load that raced an eviction is not cached.
+    private long numHits;
+    private long numLoads;
+
+    private JobCache()
+    {
+    }
+
+    /**
+     * Returns the named environment from the cache, or else loads it.  Throws if not found.
+     */
+    private Environment findNamedEnv(String envName)
+    {
+      long loadGeneration;
+      synchronized (this)
+      {
+        Environment environment = environments.get(envName);
+        if (environment != null)
+        {
+          ++numHits;
+          return environment;
+        }
+        ++numLoads;
+        loadGeneration = generation;
+      }
+      Environment environment = environmentTx.findNamedEnv(envName);
+      synchronized (this)
+      {
+        if (open && environment != null && loadGeneration == generation)
+        {
+          environments.put(envName, environment);
+        }
+      }
+      return environment;
+    }
+
+    private synchronized void evict(String envName)
+    {
+      ++generation;
+      environments.remove(envName);
+    }
+
+    private synchronized void close()
+    {
+      if (open)
+      {
+        LOGGER.debug("Environment cache closing after " + numHits + " hits and " + numLoads + " loads");
+      }
+      open = false;
+      ++generation;
+      environments.clear();
+    }
+
+    public synchronized boolean isOpen()
+    {
+      return open;
+    }
+
+    public synchronized long getNumHits()
+    {
+      return numHits;
+    }
+
+    public synchronized long getNumLoads()
+    {
+      return numLoads;
+    }
+  }
+}
@@ -1,7 +1,9 @@
 package bluegreen.manager.model.tx;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.stereotype.Component;
 
 import bluegreen.manager.model.domain.LogicalDatabase;
@@ -43,4 +45,40 @@ public class EnvironmentHelper
     return sb.toString();
   }
 
+  /**
+   * Pairs each live logicaldb with the stage logicaldb of the same name (stagingDeploy gives each stage logicaldb
+   * the name of the live one it was copied from).  Returns the stage logicaldbs, in the order of the live ones.
+   * <p/>
+   * Throws if the two lists do not hold the same logical names.
+   */
+  public List<LogicalDatabase> matchStageLogicalDatabases(List<LogicalDatabase> liveLogicalDatabases,
+                                                          List<LogicalDatabase> stageLogicalDatabases)
+  {
+    if (liveLogicalDatabases.size() != stageLogicalDatabases.size())
+    {
+      throw new IllegalStateException("Live env has " + liveLogicalDatabases.size() + " logical databases ["
+          + listOfNames(liveLogicalDatabases) + "] but stage env has " + stageLogicalDatabases.size() + " ["
+          + listOfNames(stageLogicalDatabases) + "]");
+    }
+    List<LogicalDatabase> matched = new ArrayList<LogicalDatabase>();
+    for (LogicalDatabase liveLogicalDatabase : liveLogicalDatabases)
+    {
+      matched.add(findNamedLogicalDatabase(liveLogicalDatabase.getLogicalName(), stageLogicalDatabases));
+    }
+    return matched;
+  }
+
+  private LogicalDatabase findNamedLogicalDatabase(String logicalName, List<LogicalDatabase> logicalDatabases)
+  {
+    for (LogicalDatabase logicalDatabase : logicalDatabases)
+    {
+      if (StringUtils.equals(logicalName, logicalDatabase.getLogicalName()))
+      {
+        return logicalDatabase;
+      }
+    }
+    throw new IllegalStateException("Stage env has no logical database named '" + logicalName + "', only ["
+        + listOfNames(logicalDatabases) + "]");
+  }
+
 }
@@ -1,21 +1,25 @@
 package bluegreen.manager.model.tx;
 
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import javax.transaction.Transactional;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import bluegreen.manager.model.dao.EnvironmentDAO;
-import bluegreen.manager.model.domain.Application;
-import bluegreen.manager.model.domain.ApplicationVm;
 import bluegreen.manager.model.domain.Environment;
-import bluegreen.manager.model.domain.LogicalDatabase;
 
 /**
  * Serves transactional db queries related to the Environment hierarchy, includes Logical/PhysicalDatabase
  * and ApplicationVm.
+ * <p/>
+ * Writes evict the environment from the jobs' EnvironmentCache once their transaction is over.
  */
 @Transactional
 @Component
@@ -24,6 +28,9 @@ public class EnvironmentTx
   @Autowired
   private EnvironmentDAO environmentDAO;
 
+  @Autowired
+  private EnvironmentCache environmentCache;
+
   /**
    * Looks up all the specified names in the environment table, returning true for the names that exist and
    * false otherwise.  Return array in same order as input array.
@@ -67,55 +74,21 @@ public class EnvironmentTx
   /**
    * Finds the named environment, throws if not found.
    * <p/>
-   * Since the data cascade is small, actively loads all references: databases, application vms and applications.
+   * Since the data cascade is small, fetches all references: databases, application vms and applications.
    */
   public Environment findNamedEnv(String envName)
   {
-    Environment environment = environmentDAO.findNamedEnv(envName);
-    activeLoadAll(environment);
-    return environment;
+    return environmentDAO.findNamedEnvGraph(envName);
   }
 
   /**
    * Finds the named environment, or null if not found.
    * <p/>
-   * Since the data cascade is small, actively loads all references: databases, application vms and applications.
+   * Since the data cascade is small, fetches all references: databases, application vms and applications.
    */
   public Environment findNamedEnvAllowNull(String envName)
   {
-    Environment environment = environmentDAO.findNamedEnvAllowNull(envName);
-    activeLoadAll(environment);
-    return environment;
-  }
-
-  /**
-   * Actively loads the environment's databases, applications and vms, while the tx is open.
-   */
-  private void activeLoadAll(Environment environment)
-  {
-    if (environment != null)
-    {
-      if (environment.getLogicalDatabases() != null)
-      {
-        for (LogicalDatabase logicalDatabase : environment.getLogicalDatabases())
-        {
-          logicalDatabase.getPhysicalDatabase(); //load
-        }
-      }
-      if (environment.getApplicationVms() != null)
-      {
-        for (ApplicationVm applicationVm : environment.getApplicationVms())
-        {
-          if (applicationVm.getApplications() != null)
-          {
-            for (Application application : applicationVm.getApplications())
-            {
-              //No action other than load
-            }
-          }
-        }
-      }
-    }
+    return environmentDAO.findNamedEnvGraphAllowNull(envName);
   }
 
   /**
@@ -124,6 +97,7 @@ public class EnvironmentTx
   public void newEnvironment(Environment environment)
   {
     environmentDAO.persist(environment);
+    evictAfterCompletion(environment.getEnvName());
   }
 
   /**
@@ -132,6 +106,7 @@ public class EnvironmentTx
   public void updateEnvironment(Environment environment)
   {
     environmentDAO.merge(environment);
+    evictAfterCompletion(environment.getEnvName());
   }
 
   /**
@@ -146,5 +121,71 @@ public class EnvironmentTx
     Environment managedEnvironment = environmentDAO.find(environment.getEnvId());
 
     environmentDAO.remove(managedEnvironment);
+    evictAfterCompletion(environment.getEnvName());
+  }
+
+  /**
+   * Evicts the environment from the job caches once the current transaction is over.  Evicting before the commit
+   * would let a concurrent task cache the old version again.  Also evicts after a rollback, since the caller may have
+   * changed the cached entity itself.  Evicts right away if there is no transaction.
+   */
+  private void evictAfterCompletion(final String envName)
+  {
+    if (TransactionSynchronizationManager.isSynchronizationActive())
+    {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter()
+      {
+        @Override
+        public void afterCompletion(int status)
+        {
+          environmentCache.evict(envName);
+        }
+      });
+    }
+    else
+    {
+      environmentCache.evict(envName);
+    }
+  }
+
+  /**
+   * Leases all the named environments to the owner, or none of them.  Names of environments that do not exist yet
+   * are ignored.  A lease held by another owner blocks, unless its time is before expiredBefore.
+   * <p/>
+   * Returns null if the leases were taken, else a description of the lease that blocked.
+   */
+  public String acquireLeases(Collection<String> envNames, String leaseOwner, Date now, Date expiredBefore)
+  {
+    List<Environment> environments = environmentDAO.findNamedEnvsForUpdate(envNames);
+    for (Environment environment : environments)
+    {
+      if (environment.getLeaseOwner() != null && !environment.getLeaseOwner().equals(leaseOwner)
+          && environment.getLeaseTime() != null && !environment.getLeaseTime().before(expiredBefore))
+      {
+        return "env '" + environment.getEnvName() + "' is leased by '" + environment.getLeaseOwner()
+            + "' as of " + environment.getLeaseTime();
+      }
+    }
+    if (!environments.isEmpty())
+    {
+      environmentDAO.updateLeases(envNames, leaseOwner, new Timestamp(now.getTime()));
+    }
+    return null;
+  }
+
+  /**
+   * Extends all leases held by the owner.
+   */
+  public void renewLeases(String leaseOwner, Date now)
+  {
+    environmentDAO.renewLeases(leaseOwner, new Timestamp(now.getTime()));
+  }
+
+  /**
+   * Gives up all leases held by the owner.
+   */
+  public void releaseLeases(String leaseOwner)
+  {
+    environmentDAO.clearLeases(leaseOwner);
   }
 }
@@ -0,0 +1,51 @@
+package bluegreen.manager.model.tx;
+
+import java.util.List;
+import javax.transaction.Transactional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import bluegreen.manager.model.dao.FreezeWindowDAO;
+import bluegreen.manager.model.domain.FreezeWindow;
+import bluegreen.manager.model.domain.JobHistory;
+
+/**
+ * Serves transactional db queries related to FreezeWindow.
+ */
+@Transactional
+@Component
+public class FreezeWindowTx
+{
+  @Autowired
+  private FreezeWindowDAO freezeWindowDAO;
+
+  /**
+   * Persists the freeze window as part of the job run.
+   */
+  public FreezeWindow newFreezeWindow(FreezeWindow freezeWindow, JobHistory jobHistory)
+  {
+    freezeWindow.setJobHistory(jobHistory);
+    freezeWindowDAO.persist(freezeWindow);
+    return freezeWindow;
+  }
+
+  /**
+   * True if the job run exceeded its freeze budget, so the live app was thawed before its snapshots were done.
+   */
+  public boolean wasThawedEarly(JobHistory jobHistory)
+  {
+    List<FreezeWindow> freezeWindows = freezeWindowDAO.findByJobHistory(jobHistory);
+    if (freezeWindows != null)
+    {
+      for (FreezeWindow freezeWindow : freezeWindows)
+      {
+        if (freezeWindow.isBudgetExceeded() && freezeWindow.getThawRequestedTime() != null)
+        {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,155 @@
+package bluegreen.manager.model.tx;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.transaction.Transactional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import bluegreen.manager.model.dao.FreezeWindowDAO;
+import bluegreen.manager.model.dao.JobHistoryDAO;
+import bluegreen.manager.model.dao.TaskHistoryDAO;
+import bluegreen.manager.model.domain.FreezeWindow;
+import bluegreen.manager.model.domain.JobHistory;
+import bluegreen.manager.model.domain.TaskHistory;
+
+/**
+ * Writes a batch of history records in one transaction, for the HistoryRecorder.
+ * <p/>
+ * Opening records insert rows.  Closing records update rows by id, without loading them first.  Freeze window records
+ * insert rows under their job.
+ */
+@Transactional
+@Component
+class HistoryBatchTx
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(HistoryBatchTx.class);
+
+  @Autowired
+  private JobHistoryDAO jobHistoryDAO;
+
+  @Autowired
+  private TaskHistoryDAO taskHistoryDAO;
+
+  @Autowired
+  private FreezeWindowDAO freezeWindowDAO;
+
+  /**
+   * Writes the records in order.  Returns the db ids of the rows opened, by key.
+   *
+   * @param knownIds Db ids of rows opened by earlier batches, by key.
+   */
+  public Map<Long, Long> writeBatch(List<HistoryRecord> records, Map<Long, Long> knownIds)
+  {
+    Map<Long, Long> newIds = new HashMap<Long, Long>();
+    Map<Long, JobHistory> newJobHistories = new HashMap<Long, JobHistory>();
+    for (HistoryRecord record : records)
+    {
+      switch (record.getType())
+      {
+        case OPEN_JOB:
+          JobHistory jobHistory = record.makeJobHistory();
+          jobHistoryDAO.persist(jobHistory);
+          newJobHistories.put(record.getKey(), jobHistory);
+          newIds.put(record.getKey(), jobHistory.getId());
+          break;
+        case OPEN_TASK:
+          writeOpenTask(record, knownIds, newIds, newJobHistories);
+          break;
+        case FREEZE_WINDOW:
+          writeFreezeWindow(record, knownIds, newJobHistories);
+          break;
+        case CLOSE_JOB:
+        case CLOSE_TASK:
+          writeClose(record, knownIds, newIds);
+          break;
+        default:
+          throw new IllegalStateException("Unknown history record type: " + record.getType());
+      }
+    }
+    return newIds;
+  }
+
+  private void writeOpenTask(HistoryRecord record, Map<Long, Long> knownIds, Map<Long, Long> newIds,
+                             Map<Long, JobHistory> newJobHistories)
+  {
+    JobHistory jobHistory = findParentJobHistory(record, knownIds, newJobHistories);
+    if (jobHistory == null)
+    {
+      return;
+    }
+    TaskHistory taskHistory = record.makeTaskHistory(jobHistory);
+    taskHistoryDAO.persist(taskHistory);
+    newIds.put(record.getKey(), taskHistory.getId());
+  }
+
+  private void writeFreezeWindow(HistoryRecord record, Map<Long, Long> knownIds, Map<Long, JobHistory> newJobHistories)
+  {
+    JobHistory jobHistory = findParentJobHistory(record, knownIds, newJobHistories);
+    if (jobHistory != null)
+    {
+      FreezeWindow freezeWindow = record.makeFreezeWindow(jobHistory);
+      freezeWindowDAO.persist(freezeWindow);
+    }
+  }
+
+  /**
+   * Returns the job of the record: inserted earlier in this batch, or else a reference by id.  Null (and logs) if the
+   * job was never written.
+   */
+  private JobHistory findParentJobHistory(HistoryRecord record, Map<Long, Long> knownIds,
+                                          Map<Long, JobHistory> newJobHistories)
+  {
+    JobHistory jobHistory = newJobHistories.get(record.getParentKey());
+    if (jobHistory == null)
+    {
+      Long jobId = resolveId(record.getParentId(), record.getParentKey(), knownIds, null);
+      if (jobId == null)
+      {
+        LOGGER.warn("Dropping " + record + ", its job history was never written");
+        return null;
+      }
+      jobHistory = jobHistoryDAO.getReference(jobId);
+    }
+    return jobHistory;
+  }
+
+  private void writeClose(HistoryRecord record, Map<Long, Long> knownIds, Map<Long, Long> newIds)
+  {
+    Long id = resolveId(record.getEntityId(), record.getKey(), knownIds, newIds);
+    if (id == null)
+    {
+      LOGGER.warn("Dropping " + record + ", its history row was never written");
+    }
+    else if (record.getType() == HistoryRecord.Type.CLOSE_JOB)
+    {
+      jobHistoryDAO.updateClosed(id, record.getEndTime(), record.getJobStatus());
+    }
+    else
+    {
+      taskHistoryDAO.updateClosed(id, record.getEndTime(), record.getTaskStatus(), record.getExitValue(),
+          record.getProcessMilliseconds(), record.getProcessCpuMilliseconds());
+    }
+  }
+
+  /**
+   * Returns the given id if known, else looks the key up among the ids written so far.  Null if never written.
+   */
+  private Long resolveId(long id, long key, Map<Long, Long> knownIds, Map<Long, Long> newIds)
+  {
+    if (id != 0L)
+    {
+      return id;
+    }
+    Long resolved = knownIds.get(key);
+    if (resolved == null && newIds != null)
+    {
+      resolved = newIds.get(key);
+    }
+    return resolved;
+  }
+}
@@ -0,0 +1,283 @@
+package bluegreen.manager.model.tx;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local append-only file of history records, so history not yet in the db survives a db outage or a crash.
+ * <p/>
+ * Records are appended (and synced to disk) before they are written to the db.  Once a batch is committed to the db, a
+ * commit line is appended, along with the db ids of the rows it opened.  On replay, records at or below the last
+ * commit line are already in the db.  A crash between a db commit and its commit line means that batch is written
+ * again on replay.
+ * <p/>
+ * The file is locked while in use, so two processes in the same directory never share a journal: the second one uses
+ * the next free numbered file.  The journal of a process that died is replayed by the next process to lock it.
+ */
+class HistoryJournal
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(HistoryJournal.class);
+  private static final String COMMIT_PREFIX = "#commit ";
+  private static final String ID_PREFIX = "#id ";
+  private static final int MAX_FILES = 100;
+
+  private final File file;
+  private final RandomAccessFile lockFile;
+  private final FileLock fileLock;
+  private FileOutputStream outputStream;
+  private Writer writer;
+  private int numLines;
+
+  private HistoryJournal(File file, RandomAccessFile lockFile, FileLock fileLock)
+  {
+    this.file = file;
+    this.lockFile = lockFile;
+    this.fileLock = fileLock;
+  }
+
+  /**
+   * Locks and opens the first journal file not in use by another process: the given path, else path-1, path-2, etc.
+   */
+  static HistoryJournal open(File baseFile) throws IOException
+  {
+    for (int idx = 0; idx < MAX_FILES; ++idx)
+    {
+      File file = idx == 0 ? baseFile : new File(baseFile.getPath() + "-" + idx);
+      File parent = file.getAbsoluteFile().getParentFile();
+      if (parent != null && !parent.isDirectory() && !parent.mkdirs())
+      {
+        throw new IOException("Cannot make history journal directory " + parent);
+      }
+      RandomAccessFile lockFile = new RandomAccessFile(new File(file.getPath() + ".lock"), "rw");
+      FileLock fileLock = tryLock(lockFile.getChannel());
+      if (fileLock != null)
+      {
+        HistoryJournal journal = new HistoryJournal(file, lockFile, fileLock);
+        journal.openForAppend();
+        return journal;
+      }
+      lockFile.close();
+    }
+    throw new IOException("All " + MAX_FILES + " history journals at " + baseFile + " are in use");
+  }
+
+  private static FileLock tryLock(FileChannel channel) throws IOException
+  {
+    try
+    {
+      return channel.tryLock();
+    }
+    catch (OverlappingFileLockException e)
+    {
+      return null; //Locked by this process.
+    }
+  }
+
+  private void openForAppend() throws IOException
+  {
+    outputStream = new FileOutputStream(file, true);
+    writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Reads the records not yet committed to the db, and the db ids known for journaled keys.
+   */
+  Replay read() throws IOException
+  {
+    Replay replay = new Replay();
+    List<HistoryRecord> records = new ArrayList<HistoryRecord>();
+    numLines = 0;
+    if (file.exists())
+    {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+      try
+      {
+        String line;
+        while ((line = reader.readLine()) != null)
+        {
+          ++numLines;
+          readLine(line, replay, records);
+        }
+      }
+      finally
+      {
+        reader.close();
+      }
+    }
+    for (HistoryRecord record : records)
+    {
+      if (record.getSeq() > replay.committedSeq)
+      {
+        replay.records.add(record);
+      }
+    }
+    return replay;
+  }
+
+  private void readLine(String line, Replay replay, List<HistoryRecord> records)
+  {
+    try
+    {
+      if (line.startsWith(COMMIT_PREFIX))
+      {
+        replay.committedSeq = Math.max(replay.committedSeq, Long.parseLong(line.substring(COMMIT_PREFIX.length())));
+        replay.maxSeq = Math.max(replay.maxSeq, replay.committedSeq);
+      }
+      else if (line.startsWith(ID_PREFIX))
+      {
+        String[] keyId = line.substring(ID_PREFIX.length()).split(" ");
+        replay.ids.put(Long.valueOf(keyId[0]), Long.valueOf(keyId[1]));
+      }
+      else if (line.length() > 0)
+      {
+        HistoryRecord record = HistoryRecord.fromLine(line);
+        records.add(record);
+        replay.maxSeq = Math.max(replay.maxSeq, record.getSeq());
+      }
+    }
+    catch (IllegalArgumentException e)
+    {
+      LOGGER.warn("Skipping unreadable line of history journal " + file + ": " + line, e);
+    }
+  }
+
+  /**
+   * Appends the records and syncs them to disk.
+   */
+  void append(List<HistoryRecord> records) throws IOException
+  {
+    for (HistoryRecord record : records)
+    {
+      writer.write(record.toLine());
+      writer.write('\n');
+    }
+    numLines += records.size();
+    sync();
+  }
+
+  /**
+   * Notes that all records up to seq are in the db, along with the db ids of the rows they opened.
+   */
+  void appendCommit(long seq, Map<Long, Long> newIds) throws IOException
+  {
+    writeIds(newIds);
+    writer.write(COMMIT_PREFIX + seq + "\n");
+    numLines += newIds.size() + 1;
+    sync();
+  }
+
+  /**
+   * Replaces the journal with just the commit line and the ids still needed by open rows.  Only valid when every
+   * record is committed.
+   */
+  void compact(long committedSeq, Map<Long, Long> liveIds) throws IOException
+  {
+    File tempFile = new File(file.getPath() + ".tmp");
+    writer.close();
+    outputStream = new FileOutputStream(tempFile, false);
+    writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+    writeIds(liveIds);
+    writer.write(COMMIT_PREFIX + committedSeq + "\n");
+    sync();
+    writer.close();
+    Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    numLines = liveIds.size() + 1;
+    openForAppend();
+  }
+
+  private void writeIds(Map<Long, Long> ids) throws IOException
+  {
+    for (Map.Entry<Long, Long> entry : ids.entrySet())
+    {
+      writer.write(ID_PREFIX + entry.getKey() + " " + entry.getValue() + "\n");
+    }
+  }
+
+  private void sync() throws IOException
+  {
+    writer.flush();
+    outputStream.getFD().sync();
+  }
+
+  int getNumLines()
+  {
+    return numLines;
+  }
+
+  File getFile()
+  {
+    return file;
+  }
+
+  /**
+   * Closes the journal and releases its lock.  The file stays, for replay by the next process.
+   */
+  void close()
+  {
+    try
+    {
+      writer.close();
+      fileLock.release();
+      lockFile.close();
+    }
+    catch (IOException e)
+    {
+      LOGGER.warn("Failed to close history journal " + file, e);
+    }
+  }
+
+  /**
+   * What a journal holds that is not yet committed to the db.
+   */
+  static class Replay
+  {
+    private final List<HistoryRecord> records = new ArrayList<HistoryRecord>();
+    private final Map<Long, Long> ids = new HashMap<Long, Long>();
+    private long committedSeq;
+    private long maxSeq;
+
+    /**
+     * Uncommitted records, in order.
+     */
+    List<HistoryRecord> getRecords()
+    {
+      return records;
+    }
+
+    /**
+     * Db ids of journaled rows, by key.
+     */
+    Map<Long, Long> getIds()
+    {
+      return ids;
+    }
+
+    /**
+     * Highest sequence number used so far.
+     */
+    long getMaxSeq()
+    {
+      return maxSeq;
+    }
+  }
+}
@@ -0,0 +1,467 @@
+package bluegreen.manager.model.tx;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import bluegreen.manager.model.domain.FreezeWindow;
+import bluegreen.manager.model.domain.JobHistory;
+import bluegreen.manager.model.domain.JobStatus;
+import bluegreen.manager.model.domain.TaskHistory;
+import bluegreen.manager.model.domain.TaskStatus;
+
+/**
+ * One queued change to job or task history: the opening of a new history row, or the closing of one, or the freeze
+ * window of a job (an insert only row under the job, never closed).  Holds a
+ * snapshot of the entity fields at the time of the change, so the writer never reads entities that jobs are still
+ * changing, and so it can be written to the journal and read back after a restart.
+ * <p/>
+ * Each record has a sequence number, in the order the changes were made.  The history row it changes is identified by
+ * key: the sequence number of the record that opened it.  The db id is only known once the opening record is written.
+ */
+class HistoryRecord
+{
+  enum Type
+  {
+    OPEN_JOB, CLOSE_JOB, OPEN_TASK, CLOSE_TASK, FREEZE_WINDOW
+  }
+
+  private static final char SEPARATOR = '\t';
+  private static final String NULL = "\\N";
+  private static final int NUM_FIELDS = 19;
+  private static final int NUM_COMMON_FIELDS = 6;
+  private static final int NUM_FREEZE_WINDOW_FIELDS = 16;
+
+  private final long seq;
+  private final Type type;
+  private final long key;
+  private final long entityId;  //Db id if the row was written before the record was made, else 0.
+  private final long parentKey; //Job key of an opened task or freeze window, else 0.
+  private final long parentId;  //Db id of the job of an opened task or freeze window, if already written, else 0.
+  private final Timestamp startTime;
+  private final Timestamp endTime;
+  private final String jobName;
+  private final String env1;
+  private final String env2;
+  private final String commandLine;
+  private final JobStatus jobStatus;
+  private final int position;
+  private final String taskName;
+  private final TaskStatus taskStatus;
+  private final Integer exitValue;
+  private final Long processMilliseconds;
+  private final Long processCpuMilliseconds;
+  private final FreezeWindow freezeWindow; //Copy of the freeze window, else null.
+
+  private HistoryRecord(long seq, Type type, long key, long entityId, long parentKey, long parentId,
+                        Timestamp startTime, Timestamp endTime, String jobName, String env1, String env2,
+                        String commandLine, JobStatus jobStatus, int position, String taskName, TaskStatus taskStatus,
+                        Integer exitValue, Long processMilliseconds, Long processCpuMilliseconds,
+                        FreezeWindow freezeWindow)
+  {
+    this.seq = seq;
+    this.type = type;
+    this.key = key;
+    this.entityId = entityId;
+    this.parentKey = parentKey;
+    this.parentId = parentId;
+    this.startTime = startTime;
+    this.endTime = endTime;
+    this.jobName = jobName;
+    this.env1 = env1;
+    this.env2 = env2;
+    this.commandLine = commandLine;
+    this.jobStatus = jobStatus;
+    this.position = position;
+    this.taskName = taskName;
+    this.taskStatus = taskStatus;
+    this.exitValue = exitValue;
+    this.processMilliseconds = processMilliseconds;
+    this.processCpuMilliseconds = processCpuMilliseconds;
+    this.freezeWindow = freezeWindow;
+  }
+
+  static HistoryRecord openJob(long seq, JobHistory jobHistory)
+  {
+    return new HistoryRecord(seq, Type.OPEN_JOB, seq, 0L, 0L, 0L, jobHistory.getStartTime(), jobHistory.getEndTime(),
+        jobHistory.getJobName(), jobHistory.getEnv1(), jobHistory.getEnv2(), jobHistory.getCommandLine(),
+        jobHistory.getStatus(), 0, null, null, null, null, null, null);
+  }
+
+  static HistoryRecord closeJob(long seq, long key, JobHistory jobHistory)
+  {
+    return new HistoryRecord(seq, Type.CLOSE_JOB, key, jobHistory.getId(), 0L, 0L, null, jobHistory.getEndTime(),
+        null, null, null, null, jobHistory.getStatus(), 0, null, null, null, null, null, null);
+  }
+
+  static HistoryRecord openTask(long seq, long jobKey, TaskHistory taskHistory)
+  {
+    return new HistoryRecord(seq, Type.OPEN_TASK, seq, 0L, jobKey, taskHistory.getJobHistory().getId(),
+        taskHistory.getStartTime(), taskHistory.getEndTime(), null, null, null, null, null, taskHistory.getPosition(),
+        taskHistory.getTaskName(), taskHistory.getStatus(), taskHistory.getExitValue(),
+        taskHistory.getProcessMilliseconds(), taskHistory.getProcessCpuMilliseconds(), null);
+  }
+
+  static HistoryRecord closeTask(long seq, long key, TaskHistory taskHistory)
+  {
+    return new HistoryRecord(seq, Type.CLOSE_TASK, key, taskHistory.getId(), 0L, 0L, null, taskHistory.getEndTime(),
+        null, null, null, null, null, 0, null, taskHistory.getStatus(), taskHistory.getExitValue(),
+        taskHistory.getProcessMilliseconds(), taskHistory.getProcessCpuMilliseconds(), null);
+  }
+
+  static HistoryRecord freezeWindow(long seq, long jobKey, long jobId, FreezeWindow freezeWindow)
+  {
+    return new HistoryRecord(seq, Type.FREEZE_WINDOW, seq, 0L, jobKey, jobId, null, null, null, null, null, null, null,
+        0, null, null, null, null, null, copyFreezeWindow(freezeWindow));
+  }
+
+  /**
+   * Folds each close record into the open record of the same row, when both are in the list, so the row is inserted
+   * once in its final state instead of inserted then updated.  Keeps the order of the remaining records.
+   */
+  static List<HistoryRecord> coalesce(List<HistoryRecord> records)
+  {
+    List<HistoryRecord> coalesced = new ArrayList<HistoryRecord>(records.size());
+    Map<Long, Integer> openIndexes = new HashMap<Long, Integer>();
+    for (HistoryRecord record : records)
+    {
+      Integer openIndex = record.isOpen() ? null : openIndexes.get(record.key);
+      if (openIndex == null)
+      {
+        if (record.isOpen())
+        {
+          openIndexes.put(record.key, coalesced.size());
+        }
+        coalesced.add(record);
+      }
+      else
+      {
+        coalesced.set(openIndex, coalesced.get(openIndex).closedBy(record));
+      }
+    }
+    return coalesced;
+  }
+
+  /**
+   * Returns a copy of this open record, with the final state given by the close record.
+   */
+  private HistoryRecord closedBy(HistoryRecord close)
+  {
+    return new HistoryRecord(seq, type, key, entityId, parentKey, parentId, startTime, close.endTime, jobName, env1,
+        env2, commandLine, close.jobStatus, position, taskName, close.taskStatus, close.exitValue,
+        close.processMilliseconds, close.processCpuMilliseconds, freezeWindow);
+  }
+
+  boolean isOpen()
+  {
+    return type == Type.OPEN_JOB || type == Type.OPEN_TASK;
+  }
+
+  /**
+   * Makes a new JobHistory entity from an OPEN_JOB record.
+   */
+  JobHistory makeJobHistory()
+  {
+    JobHistory jobHistory = new JobHistory();
+    jobHistory.setStartTime(startTime);
+    jobHistory.setEndTime(endTime);
+    jobHistory.setJobName(jobName);
+    jobHistory.setEnv1(env1);
+    jobHistory.setEnv2(env2);
+    jobHistory.setCommandLine(commandLine);
+    jobHistory.setStatus(jobStatus);
+    return jobHistory;
+  }
+
+  /**
+   * Makes a new TaskHistory entity from an OPEN_TASK record, under the given job.
+   */
+  TaskHistory makeTaskHistory(JobHistory jobHistory)
+  {
+    TaskHistory taskHistory = new TaskHistory();
+    taskHistory.setJobHistory(jobHistory);
+    taskHistory.setStartTime(startTime);
+    taskHistory.setEndTime(endTime);
+    taskHistory.setPosition(position);
+    taskHistory.setTaskName(taskName);
+    taskHistory.setStatus(taskStatus);
+    taskHistory.setExitValue(exitValue);
+    taskHistory.setProcessMilliseconds(processMilliseconds);
+    taskHistory.setProcessCpuMilliseconds(processCpuMilliseconds);
+    return taskHistory;
+  }
+
+  /**
+   * Makes a new FreezeWindow entity from a FREEZE_WINDOW record, under the given job.
+   */
+  FreezeWindow makeFreezeWindow(JobHistory jobHistory)
+  {
+    FreezeWindow copy = copyFreezeWindow(freezeWindow);
+    copy.setJobHistory(jobHistory);
+    return copy;
+  }
+
+  /**
+   * Copies the fields of the freeze window, without its id or job.
+   */
+  private static FreezeWindow copyFreezeWindow(FreezeWindow freezeWindow)
+  {
+    FreezeWindow copy = new FreezeWindow();
+    copy.setEnvName(freezeWindow.getEnvName());
+    copy.setFreezeRequestedTime(freezeWindow.getFreezeRequestedTime());
+    copy.setFrozenTime(freezeWindow.getFrozenTime());
+    copy.setSnapshotStartedTime(freezeWindow.getSnapshotStartedTime());
+    copy.setSnapshotAvailableTime(freezeWindow.getSnapshotAvailableTime());
+    copy.setThawRequestedTime(freezeWindow.getThawRequestedTime());
+    copy.setNormalTime(freezeWindow.getNormalTime());
+    copy.setWindowMilliseconds(freezeWindow.getWindowMilliseconds());
+    copy.setBudgetSeconds(freezeWindow.getBudgetSeconds());
+    copy.setBudgetExceeded(freezeWindow.isBudgetExceeded());
+    return copy;
+  }
+
+  /**
+   * Serializes the record as one journal line (without line terminator).  A freeze window line has its own fields
+   * after the common ones.
+   */
+  String toLine()
+  {
+    StringBuilder sb = new StringBuilder();
+    append(sb, Long.toString(seq));
+    append(sb, type.name());
+    append(sb, Long.toString(key));
+    append(sb, Long.toString(entityId));
+    append(sb, Long.toString(parentKey));
+    append(sb, Long.toString(parentId));
+    if (type == Type.FREEZE_WINDOW)
+    {
+      append(sb, freezeWindow.getEnvName());
+      append(sb, toField(freezeWindow.getFreezeRequestedTime()));
+      append(sb, toField(freezeWindow.getFrozenTime()));
+      append(sb, toField(freezeWindow.getSnapshotStartedTime()));
+      append(sb, toField(freezeWindow.getSnapshotAvailableTime()));
+      append(sb, toField(freezeWindow.getThawRequestedTime()));
+      append(sb, toField(freezeWindow.getNormalTime()));
+      append(sb, Long.toString(freezeWindow.getWindowMilliseconds()));
+      append(sb, Long.toString(freezeWindow.getBudgetSeconds()));
+      append(sb, Boolean.toString(freezeWindow.isBudgetExceeded()));
+      return sb.substring(1);
+    }
+    append(sb, startTime == null ? null : Long.toString(startTime.getTime()));
+    append(sb, endTime == null ? null : Long.toString(endTime.getTime()));
+    append(sb, jobName);
+    append(sb, env1);
+    append(sb, env2);
+    append(sb, commandLine);
+    append(sb, jobStatus == null ? null : jobStatus.name());
+    append(sb, Integer.toString(position));
+    append(sb, taskName);
+    append(sb, taskStatus == null ? null : taskStatus.name());
+    append(sb, exitValue == null ? null : exitValue.toString());
+    append(sb, processMilliseconds == null ? null : processMilliseconds.toString());
+    append(sb, processCpuMilliseconds == null ? null : processCpuMilliseconds.toString());
+    return sb.substring(1);
+  }
+
+  /**
+   * Parses a line made by toLine.  Throws IllegalArgumentException if it is malformed (e.g. torn by a crash).
+   */
+  static HistoryRecord fromLine(String line)
+  {
+    String[] fields = split(line);
+    if (fields.length == NUM_FREEZE_WINDOW_FIELDS && Type.FREEZE_WINDOW.name().equals(fields[1]))
+    {
+      return freezeWindowFromFields(fields);
+    }
+    if (fields.length != NUM_FIELDS)
+    {
+      throw new IllegalArgumentException("Expected " + NUM_FIELDS + " fields in history record but found "
+          + fields.length + ": " + line);
+    }
+    return new HistoryRecord(Long.parseLong(fields[0]), Type.valueOf(fields[1]), Long.parseLong(fields[2]),
+        Long.parseLong(fields[3]), Long.parseLong(fields[4]), Long.parseLong(fields[5]), parseTimestamp(fields[6]),
+        parseTimestamp(fields[7]), fields[8], fields[9], fields[10], fields[11],
+        fields[12] == null ? null : JobStatus.valueOf(fields[12]), Integer.parseInt(fields[13]), fields[14],
+        fields[15] == null ? null : TaskStatus.valueOf(fields[15]),
+        fields[16] == null ? null : Integer.valueOf(fields[16]), fields[17] == null ? null : Long.valueOf(fields[17]),
+        fields[18] == null ? null : Long.valueOf(fields[18]), null);
+  }
+
+  private static HistoryRecord freezeWindowFromFields(String[] fields)
+  {
+    int idx = NUM_COMMON_FIELDS;
+    FreezeWindow freezeWindow = new FreezeWindow();
+    freezeWindow.setEnvName(fields[idx++]);
+    freezeWindow.setFreezeRequestedTime(parseTimestamp(fields[idx++]));
+    freezeWindow.setFrozenTime(parseTimestamp(fields[idx++]));
+    freezeWindow.setSnapshotStartedTime(parseTimestamp(fields[idx++]));
+    freezeWindow.setSnapshotAvailableTime(parseTimestamp(fields[idx++]));
+    freezeWindow.setThawRequestedTime(parseTimestamp(fields[idx++]));
+    freezeWindow.setNormalTime(parseTimestamp(fields[idx++]));
+    freezeWindow.setWindowMilliseconds(Long.parseLong(fields[idx++]));
+    freezeWindow.setBudgetSeconds(Long.parseLong(fields[idx++]));
+    freezeWindow.setBudgetExceeded(Boolean.parseBoolean(fields[idx]));
+    return new HistoryRecord(Long.parseLong(fields[0]), Type.FREEZE_WINDOW, Long.parseLong(fields[2]),
+        Long.parseLong(fields[3]), Long.parseLong(fields[4]), Long.parseLong(fields[5]), null, null, null, null, null,
+        null, null, 0, null, null, null, null, null, freezeWindow);
+  }
+
+  private static String toField(Timestamp timestamp)
+  {
+    return timestamp == null ? null : Long.toString(timestamp.getTime());
+  }
+
+  private static Timestamp parseTimestamp(String field)
+  {
+    return field == null ? null : new Timestamp(Long.parseLong(field));
+  }
+
+  /**
+   * Appends a separator and the escaped field.
+   */
+  private static void append(StringBuilder sb, String field)
+  {
+    sb.append(SEPARATOR);
+    if (field == null)
+    {
+      sb.append(NULL);
+      return;
+    }
+    for (int idx = 0; idx < field.length(); ++idx)
+    {
+      char ch = field.charAt(idx);
+      switch (ch)
+      {
+        case '\\':
+          sb.append("\\\\");
+          break;
+        case '\t':
+          sb.append("\\t");
+          break;
+        case '\n':
+          sb.append("\\n");
+          break;
+        case '\r':
+          sb.append("\\r");
+          break;
+        default:
+          sb.append(ch);
+      }
+    }
+  }
+
+  /**
+   * Splits the line at separators and unescapes the fields.
+   */
+  private static String[] split(String line)
+  {
+    List<String> fields = new ArrayList<String>();
+    StringBuilder field = new StringBuilder();
+    boolean isNull = false;
+    for (int idx = 0; idx < line.length(); ++idx)
+    {
+      char ch = line.charAt(idx);
+      if (ch == SEPARATOR)
+      {
+        fields.add(isNull ? null : field.toString());
+        field.setLength(0);
+        isNull = false;
+      }
+      else if (ch == '\\' && idx + 1 < line.length())
+      {
+        char escaped = line.charAt(++idx);
+        switch (escaped)
+        {
+          case 't':
+            field.append('\t');
+            break;
+          case 'n':
+            field.append('\n');
+            break;
+          case 'r':
+            field.append('\r');
+            break;
+          case 'N':
+            isNull = true;
+            break;
+          default:
+            field.append(escaped);
+        }
+      }
+      else
+      {
+        field.append(ch);
+      }
+    }
+    fields.add(isNull ? null : field.toString());
+    return fields.toArray(new String[fields.size()]);
+  }
+
+  long getSeq()
+  {
+    return seq;
+  }
+
+  Type getType()
+  {
+    return type;
+  }
+
+  long getKey()
+  {
+    return key;
+  }
+
+  long getEntityId()
+  {
+    return entityId;
+  }
+
+  long getParentKey()
+  {
+    return parentKey;
+  }
+
+  long getParentId()
+  {
+    return parentId;
+  }
+
+  Timestamp getEndTime()
+  {
+    return endTime;
+  }
+
+  JobStatus getJobStatus()
+  {
+    return jobStatus;
+  }
+
+  TaskStatus getTaskStatus()
+  {
+    return taskStatus;
+  }
+
+  Integer getExitValue()
+  {
+    return exitValue;
+  }
+
+  Long getProcessMilliseconds()
+  {
+    return processMilliseconds;
+  }
+
+  Long getProcessCpuMilliseconds()
+  {
+    return processCpuMilliseconds;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "HistoryRecord[seq: " + seq + ", type: " + type + ", key: " + key + "]";
+  }
+}
@@ -0,0 +1,775 @@
+package bluegreen.manager.model.tx;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import bluegreen.manager.jobs.Job;
+import bluegreen.manager.model.domain.FreezeWindow;
+import bluegreen.manager.model.domain.JobHistory;
+import bluegreen.manager.model.domain.JobStatus;
+import bluegreen.manager.model.domain.TaskHistory;
+import bluegreen.manager.model.domain.TaskStatus;
+import bluegreen.manager.tasks.Task;
+import bluegreen.manager.utils.NowFactory;
+import bluegreen.manager.utils.Span;
+import bluegreen.manager.utils.Tracing;
+
+/**
+ * Records job and task history, and the freeze windows of jobs, off the critical path of the job.  Opening or closing
+ * a history returns right away; a single writer thread writes the changes to the db in order, in batches of one
+ * transaction each, folding the close of a row into its insert when both are in the same batch.
+ * <p/>
+ * Every batch goes to a local journal file before the db.  If the db write fails, the records stay in the journal and
+ * jobs carry on; the writer retries from the journal until the db is back.  A journal left behind by a crash is
+ * replayed at startup.
+ * <p/>
+ * The queue is bounded: if the writer falls that far behind, recording blocks until it catches up.  Call flush before
+ * an irreversible step, so the history leading up to it is durable (in the db, or in the journal if the db is down).
+ * Call flushBacklog before reading history back from the db, since the journal is invisible to queries.
+ * <p/>
+ * With write-behind off, each change is written synchronously by TaskHistoryTx, JobHistoryTx or FreezeWindowTx, as
+ * before.
+ */
+@Lazy
+@Component
+public class HistoryRecorder
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(HistoryRecorder.class);
+  private static final int DEFAULT_QUEUE_CAPACITY = 1000;
+  private static final int DEFAULT_BATCH_SIZE = 50;
+  private static final long DEFAULT_RETRY_SECONDS = 5L;
+  private static final String DEFAULT_JOURNAL_FILE = "bluegreen-history.journal";
+  private static final int MAX_JOURNAL_LINES = 1000;
+  private static final long POLL_MILLISECONDS = 1000L;
+
+  @Autowired
+  private NowFactory nowFactory;
+
+  @Autowired
+  private TaskHistoryTx taskHistoryTx;
+
+  @Autowired
+  private JobHistoryTx jobHistoryTx;
+
+  @Autowired
+  private FreezeWindowTx freezeWindowTx;
+
+  @Autowired
+  private HistoryBatchTx historyBatchTx;
+
+  @Value("${bluegreen.history.writeBehind:true}")
+  private boolean writeBehind = true;
+
+  @Value("${bluegreen.history.queueCapacity:" + DEFAULT_QUEUE_CAPACITY + "}")
+  private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+  @Value("${bluegreen.history.batchSize:" + DEFAULT_BATCH_SIZE + "}")
+  private int batchSize = DEFAULT_BATCH_SIZE;
+
+  @Value("${bluegreen.history.retrySeconds:" + DEFAULT_RETRY_SECONDS + "}")
+  private long retrySeconds = DEFAULT_RETRY_SECONDS;
+
+  @Value("${bluegreen.history.journalFile:" + DEFAULT_JOURNAL_FILE + "}")
+  private String journalFile = DEFAULT_JOURNAL_FILE;
+
+  private BlockingQueue<HistoryRecord> queue;
+  private HistoryJournal journal;
+  private Thread writerThread;
+
+  /**
+   * Keys of the rows opened by this recorder and not yet closed, by live entity.  Entity equality is by db id, which
+   * the live entities never get, hence identity.
+   */
+  private final Map<Object, Long> liveKeys = new IdentityHashMap<Object, Long>();
+  private final Object enqueueLock = new Object();
+  private long lastSeq;
+
+  //Writer state, guarded by this.
+  private volatile boolean running;
+  private long journaledSeq;
+  private long committedSeq;
+  private boolean backlog;       //Journal holds records the db write failed on (or a crashed process left behind).
+  private long numCommitted;
+  private long numBatches;
+  private long numFailures;
+  private long numRetries;       //Attempts to write the backlog.
+  private long nextRetryTime;
+
+  //Writer thread only.
+  private final Map<Long, Long> ids = new HashMap<Long, Long>(); //Db ids of rows not yet closed, by key.
+
+  @PostConstruct
+  public void start() throws IOException
+  {
+    if (!writeBehind)
+    {
+      return;
+    }
+    queue = new ArrayBlockingQueue<HistoryRecord>(Math.max(1, queueCapacity));
+    journal = HistoryJournal.open(new File(journalFile));
+    HistoryJournal.Replay replay = journal.read();
+    lastSeq = replay.getMaxSeq();
+    journaledSeq = lastSeq;
+    committedSeq = lastSeq;
+    ids.putAll(replay.getIds());
+    if (!replay.getRecords().isEmpty())
+    {
+      LOGGER.info("Replaying " + replay.getRecords().size() + " history records left in " + journal.getFile());
+      backlog = true;
+    }
+    running = true;
+    writerThread = new Thread(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        writeLoop();
+      }
+    }, "history-writer");
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  /**
+   * Gives the writer up to the retry interval to write what is queued, then stops it.  Whatever is left stays in the
+   * journal.
+   */
+  @PreDestroy
+  public void stop() throws InterruptedException
+  {
+    if (writerThread != null)
+    {
+      running = false;
+      writerThread.join(TimeUnit.SECONDS.toMillis(Math.max(1L, retrySeconds)));
+      writerThread.interrupt();
+      writerThread.join();
+      writerThread = null;
+      journal.close();
+      LOGGER.debug("History recorder stopped after " + describeCounts());
+    }
+  }
+
+  /**
+   * Makes an in-progress JobHistory and records it.
+   */
+  public JobHistory newJobHistoryProcessing(Job job, Date jobStartTime)
+  {
+    if (!writeBehind)
+    {
+      return jobHistoryTx.newJobHistoryProcessing(job, jobStartTime);
+    }
+    if (jobStartTime == null)
+    {
+      throw new IllegalArgumentException();
+    }
+    JobHistory newJobHistory = new JobHistory();
+    newJobHistory.setStartTime(new Timestamp(nowFactory.now().getTime()));
+    newJobHistory.setJobName(job.getName());
+    newJobHistory.setEnv1(job.getEnv1());
+    newJobHistory.setEnv2(job.getEnv2());
+    newJobHistory.setCommandLine(job.getCommandLine());
+    newJobHistory.setStatus(JobStatus.PROCESSING);
+    synchronized (enqueueLock)
+    {
+      long seq = ++lastSeq;
+      enqueue(HistoryRecord.openJob(seq, newJobHistory));
+      putLiveKey(newJobHistory, seq);
+    }
+    return newJobHistory;
+  }
+
+  /**
+   * Closes a jobHistory with an endTime and new status, and records it.
+   */
+  public void closeJobHistory(JobHistory jobHistory, JobStatus jobStatus)
+  {
+    if (!writeBehind)
+    {
+      jobHistoryTx.closeJobHistory(jobHistory, jobStatus);
+      return;
+    }
+    jobHistory.setEndTime(new Timestamp(nowFactory.now().getTime()));
+    jobHistory.setStatus(jobStatus);
+    synchronized (enqueueLock)
+    {
+      long seq = ++lastSeq;
+      enqueue(HistoryRecord.closeJob(seq, removeLiveKey(jobHistory), jobHistory));
+    }
+  }
+
+  /**
+   * Makes a new in-progress TaskHistory, linked to a parent jobHistory, and records it.
+   */
+  public TaskHistory newTaskHistoryProcessing(Task task, JobHistory jobHistory)
+  {
+    if (!writeBehind)
+    {
+      return taskHistoryTx.newTaskHistoryProcessing(task, jobHistory);
+    }
+    return newTaskHistory(task, jobHistory, TaskStatus.PROCESSING);
+  }
+
+  /**
+   * Makes a new skip TaskHistory, linked to a parent jobHistory, and records it.
+   */
+  public TaskHistory newTaskHistorySkipped(Task task, JobHistory jobHistory)
+  {
+    if (!writeBehind)
+    {
+      return taskHistoryTx.newTaskHistorySkipped(task, jobHistory);
+    }
+    return newTaskHistory(task, jobHistory, TaskStatus.SKIPPED);
+  }
+
+  private TaskHistory newTaskHistory(Task task, JobHistory jobHistory, TaskStatus taskStatus)
+  {
+    if (task == null || jobHistory == null)
+    {
+      throw new IllegalArgumentException();
+    }
+    TaskHistory newTaskHistory = new TaskHistory();
+    newTaskHistory.setJobHistory(jobHistory);
+    newTaskHistory.setStartTime(new Timestamp(nowFactory.now().getTime()));
+    if (taskStatus == TaskStatus.SKIPPED)
+    {
+      newTaskHistory.setEndTime(new Timestamp(nowFactory.now().getTime()));
+    }
+    newTaskHistory.setPosition(task.getPosition());
+    newTaskHistory.setTaskName(task.getName());
+    newTaskHistory.setStatus(taskStatus);
+    synchronized (jobHistory)
+    {
+      jobHistory.addTaskHistory(newTaskHistory);
+    }
+    synchronized (enqueueLock)
+    {
+      long seq = ++lastSeq;
+      enqueue(HistoryRecord.openTask(seq, getJobKey(jobHistory), newTaskHistory));
+      if (taskStatus == TaskStatus.PROCESSING)
+      {
+        putLiveKey(newTaskHistory, seq);
+      }
+    }
+    return newTaskHistory;
+  }
+
+  /**
+   * Closes a TaskHistory with an endTime and new status, and records it.
+   */
+  public void closeTaskHistory(TaskHistory taskHistory, TaskStatus taskStatus)
+  {
+    if (!writeBehind)
+    {
+      taskHistoryTx.closeTaskHistory(taskHistory, taskStatus);
+      return;
+    }
+    taskHistory.setEndTime(new Timestamp(nowFactory.now().getTime()));
+    taskHistory.setStatus(taskStatus);
+    synchronized (enqueueLock)
+    {
+      long seq = ++lastSeq;
+      enqueue(HistoryRecord.closeTask(seq, removeLiveKey(taskHistory), taskHistory));
+    }
+  }
+
+  /**
+   * Records the freeze window of a job, linked to its jobHistory.  The job need not be written to the db yet: the
+   * freeze window is written after it, by key.
+   */
+  public void newFreezeWindow(FreezeWindow freezeWindow, JobHistory jobHistory)
+  {
+    if (!writeBehind)
+    {
+      freezeWindowTx.newFreezeWindow(freezeWindow, jobHistory);
+      return;
+    }
+    if (freezeWindow == null || jobHistory == null)
+    {
+      throw new IllegalArgumentException();
+    }
+    synchronized (enqueueLock)
+    {
+      long seq = ++lastSeq;
+      enqueue(HistoryRecord.freezeWindow(seq, getJobKey(jobHistory), jobHistory.getId(), freezeWindow));
+    }
+  }
+
+  /**
+   * Blocks until everything recorded so far is committed to the db, or is in the journal while the db is failing.
+   * The wait is traced as a "db" span.
+   */
+  public void flush()
+  {
+    if (!writeBehind)
+    {
+      return;
+    }
+    long targetSeq;
+    synchronized (enqueueLock)
+    {
+      targetSeq = lastSeq;
+    }
+    Span span = Tracing.start("db", "historyFlush");
+    try
+    {
+      synchronized (this)
+      {
+        while (journaledSeq < targetSeq || (committedSeq < targetSeq && !backlog))
+        {
+          if (!running)
+          {
+            throw new IllegalStateException("History recorder is stopped, cannot flush");
+          }
+          try
+          {
+            wait(POLL_MILLISECONDS);
+          }
+          catch (InterruptedException e)
+          {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while flushing history", e);
+          }
+        }
+      }
+    }
+    finally
+    {
+      span.end();
+    }
+  }
+
+  /**
+   * Blocks until everything recorded so far, and any backlog in the journal, is committed to the db, so queries see
+   * it.  A backlog is retried right away rather than at the next retry interval.  Throws if that retry fails too,
+   * since the db is missing history.  The wait is traced as a "db" span.
+   */
+  public void flushBacklog()
+  {
+    if (!writeBehind)
+    {
+      return;
+    }
+    long targetSeq;
+    synchronized (enqueueLock)
+    {
+      targetSeq = lastSeq;
+    }
+    Span span = Tracing.start("db", "historyFlushBacklog");
+    try
+    {
+      synchronized (this)
+      {
+        long retriesBefore = -1L;
+        while (committedSeq < targetSeq || backlog)
+        {
+          if (!running)
+          {
+            throw new IllegalStateException("History recorder is stopped, cannot write its backlog");
+          }
+          if (backlog)
+          {
+            if (retriesBefore < 0L)
+            {
+              retriesBefore = numRetries;
+              nextRetryTime = 0L;
+              notifyAll();
+            }
+            else if (numRetries > retriesBefore)
+            {
+              throw new IllegalStateException("Failed to write the history backlog in " + journal.getFile()
+                  + " to the db");
+            }
+          }
+          try
+          {
+            wait(POLL_MILLISECONDS);
+          }
+          catch (InterruptedException e)
+          {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while writing history backlog", e);
+          }
+        }
+      }
+    }
+    finally
+    {
+      span.end();
+    }
+  }
+
+  /**
+   * Queues the record, blocking while the queue is full.  Caller holds the enqueue lock, so records are queued in
+   * sequence order.
+   */
+  private void enqueue(HistoryRecord record)
+  {
+    if (!running)
+    {
+      throw new IllegalStateException("History recorder is stopped, cannot record " + record);
+    }
+    try
+    {
+      queue.put(record);
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while recording history", e);
+    }
+  }
+
+  private void putLiveKey(Object entity, long key)
+  {
+    synchronized (liveKeys)
+    {
+      liveKeys.put(entity, key);
+    }
+  }
+
+  /**
+   * Returns the key of a row opened by this recorder, and forgets it.  Zero if the row was written some other way, in
+   * which case the entity has a db id.
+   */
+  private long removeLiveKey(Object entity)
+  {
+    Long key;
+    synchronized (liveKeys)
+    {
+      key = liveKeys.remove(entity);
+    }
+    return key == null ? 0L : key;
+  }
+
+  private long getJobKey(JobHistory jobHistory)
+  {
+    Long key;
+    synchronized (liveKeys)
+    {
+      key = liveKeys.get(jobHistory);
+    }
+    if (key == null && jobHistory.getId() == 0L)
+    {
+      throw new IllegalArgumentException("Job history was not recorded: " + jobHistory);
+    }
+    return key == null ? 0L : key;
+  }
+
+  /**
+   * Writer thread: journals each batch taken off the queue, then writes it to the db.  While there is a backlog, the
+   * db is written from the journal instead, once per retry interval.
+   */
+  private void writeLoop()
+  {
+    while (running || !queue.isEmpty())
+    {
+      try
+      {
+        List<HistoryRecord> batch = takeBatch();
+        if (!batch.isEmpty())
+        {
+          writeBatch(batch);
+        }
+        if (isRetryDue())
+        {
+          writeBacklog();
+          markRetried();
+        }
+        compactIfIdle();
+      }
+      catch (InterruptedException e)
+      {
+        break;
+      }
+    }
+    LOGGER.debug("History writer done, " + queue.size() + " records left unwritten");
+  }
+
+  /**
+   * Waits briefly for the first record, then takes up to a batch of whatever else is queued.
+   */
+  private List<HistoryRecord> takeBatch() throws InterruptedException
+  {
+    List<HistoryRecord> batch = new ArrayList<HistoryRecord>();
+    HistoryRecord first = queue.poll(POLL_MILLISECONDS, TimeUnit.MILLISECONDS);
+    if (first != null)
+    {
+      batch.add(first);
+      queue.drainTo(batch, Math.max(1, batchSize) - 1);
+    }
+    return batch;
+  }
+
+  /**
+   * Journals the batch, then writes it to the db unless it must wait behind a backlog.  If the journal itself fails,
+   * the batch is written straight to the db, and is lost if that fails too.
+   */
+  private void writeBatch(List<HistoryRecord> batch)
+  {
+    boolean journaled = true;
+    try
+    {
+      journal.append(batch);
+    }
+    catch (IOException e)
+    {
+      LOGGER.error("Failed to write " + batch.size() + " history records to journal " + journal.getFile()
+          + ", writing them to the db without it", e);
+      journaled = false;
+    }
+    markJournaled(batch.get(batch.size() - 1).getSeq());
+    if (!journaled || !isBacklog())
+    {
+      writeToDb(batch, journaled);
+    }
+  }
+
+  /**
+   * Writes one batch to the db and notes it in the journal.  On failure a journaled batch stays in the journal as
+   * backlog.
+   */
+  private void writeToDb(List<HistoryRecord> batch, boolean journaled)
+  {
+    Map<Long, Long> newIds;
+    try
+    {
+      newIds = historyBatchTx.writeBatch(HistoryRecord.coalesce(batch), ids);
+    }
+    catch (RuntimeException e)
+    {
+      if (journaled)
+      {
+        LOGGER.warn("Failed to write " + batch.size() + " history records to the db, keeping them in "
+            + journal.getFile() + " and retrying in " + retrySeconds + " seconds", e);
+        markBacklog();
+      }
+      else
+      {
+        LOGGER.error("Lost " + batch.size() + " history records, failed to write them to the journal and the db", e);
+        markCommitted(batch.get(batch.size() - 1).getSeq(), 0, isBacklog());
+      }
+      return;
+    }
+    long seq = batch.get(batch.size() - 1).getSeq();
+    if (journaled)
+    {
+      appendCommit(seq, newIds);
+    }
+    noteCommitted(batch, newIds);
+    markCommitted(seq, batch.size(), isBacklog());
+  }
+
+  /**
+   * Writes every uncommitted record in the journal to the db, batch by batch.  Stops at the first failure.
+   */
+  private void writeBacklog()
+  {
+    HistoryJournal.Replay replay;
+    try
+    {
+      replay = journal.read();
+    }
+    catch (IOException e)
+    {
+      LOGGER.error("Failed to read history journal " + journal.getFile() + ", retrying in " + retrySeconds
+          + " seconds", e);
+      markBacklog();
+      return;
+    }
+    ids.putAll(replay.getIds());
+    List<HistoryRecord> records = replay.getRecords();
+    int step = Math.max(1, batchSize);
+    for (int from = 0; from < records.size(); from += step)
+    {
+      List<HistoryRecord> batch = records.subList(from, Math.min(records.size(), from + step));
+      Map<Long, Long> newIds;
+      try
+      {
+        newIds = historyBatchTx.writeBatch(HistoryRecord.coalesce(batch), ids);
+      }
+      catch (RuntimeException e)
+      {
+        LOGGER.warn("Still failing to write history records to the db, " + (records.size() - from)
+            + " left in " + journal.getFile() + ", retrying in " + retrySeconds + " seconds", e);
+        markBacklog();
+        return;
+      }
+      long seq = batch.get(batch.size() - 1).getSeq();
+      appendCommit(seq, newIds);
+      noteCommitted(batch, newIds);
+      markCommitted(seq, batch.size(), true);
+    }
+    if (!records.isEmpty())
+    {
+      LOGGER.info("Wrote " + records.size() + " backlogged history records to the db");
+    }
+    markCommitted(journaledSeq(), 0, false);
+  }
+
+  /**
+   * Notes a db commit in the journal.  If that fails, the committed records would be written again on replay.
+   */
+  private void appendCommit(long seq, Map<Long, Long> newIds)
+  {
+    try
+    {
+      journal.appendCommit(seq, newIds);
+    }
+    catch (IOException e)
+    {
+      LOGGER.error("Failed to note history commit in journal " + journal.getFile(), e);
+    }
+  }
+
+  /**
+   * Keeps the db ids of rows just opened, and forgets those of rows just closed.
+   */
+  private void noteCommitted(List<HistoryRecord> batch, Map<Long, Long> newIds)
+  {
+    ids.putAll(newIds);
+    for (HistoryRecord record : batch)
+    {
+      if (!record.isOpen() || record.getType() == HistoryRecord.Type.OPEN_TASK && record.getEndTime() != null)
+      {
+        ids.remove(record.getKey());
+      }
+    }
+  }
+
+  /**
+   * Shrinks the journal once it has grown long and everything in it is committed.
+   */
+  private void compactIfIdle()
+  {
+    long seq;
+    synchronized (this)
+    {
+      if (backlog || committedSeq < journaledSeq || journal.getNumLines() < MAX_JOURNAL_LINES)
+      {
+        return;
+      }
+      seq = committedSeq;
+    }
+    if (queue.isEmpty())
+    {
+      try
+      {
+        journal.compact(seq, ids);
+      }
+      catch (IOException e)
+      {
+        LOGGER.error("Failed to compact history journal " + journal.getFile(), e);
+      }
+    }
+  }
+
+  private synchronized boolean isBacklog()
+  {
+    return backlog;
+  }
+
+  private synchronized boolean isRetryDue()
+  {
+    return backlog && System.currentTimeMillis() >= nextRetryTime;
+  }
+
+  private synchronized void markRetried()
+  {
+    ++numRetries;
+    notifyAll();
+  }
+
+  private synchronized long journaledSeq()
+  {
+    return journaledSeq;
+  }
+
+  private synchronized void markJournaled(long seq)
+  {
+    journaledSeq = seq;
+    notifyAll();
+  }
+
+  private synchronized void markBacklog()
+  {
+    if (!backlog)
+    {
+      ++numFailures;
+    }
+    backlog = true;
+    nextRetryTime = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(Math.max(1L, retrySeconds));
+    notifyAll();
+  }
+
+  /**
+   * Notes that records up to seq are in the db.  The backlog is cleared unless more remains.
+   */
+  private synchronized void markCommitted(long seq, int numRecords, boolean moreBacklog)
+  {
+    committedSeq = Math.max(committedSeq, seq);
+    numCommitted += numRecords;
+    if (numRecords > 0)
+    {
+      ++numBatches;
+    }
+    backlog = moreBacklog;
+    notifyAll();
+  }
+
+  private synchronized String describeCounts()
+  {
+    return numCommitted + " records committed in " + numBatches + " batches, " + numFailures + " db outages";
+  }
+
+  synchronized long getNumCommitted()
+  {
+    return numCommitted;
+  }
+
+  synchronized long getNumBatches()
+  {
+    return numBatches;
+  }
+
+  synchronized boolean isBacklogged()
+  {
+    return backlog;
+  }
+
+  //Test purposes only
+  void setWriteBehind(boolean writeBehind)
+  {
+    this.writeBehind = writeBehind;
+  }
+
+  //Test purposes only
+  void setJournalFile(String journalFile)
+  {
+    this.journalFile = journalFile;
+  }
+
+  //Test purposes only
+  void setRetrySeconds(long retrySeconds)
+  {
+    this.retrySeconds = retrySeconds;
+  }
+}
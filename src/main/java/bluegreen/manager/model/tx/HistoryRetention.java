@@ -0,0 +1,136 @@
+package bluegreen.manager.model.tx;
+
+import java.sql.Timestamp;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import bluegreen.manager.utils.NowFactory;
+
+/**
+ * Keeps JOB_HISTORY small by moving old job histories, with their task histories and freeze windows, to the archive
+ * tables.  The archive tables have the same columns and ids, so old history stays queryable there.
+ * <p/>
+ * Runs periodically in the daemon.  Each batch is one transaction, so a large backlog does not hold locks for long.
+ * Only closed job histories are moved.  Keep the retention well above the age at which a prior job is still relevant
+ * to a rerun (4 days).
+ */
+@Lazy
+@Component
+public class HistoryRetention
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(HistoryRetention.class);
+  private static final int DEFAULT_RETENTION_DAYS = 90;
+  private static final int DEFAULT_ARCHIVE_BATCH_SIZE = 500;
+  private static final long DEFAULT_ARCHIVE_INTERVAL_HOURS = 24L;
+  private static final long INITIAL_DELAY_MINUTES = 5L;
+  private static final long MILLISECONDS_PER_DAY = 1000L * 60L * 60L * 24L;
+
+  @Autowired
+  private NowFactory nowFactory;
+
+  @Autowired
+  private JobHistoryTx jobHistoryTx;
+
+  @Value("${bluegreen.history.retentionDays:" + DEFAULT_RETENTION_DAYS + "}")
+  private int retentionDays = DEFAULT_RETENTION_DAYS;
+
+  @Value("${bluegreen.history.archiveBatchSize:" + DEFAULT_ARCHIVE_BATCH_SIZE + "}")
+  private int archiveBatchSize = DEFAULT_ARCHIVE_BATCH_SIZE;
+
+  @Value("${bluegreen.history.archiveIntervalHours:" + DEFAULT_ARCHIVE_INTERVAL_HOURS + "}")
+  private long archiveIntervalHours = DEFAULT_ARCHIVE_INTERVAL_HOURS;
+
+  private ScheduledExecutorService archiveService;
+
+  /**
+   * Schedules the archiving, unless retention is off (zero days).
+   */
+  public synchronized void start()
+  {
+    if (retentionDays <= 0 || archiveService != null)
+    {
+      return;
+    }
+    archiveService = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+    {
+      @Override
+      public Thread newThread(Runnable runnable)
+      {
+        Thread thread = new Thread(runnable, "history-retention");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    archiveService.scheduleWithFixedDelay(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        try
+        {
+          archiveOldHistory();
+        }
+        catch (RuntimeException e)
+        {
+          LOGGER.warn("Failed to archive old job history, will retry in " + archiveIntervalHours + " hours", e);
+        }
+      }
+    }, TimeUnit.MINUTES.toMillis(INITIAL_DELAY_MINUTES), TimeUnit.HOURS.toMillis(archiveIntervalHours),
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops the archiving.  A batch in progress is interrupted between transactions.
+   */
+  public synchronized void stop()
+  {
+    if (archiveService != null)
+    {
+      archiveService.shutdownNow();
+      archiveService = null;
+    }
+  }
+
+  /**
+   * Moves every closed job history older than the retention to the archive tables, a batch at a time.  Returns the
+   * number of job histories moved.
+   */
+  public int archiveOldHistory()
+  {
+    Timestamp cutoff = new Timestamp(nowFactory.now().getTime() - retentionDays * MILLISECONDS_PER_DAY);
+    int numArchived = 0;
+    int numInBatch;
+    do
+    {
+      numInBatch = jobHistoryTx.archiveJobHistories(cutoff, archiveBatchSize);
+      numArchived += numInBatch;
+    }
+    while (numInBatch >= archiveBatchSize && !Thread.currentThread().isInterrupted());
+    if (numArchived > 0)
+    {
+      LOGGER.info("Archived " + numArchived + " job histories started before " + cutoff);
+    }
+    return numArchived;
+  }
+
+  //Test purposes only
+  void setRetentionDays(int retentionDays)
+  {
+    this.retentionDays = retentionDays;
+  }
+
+  //Test purposes only
+  void setArchiveBatchSize(int archiveBatchSize)
+  {
+    this.archiveBatchSize = archiveBatchSize;
+  }
+}
@@ -2,16 +2,18 @@ package bluegreen.manager.model.tx;
 
 import java.sql.Timestamp;
 import java.util.Date;
+import java.util.List;
 import javax.transaction.Transactional;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import bluegreen.manager.jobs.Job;
+import bluegreen.manager.model.dao.FreezeWindowDAO;
 import bluegreen.manager.model.dao.JobHistoryDAO;
+import bluegreen.manager.model.dao.TaskHistoryDAO;
 import bluegreen.manager.model.domain.JobHistory;
 import bluegreen.manager.model.domain.JobStatus;
-import bluegreen.manager.model.domain.TaskHistory;
 import bluegreen.manager.utils.NowFactory;
 
 /**
@@ -27,32 +29,19 @@ public class JobHistoryTx
   @Autowired
   private JobHistoryDAO jobHistoryDAO;
 
+  @Autowired
+  private TaskHistoryDAO taskHistoryDAO;
+
+  @Autowired
+  private FreezeWindowDAO freezeWindowDAO;
+
   /**
-   * Looks up the prior old job history (if recent enough).  Actively loads its task histories.
+   * Looks up the prior old job history (if recent enough), along with its task histories.
    */
   public JobHistory findLastRelevantJobHistory(String jobName, String env1, String env2, String commandLine,
                                                boolean noop, long maxAge)
   {
-    JobHistory jobHistory = jobHistoryDAO.findLastRelevantJobHistory(jobName, env1, env2, maxAge);
-    activeLoadTaskHistories(jobHistory);
-    return jobHistory;
-  }
-
-  /**
-   * Actively loads the job's task histories, while the tx is open.
-   */
-  private void activeLoadTaskHistories(JobHistory jobHistory)
-  {
-    if (jobHistory != null)
-    {
-      if (jobHistory.getTaskHistories() != null)
-      {
-        for (TaskHistory taskHistory : jobHistory.getTaskHistories())
-        {
-          //Nothing but the load
-        }
-      }
-    }
+    return jobHistoryDAO.findLastRelevantJobHistory(jobName, env1, env2, maxAge);
   }
 
   /**
@@ -88,6 +77,31 @@ public class JobHistoryTx
     jobHistoryDAO.merge(jobHistory);
   }
 
+  /**
+   * Moves up to maxJobs closed job histories that started before the cutoff, oldest first, to the archive tables,
+   * along with their task histories and freeze windows.  Returns the number of job histories moved.
+   */
+  public int archiveJobHistories(Timestamp cutoff, int maxJobs)
+  {
+    List<Long> ids = jobHistoryDAO.findClosedIdsStartedBefore(cutoff, maxJobs);
+    if (ids.isEmpty())
+    {
+      return 0;
+    }
+    freezeWindowDAO.archiveByJobHistoryIds(ids);
+    taskHistoryDAO.archiveByJobHistoryIds(ids);
+    return jobHistoryDAO.archive(ids);
+  }
+
+  /**
+   * Reads one page of job runs with their task histories, for analysis.  See JobHistoryDAO.findRunsAfter.
+   */
+  public List<JobHistory> findRunsAfter(boolean archived, long afterJobHistoryId, Timestamp since, String jobName,
+                                        String envName, int maxRows)
+  {
+    return jobHistoryDAO.findRunsAfter(archived, afterJobHistoryId, since, jobName, envName, maxRows);
+  }
+
   /**
    * Throws if the jobHistory is a new entity.
    */
@@ -24,7 +24,7 @@ import bluegreen.manager.model.domain.PhysicalDatabase;
 public class OneEnvLoader
 {
   @Autowired
-  private EnvironmentTx environmentTx;
+  private EnvironmentCache environmentCache;
 
   @Autowired
   private EnvironmentHelper environmentHelper;
@@ -33,8 +33,7 @@ public class OneEnvLoader
   private Environment environment;
   private ApplicationVm applicationVm;
   private Application application;
-  private LogicalDatabase logicalDatabase;
-  private PhysicalDatabase physicalDatabase;
+  private List<LogicalDatabase> logicalDatabases;
 
   /**
    * Fully loads the environment but asserts no preconditions on what is inside the environment.
@@ -44,7 +43,7 @@ public class OneEnvLoader
    */
   public void loadEnvironmentSimple()
   {
-    this.environment = environmentTx.findNamedEnv(envName);
+    this.environment = environmentCache.findNamedEnv(envName);
   }
 
   /**
@@ -53,7 +52,7 @@ public class OneEnvLoader
    */
   public void loadApplicationVm(boolean createVm)
   {
-    this.environment = environmentTx.findNamedEnv(envName);
+    this.environment = environmentCache.findNamedEnv(envName);
     findApplicationVmFromEnvironment(createVm);
   }
 
@@ -68,15 +67,17 @@ public class OneEnvLoader
   }
 
   /**
-   * Loads the environment on the assumption that there is exactly 1 logicaldb and 1 physicaldb.
+   * Loads the environment on the assumption that there is at least 1 logicaldb, each with 1 physicaldb.
    * Does not assert the existence of an application vm or application.
    */
-  public void loadPhysicalDatabase()
+  public void loadPhysicalDatabases()
   {
-    this.environment = environmentTx.findNamedEnv(envName);
-    this.logicalDatabase = findLogicalDatabaseFromEnvironment();
-    this.physicalDatabase = logicalDatabase.getPhysicalDatabase();
-    checkPhysicalDatabase();
+    this.environment = environmentCache.findNamedEnv(envName);
+    this.logicalDatabases = findLogicalDatabasesFromEnvironment();
+    for (LogicalDatabase logicalDatabase : logicalDatabases)
+    {
+      checkPhysicalDatabase(logicalDatabase);
+    }
   }
 
   /**
@@ -149,39 +150,42 @@ public class OneEnvLoader
   }
 
   /**
-   * Gets the env's persisted logicaldb record.  Requires exactly 1.
+   * Gets the env's persisted logicaldb records.  Requires at least 1, all with nonblank names.
    */
-  private LogicalDatabase findLogicalDatabaseFromEnvironment()
+  private List<LogicalDatabase> findLogicalDatabasesFromEnvironment()
   {
     List<LogicalDatabase> logicalDatabases = environment.getLogicalDatabases();
     if (CollectionUtils.isEmpty(logicalDatabases))
     {
       throw new IllegalStateException(context() + "No logical databases");
     }
-    else if (logicalDatabases.size() > 1)
+    for (LogicalDatabase logicalDatabase : logicalDatabases)
     {
-      throw new UnsupportedOperationException(context() + "Currently only support case of 1 logicalDatabase, but env has "
-          + logicalDatabases.size() + ": " + environmentHelper.listOfNames(logicalDatabases));
-    }
-    else if (StringUtils.isBlank(logicalDatabases.get(0).getLogicalName()))
-    {
-      throw new IllegalStateException(context() + "Live logical database has blank name");
+      if (StringUtils.isBlank(logicalDatabase.getLogicalName()))
+      {
+        throw new IllegalStateException(context() + "Logical database has blank name, env has "
+            + environmentHelper.listOfNames(logicalDatabases));
+      }
     }
-    return logicalDatabases.get(0);
+    return logicalDatabases;
   }
 
   /**
-   * Sanity checks the physical database.  Callers may need to perform additional task-specific checks.
+   * Sanity checks the physical database of the logicaldb.  Callers may need to perform additional task-specific
+   * checks.
    */
-  private void checkPhysicalDatabase()
+  private void checkPhysicalDatabase(LogicalDatabase logicalDatabase)
   {
+    PhysicalDatabase physicalDatabase = logicalDatabase.getPhysicalDatabase();
     if (physicalDatabase == null)
     {
-      throw new IllegalStateException(context() + "No physical database");
+      throw new IllegalStateException(context() + "No physical database for logical database '"
+          + logicalDatabase.getLogicalName() + "'");
     }
     else if (StringUtils.isBlank(physicalDatabase.getInstanceName()))
     {
-      throw new IllegalArgumentException(context() + "Physical database has blank instance name");
+      throw new IllegalArgumentException(context() + "Physical database of logical database '"
+          + logicalDatabase.getLogicalName() + "' has blank instance name");
     }
   }
 
@@ -205,13 +209,8 @@ public class OneEnvLoader
     return application;
   }
 
-  public LogicalDatabase getLogicalDatabase()
-  {
-    return logicalDatabase;
-  }
-
-  public PhysicalDatabase getPhysicalDatabase()
+  public List<LogicalDatabase> getLogicalDatabases()
   {
-    return physicalDatabase;
+    return logicalDatabases;
   }
 }
@@ -0,0 +1,97 @@
+package bluegreen.manager.model.tx;
+
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+import javax.transaction.Transactional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import bluegreen.manager.model.dao.StandbyDatabaseDAO;
+import bluegreen.manager.model.domain.StandbyDatabase;
+import bluegreen.manager.model.domain.StandbyStatus;
+import bluegreen.manager.utils.NowFactory;
+
+/**
+ * Serves transactional db queries related to StandbyDatabase.
+ * <p/>
+ * Every state change is its own transaction, so the pool state in the db is always what RDS was last told.
+ */
+@Transactional
+@Component
+public class StandbyDatabaseTx
+{
+  @Autowired
+  private NowFactory nowFactory;
+
+  @Autowired
+  private StandbyDatabaseDAO standbyDatabaseDAO;
+
+  /**
+   * Records a new standby which the caller is about to restore.  The caller holds the lease while it builds.
+   */
+  public StandbyDatabase newStandby(String envName, String logicalName, String instanceName,
+                                    String snapshotId, Date snapshotTime, String leaseOwner)
+  {
+    StandbyDatabase standbyDatabase = new StandbyDatabase();
+    standbyDatabase.setEnvName(envName);
+    standbyDatabase.setLogicalName(logicalName);
+    standbyDatabase.setInstanceName(instanceName);
+    standbyDatabase.setSnapshotId(snapshotId);
+    standbyDatabase.setSnapshotTime(new Timestamp(snapshotTime.getTime()));
+    standbyDatabase.setStatus(StandbyStatus.BUILDING);
+    standbyDatabase.setLeaseOwner(leaseOwner);
+    standbyDatabase.setLeaseTime(new Timestamp(nowFactory.now().getTime()));
+    standbyDatabaseDAO.persist(standbyDatabase);
+    return standbyDatabase;
+  }
+
+  /**
+   * Releases the builder's lease, making the standby claimable.
+   */
+  public void markReady(long standbyId)
+  {
+    StandbyDatabase standbyDatabase = standbyDatabaseDAO.find(standbyId);
+    standbyDatabase.setStatus(StandbyStatus.READY);
+    standbyDatabase.setLeaseOwner(null);
+    standbyDatabase.setLeaseTime(null);
+  }
+
+  /**
+   * Leases the freshest ready standby of the live logical database to leaseOwner, provided its snapshot is no older
+   * than minSnapshotTime.  Returns null if there is none.
+   */
+  public StandbyDatabase claim(String envName, String logicalName, Date minSnapshotTime, String leaseOwner)
+  {
+    StandbyDatabase standbyDatabase = standbyDatabaseDAO.findFreshestReady(envName, logicalName,
+        new Timestamp(minSnapshotTime.getTime()));
+    if (standbyDatabase != null)
+    {
+      standbyDatabase.setStatus(StandbyStatus.CLAIMED);
+      standbyDatabase.setLeaseOwner(leaseOwner);
+      standbyDatabase.setLeaseTime(new Timestamp(nowFactory.now().getTime()));
+    }
+    return standbyDatabase;
+  }
+
+  /**
+   * Removes the standby record.  Used when the instance has been deleted, or has become a stage database.
+   */
+  public void forget(long standbyId)
+  {
+    StandbyDatabase standbyDatabase = standbyDatabaseDAO.find(standbyId);
+    if (standbyDatabase != null)
+    {
+      standbyDatabaseDAO.remove(standbyDatabase);
+    }
+  }
+
+  /**
+   * Returns all standbys of the live logical database, in any status.
+   */
+  public List<StandbyDatabase> findStandbys(String envName, String logicalName)
+  {
+    return standbyDatabaseDAO.findByEnvAndLogicalName(envName, logicalName);
+  }
+}
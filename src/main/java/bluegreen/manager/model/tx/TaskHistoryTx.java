@@ -15,6 +15,9 @@ import bluegreen.manager.utils.NowFactory;
 
 /**
  * Serves transactional db queries related to Task and TaskHistory.  New TaskHistory bubbles up to the parent job.
+ * <p/>
+ * Tasks of one job may run concurrently, so additions to the parent job's task history list are synchronized on the
+ * parent.
  */
 @Transactional
 @Component
@@ -42,7 +45,10 @@ public class TaskHistoryTx
     newTaskHistory.setPosition(task.getPosition());
     newTaskHistory.setTaskName(task.getName());
     newTaskHistory.setStatus(TaskStatus.PROCESSING);
-    jobHistory.addTaskHistory(newTaskHistory);
+    synchronized (jobHistory)
+    {
+      jobHistory.addTaskHistory(newTaskHistory);
+    }
     taskHistoryDAO.persist(newTaskHistory);
     return newTaskHistory;
   }
@@ -63,7 +69,10 @@ public class TaskHistoryTx
     newTaskHistory.setPosition(task.getPosition());
     newTaskHistory.setTaskName(task.getName());
     newTaskHistory.setStatus(TaskStatus.SKIPPED);
-    jobHistory.addTaskHistory(newTaskHistory);
+    synchronized (jobHistory)
+    {
+      jobHistory.addTaskHistory(newTaskHistory);
+    }
     taskHistoryDAO.persist(newTaskHistory);
     return newTaskHistory;
   }
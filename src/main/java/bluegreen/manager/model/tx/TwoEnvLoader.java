@@ -1,5 +1,6 @@
 package bluegreen.manager.model.tx;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.collections4.CollectionUtils;
@@ -20,8 +21,8 @@ import bluegreen.manager.model.domain.PhysicalDatabase;
  * Live env should already be fully populated (env, vm, app, db); the stage env should be as well except for the
  * Application record.
  * <p/>
- * Currently requires that the envs have exactly one applicationVm, one logical/physicaldb, and that the live env
- * has exactly one application.
+ * Currently requires that the envs have exactly one applicationVm, the same logicaldbs (by name) each with a
+ * physicaldb, and that the live env has exactly one application.
  */
 @Lazy
 @Component
@@ -29,7 +30,10 @@ import bluegreen.manager.model.domain.PhysicalDatabase;
 public class TwoEnvLoader
 {
   @Autowired
-  private EnvironmentTx environmentTx;
+  private EnvironmentCache environmentCache;
+
+  @Autowired
+  private EnvironmentHelper environmentHelper;
 
   private String liveEnvName;
   private String stageEnvName;
@@ -37,23 +41,26 @@ public class TwoEnvLoader
   private Environment liveEnv;
   private ApplicationVm liveApplicationVm;
   private Application liveApplication;
-  private PhysicalDatabase livePhysicalDatabase;
+  private List<PhysicalDatabase> livePhysicalDatabases;
   private Environment stageEnv;
   private ApplicationVm stageApplicationVm;
-  private PhysicalDatabase stagePhysicalDatabase;
+  private List<PhysicalDatabase> stagePhysicalDatabases; //Same order as livePhysicalDatabases
 
   /**
    * Loads datamodel entities and asserts preconditions on them.
    */
   public void loadDataModel()
   {
-    this.liveEnv = environmentTx.findNamedEnv(liveEnvName);
-    this.stageEnv = environmentTx.findNamedEnv(stageEnvName);
+    this.liveEnv = environmentCache.findNamedEnv(liveEnvName);
+    this.stageEnv = environmentCache.findNamedEnv(stageEnvName);
     this.liveApplicationVm = findApplicationVmFromEnvironment(liveEnv);
     this.liveApplication = findApplicationFromVm(this.liveApplicationVm);
     this.stageApplicationVm = findApplicationVmFromEnvironment(stageEnv);
-    this.livePhysicalDatabase = findPhysicalDatabaseFromEnvironment(liveEnv);
-    this.stagePhysicalDatabase = findPhysicalDatabaseFromEnvironment(stageEnv);
+    List<LogicalDatabase> liveLogicalDatabases = findLogicalDatabasesFromEnvironment(liveEnv);
+    List<LogicalDatabase> stageLogicalDatabases = environmentHelper.matchStageLogicalDatabases(liveLogicalDatabases,
+        findLogicalDatabasesFromEnvironment(stageEnv));
+    this.livePhysicalDatabases = findPhysicalDatabases(liveEnv, liveLogicalDatabases);
+    this.stagePhysicalDatabases = findPhysicalDatabases(stageEnv, stageLogicalDatabases);
   }
 
   private String context(Environment environment)
@@ -105,34 +112,41 @@ public class TwoEnvLoader
   }
 
   /**
-   * Gets the env's persisted physicaldb record.  Requires exactly 1.
+   * Gets the physicaldb records of the logicaldbs, in the same order.  Requires 1 per logicaldb.
    */
-  private PhysicalDatabase findPhysicalDatabaseFromEnvironment(Environment environment)
+  private List<PhysicalDatabase> findPhysicalDatabases(Environment environment, List<LogicalDatabase> logicalDatabases)
   {
-    LogicalDatabase logicalDatabase = findLogicalDatabaseFromEnvironment(environment);
-    return logicalDatabase.getPhysicalDatabase();
+    List<PhysicalDatabase> physicalDatabases = new ArrayList<PhysicalDatabase>();
+    for (LogicalDatabase logicalDatabase : logicalDatabases)
+    {
+      if (logicalDatabase.getPhysicalDatabase() == null)
+      {
+        throw new IllegalStateException(context(environment) + "No physical database for logical database '"
+            + logicalDatabase.getLogicalName() + "'");
+      }
+      physicalDatabases.add(logicalDatabase.getPhysicalDatabase());
+    }
+    return physicalDatabases;
   }
 
   /**
-   * Gets the env's persisted logicaldb record.  Requires exactly 1.
+   * Gets the env's persisted logicaldb records.  Requires at least 1, all with nonblank names.
    */
-  private LogicalDatabase findLogicalDatabaseFromEnvironment(Environment environment)
+  private List<LogicalDatabase> findLogicalDatabasesFromEnvironment(Environment environment)
   {
     List<LogicalDatabase> logicalDatabases = environment.getLogicalDatabases();
     if (CollectionUtils.isEmpty(logicalDatabases))
     {
       throw new IllegalStateException(context(environment) + "No logical databases");
     }
-    else if (logicalDatabases.size() > 1)
+    for (LogicalDatabase logicalDatabase : logicalDatabases)
     {
-      throw new UnsupportedOperationException(context(environment) + "Currently only support case of 1 logicalDatabase, but live env has "
-          + logicalDatabases.size()); // + ": " + listOfNames(logicalDatabases));
-    }
-    else if (StringUtils.isBlank(logicalDatabases.get(0).getLogicalName()))
-    {
-      throw new IllegalStateException(context(environment) + "Logical database has blank name");
+      if (StringUtils.isBlank(logicalDatabase.getLogicalName()))
+      {
+        throw new IllegalStateException(context(environment) + "Logical database has blank name");
+      }
     }
-    return logicalDatabases.get(0);
+    return logicalDatabases;
   }
 
   public String getLiveEnvName()
@@ -170,9 +184,9 @@ public class TwoEnvLoader
     return liveApplication;
   }
 
-  public PhysicalDatabase getLivePhysicalDatabase()
+  public List<PhysicalDatabase> getLivePhysicalDatabases()
   {
-    return livePhysicalDatabase;
+    return livePhysicalDatabases;
   }
 
   public Environment getStageEnv()
@@ -185,8 +199,11 @@ public class TwoEnvLoader
     return stageApplicationVm;
   }
 
-  public PhysicalDatabase getStagePhysicalDatabase()
+  /**
+   * The stage physicaldbs, in the order of their live counterparts in {@link #getLivePhysicalDatabases}.
+   */
+  public List<PhysicalDatabase> getStagePhysicalDatabases()
   {
-    return stagePhysicalDatabase;
+    return stagePhysicalDatabases;
   }
 }
@@ -0,0 +1,78 @@
+package bluegreen.manager.model.tx;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.transaction.Transactional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import bluegreen.manager.model.dao.WaitHistoryDAO;
+import bluegreen.manager.model.domain.WaitHistory;
+import bluegreen.manager.utils.NowFactory;
+
+/**
+ * Serves transactional db queries related to WaitHistory.
+ */
+@Transactional
+@Component
+public class WaitHistoryTx
+{
+  /**
+   * Number of recent waits consulted when predicting the duration of an operation.
+   */
+  static final int NUM_RECENT_WAITS = 10;
+
+  /**
+   * Fewer recent waits than this are not enough to make a prediction.
+   */
+  static final int MIN_RECENT_WAITS = 3;
+
+  @Autowired
+  private NowFactory nowFactory;
+
+  @Autowired
+  private WaitHistoryDAO waitHistoryDAO;
+
+  /**
+   * Makes a new WaitHistory for a wait that just ended, and persists it.  Start time is reckoned back from now.
+   */
+  public WaitHistory newWaitHistory(String operation, String policy, boolean done, int numChecks,
+                                    long elapsedMilliseconds, long detectionLagMilliseconds)
+  {
+    WaitHistory waitHistory = new WaitHistory();
+    waitHistory.setOperation(operation);
+    waitHistory.setPolicy(policy);
+    waitHistory.setStartTime(new Timestamp(nowFactory.now().getTime() - elapsedMilliseconds));
+    waitHistory.setDone(done);
+    waitHistory.setNumChecks(numChecks);
+    waitHistory.setElapsedMilliseconds(elapsedMilliseconds);
+    waitHistory.setDetectionLagMilliseconds(detectionLagMilliseconds);
+    waitHistoryDAO.persist(waitHistory);
+    return waitHistory;
+  }
+
+  /**
+   * Predicts how long the operation will take, as the median of its recent successful waits.  Null if there is not
+   * enough history.
+   * <p/>
+   * Each past wait ended somewhere within its detection lag, so we take the midpoint of that interval.
+   */
+  public Long findExpectedDurationMilliseconds(String operation)
+  {
+    List<WaitHistory> waitHistories = waitHistoryDAO.findRecentDone(operation, NUM_RECENT_WAITS);
+    if (waitHistories == null || waitHistories.size() < MIN_RECENT_WAITS)
+    {
+      return null;
+    }
+    List<Long> durations = new ArrayList<Long>();
+    for (WaitHistory waitHistory : waitHistories)
+    {
+      durations.add(waitHistory.getElapsedMilliseconds() - waitHistory.getDetectionLagMilliseconds() / 2);
+    }
+    Collections.sort(durations);
+    return durations.get(durations.size() / 2);
+  }
+}
@@ -0,0 +1,163 @@
+package bluegreen.manager.substituter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static bluegreen.manager.substituter.StringSubstituter.BLEEP;
+import static bluegreen.manager.substituter.StringSubstituter.CLOSE_EXPURGATE;
+import static bluegreen.manager.substituter.StringSubstituter.CLOSE_SUBSTITUTE;
+import static bluegreen.manager.substituter.StringSubstituter.OPEN_EXPURGATE;
+import static bluegreen.manager.substituter.StringSubstituter.OPEN_SUBSTITUTE;
+
+/**
+ * A command string parsed once into literal text and %{..} / %{{..}} variables, so it can be rendered many times in a
+ * single pass.
+ * <p/>
+ * Rendering looks up each variable by name, so its cost depends on the length of the template, not on the number of
+ * available substitutions.  A variable with no value is left as is.  Values are not themselves searched for variables.
+ * <p/>
+ * Immutable, so safe to share between threads and cache.
+ */
+public class CommandTemplate
+{
+  private final String template;
+  private final List<Segment> segments;
+
+  private CommandTemplate(String template, List<Segment> segments)
+  {
+    this.template = template;
+    this.segments = Collections.unmodifiableList(segments);
+  }
+
+  /**
+   * Parses the template string.  An opening %{ or %{{ without its closing braces is literal text.
+   */
+  public static CommandTemplate parse(String template)
+  {
+    List<Segment> segments = new ArrayList<Segment>();
+    if (template != null)
+    {
+      int literalStart = 0;
+      int idx = template.indexOf(OPEN_SUBSTITUTE);
+      while (idx >= 0)
+      {
+        boolean expurgate = template.startsWith(OPEN_EXPURGATE, idx);
+        String close = expurgate ? CLOSE_EXPURGATE : CLOSE_SUBSTITUTE;
+        int keyStart = idx + (expurgate ? OPEN_EXPURGATE.length() : OPEN_SUBSTITUTE.length());
+        int keyEnd = template.indexOf(close, keyStart);
+        if (keyEnd < 0)
+        {
+          idx = template.indexOf(OPEN_SUBSTITUTE, idx + 1);
+          continue;
+        }
+        if (idx > literalStart)
+        {
+          segments.add(Segment.literal(template.substring(literalStart, idx)));
+        }
+        literalStart = keyEnd + close.length();
+        segments.add(Segment.variable(template.substring(idx, literalStart), template.substring(keyStart, keyEnd),
+            expurgate));
+        idx = template.indexOf(OPEN_SUBSTITUTE, literalStart);
+      }
+      if (literalStart < template.length())
+      {
+        segments.add(Segment.literal(template.substring(literalStart)));
+      }
+    }
+    return new CommandTemplate(template, segments);
+  }
+
+  /**
+   * Renders the substituted and expurgated results in one pass.
+   *
+   * @param substitutions Values by variable name.
+   * @param fallbacks     Values for variables missing from substitutions (e.g. system environment), or null.
+   */
+  public SubstituterResult render(Map<String, String> substitutions, Map<String, String> fallbacks)
+  {
+    int capacity = template.length() + 16;
+    StringBuilder substituted = new StringBuilder(capacity);
+    StringBuilder expurgated = new StringBuilder(capacity);
+    for (Segment segment : segments)
+    {
+      if (segment.key == null)
+      {
+        substituted.append(segment.text);
+        expurgated.append(segment.text);
+        continue;
+      }
+      String value = substitutions == null ? null : substitutions.get(segment.key);
+      if (value == null && fallbacks != null)
+      {
+        value = fallbacks.get(segment.key);
+      }
+      if (value == null)
+      {
+        substituted.append(segment.text);
+        expurgated.append(segment.text);
+      }
+      else
+      {
+        substituted.append(value);
+        expurgated.append(segment.expurgate ? BLEEP : value);
+      }
+    }
+    return new SubstituterResult(substituted.toString(), expurgated.toString());
+  }
+
+  public String getTemplate()
+  {
+    return template;
+  }
+
+  /**
+   * Number of variable expressions in the template.
+   */
+  public int getNumVariables()
+  {
+    int numVariables = 0;
+    for (Segment segment : segments)
+    {
+      if (segment.key != null)
+      {
+        ++numVariables;
+      }
+    }
+    return numVariables;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "CommandTemplate[" + template + "]";
+  }
+
+  /**
+   * Literal text, or a variable along with its original text.
+   */
+  private static class Segment
+  {
+    private final String text;
+    private final String key;
+    private final boolean expurgate;
+
+    private Segment(String text, String key, boolean expurgate)
+    {
+      this.text = text;
+      this.key = key;
+      this.expurgate = expurgate;
+    }
+
+    private static Segment literal(String text)
+    {
+      return new Segment(text, null, false);
+    }
+
+    private static Segment variable(String text, String key, boolean expurgate)
+    {
+      return new Segment(text, key, expurgate);
+    }
+  }
+}
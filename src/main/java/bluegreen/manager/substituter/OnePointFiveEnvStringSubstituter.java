@@ -1,6 +1,7 @@
 package bluegreen.manager.substituter;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,7 +9,9 @@ import org.springframework.context.annotation.Lazy;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
+import bluegreen.manager.model.domain.LogicalDatabase;
 import bluegreen.manager.model.tx.EnvLoaderFactory;
+import bluegreen.manager.model.tx.EnvironmentHelper;
 import bluegreen.manager.model.tx.OneEnvLoader;
 import static bluegreen.manager.substituter.SubstitutionKeys.LIVE_ENV;
 import static bluegreen.manager.substituter.SubstitutionKeys.PHYSICAL_DB_MAP;
@@ -25,6 +28,9 @@ public class OnePointFiveEnvStringSubstituter extends StringSubstituterBaseImpl
   @Autowired
   private EnvLoaderFactory envLoaderFactory;
 
+  @Autowired
+  private EnvironmentHelper environmentHelper;
+
   private String liveEnvName;
   private String stageEnvName;
   private Map<String, String> extraSubstitutions;
@@ -40,15 +46,15 @@ public class OnePointFiveEnvStringSubstituter extends StringSubstituterBaseImpl
   }
 
   /**
-   * Currently asserting the "2 databases exist" precondition.
+   * Asserts the precondition that both envs have the same logical databases, each with a physical database.
    */
   @Override
   public void loadDataModel() {
     liveEnvLoader = envLoaderFactory.createOne(liveEnvName);
     stageEnvLoader = envLoaderFactory.createOne(stageEnvName);
 
-    liveEnvLoader.loadPhysicalDatabase();
-    stageEnvLoader.loadPhysicalDatabase();
+    liveEnvLoader.loadPhysicalDatabases();
+    stageEnvLoader.loadPhysicalDatabases();
     prepareSubstitutions();
   }
 
@@ -63,16 +69,22 @@ public class OnePointFiveEnvStringSubstituter extends StringSubstituterBaseImpl
   }
 
   /**
-   * Makes a comma-delimited list of two physicaldb properties:
-   * livePhysicalInstName,stagePhysicalInstName
-   * <p/>
-   * Currently only supports mapping 1 physicaldb from live to stage.
+   * Makes a comma-delimited list of physicaldb properties, two per logicaldb, pairing live and stage by logical name:
+   * livePhysicalInstName1,stagePhysicalInstName1,livePhysicalInstName2,stagePhysicalInstName2,...
    */
   private String makePhysicalDbMapString() {
+    List<LogicalDatabase> liveLogicalDatabases = liveEnvLoader.getLogicalDatabases();
+    List<LogicalDatabase> stageLogicalDatabases = environmentHelper.matchStageLogicalDatabases(liveLogicalDatabases,
+        stageEnvLoader.getLogicalDatabases());
     StringBuilder sb = new StringBuilder();
-    sb.append(liveEnvLoader.getPhysicalDatabase().getInstanceName());
-    sb.append(",");
-    sb.append(stageEnvLoader.getPhysicalDatabase().getInstanceName());
+    for (int idx = 0; idx < liveLogicalDatabases.size(); ++idx) {
+      if (idx > 0) {
+        sb.append(",");
+      }
+      sb.append(liveLogicalDatabases.get(idx).getPhysicalDatabase().getInstanceName());
+      sb.append(",");
+      sb.append(stageLogicalDatabases.get(idx).getPhysicalDatabase().getInstanceName());
+    }
     return sb.toString();
   }
 }
\ No newline at end of file
@@ -25,4 +25,9 @@ public interface StringSubstituter
    * Substitutes %{..} and %{{..}} variables in a <tt>command</tt> string.
    */
   SubstituterResult substituteVariables(String command);
+
+  /**
+   * Substitutes %{..} and %{{..}} variables in a command template that has already been parsed.
+   */
+  SubstituterResult substituteVariables(CommandTemplate commandTemplate);
 }
@@ -20,67 +20,25 @@ public abstract class StringSubstituterBaseImpl implements StringSubstituter
   @Override
   public SubstituterResult substituteVariables(String template)
   {
-    if (substitutions == null)
-    {
-      throw new IllegalStateException("Need to initialize substitutions first");
-    }
-    if (StringUtils.isBlank(template))
-    {
-      throw new IllegalArgumentException("Command template is blank");
-    }
-    SubstituterResult result = new SubstituterResult(template, template);
-    substituteWithMap(result, substitutions);
-    substituteWithMap(result, System.getenv()); //e.g. CWD, HOME, USER.  Loses to normal substitutions in case of name conflict.
-    return result;
+    return substituteVariables(CommandTemplate.parse(template));
   }
 
   /**
-   * Replaces variables in the <tt>ongoingResult</tt> using key/value pairs from the <tt>map</tt>.
-   * <p/>
-   *
-   * @param map Specifies key/value substitutions, where the key does NOT include the percent sign and curly braces.
+   * Performs all variable substitutions on the parsed <tt>commandTemplate</tt>, in a single pass that builds both the
+   * substituted and the expurgated result.
    */
-  private void substituteWithMap(SubstituterResult ongoingResult, Map<String, String> map)
+  @Override
+  public SubstituterResult substituteVariables(CommandTemplate commandTemplate)
   {
-    if (map != null)
+    if (substitutions == null)
     {
-      String substituted = ongoingResult.getSubstituted(); //Never null.
-      String expurgated = ongoingResult.getExpurgated(); //Never null.
-      for (Map.Entry<String, String> entry : map.entrySet())
-      {
-        substituted = substitute(substituted, entry.getKey(), entry.getValue());
-        expurgated = expurgate(expurgated, entry.getKey(), entry.getValue());
-      }
-      ongoingResult.setSubstituted(substituted);
-      ongoingResult.setExpurgated(expurgated);
+      throw new IllegalStateException("Need to initialize substitutions first");
     }
-  }
-
-  /**
-   * Performs a key/value substitution on the template, returning the result.
-   * <p/>
-   * Substitutes the actual value for both regular and expurgated variable expressions.
-   * <p/>
-   * Template exits unchanged if the key is not found.
-   */
-  private String substitute(String template, String key, String value)
-  {
-    String substituted = StringUtils.replace(template, OPEN_SUBSTITUTE + key + CLOSE_SUBSTITUTE, value);
-    return StringUtils.replace(substituted, OPEN_EXPURGATE + key + CLOSE_EXPURGATE, value);
-  }
-
-  /**
-   * Performs a key/value substitution on the template, returning the result.
-   * <p/>
-   * Substitutes the actual value for regular variable expressions, and substitutes a bleep for expurgated variable
-   * expressions.
-   * <p/>
-   * Template exits unchanged if the key is not found.
-   */
-  private String expurgate(String template, String key, String value)
-  {
-    String substituted = StringUtils.replace(template, OPEN_SUBSTITUTE + key + CLOSE_SUBSTITUTE, value);
-    return StringUtils.replace(substituted, OPEN_EXPURGATE + key + CLOSE_EXPURGATE, BLEEP);
+    if (commandTemplate == null || StringUtils.isBlank(commandTemplate.getTemplate()))
+    {
+      throw new IllegalArgumentException("Command template is blank");
+    }
+    return commandTemplate.render(substitutions, System.getenv()); //e.g. CWD, HOME, USER.  Loses to normal substitutions in case of name conflict.
   }
 
 }
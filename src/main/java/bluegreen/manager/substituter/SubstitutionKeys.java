@@ -47,10 +47,10 @@ public interface SubstitutionKeys
   String APPLICATION_VM_MAP = "applicationVmMap";
 
   /**
-   * Variable to be substituted with a comma-delimited list of two physicaldb properties:
-   * livePhysicalInstName,stagePhysicalInstName
+   * Variable to be substituted with a comma-delimited list of physicaldb properties, two per logicaldb:
+   * livePhysicalInstName1,stagePhysicalInstName1,livePhysicalInstName2,stagePhysicalInstName2,...
    * <p/>
-   * Currently only supports mapping 1 physicaldb from live to stage.
+   * With one logicaldb this is simply livePhysicalInstName,stagePhysicalInstName.
    */
   String PHYSICAL_DB_MAP = "physicalDbMap";
 
@@ -1,6 +1,7 @@
 package bluegreen.manager.substituter;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,6 +9,7 @@ import org.springframework.context.annotation.Lazy;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
+import bluegreen.manager.model.domain.PhysicalDatabase;
 import bluegreen.manager.model.tx.EnvLoaderFactory;
 import bluegreen.manager.model.tx.TwoEnvLoader;
 import static bluegreen.manager.substituter.SubstitutionKeys.APPLICATION_VM_MAP;
@@ -80,17 +82,24 @@ public class TwoEnvStringSubstituter extends StringSubstituterBaseImpl
   }
 
   /**
-   * Makes a comma-delimited list of two physicaldb properties:
-   * livePhysicalInstName,stagePhysicalInstName
-   * <p/>
-   * Currently only supports mapping 1 physicaldb from live to stage.
+   * Makes a comma-delimited list of physicaldb properties, two per logicaldb:
+   * livePhysicalInstName1,stagePhysicalInstName1,livePhysicalInstName2,stagePhysicalInstName2,...
    */
   private String makePhysicalDbMapString()
   {
+    List<PhysicalDatabase> livePhysicalDatabases = twoEnvLoader.getLivePhysicalDatabases();
+    List<PhysicalDatabase> stagePhysicalDatabases = twoEnvLoader.getStagePhysicalDatabases();
     StringBuilder sb = new StringBuilder();
-    sb.append(twoEnvLoader.getLivePhysicalDatabase().getInstanceName());
-    sb.append(",");
-    sb.append(twoEnvLoader.getStagePhysicalDatabase().getInstanceName());
+    for (int idx = 0; idx < livePhysicalDatabases.size(); ++idx)
+    {
+      if (idx > 0)
+      {
+        sb.append(",");
+      }
+      sb.append(livePhysicalDatabases.get(idx).getInstanceName());
+      sb.append(",");
+      sb.append(stagePhysicalDatabases.get(idx).getInstanceName());
+    }
     return sb.toString();
   }
 
@@ -43,14 +43,14 @@ public abstract class ApplicationTask extends ApplicationVmTask
   }
 
   /**
-   * Initializes an authenticated session with the application.
+   * Opens an authenticated session with the application, reusing a cached login if possible.
    * <p/>
    * Could be called later than {@link #assign(int, String)}.
    */
   void initApplicationSession()
   {
     this.applicationClient = applicationClientFactory.create(application.getUsername(), application.getPassword());
-    this.applicationSession = applicationClient.authenticate(application);
+    this.applicationSession = applicationClient.openSession(application);
   }
 
 }
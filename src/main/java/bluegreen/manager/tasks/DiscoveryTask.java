@@ -4,6 +4,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import bluegreen.manager.client.app.DiscoveryResult;
@@ -19,6 +20,7 @@ import bluegreen.manager.model.domain.TaskStatus;
  */
 @Lazy
 @Component
+@Scope("prototype")
 public class DiscoveryTask extends ApplicationTask
 {
   private static final Logger LOGGER = LoggerFactory.getLogger(DiscoveryTask.class);
@@ -1,13 +1,9 @@
 package bluegreen.manager.tasks;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.regex.Matcher;
+import java.util.regex.MatchResult;
 import java.util.regex.Pattern;
 
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang3.time.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -22,6 +18,8 @@ import bluegreen.manager.model.tx.EnvironmentTx;
 import bluegreen.manager.substituter.SubstituterResult;
 import bluegreen.manager.utils.ProcessBuilderAdapter;
 import bluegreen.manager.utils.ProcessBuilderAdapterFactory;
+import bluegreen.manager.utils.ProcessStats;
+import bluegreen.manager.utils.ShellOutputScanner;
 
 /**
  * Includes functionality that separates the Environment build task from a normal shell task,
@@ -72,76 +70,34 @@ public class EnvironmentBuildTask extends ShellTask {
     TaskStatus taskStatus = TaskStatus.NOOP;
     if (!noop) {
       checkConfig();
-      SubstituterResult command = stringSubstituter.substituteVariables(shellConfig.getCommand());
+      SubstituterResult command = stringSubstituter.substituteVariables(shellConfig.getCommandTemplate());
       String[] commandTokens = command.getSubstituted().split("\\s+");
-      ProcessBuilderAdapter processBuilderAdapter = processBuilderAdapterFactory.create(commandTokens)
-          .redirectErrorStream(true);
+      ProcessBuilderAdapter processBuilderAdapter = processBuilderAdapterFactory.create(commandTokens);
       LOGGER.info("Executing command '" + command.getExpurgated() + "'");
-      StopWatch stopWatch = new StopWatch();
-      Process process = null;
       try {
-        stopWatch.start();
-        process = processBuilderAdapter.start();
-        taskStatus = handleProcessTracking(process, noop);
+        taskStatus = handleProcessTracking(processBuilderAdapter, noop);
       } catch (IOException e) {
         LOGGER.error("Shell command failed: " + command.getExpurgated(), e);
         taskStatus = TaskStatus.ERROR;
       } catch (InterruptedException e) {
         LOGGER.error("Shell command interrupted: " + command.getExpurgated(), e);
+        Thread.currentThread().interrupt();
         taskStatus = TaskStatus.ERROR;
-      } finally {
-        stopWatch.stop();
-        LOGGER.debug("Time elapsed: " + stopWatch);
-        closeProcessStreams(process);
       }
     }
     return taskStatus;
   }
 
-  /**
-   * Iterates over the process stdout until there is no more.  Blocks til the process is done.
-   * Returns the output as a single string.
-   * <p/>
-   * Also logs the process exit value.
-   */
-  private String blockAndLogOutput(Process process) throws IOException, InterruptedException {
-    // Yes, stdout is 'getInputStream'.
-    StringBuilder sb = new StringBuilder();
-    LOGGER.debug("---------- OUTPUT BEGINS ----------");
-    BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-    String line;
-    while ((line = reader.readLine()) != null) {
-      LOGGER.debug(line);
-      sb.append(line + "\n");
-    }
-    LOGGER.debug("---------- OUTPUT ENDS ----------");
-    logExitValue(process.waitFor());
-    return sb.toString();
-  }
-
-  /**
-   * Closes all i/o streams, whether used or not.  It's not clear whether this is necessary after waitFor,
-   * but better safe than sorry.
-   */
-  private void closeProcessStreams(Process process) {
-    if (process != null) {
-      LOGGER.debug("Closing process i/o streams");
-      IOUtils.closeQuietly(process.getInputStream());
-      IOUtils.closeQuietly(process.getErrorStream());
-      IOUtils.closeQuietly(process.getOutputStream());
-    }
-  }
-
-  private TaskStatus handleProcessTracking(Process process, boolean noop) throws InterruptedException, IOException {
-    String output = blockAndLogOutput(process);
-    TaskStatus status = checkForErrors(output, process.exitValue());
-
-    Pattern pattern = Pattern.compile(shellConfig.getRegexpSuccess());
-    Matcher matcher = pattern.matcher(output);
+  private TaskStatus handleProcessTracking(ProcessBuilderAdapter processBuilderAdapter, boolean noop)
+      throws InterruptedException, IOException {
+    ShellOutputScanner scanner = makeOutputScanner(Pattern.compile(shellConfig.getRegexpSuccess()));
+    ProcessStats processStats = runAndScanOutput(processBuilderAdapter, scanner);
+    TaskStatus status = checkForErrors(scanner, processStats);
 
-    if (matcher.find()) {
-      ipAddress = matcher.group(1);
-      hostname = matcher.group(2);
+    MatchResult match = scanner.getCaptureMatch();
+    if (match != null) {
+      ipAddress = match.group(1);
+      hostname = match.group(2);
       persistModel(noop);
     } else {
       LOGGER.warn("Failed to find IP/hostname in the output of bluegreen-build-environment");
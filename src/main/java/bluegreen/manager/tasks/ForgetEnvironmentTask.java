@@ -4,6 +4,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import bluegreen.manager.model.domain.Environment;
@@ -19,6 +20,7 @@ import bluegreen.manager.model.tx.OneEnvLoader;
  */
 @Lazy
 @Component
+@Scope("prototype")
 public class ForgetEnvironmentTask extends TaskImpl
 {
   private static final Logger LOGGER = LoggerFactory.getLogger(ForgetEnvironmentTask.class);
@@ -68,6 +70,15 @@ public class ForgetEnvironmentTask extends TaskImpl
     return noop ? TaskStatus.NOOP : TaskStatus.DONE;
   }
 
+  /**
+   * A forgotten environment cannot be loaded by a rerun.
+   */
+  @Override
+  public boolean isIrreversible()
+  {
+    return true;
+  }
+
   /**
    * Opens a transaction to persist the removal of the environment entity.
    */
@@ -0,0 +1,192 @@
+package bluegreen.manager.tasks;
+
+import java.sql.Timestamp;
+import java.util.Date;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import bluegreen.manager.client.app.DbFreezeMode;
+import bluegreen.manager.model.domain.FreezeWindow;
+import bluegreen.manager.utils.NowFactory;
+
+/**
+ * Tracks the freeze window of one job run, as reported by the freeze, snapshot and thaw tasks, and holds its budget.
+ * <p/>
+ * The budget bounds the time from the freeze request until the snapshots are available.  A task waiting within the
+ * window asks for the remaining budget, and reports when it has run out.  Zero budget means unlimited.
+ * <p/>
+ * Tasks of one job may run on different threads, hence the synchronization.
+ */
+public class FreezeWindowTracker
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(FreezeWindowTracker.class);
+
+  private final NowFactory nowFactory;
+  private final String envName;
+  private final long budgetSeconds;
+
+  private Date freezeRequestedTime;
+  private Date frozenTime;
+  private Date snapshotStartedTime;
+  private Date snapshotAvailableTime;
+  private Date thawRequestedTime;
+  private Date normalTime;
+  private boolean budgetExceeded;
+
+  public FreezeWindowTracker(NowFactory nowFactory, String envName, long budgetSeconds)
+  {
+    this.nowFactory = nowFactory;
+    this.envName = envName;
+    this.budgetSeconds = budgetSeconds;
+  }
+
+  /**
+   * Records that the app was asked to move to the destination mode: FROZEN opens the window, NORMAL starts to
+   * close it.
+   */
+  public synchronized void transitionRequested(DbFreezeMode destinationMode)
+  {
+    if (destinationMode == DbFreezeMode.FROZEN)
+    {
+      freezeRequestedTime = record("Freeze requested");
+    }
+    else if (destinationMode == DbFreezeMode.NORMAL)
+    {
+      thawRequestedTime = record("Thaw requested");
+    }
+  }
+
+  /**
+   * Records that the app reached the destination mode.
+   */
+  public synchronized void transitionReached(DbFreezeMode destinationMode)
+  {
+    if (destinationMode == DbFreezeMode.FROZEN)
+    {
+      frozenTime = record("App is FROZEN");
+    }
+    else if (destinationMode == DbFreezeMode.NORMAL)
+    {
+      normalTime = record("App is NORMAL");
+    }
+  }
+
+  public synchronized void snapshotStarted()
+  {
+    snapshotStartedTime = record("Snapshots started");
+  }
+
+  public synchronized void snapshotAvailable()
+  {
+    snapshotAvailableTime = record("Snapshots available");
+  }
+
+  /**
+   * Records that the snapshots overran the budget.  The job must now thaw early.
+   */
+  public synchronized void budgetExceeded()
+  {
+    budgetExceeded = true;
+    record("Freeze budget of " + budgetSeconds + " seconds exceeded");
+  }
+
+  /**
+   * Returns the milliseconds left in the budget, or null if unlimited.  Never negative.
+   */
+  public synchronized Long getRemainingBudgetMilliseconds()
+  {
+    if (budgetSeconds <= 0)
+    {
+      return null;
+    }
+    long used = freezeRequestedTime == null ? 0L : nowFactory.now().getTime() - freezeRequestedTime.getTime();
+    return Math.max(0L, budgetSeconds * 1000L - used);
+  }
+
+  public synchronized boolean isBudgetExceeded()
+  {
+    return budgetExceeded;
+  }
+
+  /**
+   * True if the app was asked to freeze and has not yet been asked to thaw.
+   */
+  public synchronized boolean isThawPending()
+  {
+    return freezeRequestedTime != null && thawRequestedTime == null;
+  }
+
+  /**
+   * True if anything was recorded, i.e. the window opened.
+   */
+  public synchronized boolean isOpened()
+  {
+    return freezeRequestedTime != null;
+  }
+
+  /**
+   * Milliseconds from the freeze request to NORMAL, or to the last recorded step if the app is not back to NORMAL.
+   */
+  public synchronized long getWindowMilliseconds()
+  {
+    if (freezeRequestedTime == null)
+    {
+      return 0L;
+    }
+    Date end = freezeRequestedTime;
+    for (Date date : new Date[] { frozenTime, snapshotStartedTime, snapshotAvailableTime, thawRequestedTime, normalTime })
+    {
+      if (date != null && date.after(end))
+      {
+        end = date;
+      }
+    }
+    return end.getTime() - freezeRequestedTime.getTime();
+  }
+
+  /**
+   * Makes a new unpersisted entity from the recorded window.
+   */
+  public synchronized FreezeWindow makeFreezeWindow()
+  {
+    FreezeWindow freezeWindow = new FreezeWindow();
+    freezeWindow.setEnvName(envName);
+    freezeWindow.setFreezeRequestedTime(toTimestamp(freezeRequestedTime));
+    freezeWindow.setFrozenTime(toTimestamp(frozenTime));
+    freezeWindow.setSnapshotStartedTime(toTimestamp(snapshotStartedTime));
+    freezeWindow.setSnapshotAvailableTime(toTimestamp(snapshotAvailableTime));
+    freezeWindow.setThawRequestedTime(toTimestamp(thawRequestedTime));
+    freezeWindow.setNormalTime(toTimestamp(normalTime));
+    freezeWindow.setWindowMilliseconds(getWindowMilliseconds());
+    freezeWindow.setBudgetSeconds(budgetSeconds);
+    freezeWindow.setBudgetExceeded(budgetExceeded);
+    return freezeWindow;
+  }
+
+  /**
+   * Stamps the current time and logs the step with the time elapsed so far in the window.
+   */
+  private Date record(String step)
+  {
+    Date now = nowFactory.now();
+    long elapsed = freezeRequestedTime == null ? 0L : now.getTime() - freezeRequestedTime.getTime();
+    LOGGER.info("Freeze window of env '" + envName + "': " + step + " at +" + elapsed + "ms");
+    return now;
+  }
+
+  private static Timestamp toTimestamp(Date date)
+  {
+    return date == null ? null : new Timestamp(date.getTime());
+  }
+
+  public String getEnvName()
+  {
+    return envName;
+  }
+
+  public long getBudgetSeconds()
+  {
+    return budgetSeconds;
+  }
+}
@@ -1,11 +1,7 @@
 package bluegreen.manager.tasks;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang3.time.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,6 +13,8 @@ import bluegreen.manager.model.domain.TaskStatus;
 import bluegreen.manager.substituter.SubstituterResult;
 import bluegreen.manager.utils.ProcessBuilderAdapter;
 import bluegreen.manager.utils.ProcessBuilderAdapterFactory;
+import bluegreen.manager.utils.ProcessStats;
+import bluegreen.manager.utils.ShellOutputScanner;
 
 /**
  * Runs a configurable command locally that requires read access to the data model of liveEnv and stageEnv.
@@ -24,9 +22,8 @@ import bluegreen.manager.utils.ProcessBuilderAdapterFactory;
  * <p/>
  * Command is expected to run in the foreground, and does not provide a "checking service" to report on progress,
  * hence there is no Waiter or ProgressChecker here.  No analysis is performed on the results except to know whether
- * the command succeeded or failed.
- * <p/>
- * Currently no support for timeout.
+ * the command succeeded or failed.  The output is checked line by line as it streams, and the command is killed as
+ * soon as a line matches the error regexp, or when it runs past the timeout of its shell config.
  */
 @Lazy
 @Component
@@ -52,18 +49,13 @@ public class LocalShellTask extends ShellTask
     if (!noop)
     {
       checkConfig();
-      SubstituterResult command = stringSubstituter.substituteVariables(shellConfig.getCommand());
+      SubstituterResult command = stringSubstituter.substituteVariables(shellConfig.getCommandTemplate());
       String[] commandTokens = command.getSubstituted().split("\\s+");
-      ProcessBuilderAdapter processBuilderAdapter = processBuilderAdapterFactory.create(commandTokens)
-          .redirectErrorStream(true);
+      ProcessBuilderAdapter processBuilderAdapter = processBuilderAdapterFactory.create(commandTokens);
       LOGGER.info("Executing command '" + command.getExpurgated() + "'");
-      StopWatch stopWatch = new StopWatch();
-      Process process = null;
       try
       {
-        stopWatch.start();
-        process = processBuilderAdapter.start();
-        taskStatus = handleProcessTracking(process, noop);
+        taskStatus = handleProcessTracking(processBuilderAdapter, noop);
       }
       catch (IOException e)
       {
@@ -73,58 +65,17 @@ public class LocalShellTask extends ShellTask
       catch (InterruptedException e)
       {
         LOGGER.error("Shell command interrupted: " + command.getExpurgated(), e);
+        Thread.currentThread().interrupt();
         taskStatus = TaskStatus.ERROR;
       }
-      finally
-      {
-        stopWatch.stop();
-        LOGGER.debug("Time elapsed: " + stopWatch);
-        closeProcessStreams(process);
-      }
     }
     return taskStatus;
   }
 
-  protected TaskStatus handleProcessTracking(Process process, boolean noop) throws InterruptedException, IOException {
-    String output = blockAndLogOutput(process);
-    return checkForErrors(output, process.exitValue());
-  }
-
-  /**
-   * Iterates over the process stdout until there is no more.  Blocks til the process is done.
-   * Returns the output as a single string.
-   * <p/>
-   * Also logs the process exit value.
-   */
-  protected String blockAndLogOutput(Process process) throws IOException, InterruptedException
-  {
-    // Yes, stdout is 'getInputStream'.
-    StringBuilder sb = new StringBuilder();
-    LOGGER.debug("---------- OUTPUT BEGINS ----------");
-    BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-    String line;
-    while ((line = reader.readLine()) != null)
-    {
-      LOGGER.debug(line);
-      sb.append(line + "\n");
-    }
-    LOGGER.debug("---------- OUTPUT ENDS ----------");
-    logExitValue(process.waitFor());
-    return sb.toString();
-  }
-
-  /**
-   * Closes all i/o streams, whether used or not.  It's not clear whether this is necessary after waitFor,
-   * but better safe than sorry.
-   */
-  private void closeProcessStreams(Process process)
-  {
-    if (process != null)
-    {
-      LOGGER.debug("Closing process i/o streams");
-      IOUtils.closeQuietly(process.getInputStream());
-      IOUtils.closeQuietly(process.getErrorStream());
-      IOUtils.closeQuietly(process.getOutputStream());
-    }
+  protected TaskStatus handleProcessTracking(ProcessBuilderAdapter processBuilderAdapter, boolean noop)
+      throws InterruptedException, IOException {
+    ShellOutputScanner scanner = makeOutputScanner(null);
+    ProcessStats processStats = runAndScanOutput(processBuilderAdapter, scanner);
+    return checkForErrors(scanner, processStats);
   }
 }
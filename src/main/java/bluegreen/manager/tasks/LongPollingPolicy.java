@@ -0,0 +1,47 @@
+package bluegreen.manager.tasks;
+
+import bluegreen.manager.utils.PollingPolicy;
+
+/**
+ * Checks again right away while the transition progress checker is long-polling, since each long-poll already waits
+ * on the application.  Otherwise, and for timeout, follows the delegate policy.
+ * <p/>
+ * Each long-poll lasts at most one followup delay, so the delegate's count of waits still bounds the total wait.
+ */
+class LongPollingPolicy implements PollingPolicy
+{
+  public static final String NAME = "LONG";
+
+  private PollingPolicy delegate;
+  private TransitionProgressChecker progressChecker;
+
+  LongPollingPolicy(PollingPolicy delegate, TransitionProgressChecker progressChecker)
+  {
+    this.delegate = delegate;
+    this.progressChecker = progressChecker;
+  }
+
+  @Override
+  public long getDelayMilliseconds(int waitNum, long elapsedMilliseconds)
+  {
+    return progressChecker.isLongPolling() ? 0L : delegate.getDelayMilliseconds(waitNum, elapsedMilliseconds);
+  }
+
+  @Override
+  public boolean isExhausted(int waitNum, long elapsedMilliseconds)
+  {
+    return delegate.isExhausted(waitNum, elapsedMilliseconds);
+  }
+
+  @Override
+  public String getName()
+  {
+    return progressChecker.isLongPolling() ? NAME : delegate.getName();
+  }
+
+  @Override
+  public void waitEnded(boolean done, int numChecks, long elapsedMilliseconds, long detectionLagMilliseconds)
+  {
+    delegate.waitEnded(done, numChecks, elapsedMilliseconds, detectionLagMilliseconds);
+  }
+}
@@ -0,0 +1,162 @@
+package bluegreen.manager.tasks;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import bluegreen.manager.model.tx.WaitHistoryTx;
+import bluegreen.manager.utils.AdaptivePollingPolicy;
+import bluegreen.manager.utils.FixedPollingPolicy;
+import bluegreen.manager.utils.MetricRegistry;
+import bluegreen.manager.utils.PollingPolicy;
+import bluegreen.manager.utils.WaiterParameters;
+
+/**
+ * Makes the polling policy for a wait on one type of external operation.
+ * <p/>
+ * If the operation has enough recorded history, the policy is adaptive around its expected duration, otherwise fixed
+ * per the waiterParameters.  Either way the wait is recorded in WaitHistory when it ends, which is what later waits
+ * learn from.  It is also counted and timed in the bluegreen_wait* metrics, by operation, e.g. how long app freezes
+ * take.
+ * <p/>
+ * Pulling this into its own class makes the client classes more testable.
+ */
+@Lazy
+@Component
+public class PollingPolicyFactory
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(PollingPolicyFactory.class);
+
+  public static final String RDS_SNAPSHOT_CREATE = "rdsSnapshotCreate";
+  public static final String RDS_SNAPSHOT_DELETE = "rdsSnapshotDelete";
+  public static final String RDS_INSTANCE_RESTORE = "rdsInstanceRestore";
+  public static final String RDS_INSTANCE_MODIFY = "rdsInstanceModify";
+  public static final String RDS_INSTANCE_REBOOT = "rdsInstanceReboot";
+  public static final String RDS_INSTANCE_RENAME = "rdsInstanceRename";
+  public static final String RDS_INSTANCE_DELETE = "rdsInstanceDelete";
+  public static final String APP_TRANSITION_PREFIX = "app-";
+
+  @Autowired
+  private WaitHistoryTx waitHistoryTx;
+
+  @Autowired
+  private MetricRegistry metricRegistry;
+
+  /**
+   * Set false to always poll at fixed delays.  Waits are still recorded.
+   */
+  @Value("${bluegreen.waiter.adaptive:true}")
+  private boolean adaptive = true;
+
+  /**
+   * Returns a recording policy for the operation, adaptive if history allows.
+   */
+  public PollingPolicy create(WaiterParameters waiterParameters, String operation)
+  {
+    PollingPolicy pollingPolicy = new FixedPollingPolicy(waiterParameters);
+    if (adaptive)
+    {
+      Long expectedDuration = findExpectedDuration(operation);
+      if (expectedDuration != null)
+      {
+        LOGGER.debug("Expecting " + operation + " to take " + expectedDuration + " ms, will poll adaptively");
+        pollingPolicy = new AdaptivePollingPolicy(waiterParameters, expectedDuration);
+      }
+    }
+    return new RecordingPollingPolicy(pollingPolicy, operation);
+  }
+
+  /**
+   * Looks up the expected duration, or null if unknown.  History is advisory so db errors just mean fixed polling.
+   */
+  private Long findExpectedDuration(String operation)
+  {
+    try
+    {
+      return waitHistoryTx.findExpectedDurationMilliseconds(operation);
+    }
+    catch (RuntimeException e)
+    {
+      LOGGER.warn("Failed to look up wait history for " + operation + ", will poll at fixed delays", e);
+      return null;
+    }
+  }
+
+  /**
+   * Counts the ended wait and records its time, checks and detection lag.
+   */
+  private void recordMetrics(String operation, boolean done, int numChecks, long elapsedMilliseconds,
+                             long detectionLagMilliseconds)
+  {
+    metricRegistry.counter("bluegreen_waits_total", "Waits on external operations, by outcome",
+        "operation", operation, "outcome", done ? "done" : "timeout").increment();
+    metricRegistry.counter("bluegreen_wait_checks_total", "Progress checks made by waits",
+        "operation", operation).add(numChecks);
+    metricRegistry.histogram("bluegreen_wait_milliseconds", "Time from the initial check to the final check",
+        MetricRegistry.LONG_DURATION_BUCKETS, "operation", operation).record(elapsedMilliseconds);
+    if (done)
+    {
+      metricRegistry.histogram("bluegreen_wait_detection_lag_milliseconds", "Time between the last two checks of a "
+          + "done wait, which bounds how late the conclusion was noticed", MetricRegistry.LONG_DURATION_BUCKETS,
+          "operation", operation).record(detectionLagMilliseconds);
+    }
+  }
+
+  /**
+   * Delegates polling decisions, and records the wait when it ends.
+   */
+  private class RecordingPollingPolicy implements PollingPolicy
+  {
+    private PollingPolicy delegate;
+    private String operation;
+
+    private RecordingPollingPolicy(PollingPolicy delegate, String operation)
+    {
+      this.delegate = delegate;
+      this.operation = operation;
+    }
+
+    @Override
+    public long getDelayMilliseconds(int waitNum, long elapsedMilliseconds)
+    {
+      return delegate.getDelayMilliseconds(waitNum, elapsedMilliseconds);
+    }
+
+    @Override
+    public boolean isExhausted(int waitNum, long elapsedMilliseconds)
+    {
+      return delegate.isExhausted(waitNum, elapsedMilliseconds);
+    }
+
+    @Override
+    public String getName()
+    {
+      return delegate.getName();
+    }
+
+    @Override
+    public void waitEnded(boolean done, int numChecks, long elapsedMilliseconds, long detectionLagMilliseconds)
+    {
+      delegate.waitEnded(done, numChecks, elapsedMilliseconds, detectionLagMilliseconds);
+      recordMetrics(operation, done, numChecks, elapsedMilliseconds, detectionLagMilliseconds);
+      try
+      {
+        waitHistoryTx.newWaitHistory(operation, delegate.getName(), done, numChecks, elapsedMilliseconds,
+            detectionLagMilliseconds);
+      }
+      catch (RuntimeException e)
+      {
+        LOGGER.warn("Failed to record wait history for " + operation, e);
+      }
+    }
+  }
+
+  //Test purposes only
+  void setAdaptive(boolean adaptive)
+  {
+    this.adaptive = adaptive;
+  }
+}
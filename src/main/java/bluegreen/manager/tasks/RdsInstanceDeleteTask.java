@@ -1,11 +1,14 @@
 package bluegreen.manager.tasks;
 
+import java.util.List;
+
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import com.amazonaws.services.rds.model.DBInstance;
@@ -26,8 +29,8 @@ import bluegreen.manager.utils.Waiter;
 import bluegreen.manager.utils.WaiterParameters;
 
 /**
- * In the delete env, deletes the RDS instance, its parameter group (if non-default), and the bluegreen snapshot from
- * which it was originally made.
+ * In the delete env, deletes the RDS instance of each logical database, its parameter group (if non-default), and the
+ * bluegreen snapshot from which it was originally made.
  * <p/>
  * Only deletes the parameter group when it is clear that stagingDeploy created it specifically for the RDS instance
  * that we're deleting.
@@ -37,6 +40,7 @@ import bluegreen.manager.utils.WaiterParameters;
  */
 @Lazy
 @Component
+@Scope("prototype")
 public class RdsInstanceDeleteTask extends TaskImpl
 {
   private static final Logger LOGGER = LoggerFactory.getLogger(RdsInstanceDeleteTask.class);
@@ -60,14 +64,16 @@ public class RdsInstanceDeleteTask extends TaskImpl
   @Autowired
   private ThreadSleeper threadSleeper;
 
+  @Autowired
+  private PollingPolicyFactory pollingPolicyFactory;
+
   private OneEnvLoader deleteEnvLoader;
   private RdsClient rdsClient;
 
   private String deleteEnvName;
 
   private Environment deleteEnvironment;
-  private LogicalDatabase deleteLogicalDatabase;
-  private PhysicalDatabase deletePhysicalDatabase;
+  private List<LogicalDatabase> deleteLogicalDatabases;
 
   public Task assign(int position, String deleteEnvName)
   {
@@ -81,18 +87,22 @@ public class RdsInstanceDeleteTask extends TaskImpl
    * this task is about to begin processing.
    * <p/>
    * Looks up the environment entities by name.
-   * Currently requires that the env has exactly one logicaldb, with one physicaldb.
+   * Currently requires that the env has at least one logicaldb, each with one physicaldb.
    */
   void loadDataModel()
   {
     this.deleteEnvLoader = envLoaderFactory.createOne(deleteEnvName);
-    deleteEnvLoader.loadPhysicalDatabase();
+    deleteEnvLoader.loadPhysicalDatabases();
     this.deleteEnvironment = deleteEnvLoader.getEnvironment();
-    this.deleteLogicalDatabase = deleteEnvLoader.getLogicalDatabase();
-    this.deletePhysicalDatabase = deleteEnvLoader.getPhysicalDatabase();
+    this.deleteLogicalDatabases = deleteEnvLoader.getLogicalDatabases();
   }
 
   String context()
+  {
+    return context(null);
+  }
+
+  String context(LogicalDatabase deleteLogicalDatabase)
   {
     StringBuilder sb = new StringBuilder();
     sb.append("[Delete Env '" + deleteEnvironment.getEnvName() + "'");
@@ -100,7 +110,8 @@ public class RdsInstanceDeleteTask extends TaskImpl
     {
       sb.append(", ");
       sb.append(deleteLogicalDatabase.getLogicalName());
-      if (StringUtils.isNotBlank(deletePhysicalDatabase.getInstanceName()))
+      PhysicalDatabase deletePhysicalDatabase = deleteLogicalDatabase.getPhysicalDatabase();
+      if (deletePhysicalDatabase != null && StringUtils.isNotBlank(deletePhysicalDatabase.getInstanceName()))
       {
         sb.append(" - RDS ");
         sb.append(deletePhysicalDatabase.getInstanceName());
@@ -111,9 +122,12 @@ public class RdsInstanceDeleteTask extends TaskImpl
   }
 
   /**
-   * Deletes the rds instance, its parameter group (if non-default), and its original bluegreen snapshot.
+   * Deletes each rds instance, its parameter group (if non-default), and its original bluegreen snapshot.
+   * <p/>
+   * Leaves behind any snapshots that Amazon automatically made of the rds instances.
    * <p/>
-   * Leaves behind any snapshots that Amazon automatically made of the rds instance.
+   * Each database is unregistered as soon as it is deleted, so the datamodel never points at a deleted instance even
+   * if a later one fails.
    */
   @Override
   public TaskStatus process(boolean noop)
@@ -121,36 +135,53 @@ public class RdsInstanceDeleteTask extends TaskImpl
     loadDataModel();
     checkDeleteDatabaseIsNotLive();
     rdsClient = rdsClientFactory.create();
-    DBInstance rdsInstance = deleteInstance(noop);
-    deleteParameterGroup(rdsInstance, noop);
-    persistModel(noop);
+    for (LogicalDatabase deleteLogicalDatabase : deleteLogicalDatabases)
+    {
+      DBInstance rdsInstance = deleteInstance(deleteLogicalDatabase, noop);
+      deleteParameterGroup(deleteLogicalDatabase, rdsInstance, noop);
+      persistModel(deleteLogicalDatabase, noop);
+    }
     return noop ? TaskStatus.NOOP : TaskStatus.DONE;
   }
 
   /**
-   * Performs the single most important check of this task: asserts that the database to be deleted is not live.
+   * A deleted database is gone for good.
+   */
+  @Override
+  public boolean isIrreversible()
+  {
+    return true;
+  }
+
+  /**
+   * Performs the single most important check of this task: asserts that none of the databases to be deleted is live,
+   * before deleting any of them.
    * <p/>
    * It would be Very Very Bad to delete a live database!
    */
   void checkDeleteDatabaseIsNotLive()
   {
-    if (deletePhysicalDatabase.isLive())
+    for (LogicalDatabase deleteLogicalDatabase : deleteLogicalDatabases)
     {
-      throw new IllegalArgumentException(context() + "Are you CRAZY??? Don't ask us to delete a LIVE database!!!");
+      if (deleteLogicalDatabase.getPhysicalDatabase().isLive())
+      {
+        throw new IllegalArgumentException(context(deleteLogicalDatabase)
+            + "Are you CRAZY??? Don't ask us to delete a LIVE database!!!");
+      }
     }
   }
 
   /**
    * Requests deletion of the target RDS instance, waits for confirmed deletion.
    */
-  DBInstance deleteInstance(boolean noop)
+  DBInstance deleteInstance(LogicalDatabase deleteLogicalDatabase, boolean noop)
   {
-    LOGGER.info(context() + "Deleting non-live target RDS instance" + noopRemark(noop));
+    LOGGER.info(context(deleteLogicalDatabase) + "Deleting non-live target RDS instance" + noopRemark(noop));
     DBInstance initialInstance = null;
     if (!noop)
     {
-      initialInstance = rdsClient.deleteInstance(deletePhysicalDatabase.getInstanceName());
-      waitTilInstanceIsDeleted(initialInstance);
+      initialInstance = rdsClient.deleteInstance(deleteLogicalDatabase.getPhysicalDatabase().getInstanceName());
+      waitTilInstanceIsDeleted(deleteLogicalDatabase, initialInstance);
     }
     return initialInstance;
   }
@@ -158,16 +189,18 @@ public class RdsInstanceDeleteTask extends TaskImpl
   /**
    * Creates a Waiter and returns when the instance is fully deleted.
    */
-  private void waitTilInstanceIsDeleted(DBInstance initialInstance)
+  private void waitTilInstanceIsDeleted(LogicalDatabase deleteLogicalDatabase, DBInstance initialInstance)
   {
-    LOGGER.info(context() + "Waiting for instance to be deleted");
+    final String context = context(deleteLogicalDatabase);
+    LOGGER.info(context + "Waiting for instance to be deleted");
     RdsInstanceProgressChecker progressChecker = new RdsInstanceProgressChecker(initialInstance.getDBInstanceIdentifier(),
-        context(), rdsClient, initialInstance, RdsInstanceStatus.DELETING);
-    Waiter<DBInstance> waiter = new Waiter(waiterParameters, threadSleeper, progressChecker);
+        context, rdsClient, initialInstance, RdsInstanceStatus.DELETING);
+    Waiter<DBInstance> waiter = new Waiter(waiterParameters, threadSleeper, progressChecker,
+        pollingPolicyFactory.create(waiterParameters, PollingPolicyFactory.RDS_INSTANCE_DELETE));
     DBInstance dbInstance = waiter.waitTilDone();
     if (dbInstance == null)
     {
-      throw new RuntimeException(context() + progressChecker.getDescription() + " was not deleted");
+      throw new RuntimeException(context + progressChecker.getDescription() + " was not deleted");
     }
   }
 
@@ -176,23 +209,23 @@ public class RdsInstanceDeleteTask extends TaskImpl
    * <p/>
    * (The parameter group cannot be deleted until the dependent rdsInstance is fully deleted.)
    */
-  void deleteParameterGroup(DBInstance rdsInstance, boolean noop)
+  void deleteParameterGroup(LogicalDatabase deleteLogicalDatabase, DBInstance rdsInstance, boolean noop)
   {
     if (noop)
     {
       //rdsInstance is null, don't try to analyze it
-      LOGGER.info(context() + "Deleting parameter group" + noopRemark(noop));
+      LOGGER.info(context(deleteLogicalDatabase) + "Deleting parameter group" + noopRemark(noop));
     }
     else
     {
       String paramGroupName = rdsAnalyzer.findSelfNamedParamGroupName(rdsInstance);
       if (StringUtils.isBlank(paramGroupName))
       {
-        LOGGER.info(context() + "Deleted database did not have its own special parameter group");
+        LOGGER.info(context(deleteLogicalDatabase) + "Deleted database did not have its own special parameter group");
       }
       else
       {
-        LOGGER.info(context() + "Deleting parameter group '" + paramGroupName + "', which was used only by the deleted database");
+        LOGGER.info(context(deleteLogicalDatabase) + "Deleting parameter group '" + paramGroupName + "', which was used only by the deleted database");
         rdsClient.deleteParameterGroup(paramGroupName);
       }
     }
@@ -201,9 +234,9 @@ public class RdsInstanceDeleteTask extends TaskImpl
   /**
    * Deletes the physicaldb entity, then opens a transaction to persist the change.
    */
-  private void persistModel(boolean noop)
+  private void persistModel(LogicalDatabase deleteLogicalDatabase, boolean noop)
   {
-    LOGGER.info(context() + "Unregistering stage physical database" + noopRemark(noop));
+    LOGGER.info(context(deleteLogicalDatabase) + "Unregistering stage physical database" + noopRemark(noop));
     if (!noop)
     {
       deleteLogicalDatabase.setPhysicalDatabase(null);
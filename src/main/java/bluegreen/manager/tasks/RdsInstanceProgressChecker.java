@@ -22,6 +22,7 @@ public class RdsInstanceProgressChecker implements ProgressChecker<DBInstance>
   private static final RdsInstanceStatus MODIFY_FINAL_STATE = RdsInstanceStatus.AVAILABLE;
   private static final RdsInstanceStatus DELETE_FINAL_STATE = RdsInstanceStatus.DELETED;
   private static final RdsInstanceStatus REBOOT_FINAL_STATE = RdsInstanceStatus.AVAILABLE;
+  private static final RdsInstanceStatus RENAME_FINAL_STATE = RdsInstanceStatus.AVAILABLE;
   private static final RdsInstanceStatus[] CREATE_INTERMEDIATE_STATES = new RdsInstanceStatus[] {
       RdsInstanceStatus.CREATING, RdsInstanceStatus.BACKING_UP, RdsInstanceStatus.MODIFYING
   };
@@ -34,6 +35,9 @@ public class RdsInstanceProgressChecker implements ProgressChecker<DBInstance>
   private static final RdsInstanceStatus[] REBOOT_INTERMEDIATE_STATES = new RdsInstanceStatus[] {
       RdsInstanceStatus.REBOOTING, RdsInstanceStatus.MODIFYING
   };
+  private static final RdsInstanceStatus[] RENAME_INTERMEDIATE_STATES = new RdsInstanceStatus[] {
+      RdsInstanceStatus.RENAMING, RdsInstanceStatus.MODIFYING
+  };
 
   private String instanceId;
   protected String logContext;
@@ -78,6 +82,8 @@ public class RdsInstanceProgressChecker implements ProgressChecker<DBInstance>
         return "Delete Instance";
       case REBOOTING:
         return "Reboot Instance";
+      case RENAMING:
+        return "Rename Instance";
       default:
         throw new IllegalArgumentException("Cannot check progress from initial state '" + expectedInitialState + "'");
     }
@@ -95,6 +101,8 @@ public class RdsInstanceProgressChecker implements ProgressChecker<DBInstance>
         return DELETE_INTERMEDIATE_STATES;
       case REBOOTING:
         return REBOOT_INTERMEDIATE_STATES;
+      case RENAMING:
+        return RENAME_INTERMEDIATE_STATES;
       default:
         throw new IllegalArgumentException("Cannot check progress from initial state '" + expectedInitialState + "'");
     }
@@ -112,6 +120,8 @@ public class RdsInstanceProgressChecker implements ProgressChecker<DBInstance>
         return DELETE_FINAL_STATE;
       case REBOOTING:
         return REBOOT_FINAL_STATE;
+      case RENAMING:
+        return RENAME_FINAL_STATE;
       default:
         throw new IllegalArgumentException("Cannot check progress from initial state '" + expectedInitialState + "'");
     }
@@ -119,11 +129,18 @@ public class RdsInstanceProgressChecker implements ProgressChecker<DBInstance>
 
   /**
    * Checks initial response instance.
+   * <p/>
+   * A rename response still describes the instance under its old name, so there is nothing to check until the new
+   * name is found.
    */
   @Override
   public void initialCheck()
   {
     logInitialStatus();
+    if (expectedInitialState == RdsInstanceStatus.RENAMING)
+    {
+      return;
+    }
     checkInstanceId(initialInstance);
     checkInstanceStatus(initialInstance);
   }
@@ -137,7 +154,7 @@ public class RdsInstanceProgressChecker implements ProgressChecker<DBInstance>
   {
     try
     {
-      DBInstance dbInstance = rdsClient.describeInstance(instanceId);
+      DBInstance dbInstance = rdsClient.pollInstance(instanceId);
       checkInstanceId(dbInstance);
       logFollowupStatus(waitNum, dbInstance);
       checkInstanceStatus(dbInstance);
@@ -213,12 +230,17 @@ public class RdsInstanceProgressChecker implements ProgressChecker<DBInstance>
   }
 
   /**
-   * Amazon can't find the instance.  This is an allowed final state for a delete operation, otherwise is a bad error.
+   * Amazon can't find the instance.  This is an allowed final state for a delete operation, and an allowed
+   * intermediate state for a rename (new name not in effect yet), otherwise is a bad error.
    */
   private void handleInstanceNotFound(int waitNum, DBInstanceNotFoundException e)
   {
     LOGGER.debug("RDS " + getDescription() + " status after wait#" + waitNum + ": " + e.getClass().getSimpleName()
         + ": " + e.getMessage());
+    if (expectedInitialState == RdsInstanceStatus.RENAMING)
+    {
+      return; //Keep waiting.
+    }
     if (expectedFinalState.equals(DELETE_FINAL_STATE))
     {
       LOGGER.info("RDS " + getDescription() + " is done");
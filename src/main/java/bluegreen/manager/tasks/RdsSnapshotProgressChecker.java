@@ -49,7 +49,7 @@ public abstract class RdsSnapshotProgressChecker
    */
   public void followupCheck(int waitNum)
   {
-    DBSnapshot dbSnapshot = rdsClient.describeSnapshot(snapshotId);
+    DBSnapshot dbSnapshot = rdsClient.pollSnapshot(snapshotId);
     checkSnapshotId(dbSnapshot);
     LOGGER.debug(logContext + "RDS snapshot status after wait#" + waitNum + ": " + dbSnapshot.getStatus());
     checkSnapshotStatus(dbSnapshot);
@@ -1,8 +1,16 @@
 package bluegreen.manager.tasks;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -13,7 +21,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import com.amazonaws.services.rds.model.DBInstance;
@@ -24,6 +34,7 @@ import com.amazonaws.services.rds.model.DBSnapshotNotFoundException;
 import bluegreen.manager.client.aws.RdsAnalyzer;
 import bluegreen.manager.client.aws.RdsClient;
 import bluegreen.manager.client.aws.RdsClientFactory;
+import bluegreen.manager.client.aws.RdsDescribeCoalescer;
 import bluegreen.manager.client.aws.RdsInstanceStatus;
 import bluegreen.manager.client.aws.RdsSnapshotBluegreenId;
 import bluegreen.manager.client.aws.RdsSnapshotStatus;
@@ -31,31 +42,69 @@ import bluegreen.manager.model.domain.DatabaseType;
 import bluegreen.manager.model.domain.Environment;
 import bluegreen.manager.model.domain.LogicalDatabase;
 import bluegreen.manager.model.domain.PhysicalDatabase;
+import bluegreen.manager.model.domain.StandbyDatabase;
 import bluegreen.manager.model.domain.TaskStatus;
 import bluegreen.manager.model.tx.EnvironmentHelper;
 import bluegreen.manager.model.tx.EnvironmentTx;
-import bluegreen.manager.utils.ThreadSleeper;
+import bluegreen.manager.model.tx.StandbyDatabaseTx;
+import bluegreen.manager.utils.NowFactory;
+import bluegreen.manager.utils.ProgressChecker;
 import bluegreen.manager.utils.Waiter;
 import bluegreen.manager.utils.WaiterParameters;
+import bluegreen.manager.utils.WaiterScheduler;
 
 /**
- * Takes a snapshot of the live RDS instance and restores it in the new staging environment.
- * Also copies the live RDS parameter group so staging can have its own.
+ * Takes snapshots of the live RDS instances and restores them in the new staging environment.
+ * Also copies each live RDS parameter group so staging can have its own.
  * <p/>
- * Restored copy will be identical in every way except for rds instname and parameter group.
- * We are making an assumption that the live instance has a paramgroup whose name embeds the instname.
+ * Restored copies will be identical in every way except for rds instname and parameter group.
+ * We are making an assumption that each live instance has a paramgroup whose name embeds the instname.
  * And an additional assumption that the paramgroup has a read_only parameter.
  * <p/>
+ * Every live logical database is copied, each to the stage physical instname given by dbMap.  The databases are
+ * handled side by side: all snapshots are taken at once, then all restores, modifies and reboots.  Waits are
+ * multiplexed on the shared WaiterScheduler, so the time spent is that of the slowest database, not the sum.
+ * <p/>
+ * The work can be split into a SNAPSHOT phase and a RESTORE phase, assigned as two tasks, so that the live env can
+ * be thawed as soon as its snapshots exist.  The restore phase finds the snapshots by their bluegreen id.
+ * <p/>
+ * If the standby pool is enabled, the restore phase first tries to claim a warm standby for each database (see
+ * {@link RdsStandbyPoolTask}), and renames it to the stage instname instead of restoring.  The stage data is then as
+ * of the standby's snapshot, which may be up to the max snapshot age older than this job's freeze.
+ * <p/>
+ * If the job tracks its freeze window, the snapshot phase reports its start and end to the tracker, and waits for
+ * the snapshots no longer than the remaining freeze budget.  Running out of budget ends the task in error, so the job
+ * can thaw the live env early.
+ * <p/>
  * Pre-existing stage environment is an error, because this is the task that initially creates the stage env.
  */
 @Lazy
 @Component
+@Scope("prototype")
 public class RdsSnapshotRestoreTask extends TaskImpl
 {
   private static final Pattern JDBC_URL = Pattern.compile("(jdbc:mysql://)([^:/]+)(.*)");
 
   private static final Logger LOGGER = LoggerFactory.getLogger(RdsSnapshotRestoreTask.class);
 
+  /**
+   * Which part of the snapshot/restore work this task performs.
+   */
+  public static enum Phase
+  {
+    SNAPSHOT, RESTORE, SNAPSHOT_AND_RESTORE;
+
+    boolean includesSnapshot()
+    {
+      return this != RESTORE;
+    }
+
+    boolean includesRestore()
+    {
+      return this != SNAPSHOT;
+    }
+  }
+
   @Autowired
   @Qualifier("rdsSnapshotRestoreTask")
   private WaiterParameters waiterParameters;
@@ -66,31 +115,62 @@ public class RdsSnapshotRestoreTask extends TaskImpl
   @Autowired
   private RdsClientFactory rdsClientFactory;
 
+  @Autowired
+  private RdsDescribeCoalescer rdsDescribeCoalescer;
+
   @Autowired
   private RdsAnalyzer rdsAnalyzer;
 
   @Autowired
-  private ThreadSleeper threadSleeper;
+  private WaiterScheduler waiterScheduler;
+
+  @Autowired
+  private PollingPolicyFactory pollingPolicyFactory;
 
   @Autowired
   private EnvironmentHelper environmentHelper;
 
+  @Autowired
+  private StandbyDatabaseTx standbyDatabaseTx;
+
+  @Autowired
+  private NowFactory nowFactory;
+
+  /**
+   * Opt-in, because a claimed standby holds older data than this job's snapshot.
+   */
+  @Value("${bluegreen.standby.enabled:false}")
+  private boolean standbyEnabled = false;
+
+  @Value("${bluegreen.standby.maxSnapshotAgeMinutes:" + RdsStandbyPoolTask.DEFAULT_MAX_SNAPSHOT_AGE_MINUTES + "}")
+  private long standbyMaxSnapshotAgeMinutes = RdsStandbyPoolTask.DEFAULT_MAX_SNAPSHOT_AGE_MINUTES;
+
   private String liveEnvName;
   private String stageEnvName;
   private Map<String, String> dbMap; //Maps liveLogicalName to new stagePhysicalInstanceName
+  private Phase phase;
+  private FreezeWindowTracker freezeWindowTracker;
 
   private Environment liveEnv;
-  private LogicalDatabase liveLogicalDatabase;
-  private PhysicalDatabase livePhysicalDatabase;
   private Environment stageEnv;
-  private LogicalDatabase stageLogicalDatabase;
-  private PhysicalDatabase stagePhysicalDatabase;
+  private List<RdsStageCopy> stageCopies;
   private RdsClient rdsClient;
 
   /**
+   * Assigns a task that performs both snapshot and restore.
+   *
    * @param dbMap Maps live logical dbname to new stage physical dbname.
    */
   public Task assign(int position, String liveEnvName, String stageEnvName, Map<String, String> dbMap)
+  {
+    return assign(position, liveEnvName, stageEnvName, dbMap, Phase.SNAPSHOT_AND_RESTORE);
+  }
+
+  /**
+   * @param dbMap Maps live logical dbname to new stage physical dbname.
+   * @param phase Which part of the work to perform.
+   */
+  public Task assign(int position, String liveEnvName, String stageEnvName, Map<String, String> dbMap, Phase phase)
   {
     if (StringUtils.equals(liveEnvName, stageEnvName))
     {
@@ -100,6 +180,18 @@ public class RdsSnapshotRestoreTask extends TaskImpl
     this.liveEnvName = liveEnvName;
     this.stageEnvName = stageEnvName;
     this.dbMap = dbMap;
+    this.phase = phase;
+    return this;
+  }
+
+  /**
+   * Reports the snapshot phase to the job's freeze window tracker, and bounds it by the freeze budget.
+   *
+   * @return Self, so job can assign and track in one line.
+   */
+  public RdsSnapshotRestoreTask trackFreezeWindow(FreezeWindowTracker freezeWindowTracker)
+  {
+    this.freezeWindowTracker = freezeWindowTracker;
     return this;
   }
 
@@ -108,16 +200,21 @@ public class RdsSnapshotRestoreTask extends TaskImpl
    * this task is about to begin processing.
    * <p/>
    * Looks up the environment entities by name.
-   * Currently requires that the live env has exactly one logicaldb, with one physicaldb.
+   * Requires that the live env has at least one logicaldb, each with one live RDS physicaldb, and each mapped by
+   * dbMap to a distinct new stage instname.
    * Error if any prior stage database exists.
    */
   protected void loadDataModel()
   {
     this.liveEnv = environmentTx.findNamedEnv(liveEnvName);
-    this.liveLogicalDatabase = findLiveLogicalDatabaseFromEnvironment();
-    this.livePhysicalDatabase = liveLogicalDatabase.getPhysicalDatabase();
-
-    checkLivePhysicalDatabase();
+    this.stageCopies = new ArrayList<RdsStageCopy>();
+    for (LogicalDatabase liveLogicalDatabase : findLiveLogicalDatabasesFromEnvironment())
+    {
+      RdsStageCopy stageCopy = new RdsStageCopy(liveLogicalDatabase, findMappedStageName(liveLogicalDatabase));
+      checkLivePhysicalDatabase(stageCopy);
+      checkStagePhysicalInstanceName(stageCopy);
+      stageCopies.add(stageCopy);
+    }
     checkNoStageEnvironment();
     checkDbMap();
   }
@@ -135,7 +232,7 @@ public class RdsSnapshotRestoreTask extends TaskImpl
     {
       sb.append(", ");
       sb.append(logicalDatabase.getLogicalName());
-      if (StringUtils.isNotBlank(physicalDatabase.getInstanceName()))
+      if (physicalDatabase != null && StringUtils.isNotBlank(physicalDatabase.getInstanceName()))
       {
         sb.append(" - RDS ");
         sb.append(physicalDatabase.getInstanceName());
@@ -149,89 +246,131 @@ public class RdsSnapshotRestoreTask extends TaskImpl
    * Returns a string that describes the requested stage env context, for logging purposes.
    * Based on cmdline arguments and existing live env info.
    */
-  private String stageContextFromArgs()
+  private String stageContextFromArgs(RdsStageCopy stageCopy)
   {
     StringBuilder sb = new StringBuilder();
     sb.append("[stageEnv '" + stageEnvName + "'");
-    if (liveLogicalDatabase != null) //stage logicaldb will get same name as live logicaldb
+    if (stageCopy != null) //stage logicaldb will get same name as live logicaldb
     {
       sb.append(", ");
-      final String liveLogicalName = liveLogicalDatabase.getLogicalName();
-      sb.append(liveLogicalName);
-      if (dbMap != null)
+      sb.append(stageCopy.getLiveLogicalDatabase().getLogicalName());
+      if (StringUtils.isNotBlank(stageCopy.getStagePhysicalInstanceName()))
       {
-        final String stagePhysicalInstanceName = dbMap.get(liveLogicalName);
-        if (StringUtils.isNotBlank(stagePhysicalInstanceName))
-        {
-          sb.append(" - RDS ");
-          sb.append(stagePhysicalInstanceName);
-        }
+        sb.append(" - RDS ");
+        sb.append(stageCopy.getStagePhysicalInstanceName());
       }
     }
     sb.append("]: ");
     return sb.toString();
   }
 
+  /**
+   * Context of the live env as a whole.
+   */
   String liveContext()
   {
-    return contextFromEnv("live", liveEnv, liveLogicalDatabase, livePhysicalDatabase);
+    return contextFromEnv("live", liveEnv, null, null);
   }
 
-  String stageContext()
+  /**
+   * Context of one live database.
+   */
+  String liveContext(RdsStageCopy stageCopy)
   {
-    if (stageEnv != null)
+    return contextFromEnv("live", liveEnv, stageCopy.getLiveLogicalDatabase(), stageCopy.getLivePhysicalDatabase());
+  }
+
+  /**
+   * Context of one stage database.
+   */
+  String stageContext(RdsStageCopy stageCopy)
+  {
+    if (stageEnv != null && stageCopy.getStageLogicalDatabase() != null)
     {
-      return contextFromEnv("stage", stageEnv, stageLogicalDatabase, stagePhysicalDatabase);
+      return contextFromEnv("stage", stageEnv, stageCopy.getStageLogicalDatabase(), stageCopy.getStagePhysicalDatabase());
     }
     else
     {
-      return stageContextFromArgs();
+      return stageContextFromArgs(stageCopy);
     }
   }
 
   /**
-   * Gets the live env's persisted logicaldb record.  Requires exactly 1.
+   * Gets the live env's persisted logicaldb records.  Requires at least 1, all with nonblank names.
    */
-  private LogicalDatabase findLiveLogicalDatabaseFromEnvironment()
+  private List<LogicalDatabase> findLiveLogicalDatabasesFromEnvironment()
   {
     List<LogicalDatabase> logicalDatabases = liveEnv.getLogicalDatabases();
     if (CollectionUtils.isEmpty(logicalDatabases))
     {
       throw new IllegalStateException(liveContext() + "No logical databases");
     }
-    else if (logicalDatabases.size() > 1)
+    for (LogicalDatabase logicalDatabase : logicalDatabases)
     {
-      throw new UnsupportedOperationException(liveContext() + "Currently only support case of 1 logicalDatabase, but live env has "
-          + logicalDatabases.size() + ": " + environmentHelper.listOfNames(logicalDatabases));
+      if (StringUtils.isBlank(logicalDatabase.getLogicalName()))
+      {
+        throw new IllegalStateException(liveContext() + "Live logical database has blank name");
+      }
     }
-    else if (StringUtils.isBlank(logicalDatabases.get(0).getLogicalName()))
+    return logicalDatabases;
+  }
+
+  /**
+   * Returns the stage physical instname that dbMap assigns to the live logical database.
+   */
+  private String findMappedStageName(LogicalDatabase liveLogicalDatabase)
+  {
+    final String liveLogicalName = liveLogicalDatabase.getLogicalName();
+    if (MapUtils.isEmpty(dbMap) || !dbMap.containsKey(liveLogicalName))
     {
-      throw new IllegalStateException(liveContext() + "Live logical database has blank name");
+      throw new IllegalArgumentException("Live logical database '" + liveLogicalName
+          + "' is unmapped, don't know what stage physical instname to create");
     }
-    return logicalDatabases.get(0);
+    return dbMap.get(liveLogicalName);
   }
 
   /**
    * Checks that the physicaldb which user specified as live is in fact live and RDS type.
    */
-  private void checkLivePhysicalDatabase()
+  private void checkLivePhysicalDatabase(RdsStageCopy stageCopy)
   {
+    PhysicalDatabase livePhysicalDatabase = stageCopy.getLivePhysicalDatabase();
     if (livePhysicalDatabase == null)
     {
-      throw new IllegalStateException(liveContext() + "Live logical database is not mapped to a physical database");
+      throw new IllegalStateException(liveContext(stageCopy) + "Live logical database is not mapped to a physical database");
     }
     if (!livePhysicalDatabase.isLive())
     {
-      throw new IllegalStateException(liveContext() + "Physical database record for this env claims it is not live");
+      throw new IllegalStateException(liveContext(stageCopy) + "Physical database record for this env claims it is not live");
     }
     if (livePhysicalDatabase.getDatabaseType() != DatabaseType.RDS)
     {
-      throw new IllegalStateException(liveContext() + "Live physical database is type " + livePhysicalDatabase.getDriverClassName()
+      throw new IllegalStateException(liveContext(stageCopy) + "Live physical database is type " + livePhysicalDatabase.getDriverClassName()
           + ", cannot perform RDS snapshot/restore operations on it");
     }
     if (StringUtils.isBlank(livePhysicalDatabase.getInstanceName()))
     {
-      throw new IllegalArgumentException(liveContext() + "Live physical database has blank instance name");
+      throw new IllegalArgumentException(liveContext(stageCopy) + "Live physical database has blank instance name");
+    }
+  }
+
+  /**
+   * Checks that the mapped stage physical instname is nonblank and is different from the live physical instname.
+   */
+  private void checkStagePhysicalInstanceName(RdsStageCopy stageCopy)
+  {
+    final String liveLogicalName = stageCopy.getLiveLogicalDatabase().getLogicalName();
+    final String stagePhysicalInstanceName = stageCopy.getStagePhysicalInstanceName();
+    if (StringUtils.isBlank(stagePhysicalInstanceName))
+    {
+      throw new IllegalArgumentException("You have mapped live logical database '" + liveLogicalName
+          + "' to a blank string, we don't know what stage physical instname to create");
+    }
+    if (StringUtils.equals(stagePhysicalInstanceName, stageCopy.getLivePhysicalDatabase().getInstanceName()))
+    {
+      throw new IllegalArgumentException("You have mapped live logical database '" + liveLogicalName
+          + "' to stage physical instname '" + stagePhysicalInstanceName
+          + "', but live physical database is already using that instname");
     }
   }
 
@@ -243,7 +382,7 @@ public class RdsSnapshotRestoreTask extends TaskImpl
     Environment stageEnv = environmentTx.findNamedEnvAllowNull(stageEnvName);
     if (stageEnv != null)
     {
-      throw new IllegalStateException(stageContext() + "Stage env exists already, with "
+      throw new IllegalStateException(stageContextFromArgs(null) + "Stage env exists already, with "
           + CollectionUtils.size(stageEnv.getLogicalDatabases()) + " logical databases ["
           + environmentHelper.listOfNames(stageEnv.getLogicalDatabases())
           + "], you must manually destroy the stage env and run this job again");
@@ -251,74 +390,123 @@ public class RdsSnapshotRestoreTask extends TaskImpl
   }
 
   /**
-   * Checks that mapped stage physical instnames are nonblank and are different from live physical instnames.
+   * Checks that no two live databases are mapped to the same stage instname, nor to the instname of another live
+   * database.  Warns about mappings that match no live logical database.
    * Returns silently if ok.
    */
   private void checkDbMap()
   {
-    final String liveLogicalName = liveLogicalDatabase.getLogicalName();
-    if (MapUtils.isEmpty(dbMap) || !dbMap.containsKey(liveLogicalName))
+    Set<String> liveLogicalNames = new HashSet<String>();
+    Set<String> liveInstanceNames = new HashSet<String>();
+    for (RdsStageCopy stageCopy : stageCopies)
     {
-      throw new IllegalArgumentException("Live logical database '" + liveLogicalName
-          + "' is unmapped, don't know what stage physical instname to create");
+      liveLogicalNames.add(stageCopy.getLiveLogicalDatabase().getLogicalName());
+      liveInstanceNames.add(stageCopy.getLivePhysicalDatabase().getInstanceName());
     }
-    final String stagePhysicalInstanceName = dbMap.get(liveLogicalName);
-    if (StringUtils.isBlank(stagePhysicalInstanceName))
+    Set<String> stageInstanceNames = new HashSet<String>();
+    for (RdsStageCopy stageCopy : stageCopies)
     {
-      throw new IllegalArgumentException("You have mapped live logical database '" + liveLogicalName
-          + "' to a blank string, we don't know what stage physical instname to create");
+      final String stagePhysicalInstanceName = stageCopy.getStagePhysicalInstanceName();
+      if (!stageInstanceNames.add(stagePhysicalInstanceName))
+      {
+        throw new IllegalArgumentException("You have mapped more than one live logical database to stage physical instname '"
+            + stagePhysicalInstanceName + "'");
+      }
+      if (liveInstanceNames.contains(stagePhysicalInstanceName))
+      {
+        throw new IllegalArgumentException("You have mapped live logical database '"
+            + stageCopy.getLiveLogicalDatabase().getLogicalName() + "' to stage physical instname '"
+            + stagePhysicalInstanceName + "', but a live physical database is already using that instname");
+      }
     }
-    if (StringUtils.equals(stagePhysicalInstanceName, livePhysicalDatabase.getInstanceName()))
+    for (String mappedLogicalName : dbMap.keySet())
     {
-      throw new IllegalArgumentException("You have mapped live logical database '" + liveLogicalName
-          + "' to stage physical instname '" + stagePhysicalInstanceName
-          + "', but live physical database is already using that instname");
+      if (!liveLogicalNames.contains(mappedLogicalName))
+      {
+        LOGGER.warn(liveContext() + "Ignoring mapping of unknown logical database '" + mappedLogicalName + "'");
+      }
     }
   }
 
   /**
-   * Takes a snapshot of the live RDS instance and restores it in the new staging environment.
+   * Takes snapshots of the live RDS instances and/or restores them in the new staging environment, according to the
+   * assigned phase.
    */
   @Override
   public TaskStatus process(boolean noop)
   {
     loadDataModel();
     rdsClient = rdsClientFactory.create();
-    DBInstance liveInstance = describeLiveInstance();
-    deletePriorLiveSnapshot(noop);
-    DBSnapshot dbSnapshot = snapshotLive(noop);
-    DBParameterGroup stageParamGroup = copyParameterGroup(liveInstance, noop);
-    DBInstance stageInstance = restoreStage(dbSnapshot, stageParamGroup, liveInstance, noop);
-    persistModel(stageInstance, noop);
+    describeLiveInstances();
+    if (phase.includesSnapshot())
+    {
+      deletePriorLiveSnapshots(noop);
+      if (snapshotLive(noop) == null)
+      {
+        LOGGER.info(rdsDescribeCoalescer.summarize());
+        return TaskStatus.ERROR;
+      }
+    }
+    if (phase.includesRestore())
+    {
+      claimStandbys(noop);
+      if (!phase.includesSnapshot())
+      {
+        findLiveSnapshots(noop);
+      }
+      copyParameterGroups(noop);
+      restoreStage(noop);
+      persistModel(noop);
+    }
+    LOGGER.info(rdsDescribeCoalescer.summarize());
     return noop ? TaskStatus.NOOP : TaskStatus.DONE;
   }
 
   /**
-   * Gets current info on the live database physical instance.
+   * Gets current info on the live database physical instances.
    * <p/>
    * Read-only, so it operates regardless of noop setting.
    */
-  private DBInstance describeLiveInstance()
+  private void describeLiveInstances()
   {
-    LOGGER.info(liveContext() + "Requesting description of live RDS instance");
-    return rdsClient.describeInstance(livePhysicalDatabase.getInstanceName());
+    for (RdsStageCopy stageCopy : stageCopies)
+    {
+      LOGGER.info(liveContext(stageCopy) + "Requesting description of live RDS instance");
+      stageCopy.setLiveInstance(rdsClient.describeInstance(stageCopy.getLivePhysicalDatabase().getInstanceName()));
+    }
   }
 
   /**
-   * Checks if there is already a live db snapshot, and if so then requests deletion and waits until the old
-   * snapshot is deleted.
+   * Checks if there are already live db snapshots, and if so then requests their deletion and waits until the old
+   * snapshots are deleted.
    */
-  void deletePriorLiveSnapshot(boolean noop)
+  void deletePriorLiveSnapshots(boolean noop)
   {
-    LOGGER.info(liveContext() + "Checking for prior snapshot of live RDS instance" + noopRemark(noop));
+    LOGGER.info(liveContext() + "Checking for prior snapshots of " + stageCopies.size() + " live RDS instance(s)" + noopRemark(noop));
     if (!noop)
     {
-      String snapshotId = makeSnapshotId();
-      if (snapshotExists(snapshotId))
+      List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+      for (RdsStageCopy stageCopy : stageCopies)
+      {
+        String snapshotId = makeSnapshotId(stageCopy);
+        if (snapshotExists(stageCopy, snapshotId))
+        {
+          LOGGER.info(liveContext(stageCopy) + "Deleting prior snapshot '" + snapshotId + "'");
+          DBSnapshot initialSnapshot = rdsClient.deleteSnapshot(snapshotId);
+          futures.add(submitWait(new RdsSnapshotDeletedProgressChecker(snapshotId, liveContext(stageCopy), rdsClient,
+              initialSnapshot), PollingPolicyFactory.RDS_SNAPSHOT_DELETE));
+        }
+      }
+      if (!futures.isEmpty())
       {
-        LOGGER.info(liveContext() + "Deleting prior snapshot '" + snapshotId + "'");
-        DBSnapshot initialSnapshot = rdsClient.deleteSnapshot(snapshotId);
-        waitTilSnapshotIsDeleted(snapshotId, initialSnapshot);
+        LOGGER.info(liveContext() + "Waiting for deletion of " + futures.size() + " old snapshot(s)");
+      }
+      for (Boolean done : awaitAll(futures))
+      {
+        if (done == null || !done)
+        {
+          throw new RuntimeException(liveContext() + "Snapshot was not deleted");
+        }
       }
     }
   }
@@ -326,7 +514,7 @@ public class RdsSnapshotRestoreTask extends TaskImpl
   /**
    * Returns true if the snapshot exists.
    */
-  private boolean snapshotExists(String snapshotId)
+  private boolean snapshotExists(RdsStageCopy stageCopy, String snapshotId)
   {
     try
     {
@@ -338,7 +526,7 @@ public class RdsSnapshotRestoreTask extends TaskImpl
           return true;
         case CREATING:
         case DELETING:
-          LOGGER.warn(liveContext() + "Prior snapshot '" + snapshotId + "' has transitional status " + status
+          LOGGER.warn(liveContext(stageCopy) + "Prior snapshot '" + snapshotId + "' has transitional status " + status
               + ", we will probably crash attempting to request its deletion right now");
           return true;
         case DELETED:
@@ -353,81 +541,138 @@ public class RdsSnapshotRestoreTask extends TaskImpl
   }
 
   /**
-   * Creates a Waiter with a snapshot progress checker, and returns when progress is done (i.e. snapshot deleted).
+   * Takes fresh snapshots of all the live RDS instances at once, and waits for all of them to complete.
+   * Sanity-checks the results.
+   *
+   * @return The available snapshots, or null if they overran the freeze budget.
    */
-  private void waitTilSnapshotIsDeleted(String snapshotId, DBSnapshot initialSnapshot)
+  List<DBSnapshot> snapshotLive(boolean noop)
   {
-    LOGGER.info(liveContext() + "Waiting for deletion of old snapshot");
-    RdsSnapshotDeletedProgressChecker progressChecker = new RdsSnapshotDeletedProgressChecker(snapshotId, liveContext(), rdsClient,
-        initialSnapshot);
-    Waiter<Boolean> waiter = new Waiter(waiterParameters, threadSleeper, progressChecker);
-    Boolean done = waiter.waitTilDone();
-    if (done == null || !done)
+    LOGGER.info(liveContext() + "Taking snapshots of " + stageCopies.size() + " live RDS instance(s)" + noopRemark(noop));
+    List<DBSnapshot> dbSnapshots = new ArrayList<DBSnapshot>();
+    if (!noop)
     {
-      throw new RuntimeException(liveContext() + "Snapshot was not deleted");
+      List<Future<DBSnapshot>> futures = new ArrayList<Future<DBSnapshot>>();
+      if (freezeWindowTracker != null)
+      {
+        freezeWindowTracker.snapshotStarted();
+      }
+      for (RdsStageCopy stageCopy : stageCopies)
+      {
+        String snapshotId = makeSnapshotId(stageCopy);
+        DBSnapshot dbSnapshot = rdsClient.createSnapshot(snapshotId, stageCopy.getLivePhysicalDatabase().getInstanceName());
+        futures.add(submitWait(new RdsSnapshotAvailableProgressChecker(snapshotId, liveContext(stageCopy), rdsClient,
+            dbSnapshot), PollingPolicyFactory.RDS_SNAPSHOT_CREATE));
+      }
+      LOGGER.info(liveContext() + "Waiting for " + futures.size() + " snapshot(s) to become available");
+      Long budgetMilliseconds = freezeWindowTracker == null ? null : freezeWindowTracker.getRemainingBudgetMilliseconds();
+      dbSnapshots = awaitAll(futures, budgetMilliseconds);
+      if (dbSnapshots == null)
+      {
+        LOGGER.error(liveContext() + "Snapshots are not available within the freeze budget of "
+            + freezeWindowTracker.getBudgetSeconds() + " seconds, giving up on them");
+        freezeWindowTracker.budgetExceeded();
+        return null;
+      }
+      for (int idx = 0; idx < stageCopies.size(); ++idx)
+      {
+        RdsStageCopy stageCopy = stageCopies.get(idx);
+        if (dbSnapshots.get(idx) == null)
+        {
+          throw new RuntimeException(liveContext(stageCopy) + "Snapshot did not become available");
+        }
+        stageCopy.setDbSnapshot(dbSnapshots.get(idx));
+      }
+      if (freezeWindowTracker != null)
+      {
+        freezeWindowTracker.snapshotAvailable();
+      }
     }
+    return dbSnapshots;
   }
 
   /**
-   * Takes a fresh snapshot of the live RDS instance, waits for completion.
-   * Sanity-checks the result.
+   * If the standby pool is enabled, leases a fresh enough warm standby to each stage copy where one is ready.
    */
-  DBSnapshot snapshotLive(boolean noop)
+  void claimStandbys(boolean noop)
   {
-    LOGGER.info(liveContext() + "Taking snapshot of live RDS instance" + noopRemark(noop));
-    DBSnapshot dbSnapshot = null;
-    if (!noop)
+    if (!standbyEnabled)
     {
-      String snapshotId = makeSnapshotId();
-      dbSnapshot = rdsClient.createSnapshot(snapshotId, livePhysicalDatabase.getInstanceName());
-      dbSnapshot = waitTilSnapshotIsAvailable(snapshotId, dbSnapshot);
+      return;
+    }
+    Date minSnapshotTime = new Date(nowFactory.now().getTime() - standbyMaxSnapshotAgeMinutes * 60L * 1000L);
+    for (RdsStageCopy stageCopy : stageCopies)
+    {
+      LOGGER.info(liveContext(stageCopy) + "Looking for a warm standby" + noopRemark(noop));
+      if (!noop)
+      {
+        StandbyDatabase standbyDatabase = standbyDatabaseTx.claim(liveEnvName,
+            stageCopy.getLiveLogicalDatabase().getLogicalName(), minSnapshotTime, "stageEnv " + stageEnvName);
+        if (standbyDatabase == null)
+        {
+          LOGGER.info(liveContext(stageCopy) + "No warm standby is ready, will restore from snapshot");
+        }
+        else
+        {
+          LOGGER.info(liveContext(stageCopy) + "Claimed warm standby '" + standbyDatabase.getInstanceName()
+              + "', stage data will be as of its snapshot taken " + standbyDatabase.getSnapshotTime());
+          stageCopy.setStandbyDatabase(standbyDatabase);
+        }
+      }
     }
-    return dbSnapshot;
-  }
-
-  String makeSnapshotId()
-  {
-    RdsSnapshotBluegreenId id = new RdsSnapshotBluegreenId(liveEnv.getEnvName(), liveLogicalDatabase.getLogicalName(),
-        livePhysicalDatabase.getInstanceName());
-    return id.toString();
   }
 
   /**
-   * Creates a Waiter using a snapshot progress checker, and returns the final DBSnapshot when waiting is done.
-   * In case of error - never returns null, throws instead.
+   * For the restore phase: finds the snapshots made by the snapshot phase, which must be available.  Not needed
+   * where a standby was claimed.
    */
-  private DBSnapshot waitTilSnapshotIsAvailable(String snapshotId, DBSnapshot initialSnapshot)
+  void findLiveSnapshots(boolean noop)
   {
-    LOGGER.info(liveContext() + "Waiting for snapshot to become available");
-    RdsSnapshotAvailableProgressChecker progressChecker = new RdsSnapshotAvailableProgressChecker(snapshotId, liveContext(), rdsClient,
-        initialSnapshot);
-    Waiter<DBSnapshot> waiter = new Waiter(waiterParameters, threadSleeper, progressChecker);
-    DBSnapshot dbSnapshot = waiter.waitTilDone();
-    if (dbSnapshot == null)
+    LOGGER.info(liveContext() + "Looking up snapshots of " + stageCopies.size() + " live RDS instance(s)" + noopRemark(noop));
+    if (!noop)
     {
-      throw new RuntimeException(liveContext() + "Snapshot did not become available");
+      for (RdsStageCopy stageCopy : stageCopies)
+      {
+        if (stageCopy.getStandbyDatabase() != null)
+        {
+          continue;
+        }
+        String snapshotId = makeSnapshotId(stageCopy);
+        DBSnapshot dbSnapshot = rdsClient.describeSnapshot(snapshotId);
+        if (RdsSnapshotStatus.fromString(dbSnapshot.getStatus()) != RdsSnapshotStatus.AVAILABLE)
+        {
+          throw new IllegalStateException(liveContext(stageCopy) + "Snapshot '" + snapshotId + "' has status "
+              + dbSnapshot.getStatus() + ", cannot restore from it");
+        }
+        stageCopy.setDbSnapshot(dbSnapshot);
+      }
     }
-    return dbSnapshot;
+  }
+
+  String makeSnapshotId(RdsStageCopy stageCopy)
+  {
+    RdsSnapshotBluegreenId id = new RdsSnapshotBluegreenId(liveEnv.getEnvName(),
+        stageCopy.getLiveLogicalDatabase().getLogicalName(), stageCopy.getLivePhysicalDatabase().getInstanceName());
+    return id.toString();
   }
 
   /**
-   * Makes a copy of the live instance's parameter group.
+   * Makes a copy of each live instance's parameter group.
    */
-  private DBParameterGroup copyParameterGroup(DBInstance liveInstance, boolean noop)
+  private void copyParameterGroups(boolean noop)
   {
-    String stagePhysicalInstanceName = dbMap.get(liveLogicalDatabase.getLogicalName());
-    String liveParamGroupName = rdsAnalyzer.findSelfNamedOrDefaultParamGroupName(liveInstance);
-    String stageParamGroupName = makeStageParamGroupName(liveParamGroupName,
-        liveInstance.getDBInstanceIdentifier(), stagePhysicalInstanceName);
-    LOGGER.info(liveContext() + "Copying live parameter group '" + liveParamGroupName
-        + "' to stage parameter group '" + stageParamGroupName + "'" + noopRemark(noop));
-    if (!noop)
-    {
-      return rdsClient.copyParameterGroup(liveParamGroupName, stageParamGroupName);
-    }
-    else
+    for (RdsStageCopy stageCopy : stageCopies)
     {
-      return null;
+      DBInstance liveInstance = stageCopy.getLiveInstance();
+      String liveParamGroupName = rdsAnalyzer.findSelfNamedOrDefaultParamGroupName(liveInstance);
+      String stageParamGroupName = makeStageParamGroupName(liveParamGroupName,
+          liveInstance.getDBInstanceIdentifier(), stageCopy.getStagePhysicalInstanceName());
+      LOGGER.info(liveContext(stageCopy) + "Copying live parameter group '" + liveParamGroupName
+          + "' to stage parameter group '" + stageParamGroupName + "'" + noopRemark(noop));
+      if (!noop)
+      {
+        stageCopy.setStageParamGroup(rdsClient.copyParameterGroup(liveParamGroupName, stageParamGroupName));
+      }
     }
   }
 
@@ -453,33 +698,103 @@ public class RdsSnapshotRestoreTask extends TaskImpl
   }
 
   /**
-   * Restores the live snapshot into the new staging environment.
+   * Restores the live snapshots into the new staging environment, or renames the claimed standbys.
    * Then makes a few small modifications that restore would not do automatically (paramgroup and security group).
-   * Reboots the db so the paramgroup modification will take effect.
-   * Returns the rebooted instance.
+   * Reboots the dbs so the paramgroup modification will take effect.
+   * <p/>
+   * Each step is requested for all databases at once, and waited on together.
+   * Returns the rebooted instances.
    */
-  DBInstance restoreStage(DBSnapshot dbSnapshot,
-                          DBParameterGroup stageParamGroup,
-                          DBInstance liveInstance,
-                          boolean noop)
+  List<DBInstance> restoreStage(boolean noop)
   {
-    LOGGER.info(liveContext() + "Restoring snapshot to new stage RDS instance" + noopRemark(noop));
+    LOGGER.info(liveContext() + "Restoring " + stageCopies.size() + " snapshot(s) to new stage RDS instance(s)" + noopRemark(noop));
+    List<DBInstance> stageInstances = new ArrayList<DBInstance>();
     if (!noop)
     {
-      String stagePhysicalInstanceName = dbMap.get(liveLogicalDatabase.getLogicalName());
-      initModel(stagePhysicalInstanceName);
-      String subnetGroupName = getSubnetGroupName(liveInstance);
-      DBInstance stageInstance = rdsClient.restoreInstanceFromSnapshot(stagePhysicalInstanceName,
-          dbSnapshot.getDBSnapshotIdentifier(), subnetGroupName);
-      stageInstance = waitTilInstanceIsAvailable(stagePhysicalInstanceName, stageInstance, RdsInstanceStatus.CREATING);
-      DBInstance modifiedInstance = modifyInstance(stageInstance, stageParamGroup, liveInstance);
-      modifiedInstance = waitTilParamGroupIsPendingReboot(stagePhysicalInstanceName, modifiedInstance, stageParamGroup,
-          RdsInstanceStatus.MODIFYING);
-      DBInstance rebootedInstance = rebootInstance(modifiedInstance);
-      rebootedInstance = waitTilInstanceIsAvailable(stagePhysicalInstanceName, rebootedInstance, RdsInstanceStatus.REBOOTING);
-      return rebootedInstance;
+      initModel();
+      List<Future<DBInstance>> futures = new ArrayList<Future<DBInstance>>();
+      for (RdsStageCopy stageCopy : stageCopies)
+      {
+        StandbyDatabase standbyDatabase = stageCopy.getStandbyDatabase();
+        if (standbyDatabase != null)
+        {
+          DBInstance renamedInstance = rdsClient.renameInstance(standbyDatabase.getInstanceName(),
+              stageCopy.getStagePhysicalInstanceName());
+          futures.add(submitInstanceWait(stageCopy, renamedInstance, RdsInstanceStatus.RENAMING,
+              PollingPolicyFactory.RDS_INSTANCE_RENAME));
+        }
+        else
+        {
+          DBInstance stageInstance = rdsClient.restoreInstanceFromSnapshot(stageCopy.getStagePhysicalInstanceName(),
+              stageCopy.getDbSnapshot().getDBSnapshotIdentifier(), getSubnetGroupName(stageCopy.getLiveInstance()));
+          futures.add(submitInstanceWait(stageCopy, stageInstance, RdsInstanceStatus.CREATING,
+              PollingPolicyFactory.RDS_INSTANCE_RESTORE));
+        }
+      }
+      LOGGER.info(liveContext() + "Waiting for " + futures.size() + " restored instance(s) to become available");
+      setStageInstances(awaitAll(futures), " did not become available");
+      forgetClaimedStandbys();
+
+      futures.clear();
+      for (RdsStageCopy stageCopy : stageCopies)
+      {
+        DBInstance modifiedInstance = modifyInstance(stageCopy.getStageInstance(), stageCopy.getStageParamGroup(),
+            stageCopy.getLiveInstance());
+        futures.add(submitWait(new RdsInstanceParamGroupProgressChecker(stageCopy.getStagePhysicalInstanceName(),
+            stageCopy.getStageParamGroup().getDBParameterGroupName(), liveContext(stageCopy), rdsClient, rdsAnalyzer,
+            modifiedInstance, RdsInstanceStatus.MODIFYING), PollingPolicyFactory.RDS_INSTANCE_MODIFY));
+      }
+      LOGGER.info(liveContext() + "Waiting for " + futures.size() + " instance(s) to become available and instance "
+          + "paramgroup modification to be fully applied");
+      setStageInstances(awaitAll(futures), " did not become available, or paramgroup failed to reach pending-reboot state");
+
+      futures.clear();
+      for (RdsStageCopy stageCopy : stageCopies)
+      {
+        DBInstance rebootedInstance = rebootInstance(stageCopy.getStageInstance());
+        futures.add(submitInstanceWait(stageCopy, rebootedInstance, RdsInstanceStatus.REBOOTING,
+            PollingPolicyFactory.RDS_INSTANCE_REBOOT));
+      }
+      LOGGER.info(liveContext() + "Waiting for " + futures.size() + " rebooted instance(s) to become available");
+      setStageInstances(awaitAll(futures), " did not become available");
+
+      for (RdsStageCopy stageCopy : stageCopies)
+      {
+        stageInstances.add(stageCopy.getStageInstance());
+      }
+    }
+    return stageInstances;
+  }
+
+  /**
+   * Claimed standbys have been renamed and are now stage instances, so they leave the pool.
+   */
+  private void forgetClaimedStandbys()
+  {
+    for (RdsStageCopy stageCopy : stageCopies)
+    {
+      if (stageCopy.getStandbyDatabase() != null)
+      {
+        standbyDatabaseTx.forget(stageCopy.getStandbyDatabase().getId());
+      }
+    }
+  }
+
+  /**
+   * Saves the results of a parallel step, in stageCopies order.  Null means the wait timed out.
+   */
+  private void setStageInstances(List<DBInstance> dbInstances, String failureRemark)
+  {
+    for (int idx = 0; idx < stageCopies.size(); ++idx)
+    {
+      RdsStageCopy stageCopy = stageCopies.get(idx);
+      if (dbInstances.get(idx) == null)
+      {
+        throw new RuntimeException(liveContext(stageCopy) + "Stage instance '" + stageCopy.getStagePhysicalInstanceName()
+            + "'" + failureRemark);
+      }
+      stageCopy.setStageInstance(dbInstances.get(idx));
     }
-    return null;
   }
 
   /**
@@ -495,43 +810,80 @@ public class RdsSnapshotRestoreTask extends TaskImpl
   }
 
   /**
-   * Creates a Waiter using an instance progress checker, and returns the final DBInstance when waiting is done.
-   * In case of error - never returns null, throws instead.
+   * Starts waiting for a stage instance to become available.
    */
-  private DBInstance waitTilInstanceIsAvailable(String instanceId, DBInstance initialInstance,
-                                                RdsInstanceStatus expectedInitialState)
+  private Future<DBInstance> submitInstanceWait(RdsStageCopy stageCopy, DBInstance initialInstance,
+                                                RdsInstanceStatus expectedInitialState, String operation)
   {
-    LOGGER.info(liveContext() + "Waiting for instance to become available");
-    RdsInstanceProgressChecker progressChecker = new RdsInstanceProgressChecker(instanceId, liveContext(), rdsClient,
-        initialInstance, expectedInitialState);
-    Waiter<DBInstance> waiter = new Waiter(waiterParameters, threadSleeper, progressChecker);
-    DBInstance dbInstance = waiter.waitTilDone();
-    if (dbInstance == null)
-    {
-      throw new RuntimeException(liveContext() + progressChecker.getDescription() + " did not become available");
-    }
-    return dbInstance;
+    return submitWait(new RdsInstanceProgressChecker(stageCopy.getStagePhysicalInstanceName(), liveContext(stageCopy),
+        rdsClient, initialInstance, expectedInitialState), operation);
   }
 
   /**
-   * Creates a Waiter using an instance paramgroup progress checker, and returns the final DBInstance when waiting is done.
-   * In case of error - never returns null, throws instead.
+   * Starts a non-blocking wait on the shared scheduler.
    */
-  private DBInstance waitTilParamGroupIsPendingReboot(String instanceId, DBInstance initialInstance,
-                                                      DBParameterGroup stageParamGroup,
-                                                      RdsInstanceStatus expectedInitialState)
+  private <T> Future<T> submitWait(ProgressChecker<T> progressChecker, String operation)
   {
-    LOGGER.info(liveContext() + "Waiting for instance to become available and instance paramgroup modification to be fully applied");
-    RdsInstanceParamGroupProgressChecker progressChecker = new RdsInstanceParamGroupProgressChecker(instanceId,
-        stageParamGroup.getDBParameterGroupName(), liveContext(), rdsClient, rdsAnalyzer, initialInstance, expectedInitialState);
-    Waiter<DBInstance> waiter = new Waiter(waiterParameters, threadSleeper, progressChecker);
-    DBInstance dbInstance = waiter.waitTilDone();
-    if (dbInstance == null)
+    return waiterScheduler.submit(new Waiter<T>(waiterParameters, null, progressChecker,
+        pollingPolicyFactory.create(waiterParameters, operation)));
+  }
+
+  /**
+   * Blocks until every wait is over, and returns their results in order.  If any wait fails, the rest are cancelled
+   * and the failure is rethrown.
+   */
+  private <T> List<T> awaitAll(List<Future<T>> futures)
+  {
+    return awaitAll(futures, null);
+  }
+
+  /**
+   * Blocks until every wait is over, or until the time limit runs out, in which case the rest are cancelled and the
+   * result is null.  Null time limit means no limit.
+   */
+  private <T> List<T> awaitAll(List<Future<T>> futures, Long limitMilliseconds)
+  {
+    List<T> results = new ArrayList<T>();
+    long deadline = limitMilliseconds == null ? 0L : System.currentTimeMillis() + limitMilliseconds;
+    try
     {
-      throw new RuntimeException(liveContext() + progressChecker.getDescription() + " did not become available, "
-          + "or paramgroup failed to reach pending-reboot state");
+      for (Future<T> future : futures)
+      {
+        if (limitMilliseconds == null)
+        {
+          results.add(future.get());
+        }
+        else
+        {
+          results.add(future.get(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS));
+        }
+      }
+      return results;
+    }
+    catch (TimeoutException e)
+    {
+      return null;
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(liveContext() + "Interrupted while waiting", e);
+    }
+    catch (ExecutionException e)
+    {
+      if (e.getCause() instanceof RuntimeException)
+      {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new RuntimeException(liveContext() + "Wait failed", e.getCause());
+    }
+    finally
+    {
+      for (Future<T> future : futures)
+      {
+        future.cancel(false);
+      }
     }
-    return dbInstance;
   }
 
   /**
@@ -555,15 +907,20 @@ public class RdsSnapshotRestoreTask extends TaskImpl
   }
 
   /**
-   * Initializes transient entities for the new stage database.
+   * Initializes transient entities for the new stage env and its databases.
    */
-  void initModel(String stagePhysicalInstanceName)
+  void initModel()
   {
     stageEnv = makeStageEnvironmentEntity();
-    stageLogicalDatabase = makeStageLogicalDatabaseEntity(liveLogicalDatabase.getLogicalName());
-    stagePhysicalDatabase = makeStagePhysicalDatabaseEntity(stagePhysicalInstanceName);
-    stageLogicalDatabase.setPhysicalDatabase(stagePhysicalDatabase);
-    stagePhysicalDatabase.setLogicalDatabase(stageLogicalDatabase);
+    for (RdsStageCopy stageCopy : stageCopies)
+    {
+      LogicalDatabase stageLogicalDatabase = makeStageLogicalDatabaseEntity(stageCopy.getLiveLogicalDatabase().getLogicalName());
+      PhysicalDatabase stagePhysicalDatabase = makeStagePhysicalDatabaseEntity(stageCopy);
+      stageLogicalDatabase.setPhysicalDatabase(stagePhysicalDatabase);
+      stagePhysicalDatabase.setLogicalDatabase(stageLogicalDatabase);
+      stageCopy.setStageLogicalDatabase(stageLogicalDatabase);
+      stageCopy.setStagePhysicalDatabase(stagePhysicalDatabase);
+    }
   }
 
   /**
@@ -598,11 +955,12 @@ public class RdsSnapshotRestoreTask extends TaskImpl
    * <p/>
    * Physical url is not known yet.
    */
-  private PhysicalDatabase makeStagePhysicalDatabaseEntity(String stagePhysicalInstanceName)
+  private PhysicalDatabase makeStagePhysicalDatabaseEntity(RdsStageCopy stageCopy)
   {
+    PhysicalDatabase livePhysicalDatabase = stageCopy.getLivePhysicalDatabase();
     PhysicalDatabase stagePhysicalDatabase = new PhysicalDatabase();
     stagePhysicalDatabase.setDatabaseType(livePhysicalDatabase.getDatabaseType());
-    stagePhysicalDatabase.setInstanceName(stagePhysicalInstanceName);
+    stagePhysicalDatabase.setInstanceName(stageCopy.getStagePhysicalInstanceName());
     stagePhysicalDatabase.setDriverClassName(livePhysicalDatabase.getDriverClassName());
     stagePhysicalDatabase.setUsername(livePhysicalDatabase.getUsername());
     stagePhysicalDatabase.setPassword(livePhysicalDatabase.getPassword());
@@ -610,16 +968,20 @@ public class RdsSnapshotRestoreTask extends TaskImpl
   }
 
   /**
-   * Sets the stage physical url, then opens a transaction to insert bluegreen records for the new stage environment.
+   * Sets the stage physical urls, then opens a transaction to insert bluegreen records for the new stage environment.
    */
-  private void persistModel(DBInstance stageInstance, boolean noop)
+  private void persistModel(boolean noop)
   {
-    LOGGER.info(stageContext() + "Registering stage database" + noopRemark(noop));
+    LOGGER.info(stageContextFromArgs(null) + "Registering " + stageCopies.size() + " stage database(s)" + noopRemark(noop));
     if (!noop)
     {
-      String stagePhysicalUrl = makeStagePhysicalUrl(livePhysicalDatabase.getUrl(), stageInstance.getEndpoint().getAddress());
-      stagePhysicalDatabase.setUrl(stagePhysicalUrl);
-      environmentTx.newEnvironment(stageEnv); //Cascades to new stage physicaldb.
+      for (RdsStageCopy stageCopy : stageCopies)
+      {
+        String stagePhysicalUrl = makeStagePhysicalUrl(stageCopy.getLivePhysicalDatabase().getUrl(),
+            stageCopy.getStageInstance().getEndpoint().getAddress());
+        stageCopy.getStagePhysicalDatabase().setUrl(stagePhysicalUrl);
+      }
+      environmentTx.newEnvironment(stageEnv); //Cascades to new stage physicaldbs.
     }
   }
 
@@ -636,31 +998,35 @@ public class RdsSnapshotRestoreTask extends TaskImpl
   {
     if (StringUtils.isBlank(livePhysicalUrl))
     {
-      throw new IllegalStateException(liveContext() + "Lost live physical url");
+      throw new IllegalStateException("Lost live physical url");
     }
     if (StringUtils.isBlank(stagePhysicalAddress))
     {
-      throw new IllegalArgumentException(stageContext() + "RDS instance missing endpoint address");
+      throw new IllegalArgumentException("RDS instance missing endpoint address");
     }
     Matcher matcher = JDBC_URL.matcher(livePhysicalUrl);
     if (!matcher.matches())
     {
-      throw new RuntimeException(liveContext() + "Don't know how to replace endpoint in live physical url '"
-          + livePhysicalUrl + "'");
+      throw new RuntimeException("Don't know how to replace endpoint in live physical url '" + livePhysicalUrl + "'");
     }
     return matcher.group(1) + stagePhysicalAddress + matcher.group(3);
   }
 
   //Test purposes only
-  LogicalDatabase getStageLogicalDatabase()
+  void setStandbyEnabled(boolean standbyEnabled)
   {
-    return stageLogicalDatabase;
+    this.standbyEnabled = standbyEnabled;
   }
 
   //Test purposes only
-  PhysicalDatabase getStagePhysicalDatabase()
+  List<RdsStageCopy> getStageCopies()
   {
-    return stagePhysicalDatabase;
+    return stageCopies;
   }
 
+  //Test purposes only
+  Environment getStageEnv()
+  {
+    return stageEnv;
+  }
 }
@@ -0,0 +1,124 @@
+package bluegreen.manager.tasks;
+
+import com.amazonaws.services.rds.model.DBInstance;
+import com.amazonaws.services.rds.model.DBParameterGroup;
+import com.amazonaws.services.rds.model.DBSnapshot;
+
+import bluegreen.manager.model.domain.LogicalDatabase;
+import bluegreen.manager.model.domain.PhysicalDatabase;
+import bluegreen.manager.model.domain.StandbyDatabase;
+
+/**
+ * Progress of copying one live logical database to the stage env: the live side as loaded from the data model, and
+ * the RDS resources and transient stage entities made along the way.
+ */
+class RdsStageCopy
+{
+  private LogicalDatabase liveLogicalDatabase;
+  private PhysicalDatabase livePhysicalDatabase;
+  private String stagePhysicalInstanceName;
+
+  private DBInstance liveInstance;
+  private StandbyDatabase standbyDatabase;
+  private DBSnapshot dbSnapshot;
+  private DBParameterGroup stageParamGroup;
+  private DBInstance stageInstance;
+
+  private LogicalDatabase stageLogicalDatabase;
+  private PhysicalDatabase stagePhysicalDatabase;
+
+  RdsStageCopy(LogicalDatabase liveLogicalDatabase, String stagePhysicalInstanceName)
+  {
+    this.liveLogicalDatabase = liveLogicalDatabase;
+    this.livePhysicalDatabase = liveLogicalDatabase.getPhysicalDatabase();
+    this.stagePhysicalInstanceName = stagePhysicalInstanceName;
+  }
+
+  public LogicalDatabase getLiveLogicalDatabase()
+  {
+    return liveLogicalDatabase;
+  }
+
+  public PhysicalDatabase getLivePhysicalDatabase()
+  {
+    return livePhysicalDatabase;
+  }
+
+  public String getStagePhysicalInstanceName()
+  {
+    return stagePhysicalInstanceName;
+  }
+
+  public DBInstance getLiveInstance()
+  {
+    return liveInstance;
+  }
+
+  public void setLiveInstance(DBInstance liveInstance)
+  {
+    this.liveInstance = liveInstance;
+  }
+
+  /**
+   * The claimed warm standby which will become the stage instance, or null if restoring from snapshot.
+   */
+  public StandbyDatabase getStandbyDatabase()
+  {
+    return standbyDatabase;
+  }
+
+  public void setStandbyDatabase(StandbyDatabase standbyDatabase)
+  {
+    this.standbyDatabase = standbyDatabase;
+  }
+
+  public DBSnapshot getDbSnapshot()
+  {
+    return dbSnapshot;
+  }
+
+  public void setDbSnapshot(DBSnapshot dbSnapshot)
+  {
+    this.dbSnapshot = dbSnapshot;
+  }
+
+  public DBParameterGroup getStageParamGroup()
+  {
+    return stageParamGroup;
+  }
+
+  public void setStageParamGroup(DBParameterGroup stageParamGroup)
+  {
+    this.stageParamGroup = stageParamGroup;
+  }
+
+  public DBInstance getStageInstance()
+  {
+    return stageInstance;
+  }
+
+  public void setStageInstance(DBInstance stageInstance)
+  {
+    this.stageInstance = stageInstance;
+  }
+
+  public LogicalDatabase getStageLogicalDatabase()
+  {
+    return stageLogicalDatabase;
+  }
+
+  public void setStageLogicalDatabase(LogicalDatabase stageLogicalDatabase)
+  {
+    this.stageLogicalDatabase = stageLogicalDatabase;
+  }
+
+  public PhysicalDatabase getStagePhysicalDatabase()
+  {
+    return stagePhysicalDatabase;
+  }
+
+  public void setStagePhysicalDatabase(PhysicalDatabase stagePhysicalDatabase)
+  {
+    this.stagePhysicalDatabase = stagePhysicalDatabase;
+  }
+}
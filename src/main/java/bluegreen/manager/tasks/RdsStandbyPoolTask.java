@@ -0,0 +1,495 @@
+package bluegreen.manager.tasks;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.commons.collections4.CollectionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+import com.amazonaws.services.rds.model.DBInstance;
+import com.amazonaws.services.rds.model.DBInstanceNotFoundException;
+import com.amazonaws.services.rds.model.DBSnapshot;
+import com.amazonaws.services.rds.model.DBSnapshotNotFoundException;
+
+import bluegreen.manager.client.aws.RdsClient;
+import bluegreen.manager.client.aws.RdsClientFactory;
+import bluegreen.manager.client.aws.RdsDescribeCoalescer;
+import bluegreen.manager.client.aws.RdsInstanceStatus;
+import bluegreen.manager.client.aws.RdsSnapshotBluegreenId;
+import bluegreen.manager.client.aws.RdsSnapshotStatus;
+import bluegreen.manager.model.domain.DatabaseType;
+import bluegreen.manager.model.domain.Environment;
+import bluegreen.manager.model.domain.LogicalDatabase;
+import bluegreen.manager.model.domain.PhysicalDatabase;
+import bluegreen.manager.model.domain.StandbyDatabase;
+import bluegreen.manager.model.domain.StandbyStatus;
+import bluegreen.manager.model.domain.TaskStatus;
+import bluegreen.manager.model.tx.EnvironmentTx;
+import bluegreen.manager.model.tx.StandbyDatabaseTx;
+import bluegreen.manager.utils.NowFactory;
+import bluegreen.manager.utils.Waiter;
+import bluegreen.manager.utils.WaiterParameters;
+import bluegreen.manager.utils.WaiterScheduler;
+
+/**
+ * Keeps the warm pool of standby RDS instances topped up for each live logical database of the live env.
+ * <p/>
+ * Standbys are made from the bluegreen snapshot that the last stagingDeploy took of the live database.  So that
+ * claimed standbys are as current as possible, a standby is retired (deleted) once a newer snapshot exists, or once
+ * its snapshot is older than the max snapshot age.  Standbys whose lease outlived the job that held it are cleaned
+ * up too.  Then new standbys are restored in parallel until the pool has poolSize usable standbys per database.
+ * <p/>
+ * Every stagingDeploy deletes the bluegreen snapshot and takes it again, possibly while standbys are still being
+ * restored.  So the pool first copies the bluegreen snapshot to a snapshot of its own, restores the standbys from
+ * the copy, and deletes the copy once no standby needs it and a newer bluegreen snapshot exists.
+ * <p/>
+ * Does not take snapshots itself, since a consistent snapshot requires the live env to be frozen.
+ */
+@Lazy
+@Component
+@Scope("prototype")
+public class RdsStandbyPoolTask extends TaskImpl
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(RdsStandbyPoolTask.class);
+
+  static final String STANDBY_NAME_PREFIX = "bgstandby-";
+  public static final long DEFAULT_MAX_SNAPSHOT_AGE_MINUTES = 240L;
+  static final long DEFAULT_LEASE_MINUTES = 180L;
+  private static final long MILLISECONDS_PER_MINUTE = 60L * 1000L;
+
+  @Autowired
+  @Qualifier("rdsSnapshotRestoreTask")
+  private WaiterParameters waiterParameters;
+
+  @Autowired
+  private EnvironmentTx environmentTx;
+
+  @Autowired
+  private StandbyDatabaseTx standbyDatabaseTx;
+
+  @Autowired
+  private RdsClientFactory rdsClientFactory;
+
+  @Autowired
+  private RdsDescribeCoalescer rdsDescribeCoalescer;
+
+  @Autowired
+  private WaiterScheduler waiterScheduler;
+
+  @Autowired
+  private PollingPolicyFactory pollingPolicyFactory;
+
+  @Autowired
+  private NowFactory nowFactory;
+
+  /**
+   * Standbys restored from older snapshots are retired, and cannot be claimed.
+   */
+  @Value("${bluegreen.standby.maxSnapshotAgeMinutes:" + DEFAULT_MAX_SNAPSHOT_AGE_MINUTES + "}")
+  private long maxSnapshotAgeMinutes = DEFAULT_MAX_SNAPSHOT_AGE_MINUTES;
+
+  /**
+   * A BUILDING or CLAIMED standby whose lease is older than this was abandoned by its job.
+   */
+  @Value("${bluegreen.standby.leaseMinutes:" + DEFAULT_LEASE_MINUTES + "}")
+  private long leaseMinutes = DEFAULT_LEASE_MINUTES;
+
+  private String liveEnvName;
+  private int poolSize;
+
+  private Environment liveEnv;
+  private RdsClient rdsClient;
+  private Date now;
+
+  /**
+   * @param poolSize Number of usable standbys to keep for each live logical database.
+   */
+  public Task assign(int position, String liveEnvName, int poolSize)
+  {
+    if (poolSize < 0)
+    {
+      throw new IllegalArgumentException("Pool size cannot be negative: " + poolSize);
+    }
+    super.assign(position);
+    this.liveEnvName = liveEnvName;
+    this.poolSize = poolSize;
+    return this;
+  }
+
+  /**
+   * Loads the live env, and checks that its databases are live RDS instances.
+   */
+  void loadDataModel()
+  {
+    this.liveEnv = environmentTx.findNamedEnv(liveEnvName);
+    if (CollectionUtils.isEmpty(liveEnv.getLogicalDatabases()))
+    {
+      throw new IllegalStateException(context(null) + "No logical databases");
+    }
+    for (LogicalDatabase logicalDatabase : liveEnv.getLogicalDatabases())
+    {
+      PhysicalDatabase physicalDatabase = logicalDatabase.getPhysicalDatabase();
+      if (physicalDatabase == null || !physicalDatabase.isLive() || physicalDatabase.getDatabaseType() != DatabaseType.RDS)
+      {
+        throw new IllegalStateException(context(logicalDatabase) + "Not a live RDS database, cannot keep standbys of it");
+      }
+    }
+  }
+
+  String context(LogicalDatabase logicalDatabase)
+  {
+    StringBuilder sb = new StringBuilder();
+    sb.append("[liveEnv '" + liveEnvName + "'");
+    if (logicalDatabase != null)
+    {
+      sb.append(", ");
+      sb.append(logicalDatabase.getLogicalName());
+      sb.append(" standby pool");
+    }
+    sb.append("]: ");
+    return sb.toString();
+  }
+
+  /**
+   * Retires stale standbys and restores new ones, for every live logical database.
+   */
+  @Override
+  public TaskStatus process(boolean noop)
+  {
+    loadDataModel();
+    rdsClient = rdsClientFactory.create();
+    now = nowFactory.now();
+    List<StandbyDatabase> builds = new ArrayList<StandbyDatabase>();
+    List<Future<DBInstance>> futures = new ArrayList<Future<DBInstance>>();
+    for (LogicalDatabase logicalDatabase : liveEnv.getLogicalDatabases())
+    {
+      DBSnapshot dbSnapshot = findLiveSnapshot(logicalDatabase);
+      int numUsable = retireStandbys(logicalDatabase, dbSnapshot, noop);
+      buildStandbys(logicalDatabase, dbSnapshot, poolSize - numUsable, builds, futures, noop);
+      deleteUnusedSnapshotCopies(logicalDatabase, dbSnapshot, noop);
+    }
+    awaitBuilds(builds, futures);
+    LOGGER.info(rdsDescribeCoalescer.summarize());
+    return noop ? TaskStatus.NOOP : TaskStatus.DONE;
+  }
+
+  /**
+   * Returns the latest bluegreen snapshot of the live database if it is available, else null.
+   */
+  private DBSnapshot findLiveSnapshot(LogicalDatabase logicalDatabase)
+  {
+    String snapshotId = makeSnapshotId(logicalDatabase);
+    try
+    {
+      DBSnapshot dbSnapshot = rdsClient.describeSnapshot(snapshotId);
+      if (RdsSnapshotStatus.AVAILABLE.equals(RdsSnapshotStatus.fromString(dbSnapshot.getStatus())))
+      {
+        return dbSnapshot;
+      }
+      LOGGER.info(context(logicalDatabase) + "Snapshot '" + snapshotId + "' has status " + dbSnapshot.getStatus()
+          + ", cannot restore standbys from it now");
+    }
+    catch (DBSnapshotNotFoundException e)
+    {
+      LOGGER.info(context(logicalDatabase) + "No snapshot '" + snapshotId + "', run stagingDeploy to make one");
+    }
+    return null;
+  }
+
+  String makeSnapshotId(LogicalDatabase logicalDatabase)
+  {
+    return new RdsSnapshotBluegreenId(liveEnvName, logicalDatabase.getLogicalName(),
+        logicalDatabase.getPhysicalDatabase().getInstanceName()).toString();
+  }
+
+  /**
+   * Names the pool's own copy of the bluegreen snapshot.  Always the same string for a given bluegreen snapshot, so a
+   * rerun finds the copy made by an earlier run.
+   */
+  String makeSnapshotCopyId(LogicalDatabase logicalDatabase, DBSnapshot dbSnapshot)
+  {
+    return makeSnapshotCopyIdPrefix(logicalDatabase)
+        + Long.toString(dbSnapshot.getSnapshotCreateTime().getTime(), Character.MAX_RADIX);
+  }
+
+  private String makeSnapshotCopyIdPrefix(LogicalDatabase logicalDatabase)
+  {
+    return STANDBY_NAME_PREFIX + makeSnapshotId(logicalDatabase) + "-";
+  }
+
+  /**
+   * Deletes the standbys that nobody should claim any more, and returns the number that remain usable: ready, or
+   * still being built under a live lease.
+   */
+  int retireStandbys(LogicalDatabase logicalDatabase, DBSnapshot dbSnapshot, boolean noop)
+  {
+    Date minSnapshotTime = new Date(now.getTime() - maxSnapshotAgeMinutes * MILLISECONDS_PER_MINUTE);
+    Date minLeaseTime = new Date(now.getTime() - leaseMinutes * MILLISECONDS_PER_MINUTE);
+    int numUsable = 0;
+    for (StandbyDatabase standby : standbyDatabaseTx.findStandbys(liveEnvName, logicalDatabase.getLogicalName()))
+    {
+      String reason = null;
+      if (standby.getStatus() == StandbyStatus.READY)
+      {
+        if (standby.getSnapshotTime().before(minSnapshotTime))
+        {
+          reason = "its snapshot is older than " + maxSnapshotAgeMinutes + " minutes";
+        }
+        else if (dbSnapshot != null && standby.getSnapshotTime().before(dbSnapshot.getSnapshotCreateTime()))
+        {
+          reason = "a newer snapshot exists";
+        }
+      }
+      else if (standby.getLeaseTime() == null || standby.getLeaseTime().before(minLeaseTime))
+      {
+        reason = "its " + standby.getStatus() + " lease held by '" + standby.getLeaseOwner() + "' has expired";
+      }
+      if (reason != null)
+      {
+        retireStandby(logicalDatabase, standby, reason, noop);
+      }
+      else if (standby.getStatus() != StandbyStatus.CLAIMED)
+      {
+        ++numUsable;
+      }
+    }
+    return numUsable;
+  }
+
+  /**
+   * Requests deletion of the standby instance, without waiting, and forgets it.
+   */
+  private void retireStandby(LogicalDatabase logicalDatabase, StandbyDatabase standby, String reason, boolean noop)
+  {
+    LOGGER.info(context(logicalDatabase) + "Retiring standby '" + standby.getInstanceName() + "' because " + reason
+        + noopRemark(noop));
+    if (!noop)
+    {
+      try
+      {
+        rdsClient.deleteInstance(standby.getInstanceName());
+      }
+      catch (DBInstanceNotFoundException e)
+      {
+        LOGGER.warn(context(logicalDatabase) + "Standby instance '" + standby.getInstanceName() + "' not found, "
+            + (standby.getStatus() == StandbyStatus.CLAIMED ? "it may have been renamed by the stagingDeploy that claimed it"
+            : "nothing to delete"));
+      }
+      standbyDatabaseTx.forget(standby.getId());
+    }
+  }
+
+  /**
+   * Starts restoring new standbys from the snapshot, if it is recent enough.  Adds the new standbys and their
+   * waits to the given lists.
+   */
+  private void buildStandbys(LogicalDatabase logicalDatabase, DBSnapshot dbSnapshot, int numToBuild,
+                             List<StandbyDatabase> builds, List<Future<DBInstance>> futures, boolean noop)
+  {
+    if (numToBuild <= 0)
+    {
+      LOGGER.info(context(logicalDatabase) + "Pool is full");
+      return;
+    }
+    Date minSnapshotTime = new Date(now.getTime() - maxSnapshotAgeMinutes * MILLISECONDS_PER_MINUTE);
+    if (dbSnapshot == null || dbSnapshot.getSnapshotCreateTime().before(minSnapshotTime))
+    {
+      LOGGER.warn(context(logicalDatabase) + "Need " + numToBuild + " more standbys but there is no snapshot newer than "
+          + maxSnapshotAgeMinutes + " minutes to restore them from");
+      return;
+    }
+    DBInstance liveInstance = rdsClient.describeInstance(logicalDatabase.getPhysicalDatabase().getInstanceName());
+    String subnetGroupName = liveInstance.getDBSubnetGroup() == null ? null : liveInstance.getDBSubnetGroup().getDBSubnetGroupName();
+    String snapshotCopyId = noop ? makeSnapshotCopyId(logicalDatabase, dbSnapshot) : copySnapshot(logicalDatabase, dbSnapshot);
+    for (int idx = 0; idx < numToBuild; ++idx)
+    {
+      String instanceName = makeStandbyInstanceName(builds.size());
+      LOGGER.info(context(logicalDatabase) + "Restoring snapshot '" + snapshotCopyId + "' to new standby '"
+          + instanceName + "'" + noopRemark(noop));
+      if (!noop)
+      {
+        StandbyDatabase standby = standbyDatabaseTx.newStandby(liveEnvName, logicalDatabase.getLogicalName(),
+            instanceName, snapshotCopyId, dbSnapshot.getSnapshotCreateTime(), getLeaseOwner());
+        DBInstance initialInstance;
+        try
+        {
+          initialInstance = rdsClient.restoreInstanceFromSnapshot(instanceName, snapshotCopyId, subnetGroupName);
+        }
+        catch (RuntimeException e)
+        {
+          standbyDatabaseTx.forget(standby.getId());
+          throw e;
+        }
+        builds.add(standby);
+        futures.add(waiterScheduler.submit(new Waiter<DBInstance>(waiterParameters, null,
+            new RdsInstanceProgressChecker(instanceName, context(logicalDatabase), rdsClient, initialInstance,
+                RdsInstanceStatus.CREATING),
+            pollingPolicyFactory.create(waiterParameters, PollingPolicyFactory.RDS_INSTANCE_RESTORE))));
+      }
+    }
+  }
+
+  /**
+   * Copies the bluegreen snapshot to the pool's own snapshot, unless an earlier run already did, and waits until the
+   * copy is available.  Returns the copy's id.
+   */
+  private String copySnapshot(LogicalDatabase logicalDatabase, DBSnapshot dbSnapshot)
+  {
+    String snapshotCopyId = makeSnapshotCopyId(logicalDatabase, dbSnapshot);
+    DBSnapshot snapshotCopy = findSnapshot(rdsClient.describeInstanceSnapshots(
+        logicalDatabase.getPhysicalDatabase().getInstanceName()), snapshotCopyId);
+    if (snapshotCopy == null)
+    {
+      LOGGER.info(context(logicalDatabase) + "Copying snapshot '" + dbSnapshot.getDBSnapshotIdentifier() + "' to '"
+          + snapshotCopyId + "' for the standbys to restore from");
+      snapshotCopy = rdsClient.copySnapshot(dbSnapshot.getDBSnapshotIdentifier(), snapshotCopyId);
+    }
+    Future<DBSnapshot> future = waiterScheduler.submit(new Waiter<DBSnapshot>(waiterParameters, null,
+        new RdsSnapshotAvailableProgressChecker(snapshotCopyId, context(logicalDatabase), rdsClient, snapshotCopy),
+        pollingPolicyFactory.create(waiterParameters, PollingPolicyFactory.RDS_SNAPSHOT_CREATE)));
+    try
+    {
+      if (future.get() == null)
+      {
+        throw new RuntimeException(context(logicalDatabase) + "Snapshot copy '" + snapshotCopyId + "' did not become available");
+      }
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(context(logicalDatabase) + "Interrupted while waiting for snapshot copy", e);
+    }
+    catch (ExecutionException e)
+    {
+      throw new RuntimeException(context(logicalDatabase) + "Snapshot copy '" + snapshotCopyId + "' failed", e.getCause());
+    }
+    return snapshotCopyId;
+  }
+
+  private DBSnapshot findSnapshot(List<DBSnapshot> dbSnapshots, String snapshotId)
+  {
+    for (DBSnapshot dbSnapshot : dbSnapshots)
+    {
+      if (snapshotId.equals(dbSnapshot.getDBSnapshotIdentifier()))
+      {
+        return dbSnapshot;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Deletes the pool's snapshot copies that no standby was restored from, except the copy of the current bluegreen
+   * snapshot, without waiting.
+   */
+  void deleteUnusedSnapshotCopies(LogicalDatabase logicalDatabase, DBSnapshot dbSnapshot, boolean noop)
+  {
+    Set<String> usedSnapshotIds = new HashSet<String>();
+    if (dbSnapshot != null)
+    {
+      usedSnapshotIds.add(makeSnapshotCopyId(logicalDatabase, dbSnapshot));
+    }
+    for (StandbyDatabase standby : standbyDatabaseTx.findStandbys(liveEnvName, logicalDatabase.getLogicalName()))
+    {
+      usedSnapshotIds.add(standby.getSnapshotId());
+    }
+    String snapshotCopyIdPrefix = makeSnapshotCopyIdPrefix(logicalDatabase);
+    for (DBSnapshot snapshotCopy : rdsClient.describeInstanceSnapshots(logicalDatabase.getPhysicalDatabase().getInstanceName()))
+    {
+      String snapshotCopyId = snapshotCopy.getDBSnapshotIdentifier();
+      if (snapshotCopyId.startsWith(snapshotCopyIdPrefix) && !usedSnapshotIds.contains(snapshotCopyId)
+          && RdsSnapshotStatus.AVAILABLE.equalsString(snapshotCopy.getStatus()))
+      {
+        LOGGER.info(context(logicalDatabase) + "Deleting snapshot copy '" + snapshotCopyId + "', no standby needs it"
+            + noopRemark(noop));
+        if (!noop)
+        {
+          try
+          {
+            rdsClient.deleteSnapshot(snapshotCopyId);
+          }
+          catch (DBSnapshotNotFoundException e)
+          {
+            LOGGER.warn(context(logicalDatabase) + "Snapshot copy '" + snapshotCopyId + "' not found, nothing to delete");
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Makes a unique instance name for a standby.  Standbys are renamed when claimed, so it carries no meaning.
+   */
+  private String makeStandbyInstanceName(int buildNum)
+  {
+    return STANDBY_NAME_PREFIX + Long.toString(now.getTime(), Character.MAX_RADIX) + "-" + buildNum;
+  }
+
+  private String getLeaseOwner()
+  {
+    return getName() + " " + liveEnvName;
+  }
+
+  /**
+   * Waits for all the standby restores, marking each one ready as it becomes available.  Failed standbys keep their
+   * BUILDING lease, and are cleaned up by a later run once it expires.
+   */
+  private void awaitBuilds(List<StandbyDatabase> builds, List<Future<DBInstance>> futures)
+  {
+    if (builds.isEmpty())
+    {
+      return;
+    }
+    LOGGER.info(context(null) + "Waiting for " + builds.size() + " new standbys to become available");
+    int numFailed = 0;
+    for (int idx = 0; idx < builds.size(); ++idx)
+    {
+      StandbyDatabase standby = builds.get(idx);
+      DBInstance dbInstance = null;
+      try
+      {
+        dbInstance = futures.get(idx).get();
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(context(null) + "Interrupted while waiting for standbys", e);
+      }
+      catch (ExecutionException e)
+      {
+        LOGGER.error(context(null) + "Standby '" + standby.getInstanceName() + "' failed", e.getCause());
+      }
+      if (dbInstance == null)
+      {
+        ++numFailed;
+      }
+      else
+      {
+        standbyDatabaseTx.markReady(standby.getId());
+        LOGGER.info(context(null) + "Standby '" + standby.getInstanceName() + "' is ready");
+      }
+    }
+    if (numFailed > 0)
+    {
+      throw new RuntimeException(context(null) + numFailed + " of " + builds.size() + " new standbys did not become available");
+    }
+  }
+
+  //Test purposes only
+  void setMaxSnapshotAgeMinutes(long maxSnapshotAgeMinutes)
+  {
+    this.maxSnapshotAgeMinutes = maxSnapshotAgeMinutes;
+  }
+}
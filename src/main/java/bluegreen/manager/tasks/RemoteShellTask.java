@@ -45,7 +45,7 @@ public class RemoteShellTask extends ShellTask
     {
       checkConfig();
       sshClient.init(sshTarget);
-      SubstituterResult command = stringSubstituter.substituteVariables(shellConfig.getCommand());
+      SubstituterResult command = stringSubstituter.substituteVariables(shellConfig.getCommandTemplate());
       LOGGER.info("Executing command '" + command.getExpurgated() + "' on " + sshTarget.getUsername() + "@" + sshTarget.getHostname());
       ShellResult result = sshClient.execCommand(command); //Output available only when completely done.
       taskStatus = checkForErrors(result.getOutput(), result.getExitValue());
@@ -5,6 +5,8 @@ import java.util.Map;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
+import bluegreen.manager.substituter.CommandTemplate;
+
 /**
  * Configures a shell command: the command template, variable substitutions, regular expression to detect errors,
  * expected command exit value.
@@ -34,6 +36,11 @@ public class ShellConfig
    */
   private Integer exitvalueSuccess;
 
+  /**
+   * Optional wall-clock limit on a local command, after which it is terminated and fails.  Null or zero means none.
+   */
+  private Integer timeoutSeconds;
+
   /**
    * Optional map from 'variable' to 'replacement-value'.  e.g. Map('hello', 'world') applied to command
    * "doStuff --arg %{hello}" would result in a shell command "doStuff --arg world".
@@ -42,6 +49,11 @@ public class ShellConfig
    */
   private Map<String, String> extraSubstitutions;
 
+  /**
+   * The command parsed for substitution, on first use.  Reset when the command changes.
+   */
+  private volatile CommandTemplate commandTemplate;
+
   public ShellConfig()
   {
   }
@@ -67,6 +79,21 @@ public class ShellConfig
   public void setCommand(String command)
   {
     this.command = command;
+    this.commandTemplate = null;
+  }
+
+  /**
+   * Returns the command template, parsing the command only once for all the runs that share this config.
+   */
+  public CommandTemplate getCommandTemplate()
+  {
+    CommandTemplate template = commandTemplate;
+    if (template == null)
+    {
+      template = CommandTemplate.parse(command);
+      commandTemplate = template;
+    }
+    return template;
   }
 
   public String getRegexpSuccess() {
@@ -97,6 +124,16 @@ public class ShellConfig
     this.exitvalueSuccess = exitvalueSuccess;
   }
 
+  public Integer getTimeoutSeconds()
+  {
+    return timeoutSeconds;
+  }
+
+  public void setTimeoutSeconds(Integer timeoutSeconds)
+  {
+    this.timeoutSeconds = timeoutSeconds;
+  }
+
   public Map<String, String> getExtraSubstitutions()
   {
     return extraSubstitutions;
@@ -1,27 +1,48 @@
 package bluegreen.manager.tasks;
 
+import java.io.IOException;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 
 import bluegreen.manager.model.domain.TaskStatus;
 import bluegreen.manager.substituter.StringSubstituter;
 import bluegreen.manager.substituter.StringSubstituterFactory;
+import bluegreen.manager.utils.ProcessBuilderAdapter;
+import bluegreen.manager.utils.ProcessRunner;
+import bluegreen.manager.utils.ProcessStats;
+import bluegreen.manager.utils.ShellOutputScanner;
+import bluegreen.manager.utils.Span;
+import bluegreen.manager.utils.Tracing;
 
 public abstract class ShellTask extends TaskImpl
 {
   private static final Logger LOGGER = LoggerFactory.getLogger(ShellTask.class);
 
+  private static final long DEFAULT_TERMINATION_GRACE_SECONDS = 10L;
+
   @Autowired
   private StringSubstituterFactory stringSubstituterFactory;
 
+  /**
+   * How long a local command being terminated gets to exit on its own, before it is killed.
+   */
+  @Value("${bluegreen.shell.terminationGraceSeconds:" + DEFAULT_TERMINATION_GRACE_SECONDS + "}")
+  private long terminationGraceSeconds = DEFAULT_TERMINATION_GRACE_SECONDS;
+
   protected ShellConfig shellConfig;
   protected Pattern patternError;
   protected StringSubstituter stringSubstituter;
 
+  /**
+   * How the last local command run by this task ended, or null if none.
+   */
+  private ProcessStats processStats;
+
   /**
    * Two-env shell task.
    *
@@ -89,6 +110,91 @@ public abstract class ShellTask extends TaskImpl
     return checkOutput(output) && checkExitValue(exitValue) ? TaskStatus.DONE : TaskStatus.ERROR;
   }
 
+  /**
+   * Returns DONE (success) or ERROR, based on the scanned output and how the local command ended.  A command that
+   * timed out is an error, whatever its exitValue.
+   */
+  protected TaskStatus checkForErrors(ShellOutputScanner scanner, ProcessStats processStats)
+  {
+    return !scanner.isErrorFound() && !processStats.isTimedOut() && checkExitValue(processStats.getExitValue())
+        ? TaskStatus.DONE : TaskStatus.ERROR;
+  }
+
+  /**
+   * Makes a scanner that checks process output against the error-regexp line by line.
+   *
+   * @param patternCapture Optional pattern to pick values from the output.
+   */
+  protected ShellOutputScanner makeOutputScanner(Pattern patternCapture)
+  {
+    return new ShellOutputScanner(patternError, patternCapture);
+  }
+
+  /**
+   * Runs the local command til it is done, logging and scanning stdout and stderr line by line as they stream.  Only
+   * the scanner's recent lines are kept in memory.
+   * <p/>
+   * If a line matches the error-regexp, or the command runs past the configured timeout, terminates the command and
+   * its descendants instead of waiting for the rest.
+   * <p/>
+   * Also logs the process exit value and stats, and traces the command as a "shell" span.
+   */
+  protected ProcessStats runAndScanOutput(ProcessBuilderAdapter processBuilderAdapter,
+                                          final ShellOutputScanner scanner) throws IOException, InterruptedException
+  {
+    ProcessRunner processRunner = new ProcessRunner(processBuilderAdapter, terminationGraceSeconds * 1000L);
+    LOGGER.debug("---------- OUTPUT BEGINS ----------");
+    Span span = Tracing.start("shell", "localCommand");
+    try
+    {
+      processStats = processRunner.run(new ProcessRunner.LineListener()
+      {
+        @Override
+        public boolean onLine(String line, boolean stderr)
+        {
+          LOGGER.debug(stderr ? "[stderr] " + line : line);
+          if (!scanner.scanLine(line))
+          {
+            LOGGER.error("Command output matched the error regexp, terminating the command: " + line);
+            return false;
+          }
+          return true;
+        }
+      }, getTimeoutMilliseconds());
+      span.addArg("exitValue", processStats.getExitValue()).addArg("killed", processStats.isKilled())
+          .addArg("cpuMilliseconds", processStats.getCpuMilliseconds());
+    }
+    finally
+    {
+      span.end();
+    }
+    LOGGER.debug("---------- OUTPUT ENDS ----------");
+    logExitValue(processStats.getExitValue());
+    LOGGER.info("Command ended: " + processStats);
+    if (scanner.isErrorFound() || processStats.isKilled())
+    {
+      LOGGER.info("Last lines of output (" + scanner.getNumLines() + " lines in all):\n" + scanner.getRecentOutput());
+    }
+    return processStats;
+  }
+
+  /**
+   * Returns the configured command timeout, or null if none.
+   */
+  private Long getTimeoutMilliseconds()
+  {
+    Integer timeoutSeconds = shellConfig.getTimeoutSeconds();
+    return timeoutSeconds == null || timeoutSeconds <= 0 ? null : timeoutSeconds * 1000L;
+  }
+
+  /**
+   * How the last local command run by this task ended, or null if none.
+   */
+  public ProcessStats getProcessStats()
+  {
+    return processStats;
+  }
+
   /**
    * True if output looks ok, or if error-regexp hasn't been defined.
    * False if output matches the error-regexp.
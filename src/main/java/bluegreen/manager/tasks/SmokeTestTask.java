@@ -3,6 +3,7 @@ package bluegreen.manager.tasks;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import bluegreen.manager.model.domain.TaskStatus;
@@ -12,6 +13,7 @@ import bluegreen.manager.model.domain.TaskStatus;
  */
 @Lazy
 @Component
+@Scope("prototype")
 public class SmokeTestTask extends ApplicationTask
 {
   private static final Logger LOGGER = LoggerFactory.getLogger(SmokeTestTask.class);
@@ -1,9 +1,12 @@
 package bluegreen.manager.tasks;
 
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import bluegreen.manager.model.domain.DatabaseType;
@@ -12,13 +15,14 @@ import bluegreen.manager.model.domain.TaskStatus;
 import bluegreen.manager.model.tx.EnvironmentTx;
 
 /**
- * Swaps the physical databases used by the stage env and live env.  Upon completion we have stage pointing to the
- * live db and live env pointing to the test (stage) db.
+ * Swaps the physical databases used by the stage env and live env, pairing them by logical name.  Upon completion we
+ * have stage pointing to the live dbs and live env pointing to the test (stage) dbs.
  * <p/>
  * This is just a change to the bluegreen datamodel, it does not affect any running applications.
  */
 @Lazy
 @Component
+@Scope("prototype")
 public class SwapDatabasesTask extends TwoEnvTask
 {
   private static final Logger LOGGER = LoggerFactory.getLogger(SwapDatabasesTask.class);
@@ -26,11 +30,11 @@ public class SwapDatabasesTask extends TwoEnvTask
   @Autowired
   private EnvironmentTx environmentTx;
 
-  private PhysicalDatabase newLivePhysicalDatabase;
-  private PhysicalDatabase oldLivePhysicalDatabase;
+  private List<PhysicalDatabase> newLivePhysicalDatabases;
+  private List<PhysicalDatabase> oldLivePhysicalDatabases; //Same order as newLivePhysicalDatabases
 
   /**
-   * Associates the stage environment with the live database.
+   * Associates the stage environment with the live databases.
    * <p/>
    * This is just a change to the bluegreen datamodel, it does not affect any running applications.
    */
@@ -39,11 +43,19 @@ public class SwapDatabasesTask extends TwoEnvTask
   {
     loadDataModel();
     assertPhysicalDatabaseLiveness();
-    swapPhysicalDatabaseLinks();
     persistModel(noop);
     return noop ? TaskStatus.NOOP : TaskStatus.DONE;
   }
 
+  /**
+   * Switches which database is live.
+   */
+  @Override
+  public boolean isIrreversible()
+  {
+    return true;
+  }
+
   @Override
   protected void loadDataModel()
   {
@@ -51,15 +63,24 @@ public class SwapDatabasesTask extends TwoEnvTask
     /*
      * Changes the frame of reference from live/stage to oldLive/newLive.
      */
-    this.oldLivePhysicalDatabase = livePhysicalDatabase;
-    this.newLivePhysicalDatabase = stagePhysicalDatabase;
+    this.oldLivePhysicalDatabases = livePhysicalDatabases;
+    this.newLivePhysicalDatabases = stagePhysicalDatabases;
   }
 
   /**
    * Precondition before this task makes any changes.
-   * Checks that the old env's physicaldb is live and the new env's physicaldb is stage (non-live).
+   * Checks that the old env's physicaldbs are live and the new env's physicaldbs are stage (non-live).
    */
   private void assertPhysicalDatabaseLiveness()
+  {
+    for (int idx = 0; idx < oldLivePhysicalDatabases.size(); ++idx)
+    {
+      assertPhysicalDatabaseLiveness(oldLivePhysicalDatabases.get(idx), newLivePhysicalDatabases.get(idx));
+    }
+  }
+
+  private void assertPhysicalDatabaseLiveness(PhysicalDatabase oldLivePhysicalDatabase,
+                                              PhysicalDatabase newLivePhysicalDatabase)
   {
     if (!oldLivePhysicalDatabase.isLive())
     {
@@ -74,9 +95,21 @@ public class SwapDatabasesTask extends TwoEnvTask
   }
 
   /**
-   * Swaps the physicaldb content of newLive and oldLive.  Excludes id and logicaldb parent fields.
+   * Swaps the physicaldb content of each newLive and oldLive pair.
    */
   private void swapPhysicalDatabaseLinks()
+  {
+    for (int idx = 0; idx < oldLivePhysicalDatabases.size(); ++idx)
+    {
+      swapPhysicalDatabaseLinks(oldLivePhysicalDatabases.get(idx), newLivePhysicalDatabases.get(idx));
+    }
+  }
+
+  /**
+   * Swaps the physicaldb content of newLive and oldLive.  Excludes id and logicaldb parent fields.
+   */
+  private void swapPhysicalDatabaseLinks(PhysicalDatabase oldLivePhysicalDatabase,
+                                         PhysicalDatabase newLivePhysicalDatabase)
   {
     DatabaseType oldLiveDatabaseType = oldLivePhysicalDatabase.getDatabaseType();
     String oldLiveInstanceName = oldLivePhysicalDatabase.getInstanceName();
@@ -104,15 +137,18 @@ public class SwapDatabasesTask extends TwoEnvTask
   }
 
   /**
-   * Opens a transaction and persists the updated physicaldb entities.
+   * Swaps the physicaldb entities, then opens a transaction and persists them.
+   * <p/>
+   * Noop leaves the entities alone, since they are shared with the other tasks of the job.
    */
   private void persistModel(boolean noop)
   {
     LOGGER.info(context() + "Swapping physical database links used by stage environment and live environment" + noopRemark(noop));
     if (!noop)
     {
-      environmentTx.updateEnvironment(liveEnv); //Cascades to modified physicaldb.
-      environmentTx.updateEnvironment(stageEnv); //Cascades to modified physicaldb.
+      swapPhysicalDatabaseLinks();
+      environmentTx.updateEnvironment(liveEnv); //Cascades to modified physicaldbs.
+      environmentTx.updateEnvironment(stageEnv); //Cascades to modified physicaldbs.
     }
   }
 }
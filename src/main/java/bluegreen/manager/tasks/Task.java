@@ -21,4 +21,10 @@ public interface Task
    * Returns the task name (class simple name).
    */
   String getName();
+
+  /**
+   * Returns true if the task makes a change that a rerun cannot undo or redo (e.g. deleting a database), so the job
+   * history leading up to it must be durable before it starts.
+   */
+  boolean isIrreversible();
 }
@@ -45,4 +45,13 @@ public abstract class TaskImpl implements Task
   {
     return name;
   }
+
+  /**
+   * Tasks are reversible unless they say otherwise.
+   */
+  @Override
+  public boolean isIrreversible()
+  {
+    return false;
+  }
 }
@@ -13,10 +13,16 @@ import bluegreen.manager.jobs.SkipRemarkHelper;
 import bluegreen.manager.model.domain.JobHistory;
 import bluegreen.manager.model.domain.TaskHistory;
 import bluegreen.manager.model.domain.TaskStatus;
-import bluegreen.manager.model.tx.TaskHistoryTx;
+import bluegreen.manager.model.tx.HistoryRecorder;
+import bluegreen.manager.utils.MetricRegistry;
+import bluegreen.manager.utils.ProcessStats;
+import bluegreen.manager.utils.Span;
+import bluegreen.manager.utils.Tracing;
 
 /**
  * Processes tasks, writes their task history, and considers the context of prior tasks in old job history.
+ * <p/>
+ * Task attempts are counted by status, and processed tasks timed, in the bluegreen_task* metrics.
  */
 @Lazy
 @Component
@@ -28,22 +34,42 @@ public class TaskRunProcessor
   private SkipRemarkHelper skipRemarkHelper;
 
   @Autowired
-  private TaskHistoryTx taskHistoryTx;
+  private HistoryRecorder historyRecorder;
+
+  @Autowired
+  private MetricRegistry metricRegistry;
 
   /**
    * Attempts to process the task, according to noop/force settings and prior task history.
    * Persists new task history with the result.
+   * <p/>
+   * Traces the attempt as a task span on its own lane, since tasks of a job may run concurrently.
    */
   public TaskStatus attemptTask(TaskRun taskRun)
   {
-    boolean skip = chooseToSkipOrForce(taskRun);
-    if (skip)
+    Task task = taskRun.getTask();
+    Span span = Tracing.startLane("task", task.getName(), "Task #" + task.getPosition() + " " + task.getName());
+    TaskStatus taskStatus = null;
+    try
     {
-      return skipTaskHistory(taskRun);
+      boolean skip = chooseToSkipOrForce(taskRun);
+      if (skip)
+      {
+        taskStatus = skipTaskHistory(taskRun);
+      }
+      else
+      {
+        taskStatus = openProcessCloseTask(taskRun);
+      }
+      return taskStatus;
     }
-    else
+    finally
     {
-      return openProcessCloseTask(taskRun);
+      TaskStatus finalStatus = taskStatus == null ? TaskStatus.ERROR : taskStatus;
+      span.addArg("status", finalStatus);
+      span.end();
+      metricRegistry.counter("bluegreen_tasks_total", "Task attempts by final status",
+          "task", task.getName(), "status", finalStatus.name()).increment();
     }
   }
 
@@ -65,17 +91,21 @@ public class TaskRunProcessor
     finally
     {
       LOGGER.debug("Task " + taskRun.getTask().getName() + " done ... time elapsed: " + stopWatch.toString());
+      metricRegistry.histogram("bluegreen_task_milliseconds", "Time to process tasks, skipped tasks not included",
+          MetricRegistry.LONG_DURATION_BUCKETS, "task", taskRun.getTask().getName()).record(stopWatch.getTime());
       if (taskStatus == null)
       {
         taskStatus = TaskStatus.ERROR;
       }
+      recordProcessStats(taskRun.getTask(), taskHistory);
       closeTaskHistory(taskRun.isNoop(), taskHistory, taskStatus);
     }
     return taskStatus;
   }
 
   /**
-   * Calls to persist a new TaskHistory in PROCESSING state.
+   * Calls to record a new TaskHistory in PROCESSING state.  Before an irreversible task, waits for the history so far
+   * to be durable.
    */
   private TaskHistory openTaskHistory(TaskRun taskRun)
   {
@@ -85,30 +115,52 @@ public class TaskRunProcessor
     }
     else
     {
-      return taskHistoryTx.newTaskHistoryProcessing(
+      TaskHistory taskHistory = historyRecorder.newTaskHistoryProcessing(
           taskRun.getTask(), taskRun.getNewJobHistory());
+      if (taskRun.getTask().isIrreversible())
+      {
+        historyRecorder.flush();
+      }
+      return taskHistory;
+    }
+  }
+
+  /**
+   * If the task ran a local command, copies its exit value and timings to the task history.
+   */
+  private void recordProcessStats(Task task, TaskHistory taskHistory)
+  {
+    if (taskHistory != null && task instanceof ShellTask)
+    {
+      ProcessStats processStats = ((ShellTask) task).getProcessStats();
+      if (processStats != null)
+      {
+        taskHistory.setExitValue(processStats.getExitValue());
+        taskHistory.setProcessMilliseconds(processStats.getElapsedMilliseconds());
+        taskHistory.setProcessCpuMilliseconds(processStats.getCpuMilliseconds());
+      }
     }
   }
 
   /**
-   * Calls to persist a closed TaskHistory, which means setting endTime and final status.
+   * Calls to record a closed TaskHistory, which means setting endTime and final status.
    */
   private void closeTaskHistory(boolean noop, TaskHistory taskHistory, TaskStatus taskStatus)
   {
     if (!noop)
     {
-      taskHistoryTx.closeTaskHistory(taskHistory, taskStatus);
+      historyRecorder.closeTaskHistory(taskHistory, taskStatus);
     }
   }
 
   /**
-   * In the SKIP case, calls to persist a new TaskHistory with an endTime and skip status.
+   * In the SKIP case, calls to record a new TaskHistory with an endTime and skip status.
    */
   TaskStatus skipTaskHistory(TaskRun taskRun)
   {
     if (!taskRun.isNoop())
     {
-      taskHistoryTx.newTaskHistorySkipped(
+      historyRecorder.newTaskHistorySkipped(
           taskRun.getTask(), taskRun.getNewJobHistory());
     }
     return TaskStatus.SKIPPED;
@@ -1,6 +1,7 @@
 package bluegreen.manager.tasks;
 
 import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import bluegreen.manager.client.app.DbFreezeMode;
@@ -11,6 +12,7 @@ import bluegreen.manager.client.app.DbFreezeRest;
  */
 @Lazy
 @Component
+@Scope("prototype")
 public class ThawTask extends TransitionTask
 {
   private static final String VERB = "thaw";
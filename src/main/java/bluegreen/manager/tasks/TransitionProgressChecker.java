@@ -1,6 +1,7 @@
 package bluegreen.manager.tasks;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -15,6 +16,11 @@ import bluegreen.manager.utils.ProgressChecker;
  * Knows how to check progress of an Application undergoing dbfreeze transition.
  * <p/>
  * "Result": True if the application has reached destination mode prior to timeout.
+ * <p/>
+ * If given longPollSeconds, followup checks long-poll the application, which responds as soon as its mode changes,
+ * so the change is seen right away instead of up to one polling interval later.  Falls back to plain polling for the
+ * rest of the wait if the application rejects the long-poll request, or answers it right away with an unchanged mode
+ * (which means it ignored the long-poll parameters).
  */
 public class TransitionProgressChecker implements ProgressChecker<Boolean>
 {
@@ -26,6 +32,9 @@ public class TransitionProgressChecker implements ProgressChecker<Boolean>
   protected ApplicationClient applicationClient;
   protected ApplicationSession applicationSession;
   protected Application application;
+  private int longPollSeconds;
+  private boolean longPolling;
+  private DbFreezeMode lastMode;
   private boolean done;
   private Boolean result;
 
@@ -35,6 +44,20 @@ public class TransitionProgressChecker implements ProgressChecker<Boolean>
                                    ApplicationClient applicationClient,
                                    ApplicationSession applicationSession,
                                    Application application)
+  {
+    this(transitionParameters, logContext, initialProgress, applicationClient, applicationSession, application, 0);
+  }
+
+  /**
+   * Zero longPollSeconds means plain polling.
+   */
+  public TransitionProgressChecker(TransitionParameters transitionParameters,
+                                   String logContext,
+                                   DbFreezeProgress initialProgress,
+                                   ApplicationClient applicationClient,
+                                   ApplicationSession applicationSession,
+                                   Application application,
+                                   int longPollSeconds)
   {
     this.transitionParameters = transitionParameters;
     this.logContext = logContext;
@@ -42,6 +65,8 @@ public class TransitionProgressChecker implements ProgressChecker<Boolean>
     this.applicationClient = applicationClient;
     this.applicationSession = applicationSession;
     this.application = application;
+    this.longPollSeconds = longPollSeconds;
+    this.longPolling = longPollSeconds > 0;
   }
 
   @Override
@@ -76,7 +101,9 @@ public class TransitionProgressChecker implements ProgressChecker<Boolean>
   @Override
   public void followupCheck(int waitNum)
   {
-    DbFreezeProgress dbFreezeProgress = applicationClient.getDbFreezeProgress(application, applicationSession, waitNum);
+    DbFreezeProgress dbFreezeProgress = longPolling && lastMode != null
+        ? longPollProgress(waitNum)
+        : applicationClient.getDbFreezeProgress(application, applicationSession, waitNum);
     LOGGER.debug(logContext + "Application response after wait#" + waitNum + ": " + dbFreezeProgress);
     dbFreezeProgress = nullIfErrorProgress(dbFreezeProgress, waitNum);
     DbFreezeMode mode = null;
@@ -87,11 +114,51 @@ public class TransitionProgressChecker implements ProgressChecker<Boolean>
     checkMode(mode);
   }
 
+  /**
+   * Long-polls the application for a change from the last mode seen.  Falls back to plain polling if the application
+   * does not support it.
+   */
+  private DbFreezeProgress longPollProgress(int waitNum)
+  {
+    StopWatch stopWatch = new StopWatch();
+    stopWatch.start();
+    DbFreezeProgress dbFreezeProgress;
+    try
+    {
+      dbFreezeProgress = applicationClient.getDbFreezeProgressChange(application, applicationSession, lastMode,
+          longPollSeconds, waitNum);
+    }
+    catch (RuntimeException e)
+    {
+      LOGGER.warn(logContext + "Application rejected long-poll request, falling back to polling: " + e.getMessage());
+      longPolling = false;
+      return applicationClient.getDbFreezeProgress(application, applicationSession, waitNum);
+    }
+    stopWatch.stop();
+    if (dbFreezeProgress != null && dbFreezeProgress.getMode() == lastMode
+        && stopWatch.getTime() < longPollSeconds * 1000L / 2)
+    {
+      LOGGER.info(logContext + "Application answered long-poll right away with unchanged mode '" + lastMode
+          + "', falling back to polling");
+      longPolling = false;
+    }
+    return dbFreezeProgress;
+  }
+
+  /**
+   * True while followup checks long-poll the application, meaning the waiter need not sleep between checks.
+   */
+  public boolean isLongPolling()
+  {
+    return longPolling;
+  }
+
   /**
    * Performs the check, based on the application's dbfreeze mode.
    */
   private void checkMode(DbFreezeMode mode)
   {
+    lastMode = mode;
     if (mode == null)
     {
       // Application error, already logged.
@@ -5,6 +5,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 
 import bluegreen.manager.client.app.DbFreezeMode;
 import bluegreen.manager.client.app.DbFreezeProgress;
@@ -27,8 +28,22 @@ public abstract class TransitionTask extends ApplicationTask
   @Autowired
   private ThreadSleeper threadSleeper;
 
+  @Autowired
+  private PollingPolicyFactory pollingPolicyFactory;
+
+  /**
+   * Set false to poll the application's progress at fixed delays, even if it supports long-polling.
+   */
+  @Value("${bluegreen.app.longPoll:true}")
+  private boolean longPoll = true;
+
   private TransitionParameters transitionParameters;
 
+  /**
+   * Optional, set by jobs that measure their freeze window.
+   */
+  private FreezeWindowTracker freezeWindowTracker;
+
   public abstract TransitionTask assignTransition(int position, String envName);
 
   protected void assign(int position, String envName, TransitionParameters transitionParameters)
@@ -37,6 +52,17 @@ public abstract class TransitionTask extends ApplicationTask
     this.transitionParameters = transitionParameters;
   }
 
+  /**
+   * Reports the request and completion of this transition to the job's freeze window tracker.
+   *
+   * @return Self, so job can assign and track in one line.
+   */
+  public TransitionTask trackFreezeWindow(FreezeWindowTracker freezeWindowTracker)
+  {
+    this.freezeWindowTracker = freezeWindowTracker;
+    return this;
+  }
+
   /**
    * Attempts to transition the target application, waits for it to finish.
    */
@@ -53,6 +79,10 @@ public abstract class TransitionTask extends ApplicationTask
       {
         if (waitForTransition(progressChecker, noop))
         {
+          if (!noop && freezeWindowTracker != null)
+          {
+            freezeWindowTracker.transitionReached(transitionParameters.getDestinationMode());
+          }
           taskStatus = noop ? TaskStatus.NOOP : TaskStatus.DONE;
         }
       }
@@ -116,14 +146,26 @@ public abstract class TransitionTask extends ApplicationTask
     if (!noop)
     {
       final int waitNum = 0;
+      if (freezeWindowTracker != null)
+      {
+        freezeWindowTracker.transitionRequested(transitionParameters.getDestinationMode());
+      }
       DbFreezeProgress initialProgress = applicationClient.putRequestTransition(application, applicationSession,
           transitionParameters.getTransitionMethodPath(), waitNum);
       progressChecker = new TransitionProgressChecker(transitionParameters, context(), initialProgress,
-          applicationClient, applicationSession, application);
+          applicationClient, applicationSession, application, getLongPollSeconds());
     }
     return progressChecker;
   }
 
+  /**
+   * Each long-poll lasts up to one followup delay, or zero (disabled).
+   */
+  private int getLongPollSeconds()
+  {
+    return longPoll ? (int) Math.max(1L, waiterParameters.getFollowupWaitDelayMilliseconds() / 1000L) : 0;
+  }
+
   /**
    * Waits for the application to finish the requested transition.
    *
@@ -136,12 +178,20 @@ public abstract class TransitionTask extends ApplicationTask
     LOGGER.info(context() + "Waiting for " + transitionParameters.getVerb() + " to take effect" + noopRemark(noop));
     if (!noop)
     {
-      Waiter<Boolean> waiter = new Waiter(waiterParameters, threadSleeper, progressChecker);
+      Waiter<Boolean> waiter = new Waiter(waiterParameters, threadSleeper, progressChecker,
+          new LongPollingPolicy(pollingPolicyFactory.create(waiterParameters,
+              PollingPolicyFactory.APP_TRANSITION_PREFIX + transitionParameters.getVerb()), progressChecker));
       return waiter.waitTilDone();
     }
     return true;
   }
 
+  //Test purposes only
+  void setLongPoll(boolean longPoll)
+  {
+    this.longPoll = longPoll;
+  }
+
   // Test purposes only
   public TransitionParameters getTransitionParameters()
   {
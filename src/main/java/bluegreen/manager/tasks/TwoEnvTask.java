@@ -1,5 +1,7 @@
 package bluegreen.manager.tasks;
 
+import java.util.List;
+
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -26,10 +28,10 @@ public abstract class TwoEnvTask extends TaskImpl
   protected Environment liveEnv;
   protected ApplicationVm liveApplicationVm;
   protected Application liveApplication;
-  protected PhysicalDatabase livePhysicalDatabase;
+  protected List<PhysicalDatabase> livePhysicalDatabases;
   protected Environment stageEnv;
   protected ApplicationVm stageApplicationVm;
-  protected PhysicalDatabase stagePhysicalDatabase;
+  protected List<PhysicalDatabase> stagePhysicalDatabases; //Same order as livePhysicalDatabases
 
   public Task assign(int position, String liveEnvName, String stageEnvName)
   {
@@ -48,8 +50,8 @@ public abstract class TwoEnvTask extends TaskImpl
    * this task is about to begin processing.
    * <p/>
    * Looks up the two environments by name.
-   * Currently requires that the envs have exactly one applicationVm, one logical/physicaldb, and that the live env
-   * has exactly one application.
+   * Currently requires that the envs have exactly one applicationVm, the same logicaldbs (by name) each with a
+   * physicaldb, and that the live env has exactly one application.
    */
   protected void loadDataModel()
   {
@@ -59,10 +61,10 @@ public abstract class TwoEnvTask extends TaskImpl
     this.liveEnv = twoEnvLoader.getLiveEnv();
     this.liveApplicationVm = twoEnvLoader.getLiveApplicationVm();
     this.liveApplication = twoEnvLoader.getLiveApplication();
-    this.livePhysicalDatabase = twoEnvLoader.getLivePhysicalDatabase();
+    this.livePhysicalDatabases = twoEnvLoader.getLivePhysicalDatabases();
     this.stageEnv = twoEnvLoader.getStageEnv();
     this.stageApplicationVm = twoEnvLoader.getStageApplicationVm();
-    this.stagePhysicalDatabase = twoEnvLoader.getStagePhysicalDatabase();
+    this.stagePhysicalDatabases = twoEnvLoader.getStagePhysicalDatabases();
   }
 
   protected String context(Environment environment)
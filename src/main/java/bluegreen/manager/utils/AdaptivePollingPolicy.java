@@ -0,0 +1,95 @@
+package bluegreen.manager.utils;
+
+/**
+ * Polls rarely while the operation is far from its expected finish, and densely around it.
+ * <p/>
+ * Before the expected finish, each delay is half the expected remaining time, so checks close in on the prediction
+ * geometrically; but the first delay is never longer than the fixed initial delay, nor any later one longer than
+ * MAX_DELAY_FACTOR times the fixed followup delay, so an expected duration learned too high cannot make us notice a
+ * quick finish much later than fixed polling would.  From shortly before until shortly after the expected finish,
+ * checks come at the dense delay, a fraction of the fixed followup delay.  Past that window the operation is running
+ * long and we fall back to the fixed followup delay.
+ * <p/>
+ * Times out after the same wall-clock budget the fixed policy would allow, with a cap on the number of checks as a
+ * backstop.
+ */
+public class AdaptivePollingPolicy implements PollingPolicy
+{
+  public static final String NAME = "ADAPTIVE";
+
+  /**
+   * Dense delay is the followup delay divided by this.
+   */
+  static final int DENSITY_FACTOR = 4;
+
+  /**
+   * Dense polling continues past the expected finish by this fraction of the expected duration.
+   */
+  static final double OVERRUN_FRACTION = 0.25;
+
+  /**
+   * Far from the expected finish, delays are at most the followup delay times this.
+   */
+  static final int MAX_DELAY_FACTOR = 4;
+
+  private WaiterParameters waiterParameters;
+  private long expectedDurationMilliseconds;
+  private long denseDelayMilliseconds;
+  private long maxDelayMilliseconds;
+  private long timeoutMilliseconds;
+
+  public AdaptivePollingPolicy(WaiterParameters waiterParameters, long expectedDurationMilliseconds)
+  {
+    this.waiterParameters = waiterParameters;
+    this.expectedDurationMilliseconds = expectedDurationMilliseconds;
+    this.denseDelayMilliseconds = Math.max(1L, waiterParameters.getFollowupWaitDelayMilliseconds() / DENSITY_FACTOR);
+    this.maxDelayMilliseconds = waiterParameters.getFollowupWaitDelayMilliseconds() * MAX_DELAY_FACTOR;
+    this.timeoutMilliseconds = waiterParameters.getInitialWaitDelayMilliseconds()
+        + (waiterParameters.getMaxNumWaits() - 1) * waiterParameters.getFollowupWaitDelayMilliseconds();
+  }
+
+  @Override
+  public long getDelayMilliseconds(int waitNum, long elapsedMilliseconds)
+  {
+    final long remaining = expectedDurationMilliseconds - elapsedMilliseconds;
+    if (remaining > 2 * denseDelayMilliseconds)
+    {
+      final long maxDelay = waitNum == 1 ? waiterParameters.getInitialWaitDelayMilliseconds() : maxDelayMilliseconds;
+      return Math.min(remaining / 2, maxDelay);
+    }
+    else if (elapsedMilliseconds < expectedDurationMilliseconds * (1.0 + OVERRUN_FRACTION))
+    {
+      return denseDelayMilliseconds;
+    }
+    return waiterParameters.getFollowupWaitDelayMilliseconds();
+  }
+
+  @Override
+  public boolean isExhausted(int waitNum, long elapsedMilliseconds)
+  {
+    return elapsedMilliseconds >= timeoutMilliseconds
+        || waitNum >= waiterParameters.getMaxNumWaits() * DENSITY_FACTOR + 1;
+  }
+
+  @Override
+  public String getName()
+  {
+    return NAME;
+  }
+
+  @Override
+  public void waitEnded(boolean done, int numChecks, long elapsedMilliseconds, long detectionLagMilliseconds)
+  {
+    //Nothing to learn within one wait
+  }
+
+  public long getExpectedDurationMilliseconds()
+  {
+    return expectedDurationMilliseconds;
+  }
+
+  public long getDenseDelayMilliseconds()
+  {
+    return denseDelayMilliseconds;
+  }
+}
@@ -0,0 +1,27 @@
+package bluegreen.manager.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A count that only goes up, e.g. of requests made.  Threadsafe.
+ */
+public class Counter implements CounterMBean
+{
+  private final AtomicLong count = new AtomicLong();
+
+  public void increment()
+  {
+    count.incrementAndGet();
+  }
+
+  public void add(long amount)
+  {
+    count.addAndGet(amount);
+  }
+
+  @Override
+  public long getCount()
+  {
+    return count.get();
+  }
+}
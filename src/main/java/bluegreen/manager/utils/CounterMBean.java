@@ -0,0 +1,9 @@
+package bluegreen.manager.utils;
+
+/**
+ * JMX view of a Counter.
+ */
+public interface CounterMBean
+{
+  long getCount();
+}
@@ -0,0 +1,173 @@
+package bluegreen.manager.utils;
+
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.zaxxer.hikari.metrics.MetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+/**
+ * Collects the metrics of the discovery db connection pool: how long callers waited for a connection, how long they
+ * held it, how many gave up waiting, and the current active/idle/pending counts.
+ * <p/>
+ * Wired into the pool in persist.xml.  Summarized in the log at shutdown, and exported as bluegreen_db_pool_* metrics.
+ */
+@Component
+public class DataSourcePoolMetrics implements MetricsTrackerFactory
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(DataSourcePoolMetrics.class);
+
+  @Autowired
+  private MetricRegistry metricRegistry;
+
+  private final LatencyHistogram waitHistogram = new LatencyHistogram();
+  private final LatencyHistogram usageHistogram = new LatencyHistogram();
+
+  private volatile String poolName;
+  private volatile PoolStats poolStats;
+  private long numTimeouts;
+
+  @PostConstruct
+  public void exportMetrics()
+  {
+    metricRegistry.histogram("bluegreen_db_pool_wait_milliseconds", "Time spent waiting for a db connection",
+        waitHistogram);
+    metricRegistry.histogram("bluegreen_db_pool_usage_milliseconds", "Time each db connection was held",
+        usageHistogram);
+    metricRegistry.counter("bluegreen_db_pool_timeouts_total", "Gave up waiting for a db connection", new Gauge()
+    {
+      @Override
+      public double getValue()
+      {
+        return getNumTimeouts();
+      }
+    });
+    metricRegistry.gauge("bluegreen_db_pool_active", "Db connections in use", new Gauge()
+    {
+      @Override
+      public double getValue()
+      {
+        return getActiveConnections();
+      }
+    });
+    metricRegistry.gauge("bluegreen_db_pool_idle", "Idle pooled db connections", new Gauge()
+    {
+      @Override
+      public double getValue()
+      {
+        return getIdleConnections();
+      }
+    });
+    metricRegistry.gauge("bluegreen_db_pool_pending", "Threads waiting for a db connection", new Gauge()
+    {
+      @Override
+      public double getValue()
+      {
+        return getPendingThreads();
+      }
+    });
+  }
+
+  @Override
+  public MetricsTracker create(String poolName, PoolStats poolStats)
+  {
+    this.poolName = poolName;
+    this.poolStats = poolStats;
+    return new MetricsTracker()
+    {
+      @Override
+      public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos)
+      {
+        waitHistogram.record(TimeUnit.NANOSECONDS.toMillis(elapsedAcquiredNanos));
+      }
+
+      @Override
+      public void recordConnectionUsageMillis(long elapsedBorrowedMillis)
+      {
+        usageHistogram.record(elapsedBorrowedMillis);
+      }
+
+      @Override
+      public void recordConnectionTimeout()
+      {
+        synchronized (DataSourcePoolMetrics.this)
+        {
+          ++numTimeouts;
+        }
+      }
+    };
+  }
+
+  /**
+   * Time spent waiting for a connection from the pool.
+   */
+  public LatencyHistogram getWaitHistogram()
+  {
+    return waitHistogram;
+  }
+
+  /**
+   * Time each connection was held before being returned to the pool.
+   */
+  public LatencyHistogram getUsageHistogram()
+  {
+    return usageHistogram;
+  }
+
+  /**
+   * Number of callers that gave up waiting for a connection.
+   */
+  public synchronized long getNumTimeouts()
+  {
+    return numTimeouts;
+  }
+
+  public int getActiveConnections()
+  {
+    return poolStats == null ? 0 : poolStats.getActiveConnections();
+  }
+
+  public int getIdleConnections()
+  {
+    return poolStats == null ? 0 : poolStats.getIdleConnections();
+  }
+
+  public int getTotalConnections()
+  {
+    return poolStats == null ? 0 : poolStats.getTotalConnections();
+  }
+
+  /**
+   * Threads currently waiting for a connection.
+   */
+  public int getPendingThreads()
+  {
+    return poolStats == null ? 0 : poolStats.getPendingThreads();
+  }
+
+  /**
+   * Pool counts, waits, usage and timeouts, on one line.
+   */
+  public String summarize()
+  {
+    return "Connection pool '" + poolName + "': active=" + getActiveConnections() + ", idle=" + getIdleConnections()
+        + ", pending=" + getPendingThreads() + ", wait [" + waitHistogram.summarize() + "], usage ["
+        + usageHistogram.summarize() + "], timeouts=" + getNumTimeouts();
+  }
+
+  @PreDestroy
+  public void logSummary()
+  {
+    if (poolStats != null)
+    {
+      LOGGER.info(summarize());
+    }
+  }
+}
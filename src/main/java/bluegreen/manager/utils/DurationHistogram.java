@@ -0,0 +1,124 @@
+package bluegreen.manager.utils;
+
+import java.util.Arrays;
+
+/**
+ * Counts durations into log-linear buckets, so percentiles of long-running steps can be estimated in constant space.
+ * <p/>
+ * Each power of two of milliseconds is split into 16 equal buckets, so a percentile is reported at most about 6%
+ * above the true value (the upper bound of its bucket, capped at the max).  Unlike LatencyHistogram, which is meant
+ * for short calls, there is no upper limit: the bucket array grows to fit the longest duration recorded.
+ * <p/>
+ * Not threadsafe.
+ */
+public class DurationHistogram
+{
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int NUM_SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  private long[] bucketCounts = new long[NUM_SUB_BUCKETS];
+  private long count;
+  private long totalMilliseconds;
+  private long maxMilliseconds;
+
+  /**
+   * Records one duration.  Negative durations (clock skew) count as zero.
+   */
+  public void record(long milliseconds)
+  {
+    milliseconds = Math.max(0L, milliseconds);
+    int bucket = findBucket(milliseconds);
+    ensureBuckets(bucket + 1);
+    ++bucketCounts[bucket];
+    ++count;
+    totalMilliseconds += milliseconds;
+    maxMilliseconds = Math.max(maxMilliseconds, milliseconds);
+  }
+
+  /**
+   * Adds the other histogram's durations to this one.
+   */
+  public void add(DurationHistogram other)
+  {
+    ensureBuckets(other.bucketCounts.length);
+    for (int bucket = 0; bucket < other.bucketCounts.length; ++bucket)
+    {
+      bucketCounts[bucket] += other.bucketCounts[bucket];
+    }
+    count += other.count;
+    totalMilliseconds += other.totalMilliseconds;
+    maxMilliseconds = Math.max(maxMilliseconds, other.maxMilliseconds);
+  }
+
+  private void ensureBuckets(int numBuckets)
+  {
+    if (bucketCounts.length < numBuckets)
+    {
+      bucketCounts = Arrays.copyOf(bucketCounts, numBuckets);
+    }
+  }
+
+  /**
+   * Durations below 16ms get a bucket each.  Above that, the top 5 bits of the duration pick the bucket within its
+   * power of two.
+   */
+  static int findBucket(long milliseconds)
+  {
+    if (milliseconds < NUM_SUB_BUCKETS)
+    {
+      return (int) milliseconds;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(milliseconds) - SUB_BUCKET_BITS;
+    int subBucket = (int) (milliseconds >> shift) - NUM_SUB_BUCKETS;
+    return NUM_SUB_BUCKETS + shift * NUM_SUB_BUCKETS + subBucket;
+  }
+
+  static long getBucketUpperBound(int bucket)
+  {
+    if (bucket < NUM_SUB_BUCKETS)
+    {
+      return bucket;
+    }
+    int shift = (bucket - NUM_SUB_BUCKETS) / NUM_SUB_BUCKETS;
+    long subBucket = (bucket - NUM_SUB_BUCKETS) % NUM_SUB_BUCKETS;
+    return ((NUM_SUB_BUCKETS + subBucket + 1) << shift) - 1;
+  }
+
+  public long getCount()
+  {
+    return count;
+  }
+
+  public long getMaxMilliseconds()
+  {
+    return maxMilliseconds;
+  }
+
+  public long getMeanMilliseconds()
+  {
+    return count == 0 ? 0L : totalMilliseconds / count;
+  }
+
+  /**
+   * Returns the bucket upper bound at or below which the given fraction (0 to 1) of durations fall, capped at the
+   * max.  Zero if nothing was recorded.
+   */
+  public long getPercentileMilliseconds(double fraction)
+  {
+    if (count == 0)
+    {
+      return 0L;
+    }
+    long threshold = Math.max(1L, (long) Math.ceil(fraction * count));
+    long cumulative = 0;
+    for (int bucket = 0; bucket < bucketCounts.length; ++bucket)
+    {
+      cumulative += bucketCounts[bucket];
+      if (cumulative >= threshold)
+      {
+        return Math.min(getBucketUpperBound(bucket), maxMilliseconds);
+      }
+    }
+    return maxMilliseconds;
+  }
+}
@@ -0,0 +1,42 @@
+package bluegreen.manager.utils;
+
+/**
+ * Polls at the fixed delays of the WaiterParameters: the initial delay once, then the followup delay, and times out
+ * after max num waits.
+ */
+public class FixedPollingPolicy implements PollingPolicy
+{
+  public static final String NAME = "FIXED";
+
+  private WaiterParameters waiterParameters;
+
+  public FixedPollingPolicy(WaiterParameters waiterParameters)
+  {
+    this.waiterParameters = waiterParameters;
+  }
+
+  @Override
+  public long getDelayMilliseconds(int waitNum, long elapsedMilliseconds)
+  {
+    return waitNum == 1 ? waiterParameters.getInitialWaitDelayMilliseconds()
+        : waiterParameters.getFollowupWaitDelayMilliseconds();
+  }
+
+  @Override
+  public boolean isExhausted(int waitNum, long elapsedMilliseconds)
+  {
+    return waitNum >= waiterParameters.getMaxNumWaits() + 1; //Not counting "waitNum#0" since first one doesn't sleep
+  }
+
+  @Override
+  public String getName()
+  {
+    return NAME;
+  }
+
+  @Override
+  public void waitEnded(boolean done, int numChecks, long elapsedMilliseconds, long detectionLagMilliseconds)
+  {
+    //Nothing to learn
+  }
+}
@@ -0,0 +1,10 @@
+package bluegreen.manager.utils;
+
+/**
+ * Reads the current value of a metric kept elsewhere, e.g. the connections in use by a pool.  Called whenever the
+ * metrics are exported, so should be cheap.
+ */
+public interface Gauge
+{
+  double getValue();
+}
@@ -0,0 +1,129 @@
+package bluegreen.manager.utils;
+
+/**
+ * Counts latencies into power-of-two millisecond buckets, so percentiles can be estimated in constant space.
+ * <p/>
+ * Bucket N holds latencies up to 2^N ms; the last bucket holds everything longer.  Percentiles are reported as the
+ * upper bound of the bucket they fall in.
+ * <p/>
+ * The default 18 buckets suit calls (the last bucket starts past 2 minutes).  Pass more buckets for long-running
+ * steps.  Exposed over JMX by the MetricRegistry.
+ */
+public class LatencyHistogram implements LatencyHistogramMBean
+{
+  public static final int DEFAULT_NUM_BUCKETS = 18;
+
+  private final int numBuckets;
+  private final long[] bucketCounts;
+  private long count;
+  private long totalMilliseconds;
+  private long maxMilliseconds;
+
+  public LatencyHistogram()
+  {
+    this(DEFAULT_NUM_BUCKETS);
+  }
+
+  public LatencyHistogram(int numBuckets)
+  {
+    this.numBuckets = numBuckets;
+    this.bucketCounts = new long[numBuckets];
+  }
+
+  public synchronized void record(long milliseconds)
+  {
+    ++bucketCounts[findBucket(milliseconds)];
+    ++count;
+    totalMilliseconds += milliseconds;
+    maxMilliseconds = Math.max(maxMilliseconds, milliseconds);
+  }
+
+  private int findBucket(long milliseconds)
+  {
+    int bucket = 0;
+    while (bucket < numBuckets - 1 && milliseconds > getBucketUpperBound(bucket))
+    {
+      ++bucket;
+    }
+    return bucket;
+  }
+
+  /**
+   * Upper bound of the bucket in ms.  The last bucket has none, it holds everything longer than the one before.
+   */
+  public long getBucketUpperBound(int bucket)
+  {
+    return 1L << bucket;
+  }
+
+  public int getNumBuckets()
+  {
+    return numBuckets;
+  }
+
+  /**
+   * Count of latencies in each bucket (not cumulative).
+   */
+  public synchronized long[] getBucketCounts()
+  {
+    return bucketCounts.clone();
+  }
+
+  @Override
+  public synchronized long getCount()
+  {
+    return count;
+  }
+
+  @Override
+  public synchronized long getTotalMilliseconds()
+  {
+    return totalMilliseconds;
+  }
+
+  @Override
+  public synchronized long getMaxMilliseconds()
+  {
+    return maxMilliseconds;
+  }
+
+  @Override
+  public synchronized long getMeanMilliseconds()
+  {
+    return count == 0 ? 0L : totalMilliseconds / count;
+  }
+
+  /**
+   * Returns the bucket upper bound at or below which the given fraction (0 to 1) of latencies fall, or the max if it
+   * falls in the last bucket.  Zero if nothing was recorded.
+   */
+  @Override
+  public synchronized long getPercentileMilliseconds(double fraction)
+  {
+    if (count == 0)
+    {
+      return 0L;
+    }
+    long threshold = (long) Math.ceil(fraction * count);
+    long cumulative = 0;
+    for (int bucket = 0; bucket < numBuckets - 1; ++bucket)
+    {
+      cumulative += bucketCounts[bucket];
+      if (cumulative >= threshold)
+      {
+        return Math.min(getBucketUpperBound(bucket), maxMilliseconds);
+      }
+    }
+    return maxMilliseconds;
+  }
+
+  /**
+   * Count, mean, p50, p90, p99 and max, on one line.
+   */
+  public synchronized String summarize()
+  {
+    return "n=" + count + ", mean=" + getMeanMilliseconds() + "ms, p50<=" + getPercentileMilliseconds(0.5)
+        + "ms, p90<=" + getPercentileMilliseconds(0.9) + "ms, p99<=" + getPercentileMilliseconds(0.99)
+        + "ms, max=" + maxMilliseconds + "ms";
+  }
+}
@@ -0,0 +1,20 @@
+package bluegreen.manager.utils;
+
+/**
+ * JMX view of a LatencyHistogram: counts and times as attributes, percentiles as an operation.
+ */
+public interface LatencyHistogramMBean
+{
+  long getCount();
+
+  long getTotalMilliseconds();
+
+  long getMeanMilliseconds();
+
+  long getMaxMilliseconds();
+
+  /**
+   * Upper bound in ms at or below which the given fraction (0 to 1) of latencies fall.
+   */
+  long getPercentileMilliseconds(double fraction);
+}
@@ -0,0 +1,455 @@
+package bluegreen.manager.utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * Holds the operational metrics of this process: counters, gauges, and latency histograms, each named and labelled
+ * the Prometheus way, e.g. bluegreen_aws_calls_total{service="rds",operation="describeDBInstances",outcome="ok"}.
+ * <p/>
+ * Metrics are made on first use and kept for the life of the process.  They are exported three ways:
+ * <ul>
+ * <li>JMX: one MBean per labelled metric, named bluegreen.manager:type=Metrics,name=&lt;name&gt;,&lt;labels&gt;.</li>
+ * <li>Prometheus text format: served by the daemon at GET /metrics (see JobServer).</li>
+ * <li>A file in the metrics directory, in Prometheus text format, at the end of each command-line job run.</li>
+ * </ul>
+ * Labels come as alternating key/value strings.  "name" and "type" are taken by the JMX object name, so are not
+ * label keys.
+ */
+@Lazy
+@Component
+public class MetricRegistry
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(MetricRegistry.class);
+
+  /**
+   * Histogram size for long-running steps like tasks and waits: the last bucket starts past 2^23 ms, about 2.3 hours.
+   */
+  public static final int LONG_DURATION_BUCKETS = 25;
+
+  static final String JMX_DOMAIN = "bluegreen.manager";
+  private static final String TYPE_COUNTER = "counter";
+  private static final String TYPE_GAUGE = "gauge";
+  private static final String TYPE_HISTOGRAM = "histogram";
+  private static final String DEFAULT_METRICS_DIR = "metrics";
+  private static final String METRICS_FILE_SUFFIX = ".prom";
+
+  @Value("${bluegreen.metrics.jmx.enabled:true}")
+  private boolean jmxEnabled = true;
+
+  @Value("${bluegreen.metrics.dump.enabled:true}")
+  private boolean dumpEnabled = true;
+
+  @Value("${bluegreen.metrics.dir:" + DEFAULT_METRICS_DIR + "}")
+  private String metricsDir = DEFAULT_METRICS_DIR;
+
+  private final Map<String, Family> families = new TreeMap<String, Family>();
+
+  /**
+   * Where metrics are registered for JMX, or null if not (yet) exported over JMX.
+   */
+  private MBeanServer mBeanServer;
+
+  /**
+   * Registers the metrics made so far with the platform MBean server, and any made later as they are made.
+   */
+  @PostConstruct
+  public synchronized void startJmx()
+  {
+    if (jmxEnabled)
+    {
+      mBeanServer = ManagementFactory.getPlatformMBeanServer();
+      for (Family family : families.values())
+      {
+        for (Metric metric : family.metrics.values())
+        {
+          registerMBean(family, metric);
+        }
+      }
+    }
+  }
+
+  @PreDestroy
+  public synchronized void stopJmx()
+  {
+    if (mBeanServer != null)
+    {
+      for (Family family : families.values())
+      {
+        for (Metric metric : family.metrics.values())
+        {
+          unregisterMBean(metric);
+        }
+      }
+      mBeanServer = null;
+    }
+  }
+
+  /**
+   * Returns the counter with the given name and labels, making it if new.
+   */
+  public synchronized Counter counter(String name, String help, String... labels)
+  {
+    Metric metric = findOrAddFamily(name, help, TYPE_COUNTER).metrics.get(formatLabels(labels, null));
+    if (metric == null)
+    {
+      metric = addMetric(name, labels, new Counter());
+    }
+    return (Counter) metric.value;
+  }
+
+  /**
+   * Exports a count kept elsewhere (e.g. by a connection pool) as a counter.  Replaces any earlier reader with the
+   * same name and labels.
+   */
+  public synchronized void counter(String name, String help, Gauge reader, String... labels)
+  {
+    findOrAddFamily(name, help, TYPE_COUNTER);
+    addMetric(name, labels, reader);
+  }
+
+  /**
+   * Exports a value that goes up and down (e.g. connections in use).  Replaces any earlier gauge with the same name
+   * and labels.
+   */
+  public synchronized void gauge(String name, String help, Gauge gauge, String... labels)
+  {
+    findOrAddFamily(name, help, TYPE_GAUGE);
+    addMetric(name, labels, gauge);
+  }
+
+  /**
+   * Returns the latency histogram with the given name and labels, making it with the default number of buckets if
+   * new.
+   */
+  public LatencyHistogram histogram(String name, String help, String... labels)
+  {
+    return histogram(name, help, LatencyHistogram.DEFAULT_NUM_BUCKETS, labels);
+  }
+
+  /**
+   * Returns the latency histogram with the given name and labels, making it with the given number of buckets if new.
+   */
+  public synchronized LatencyHistogram histogram(String name, String help, int numBuckets, String... labels)
+  {
+    Metric metric = findOrAddFamily(name, help, TYPE_HISTOGRAM).metrics.get(formatLabels(labels, null));
+    if (metric == null)
+    {
+      metric = addMetric(name, labels, new LatencyHistogram(numBuckets));
+    }
+    return (LatencyHistogram) metric.value;
+  }
+
+  /**
+   * Exports a latency histogram kept elsewhere.  Replaces any earlier histogram with the same name and labels.
+   */
+  public synchronized void histogram(String name, String help, LatencyHistogram histogram, String... labels)
+  {
+    findOrAddFamily(name, help, TYPE_HISTOGRAM);
+    addMetric(name, labels, histogram);
+  }
+
+  private Family findOrAddFamily(String name, String help, String type)
+  {
+    Family family = families.get(name);
+    if (family == null)
+    {
+      family = new Family(name, help, type);
+      families.put(name, family);
+    }
+    else if (!family.type.equals(type))
+    {
+      throw new IllegalArgumentException("Metric " + name + " is a " + family.type + ", not a " + type);
+    }
+    return family;
+  }
+
+  private Metric addMetric(String name, String[] labels, Object value)
+  {
+    if (labels.length % 2 != 0)
+    {
+      throw new IllegalArgumentException("Metric " + name + " labels are not key/value pairs");
+    }
+    Family family = families.get(name);
+    Metric metric = new Metric(labels, value);
+    Metric previous = family.metrics.put(formatLabels(labels, null), metric);
+    if (previous != null)
+    {
+      unregisterMBean(previous);
+    }
+    registerMBean(family, metric);
+    return metric;
+  }
+
+  private void registerMBean(Family family, Metric metric)
+  {
+    if (mBeanServer == null)
+    {
+      return;
+    }
+    try
+    {
+      ObjectName objectName = makeObjectName(family.name, metric.labels);
+      Object mBean = metric.value instanceof Gauge
+          ? new StandardMBean((Gauge) metric.value, Gauge.class) : metric.value;
+      if (mBeanServer.isRegistered(objectName))
+      {
+        mBeanServer.unregisterMBean(objectName); //Left by an earlier context in this jvm
+      }
+      mBeanServer.registerMBean(mBean, objectName);
+      metric.objectName = objectName;
+    }
+    catch (JMException e)
+    {
+      LOGGER.warn("Failed to register metric " + family.name + " with JMX", e);
+    }
+  }
+
+  private void unregisterMBean(Metric metric)
+  {
+    if (mBeanServer != null && metric.objectName != null)
+    {
+      try
+      {
+        mBeanServer.unregisterMBean(metric.objectName);
+      }
+      catch (JMException e)
+      {
+        LOGGER.debug("Metric " + metric.objectName + " was already unregistered", e);
+      }
+      metric.objectName = null;
+    }
+  }
+
+  static ObjectName makeObjectName(String name, String[] labels) throws JMException
+  {
+    StringBuilder sb = new StringBuilder(JMX_DOMAIN + ":type=Metrics,name=" + name);
+    for (int idx = 0; idx < labels.length; idx += 2)
+    {
+      String value = labels[idx + 1];
+      boolean plain = value.length() > 0 && !value.matches(".*[,=:\"*?\\\\\\n].*");
+      sb.append("," + labels[idx] + "=" + (plain ? value : ObjectName.quote(value)));
+    }
+    return new ObjectName(sb.toString());
+  }
+
+  /**
+   * Writes all metrics in the Prometheus text exposition format (version 0.0.4).
+   */
+  public synchronized void writePrometheus(Writer writer) throws IOException
+  {
+    for (Family family : families.values())
+    {
+      writer.write("# HELP " + family.name + " " + family.help.replace("\\", "\\\\").replace("\n", "\\n") + "\n");
+      writer.write("# TYPE " + family.name + " " + family.type + "\n");
+      for (Metric metric : family.metrics.values())
+      {
+        if (metric.value instanceof LatencyHistogram)
+        {
+          writeHistogram(writer, family.name, metric.labels, (LatencyHistogram) metric.value);
+        }
+        else
+        {
+          double value = metric.value instanceof Counter ? ((Counter) metric.value).getCount()
+              : ((Gauge) metric.value).getValue();
+          writer.write(family.name + formatLabels(metric.labels, null) + " " + formatValue(value) + "\n");
+        }
+      }
+    }
+    writer.flush();
+  }
+
+  /**
+   * Writes cumulative bucket counts, then the sum and count, all from one consistent snapshot.
+   */
+  private void writeHistogram(Writer writer, String name, String[] labels, LatencyHistogram histogram)
+      throws IOException
+  {
+    long[] bucketCounts;
+    long count;
+    long totalMilliseconds;
+    synchronized (histogram)
+    {
+      bucketCounts = histogram.getBucketCounts();
+      count = histogram.getCount();
+      totalMilliseconds = histogram.getTotalMilliseconds();
+    }
+    long cumulative = 0;
+    for (int bucket = 0; bucket < bucketCounts.length - 1; ++bucket)
+    {
+      cumulative += bucketCounts[bucket];
+      writer.write(name + "_bucket" + formatLabels(labels, Long.toString(histogram.getBucketUpperBound(bucket)))
+          + " " + cumulative + "\n");
+    }
+    writer.write(name + "_bucket" + formatLabels(labels, "+Inf") + " " + count + "\n");
+    writer.write(name + "_sum" + formatLabels(labels, null) + " " + totalMilliseconds + "\n");
+    writer.write(name + "_count" + formatLabels(labels, null) + " " + count + "\n");
+  }
+
+  /**
+   * Returns all metrics in the Prometheus text format.
+   */
+  public String formatPrometheus()
+  {
+    StringWriter writer = new StringWriter();
+    try
+    {
+      writePrometheus(writer);
+    }
+    catch (IOException e)
+    {
+      throw new IllegalStateException("StringWriter cannot fail", e);
+    }
+    return writer.toString();
+  }
+
+  /**
+   * Formats labels as {key="value",...}, with an optional histogram bucket bound "le" last.  Empty if no labels.
+   */
+  static String formatLabels(String[] labels, String le)
+  {
+    if (labels.length == 0 && le == null)
+    {
+      return "";
+    }
+    StringBuilder sb = new StringBuilder("{");
+    for (int idx = 0; idx + 1 < labels.length; idx += 2)
+    {
+      sb.append(idx == 0 ? "" : ",");
+      sb.append(labels[idx] + "=\"" + escapeLabelValue(labels[idx + 1]) + "\"");
+    }
+    if (le != null)
+    {
+      sb.append(labels.length == 0 ? "" : ",");
+      sb.append("le=\"" + le + "\"");
+    }
+    return sb.append("}").toString();
+  }
+
+  private static String escapeLabelValue(String value)
+  {
+    return String.valueOf(value).replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  static String formatValue(double value)
+  {
+    if (Double.isNaN(value))
+    {
+      return "NaN";
+    }
+    if (Double.isInfinite(value))
+    {
+      return value > 0 ? "+Inf" : "-Inf";
+    }
+    if (value == Math.rint(value) && Math.abs(value) < 1e15)
+    {
+      return Long.toString((long) value);
+    }
+    return Double.toString(value);
+  }
+
+  /**
+   * Writes the metrics to a file named after the run and the current time, so each command-line run leaves its own
+   * (e.g. how many RDS describe calls one deploy made).  Returns the file written, or null if none.
+   */
+  public File writeFile(String runName)
+  {
+    if (!dumpEnabled)
+    {
+      return null;
+    }
+    String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date());
+    String safeName = (runName == null ? "run" : runName).replaceAll("[^A-Za-z0-9._-]+", "-");
+    File file = new File(metricsDir, safeName + "-" + timestamp + METRICS_FILE_SUFFIX);
+    Writer writer = null;
+    try
+    {
+      file.getParentFile().mkdirs();
+      writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+      writePrometheus(writer);
+      LOGGER.info("Wrote metrics to " + file.getPath());
+      return file;
+    }
+    catch (IOException e)
+    {
+      LOGGER.warn("Failed to write metrics to " + file.getPath(), e);
+      return null;
+    }
+    finally
+    {
+      if (writer != null)
+      {
+        try
+        {
+          writer.close();
+        }
+        catch (IOException e)
+        {
+          LOGGER.warn("Failed to close metrics file " + file.getPath(), e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Metrics of one name, which share help text and type.
+   */
+  private static class Family
+  {
+    private final String name;
+    private final String help;
+    private final String type;
+    private final Map<String, Metric> metrics = new TreeMap<String, Metric>();
+
+    private Family(String name, String help, String type)
+    {
+      this.name = name;
+      this.help = help;
+      this.type = type;
+    }
+  }
+
+  /**
+   * One labelled metric: a Counter, a Gauge, or a LatencyHistogram.
+   */
+  private static class Metric
+  {
+    private final String[] labels;
+    private final Object value;
+    private ObjectName objectName;
+
+    private Metric(String[] labels, Object value)
+    {
+      this.labels = labels;
+      this.value = value;
+    }
+  }
+
+  //Test purposes only
+  void setMetricsDir(String metricsDir)
+  {
+    this.metricsDir = metricsDir;
+  }
+}
@@ -0,0 +1,34 @@
+package bluegreen.manager.utils;
+
+/**
+ * Decides when a {@link Waiter} checks progress next, and when it gives up.
+ */
+public interface PollingPolicy
+{
+  /**
+   * Returns how long to wait before check number waitNum (waitNum > 0), given the time elapsed since the initial
+   * check.
+   */
+  long getDelayMilliseconds(int waitNum, long elapsedMilliseconds);
+
+  /**
+   * True if no more checks should be made, i.e. timeout, at the point where check number waitNum would be next.
+   */
+  boolean isExhausted(int waitNum, long elapsedMilliseconds);
+
+  /**
+   * Short name of the policy, suitable for logging and history.
+   */
+  String getName();
+
+  /**
+   * Informs the policy that the wait is over.
+   *
+   * @param done                       True if the operation reached its conclusion, false if timeout.
+   * @param numChecks                  Number of progress checks made, including the initial check.
+   * @param elapsedMilliseconds        Time from the initial check to the final check.
+   * @param detectionLagMilliseconds   Time between the last two checks, which bounds how late we noticed the
+   *                                   conclusion.  Zero if done on the initial check.
+   */
+  void waitEnded(boolean done, int numChecks, long elapsedMilliseconds, long detectionLagMilliseconds);
+}
@@ -0,0 +1,300 @@
+package bluegreen.manager.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs one local process started by a ProcessBuilderAdapter, and sees it through to the end.
+ * <p/>
+ * Stdout and stderr are each pumped by their own thread, line by line, to a listener, so neither pipe can fill up and
+ * stall the process.  The process may be terminated early: when it runs past its wall-clock timeout, when the
+ * listener asks, or when the calling thread is interrupted.  Termination is graceful first (SIGTERM to the process and
+ * all its descendants), then forced (SIGKILL) after a grace period.
+ * <p/>
+ * Descendants are found with 'pgrep -P', so on a system without pgrep only the process itself is terminated.  CPU time
+ * is the growth in reaped-children cpu time of this JVM (/proc/self/stat) while the process ran, so it includes any
+ * other local process that ended at the same time, and is unknown without /proc.
+ */
+public class ProcessRunner
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProcessRunner.class);
+  private static final long POLL_MILLISECONDS = 200L;
+  private static final long CLOCK_TICK_MILLISECONDS = 10L; //USER_HZ=100 on Linux
+  private static final File PROC_SELF_STAT = new File("/proc/self/stat");
+
+  /**
+   * Receives the lines of output as they arrive.  Calls are serialized, even though stdout and stderr are pumped by
+   * separate threads.
+   */
+  public interface LineListener
+  {
+    /**
+     * @return False to terminate the process.
+     */
+    boolean onLine(String line, boolean stderr);
+  }
+
+  private final ProcessBuilderAdapter processBuilderAdapter;
+  private final long terminationGraceMilliseconds;
+
+  private volatile boolean terminateRequested;
+
+  public ProcessRunner(ProcessBuilderAdapter processBuilderAdapter, long terminationGraceMilliseconds)
+  {
+    this.processBuilderAdapter = processBuilderAdapter;
+    this.terminationGraceMilliseconds = terminationGraceMilliseconds;
+  }
+
+  /**
+   * Starts the process and blocks til it is over, pumping its output to the listener.
+   *
+   * @param timeoutMilliseconds Wall-clock limit, or null for none.
+   * @throws InterruptedException If the calling thread was interrupted, after the process is terminated.
+   */
+  public ProcessStats run(LineListener listener, Long timeoutMilliseconds) throws IOException, InterruptedException
+  {
+    Long startCpuTicks = readChildrenCpuTicks();
+    long startTime = System.currentTimeMillis();
+    Process process = processBuilderAdapter.start();
+    List<Thread> pumps = new ArrayList<Thread>();
+    pumps.add(startPump(process.getInputStream(), listener, false));
+    pumps.add(startPump(process.getErrorStream(), listener, true));
+    boolean timedOut = false;
+    boolean killed = false;
+    try
+    {
+      while (!process.waitFor(POLL_MILLISECONDS, TimeUnit.MILLISECONDS))
+      {
+        if (timeoutMilliseconds != null && System.currentTimeMillis() - startTime >= timeoutMilliseconds)
+        {
+          LOGGER.error("Process has run longer than its timeout of " + timeoutMilliseconds + "ms, terminating it");
+          timedOut = true;
+          break;
+        }
+        if (terminateRequested)
+        {
+          break;
+        }
+      }
+      if (timedOut || terminateRequested)
+      {
+        terminateTree(process);
+        killed = true;
+      }
+    }
+    catch (InterruptedException e)
+    {
+      LOGGER.error("Interrupted while waiting for process, terminating it");
+      terminateTree(process);
+      throw e;
+    }
+    finally
+    {
+      joinPumps(pumps, process);
+    }
+    long elapsed = System.currentTimeMillis() - startTime;
+    Long endCpuTicks = readChildrenCpuTicks();
+    Long cpuMilliseconds = startCpuTicks == null || endCpuTicks == null ? null
+        : (endCpuTicks - startCpuTicks) * CLOCK_TICK_MILLISECONDS;
+    ProcessStats processStats = new ProcessStats(process.exitValue(), elapsed, cpuMilliseconds, timedOut, killed);
+    LOGGER.debug("Process ended: " + processStats);
+    return processStats;
+  }
+
+  /**
+   * Starts a daemon thread that reads the stream line by line and hands each line to the listener.
+   */
+  private Thread startPump(final InputStream inputStream, final LineListener listener, final boolean stderr)
+  {
+    Thread pump = new Thread(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        if (inputStream == null)
+        {
+          return;
+        }
+        try
+        {
+          BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, Charset.defaultCharset()));
+          String line;
+          while ((line = reader.readLine()) != null)
+          {
+            boolean keepGoing;
+            synchronized (listener)
+            {
+              keepGoing = listener.onLine(line, stderr);
+            }
+            if (!keepGoing)
+            {
+              terminateRequested = true;
+              return;
+            }
+          }
+        }
+        catch (IOException e)
+        {
+          LOGGER.debug("Stopped reading process " + (stderr ? "stderr" : "stdout") + ": " + e.getMessage());
+        }
+      }
+    }, "process-" + (stderr ? "stderr" : "stdout"));
+    pump.setDaemon(true);
+    pump.start();
+    return pump;
+  }
+
+  /**
+   * Waits for the pumps to drain what is left of the output.  Orphaned descendants may hold the pipes open, so after
+   * the grace period the streams are closed to release the pumps.
+   */
+  private void joinPumps(List<Thread> pumps, Process process) throws InterruptedException
+  {
+    long deadline = System.currentTimeMillis() + terminationGraceMilliseconds;
+    for (Thread pump : pumps)
+    {
+      pump.join(Math.max(1L, deadline - System.currentTimeMillis()));
+    }
+    IOUtils.closeQuietly(process.getInputStream());
+    IOUtils.closeQuietly(process.getErrorStream());
+    IOUtils.closeQuietly(process.getOutputStream());
+  }
+
+  /**
+   * Asks the process and all its descendants to terminate, then kills whatever is left after the grace period.
+   */
+  void terminateTree(Process process) throws InterruptedException
+  {
+    long pid = findPid(process);
+    List<Long> descendants = pid > 0 ? findDescendants(pid) : new ArrayList<Long>();
+    LOGGER.info("Terminating process" + (pid > 0 ? " " + pid : "")
+        + (descendants.isEmpty() ? "" : " and its descendants " + descendants));
+    signal(descendants, "TERM");
+    process.destroy();
+    if (!process.waitFor(terminationGraceMilliseconds, TimeUnit.MILLISECONDS))
+    {
+      LOGGER.warn("Process did not terminate within " + terminationGraceMilliseconds + "ms, killing it");
+      process.destroyForcibly();
+    }
+    signal(descendants, "KILL");
+    process.waitFor(terminationGraceMilliseconds, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns the os process id, or -1 if unknown.  Process.pid() exists as of Java 9, before that only as a private
+   * field of the Unix implementation.
+   */
+  static long findPid(Process process)
+  {
+    try
+    {
+      Method pidMethod = Process.class.getMethod("pid");
+      return ((Number) pidMethod.invoke(process)).longValue();
+    }
+    catch (Exception e)
+    {
+      //Fall through to older jvm
+    }
+    try
+    {
+      Field pidField = process.getClass().getDeclaredField("pid");
+      pidField.setAccessible(true);
+      return ((Number) pidField.get(process)).longValue();
+    }
+    catch (Exception e)
+    {
+      return -1L;
+    }
+  }
+
+  /**
+   * Finds all the descendants of the process, deepest last.
+   */
+  private List<Long> findDescendants(long pid)
+  {
+    List<Long> descendants = new ArrayList<Long>();
+    for (String line : runQuietly("pgrep", "-P", Long.toString(pid)))
+    {
+      if (StringUtils.isNumeric(line.trim()) && StringUtils.isNotBlank(line))
+      {
+        long childPid = Long.parseLong(line.trim());
+        descendants.add(childPid);
+        descendants.addAll(findDescendants(childPid));
+      }
+    }
+    return descendants;
+  }
+
+  private void signal(List<Long> pids, String signal)
+  {
+    for (Long pid : pids)
+    {
+      runQuietly("kill", "-" + signal, pid.toString());
+    }
+  }
+
+  /**
+   * Runs a small helper command and returns its output lines, or nothing if it cannot run.
+   */
+  private List<String> runQuietly(String... command)
+  {
+    Process helper = null;
+    try
+    {
+      helper = new ProcessBuilder(command).redirectErrorStream(true).start();
+      List<String> lines = IOUtils.readLines(helper.getInputStream(), Charset.defaultCharset());
+      helper.waitFor(terminationGraceMilliseconds, TimeUnit.MILLISECONDS);
+      return lines;
+    }
+    catch (IOException e)
+    {
+      LOGGER.debug("Cannot run " + StringUtils.join(command, " ") + ": " + e.getMessage());
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+    finally
+    {
+      if (helper != null)
+      {
+        IOUtils.closeQuietly(helper.getInputStream());
+        IOUtils.closeQuietly(helper.getOutputStream());
+        IOUtils.closeQuietly(helper.getErrorStream());
+      }
+    }
+    return new ArrayList<String>();
+  }
+
+  /**
+   * Returns the cpu clock ticks used by reaped children of this JVM (cutime + cstime), or null if unknown.
+   */
+  static Long readChildrenCpuTicks()
+  {
+    try
+    {
+      String stat = FileUtils.readFileToString(PROC_SELF_STAT);
+      String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split("\\s+");
+      return Long.parseLong(fields[13]) + Long.parseLong(fields[14]);
+    }
+    catch (Exception e)
+    {
+      return null;
+    }
+  }
+}
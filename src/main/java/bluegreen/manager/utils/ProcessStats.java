@@ -0,0 +1,60 @@
+package bluegreen.manager.utils;
+
+/**
+ * How a local process run ended, and what it cost.
+ */
+public class ProcessStats
+{
+  private final int exitValue;
+  private final long elapsedMilliseconds;
+  private final Long cpuMilliseconds;
+  private final boolean timedOut;
+  private final boolean killed;
+
+  /**
+   * @param cpuMilliseconds User plus system cpu time, or null if unknown.
+   * @param timedOut        True if the process was terminated for running past its timeout.
+   * @param killed          True if the process was terminated for any reason (timeout, caller request, interrupt).
+   */
+  public ProcessStats(int exitValue, long elapsedMilliseconds, Long cpuMilliseconds, boolean timedOut, boolean killed)
+  {
+    this.exitValue = exitValue;
+    this.elapsedMilliseconds = elapsedMilliseconds;
+    this.cpuMilliseconds = cpuMilliseconds;
+    this.timedOut = timedOut;
+    this.killed = killed;
+  }
+
+  public int getExitValue()
+  {
+    return exitValue;
+  }
+
+  public long getElapsedMilliseconds()
+  {
+    return elapsedMilliseconds;
+  }
+
+  public Long getCpuMilliseconds()
+  {
+    return cpuMilliseconds;
+  }
+
+  public boolean isTimedOut()
+  {
+    return timedOut;
+  }
+
+  public boolean isKilled()
+  {
+    return killed;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "exitValue " + exitValue + ", elapsed " + elapsedMilliseconds + "ms"
+        + (cpuMilliseconds == null ? "" : ", cpu " + cpuMilliseconds + "ms")
+        + (timedOut ? ", timed out" : "") + (killed ? ", killed" : "");
+  }
+}
@@ -0,0 +1,128 @@
+package bluegreen.manager.utils;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.regex.Matcher;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+
+/**
+ * Scans shell command output one line at a time, as it streams, instead of holding the whole transcript.
+ * <p/>
+ * Stops at the first line matching the error pattern, so the caller can kill the process right away.  Remembers the
+ * first line matching the capture pattern, if any.  Keeps only a bounded ring buffer of the most recent lines, for
+ * reporting and for patterns that span lines.
+ */
+public class ShellOutputScanner
+{
+  public static final int DEFAULT_MAX_RECENT_LINES = 200;
+  private static final int MAX_LINE_LENGTH = 4096;
+
+  private final Pattern patternError;
+  private final Pattern patternCapture;
+  private final int maxRecentLines;
+  private final Deque<String> recentLines = new ArrayDeque<String>();
+
+  private long numLines;
+  private String errorLine;
+  private MatchResult captureMatch;
+
+  /**
+   * @param patternError   Optional pattern which, if found in a line, means the command failed.
+   * @param patternCapture Optional pattern whose first match is kept for the caller to pick values from.
+   */
+  public ShellOutputScanner(Pattern patternError, Pattern patternCapture, int maxRecentLines)
+  {
+    this.patternError = patternError;
+    this.patternCapture = patternCapture;
+    this.maxRecentLines = maxRecentLines;
+  }
+
+  public ShellOutputScanner(Pattern patternError, Pattern patternCapture)
+  {
+    this(patternError, patternCapture, DEFAULT_MAX_RECENT_LINES);
+  }
+
+  /**
+   * Scans the next line of output.
+   *
+   * @return False if the line matches the error pattern, meaning scanning should stop.
+   */
+  public boolean scanLine(String line)
+  {
+    ++numLines;
+    recentLines.addLast(line.length() > MAX_LINE_LENGTH ? line.substring(0, MAX_LINE_LENGTH) + "..." : line);
+    if (recentLines.size() > maxRecentLines)
+    {
+      recentLines.removeFirst();
+    }
+    if (patternCapture != null && captureMatch == null)
+    {
+      Matcher matcher = patternCapture.matcher(line);
+      if (matcher.find())
+      {
+        captureMatch = matcher.toMatchResult();
+      }
+    }
+    if (patternError != null && errorLine == null && patternError.matcher(line).find())
+    {
+      errorLine = line;
+    }
+    return errorLine == null;
+  }
+
+  /**
+   * True if a line matched the error pattern.
+   */
+  public boolean isErrorFound()
+  {
+    return errorLine != null;
+  }
+
+  /**
+   * The first line that matched the error pattern, or null.
+   */
+  public String getErrorLine()
+  {
+    return errorLine;
+  }
+
+  /**
+   * The first match of the capture pattern within a single line, or else within the recent output, or null if neither
+   * matches.
+   */
+  public MatchResult getCaptureMatch()
+  {
+    if (captureMatch == null && patternCapture != null)
+    {
+      Matcher matcher = patternCapture.matcher(getRecentOutput());
+      if (matcher.find())
+      {
+        return matcher.toMatchResult();
+      }
+    }
+    return captureMatch;
+  }
+
+  /**
+   * Returns the most recent lines of output as a single string.
+   */
+  public String getRecentOutput()
+  {
+    StringBuilder sb = new StringBuilder();
+    for (String line : recentLines)
+    {
+      sb.append(line);
+      sb.append("\n");
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Total number of lines scanned, including those no longer in the recent output.
+   */
+  public long getNumLines()
+  {
+    return numLines;
+  }
+}
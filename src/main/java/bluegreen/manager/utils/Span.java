@@ -0,0 +1,122 @@
+package bluegreen.manager.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One timed step of a job trace: the job itself, a task, a wait, or a remote call.  Started by {@link Tracing},
+ * ended by {@link #end}, when it is added to its trace.
+ * <p/>
+ * A span outside of any trace records nothing, so code that is traced costs next to nothing when run outside a job
+ * (or in unit tests).
+ */
+public class Span
+{
+  /**
+   * Stand-in for a span when nothing is being traced.
+   */
+  static final Span NOOP = new Span(null, null, 0, null, null);
+
+  private final Trace trace;
+  private final Span parent;
+  private final int lane;
+  private final String category;
+  private final String name;
+  private final long startNanos;
+  private final Map<String, Object> args = new LinkedHashMap<String, Object>();
+  private boolean ended;
+
+  Span(Trace trace, Span parent, int lane, String category, String name)
+  {
+    this.trace = trace;
+    this.parent = parent;
+    this.lane = lane;
+    this.category = category;
+    this.name = name;
+    this.startNanos = System.nanoTime();
+  }
+
+  /**
+   * Attaches a detail to the span, shown with it in the trace viewer.  Numbers and booleans are kept as they are,
+   * anything else as a string.
+   */
+  public synchronized Span addArg(String key, Object value)
+  {
+    if (trace != null && !ended)
+    {
+      args.put(key, value == null || value instanceof Number || value instanceof Boolean ? value : value.toString());
+    }
+    return this;
+  }
+
+  /**
+   * Ends the span and adds it to the trace.  If it is the current span of this thread, its parent becomes current
+   * again.  Ending a span twice has no further effect.
+   */
+  public void end()
+  {
+    if (trace == null)
+    {
+      return;
+    }
+    synchronized (this)
+    {
+      if (ended)
+      {
+        return;
+      }
+      ended = true;
+    }
+    trace.addSpan(this, System.nanoTime());
+    if (Tracing.getCurrent() == this)
+    {
+      Tracing.setCurrent(parent);
+    }
+  }
+
+  /**
+   * True if the span belongs to a trace, i.e. it will be recorded.
+   */
+  public boolean isRecording()
+  {
+    return trace != null;
+  }
+
+  /**
+   * The trace this span belongs to, or null if nothing is being traced.
+   */
+  public Trace getTrace()
+  {
+    return trace;
+  }
+
+  Span getParent()
+  {
+    return parent;
+  }
+
+  int getLane()
+  {
+    return lane;
+  }
+
+  String getCategory()
+  {
+    return category;
+  }
+
+  String getName()
+  {
+    return name;
+  }
+
+  long getStartNanos()
+  {
+    return startNanos;
+  }
+
+  synchronized Map<String, Object> getArgs()
+  {
+    return new LinkedHashMap<String, Object>(args);
+  }
+}
@@ -0,0 +1,152 @@
+package bluegreen.manager.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+
+/**
+ * The spans of one job run, written out in the Chrome trace-event format (JSON), which chrome://tracing and
+ * ui.perfetto.dev open as a timeline.
+ * <p/>
+ * Each span is a complete event ("ph":"X") on its lane; lanes are shown as named rows (Chrome "threads") of one
+ * process named after the trace.  Times are in microseconds since the trace started.
+ * <p/>
+ * Threadsafe.  Holds at most MAX_SPANS spans, so a runaway wait cannot use up memory; later spans are counted but
+ * dropped.
+ */
+public class Trace
+{
+  static final int MAX_SPANS = 100000;
+  private static final int PID = 1;
+
+  private final String name;
+  private final long startMillis = System.currentTimeMillis();
+  private final long startNanos = System.nanoTime();
+  private final List<Map<String, Object>> laneEvents = new ArrayList<Map<String, Object>>();
+  private final List<Map<String, Object>> spanEvents = new ArrayList<Map<String, Object>>();
+  private int numLanes;
+  private int numDropped;
+
+  Trace(String name)
+  {
+    this.name = name;
+  }
+
+  /**
+   * Adds a lane, and returns its number.
+   */
+  synchronized int newLane(String laneName)
+  {
+    int lane = ++numLanes;
+    laneEvents.add(makeMetadataEvent("thread_name", lane, "name", laneName));
+    laneEvents.add(makeMetadataEvent("thread_sort_index", lane, "sort_index", lane));
+    return lane;
+  }
+
+  /**
+   * Records an ended span.
+   */
+  void addSpan(Span span, long endNanos)
+  {
+    Map<String, Object> event = new LinkedHashMap<String, Object>();
+    event.put("name", span.getName());
+    event.put("cat", span.getCategory());
+    event.put("ph", "X");
+    event.put("ts", toMicros(span.getStartNanos()));
+    event.put("dur", Math.max(0L, (endNanos - span.getStartNanos()) / 1000L));
+    event.put("pid", PID);
+    event.put("tid", span.getLane());
+    Map<String, Object> args = span.getArgs();
+    if (!args.isEmpty())
+    {
+      event.put("args", args);
+    }
+    synchronized (this)
+    {
+      if (spanEvents.size() < MAX_SPANS)
+      {
+        spanEvents.add(event);
+      }
+      else
+      {
+        ++numDropped;
+      }
+    }
+  }
+
+  private long toMicros(long nanos)
+  {
+    return Math.max(0L, (nanos - startNanos) / 1000L);
+  }
+
+  private Map<String, Object> makeMetadataEvent(String eventName, int lane, String argName, Object argValue)
+  {
+    Map<String, Object> args = new LinkedHashMap<String, Object>();
+    args.put(argName, argValue);
+    Map<String, Object> event = new LinkedHashMap<String, Object>();
+    event.put("name", eventName);
+    event.put("ph", "M");
+    event.put("pid", PID);
+    event.put("tid", lane);
+    event.put("args", args);
+    return event;
+  }
+
+  /**
+   * Writes the trace as a Chrome trace-event JSON object.
+   */
+  public synchronized void writeJson(Writer writer) throws IOException
+  {
+    Gson gson = new Gson();
+    writer.write("{\"traceEvents\":[\n");
+    Map<String, Object> processName = makeMetadataEvent("process_name", 0, "name", name);
+    processName.remove("tid");
+    writer.write(gson.toJson(processName));
+    for (Map<String, Object> event : laneEvents)
+    {
+      writer.write(",\n" + gson.toJson(event));
+    }
+    for (Map<String, Object> event : spanEvents)
+    {
+      writer.write(",\n" + gson.toJson(event));
+    }
+    Map<String, Object> otherData = new LinkedHashMap<String, Object>();
+    otherData.put("name", name);
+    otherData.put("startTime", DateHelper.dateToTzstring(new Date(startMillis)));
+    otherData.put("droppedSpans", numDropped);
+    writer.write("\n],\n\"displayTimeUnit\":\"ms\",\n\"otherData\":" + gson.toJson(otherData) + "}\n");
+    writer.flush();
+  }
+
+  public String getName()
+  {
+    return name;
+  }
+
+  public long getStartMillis()
+  {
+    return startMillis;
+  }
+
+  public synchronized int getNumSpans()
+  {
+    return spanEvents.size();
+  }
+
+  public synchronized int getNumDropped()
+  {
+    return numDropped;
+  }
+
+  //Test purposes only
+  synchronized List<Map<String, Object>> getSpanEvents()
+  {
+    return new ArrayList<Map<String, Object>>(spanEvents);
+  }
+}
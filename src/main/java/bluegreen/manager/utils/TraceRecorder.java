@@ -0,0 +1,115 @@
+package bluegreen.manager.utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * Traces each job run: starts its trace when the job starts, and writes the trace to a file in the trace directory
+ * when the job ends.  See {@link Trace} for the file format.
+ * <p/>
+ * Failing to write a trace is logged, and does not fail the job.
+ */
+@Lazy
+@Component
+public class TraceRecorder
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(TraceRecorder.class);
+  private static final String DEFAULT_TRACE_DIR = "traces";
+  private static final String TRACE_FILE_SUFFIX = ".trace.json";
+
+  @Value("${bluegreen.trace.enabled:true}")
+  private boolean enabled = true;
+
+  @Value("${bluegreen.trace.dir:" + DEFAULT_TRACE_DIR + "}")
+  private String traceDir = DEFAULT_TRACE_DIR;
+
+  /**
+   * Starts tracing a job run on this thread.  Returns the job's root span, or null if tracing is off.
+   */
+  public Span startJobTrace(String traceName)
+  {
+    if (!enabled)
+    {
+      return null;
+    }
+    return Tracing.startTrace("job", traceName);
+  }
+
+  /**
+   * Ends the job's root span, with the job status, and writes the trace.  Returns the file written, or null if none.
+   */
+  public File endJobTrace(Span jobSpan, Object jobStatus)
+  {
+    if (jobSpan == null || !jobSpan.isRecording())
+    {
+      return null;
+    }
+    jobSpan.addArg("status", jobStatus);
+    jobSpan.end();
+    Tracing.setCurrent(null);
+    return write(jobSpan.getTrace());
+  }
+
+  private File write(Trace trace)
+  {
+    File file = new File(traceDir, makeFileName(trace));
+    Writer writer = null;
+    try
+    {
+      file.getParentFile().mkdirs();
+      writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+      trace.writeJson(writer);
+      LOGGER.info("Wrote trace of " + trace.getNumSpans() + " spans to " + file.getPath()
+          + " (open it in chrome://tracing or ui.perfetto.dev)");
+      return file;
+    }
+    catch (IOException e)
+    {
+      LOGGER.warn("Failed to write trace to " + file.getPath(), e);
+      return null;
+    }
+    finally
+    {
+      if (writer != null)
+      {
+        try
+        {
+          writer.close();
+        }
+        catch (IOException e)
+        {
+          LOGGER.warn("Failed to close trace file " + file.getPath(), e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Names the file after the trace and its start time, e.g.
+   * "StagingDeployJob-blue-green-20261016-230501-123.trace.json".
+   */
+  static String makeFileName(Trace trace)
+  {
+    String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date(trace.getStartMillis()));
+    String safeName = trace.getName().replaceAll("[^A-Za-z0-9._-]+", "-");
+    return safeName + "-" + timestamp + TRACE_FILE_SUFFIX;
+  }
+
+  //Test purposes only
+  void setTraceDir(String traceDir)
+  {
+    this.traceDir = traceDir;
+  }
+}
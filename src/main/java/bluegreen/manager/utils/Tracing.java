@@ -0,0 +1,90 @@
+package bluegreen.manager.utils;
+
+/**
+ * Starts trace spans as children of the current span of the calling thread.
+ * <p/>
+ * Each thread has at most one current span.  A started span becomes current until it ends.  Code that hands work to
+ * another thread (task runners, wait schedulers) passes its current span along with the work, the same way the
+ * logging MDC is passed, using {@link #getCurrent} and {@link #setCurrent}.
+ * <p/>
+ * Spans on one lane must nest.  Work that overlaps with its siblings (concurrent tasks, non-blocking waits) starts a
+ * new lane, which shows in the trace viewer as its own row.
+ */
+public class Tracing
+{
+  private static final ThreadLocal<Span> CURRENT = new ThreadLocal<Span>();
+
+  private Tracing()
+  {
+    //Do not instantiate me
+  }
+
+  /**
+   * Starts a new trace, whose root span becomes current on this thread.
+   */
+  public static Span startTrace(String category, String name)
+  {
+    Trace trace = new Trace(name);
+    Span span = new Span(trace, null, trace.newLane(name), category, name);
+    CURRENT.set(span);
+    return span;
+  }
+
+  /**
+   * Starts a span on the same lane as the current span.  Returns a span that records nothing if this thread is not
+   * tracing.
+   */
+  public static Span start(String category, String name)
+  {
+    Span parent = CURRENT.get();
+    if (parent == null || !parent.isRecording())
+    {
+      return Span.NOOP;
+    }
+    Span span = new Span(parent.getTrace(), parent, parent.getLane(), category, name);
+    CURRENT.set(span);
+    return span;
+  }
+
+  /**
+   * Starts a span on a new lane of the trace, with the given lane name.  Returns a span that records nothing if this
+   * thread is not tracing.
+   */
+  public static Span startLane(String category, String name, String laneName)
+  {
+    Span parent = CURRENT.get();
+    if (parent == null || !parent.isRecording())
+    {
+      return Span.NOOP;
+    }
+    Trace trace = parent.getTrace();
+    Span span = new Span(trace, parent, trace.newLane(laneName), category, name);
+    CURRENT.set(span);
+    return span;
+  }
+
+  /**
+   * Returns the current span of this thread, or null if none.
+   */
+  public static Span getCurrent()
+  {
+    return CURRENT.get();
+  }
+
+  /**
+   * Makes the span current on this thread (null for none), and returns the span that was current before.
+   */
+  public static Span setCurrent(Span span)
+  {
+    Span previous = CURRENT.get();
+    if (span == null)
+    {
+      CURRENT.remove();
+    }
+    else
+    {
+      CURRENT.set(span);
+    }
+    return previous;
+  }
+}
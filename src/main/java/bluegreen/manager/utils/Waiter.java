@@ -11,6 +11,11 @@ import org.springframework.stereotype.Component;
  * done.  During each iteration the waiter executes a progress-checking command and displays the progress.
  * <p/>
  * When the ongoing external operation has reached its natural conclusion, we expect a result object of type T.
+ * <p/>
+ * When to check and when to give up is up to the PollingPolicy, by default the fixed delays of the WaiterParameters.
+ * <p/>
+ * The wait is traced as one span, from the initial check til the wait is over, and the remote calls of the progress
+ * checks nest under it.
  */
 @Scope("prototype")
 @Component
@@ -27,14 +32,50 @@ public class Waiter<T>
   private WaiterParameters waiterParameters;
   private ThreadSleeper threadSleeper;
   private ProgressChecker<T> progressChecker;
+  private PollingPolicy pollingPolicy;
+  private StopWatch stopWatch = new StopWatch();
+
+  /**
+   * Elapsed time at the most recent check, and at the check before it.
+   */
+  private long lastCheckMilliseconds;
+  private long priorCheckMilliseconds;
+
+  /**
+   * Number of the next check.  Zero is the initial check; timeout occurs once this exceeds the max num waits.
+   */
+  private int waitNum = 0;
+
+  /**
+   * The done result or timeout result, once the wait is over.
+   */
+  private T outcome;
+
+  /**
+   * Trace span of the wait, and whether it goes on its own lane (true when the caller does not block on the wait).
+   */
+  private Span span;
+  private boolean ownTraceLane;
 
   public Waiter(WaiterParameters waiterParameters,
                 ThreadSleeper threadSleeper,
                 ProgressChecker<T> progressChecker)
+  {
+    this(waiterParameters, threadSleeper, progressChecker, null);
+  }
+
+  /**
+   * Null pollingPolicy means fixed polling per the waiterParameters.
+   */
+  public Waiter(WaiterParameters waiterParameters,
+                ThreadSleeper threadSleeper,
+                ProgressChecker<T> progressChecker,
+                PollingPolicy pollingPolicy)
   {
     this.waiterParameters = waiterParameters;
     this.threadSleeper = threadSleeper;
     this.progressChecker = progressChecker;
+    this.pollingPolicy = pollingPolicy == null ? new FixedPollingPolicy(waiterParameters) : pollingPolicy;
   }
 
   /**
@@ -44,56 +85,165 @@ public class Waiter<T>
    */
   public T waitTilDone()
   {
-    StopWatch stopWatch = new StopWatch();
-    stopWatch.start();
-    int waitNum = 0;
-    while (waitNum < waiterParameters.getMaxNumWaits() + 1) //Not counting "waitNum#0" since first one doesn't call sleep()
+    while (!checkOnce())
     {
-      if (waitNum == 0)
-      {
-        progressChecker.initialCheck();
-      }
-      else
-      {
-        progressChecker.followupCheck(waitNum);
-      }
-      if (progressChecker.isDone())
+      sleep(getNextDelayMilliseconds());
+    }
+    return outcome;
+  }
+
+  /**
+   * Performs the next progress check, without sleeping.  Returns true if the wait is over, either because the
+   * external operation is done or because we ran out of waits; the outcome is then available from getOutcome().
+   * Returns false if the caller should check again after getNextDelayMilliseconds().
+   * <p/>
+   * This is the single step shared by the blocking waitTilDone() and the non-blocking {@link WaiterScheduler}.
+   */
+  boolean checkOnce()
+  {
+    Span previous = Tracing.getCurrent();
+    if (waitNum == 0)
+    {
+      span = startSpan();
+    }
+    else
+    {
+      Tracing.setCurrent(span);
+    }
+    try
+    {
+      boolean over = check();
+      if (over)
       {
-        LOGGER.info("Done: " + progressChecker.getDescription() + " ... time elapsed: " + stopWatch.toString());
-        return progressChecker.getResult();
+        span.end();
       }
-      ++waitNum;
-      sleep(waitNum, stopWatch);
+      return over;
+    }
+    catch (RuntimeException e)
+    {
+      span.addArg("error", e.toString());
+      span.end();
+      throw e;
+    }
+    finally
+    {
+      Tracing.setCurrent(previous);
+    }
+  }
+
+  private Span startSpan()
+  {
+    String description = progressChecker.getDescription();
+    return ownTraceLane ? Tracing.startLane("wait", description, "Wait: " + description)
+        : Tracing.start("wait", description);
+  }
+
+  /**
+   * Performs the next progress check, as described in checkOnce().
+   */
+  private boolean check()
+  {
+    if (waitNum == 0)
+    {
+      stopWatch.start();
+      progressChecker.initialCheck();
     }
-    return progressChecker.timeout();
+    else
+    {
+      progressChecker.followupCheck(waitNum);
+    }
+    priorCheckMilliseconds = lastCheckMilliseconds;
+    lastCheckMilliseconds = stopWatch.getTime();
+    if (progressChecker.isDone())
+    {
+      LOGGER.info("Done: " + progressChecker.getDescription() + " ... time elapsed: " + stopWatch.toString()
+          + describeDetectionLag());
+      pollingPolicy.waitEnded(true, waitNum + 1, lastCheckMilliseconds, getDetectionLagMilliseconds());
+      span.addArg("checks", waitNum + 1).addArg("detectionLagMilliseconds", getDetectionLagMilliseconds());
+      outcome = progressChecker.getResult();
+      return true;
+    }
+    ++waitNum;
+    if (pollingPolicy.isExhausted(waitNum, stopWatch.getTime()))
+    {
+      pollingPolicy.waitEnded(false, waitNum, lastCheckMilliseconds, getDetectionLagMilliseconds());
+      span.addArg("checks", waitNum).addArg("timedOut", true);
+      outcome = progressChecker.timeout();
+      return true;
+    }
+    if (waitNum % waiterParameters.getWaitReportInterval() == 0)
+    {
+      LOGGER.info("Wait #" + waitNum + " (max " + waiterParameters.getMaxNumWaits() + ") for "
+          + progressChecker.getDescription() + " ... time elapsed: " + stopWatch.toString());
+    }
+    return false;
+  }
+
+  /**
+   * Returns how long to wait before the next check.
+   */
+  long getNextDelayMilliseconds()
+  {
+    return pollingPolicy.getDelayMilliseconds(waitNum, stopWatch.getTime());
+  }
+
+  /**
+   * Time between the last two checks, which is an upper bound on how late the conclusion was noticed.
+   */
+  private long getDetectionLagMilliseconds()
+  {
+    return waitNum == 0 ? 0L : lastCheckMilliseconds - priorCheckMilliseconds;
+  }
+
+  /**
+   * Returns a tiny remark on detection lag and polling policy, for logging clarity.
+   */
+  private String describeDetectionLag()
+  {
+    return waitNum == 0 ? "" : " (detected within " + getDetectionLagMilliseconds() + " ms, "
+        + pollingPolicy.getName().toLowerCase() + " polling)";
+  }
+
+  /**
+   * Returns the done result or timeout result, after checkOnce() has returned true.
+   */
+  T getOutcome()
+  {
+    return outcome;
+  }
+
+  /**
+   * Traces the wait on its own lane, for waits that run alongside the caller instead of blocking it.
+   */
+  void traceOnOwnLane()
+  {
+    ownTraceLane = true;
+  }
+
+  /**
+   * Short description of what we're waiting for, suitable for logging.
+   */
+  String getDescription()
+  {
+    return progressChecker.getDescription();
   }
 
   /**
    * Sleeps for the wait delay, and catches interrupt exceptions.
    */
-  private void sleep(int waitNum, StopWatch stopWatch)
+  private void sleep(long delay)
   {
-    if (0 < waitNum && waitNum < waiterParameters.getMaxNumWaits() + 1)
+    if (delay >= LONG_SLEEP_THRESHOLD)
     {
-      if (waitNum % waiterParameters.getWaitReportInterval() == 0)
-      {
-        LOGGER.info("Wait #" + waitNum + " (max " + waiterParameters.getMaxNumWaits() + ") for "
-            + progressChecker.getDescription() + " ... time elapsed: " + stopWatch.toString());
-      }
-      final long delay = waitNum == 1 ? waiterParameters.getInitialWaitDelayMilliseconds()
-          : waiterParameters.getFollowupWaitDelayMilliseconds();
-      if (delay >= LONG_SLEEP_THRESHOLD)
-      {
-        LOGGER.debug("Going to sleep for " + delay + " milliseconds");
-      }
-      try
-      {
-        threadSleeper.sleep(delay);
-      }
-      catch (InterruptedException e) //NOSONAR
-      {
-        LOGGER.warn("Sleep was interrupted");
-      }
+      LOGGER.debug("Going to sleep for " + delay + " milliseconds");
+    }
+    try
+    {
+      threadSleeper.sleep(delay);
+    }
+    catch (InterruptedException e) //NOSONAR
+    {
+      LOGGER.warn("Sleep was interrupted");
     }
   }
 
@@ -0,0 +1,268 @@
+package bluegreen.manager.utils;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * Non-blocking counterpart of {@link Waiter#waitTilDone}.  Each submitted wait is a chain of progress checks
+ * scheduled on one small shared pool, so a handful of threads can watch any number of external operations (snapshots,
+ * restores, reboots, app transitions) at once.  No thread is held between checks.
+ * <p/>
+ * Delays, reporting and timeout follow the WaiterParameters exactly as Waiter does.  The returned future yields the
+ * progressChecker result, or its timeout result, or fails with whatever the progressChecker threw.  Cancelling the
+ * future stops further checks.
+ * <p/>
+ * Progress checks run on scheduler threads, so a progressChecker should not block for long; blocking calls delay
+ * the other waits on the pool.  Each check runs with the logging MDC and trace span of the thread that submitted the
+ * wait, so its log output and trace are attributed to the right job.
+ */
+@Lazy
+@Component
+public class WaiterScheduler
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(WaiterScheduler.class);
+  private static final int DEFAULT_POOL_SIZE = 2;
+
+  @Value("${bluegreen.waiter.scheduler.poolSize:" + DEFAULT_POOL_SIZE + "}")
+  private int poolSize = DEFAULT_POOL_SIZE;
+
+  private ScheduledExecutorService scheduledExecutorService;
+
+  private final AtomicInteger numActiveWaits = new AtomicInteger();
+
+  @PostConstruct
+  public void startScheduler()
+  {
+    scheduledExecutorService = new ScheduledThreadPoolExecutor(Math.max(1, poolSize), new WaiterThreadFactory());
+  }
+
+  @PreDestroy
+  public void stopScheduler()
+  {
+    if (scheduledExecutorService != null)
+    {
+      scheduledExecutorService.shutdownNow();
+    }
+  }
+
+  /**
+   * Starts waiting on the external operation, beginning with an immediate initial check.  Returns right away.
+   */
+  public <T> Future<T> submit(WaiterParameters waiterParameters, ProgressChecker<T> progressChecker)
+  {
+    return submit(new Waiter<T>(waiterParameters, null, progressChecker));
+  }
+
+  /**
+   * Starts running the checks of an already-constructed waiter.  The waiter's own ThreadSleeper is never used.
+   */
+  public <T> Future<T> submit(Waiter<T> waiter)
+  {
+    waiter.traceOnOwnLane();
+    ScheduledWait<T> scheduledWait = new ScheduledWait<T>(waiter);
+    numActiveWaits.incrementAndGet();
+    scheduledExecutorService.execute(scheduledWait);
+    return scheduledWait.future;
+  }
+
+  /**
+   * Number of waits submitted and not yet over.
+   */
+  public int getNumActiveWaits()
+  {
+    return numActiveWaits.get();
+  }
+
+  /**
+   * Runs one check per execution, then reschedules itself after the waiter's next delay until the wait is over.
+   */
+  private class ScheduledWait<T> implements Runnable
+  {
+    private final Waiter<T> waiter;
+    private final WaiterFuture<T> future = new WaiterFuture<T>();
+    @SuppressWarnings("unchecked") //MDC returns a raw map of strings
+    private final Map<String, String> mdcContext = MDC.getCopyOfContextMap();
+    private final Span traceSpan = Tracing.getCurrent();
+
+    private ScheduledWait(Waiter<T> waiter)
+    {
+      this.waiter = waiter;
+    }
+
+    @Override
+    public void run()
+    {
+      if (mdcContext == null)
+      {
+        MDC.clear();
+      }
+      else
+      {
+        MDC.setContextMap(mdcContext);
+      }
+      Tracing.setCurrent(traceSpan);
+      try
+      {
+        check();
+      }
+      finally
+      {
+        MDC.clear();
+        Tracing.setCurrent(null);
+      }
+    }
+
+    private void check()
+    {
+      if (future.isCancelled())
+      {
+        LOGGER.info("Cancelled: " + waiter.getDescription());
+        numActiveWaits.decrementAndGet();
+        return;
+      }
+      try
+      {
+        if (waiter.checkOnce())
+        {
+          numActiveWaits.decrementAndGet();
+          future.complete(waiter.getOutcome());
+        }
+        else
+        {
+          scheduledExecutorService.schedule(this, waiter.getNextDelayMilliseconds(), TimeUnit.MILLISECONDS);
+        }
+      }
+      catch (RuntimeException e)
+      {
+        numActiveWaits.decrementAndGet();
+        future.fail(e);
+      }
+    }
+  }
+
+  /**
+   * A future completed from outside, by the scheduled wait: by its result, by what the progress checker threw, or by
+   * cancellation, whichever comes first.
+   */
+  private static class WaiterFuture<T> implements Future<T>
+  {
+    private final CountDownLatch doneLatch = new CountDownLatch(1);
+    private T result;
+    private Throwable failure;
+    private boolean cancelled;
+
+    private synchronized boolean conclude(T result, Throwable failure, boolean cancelled)
+    {
+      if (doneLatch.getCount() == 0)
+      {
+        return false;
+      }
+      this.result = result;
+      this.failure = failure;
+      this.cancelled = cancelled;
+      doneLatch.countDown();
+      return true;
+    }
+
+    private void complete(T result)
+    {
+      conclude(result, null, false);
+    }
+
+    private void fail(Throwable throwable)
+    {
+      conclude(null, throwable, false);
+    }
+
+    /**
+     * Stops further checks.  A check already running is not interrupted, so mayInterruptIfRunning is ignored.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning)
+    {
+      return conclude(null, null, true);
+    }
+
+    @Override
+    public synchronized boolean isCancelled()
+    {
+      return cancelled;
+    }
+
+    @Override
+    public boolean isDone()
+    {
+      return doneLatch.getCount() == 0;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException
+    {
+      doneLatch.await();
+      return getConcluded();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+    {
+      if (!doneLatch.await(timeout, unit))
+      {
+        throw new TimeoutException();
+      }
+      return getConcluded();
+    }
+
+    private synchronized T getConcluded() throws ExecutionException
+    {
+      if (cancelled)
+      {
+        throw new CancellationException();
+      }
+      if (failure != null)
+      {
+        throw new ExecutionException(failure);
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Makes daemon threads, so that pending waits never hold up jvm exit.
+   */
+  private static class WaiterThreadFactory implements ThreadFactory
+  {
+    private final AtomicInteger threadNum = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable)
+    {
+      Thread thread = new Thread(runnable, "waiter-" + threadNum.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
+  //Test purposes only
+  void setPoolSize(int poolSize)
+  {
+    this.poolSize = poolSize;
+  }
+}
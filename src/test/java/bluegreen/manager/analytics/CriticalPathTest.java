@@ -0,0 +1,95 @@
+package bluegreen.manager.analytics;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import bluegreen.manager.model.domain.JobHistory;
+import bluegreen.manager.model.domain.TaskHistory;
+import bluegreen.manager.model.domain.TaskStatus;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CriticalPathTest
+{
+  private JobHistory jobHistory;
+
+  @Before
+  public void setUp()
+  {
+    jobHistory = new JobHistory();
+  }
+
+  /**
+   * Adds a task history running from startSecond to endSecond (null end if still running).
+   */
+  static TaskHistory addTask(JobHistory jobHistory, int position, String taskName, long startSecond, Long endSecond)
+  {
+    TaskHistory taskHistory = new TaskHistory();
+    taskHistory.setJobHistory(jobHistory);
+    taskHistory.setPosition(position);
+    taskHistory.setTaskName(taskName);
+    taskHistory.setStartTime(new Timestamp(startSecond * 1000L));
+    taskHistory.setEndTime(endSecond == null ? null : new Timestamp(endSecond * 1000L));
+    taskHistory.setStatus(endSecond == null ? TaskStatus.PROCESSING : TaskStatus.DONE);
+    jobHistory.addTaskHistory(taskHistory);
+    return taskHistory;
+  }
+
+  /**
+   * A sequence of tasks is all on the critical path, in order.
+   */
+  @Test
+  public void testFind_Sequence()
+  {
+    TaskHistory first = addTask(jobHistory, 1, "first", 0L, 10L);
+    TaskHistory second = addTask(jobHistory, 2, "second", 10L, 30L);
+    TaskHistory third = addTask(jobHistory, 3, "third", 31L, 40L);
+
+    List<TaskHistory> path = CriticalPath.find(jobHistory);
+
+    assertEquals(3, path.size());
+    assertSame(first, path.get(0));
+    assertSame(second, path.get(1));
+    assertSame(third, path.get(2));
+  }
+
+  /**
+   * Of two concurrent tasks, only the one that finished later is on the path.
+   */
+  @Test
+  public void testFind_Concurrent()
+  {
+    TaskHistory freeze = addTask(jobHistory, 1, "freeze", 0L, 5L);
+    TaskHistory snapshot = addTask(jobHistory, 2, "snapshot", 5L, 100L);
+    addTask(jobHistory, 3, "appVm", 5L, 60L);
+    TaskHistory restore = addTask(jobHistory, 4, "restore", 100L, 200L);
+
+    List<TaskHistory> path = CriticalPath.find(jobHistory);
+
+    assertEquals(3, path.size());
+    assertSame(freeze, path.get(0));
+    assertSame(snapshot, path.get(1));
+    assertSame(restore, path.get(2));
+  }
+
+  /**
+   * Unfinished tasks are left out, and no tasks means no path.
+   */
+  @Test
+  public void testFind_Unfinished()
+  {
+    assertTrue(CriticalPath.find(jobHistory).isEmpty());
+
+    TaskHistory first = addTask(jobHistory, 1, "first", 0L, 10L);
+    addTask(jobHistory, 2, "second", 10L, null);
+
+    List<TaskHistory> path = CriticalPath.find(jobHistory);
+
+    assertEquals(1, path.size());
+    assertSame(first, path.get(0));
+  }
+}
@@ -0,0 +1,127 @@
+package bluegreen.manager.analytics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import bluegreen.manager.main.ArgumentParser;
+import bluegreen.manager.main.ReturnCode;
+import bluegreen.manager.model.domain.JobHistory;
+import bluegreen.manager.model.domain.JobStatus;
+import bluegreen.manager.model.tx.JobHistoryTx;
+import bluegreen.manager.utils.NowFactory;
+import static bluegreen.manager.utils.TimeFakery.START_TIME;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class HistoryAnalyzerTest
+{
+  private static final int PAGE_SIZE = 200;
+  private static final long MILLISECONDS_PER_DAY = 1000L * 60L * 60L * 24L;
+
+  @InjectMocks
+  private HistoryAnalyzer historyAnalyzer;
+
+  @Mock
+  private NowFactory mockNowFactory;
+
+  @Mock
+  private JobHistoryTx mockJobHistoryTx;
+
+  @Spy
+  private ArgumentParser argumentParser = new ArgumentParser();
+
+  private ByteArrayOutputStream output = new ByteArrayOutputStream();
+  private PrintStream out = new PrintStream(output);
+
+  @Before
+  public void setUp()
+  {
+    when(mockNowFactory.now()).thenReturn(START_TIME);
+    historyAnalyzer.setPageSize(PAGE_SIZE);
+    when(mockJobHistoryTx.findRunsAfter(anyBoolean(), anyLong(), any(Timestamp.class), anyString(), anyString(),
+        anyInt())).thenReturn(Collections.<JobHistory>emptyList());
+  }
+
+  private JobHistory makeRun(long id)
+  {
+    JobHistory run = new JobHistory();
+    run.setId(id);
+    run.setJobName("StagingDeployJob");
+    run.setEnv1("live");
+    run.setStartTime(new Timestamp(START_TIME.getTime() - MILLISECONDS_PER_DAY));
+    run.setEndTime(new Timestamp(START_TIME.getTime() - MILLISECONDS_PER_DAY + 60000L));
+    run.setStatus(JobStatus.DONE);
+    return run;
+  }
+
+  /**
+   * Reads the archive then the live tables, each a page at a time after the last run read, until a page is empty.
+   */
+  @Test
+  public void testAnalyze_Pages()
+  {
+    Timestamp since = new Timestamp(START_TIME.getTime() - 10L * MILLISECONDS_PER_DAY);
+    when(mockJobHistoryTx.findRunsAfter(true, 0L, since, null, "live", PAGE_SIZE)).thenReturn(Arrays.asList(makeRun(5L)));
+    List<JobHistory> livePage = Arrays.asList(makeRun(11L), makeRun(12L));
+    when(mockJobHistoryTx.findRunsAfter(false, 0L, since, null, "live", PAGE_SIZE)).thenReturn(livePage);
+
+    HistoryReport report = historyAnalyzer.analyze(null, "live", 10, 5, 1);
+
+    assertEquals(3L, report.getNumRuns());
+    assertEquals(1, report.getRecentCriticalPaths().size());
+    assertThat(report.getRecentCriticalPaths().get(0), containsString("#12 "));
+    InOrder inOrder = inOrder(mockJobHistoryTx);
+    inOrder.verify(mockJobHistoryTx).findRunsAfter(true, 0L, since, null, "live", PAGE_SIZE);
+    inOrder.verify(mockJobHistoryTx).findRunsAfter(true, 5L, since, null, "live", PAGE_SIZE);
+    inOrder.verify(mockJobHistoryTx).findRunsAfter(false, 0L, since, null, "live", PAGE_SIZE);
+    inOrder.verify(mockJobHistoryTx).findRunsAfter(false, 12L, since, null, "live", PAGE_SIZE);
+  }
+
+  @Test
+  public void testRunCommand()
+  {
+    ReturnCode returnCode = historyAnalyzer.runCommand(new String[] { HistoryAnalyzer.COMMAND_HISTORY_REPORT,
+        "--jobName", "StagingDeployJob", "--days", "30" }, out);
+
+    assertEquals(ReturnCode.SUCCESS, returnCode);
+    assertThat(output.toString(), containsString("HISTORY REPORT"));
+    Timestamp since = new Timestamp(START_TIME.getTime() - 30L * MILLISECONDS_PER_DAY);
+    inOrder(mockJobHistoryTx).verify(mockJobHistoryTx).findRunsAfter(true, 0L, since, "StagingDeployJob", null,
+        PAGE_SIZE);
+  }
+
+  @Test
+  public void testRunCommand_BadParameter()
+  {
+    assertEquals(ReturnCode.CMDLINE_ERROR, historyAnalyzer.runCommand(new String[] {
+        HistoryAnalyzer.COMMAND_HISTORY_REPORT, "--days", "-1" }, out));
+    assertEquals(ReturnCode.CMDLINE_ERROR, historyAnalyzer.runCommand(new String[] {
+        HistoryAnalyzer.COMMAND_HISTORY_REPORT, "--liveEnv", "live" }, out));
+    verifyZeroInteractions(mockJobHistoryTx);
+    assertEquals("", output.toString());
+  }
+}
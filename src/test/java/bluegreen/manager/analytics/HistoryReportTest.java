@@ -0,0 +1,142 @@
+package bluegreen.manager.analytics;
+
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import bluegreen.manager.model.domain.JobHistory;
+import bluegreen.manager.model.domain.JobStatus;
+import bluegreen.manager.utils.DurationHistogram;
+import static bluegreen.manager.analytics.CriticalPathTest.addTask;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class HistoryReportTest
+{
+  private static final long SECONDS_PER_DAY = 60L * 60L * 24L;
+  private static final String JOB_NAME = "StagingDeployJob";
+  private static final String ENV_NAME = "live";
+
+  private HistoryReport historyReport = new HistoryReport(new Date(0L), 30, 2, 25, 3L);
+  private long nextId = 1L;
+
+  /**
+   * Makes a DONE run on the given day: a 10s freeze, then a restore of the given seconds.
+   */
+  private JobHistory makeRun(long day, long restoreSeconds)
+  {
+    long startSecond = day * SECONDS_PER_DAY;
+    JobHistory run = new JobHistory();
+    run.setId(nextId++);
+    run.setJobName(JOB_NAME);
+    run.setEnv1(ENV_NAME);
+    run.setStartTime(new Timestamp(startSecond * 1000L));
+    run.setEndTime(new Timestamp((startSecond + 10L + restoreSeconds) * 1000L));
+    run.setStatus(JobStatus.DONE);
+    addTask(run, 1, "FreezeTask", startSecond, startSecond + 10L);
+    addTask(run, 2, "RdsSnapshotRestoreTask", startSecond + 10L, startSecond + 10L + restoreSeconds);
+    return run;
+  }
+
+  private HistoryReport.Series findSeries(List<HistoryReport.Series> seriesList, String taskName)
+  {
+    for (HistoryReport.Series series : seriesList)
+    {
+      if (series.getTaskName().equals(taskName))
+      {
+        return series;
+      }
+    }
+    throw new AssertionError("No series for " + taskName);
+  }
+
+  /**
+   * Durations are split by period, for each task and the whole job.
+   */
+  @Test
+  public void testAddRun_Periods()
+  {
+    historyReport.addRun(makeRun(1L, 100L));
+    historyReport.addRun(makeRun(2L, 100L));
+    historyReport.addRun(makeRun(31L, 300L));
+
+    assertEquals(3L, historyReport.getNumRuns());
+    assertEquals(3, historyReport.getSeries().size());
+    HistoryReport.Series restore = findSeries(historyReport.getSeries(), "RdsSnapshotRestoreTask");
+    assertEquals(ENV_NAME, restore.getEnvName());
+    assertEquals(2, restore.getByPeriod().size());
+    DurationHistogram first = restore.getByPeriod().get(0);
+    assertEquals(2L, first.getCount());
+    assertEquals(100000L, first.getMaxMilliseconds());
+    assertEquals(300000L, restore.getLatest().getMaxMilliseconds());
+    assertEquals(310000L, findSeries(historyReport.getSeries(), HistoryReport.WHOLE_JOB).getLatest().getMaxMilliseconds());
+  }
+
+  /**
+   * A task slower in the latest period, with enough samples on each side, is a regression; a steady task is not.
+   */
+  @Test
+  public void testFindRegressions()
+  {
+    for (long day = 1L; day <= 3L; ++day)
+    {
+      historyReport.addRun(makeRun(day, 100L));
+      historyReport.addRun(makeRun(30L + day, 200L));
+    }
+
+    List<HistoryReport.Series> regressions = historyReport.findRegressions();
+
+    assertEquals(2, regressions.size());
+    findSeries(regressions, "RdsSnapshotRestoreTask");
+    findSeries(regressions, HistoryReport.WHOLE_JOB);
+  }
+
+  /**
+   * Too few samples in the latest period is not a regression.
+   */
+  @Test
+  public void testFindRegressions_FewSamples()
+  {
+    for (long day = 1L; day <= 3L; ++day)
+    {
+      historyReport.addRun(makeRun(day, 100L));
+    }
+    historyReport.addRun(makeRun(31L, 500L));
+
+    assertTrue(historyReport.findRegressions().isEmpty());
+  }
+
+  /**
+   * Only the latest runs' critical paths are kept, and the report shows them with the critical path shares.
+   */
+  @Test
+  public void testFormat()
+  {
+    historyReport.addRun(makeRun(1L, 100L));
+    historyReport.addRun(makeRun(2L, 100L));
+    historyReport.addRun(makeRun(3L, 50L));
+
+    List<String> recent = historyReport.getRecentCriticalPaths();
+    String report = historyReport.format();
+
+    assertEquals(2, recent.size());
+    assertThat(recent.get(1), containsString("#3 " + JOB_NAME + " on " + ENV_NAME));
+    assertThat(recent.get(1), containsString("(1) FreezeTask 10s > (2) RdsSnapshotRestoreTask 50s"));
+    assertThat(report, containsString("Runs since 1970-01-01"));
+    assertThat(report, containsString(JOB_NAME + " RdsSnapshotRestoreTask: 3 runs, 4m10s, 89%"));
+    assertThat(report, containsString(recent.get(1)));
+  }
+
+  @Test
+  public void testFormatDuration()
+  {
+    assertEquals("0s", HistoryReport.formatDuration(0L));
+    assertEquals("42s", HistoryReport.formatDuration(42000L));
+    assertEquals("12m05s", HistoryReport.formatDuration(725000L));
+    assertEquals("2h03m", HistoryReport.formatDuration(7380000L));
+  }
+}
@@ -1,12 +1,15 @@
 package bluegreen.manager.client.app;
 
+import org.apache.http.NameValuePair;
 import org.apache.http.client.CookieStore;
+import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.fluent.Executor;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import com.google.gson.Gson;
@@ -17,11 +20,13 @@ import bluegreen.manager.client.http.HttpHelper;
 import bluegreen.manager.client.http.HttpMethodType;
 import bluegreen.manager.model.domain.Application;
 import bluegreen.manager.model.domain.EnvironmentTestHelper;
+import bluegreen.manager.utils.MetricRegistry;
 import bluegreen.manager.utils.ThreadSleeper;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
@@ -65,6 +70,12 @@ public class ApplicationClientTest
   @Mock
   private CookieStore mockCookieStore;
 
+  @Mock
+  private ApplicationSessionCache mockApplicationSessionCache;
+
+  @Spy
+  private MetricRegistry metricRegistry = new MetricRegistry();
+
   private ApplicationSession fakeSession;
 
   @Before
@@ -157,6 +168,30 @@ public class ApplicationClientTest
     verify(mockThreadSleeper, times(2)).sleep(anyLong());
   }
 
+  /**
+   * Tests that tries, lock errors, and the final outcome of a request are counted.
+   */
+  @Test
+  public void testRequestWithRetry_Metrics()
+  {
+    when(mockHttpHelper.executeGet(mockExecutor, FAKE_APP_URI))
+        .thenReturn(null)
+        .thenReturn(JSON_FAKE_LOCKABLE_LOCKED)
+        .thenReturn(JSON_FAKE_LOCKABLE_NOT_LOCKED);
+
+    applicationClient.requestWithRetry(FAKE_APPLICATION, fakeSession, HttpMethodType.GET,
+        METHOD_PATH, FakeLockable.class, OUTER_FIRST_TRY);
+
+    assertEquals(3L, metricRegistry.counter("bluegreen_app_request_tries_total", "",
+        "method", "GET", "path", METHOD_PATH).getCount());
+    assertEquals(1L, metricRegistry.counter("bluegreen_app_lock_errors_total", "",
+        "method", "GET", "path", METHOD_PATH).getCount());
+    assertEquals(1L, metricRegistry.counter("bluegreen_app_requests_total", "",
+        "method", "GET", "path", METHOD_PATH, "outcome", "ok").getCount());
+    assertEquals(1L, metricRegistry.histogram("bluegreen_app_request_milliseconds", "",
+        "method", "GET", "path", METHOD_PATH).getCount());
+  }
+
   /**
    * Tests the case where the request completely fails (always returns lock error).
    */
@@ -173,6 +208,51 @@ public class ApplicationClientTest
     verify(mockThreadSleeper, times(ApplicationClient.MAX_NUM_TRIES - 1)).sleep(anyLong());
   }
 
+  /**
+   * Tests that a rejected session logs in again and retries the request.
+   */
+  @Test
+  public void testRequestWithRetry_SessionRejected()
+  {
+    when(mockHttpHelper.executeGet(mockExecutor, FAKE_APP_URI))
+        .thenThrow(new RuntimeException("GET uri: " + FAKE_APP_URI, new HttpResponseException(401, "Unauthorized")))
+        .thenReturn(JSON_FAKE_LOCKABLE_NOT_LOCKED);
+
+    Lockable response = applicationClient.requestWithRetry(FAKE_APPLICATION, fakeSession, HttpMethodType.GET,
+        METHOD_PATH, FakeLockable.class, OUTER_FIRST_TRY);
+
+    assertFalse(response.isLockError());
+    verify(mockCookieStore).clear();
+    verify(mockHttpHelper).postAuthForCookie(eq(mockExecutor), anyString(), any(NameValuePair[].class));
+    verify(mockApplicationSessionCache).recordRelogin();
+    verify(mockHttpHelper, times(2)).executeGet(mockExecutor, FAKE_APP_URI);
+  }
+
+  /**
+   * Tests that other http errors are not taken as a rejected session.
+   */
+  @Test(expected = RuntimeException.class)
+  public void testRequestWithRetry_ServerError()
+  {
+    when(mockHttpHelper.executeGet(mockExecutor, FAKE_APP_URI))
+        .thenThrow(new RuntimeException("GET uri: " + FAKE_APP_URI, new HttpResponseException(500, "Oops")));
+
+    applicationClient.requestWithRetry(FAKE_APPLICATION, fakeSession, HttpMethodType.GET,
+        METHOD_PATH, FakeLockable.class, OUTER_FIRST_TRY);
+  }
+
+  /**
+   * Tests that opening a session goes through the cache.
+   */
+  @Test
+  public void testOpenSession()
+  {
+    when(mockApplicationSessionCache.getSession(eq(applicationClient), eq(FAKE_APPLICATION), anyString(), anyString()))
+        .thenReturn(fakeSession);
+
+    assertTrue(fakeSession == applicationClient.openSession(FAKE_APPLICATION));
+  }
+
   /**
    * Assert some things after calling a restful method that returns a DbFreezeProgress.
    */
@@ -213,6 +293,20 @@ public class ApplicationClientTest
     assertOnDbFreezeProgress(applicationClient.getDbFreezeProgress(FAKE_APPLICATION, fakeSession, OUTER_FIRST_TRY), true);
   }
 
+  /**
+   * Tests that a long-poll for progress passes the mode to change from and the wait time.
+   */
+  @Test
+  public void testGetDbFreezeProgressChange()
+  {
+    String uri = FAKE_APPLICATION.makeHostnameUri() + "/" + DbFreezeRest.GET_DB_FREEZE_PROGRESS
+        + "?waitForChangeFrom=" + DbFreezeMode.FLUSHING.getCode() + "&waitSeconds=10";
+    when(mockHttpHelper.executeGet(mockExecutor, uri)).thenReturn(JSON_DB_FREEZE_PROGRESS);
+
+    assertOnDbFreezeProgress(applicationClient.getDbFreezeProgressChange(FAKE_APPLICATION, fakeSession,
+        DbFreezeMode.FLUSHING, 10, OUTER_FIRST_TRY), true);
+  }
+
   /**
    * Tests a successful call to the enter-freeze resource.
    */
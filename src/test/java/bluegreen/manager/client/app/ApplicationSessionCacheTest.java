@@ -0,0 +1,233 @@
+package bluegreen.manager.client.app;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.CookieStore;
+import org.apache.http.client.fluent.Executor;
+import org.apache.http.cookie.Cookie;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import bluegreen.manager.model.domain.Application;
+import bluegreen.manager.model.domain.EnvironmentTestHelper;
+import bluegreen.manager.utils.NowFactory;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests that tasks reuse a valid application login and log in again when it is no longer valid.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ApplicationSessionCacheTest
+{
+  private static final Application FAKE_APPLICATION = EnvironmentTestHelper.makeFakeApplication();
+  private static final String USERNAME = "user";
+  private static final String PASSWORD = "secret";
+  private static final long START_MILLIS = 1000000L;
+  private static final long MINUTE_MILLIS = 60L * 1000L;
+
+  @InjectMocks
+  private ApplicationSessionCache applicationSessionCache;
+
+  @Mock
+  private NowFactory mockNowFactory;
+
+  @Mock
+  private ApplicationClient mockApplicationClient;
+
+  @Mock
+  private CookieStore mockCookieStore;
+
+  @Mock
+  private Cookie mockCookie;
+
+  private ApplicationSession session1;
+  private ApplicationSession session2;
+
+  @Before
+  public void setUp()
+  {
+    setNow(0L);
+    session1 = new ApplicationSession(mock(Executor.class), mockCookieStore);
+    session2 = new ApplicationSession(mock(Executor.class), mock(CookieStore.class));
+    when(mockApplicationClient.authenticate(FAKE_APPLICATION)).thenReturn(session1).thenReturn(session2);
+    when(mockCookieStore.getCookies()).thenReturn(Arrays.asList(mockCookie));
+  }
+
+  private void setNow(long elapsedMilliseconds)
+  {
+    when(mockNowFactory.now()).thenReturn(new Date(START_MILLIS + elapsedMilliseconds));
+  }
+
+  private ApplicationSession getSession(String password)
+  {
+    return applicationSessionCache.getSession(mockApplicationClient, FAKE_APPLICATION, USERNAME, password);
+  }
+
+  /**
+   * A second task on the same application and credentials reuses the first login.
+   */
+  @Test
+  public void testGetSession_Reused()
+  {
+    assertSame(session1, getSession(PASSWORD));
+    setNow(MINUTE_MILLIS);
+    assertSame(session1, getSession(PASSWORD));
+
+    verify(mockApplicationClient, times(1)).authenticate(FAKE_APPLICATION);
+    assertEquals(1, applicationSessionCache.getNumLogins());
+    assertEquals(1, applicationSessionCache.getNumLoginsAvoided());
+  }
+
+  /**
+   * Different credentials get their own login.
+   */
+  @Test
+  public void testGetSession_OtherCredentials()
+  {
+    assertSame(session1, getSession(PASSWORD));
+    assertSame(session2, getSession("other"));
+    assertEquals(2, applicationSessionCache.getNumLogins());
+  }
+
+  /**
+   * A session idle for too long is replaced by a new login.
+   */
+  @Test
+  public void testGetSession_Idle()
+  {
+    getSession(PASSWORD);
+    setNow((ApplicationSessionCache.DEFAULT_MAX_IDLE_MINUTES + 1) * MINUTE_MILLIS);
+    assertNotSame(session1, getSession(PASSWORD));
+  }
+
+  /**
+   * A session whose cookies expired is replaced by a new login.
+   */
+  @Test
+  public void testGetSession_CookiesExpired()
+  {
+    getSession(PASSWORD);
+    when(mockCookieStore.getCookies()).thenReturn(Collections.<Cookie>emptyList());
+    assertNotSame(session1, getSession(PASSWORD));
+    verify(mockCookieStore).clearExpired(new Date(START_MILLIS));
+  }
+
+  /**
+   * A slow login doesn't hold up a task wanting a session with other credentials.
+   */
+  @Test
+  public void testGetSession_SlowLoginDoesNotBlockOtherKeys() throws Exception
+  {
+    final CountDownLatch loginStarted = new CountDownLatch(1);
+    final CountDownLatch loginRelease = new CountDownLatch(1);
+    when(mockApplicationClient.authenticate(FAKE_APPLICATION)).thenAnswer(new Answer<ApplicationSession>()
+    {
+      private int numCalls;
+
+      @Override
+      public ApplicationSession answer(InvocationOnMock invocation) throws Throwable
+      {
+        if (++numCalls == 1)
+        {
+          loginStarted.countDown();
+          loginRelease.await(10, TimeUnit.SECONDS);
+          return session1;
+        }
+        return session2;
+      }
+    });
+    ExecutorService executorService = Executors.newFixedThreadPool(2);
+    try
+    {
+      Future<ApplicationSession> slowLogin = executorService.submit(makeGetSessionCall(PASSWORD));
+      assertTrue(loginStarted.await(10, TimeUnit.SECONDS));
+
+      assertSame(session2, executorService.submit(makeGetSessionCall("other")).get(5, TimeUnit.SECONDS));
+
+      loginRelease.countDown();
+      assertSame(session1, slowLogin.get(10, TimeUnit.SECONDS));
+    }
+    finally
+    {
+      loginRelease.countDown();
+      executorService.shutdownNow();
+    }
+  }
+
+  private Callable<ApplicationSession> makeGetSessionCall(final String password)
+  {
+    return new Callable<ApplicationSession>()
+    {
+      @Override
+      public ApplicationSession call()
+      {
+        return getSession(password);
+      }
+    };
+  }
+
+  /**
+   * A cached session is reused while a long poll holds its lock.
+   */
+  @Test
+  public void testGetSession_ReusedWhileSessionLocked() throws Exception
+  {
+    getSession(PASSWORD);
+    final CountDownLatch locked = new CountDownLatch(1);
+    final CountDownLatch unlock = new CountDownLatch(1);
+    Thread longPoll = new Thread(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        synchronized (session1)
+        {
+          locked.countDown();
+          try
+          {
+            unlock.await(10, TimeUnit.SECONDS);
+          }
+          catch (InterruptedException e)
+          {
+            Thread.currentThread().interrupt();
+          }
+        }
+      }
+    });
+    longPoll.start();
+    ExecutorService executorService = Executors.newSingleThreadExecutor();
+    try
+    {
+      assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+      assertSame(session1, executorService.submit(makeGetSessionCall(PASSWORD)).get(5, TimeUnit.SECONDS));
+    }
+    finally
+    {
+      unlock.countDown();
+      longPoll.join(10000L);
+      executorService.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package bluegreen.manager.client.app;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.Gson;
+
+/**
+ * Times parsing the application's dbfreeze and discovery responses with the gson that GsonFactory configures, as
+ * ApplicationClient does on every poll, and making that gson.  Responses carry an error message of growing length,
+ * as a failed transition does.
+ * <p/>
+ * Not a unit test.  Run after 'mvn test-compile' with the test classpath:
+ * java -cp target/test-classes:target/classes:(test deps) org.openjdk.jmh.Main GsonFactoryBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GsonFactoryBenchmark
+{
+  @Param({ "0", "1000", "100000" })
+  private int errorLength;
+
+  private Gson gson;
+  private String dbFreezeProgressJson;
+  private String discoveryResultJson;
+
+  @Setup
+  public void setUp()
+  {
+    gson = new GsonFactory().makeGson();
+    String error = makeError();
+    dbFreezeProgressJson = "{\"mode\":{\"printable\":\"Flush Error\",\"transition\":\"Try again to enter dbfreeze\","
+        + "\"code\":\"FLUSH_ERROR\"},\"username\":\"bluegreen\",\"startTime\":\"2026-10-16 23:05:01 UTC\","
+        + "\"endTime\":\"2026-10-16 23:05:09 UTC\",\"lockError\":false,\"transitionError\":" + error + "}";
+    discoveryResultJson = "{\"physicalDatabase\":{\"envName\":\"prod-blue\",\"logicalName\":\"appdb\","
+        + "\"dbUrl\":\"jdbc:mysql://prod-blue-appdb.abcdefghijkl.us-west-2.rds.amazonaws.com:3306/app\","
+        + "\"dbUsername\":\"appuser\",\"dbIsLive\":true},\"lockError\":false,\"discoveryError\":" + error + "}";
+  }
+
+  /**
+   * A json string of the requested length, or null.
+   */
+  private String makeError()
+  {
+    if (errorLength == 0)
+    {
+      return "null";
+    }
+    StringBuilder sb = new StringBuilder("\"");
+    while (sb.length() <= errorLength)
+    {
+      sb.append("java.sql.SQLException: Lock wait timeout exceeded; try restarting transaction\\n\\tat ");
+    }
+    return sb.append('"').toString();
+  }
+
+  @Benchmark
+  public DbFreezeProgress parseDbFreezeProgress()
+  {
+    return gson.fromJson(dbFreezeProgressJson, DbFreezeProgress.class);
+  }
+
+  @Benchmark
+  public DiscoveryResult parseDiscoveryResult()
+  {
+    return gson.fromJson(discoveryResultJson, DiscoveryResult.class);
+  }
+
+  @Benchmark
+  public Gson makeGson()
+  {
+    return new GsonFactory().makeGson();
+  }
+}
@@ -0,0 +1,230 @@
+package bluegreen.manager.client.aws;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.amazonaws.AmazonServiceException;
+
+import bluegreen.manager.utils.LatencyHistogram;
+import bluegreen.manager.utils.MetricRegistry;
+import bluegreen.manager.utils.ThreadSleeper;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests the retry, concurrency and bookkeeping behavior of the AWS call governor, with fake AWS calls.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class AwsCallGovernorTest
+{
+  private static final String SERVICE = "rds";
+  private static final String OPERATION = "describeDBInstances";
+
+  @InjectMocks
+  private AwsCallGovernor awsCallGovernor;
+
+  @Mock
+  private ThreadSleeper mockThreadSleeper;
+
+  @Spy
+  private MetricRegistry metricRegistry = new MetricRegistry();
+
+  private static AmazonServiceException makeException(String errorCode, int statusCode)
+  {
+    AmazonServiceException e = new AmazonServiceException("fake " + errorCode);
+    e.setErrorCode(errorCode);
+    e.setStatusCode(statusCode);
+    return e;
+  }
+
+  /**
+   * Fails with the given exception a number of times, then returns "done".
+   */
+  private static class FakeAwsCall implements AwsCall<String>
+  {
+    private final AmazonServiceException exception;
+    private int numFailures;
+    private int numCalls;
+
+    private FakeAwsCall(AmazonServiceException exception, int numFailures)
+    {
+      this.exception = exception;
+      this.numFailures = numFailures;
+    }
+
+    @Override
+    public String call()
+    {
+      ++numCalls;
+      if (numCalls <= numFailures)
+      {
+        throw exception;
+      }
+      return "done";
+    }
+  }
+
+  @Test
+  public void testIsThrottling()
+  {
+    assertTrue(AwsCallGovernor.isThrottling(makeException("Throttling", 400)));
+    assertTrue(AwsCallGovernor.isThrottling(makeException("RequestLimitExceeded", 503)));
+    assertTrue(AwsCallGovernor.isThrottling(makeException("Whatever", 429)));
+    assertFalse(AwsCallGovernor.isThrottling(makeException("DBInstanceNotFound", 404)));
+  }
+
+  /**
+   * Throttled calls are retried after a backoff, and the successful call's latency is recorded.
+   */
+  @Test
+  public void testCall_ThrottledThenPass() throws Exception
+  {
+    FakeAwsCall awsCall = new FakeAwsCall(makeException("Throttling", 400), 2);
+
+    assertEquals("done", awsCallGovernor.call(SERVICE, OPERATION, awsCall));
+    assertEquals(3, awsCall.numCalls);
+    verify(mockThreadSleeper, times(2)).sleep(anyLong());
+    assertEquals(2, awsCallGovernor.getNumThrottles(SERVICE));
+    LatencyHistogram latencyHistogram = awsCallGovernor.getLatencyHistograms().get(SERVICE + "." + OPERATION);
+    assertEquals(1L, latencyHistogram.getCount());
+  }
+
+  /**
+   * Throttling halves the concurrency limit, down to one, and successes raise it again.
+   */
+  @Test
+  public void testCall_ThrottledLowersConcurrency() throws Exception
+  {
+    awsCallGovernor.call(SERVICE, OPERATION, new FakeAwsCall(makeException("Throttling", 400), 1));
+    assertEquals(2, awsCallGovernor.getConcurrencyLimit(SERVICE));
+
+    awsCallGovernor.call(SERVICE, OPERATION, new FakeAwsCall(makeException("Throttling", 400), 3));
+    assertEquals(2, awsCallGovernor.getConcurrencyLimit(SERVICE)); //1 after throttles, +1 for the success
+    assertEquals(AwsCallGovernor.DEFAULT_MAX_CONCURRENCY, awsCallGovernor.getConcurrencyLimit("ec2"));
+  }
+
+  /**
+   * Other AWS errors are thrown right away.
+   */
+  @Test
+  public void testCall_OtherError() throws Exception
+  {
+    AmazonServiceException exception = makeException("DBInstanceNotFound", 404);
+    FakeAwsCall awsCall = new FakeAwsCall(exception, 1);
+    try
+    {
+      awsCallGovernor.call(SERVICE, OPERATION, awsCall);
+      fail();
+    }
+    catch (AmazonServiceException e)
+    {
+      assertSame(exception, e);
+    }
+    assertEquals(1, awsCall.numCalls);
+    verify(mockThreadSleeper, never()).sleep(anyLong());
+    assertEquals(0, awsCallGovernor.getNumThrottles(SERVICE));
+  }
+
+  /**
+   * Gives up after max retries, with the throttling error.
+   */
+  @Test
+  public void testCall_StillThrottled() throws Exception
+  {
+    awsCallGovernor.setMaxRetries(2);
+    FakeAwsCall awsCall = new FakeAwsCall(makeException("Throttling", 400), 10);
+    try
+    {
+      awsCallGovernor.call(SERVICE, OPERATION, awsCall);
+      fail();
+    }
+    catch (AmazonServiceException e)
+    {
+      assertEquals("Throttling", e.getErrorCode());
+    }
+    assertEquals(3, awsCall.numCalls);
+  }
+
+  /**
+   * Calls are counted by outcome, and throttles and limits are exported per service.
+   */
+  @Test
+  public void testCall_Metrics() throws Exception
+  {
+    awsCallGovernor.call(SERVICE, OPERATION, new FakeAwsCall(makeException("Throttling", 400), 1));
+    awsCallGovernor.setMaxRetries(0);
+    try
+    {
+      awsCallGovernor.call(SERVICE, OPERATION, new FakeAwsCall(makeException("Throttling", 400), 1));
+      fail();
+    }
+    catch (AmazonServiceException e)
+    {
+      //Expected
+    }
+
+    assertEquals(1L, metricRegistry.counter("bluegreen_aws_calls_total", "",
+        "service", SERVICE, "operation", OPERATION, "outcome", "ok").getCount());
+    assertEquals(1L, metricRegistry.counter("bluegreen_aws_calls_total", "",
+        "service", SERVICE, "operation", OPERATION, "outcome", "throttled").getCount());
+    String text = metricRegistry.formatPrometheus();
+    assertTrue(text.contains("bluegreen_aws_throttles_total{service=\"rds\"} 2\n"));
+    assertTrue(text.contains("bluegreen_aws_concurrency_limit{service=\"rds\"} 1\n"));
+    assertTrue(text.contains("bluegreen_aws_call_milliseconds_count{service=\"rds\",operation=\"describeDBInstances\"} 1\n"));
+  }
+
+  /**
+   * Calls beyond the burst wait for tokens.
+   */
+  @Test
+  public void testCall_RateLimited() throws Exception
+  {
+    awsCallGovernor.setRequestsPerSecond(0.001);
+    for (int idx = 0; idx < AwsCallGovernor.DEFAULT_BURST; ++idx)
+    {
+      awsCallGovernor.call(SERVICE, OPERATION, new FakeAwsCall(null, 0));
+    }
+    verify(mockThreadSleeper, never()).sleep(anyLong());
+
+    awsCallGovernor.call(SERVICE, OPERATION, new FakeAwsCall(null, 0));
+    verify(mockThreadSleeper).sleep(anyLong());
+  }
+
+  /**
+   * A call interrupted while waiting for a token gives its slot back, so the service's limit is not lowered for good.
+   */
+  @Test
+  public void testCall_InterruptedWaitingForToken() throws Exception
+  {
+    awsCallGovernor.setRequestsPerSecond(0.001);
+    for (int idx = 0; idx < AwsCallGovernor.DEFAULT_BURST; ++idx)
+    {
+      awsCallGovernor.call(SERVICE, OPERATION, new FakeAwsCall(null, 0));
+    }
+    doThrow(new InterruptedException()).when(mockThreadSleeper).sleep(anyLong());
+    FakeAwsCall fakeAwsCall = new FakeAwsCall(null, 0);
+    try
+    {
+      awsCallGovernor.call(SERVICE, OPERATION, fakeAwsCall);
+      fail();
+    }
+    catch (RuntimeException e)
+    {
+      assertTrue(Thread.interrupted());
+    }
+    assertEquals(0, fakeAwsCall.numCalls);
+    assertEquals(0, awsCallGovernor.getNumInFlight(SERVICE));
+  }
+}
@@ -3,13 +3,22 @@ package bluegreen.manager.client.aws;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.regions.Regions;
 import com.amazonaws.regions.ServiceAbbreviations;
+import com.amazonaws.retry.RetryPolicy;
 import com.amazonaws.services.ec2.AmazonEC2Client;
 import com.amazonaws.services.elasticloadbalancing.AmazonElasticLoadBalancingClient;
 import com.amazonaws.services.rds.AmazonRDSClient;
 
+import bluegreen.manager.utils.MetricRegistry;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class AwsClientFactoryTest
 {
@@ -18,6 +27,7 @@ public class AwsClientFactoryTest
   private static final String REGION_NAME = Regions.US_WEST_2.toString();
 
   private AwsClientFactory awsClientFactory = new AwsClientFactory();
+  private MetricRegistry metricRegistry = new MetricRegistry();
 
   @Before
   public void setUp()
@@ -25,6 +35,7 @@ public class AwsClientFactoryTest
     awsClientFactory.setAwsAccessKeyId(KEY_ID);
     awsClientFactory.setAwsSecretAccessKey(SECRET_KEY);
     awsClientFactory.setAwsRegionName(REGION_NAME);
+    awsClientFactory.setMetricRegistry(metricRegistry);
     awsClientFactory.getRegionConstant();
   }
 
@@ -57,4 +68,63 @@ public class AwsClientFactoryTest
     AmazonRDSClient rds = awsClientFactory.makeRegionalRdsClient();
     assertEquals(ServiceAbbreviations.RDS, rds.getServiceName());
   }
-}
\ No newline at end of file
+
+  /**
+   * Clients are made once and shared.
+   */
+  @Test
+  public void testMakeRegionalRDSClient_Shared()
+  {
+    AmazonRDSClient rds = awsClientFactory.makeRegionalRdsClient();
+    assertSame(rds, awsClientFactory.makeRegionalRdsClient());
+    assertEquals(1, awsClientFactory.getPoolStats().size());
+    assertEquals(0L, awsClientFactory.getPoolStats().get("rds/us-west-2").getNumRequests());
+    assertTrue(awsClientFactory.summarizePoolStats().get(0).startsWith("rds/us-west-2: requests=0"));
+    assertTrue(metricRegistry.formatPrometheus().contains("bluegreen_aws_http_pool_leased{client=\"rds/us-west-2\"} 0\n"));
+  }
+
+  /**
+   * Shutdown forgets the clients, so later callers get new ones.
+   */
+  @Test
+  public void testShutdown()
+  {
+    AmazonEC2Client ec2 = awsClientFactory.makeRegionalEc2Client();
+    awsClientFactory.shutdown();
+    assertNotSame(ec2, awsClientFactory.makeRegionalEc2Client());
+  }
+
+  /**
+   * Client configuration follows the tuning properties.
+   */
+  @Test
+  public void testMakeClientConfiguration()
+  {
+    awsClientFactory.setMaxConnections(7);
+    ClientConfiguration clientConfiguration = awsClientFactory.makeClientConfiguration();
+    assertEquals(7, clientConfiguration.getMaxConnections());
+    assertEquals(AwsClientFactory.DEFAULT_SOCKET_TIMEOUT_MILLISECONDS, clientConfiguration.getSocketTimeout());
+    assertTrue(clientConfiguration.useTcpKeepAlive());
+  }
+
+  /**
+   * The SDK leaves throttling retries to AwsCallGovernor, but still retries server errors.
+   */
+  @Test
+  public void testMakeClientConfiguration_RetryPolicy()
+  {
+    RetryPolicy.RetryCondition retryCondition = awsClientFactory.makeClientConfiguration().getRetryPolicy().getRetryCondition();
+    assertFalse(retryCondition.shouldRetry(null, makeServiceException("Throttling", 400), 0));
+    assertFalse(retryCondition.shouldRetry(null, makeServiceException("RequestLimitExceeded", 503), 0));
+    assertTrue(retryCondition.shouldRetry(null, makeServiceException("InternalFailure", 500), 0));
+    assertFalse(retryCondition.shouldRetry(null, makeServiceException("DBInstanceNotFound", 404), 0));
+  }
+
+  private AmazonServiceException makeServiceException(String errorCode, int statusCode)
+  {
+    AmazonServiceException exception = new AmazonServiceException(errorCode);
+    exception.setErrorCode(errorCode);
+    exception.setStatusCode(statusCode);
+    return exception;
+  }
+}
@@ -0,0 +1,85 @@
+package bluegreen.manager.client.aws;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.services.rds.model.DBInstance;
+import com.amazonaws.services.rds.model.DBParameterGroupStatus;
+import com.amazonaws.services.rds.model.VpcSecurityGroupMembership;
+
+/**
+ * Times the RdsAnalyzer lookups on an instance with growing numbers of paramgroups and vpc security groups.  The
+ * self-named paramgroup is the last one, so each lookup walks the whole list.
+ * <p/>
+ * Not a unit test.  Run after 'mvn test-compile' with the test classpath:
+ * java -cp target/test-classes:target/classes:(test deps) org.openjdk.jmh.Main RdsAnalyzerBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RdsAnalyzerBenchmark
+{
+  private static final String INSTANCE_NAME = "prod-green-appdb";
+  private static final String SELF_NAMED_PARAM_GROUP_NAME = "paramgroup-" + INSTANCE_NAME;
+
+  @Param({ "10", "1000", "10000" })
+  private int numGroups;
+
+  private RdsAnalyzer rdsAnalyzer = new RdsAnalyzer();
+  private DBInstance dbInstance;
+
+  @Setup
+  public void setUp()
+  {
+    List<DBParameterGroupStatus> paramGroups = new ArrayList<DBParameterGroupStatus>();
+    List<VpcSecurityGroupMembership> vpcSecurityGroups = new ArrayList<VpcSecurityGroupMembership>();
+    for (int idx = 0; idx < numGroups - 1; ++idx)
+    {
+      paramGroups.add(new DBParameterGroupStatus().withDBParameterGroupName("paramgroup-other" + idx)
+          .withParameterApplyStatus(RdsParameterApplyStatus.IN_SYNC.toString()));
+      vpcSecurityGroups.add(new VpcSecurityGroupMembership().withVpcSecurityGroupId("sg-" + idx).withStatus("active"));
+    }
+    paramGroups.add(new DBParameterGroupStatus().withDBParameterGroupName(SELF_NAMED_PARAM_GROUP_NAME)
+        .withParameterApplyStatus(RdsParameterApplyStatus.PENDING_REBOOT.toString()));
+    vpcSecurityGroups.add(new VpcSecurityGroupMembership().withVpcSecurityGroupId("sg-last").withStatus("active"));
+    dbInstance = new DBInstance().withDBInstanceIdentifier(INSTANCE_NAME)
+        .withDBInstanceStatus(RdsInstanceStatus.AVAILABLE.toString())
+        .withDBParameterGroups(paramGroups)
+        .withVpcSecurityGroups(vpcSecurityGroups);
+  }
+
+  @Benchmark
+  public String findSelfNamedOrDefaultParamGroupName()
+  {
+    return rdsAnalyzer.findSelfNamedOrDefaultParamGroupName(dbInstance);
+  }
+
+  @Benchmark
+  public RdsParameterApplyStatus findParameterApplyStatus()
+  {
+    return rdsAnalyzer.findParameterApplyStatus(dbInstance, SELF_NAMED_PARAM_GROUP_NAME);
+  }
+
+  @Benchmark
+  public Collection<String> extractVpcSecurityGroupIds()
+  {
+    return rdsAnalyzer.extractVpcSecurityGroupIds(dbInstance);
+  }
+}
@@ -1,6 +1,7 @@
 package bluegreen.manager.client.aws;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
@@ -9,6 +10,7 @@ import org.junit.Test;
 
 import com.amazonaws.services.rds.AmazonRDSClient;
 import com.amazonaws.services.rds.model.CopyDBParameterGroupRequest;
+import com.amazonaws.services.rds.model.CopyDBSnapshotRequest;
 import com.amazonaws.services.rds.model.CreateDBSnapshotRequest;
 import com.amazonaws.services.rds.model.DBInstance;
 import com.amazonaws.services.rds.model.DBParameterGroup;
@@ -22,8 +24,11 @@ import com.amazonaws.services.rds.model.RebootDBInstanceRequest;
 import com.amazonaws.services.rds.model.RestoreDBInstanceFromDBSnapshotRequest;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -173,6 +178,52 @@ public class RdsClientTest
     return result;
   }
 
+  /**
+   * Batched describe follows the pagination marker and gathers instances from all pages.
+   */
+  @Test
+  public void testDescribeInstances_Paginated()
+  {
+    DescribeDBInstancesResult page1 = makeDescribeDBInstancesResult(INSTANCE_NAME);
+    page1.setMarker("page2");
+    when(mockRdsClient.describeDBInstances(any(DescribeDBInstancesRequest.class)))
+        .thenReturn(page1).thenReturn(makeDescribeDBInstancesResult(ANOTHER_INSTANCE_NAME));
+
+    List<DBInstance> dbInstances = rdsClient.describeInstances(Arrays.asList(INSTANCE_NAME, ANOTHER_INSTANCE_NAME));
+
+    assertEquals(2, dbInstances.size());
+    assertEquals(ANOTHER_INSTANCE_NAME, dbInstances.get(1).getDBInstanceIdentifier());
+    verify(mockRdsClient, times(2)).describeDBInstances(any(DescribeDBInstancesRequest.class));
+  }
+
+  /**
+   * Batched describe of snapshots, with none found.
+   */
+  @Test
+  public void testDescribeSnapshots_NoneFound()
+  {
+    setupMock(makeDescribeDBSnapshotsResult(null));
+
+    assertTrue(rdsClient.describeSnapshots(Arrays.asList(SNAPSHOT_ID, ANOTHER_SNAPSHOT_ID)).isEmpty());
+  }
+
+  /**
+   * Listing the snapshots of an instance follows the pagination marker.
+   */
+  @Test
+  public void testDescribeInstanceSnapshots_Paginated()
+  {
+    DescribeDBSnapshotsResult page1 = makeDescribeDBSnapshotsResult(SNAPSHOT_ID);
+    page1.setMarker("page2");
+    when(mockRdsClient.describeDBSnapshots(any(DescribeDBSnapshotsRequest.class)))
+        .thenReturn(page1).thenReturn(makeDescribeDBSnapshotsResult(ANOTHER_SNAPSHOT_ID));
+
+    List<DBSnapshot> dbSnapshots = rdsClient.describeInstanceSnapshots(INSTANCE_NAME);
+
+    assertEquals(2, dbSnapshots.size());
+    assertEquals(ANOTHER_SNAPSHOT_ID, dbSnapshots.get(1).getDBSnapshotIdentifier());
+  }
+
   /**
    * Tests that createSnapshot returns its rds result object.
    */
@@ -185,6 +236,18 @@ public class RdsClientTest
     assertEquals(mockSnapshot, rdsClient.createSnapshot(SNAPSHOT_ID, INSTANCE_NAME));
   }
 
+  /**
+   * Tests that copySnapshot returns its rds result object.
+   */
+  @Test
+  public void testCopySnapshot()
+  {
+    DBSnapshot mockSnapshot = mock(DBSnapshot.class);
+    when(mockRdsClient.copyDBSnapshot(any(CopyDBSnapshotRequest.class))).thenReturn(mockSnapshot);
+
+    assertEquals(mockSnapshot, rdsClient.copySnapshot(SNAPSHOT_ID, ANOTHER_SNAPSHOT_ID));
+  }
+
   /**
    * Tests that copyParameterGroup returns its rds result object.
    */
@@ -235,4 +298,22 @@ public class RdsClientTest
 
     assertEquals(mockInstance, rdsClient.rebootInstance(INSTANCE_NAME));
   }
-}
\ No newline at end of file
+
+  /**
+   * Changes evict the changed instance or snapshot from the coalescer, so waits do not start from stale polls.
+   */
+  @Test
+  public void testMutatorsEvict()
+  {
+    RdsDescribeCoalescer mockRdsDescribeCoalescer = mock(RdsDescribeCoalescer.class);
+    rdsClient = new RdsClient(mockRdsClient, null, mockRdsDescribeCoalescer);
+
+    rdsClient.rebootInstance(INSTANCE_NAME);
+    rdsClient.renameInstance(INSTANCE_NAME, ANOTHER_INSTANCE_NAME);
+    rdsClient.deleteSnapshot(SNAPSHOT_ID);
+
+    verify(mockRdsDescribeCoalescer, times(2)).evictInstance(INSTANCE_NAME);
+    verify(mockRdsDescribeCoalescer).evictInstance(ANOTHER_INSTANCE_NAME);
+    verify(mockRdsDescribeCoalescer).evictSnapshot(SNAPSHOT_ID);
+  }
+}
@@ -0,0 +1,199 @@
+package bluegreen.manager.client.aws;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.amazonaws.services.rds.model.DBInstance;
+import com.amazonaws.services.rds.model.DBInstanceNotFoundException;
+import com.amazonaws.services.rds.model.DBSnapshot;
+import com.amazonaws.services.rds.model.DBSnapshotNotFoundException;
+
+import bluegreen.manager.utils.NowFactory;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests that concurrent polls of several RDS resources are served by shared describe requests.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class RdsDescribeCoalescerTest
+{
+  private static final String INSTANCE_NAME1 = "instance1";
+  private static final String INSTANCE_NAME2 = "instance2";
+  private static final String SNAPSHOT_ID = "snapshot1";
+  private static final long START_MILLIS = 1000000L;
+
+  @InjectMocks
+  private RdsDescribeCoalescer rdsDescribeCoalescer;
+
+  @Mock
+  private NowFactory mockNowFactory;
+
+  @Mock
+  private RdsClient mockRdsClient;
+
+  private DBInstance instance1 = makeInstance(INSTANCE_NAME1);
+  private DBInstance instance2 = makeInstance(INSTANCE_NAME2);
+
+  @Before
+  public void setUp()
+  {
+    setNow(0L);
+    rdsDescribeCoalescer.setMaxAgeMilliseconds(3000L);
+  }
+
+  private void setNow(long elapsedMilliseconds)
+  {
+    when(mockNowFactory.now()).thenReturn(new Date(START_MILLIS + elapsedMilliseconds));
+  }
+
+  private DBInstance makeInstance(String instanceName)
+  {
+    DBInstance dbInstance = new DBInstance();
+    dbInstance.setDBInstanceIdentifier(instanceName);
+    return dbInstance;
+  }
+
+  /**
+   * A lone poll gets a plain describe.
+   */
+  @Test
+  public void testDescribeInstance_Lone()
+  {
+    when(mockRdsClient.describeInstance(INSTANCE_NAME1)).thenReturn(instance1);
+
+    assertSame(instance1, rdsDescribeCoalescer.describeInstance(mockRdsClient, INSTANCE_NAME1));
+    verify(mockRdsClient, never()).describeInstances(anyListOf(String.class));
+  }
+
+  /**
+   * Once two instances are in flight, one batched request serves both, until its results get too old.
+   */
+  @Test
+  public void testDescribeInstance_Batched()
+  {
+    when(mockRdsClient.describeInstance(INSTANCE_NAME1)).thenReturn(instance1);
+    when(mockRdsClient.describeInstances(anyListOf(String.class))).thenReturn(Arrays.asList(instance1, instance2));
+
+    rdsDescribeCoalescer.describeInstance(mockRdsClient, INSTANCE_NAME1);
+    setNow(1000L);
+    assertSame(instance2, rdsDescribeCoalescer.describeInstance(mockRdsClient, INSTANCE_NAME2));
+    setNow(2000L);
+    assertSame(instance1, rdsDescribeCoalescer.describeInstance(mockRdsClient, INSTANCE_NAME1));
+    verify(mockRdsClient, times(1)).describeInstances(anyListOf(String.class));
+
+    setNow(5000L);
+    rdsDescribeCoalescer.describeInstance(mockRdsClient, INSTANCE_NAME1);
+    verify(mockRdsClient, times(2)).describeInstances(anyListOf(String.class));
+
+    assertEquals(4, rdsDescribeCoalescer.getNumPolls());
+    assertEquals(3, rdsDescribeCoalescer.getNumDescribeCalls());
+    assertEquals(1, rdsDescribeCoalescer.getNumSavedCalls());
+  }
+
+  /**
+   * An in-flight instance missing from the batched result is not found, as a plain describe would say.
+   */
+  @Test(expected = DBInstanceNotFoundException.class)
+  public void testDescribeInstance_BatchedNotFound()
+  {
+    when(mockRdsClient.describeInstance(INSTANCE_NAME1)).thenReturn(instance1);
+    when(mockRdsClient.describeInstances(anyListOf(String.class))).thenReturn(Arrays.asList(instance1));
+
+    rdsDescribeCoalescer.describeInstance(mockRdsClient, INSTANCE_NAME1);
+    rdsDescribeCoalescer.describeInstance(mockRdsClient, INSTANCE_NAME2);
+  }
+
+  /**
+   * Instances not polled for a long time drop out of the batch.
+   */
+  @Test
+  public void testDescribeInstance_NoLongerInFlight()
+  {
+    when(mockRdsClient.describeInstance(INSTANCE_NAME1)).thenReturn(instance1);
+    when(mockRdsClient.describeInstance(INSTANCE_NAME2)).thenReturn(instance2);
+
+    rdsDescribeCoalescer.describeInstance(mockRdsClient, INSTANCE_NAME1);
+    setNow(RdsDescribeCoalescer.DEFAULT_IN_FLIGHT_MILLISECONDS + 1L);
+    assertSame(instance2, rdsDescribeCoalescer.describeInstance(mockRdsClient, INSTANCE_NAME2));
+    verify(mockRdsClient, never()).describeInstances(anyListOf(String.class));
+  }
+
+  /**
+   * Snapshots are batched separately from instances, and a lone missing snapshot is not found.
+   */
+  @Test(expected = DBSnapshotNotFoundException.class)
+  public void testDescribeSnapshot_NotFound()
+  {
+    when(mockRdsClient.describeInstance(INSTANCE_NAME1)).thenReturn(instance1);
+    when(mockRdsClient.describeSnapshot(SNAPSHOT_ID)).thenThrow(new DBSnapshotNotFoundException("not found"));
+
+    rdsDescribeCoalescer.describeInstance(mockRdsClient, INSTANCE_NAME1);
+    rdsDescribeCoalescer.describeSnapshot(mockRdsClient, SNAPSHOT_ID);
+  }
+
+  /**
+   * A batched snapshot result is served to later polls.
+   */
+  @Test
+  public void testDescribeSnapshot_Batched()
+  {
+    DBSnapshot snapshot1 = new DBSnapshot().withDBSnapshotIdentifier(SNAPSHOT_ID);
+    DBSnapshot snapshot2 = new DBSnapshot().withDBSnapshotIdentifier("snapshot2");
+    when(mockRdsClient.describeSnapshot(SNAPSHOT_ID)).thenReturn(snapshot1);
+    when(mockRdsClient.describeSnapshots(anyListOf(String.class))).thenReturn(Arrays.asList(snapshot1, snapshot2));
+
+    rdsDescribeCoalescer.describeSnapshot(mockRdsClient, SNAPSHOT_ID);
+    rdsDescribeCoalescer.describeSnapshot(mockRdsClient, "snapshot2");
+    assertSame(snapshot1, rdsDescribeCoalescer.describeSnapshot(mockRdsClient, SNAPSHOT_ID));
+    assertEquals(1, rdsDescribeCoalescer.getNumSavedCalls());
+  }
+
+  /**
+   * An evicted instance is described again on its next poll, even though the batch is still fresh.
+   */
+  @Test
+  public void testEvictInstance()
+  {
+    DBInstance modifiedInstance1 = makeInstance(INSTANCE_NAME1);
+    when(mockRdsClient.describeInstance(INSTANCE_NAME1)).thenReturn(instance1);
+    when(mockRdsClient.describeInstances(anyListOf(String.class)))
+        .thenReturn(Arrays.asList(instance1, instance2))
+        .thenReturn(Arrays.asList(modifiedInstance1, instance2));
+
+    rdsDescribeCoalescer.describeInstance(mockRdsClient, INSTANCE_NAME1);
+    rdsDescribeCoalescer.describeInstance(mockRdsClient, INSTANCE_NAME2);
+    rdsDescribeCoalescer.evictInstance(INSTANCE_NAME1);
+    setNow(1000L);
+    assertSame(instance2, rdsDescribeCoalescer.describeInstance(mockRdsClient, INSTANCE_NAME2));
+    assertSame(modifiedInstance1, rdsDescribeCoalescer.describeInstance(mockRdsClient, INSTANCE_NAME1));
+    verify(mockRdsClient, times(2)).describeInstances(anyListOf(String.class));
+  }
+
+  /**
+   * An evicted snapshot is described again on its next poll.
+   */
+  @Test
+  public void testEvictSnapshot()
+  {
+    DBSnapshot snapshot1 = new DBSnapshot().withDBSnapshotIdentifier(SNAPSHOT_ID);
+    when(mockRdsClient.describeSnapshot(SNAPSHOT_ID)).thenReturn(snapshot1);
+
+    rdsDescribeCoalescer.describeSnapshot(mockRdsClient, SNAPSHOT_ID);
+    rdsDescribeCoalescer.evictSnapshot(SNAPSHOT_ID);
+    rdsDescribeCoalescer.describeSnapshot(mockRdsClient, SNAPSHOT_ID);
+    verify(mockRdsClient, times(2)).describeSnapshot(SNAPSHOT_ID);
+  }
+}
@@ -7,6 +7,7 @@ import java.util.Map;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
@@ -16,16 +17,23 @@ import static bluegreen.manager.jobs.JobFactory.UNLIMITED_NUM_VALUES;
 import bluegreen.manager.main.ArgumentParser;
 import bluegreen.manager.main.CmdlineException;
 import bluegreen.manager.model.tx.EnvironmentTx;
+import bluegreen.manager.model.tx.HistoryRecorder;
 import bluegreen.manager.model.tx.JobHistoryTx;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyMap;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 /**
@@ -50,6 +58,9 @@ public class JobFactoryTest
   @Mock
   private EnvironmentTx mockEnvironmentTx;
 
+  @Mock
+  private HistoryRecorder mockHistoryRecorder;
+
   private ArgumentParser argumentParser = new ArgumentParser();
 
   /**
@@ -62,6 +73,7 @@ public class JobFactoryTest
     assertTrue(explanation.contains(JobFactory.JOBNAME_STAGING_DEPLOY));
     assertTrue(explanation.contains(JobFactory.JOBNAME_GO_LIVE));
     assertTrue(explanation.contains(JobFactory.JOBNAME_TEARDOWN));
+    assertTrue(explanation.contains(JobFactory.JOBNAME_WARM_POOL));
   }
 
   /**
@@ -96,6 +108,40 @@ public class JobFactoryTest
     });
   }
 
+  /**
+   * The history backlog is written to the db before the last relevant job is looked up there.
+   */
+  @Test
+  public void testMakeJob_FlushesBacklogFirst()
+  {
+    when(mockEnvironmentTx.checkIfEnvNamesExist(anyString(), anyString())).thenReturn(new boolean[] { true, true });
+    parseAndMakeJob("goLive --oldLiveEnv env3 --newLiveEnv env4");
+    InOrder inOrder = inOrder(mockHistoryRecorder, mockJobHistoryTx);
+    inOrder.verify(mockHistoryRecorder).flushBacklog();
+    inOrder.verify(mockJobHistoryTx).findLastRelevantJobHistory(anyString(), anyString(), anyString(), anyString(),
+        anyBoolean(), anyLong());
+  }
+
+  /**
+   * No job is made if the history backlog can't be written.
+   */
+  @Test
+  public void testMakeJob_BacklogStuck()
+  {
+    when(mockEnvironmentTx.checkIfEnvNamesExist(anyString(), anyString())).thenReturn(new boolean[] { true, true });
+    doThrow(new IllegalStateException("db is down")).when(mockHistoryRecorder).flushBacklog();
+    try
+    {
+      parseAndMakeJob("goLive --oldLiveEnv env3 --newLiveEnv env4");
+      fail();
+    }
+    catch (IllegalStateException e)
+    {
+      //Expected
+    }
+    verifyZeroInteractions(mockJobHistoryTx, mockApplicationContext);
+  }
+
   /**
    * Tests successful creation of a GoLiveJob.
    */
@@ -124,6 +170,29 @@ public class JobFactoryTest
     });
   }
 
+  /**
+   * Tests successful creation of a WarmPoolJob.
+   */
+  @Test
+  public void testMakeJob_WarmPool()
+  {
+    when(mockEnvironmentTx.checkIfEnvNamesExist(anyString())).thenReturn(new boolean[] { true });
+    String commandLine = "warmPool --liveEnv env1 --poolSize 2";
+    parseAndMakeJob(commandLine);
+    verify(mockApplicationContext).getBean(eq(WarmPoolJob.class), new Object[] {
+        eq(commandLine), eq(false), eq(false), isNull(), eq("env1"), eq(2)
+    });
+  }
+
+  /**
+   * Fail case: pool size is not a number.
+   */
+  @Test(expected = CmdlineException.class)
+  public void testMakeJob_WarmPoolBadSize()
+  {
+    parseAndMakeJob("warmPool --liveEnv env1 --poolSize many");
+  }
+
   /**
    * Fail case: desired parameter not found in the list.
    */
@@ -0,0 +1,416 @@
+package bluegreen.manager.jobs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+
+import bluegreen.manager.client.app.DbFreezeMode;
+import bluegreen.manager.model.domain.FreezeWindow;
+import bluegreen.manager.model.domain.JobHistory;
+import bluegreen.manager.model.domain.JobStatus;
+import bluegreen.manager.model.domain.TaskStatus;
+import bluegreen.manager.tasks.EnvironmentBuildTask;
+import bluegreen.manager.tasks.FreezeTask;
+import bluegreen.manager.tasks.FreezeWindowTracker;
+import bluegreen.manager.tasks.LocalShellTask;
+import bluegreen.manager.tasks.RdsSnapshotRestoreTask;
+import bluegreen.manager.tasks.RegisterApplicationTask;
+import bluegreen.manager.tasks.ShellConfig;
+import bluegreen.manager.tasks.SmokeTestTask;
+import bluegreen.manager.tasks.Task;
+import bluegreen.manager.tasks.TaskRun;
+import bluegreen.manager.tasks.TaskRunProcessor;
+import bluegreen.manager.tasks.ThawTask;
+import bluegreen.manager.utils.MetricRegistry;
+import bluegreen.manager.utils.NowFactory;
+import bluegreen.manager.utils.TraceRecorder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.RETURNS_DEFAULTS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs a StagingDeployJob with write-behind history against a real (in-memory) db, with fake tasks.  The job's
+ * freeze window is recorded before its job history reaches the db.
+ */
+public class StagingDeployJobTest
+{
+  private static final String LIVE_ENV_NAME = "liveEnv";
+  private static final String STAGE_ENV_NAME = "stageEnv";
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private AnnotationConfigApplicationContext applicationContext;
+  private FakeTasks fakeTasks = new FakeTasks();
+
+  @Before
+  public void setUp()
+  {
+    Map<String, Object> properties = new HashMap<String, Object>();
+    properties.put("bluegreen.history.writeBehind", "true");
+    properties.put("bluegreen.history.journalFile", temporaryFolder.getRoot().getPath() + "/history.journal");
+    properties.put("bluegreen.trace.enabled", "false");
+    properties.put("bluegreen.metrics.jmx.enabled", "false");
+    applicationContext = new AnnotationConfigApplicationContext();
+    applicationContext.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", properties));
+    applicationContext.register(TestConfig.class, StagingDeployJob.class);
+    registerFakes(applicationContext.getBeanFactory());
+    applicationContext.refresh();
+  }
+
+  /**
+   * Registers the fakes as ready-made objects, so spring does not autowire the mocks.
+   */
+  private void registerFakes(ConfigurableListableBeanFactory beanFactory)
+  {
+    TaskRunProcessor mockTaskRunProcessor = mock(TaskRunProcessor.class);
+    when(mockTaskRunProcessor.attemptTask(any(TaskRun.class))).then(new Answer<TaskStatus>()
+    {
+      @Override
+      public TaskStatus answer(InvocationOnMock invocation) throws Throwable
+      {
+        return fakeTasks.attemptTask((TaskRun) invocation.getArguments()[0]);
+      }
+    });
+    beanFactory.registerSingleton("taskRunProcessor", mockTaskRunProcessor);
+    registerFakeTask(beanFactory, FreezeTask.class);
+    registerFakeTask(beanFactory, ThawTask.class);
+    registerFakeTask(beanFactory, RdsSnapshotRestoreTask.class);
+    registerFakeTask(beanFactory, EnvironmentBuildTask.class);
+    registerFakeTask(beanFactory, LocalShellTask.class);
+    registerFakeTask(beanFactory, RegisterApplicationTask.class);
+    registerFakeTask(beanFactory, SmokeTestTask.class);
+  }
+
+  /**
+   * Registers a factory that makes a new fake task of the class on every lookup, as the app's prototype task beans do.
+   */
+  private <T extends Task> void registerFakeTask(ConfigurableListableBeanFactory beanFactory, final Class<T> taskClass)
+  {
+    beanFactory.registerSingleton("fake" + taskClass.getSimpleName(), new FactoryBean<T>()
+    {
+      @Override
+      public T getObject()
+      {
+        return fakeTasks.mockTask(taskClass);
+      }
+
+      @Override
+      public Class<?> getObjectType()
+      {
+        return taskClass;
+      }
+
+      @Override
+      public boolean isSingleton()
+      {
+        return false;
+      }
+    });
+  }
+
+  @After
+  public void tearDown()
+  {
+    applicationContext.close();
+  }
+
+  /**
+   * The freeze window is written under the job history, once the writer has inserted it, and goes in the histogram.
+   */
+  @Test
+  public void testProcess_WriteBehindRecordsFreezeWindow()
+  {
+    assertEquals(JobStatus.DONE, makeJob().process());
+
+    FreezeWindow freezeWindow = findFreezeWindow();
+    assertEquals(LIVE_ENV_NAME, freezeWindow.getEnvName());
+    assertTrue(freezeWindow.getNormalTime() != null);
+    JobHistory jobHistory = freezeWindow.getJobHistory();
+    assertTrue(jobHistory.getId() != 0L);
+    assertEquals(LIVE_ENV_NAME, jobHistory.getEnv1());
+    assertEquals(JobStatus.DONE, jobHistory.getStatus());
+    assertEquals(1L, getFreezeWindowHistogramCount("within_budget"));
+  }
+
+  /**
+   * Snapshots overran the freeze budget: the job thaws early through the task runner, forced, and fails.
+   */
+  @Test
+  public void testProcess_BudgetExceededThawsEarly()
+  {
+    fakeTasks.snapshotOverrunsBudget = true;
+
+    assertEquals(JobStatus.ERROR, makeJob().process());
+
+    TaskRun thawRun = fakeTasks.findTaskRun(ThawTask.class);
+    assertTrue(thawRun.isForce());
+    assertTrue(thawRun.getNewJobHistory() != null);
+    FreezeWindow freezeWindow = findFreezeWindow();
+    assertTrue(freezeWindow.isBudgetExceeded());
+    assertTrue(freezeWindow.getNormalTime() != null);
+    assertEquals(1L, getFreezeWindowHistogramCount("budget_exceeded"));
+  }
+
+  /**
+   * The early thaw failed: the job still fails and records its freeze window, with the app never back to NORMAL.
+   */
+  @Test
+  public void testProcess_EarlyThawFails()
+  {
+    fakeTasks.snapshotOverrunsBudget = true;
+    fakeTasks.thawStatus = TaskStatus.ERROR;
+
+    assertEquals(JobStatus.ERROR, makeJob().process());
+
+    assertTrue(fakeTasks.findTaskRun(ThawTask.class) != null);
+    FreezeWindow freezeWindow = findFreezeWindow();
+    assertTrue(freezeWindow.isBudgetExceeded());
+    assertTrue(freezeWindow.getNormalTime() == null);
+  }
+
+  private StagingDeployJob makeJob()
+  {
+    Map<String, String> dbMap = new HashMap<String, String>();
+    dbMap.put("livedb", "stagedb");
+    return applicationContext.getBean(StagingDeployJob.class, "stagingDeploy cmdline", false, false,
+        null, LIVE_ENV_NAME, STAGE_ENV_NAME, dbMap, Arrays.asList("pkg"));
+  }
+
+  /**
+   * Reads back the one freeze window in the db.
+   */
+  private FreezeWindow findFreezeWindow()
+  {
+    EntityManager entityManager = applicationContext.getBean(EntityManagerFactory.class).createEntityManager();
+    try
+    {
+      List<FreezeWindow> freezeWindows = entityManager.createQuery("SELECT fw FROM "
+          + FreezeWindow.class.getSimpleName() + " fw", FreezeWindow.class).getResultList();
+      assertEquals(1, freezeWindows.size());
+      return freezeWindows.get(0);
+    }
+    finally
+    {
+      entityManager.close();
+    }
+  }
+
+  private long getFreezeWindowHistogramCount(String outcome)
+  {
+    return applicationContext.getBean(MetricRegistry.class).histogram("bluegreen_freeze_window_milliseconds", "",
+        MetricRegistry.LONG_DURATION_BUCKETS, "outcome", outcome).getCount();
+  }
+
+  /**
+   * Fake tasks: mocks that return themselves from their assign and track methods, and take their position from
+   * assign.  Keeps the freeze window tracker the job hands to its tasks, and the task runs attempted.
+   */
+  static class FakeTasks
+  {
+    private volatile FreezeWindowTracker freezeWindowTracker;
+    private volatile Task snapshotTask;
+    private final List<TaskRun> taskRuns = new ArrayList<TaskRun>();
+    private boolean snapshotOverrunsBudget;
+    private TaskStatus thawStatus = TaskStatus.DONE;
+
+    <T extends Task> T mockTask(Class<T> taskClass)
+    {
+      return mock(taskClass, new Answer<Object>()
+      {
+        private int position;
+
+        @Override
+        public Object answer(InvocationOnMock invocation) throws Throwable
+        {
+          String methodName = invocation.getMethod().getName();
+          if (methodName.startsWith("assign"))
+          {
+            position = (Integer) invocation.getArguments()[0];
+            return invocation.getMock();
+          }
+          else if (methodName.equals("trackFreezeWindow"))
+          {
+            freezeWindowTracker = (FreezeWindowTracker) invocation.getArguments()[0];
+            if (invocation.getMock() instanceof RdsSnapshotRestoreTask)
+            {
+              snapshotTask = (Task) invocation.getMock();
+            }
+            return invocation.getMock();
+          }
+          else if (methodName.equals("getPosition"))
+          {
+            return position;
+          }
+          return RETURNS_DEFAULTS.answer(invocation);
+        }
+      });
+    }
+
+    /**
+     * Succeeds at every task, unless told to have the snapshots overrun the budget or the thaw fail.  The freeze and
+     * thaw tasks report their transitions to the tracker.
+     */
+    TaskStatus attemptTask(TaskRun taskRun)
+    {
+      Task task = taskRun.getTask();
+      synchronized (taskRuns)
+      {
+        taskRuns.add(taskRun);
+      }
+      if (task instanceof FreezeTask)
+      {
+        freezeWindowTracker.transitionRequested(DbFreezeMode.FROZEN);
+        freezeWindowTracker.transitionReached(DbFreezeMode.FROZEN);
+      }
+      else if (task == snapshotTask && snapshotOverrunsBudget)
+      {
+        freezeWindowTracker.snapshotStarted();
+        freezeWindowTracker.budgetExceeded();
+        return TaskStatus.ERROR;
+      }
+      else if (task instanceof ThawTask)
+      {
+        freezeWindowTracker.transitionRequested(DbFreezeMode.NORMAL);
+        if (thawStatus != TaskStatus.DONE)
+        {
+          return thawStatus;
+        }
+        freezeWindowTracker.transitionReached(DbFreezeMode.NORMAL);
+      }
+      return TaskStatus.DONE;
+    }
+
+    /**
+     * Returns the run of the task of the given class, or null if not attempted.
+     */
+    TaskRun findTaskRun(Class<? extends Task> taskClass)
+    {
+      synchronized (taskRuns)
+      {
+        for (TaskRun taskRun : taskRuns)
+        {
+          if (taskClass.isInstance(taskRun.getTask()))
+          {
+            return taskRun;
+          }
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * The persistence layer and history recorder as in the app, on an in-memory db.
+   */
+  @Configuration
+  @EnableTransactionManagement
+  @ComponentScan({ "bluegreen.manager.model.dao", "bluegreen.manager.model.tx" })
+  static class TestConfig
+  {
+    @Bean
+    static PropertySourcesPlaceholderConfigurer propertySourcesPlaceholderConfigurer()
+    {
+      return new PropertySourcesPlaceholderConfigurer();
+    }
+
+    @Bean
+    DataSource dataSource()
+    {
+      DriverManagerDataSource dataSource = new DriverManagerDataSource(
+          "jdbc:h2:mem:stagingDeployJobTest;DB_CLOSE_DELAY=-1", "sa", "");
+      dataSource.setDriverClassName("org.h2.Driver");
+      return dataSource;
+    }
+
+    @Bean
+    LocalContainerEntityManagerFactoryBean entityManagerFactory()
+    {
+      HibernateJpaVendorAdapter vendorAdapter = new HibernateJpaVendorAdapter();
+      vendorAdapter.setDatabasePlatform("org.hibernate.dialect.H2Dialect");
+      vendorAdapter.setGenerateDdl(true);
+      Properties jpaProperties = new Properties();
+      jpaProperties.setProperty("hibernate.hbm2ddl.auto", "create-drop");
+      jpaProperties.setProperty("javax.persistence.validation.mode", "none");
+      LocalContainerEntityManagerFactoryBean factoryBean = new LocalContainerEntityManagerFactoryBean();
+      factoryBean.setDataSource(dataSource());
+      factoryBean.setJpaVendorAdapter(vendorAdapter);
+      factoryBean.setPackagesToScan("bluegreen.manager.model");
+      factoryBean.setJpaProperties(jpaProperties);
+      return factoryBean;
+    }
+
+    @Bean
+    PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory)
+    {
+      return new JpaTransactionManager(entityManagerFactory);
+    }
+
+    @Bean
+    NowFactory nowFactory()
+    {
+      return new NowFactory();
+    }
+
+    @Bean
+    MetricRegistry metricRegistry()
+    {
+      return new MetricRegistry();
+    }
+
+    @Bean
+    TraceRecorder traceRecorder()
+    {
+      return new TraceRecorder();
+    }
+
+    @Bean(name = "buildStageEnv")
+    ShellConfig buildStageEnvConfig()
+    {
+      return new ShellConfig();
+    }
+
+    @Bean(name = "deployPackages")
+    ShellConfig deployPackagesConfig()
+    {
+      return new ShellConfig();
+    }
+
+    @Bean(name = "validateVm")
+    ShellConfig validateVmConfig()
+    {
+      return new ShellConfig();
+    }
+  }
+}
@@ -0,0 +1,125 @@
+package bluegreen.manager.jobs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import bluegreen.manager.tasks.Task;
+import bluegreen.manager.tasks.TaskFakery;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the dependency rules of TaskGraph.
+ */
+public class TaskGraphTest
+{
+  private static final int NUM_FAKE_TASKS = 4;
+  private TaskFakery taskFakery = new TaskFakery();
+
+  private List<Task> makeFakeTasks()
+  {
+    List<Task> tasks = new ArrayList<Task>();
+    for (int idx = 0; idx < NUM_FAKE_TASKS; ++idx)
+    {
+      tasks.add(taskFakery.makeFakeTask(idx));
+    }
+    return tasks;
+  }
+
+  /**
+   * With no declared prerequisites, tasks become ready one at a time in position order.
+   */
+  @Test
+  public void testStartReadyTasks_Sequential()
+  {
+    List<Task> tasks = makeFakeTasks();
+    TaskGraph taskGraph = new TaskGraph(tasks, null);
+    for (int idx = 0; idx < NUM_FAKE_TASKS; ++idx)
+    {
+      List<Task> readyTasks = taskGraph.startReadyTasks();
+      assertEquals(Arrays.asList(tasks.get(idx)), readyTasks);
+      assertTrue(taskGraph.startReadyTasks().isEmpty());
+      taskGraph.finish(readyTasks.get(0));
+    }
+    assertTrue(taskGraph.isFinished());
+  }
+
+  /**
+   * Two tasks sharing a prerequisite become ready together, and the task after them waits for the preceding one.
+   */
+  @Test
+  public void testStartReadyTasks_Fork()
+  {
+    List<Task> tasks = makeFakeTasks();
+    Map<Task, List<Task>> prerequisites = new HashMap<Task, List<Task>>();
+    prerequisites.put(tasks.get(2), Arrays.asList(tasks.get(0)));
+    TaskGraph taskGraph = new TaskGraph(tasks, prerequisites);
+
+    assertEquals(Arrays.asList(tasks.get(0)), taskGraph.startReadyTasks());
+    taskGraph.finish(tasks.get(0));
+    assertEquals(Arrays.asList(tasks.get(1), tasks.get(2)), taskGraph.startReadyTasks());
+    taskGraph.finish(tasks.get(1));
+    assertTrue(taskGraph.startReadyTasks().isEmpty());
+    taskGraph.finish(tasks.get(2));
+    assertEquals(Arrays.asList(tasks.get(3)), taskGraph.startReadyTasks());
+    assertFalse(taskGraph.isFinished());
+    taskGraph.finish(tasks.get(3));
+    assertTrue(taskGraph.isFinished());
+  }
+
+  /**
+   * An empty list of prerequisites means the task is ready at the start.
+   */
+  @Test
+  public void testStartReadyTasks_NoPrerequisites()
+  {
+    List<Task> tasks = makeFakeTasks();
+    Map<Task, List<Task>> prerequisites = new HashMap<Task, List<Task>>();
+    prerequisites.put(tasks.get(1), new ArrayList<Task>());
+    TaskGraph taskGraph = new TaskGraph(tasks, prerequisites);
+
+    assertEquals(Arrays.asList(tasks.get(0), tasks.get(1)), taskGraph.startReadyTasks());
+    assertEquals(Arrays.asList(2), taskGraph.getPrerequisitePositions(3));
+  }
+
+  /**
+   * A prerequisite that comes later in the job is rejected, since it could make a cycle.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testConstructor_LaterPrerequisite()
+  {
+    List<Task> tasks = makeFakeTasks();
+    Map<Task, List<Task>> prerequisites = new HashMap<Task, List<Task>>();
+    prerequisites.put(tasks.get(1), Arrays.asList(tasks.get(2)));
+    new TaskGraph(tasks, prerequisites);
+  }
+
+  /**
+   * A prerequisite from outside the job is rejected.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testConstructor_ForeignPrerequisite()
+  {
+    List<Task> tasks = makeFakeTasks();
+    Map<Task, List<Task>> prerequisites = new HashMap<Task, List<Task>>();
+    prerequisites.put(tasks.get(1), Arrays.asList(taskFakery.makeFakeTask(0)));
+    new TaskGraph(tasks, prerequisites);
+  }
+
+  /**
+   * Task positions must match list order.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testConstructor_BadPosition()
+  {
+    List<Task> tasks = makeFakeTasks();
+    tasks.remove(0);
+    new TaskGraph(tasks, null);
+  }
+}
@@ -2,7 +2,10 @@ package bluegreen.manager.jobs;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -17,14 +20,22 @@ import bluegreen.manager.model.domain.JobHistory;
 import bluegreen.manager.model.domain.JobStatus;
 import bluegreen.manager.model.domain.TaskHistory;
 import bluegreen.manager.model.domain.TaskStatus;
-import bluegreen.manager.model.tx.JobHistoryTx;
+import bluegreen.manager.model.tx.EnvironmentCache;
+import bluegreen.manager.model.tx.HistoryRecorder;
 import bluegreen.manager.tasks.Task;
 import bluegreen.manager.tasks.TaskFakery;
 import bluegreen.manager.tasks.TaskRun;
 import bluegreen.manager.tasks.TaskRunProcessor;
 import bluegreen.manager.utils.NowFactory;
+import bluegreen.manager.utils.Span;
+import bluegreen.manager.utils.TraceRecorder;
+import bluegreen.manager.utils.Tracing;
 import static bluegreen.manager.utils.TimeFakery.START_TIME;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.times;
@@ -60,18 +71,30 @@ public class TaskSequenceJobTest
   private NowFactory mockNowFactory;
 
   @Mock
-  private JobHistoryTx mockJobHistoryTx;
+  private HistoryRecorder mockHistoryRecorder;
 
   @Mock
   private TaskRunProcessor mockTaskRunProcessor;
 
+  @Mock
+  private EnvironmentCache mockEnvironmentCache;
+
+  @Mock
+  private TraceRecorder mockTraceRecorder;
+
   private JobHistory newJobHistory = new JobHistory();
 
   @Before
   public void setUp()
   {
     when(mockNowFactory.now()).thenReturn(START_TIME);
-    when(mockJobHistoryTx.newJobHistoryProcessing(jobNormal, START_TIME)).thenReturn(newJobHistory);
+    when(mockHistoryRecorder.newJobHistoryProcessing(jobNormal, START_TIME)).thenReturn(newJobHistory);
+  }
+
+  @After
+  public void tearDown()
+  {
+    Tracing.setCurrent(null);
   }
 
   /**
@@ -108,10 +131,11 @@ public class TaskSequenceJobTest
 
     jobNormal.process();
 
-    InOrder inorder = inOrder(mockJobHistoryTx, mockTaskRunProcessor);
-    inorder.verify(mockJobHistoryTx).newJobHistoryProcessing(jobNormal, START_TIME);
+    InOrder inorder = inOrder(mockHistoryRecorder, mockTaskRunProcessor);
+    inorder.verify(mockHistoryRecorder).newJobHistoryProcessing(jobNormal, START_TIME);
     inorder.verify(mockTaskRunProcessor, times(NUM_FAKE_TASKS)).attemptTask(any(TaskRun.class));
-    inorder.verify(mockJobHistoryTx).closeJobHistory(any(JobHistory.class), eq(JobStatus.DONE));
+    inorder.verify(mockHistoryRecorder).closeJobHistory(any(JobHistory.class), eq(JobStatus.DONE));
+    inorder.verify(mockHistoryRecorder).flush();
   }
 
   /**
@@ -126,7 +150,92 @@ public class TaskSequenceJobTest
 
     jobNoop.process();
 
-    verifyZeroInteractions(mockJobHistoryTx);
+    verifyZeroInteractions(mockHistoryRecorder);
+    verify(mockTaskRunProcessor, times(NUM_FAKE_TASKS)).attemptTask(any(TaskRun.class));
+  }
+
+  /**
+   * The job is traced, and its span is current on the threads that run its tasks.
+   */
+  @Test
+  public void testProcess_Trace()
+  {
+    newJobHistory.setTaskHistories(new ArrayList<TaskHistory>());
+    final Span jobSpan = Tracing.startTrace("job", "test");
+    Tracing.setCurrent(null);
+    final List<Span> taskParents = new ArrayList<Span>();
+    when(mockTraceRecorder.startJobTrace(anyString())).thenAnswer(
+        new Answer<Span>()
+        {
+          @Override
+          public Span answer(InvocationOnMock invocation) throws Throwable
+          {
+            Tracing.setCurrent(jobSpan);
+            return jobSpan;
+          }
+        });
+    when(mockTaskRunProcessor.attemptTask(any(TaskRun.class))).thenAnswer(new Answer<TaskStatus>()
+    {
+      @Override
+      public TaskStatus answer(InvocationOnMock invocation) throws Throwable
+      {
+        synchronized (taskParents)
+        {
+          taskParents.add(Tracing.getCurrent());
+        }
+        return TaskStatus.DONE;
+      }
+    });
+
+    jobNormal.process();
+
+    assertEquals(NUM_FAKE_TASKS, taskParents.size());
+    for (Span taskParent : taskParents)
+    {
+      assertSame(jobSpan, taskParent);
+    }
+    verify(mockTraceRecorder).endJobTrace(jobSpan, JobStatus.DONE);
+  }
+
+  /**
+   * Tests that a failed task stops the job before later tasks are attempted.
+   */
+  @Test
+  public void testProcess_Error()
+  {
+    newJobHistory.setTaskHistories(new ArrayList<TaskHistory>());
+    when(mockTaskRunProcessor.attemptTask(any(TaskRun.class))).then(addFakeTaskHistory(TaskStatus.ERROR));
+
+    JobStatus jobStatus = jobNormal.process();
+
+    assertEquals(JobStatus.ERROR, jobStatus);
+    verify(mockTaskRunProcessor, times(1)).attemptTask(any(TaskRun.class));
+    verify(mockHistoryRecorder).closeJobHistory(any(JobHistory.class), eq(JobStatus.ERROR));
+  }
+
+  /**
+   * Tests that tasks without prerequisites run concurrently: each fake task waits until all of them have started.
+   */
+  @Test
+  public void testProcess_Concurrent() throws InterruptedException
+  {
+    newJobHistory.setTaskHistories(new ArrayList<TaskHistory>());
+    ((TaskSequenceJobTestImpl) jobNormal).declareAllIndependent();
+    final CountDownLatch allStarted = new CountDownLatch(NUM_FAKE_TASKS);
+    when(mockTaskRunProcessor.attemptTask(any(TaskRun.class))).then(new Answer<TaskStatus>()
+    {
+      @Override
+      public TaskStatus answer(InvocationOnMock invocation) throws Throwable
+      {
+        allStarted.countDown();
+        return allStarted.await(10, TimeUnit.SECONDS) ? TaskStatus.DONE : TaskStatus.ERROR;
+      }
+    });
+
+    JobStatus jobStatus = jobNormal.process();
+
+    assertEquals(JobStatus.DONE, jobStatus);
+    assertTrue(allStarted.await(0, TimeUnit.SECONDS));
     verify(mockTaskRunProcessor, times(NUM_FAKE_TASKS)).attemptTask(any(TaskRun.class));
   }
 
@@ -155,6 +264,17 @@ public class TaskSequenceJobTest
       this.tasks = tasks;
     }
 
+    /**
+     * Declares that no task depends on any other.
+     */
+    private void declareAllIndependent()
+    {
+      for (Task task : tasks)
+      {
+        declarePrerequisites(task);
+      }
+    }
+
     @Override
     public String getEnv1()
     {
@@ -0,0 +1,67 @@
+package bluegreen.manager.main;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bluegreen.manager.jobs.JobFactory;
+
+/**
+ * Times parsing a stagingDeploy command line whose --dbMap lists growing numbers of live/stage database pairs.
+ * <p/>
+ * Not a unit test.  Run after 'mvn test-compile' with the test classpath:
+ * java -cp target/test-classes:target/classes:(test deps) org.openjdk.jmh.Main ArgumentParserBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArgumentParserBenchmark
+{
+  @Param({ "10", "1000", "10000" })
+  private int numDatabases;
+
+  private ArgumentParser argumentParser = new ArgumentParser();
+  private String[] args;
+
+  @Setup
+  public void setUp()
+  {
+    List<String> argList = new ArrayList<String>();
+    argList.add("stagingDeploy");
+    argList.add(ArgumentParser.DOUBLE_HYPHEN + JobFactory.PARAMNAME_LIVE_ENV);
+    argList.add("prod-blue");
+    argList.add(ArgumentParser.DOUBLE_HYPHEN + JobFactory.PARAMNAME_STAGE_ENV);
+    argList.add("prod-green");
+    argList.add(ArgumentParser.DOUBLE_HYPHEN + JobFactory.PARAMNAME_DB_MAP);
+    for (int idx = 0; idx < numDatabases; ++idx)
+    {
+      argList.add("livedb" + idx);
+      argList.add("prod-green-stagedb" + idx);
+    }
+    argList.add(ArgumentParser.DOUBLE_HYPHEN + JobFactory.PARAMNAME_PACKAGES);
+    argList.add("app-1.2.3");
+    args = argList.toArray(new String[argList.size()]);
+  }
+
+  @Benchmark
+  public List<List<String>> parseArgs()
+  {
+    argumentParser.parseArgs(args);
+    return argumentParser.getParameters();
+  }
+}
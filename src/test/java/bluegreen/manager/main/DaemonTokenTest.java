@@ -0,0 +1,70 @@
+package bluegreen.manager.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the daemon token file is created private, reused, and refused when others can read it.
+ */
+public class DaemonTokenTest
+{
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  /**
+   * A missing file is created with a random token, readable by its owner only, and reused afterwards.
+   */
+  @Test
+  public void testReadOrCreate_New() throws Exception
+  {
+    File file = new File(temporaryFolder.getRoot(), "daemon.token");
+
+    String token = DaemonToken.readOrCreate(file);
+
+    assertEquals(64, token.length());
+    assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(file.toPath())));
+    assertEquals(token, DaemonToken.readOrCreate(file));
+    assertEquals(token, DaemonToken.read(file));
+  }
+
+  /**
+   * A token file that others can read is refused.
+   */
+  @Test(expected = IOException.class)
+  public void testRead_GroupReadable() throws Exception
+  {
+    File file = temporaryFolder.newFile("daemon.token");
+    Files.write(file.toPath(), "secret".getBytes("UTF-8"));
+    Files.setPosixFilePermissions(file.toPath(), PosixFilePermissions.fromString("rw-r-----"));
+
+    DaemonToken.read(file);
+  }
+
+  /**
+   * Missing file: the client can't read a token.
+   */
+  @Test(expected = IOException.class)
+  public void testRead_Missing() throws Exception
+  {
+    DaemonToken.read(new File(temporaryFolder.getRoot(), "nonexistent.token"));
+  }
+
+  @Test
+  public void testMatches()
+  {
+    assertTrue(DaemonToken.matches("abc123", "abc123"));
+    assertFalse(DaemonToken.matches("abc123", "abc124"));
+    assertFalse(DaemonToken.matches("abc123", "abc"));
+    assertFalse(DaemonToken.matches("abc123", null));
+  }
+}
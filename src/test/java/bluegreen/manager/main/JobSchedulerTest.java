@@ -0,0 +1,242 @@
+package bluegreen.manager.main;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import bluegreen.manager.jobs.EnvironmentLeaseKeeper;
+import bluegreen.manager.jobs.Job;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests concurrency and env conflicts of the job scheduler, with fake jobs that run until released and a fake
+ * in-memory lease keeper.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class JobSchedulerTest
+{
+  private static final long TEST_TIMEOUT_SECONDS = 10L;
+
+  @InjectMocks
+  private JobScheduler jobScheduler;
+
+  @Mock
+  private BlueGreenManager mockBlueGreenManager;
+
+  @Mock
+  private EnvironmentLeaseKeeper mockEnvironmentLeaseKeeper;
+
+  private final Set<String> leasedEnvNames = Collections.synchronizedSet(new HashSet<String>());
+  private final Map<String, CountDownLatch> started = Collections.synchronizedMap(new HashMap<String, CountDownLatch>());
+  private final Map<String, CountDownLatch> released = Collections.synchronizedMap(new HashMap<String, CountDownLatch>());
+
+  @Before
+  public void setUp()
+  {
+    when(mockEnvironmentLeaseKeeper.makeLeaseOwner()).thenReturn("owner");
+    when(mockEnvironmentLeaseKeeper.tryAcquire(anyCollectionOf(String.class), anyString())).thenAnswer(new Answer<String>()
+    {
+      @Override
+      public String answer(InvocationOnMock invocation) throws Throwable
+      {
+        Collection<String> envNames = (Collection<String>) invocation.getArguments()[0];
+        synchronized (leasedEnvNames)
+        {
+          for (String envName : envNames)
+          {
+            if (leasedEnvNames.contains(envName))
+            {
+              return "env '" + envName + "' is busy";
+            }
+          }
+          leasedEnvNames.addAll(envNames);
+          return null;
+        }
+      }
+    });
+    doAnswer(new Answer<Void>()
+    {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable
+      {
+        leasedEnvNames.removeAll((Collection<String>) invocation.getArguments()[0]);
+        return null;
+      }
+    }).when(mockEnvironmentLeaseKeeper).release(anyCollectionOf(String.class), anyString());
+    when(mockBlueGreenManager.parseArgsToJob(any(String[].class))).thenAnswer(new Answer<Job>()
+    {
+      @Override
+      public Job answer(InvocationOnMock invocation) throws Throwable
+      {
+        String[] args = (String[]) invocation.getArguments()[0];
+        Job job = mock(Job.class);
+        when(job.getName()).thenReturn(args[0]);
+        when(job.getEnv1()).thenReturn(args[1]);
+        return job;
+      }
+    });
+    when(mockBlueGreenManager.processJob(any(Job.class))).thenAnswer(new Answer<ReturnCode>()
+    {
+      @Override
+      public ReturnCode answer(InvocationOnMock invocation) throws Throwable
+      {
+        String jobName = ((Job) invocation.getArguments()[0]).getName();
+        started.get(jobName).countDown();
+        released.get(jobName).await(TEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        return ReturnCode.SUCCESS;
+      }
+    });
+    jobScheduler.start();
+  }
+
+  @After
+  public void tearDown() throws Exception
+  {
+    for (CountDownLatch latch : released.values())
+    {
+      latch.countDown();
+    }
+    jobScheduler.stop();
+  }
+
+  /**
+   * Submits a fake job that runs on the env until released.
+   */
+  private Future<ReturnCode> submit(String jobName, String envName)
+  {
+    started.put(jobName, new CountDownLatch(1));
+    released.put(jobName, new CountDownLatch(1));
+    return jobScheduler.submit(new String[] { jobName, envName }, jobName);
+  }
+
+  private boolean awaitStart(String jobName) throws InterruptedException
+  {
+    return started.get(jobName).await(TEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Jobs on different envs run at the same time.
+   */
+  @Test
+  public void testSubmit_UnrelatedJobsConcurrent() throws Exception
+  {
+    Future<ReturnCode> future1 = submit("job1", "envA");
+    Future<ReturnCode> future2 = submit("job2", "envB");
+
+    assertTrue(awaitStart("job1"));
+    assertTrue(awaitStart("job2"));
+    released.get("job1").countDown();
+    released.get("job2").countDown();
+    assertEquals(ReturnCode.SUCCESS, future1.get(TEST_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    assertEquals(ReturnCode.SUCCESS, future2.get(TEST_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+  }
+
+  /**
+   * A job on a busy env waits for the job holding it, while a later job on another env goes ahead.
+   */
+  @Test
+  public void testSubmit_ConflictQueues() throws Exception
+  {
+    submit("job1", "envA");
+    assertTrue(awaitStart("job1"));
+    Future<ReturnCode> future2 = submit("job2", "envA");
+    submit("job3", "envB");
+
+    assertTrue(awaitStart("job3"));
+    assertEquals(1L, started.get("job2").getCount());
+    assertTrue(jobScheduler.describeJobs().contains("queued job2 envA (env 'envA' is busy)"));
+
+    released.get("job1").countDown();
+    assertTrue(awaitStart("job2"));
+    released.get("job2").countDown();
+    assertEquals(ReturnCode.SUCCESS, future2.get(TEST_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+  }
+
+  /**
+   * Jobs beyond the worker limit wait for a worker.
+   */
+  @Test
+  public void testSubmit_MaxConcurrentJobs() throws Exception
+  {
+    jobScheduler.stop();
+    jobScheduler.setMaxConcurrentJobs(1);
+    jobScheduler.start();
+    submit("job1", "envA");
+    assertTrue(awaitStart("job1"));
+    submit("job2", "envB");
+
+    assertFalse(started.get("job2").await(100L, TimeUnit.MILLISECONDS));
+    released.get("job1").countDown();
+    assertTrue(awaitStart("job2"));
+  }
+
+  /**
+   * Bad args: cmdline error right away, nothing queued.
+   */
+  @Test
+  public void testSubmit_CmdlineError() throws Exception
+  {
+    CmdlineException cmdlineException = new CmdlineException("bad");
+    doThrow(cmdlineException).when(mockBlueGreenManager).parseArgsToJob(any(String[].class));
+    when(mockBlueGreenManager.explainCmdlineError(cmdlineException)).thenReturn(ReturnCode.CMDLINE_ERROR);
+
+    assertEquals(ReturnCode.CMDLINE_ERROR, jobScheduler.submit(new String[] { "bad" }, "bad").get());
+    assertTrue(jobScheduler.describeJobs().isEmpty());
+    verify(mockEnvironmentLeaseKeeper, never()).tryAcquire(anyCollectionOf(String.class), anyString());
+  }
+
+  /**
+   * A job that throws is a processing error, and its leases are released.
+   */
+  @Test
+  public void testSubmit_JobThrows() throws Exception
+  {
+    doThrow(new IllegalStateException("fake")).when(mockBlueGreenManager).processJob(any(Job.class));
+
+    assertEquals(ReturnCode.PROCESSING_ERROR,
+        submit("job1", "envA").get(TEST_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    assertTrue(leasedEnvNames.isEmpty());
+  }
+
+  /**
+   * Stopping cancels queued jobs.
+   */
+  @Test
+  public void testStop_CancelsQueued() throws Exception
+  {
+    submit("job1", "envA");
+    assertTrue(awaitStart("job1"));
+    Future<ReturnCode> future2 = submit("job2", "envA");
+
+    released.get("job1").countDown();
+    jobScheduler.stop();
+    assertTrue(future2.isCancelled() || future2.isDone());
+  }
+}
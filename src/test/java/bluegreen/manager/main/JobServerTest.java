@@ -0,0 +1,350 @@
+package bluegreen.manager.main;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.apache.commons.lang3.StringUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import bluegreen.manager.model.tx.HistoryRetention;
+import bluegreen.manager.utils.MetricRegistry;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the daemon endpoints with the thin client, on a free local port.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class JobServerTest
+{
+  private static final Logger LOGGER = LoggerFactory.getLogger(JobServerTest.class);
+  private static final String PROGRESS_MESSAGE = "Fake job progress";
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @InjectMocks
+  private JobServer jobServer;
+
+  @Mock
+  private JobScheduler mockJobScheduler;
+
+  @Mock
+  private HistoryRetention mockHistoryRetention;
+
+  @Spy
+  private MetricRegistry metricRegistry = new MetricRegistry();
+
+  private String token;
+  private JobClient jobClient;
+  private ByteArrayOutputStream output = new ByteArrayOutputStream();
+  private PrintStream out = new PrintStream(output);
+
+  @Before
+  public void setUp() throws Exception
+  {
+    File tokenFile = new File(temporaryFolder.getRoot(), "daemon.token");
+    jobServer.setPort(0);
+    jobServer.setTokenFile(tokenFile.getPath());
+    jobServer.start();
+    token = DaemonToken.read(tokenFile);
+    jobClient = new JobClient(jobServer.getPort(), token);
+  }
+
+  @After
+  public void tearDown() throws Exception
+  {
+    jobServer.stop();
+  }
+
+  /**
+   * Answers a job submission by logging as the job would, then returning the return code.
+   */
+  private Answer<Future<ReturnCode>> jobAnswer(final ReturnCode returnCode)
+  {
+    return new Answer<Future<ReturnCode>>()
+    {
+      @Override
+      public Future<ReturnCode> answer(InvocationOnMock invocation) throws Throwable
+      {
+        String[] args = (String[]) invocation.getArguments()[0];
+        LOGGER.info(PROGRESS_MESSAGE + " " + StringUtils.join(args, "|"));
+        LOGGER.debug("Not streamed");
+        FutureTask<ReturnCode> futureTask = new FutureTask<ReturnCode>(new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            //Nothing to do
+          }
+        }, returnCode);
+        futureTask.run();
+        return futureTask;
+      }
+    };
+  }
+
+  /**
+   * Job args arrive intact, job log output streams back, and the job's return code is the client's.
+   */
+  @Test
+  public void testSubmit_Pass()
+  {
+    when(mockJobScheduler.submit(any(String[].class), anyString())).thenAnswer(jobAnswer(ReturnCode.SUCCESS));
+
+    assertEquals(ReturnCode.SUCCESS, jobClient.submit(new String[] { "job1", "--param1", "val with space" }, out));
+    String text = output.toString();
+    assertTrue(text.contains(PROGRESS_MESSAGE + " job1|--param1|val with space"));
+    assertFalse(text.contains("Not streamed"));
+    assertFalse(text.contains(JobServer.RESULT_PREFIX));
+  }
+
+  /**
+   * Log output of other jobs, i.e. without this job's MDC key, is not streamed.
+   */
+  @Test
+  public void testSubmit_OtherJobOutput()
+  {
+    when(mockJobScheduler.submit(any(String[].class), anyString())).thenAnswer(new Answer<Future<ReturnCode>>()
+    {
+      @Override
+      public Future<ReturnCode> answer(InvocationOnMock invocation) throws Throwable
+      {
+        MDC.put(JobScheduler.MDC_JOB_KEY, "some other job");
+        LOGGER.info("Other job output");
+        return jobAnswer(ReturnCode.SUCCESS).answer(invocation);
+      }
+    });
+
+    jobClient.submit(new String[] { "job1" }, out);
+    assertFalse(output.toString().contains("Other job output"));
+  }
+
+  /**
+   * A failed job's return code is passed through.
+   */
+  @Test
+  public void testSubmit_CmdlineError()
+  {
+    when(mockJobScheduler.submit(any(String[].class), anyString())).thenAnswer(jobAnswer(ReturnCode.CMDLINE_ERROR));
+
+    assertEquals(ReturnCode.CMDLINE_ERROR, jobClient.submit(new String[] { "badJob" }, out));
+  }
+
+  /**
+   * An exception from the scheduler is a processing error, and the daemon keeps serving.
+   */
+  @Test
+  public void testSubmit_Throw()
+  {
+    when(mockJobScheduler.submit(any(String[].class), anyString()))
+        .thenThrow(new IllegalStateException("fake")).thenAnswer(jobAnswer(ReturnCode.SUCCESS));
+
+    assertEquals(ReturnCode.PROCESSING_ERROR, jobClient.submit(new String[] { "job1" }, out));
+    assertEquals(ReturnCode.SUCCESS, jobClient.submit(new String[] { "job1" }, out));
+  }
+
+  /**
+   * No job args: rejected by the client without contacting the daemon.
+   */
+  @Test
+  public void testSubmit_NoJob()
+  {
+    assertEquals(ReturnCode.CMDLINE_ERROR, jobClient.submit(new String[0], out));
+    verify(mockJobScheduler, never()).submit(any(String[].class), anyString());
+  }
+
+  @Test
+  public void testStatus_Idle()
+  {
+    when(mockJobScheduler.describeJobs()).thenReturn(new ArrayList<String>());
+
+    assertEquals(ReturnCode.SUCCESS, jobClient.request("GET", JobServer.PATH_STATUS, null, out));
+    assertTrue(output.toString().contains("idle"));
+  }
+
+  @Test
+  public void testStatus_Jobs()
+  {
+    when(mockJobScheduler.describeJobs()).thenReturn(Arrays.asList("running job1", "queued job2"));
+
+    jobClient.request("GET", JobServer.PATH_STATUS, null, out);
+    assertTrue(output.toString().contains("running job1"));
+    assertTrue(output.toString().contains("queued job2"));
+  }
+
+  /**
+   * Wrong http method is refused.
+   */
+  @Test
+  public void testStatus_BadMethod()
+  {
+    assertEquals(ReturnCode.PROCESSING_ERROR, jobClient.request("POST", JobServer.PATH_STATUS, "", out));
+  }
+
+  /**
+   * Metrics are served in Prometheus text format.
+   */
+  @Test
+  public void testMetrics()
+  {
+    metricRegistry.counter("bluegreen_fake_total", "Fake counter", "kind", "test").add(3L);
+
+    assertEquals(ReturnCode.SUCCESS, jobClient.request("GET", JobServer.PATH_METRICS, null, out));
+    assertTrue(output.toString().contains("# TYPE bluegreen_fake_total counter"));
+    assertTrue(output.toString().contains("bluegreen_fake_total{kind=\"test\"} 3"));
+  }
+
+  /**
+   * Sends a raw http request to the daemon, and returns the status code of the response.
+   */
+  private int sendRaw(String method, String path, String host, String authorization, String contentType, String body)
+      throws Exception
+  {
+    Socket socket = new Socket(JobServer.LOOPBACK_ADDRESS, jobServer.getPort());
+    try
+    {
+      StringBuilder sb = new StringBuilder(method + " " + path + " HTTP/1.1\r\nHost: " + host + "\r\n");
+      if (authorization != null)
+      {
+        sb.append("Authorization: " + authorization + "\r\n");
+      }
+      if (contentType != null)
+      {
+        sb.append("Content-Type: " + contentType + "\r\n");
+      }
+      byte[] bodyBytes = body.getBytes(JobServer.CHARSET);
+      sb.append("Content-Length: " + bodyBytes.length + "\r\nConnection: close\r\n\r\n");
+      OutputStream outputStream = socket.getOutputStream();
+      outputStream.write(sb.toString().getBytes(JobServer.CHARSET));
+      outputStream.write(bodyBytes);
+      outputStream.flush();
+      String statusLine = new BufferedReader(new InputStreamReader(socket.getInputStream(), JobServer.CHARSET))
+          .readLine();
+      return Integer.parseInt(statusLine.split(" ")[1]);
+    }
+    finally
+    {
+      socket.close();
+    }
+  }
+
+  /**
+   * A job with the daemon token, a loopback host and a JSON body is accepted.
+   */
+  @Test
+  public void testGuard_Pass() throws Exception
+  {
+    when(mockJobScheduler.submit(any(String[].class), anyString())).thenAnswer(jobAnswer(ReturnCode.SUCCESS));
+
+    assertEquals(200, sendRaw("POST", JobServer.PATH_JOBS, "localhost:" + jobServer.getPort(),
+        JobServer.AUTH_SCHEME + token, "application/json", "[\"job1\"]"));
+  }
+
+  /**
+   * A wrong or missing token is refused, and no job runs.
+   */
+  @Test
+  public void testGuard_BadToken() throws Exception
+  {
+    assertEquals(ReturnCode.PROCESSING_ERROR, new JobClient(jobServer.getPort(), "wrong").submit(
+        new String[] { "job1" }, out));
+    assertEquals(401, sendRaw("GET", JobServer.PATH_STATUS, JobServer.LOOPBACK_ADDRESS, null, null, ""));
+    verify(mockJobScheduler, never()).submit(any(String[].class), anyString());
+  }
+
+  /**
+   * A request whose Host is not loopback, as from a DNS-rebinding web page, is refused even with the token.
+   */
+  @Test
+  public void testGuard_NonLoopbackHost() throws Exception
+  {
+    assertEquals(403, sendRaw("POST", JobServer.PATH_JOBS, "evil.example.com:" + jobServer.getPort(),
+        JobServer.AUTH_SCHEME + token, "application/json", "[\"job1\"]"));
+    verify(mockJobScheduler, never()).submit(any(String[].class), anyString());
+  }
+
+  /**
+   * A POST a browser could send cross-origin without preflight, e.g. a form, is refused.
+   */
+  @Test
+  public void testGuard_FormContentType() throws Exception
+  {
+    assertEquals(415, sendRaw("POST", JobServer.PATH_SHUTDOWN, JobServer.LOOPBACK_ADDRESS,
+        JobServer.AUTH_SCHEME + token, "application/x-www-form-urlencoded", "a=b"));
+    assertEquals(400, sendRaw("POST", JobServer.PATH_JOBS, JobServer.LOOPBACK_ADDRESS,
+        JobServer.AUTH_SCHEME + token, "application/json", "job1\n"));
+    verify(mockJobScheduler, never()).submit(any(String[].class), anyString());
+  }
+
+  @Test
+  public void testIsLoopbackHost()
+  {
+    assertTrue(JobServer.isLoopbackHost("127.0.0.1"));
+    assertTrue(JobServer.isLoopbackHost("localhost:8089"));
+    assertTrue(JobServer.isLoopbackHost("[::1]:8089"));
+    assertFalse(JobServer.isLoopbackHost("[::1]x"));
+    assertFalse(JobServer.isLoopbackHost("127.0.0.1.evil.example.com"));
+    assertFalse(JobServer.isLoopbackHost(null));
+  }
+
+  @Test
+  public void testIsJsonContentType()
+  {
+    assertTrue(JobServer.isJsonContentType("application/json"));
+    assertTrue(JobServer.isJsonContentType("Application/JSON; charset=UTF-8"));
+    assertFalse(JobServer.isJsonContentType("text/plain"));
+    assertFalse(JobServer.isJsonContentType(null));
+  }
+
+  /**
+   * Shutdown request releases the thread waiting on it.
+   */
+  @Test(timeout = 10000L)
+  public void testShutdown() throws Exception
+  {
+    assertEquals(ReturnCode.SUCCESS, jobClient.request("POST", JobServer.PATH_SHUTDOWN, "", out));
+    jobServer.awaitShutdownRequest();
+  }
+
+  /**
+   * No daemon listening: processing error, not an exception.
+   */
+  @Test
+  public void testSubmit_NoDaemon() throws Exception
+  {
+    int port = jobServer.getPort();
+    jobServer.stop();
+    assertEquals(ReturnCode.PROCESSING_ERROR, new JobClient(port, token).submit(new String[] { "job1" }, out));
+  }
+}
@@ -3,6 +3,7 @@ package bluegreen.manager.model.dao;
 import java.util.List;
 import javax.persistence.EntityManager;
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -17,9 +18,11 @@ import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.StringContains.containsString;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.contains;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.matches;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -42,10 +45,14 @@ public class EnvironmentDAOTest
   @Mock
   private Query mockQuery;
 
+  @Mock
+  private TypedQuery<Environment> mockTypedQuery;
+
   @Before
   public void setUp()
   {
     when(mockEntityManager.createQuery(anyString())).thenReturn(mockQuery);
+    when(mockEntityManager.createQuery(anyString(), eq(Environment.class))).thenReturn(mockTypedQuery);
   }
 
   @Test
@@ -64,6 +71,31 @@ public class EnvironmentDAOTest
     verify(mockEntityManager).createQuery(contains("SELECT"));
   }
 
+  /**
+   * Databases are join-fetched with the env, vms and applications each in one more statement.
+   */
+  @Test
+  public void testFindNamedEnvGraph()
+  {
+    Environment env = new Environment();
+    when(mockTypedQuery.getSingleResult()).thenReturn(env);
+
+    assertEquals(env, environmentDAO.findNamedEnvGraph(ENV_NAME1));
+    verify(mockEntityManager).createQuery(matches("SELECT DISTINCT e .*JOIN FETCH e.logicalDatabases.*"), eq(Environment.class));
+    verify(mockEntityManager).createQuery(matches("SELECT DISTINCT e .*JOIN FETCH e.applicationVms.*"));
+    verify(mockEntityManager).createQuery(matches("SELECT DISTINCT vm .*JOIN FETCH vm.applications.*"));
+  }
+
+  /**
+   * Env not found: no need to fetch its vms.
+   */
+  @Test
+  public void testFindNamedEnvGraphAllowNull()
+  {
+    assertNull(environmentDAO.findNamedEnvGraphAllowNull(ENV_NAME1));
+    verify(mockEntityManager).createQuery(anyString(), eq(Environment.class));
+  }
+
   @Test
   public void testFindNamedEnvs()
   {
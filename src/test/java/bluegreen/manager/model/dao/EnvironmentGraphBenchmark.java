@@ -0,0 +1,210 @@
+package bluegreen.manager.model.dao;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+import bluegreen.manager.model.domain.Application;
+import bluegreen.manager.model.domain.ApplicationVm;
+import bluegreen.manager.model.domain.Datacenter;
+import bluegreen.manager.model.domain.DatabaseType;
+import bluegreen.manager.model.domain.Environment;
+import bluegreen.manager.model.domain.LogicalDatabase;
+import bluegreen.manager.model.domain.PhysicalDatabase;
+
+/**
+ * Compares loading a whole environment graph by walking its lazy associations (the old EnvironmentTx.activeLoadAll)
+ * against EnvironmentDAO.findNamedEnvGraph, on an in-memory H2 schema seeded with growing numbers of databases, vms
+ * and applications.  Prints the number of sql statements each way takes, once per trial.
+ * <p/>
+ * Not a unit test.  Run after 'mvn test-compile' with the test classpath:
+ * java -cp target/test-classes:target/classes:(test deps) org.openjdk.jmh.Main EnvironmentGraphBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnvironmentGraphBenchmark
+{
+  private static final String ENV_NAME = "benchEnv";
+
+  /**
+   * Number of logical/physical databases and of application vms, each vm with two applications.
+   */
+  @Param({ "1", "5", "20" })
+  private int fanout;
+
+  private LocalContainerEntityManagerFactoryBean factoryBean;
+  private EntityManagerFactory entityManagerFactory;
+  private Statistics statistics;
+
+  @Setup
+  public void setUp()
+  {
+    DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:bench" + fanout + ";DB_CLOSE_DELAY=-1",
+        "sa", "");
+    dataSource.setDriverClassName("org.h2.Driver");
+    HibernateJpaVendorAdapter vendorAdapter = new HibernateJpaVendorAdapter();
+    vendorAdapter.setDatabasePlatform("org.hibernate.dialect.H2Dialect");
+    vendorAdapter.setGenerateDdl(true);
+    Properties jpaProperties = new Properties();
+    jpaProperties.setProperty("hibernate.hbm2ddl.auto", "create");
+    jpaProperties.setProperty("hibernate.generate_statistics", "true");
+    jpaProperties.setProperty("javax.persistence.validation.mode", "none");
+    factoryBean = new LocalContainerEntityManagerFactoryBean();
+    factoryBean.setDataSource(dataSource);
+    factoryBean.setJpaVendorAdapter(vendorAdapter);
+    factoryBean.setPackagesToScan("bluegreen.manager.model");
+    factoryBean.setJpaProperties(jpaProperties);
+    factoryBean.afterPropertiesSet();
+    entityManagerFactory = factoryBean.getObject();
+    statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    seed();
+    statistics.clear();
+    lazyWalk();
+    long lazyStatements = statistics.getPrepareStatementCount();
+    statistics.clear();
+    fetchGraph();
+    long fetchStatements = statistics.getPrepareStatementCount();
+    System.out.println("fanout " + fanout + ": lazy walk takes " + lazyStatements + " statements, fetch graph takes "
+        + fetchStatements);
+  }
+
+  @TearDown
+  public void tearDown()
+  {
+    factoryBean.destroy();
+  }
+
+  /**
+   * Old way: query the env, then touch every lazy association.
+   */
+  @Benchmark
+  public Environment lazyWalk()
+  {
+    EntityManager entityManager = entityManagerFactory.createEntityManager();
+    try
+    {
+      entityManager.getTransaction().begin();
+      EnvironmentDAO environmentDAO = makeDAO(entityManager);
+      Environment environment = environmentDAO.findNamedEnv(ENV_NAME);
+      for (LogicalDatabase logicalDatabase : environment.getLogicalDatabases())
+      {
+        logicalDatabase.getPhysicalDatabase();
+      }
+      for (ApplicationVm applicationVm : environment.getApplicationVms())
+      {
+        applicationVm.getApplications().size();
+      }
+      entityManager.getTransaction().commit();
+      return environment;
+    }
+    finally
+    {
+      entityManager.close();
+    }
+  }
+
+  @Benchmark
+  public Environment fetchGraph()
+  {
+    EntityManager entityManager = entityManagerFactory.createEntityManager();
+    try
+    {
+      entityManager.getTransaction().begin();
+      Environment environment = makeDAO(entityManager).findNamedEnvGraph(ENV_NAME);
+      entityManager.getTransaction().commit();
+      return environment;
+    }
+    finally
+    {
+      entityManager.close();
+    }
+  }
+
+  private EnvironmentDAO makeDAO(EntityManager entityManager)
+  {
+    EnvironmentDAO environmentDAO = new EnvironmentDAO();
+    environmentDAO.entityManager = entityManager;
+    return environmentDAO;
+  }
+
+  /**
+   * Inserts one environment with the configured fanout.
+   */
+  private void seed()
+  {
+    EntityManager entityManager = entityManagerFactory.createEntityManager();
+    try
+    {
+      entityManager.getTransaction().begin();
+      entityManager.createNativeQuery("INSERT INTO " + Datacenter.TABLE_NAME + " (" + Datacenter.COLUMN_DATACENTER_NAME
+          + ") VALUES ('benchDatacenter')").executeUpdate();
+      Datacenter datacenter = (Datacenter) entityManager.createQuery("SELECT d FROM Datacenter d").getSingleResult();
+      Environment environment = new Environment();
+      environment.setEnvName(ENV_NAME);
+      environment.setDatacenter(datacenter);
+      for (int idx = 0; idx < fanout; ++idx)
+      {
+        LogicalDatabase logicalDatabase = new LogicalDatabase();
+        logicalDatabase.setEnvironment(environment);
+        logicalDatabase.setLogicalName("logical" + idx);
+        PhysicalDatabase physicalDatabase = new PhysicalDatabase();
+        physicalDatabase.setLogicalDatabase(logicalDatabase);
+        physicalDatabase.setDatabaseType(DatabaseType.RDS);
+        physicalDatabase.setInstanceName("instance" + idx);
+        physicalDatabase.setDriverClassName("com.mysql.jdbc.Driver");
+        physicalDatabase.setUrl("jdbc:mysql://host" + idx + ":3306/db");
+        physicalDatabase.setUsername("user");
+        physicalDatabase.setPassword("password");
+        logicalDatabase.setPhysicalDatabase(physicalDatabase);
+        environment.addLogicalDatabase(logicalDatabase);
+
+        ApplicationVm applicationVm = new ApplicationVm();
+        applicationVm.setEnvironment(environment);
+        applicationVm.setHostname("vm" + idx);
+        applicationVm.setIpAddress("10.0.0." + idx);
+        for (int appIdx = 0; appIdx < 2; ++appIdx)
+        {
+          Application application = new Application();
+          application.setApplicationVm(applicationVm);
+          application.setScheme("http");
+          application.setHostname("vm" + idx);
+          application.setPort(8080 + appIdx);
+          application.setUrlPath("/app");
+          application.setUsername("user");
+          application.setPassword("password");
+          applicationVm.addApplication(application);
+        }
+        environment.addApplicationVm(applicationVm);
+      }
+      entityManager.persist(environment);
+      entityManager.getTransaction().commit();
+    }
+    finally
+    {
+      entityManager.close();
+    }
+  }
+}
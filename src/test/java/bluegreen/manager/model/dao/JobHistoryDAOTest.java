@@ -1,23 +1,39 @@
 package bluegreen.manager.model.dao;
 
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import javax.persistence.EntityManager;
 import javax.persistence.Query;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import bluegreen.manager.model.domain.JobHistory;
+import bluegreen.manager.model.domain.TaskHistory;
+import bluegreen.manager.model.domain.TaskStatus;
 import bluegreen.manager.utils.NowFactory;
 import static bluegreen.manager.utils.TimeFakery.START_TIME;
 import static org.hamcrest.CoreMatchers.allOf;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.argThat;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -31,6 +47,7 @@ public class JobHistoryDAOTest
   public static String ENV_NAME1 = "env1";
   public static String ENV_NAME2 = "env2";
   public static long MAX_AGE = 10000L;
+  private static final Timestamp SINCE = new Timestamp(START_TIME.getTime());
 
   @InjectMocks
   private JobHistoryDAO jobHistoryDAO;
@@ -51,12 +68,134 @@ public class JobHistoryDAOTest
     when(mockNowFactory.now()).thenReturn(START_TIME);
   }
 
+  /**
+   * Job name and envs are bound parameters, not part of the query string.
+   */
   @Test
   public void testFindLastRelevantJobHistory()
   {
     JobHistory jobHistory = jobHistoryDAO.findLastRelevantJobHistory(JOB_NAME, ENV_NAME1, ENV_NAME2, MAX_AGE);
 
-    verify(mockEntityManager).createQuery((String) argThat(is(allOf(containsString(JOB_NAME),
-        containsString(ENV_NAME1), containsString(ENV_NAME2)))));
+    verify(mockEntityManager).createQuery((String) argThat(is(allOf(containsString(":jobName"),
+        containsString(":env1"), containsString(":env2"), not(containsString(JOB_NAME)),
+        containsString("JOIN FETCH jh.taskHistories")))));
+    verify(mockQuery).setParameter("jobName", JOB_NAME);
+    verify(mockQuery).setParameter("env1", ENV_NAME1);
+    verify(mockQuery).setParameter("env2", ENV_NAME2);
   }
-}
\ No newline at end of file
+
+  /**
+   * A null env2 is matched with IS NULL, since "= null" matches nothing.
+   */
+  @Test
+  public void testFindLastRelevantJobHistory_NullEnv2()
+  {
+    jobHistoryDAO.findLastRelevantJobHistory(JOB_NAME, ENV_NAME1, null, MAX_AGE);
+
+    verify(mockEntityManager).createQuery((String) argThat(is(allOf(containsString("jh.env2 IS NULL"),
+        not(containsString(":env2"))))));
+    verify(mockQuery, never()).setParameter(eq("env2"), any());
+  }
+
+  /**
+   * Archiving copies the rows to the archive table, then deletes them.
+   */
+  @Test
+  public void testArchive()
+  {
+    List<Long> ids = Arrays.asList(1L, 2L);
+    when(mockEntityManager.createNativeQuery(anyString())).thenReturn(mockQuery);
+    when(mockQuery.executeUpdate()).thenReturn(2);
+
+    assertEquals(2, jobHistoryDAO.archive(ids));
+
+    InOrder inOrder = inOrder(mockEntityManager);
+    inOrder.verify(mockEntityManager).createNativeQuery((String) argThat(is(allOf(
+        startsWith("INSERT INTO " + JobHistory.ARCHIVE_TABLE_NAME), containsString(JobHistory.COLUMN_CMDLINE),
+        containsString("FROM " + JobHistory.TABLE_NAME + " WHERE " + JobHistory.COLUMN_ID + " IN (:keys)")))));
+    inOrder.verify(mockEntityManager).createNativeQuery("DELETE FROM " + JobHistory.TABLE_NAME + " WHERE "
+        + JobHistory.COLUMN_ID + " IN (:keys)");
+    verify(mockQuery, times(2)).setParameter("keys", ids);
+  }
+
+  /**
+   * Archiving fails (rolling back the transaction) if the copy and delete disagree, e.g. a row was added meanwhile.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testArchive_Mismatch()
+  {
+    when(mockEntityManager.createNativeQuery(anyString())).thenReturn(mockQuery);
+    when(mockQuery.executeUpdate()).thenReturn(2, 3);
+
+    jobHistoryDAO.archive(Arrays.asList(1L, 2L));
+  }
+
+  /**
+   * Adds findRunsAfter rows for a DONE run with the given number of tasks.
+   */
+  private void addRunRows(List<Object[]> rows, long jobHistoryId, int numTasks)
+  {
+    for (int position = 1; position <= numTasks; ++position)
+    {
+      rows.add(new Object[] { jobHistoryId, JOB_NAME, ENV_NAME1, null, SINCE, SINCE, "DONE",
+          position, "task" + position, SINCE, SINCE, TaskStatus.DONE.name() });
+    }
+  }
+
+  /**
+   * Rows are grouped into runs, each with its task histories, and the filters are bound parameters.
+   */
+  @Test
+  public void testFindRunsAfter()
+  {
+    List<Object[]> rows = new ArrayList<Object[]>();
+    addRunRows(rows, 5L, 2);
+    addRunRows(rows, 7L, 1);
+    when(mockEntityManager.createNativeQuery(anyString())).thenReturn(mockQuery);
+    when(mockQuery.getResultList()).thenReturn(rows);
+
+    List<JobHistory> runs = jobHistoryDAO.findRunsAfter(true, 4L, SINCE, JOB_NAME, null, 1000);
+
+    assertEquals(2, runs.size());
+    assertEquals(5L, runs.get(0).getId());
+    assertEquals(2, runs.get(0).getTaskHistories().size());
+    assertEquals(2, runs.get(0).getTaskHistories().get(1).getPosition());
+    assertSame(runs.get(0), runs.get(0).getTaskHistories().get(1).getJobHistory());
+    assertEquals(7L, runs.get(1).getId());
+    assertEquals(1, runs.get(1).getTaskHistories().size());
+    verify(mockEntityManager).createNativeQuery((String) argThat(is(allOf(
+        containsString("FROM " + TaskHistory.ARCHIVE_TABLE_NAME + " t JOIN " + JobHistory.ARCHIVE_TABLE_NAME + " j"),
+        containsString(" = :jobName"), not(containsString(":envName")), not(containsString(JOB_NAME))))));
+    verify(mockQuery).setParameter("afterJobHistoryId", 4L);
+    verify(mockQuery).setParameter("since", SINCE);
+    verify(mockQuery).setParameter("jobName", JOB_NAME);
+    verify(mockQuery, never()).setParameter(eq("envName"), any());
+    verify(mockQuery).setMaxResults(1000);
+  }
+
+  /**
+   * A full page may end partway through a run, so that run is left for the next page.
+   */
+  @Test
+  public void testFindRunsAfter_FullPage()
+  {
+    int maxRows = TaskHistory.CONSTRAINT_MAX_POSITION + 1;
+    List<Object[]> rows = new ArrayList<Object[]>();
+    addRunRows(rows, 5L, maxRows - 3);
+    addRunRows(rows, 7L, 3);
+    when(mockEntityManager.createNativeQuery(anyString())).thenReturn(mockQuery);
+    when(mockQuery.getResultList()).thenReturn(rows);
+
+    List<JobHistory> runs = jobHistoryDAO.findRunsAfter(false, 0L, SINCE, null, ENV_NAME1, maxRows);
+
+    assertEquals(1, runs.size());
+    assertEquals(5L, runs.get(0).getId());
+    verify(mockQuery).setParameter("envName", ENV_NAME1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testFindRunsAfter_PageTooSmall()
+  {
+    jobHistoryDAO.findRunsAfter(false, 0L, SINCE, null, null, TaskHistory.CONSTRAINT_MAX_POSITION);
+  }
+}
@@ -156,4 +156,16 @@ public class EnvironmentTestHelper
     return logicalDatabase;
   }
 
+  /**
+   * Adds another logicaldb with a physicaldb like the fake one of the same index, but with the given names.
+   */
+  public static PhysicalDatabase addFakeDatabase(int index, Environment environment, String logicalName,
+                                                 String instanceName)
+  {
+    PhysicalDatabase physicalDatabase = makeFakePhysicalDatabase(index, environment);
+    physicalDatabase.getLogicalDatabase().setLogicalName(logicalName);
+    physicalDatabase.setInstanceName(instanceName);
+    return physicalDatabase;
+  }
+
 }
@@ -0,0 +1,134 @@
+package bluegreen.manager.model.tx;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import bluegreen.manager.model.domain.Environment;
+import bluegreen.manager.model.domain.EnvironmentTestHelper;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the job-scoped caching and eviction of environments.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class EnvironmentCacheTest
+{
+  private static final Environment FAKE_ENV = EnvironmentTestHelper.makeFakeFullEnvironment(1);
+  private static final String ENV_NAME = FAKE_ENV.getEnvName();
+
+  @InjectMocks
+  private EnvironmentCache environmentCache;
+
+  @Mock
+  private EnvironmentTx mockEnvironmentTx;
+
+  @Before
+  public void setUp()
+  {
+    when(mockEnvironmentTx.findNamedEnv(ENV_NAME)).thenReturn(FAKE_ENV);
+  }
+
+  /**
+   * No current cache: every lookup goes to the database.
+   */
+  @Test
+  public void testFindNamedEnv_NoCurrent()
+  {
+    environmentCache.findNamedEnv(ENV_NAME);
+    environmentCache.findNamedEnv(ENV_NAME);
+    verify(mockEnvironmentTx, times(2)).findNamedEnv(ENV_NAME);
+  }
+
+  /**
+   * Open: the environment is loaded once and shared.
+   */
+  @Test
+  public void testFindNamedEnv_Open()
+  {
+    EnvironmentCache.JobCache jobCache = environmentCache.open();
+    assertSame(jobCache, environmentCache.getCurrent());
+    Environment first = environmentCache.findNamedEnv(ENV_NAME);
+    Environment second = environmentCache.findNamedEnv(ENV_NAME);
+    assertSame(first, second);
+    verify(mockEnvironmentTx, times(1)).findNamedEnv(ENV_NAME);
+    assertEquals(1L, jobCache.getNumHits());
+    assertEquals(1L, jobCache.getNumLoads());
+  }
+
+  /**
+   * Evicted environment is reloaded on next lookup, by every open job.
+   */
+  @Test
+  public void testEvict()
+  {
+    EnvironmentCache.JobCache jobCache1 = environmentCache.open();
+    environmentCache.findNamedEnv(ENV_NAME);
+    EnvironmentCache.JobCache jobCache2 = environmentCache.open();
+    environmentCache.findNamedEnv(ENV_NAME);
+    environmentCache.evict(ENV_NAME);
+    environmentCache.setCurrent(jobCache1);
+    environmentCache.findNamedEnv(ENV_NAME);
+    environmentCache.setCurrent(jobCache2);
+    environmentCache.findNamedEnv(ENV_NAME);
+    verify(mockEnvironmentTx, times(4)).findNamedEnv(ENV_NAME);
+    assertEquals(0L, jobCache1.getNumHits());
+    assertEquals(0L, jobCache2.getNumHits());
+  }
+
+  /**
+   * Closing drops the cache and makes it no longer current.
+   */
+  @Test
+  public void testClose()
+  {
+    EnvironmentCache.JobCache jobCache = environmentCache.open();
+    environmentCache.findNamedEnv(ENV_NAME);
+    environmentCache.close(jobCache);
+    assertFalse(jobCache.isOpen());
+    assertNull(environmentCache.getCurrent());
+    environmentCache.findNamedEnv(ENV_NAME);
+    verify(mockEnvironmentTx, times(2)).findNamedEnv(ENV_NAME);
+  }
+
+  /**
+   * Concurrent jobs have their own caches: one job closing does not close the other's.
+   */
+  @Test
+  public void testConcurrentJobs()
+  {
+    EnvironmentCache.JobCache jobCache1 = environmentCache.open();
+    environmentCache.findNamedEnv(ENV_NAME);
+    environmentCache.setCurrent(null);
+    EnvironmentCache.JobCache jobCache2 = environmentCache.open();
+    environmentCache.findNamedEnv(ENV_NAME);
+    environmentCache.close(jobCache1);
+    assertSame(jobCache2, environmentCache.getCurrent());
+    assertTrue(jobCache2.isOpen());
+    environmentCache.findNamedEnv(ENV_NAME);
+    assertEquals(1L, jobCache2.getNumHits());
+    verify(mockEnvironmentTx, times(2)).findNamedEnv(ENV_NAME);
+  }
+
+  /**
+   * setCurrent hands back the previous cache, so a task thread can restore it.
+   */
+  @Test
+  public void testSetCurrent()
+  {
+    EnvironmentCache.JobCache jobCache = environmentCache.open();
+    assertSame(jobCache, environmentCache.setCurrent(null));
+    assertNull(environmentCache.setCurrent(jobCache));
+    assertSame(jobCache, environmentCache.getCurrent());
+  }
+}
@@ -1,7 +1,9 @@
 package bluegreen.manager.model.tx;
 
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 
 import org.junit.Before;
@@ -10,6 +12,8 @@ import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import bluegreen.manager.model.dao.EnvironmentDAO;
 import bluegreen.manager.model.domain.Application;
@@ -20,6 +24,11 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -58,11 +67,14 @@ public class EnvironmentTxTest
   @Mock
   private EnvironmentDAO environmentDAO;
 
+  @Mock
+  private EnvironmentCache mockEnvironmentCache;
+
   @Before
   public void setUp()
   {
-    when(environmentDAO.findNamedEnv(GOOD_ENVNAME1)).thenReturn(GOOD_ENV1);
-    when(environmentDAO.findNamedEnvAllowNull(BAD_ENVNAME1)).thenReturn(null);
+    when(environmentDAO.findNamedEnvGraph(GOOD_ENVNAME1)).thenReturn(GOOD_ENV1);
+    when(environmentDAO.findNamedEnvGraphAllowNull(BAD_ENVNAME1)).thenReturn(null);
     when(environmentDAO.findNamedEnvs(GOOD_ENVNAMES)).thenReturn(GOOD_ENVS);
     when(environmentDAO.findNamedEnvs(BAD_ENVNAMES)).thenReturn(null);
   }
@@ -85,6 +97,40 @@ public class EnvironmentTxTest
     assertNull(environmentTx.findNamedEnv(BAD_ENVNAME1));
   }
 
+  /**
+   * Persisted changes evict the environment from the job's cache.
+   */
+  @Test
+  public void testUpdateEnvironment_Evicts()
+  {
+    environmentTx.updateEnvironment(GOOD_ENV1);
+    verify(environmentDAO).merge(GOOD_ENV1);
+    verify(mockEnvironmentCache).evict(GOOD_ENVNAME1);
+  }
+
+  /**
+   * Within a transaction, the eviction waits until the transaction is over.
+   */
+  @Test
+  public void testUpdateEnvironment_EvictsAfterCompletion()
+  {
+    TransactionSynchronizationManager.initSynchronization();
+    try
+    {
+      environmentTx.updateEnvironment(GOOD_ENV1);
+      verify(mockEnvironmentCache, never()).evict(anyString());
+      for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations())
+      {
+        synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+      }
+      verify(mockEnvironmentCache).evict(GOOD_ENVNAME1);
+    }
+    finally
+    {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+  }
+
   /**
    * Tests the ability to identify "good" named environments that "really exist."
    */
@@ -113,9 +159,87 @@ public class EnvironmentTxTest
    * Lacking a hibernate session, this is not really a good test.
    */
   @Test
-  public void testActiveLoadAll()
+  public void testFindNamedEnv_Graph()
   {
     Environment environment = environmentTx.findNamedEnv(GOOD_ENVNAME1);
     assertNotNull(environment.getApplicationVms().get(0).getApplications().get(0));
   }
+
+  private static final Date LEASE_NOW = new Date(100000L);
+  private static final Date LEASE_EXPIRED_BEFORE = new Date(50000L);
+
+  private Environment makeLeasedEnv(String envName, String leaseOwner, long leaseTime)
+  {
+    Environment environment = new Environment();
+    environment.setEnvName(envName);
+    environment.setLeaseOwner(leaseOwner);
+    environment.setLeaseTime(leaseOwner == null ? null : new Timestamp(leaseTime));
+    return environment;
+  }
+
+  /**
+   * Free envs, or envs already leased by the same owner, are leased.
+   */
+  @Test
+  public void testAcquireLeases_Free()
+  {
+    List<String> envNames = Arrays.asList(GOOD_ENVNAME1, GOOD_ENVNAME2);
+    when(environmentDAO.findNamedEnvsForUpdate(envNames)).thenReturn(Arrays.asList(
+        makeLeasedEnv(GOOD_ENVNAME1, null, 0L), makeLeasedEnv(GOOD_ENVNAME2, "me", 90000L)));
+
+    assertNull(environmentTx.acquireLeases(envNames, "me", LEASE_NOW, LEASE_EXPIRED_BEFORE));
+    verify(environmentDAO).updateLeases(envNames, "me", new Timestamp(LEASE_NOW.getTime()));
+  }
+
+  /**
+   * A live lease held by another owner blocks, and nothing is leased.
+   */
+  @Test
+  public void testAcquireLeases_Blocked()
+  {
+    List<String> envNames = Arrays.asList(GOOD_ENVNAME1, GOOD_ENVNAME2);
+    when(environmentDAO.findNamedEnvsForUpdate(envNames)).thenReturn(Arrays.asList(
+        makeLeasedEnv(GOOD_ENVNAME1, null, 0L), makeLeasedEnv(GOOD_ENVNAME2, "other", 90000L)));
+
+    String blocker = environmentTx.acquireLeases(envNames, "me", LEASE_NOW, LEASE_EXPIRED_BEFORE);
+    assertTrue(blocker.contains(GOOD_ENVNAME2));
+    assertTrue(blocker.contains("other"));
+    verify(environmentDAO, never()).updateLeases(anyCollectionOf(String.class), anyString(), any(Timestamp.class));
+  }
+
+  /**
+   * An expired lease held by another owner is taken over.
+   */
+  @Test
+  public void testAcquireLeases_Expired()
+  {
+    List<String> envNames = Arrays.asList(GOOD_ENVNAME1);
+    when(environmentDAO.findNamedEnvsForUpdate(envNames)).thenReturn(Arrays.asList(
+        makeLeasedEnv(GOOD_ENVNAME1, "crashed", 10000L)));
+
+    assertNull(environmentTx.acquireLeases(envNames, "me", LEASE_NOW, LEASE_EXPIRED_BEFORE));
+    verify(environmentDAO).updateLeases(envNames, "me", new Timestamp(LEASE_NOW.getTime()));
+  }
+
+  /**
+   * Envs that do not exist yet need no db lease.
+   */
+  @Test
+  public void testAcquireLeases_NoEnvs()
+  {
+    List<String> envNames = Arrays.asList(BAD_ENVNAME1);
+    when(environmentDAO.findNamedEnvsForUpdate(envNames)).thenReturn(new ArrayList<Environment>());
+
+    assertNull(environmentTx.acquireLeases(envNames, "me", LEASE_NOW, LEASE_EXPIRED_BEFORE));
+    verify(environmentDAO, never()).updateLeases(anyCollectionOf(String.class), anyString(), any(Timestamp.class));
+  }
+
+  @Test
+  public void testRenewAndReleaseLeases()
+  {
+    environmentTx.renewLeases("me", LEASE_NOW);
+    environmentTx.releaseLeases("me");
+    verify(environmentDAO).renewLeases("me", new Timestamp(LEASE_NOW.getTime()));
+    verify(environmentDAO).clearLeases("me");
+  }
 }
@@ -0,0 +1,192 @@
+package bluegreen.manager.model.tx;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import bluegreen.manager.model.dao.FreezeWindowDAO;
+import bluegreen.manager.model.dao.JobHistoryDAO;
+import bluegreen.manager.model.dao.TaskHistoryDAO;
+import bluegreen.manager.model.domain.FreezeWindow;
+import bluegreen.manager.model.domain.JobHistory;
+import bluegreen.manager.model.domain.JobStatus;
+import bluegreen.manager.model.domain.TaskHistory;
+import bluegreen.manager.model.domain.TaskStatus;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class HistoryBatchTxTest
+{
+  private static final long JOB_ID = 101L;
+  private static final long TASK_ID = 202L;
+  private static final Timestamp START_TIME = new Timestamp(1000000L);
+  private static final Timestamp END_TIME = new Timestamp(2000000L);
+
+  @InjectMocks
+  private HistoryBatchTx historyBatchTx;
+
+  @Mock
+  private JobHistoryDAO mockJobHistoryDAO;
+
+  @Mock
+  private TaskHistoryDAO mockTaskHistoryDAO;
+
+  @Mock
+  private FreezeWindowDAO mockFreezeWindowDAO;
+
+  private JobHistory jobHistory;
+  private TaskHistory taskHistory;
+  private FreezeWindow freezeWindow;
+
+  @Before
+  public void setUp()
+  {
+    jobHistory = new JobHistory();
+    jobHistory.setStartTime(START_TIME);
+    jobHistory.setJobName("job");
+    jobHistory.setEnv1("env");
+    jobHistory.setCommandLine("job env");
+    jobHistory.setStatus(JobStatus.PROCESSING);
+    taskHistory = new TaskHistory();
+    taskHistory.setJobHistory(jobHistory);
+    taskHistory.setStartTime(START_TIME);
+    taskHistory.setPosition(1);
+    taskHistory.setTaskName("task");
+    taskHistory.setStatus(TaskStatus.PROCESSING);
+    freezeWindow = new FreezeWindow();
+    freezeWindow.setEnvName("env");
+    freezeWindow.setFreezeRequestedTime(START_TIME);
+    freezeWindow.setNormalTime(END_TIME);
+    doAnswer(assignId(JOB_ID)).when(mockJobHistoryDAO).persist(any(JobHistory.class));
+    doAnswer(assignId(TASK_ID)).when(mockTaskHistoryDAO).persist(any(TaskHistory.class));
+  }
+
+  private Answer<Void> assignId(final long id)
+  {
+    return new Answer<Void>()
+    {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable
+      {
+        Object entity = invocation.getArguments()[0];
+        if (entity instanceof JobHistory)
+        {
+          ((JobHistory) entity).setId(id);
+        }
+        else
+        {
+          ((TaskHistory) entity).setId(id);
+        }
+        return null;
+      }
+    };
+  }
+
+  /**
+   * A task opened in the same batch as its job is linked to the job entity just persisted.
+   */
+  @Test
+  public void testWriteBatch_OpenJobAndTask()
+  {
+    Map<Long, Long> newIds = historyBatchTx.writeBatch(Arrays.asList(HistoryRecord.openJob(1L, jobHistory),
+        HistoryRecord.openTask(2L, 1L, taskHistory)), new HashMap<Long, Long>());
+
+    ArgumentCaptor<JobHistory> jobCaptor = ArgumentCaptor.forClass(JobHistory.class);
+    ArgumentCaptor<TaskHistory> taskCaptor = ArgumentCaptor.forClass(TaskHistory.class);
+    verify(mockJobHistoryDAO).persist(jobCaptor.capture());
+    verify(mockTaskHistoryDAO).persist(taskCaptor.capture());
+    assertSame(jobCaptor.getValue(), taskCaptor.getValue().getJobHistory());
+    assertEquals("task", taskCaptor.getValue().getTaskName());
+    assertEquals(Long.valueOf(JOB_ID), newIds.get(1L));
+    assertEquals(Long.valueOf(TASK_ID), newIds.get(2L));
+  }
+
+  /**
+   * A task of a job written by an earlier batch is linked to it by reference, and closes update rows by id.
+   */
+  @Test
+  public void testWriteBatch_KnownIds()
+  {
+    JobHistory reference = new JobHistory();
+    when(mockJobHistoryDAO.getReference(JOB_ID)).thenReturn(reference);
+    Map<Long, Long> knownIds = new HashMap<Long, Long>();
+    knownIds.put(1L, JOB_ID);
+    knownIds.put(2L, TASK_ID);
+    taskHistory.setEndTime(END_TIME);
+    taskHistory.setStatus(TaskStatus.DONE);
+    taskHistory.setExitValue(0);
+    jobHistory.setEndTime(END_TIME);
+    jobHistory.setStatus(JobStatus.DONE);
+
+    historyBatchTx.writeBatch(Arrays.asList(HistoryRecord.openTask(3L, 1L, taskHistory),
+        HistoryRecord.closeTask(4L, 2L, taskHistory), HistoryRecord.closeJob(5L, 1L, jobHistory)), knownIds);
+
+    ArgumentCaptor<TaskHistory> taskCaptor = ArgumentCaptor.forClass(TaskHistory.class);
+    verify(mockTaskHistoryDAO).persist(taskCaptor.capture());
+    assertSame(reference, taskCaptor.getValue().getJobHistory());
+    verify(mockTaskHistoryDAO).updateClosed(TASK_ID, END_TIME, TaskStatus.DONE, 0, null, null);
+    verify(mockJobHistoryDAO).updateClosed(JOB_ID, END_TIME, JobStatus.DONE);
+  }
+
+  /**
+   * A freeze window is linked to its job, whether the job was persisted in the same batch or an earlier one.
+   */
+  @Test
+  public void testWriteBatch_FreezeWindow()
+  {
+    JobHistory reference = new JobHistory();
+    when(mockJobHistoryDAO.getReference(JOB_ID)).thenReturn(reference);
+    Map<Long, Long> knownIds = new HashMap<Long, Long>();
+    knownIds.put(1L, JOB_ID);
+
+    Map<Long, Long> newIds = historyBatchTx.writeBatch(Arrays.asList(
+        HistoryRecord.freezeWindow(2L, 1L, 0L, freezeWindow), HistoryRecord.openJob(3L, jobHistory),
+        HistoryRecord.freezeWindow(4L, 3L, 0L, freezeWindow)), knownIds);
+
+    ArgumentCaptor<JobHistory> jobCaptor = ArgumentCaptor.forClass(JobHistory.class);
+    ArgumentCaptor<FreezeWindow> freezeWindowCaptor = ArgumentCaptor.forClass(FreezeWindow.class);
+    verify(mockJobHistoryDAO).persist(jobCaptor.capture());
+    verify(mockFreezeWindowDAO, times(2)).persist(freezeWindowCaptor.capture());
+    assertSame(reference, freezeWindowCaptor.getAllValues().get(0).getJobHistory());
+    assertSame(jobCaptor.getValue(), freezeWindowCaptor.getAllValues().get(1).getJobHistory());
+    assertEquals("env", freezeWindowCaptor.getAllValues().get(1).getEnvName());
+    assertEquals(END_TIME, freezeWindowCaptor.getAllValues().get(1).getNormalTime());
+    assertEquals(1, newIds.size());
+  }
+
+  /**
+   * Records of rows that were never written are dropped, not failed.
+   */
+  @Test
+  public void testWriteBatch_Unknown()
+  {
+    Map<Long, Long> newIds = historyBatchTx.writeBatch(Arrays.asList(HistoryRecord.openTask(3L, 1L, taskHistory),
+        HistoryRecord.freezeWindow(4L, 1L, 0L, freezeWindow), HistoryRecord.closeJob(5L, 1L, jobHistory)),
+        new HashMap<Long, Long>());
+
+    assertTrue(newIds.isEmpty());
+    verify(mockTaskHistoryDAO, never()).persist(any(TaskHistory.class));
+    verify(mockFreezeWindowDAO, never()).persist(any(FreezeWindow.class));
+    verify(mockJobHistoryDAO, never()).updateClosed(anyLong(), any(Timestamp.class), any(JobStatus.class));
+  }
+}
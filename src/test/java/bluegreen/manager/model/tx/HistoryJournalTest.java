@@ -0,0 +1,127 @@
+package bluegreen.manager.model.tx;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import bluegreen.manager.model.domain.JobHistory;
+import bluegreen.manager.model.domain.JobStatus;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistoryJournalTest
+{
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private File baseFile;
+  private HistoryJournal journal;
+
+  @Before
+  public void setUp() throws Exception
+  {
+    baseFile = new File(temporaryFolder.getRoot(), "history.journal");
+    journal = HistoryJournal.open(baseFile);
+  }
+
+  @After
+  public void tearDown()
+  {
+    journal.close();
+  }
+
+  private HistoryRecord makeOpenJob(long seq)
+  {
+    JobHistory jobHistory = new JobHistory();
+    jobHistory.setStartTime(new Timestamp(1000L * seq));
+    jobHistory.setJobName("job" + seq);
+    jobHistory.setEnv1("env");
+    jobHistory.setCommandLine("job" + seq + " env");
+    jobHistory.setStatus(JobStatus.PROCESSING);
+    return HistoryRecord.openJob(seq, jobHistory);
+  }
+
+  /**
+   * Only records after the last commit line are replayed.  Ids are kept from every commit.
+   */
+  @Test
+  public void testRead_Uncommitted() throws Exception
+  {
+    journal.append(Arrays.asList(makeOpenJob(1L), makeOpenJob(2L)));
+    journal.appendCommit(2L, Collections.singletonMap(1L, 101L));
+    journal.append(Arrays.asList(makeOpenJob(3L)));
+
+    HistoryJournal.Replay replay = journal.read();
+
+    assertEquals(1, replay.getRecords().size());
+    assertEquals(3L, replay.getRecords().get(0).getSeq());
+    assertEquals(Long.valueOf(101L), replay.getIds().get(1L));
+    assertEquals(3L, replay.getMaxSeq());
+  }
+
+  /**
+   * A torn last line (crash mid-write) is skipped.
+   */
+  @Test
+  public void testRead_TornLine() throws Exception
+  {
+    journal.append(Arrays.asList(makeOpenJob(1L)));
+    FileWriter writer = new FileWriter(baseFile, true);
+    writer.write(makeOpenJob(2L).toLine().substring(0, 10));
+    writer.close();
+
+    HistoryJournal.Replay replay = journal.read();
+
+    assertEquals(1, replay.getRecords().size());
+    assertEquals(1L, replay.getRecords().get(0).getSeq());
+  }
+
+  /**
+   * Compaction leaves only the live ids and the commit, and appending carries on after it.
+   */
+  @Test
+  public void testCompact() throws Exception
+  {
+    journal.append(Arrays.asList(makeOpenJob(1L), makeOpenJob(2L)));
+    journal.appendCommit(2L, Collections.<Long, Long>emptyMap());
+    Map<Long, Long> liveIds = new HashMap<Long, Long>();
+    liveIds.put(2L, 102L);
+
+    journal.compact(2L, liveIds);
+    journal.append(Arrays.asList(makeOpenJob(3L)));
+    HistoryJournal.Replay replay = journal.read();
+
+    assertEquals(3, journal.getNumLines());
+    assertEquals(1, replay.getRecords().size());
+    assertEquals(3L, replay.getRecords().get(0).getSeq());
+    assertEquals(liveIds, replay.getIds());
+  }
+
+  /**
+   * A second journal at the same path gets the next numbered file while the first is locked, and the first file once
+   * it is released.
+   */
+  @Test
+  public void testOpen_Locked() throws Exception
+  {
+    HistoryJournal second = HistoryJournal.open(baseFile);
+    assertNotEquals(baseFile, second.getFile());
+    assertTrue(second.getFile().getPath().startsWith(baseFile.getPath()));
+    second.close();
+
+    journal.close();
+    journal = HistoryJournal.open(baseFile);
+    assertEquals(baseFile, journal.getFile());
+  }
+}
@@ -0,0 +1,165 @@
+package bluegreen.manager.model.tx;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import bluegreen.manager.model.domain.FreezeWindow;
+import bluegreen.manager.model.domain.JobHistory;
+import bluegreen.manager.model.domain.JobStatus;
+import bluegreen.manager.model.domain.TaskHistory;
+import bluegreen.manager.model.domain.TaskStatus;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HistoryRecordTest
+{
+  private static final Timestamp START_TIME = new Timestamp(1000000L);
+  private static final Timestamp END_TIME = new Timestamp(2000000L);
+
+  private JobHistory makeJobHistory()
+  {
+    JobHistory jobHistory = new JobHistory();
+    jobHistory.setStartTime(START_TIME);
+    jobHistory.setJobName("stagingDeploy");
+    jobHistory.setEnv1("live");
+    jobHistory.setEnv2(null);
+    jobHistory.setCommandLine("stagingDeploy --note \"a\\tb\"\twith\ttabs\nand newline \\N");
+    jobHistory.setStatus(JobStatus.PROCESSING);
+    return jobHistory;
+  }
+
+  private TaskHistory makeTaskHistory(JobHistory jobHistory)
+  {
+    TaskHistory taskHistory = new TaskHistory();
+    taskHistory.setJobHistory(jobHistory);
+    taskHistory.setStartTime(START_TIME);
+    taskHistory.setPosition(3);
+    taskHistory.setTaskName("LocalShellTask");
+    taskHistory.setStatus(TaskStatus.PROCESSING);
+    return taskHistory;
+  }
+
+  /**
+   * Job fields, including awkward characters and nulls, survive the journal line format.
+   */
+  @Test
+  public void testLine_OpenJob()
+  {
+    JobHistory jobHistory = makeJobHistory();
+    HistoryRecord record = HistoryRecord.fromLine(HistoryRecord.openJob(7L, jobHistory).toLine());
+    assertEquals(7L, record.getSeq());
+    assertEquals(7L, record.getKey());
+    assertEquals(HistoryRecord.Type.OPEN_JOB, record.getType());
+    JobHistory restored = record.makeJobHistory();
+    assertEquals(START_TIME, restored.getStartTime());
+    assertNull(restored.getEndTime());
+    assertEquals("stagingDeploy", restored.getJobName());
+    assertEquals("live", restored.getEnv1());
+    assertNull(restored.getEnv2());
+    assertEquals(jobHistory.getCommandLine(), restored.getCommandLine());
+    assertEquals(JobStatus.PROCESSING, restored.getStatus());
+  }
+
+  /**
+   * Task close fields survive the journal line format.
+   */
+  @Test
+  public void testLine_CloseTask()
+  {
+    TaskHistory taskHistory = makeTaskHistory(makeJobHistory());
+    taskHistory.setEndTime(END_TIME);
+    taskHistory.setStatus(TaskStatus.DONE);
+    taskHistory.setExitValue(0);
+    taskHistory.setProcessMilliseconds(1234L);
+    HistoryRecord record = HistoryRecord.fromLine(HistoryRecord.closeTask(9L, 8L, taskHistory).toLine());
+    assertEquals(9L, record.getSeq());
+    assertEquals(8L, record.getKey());
+    assertEquals(HistoryRecord.Type.CLOSE_TASK, record.getType());
+    assertEquals(END_TIME, record.getEndTime());
+    assertEquals(TaskStatus.DONE, record.getTaskStatus());
+    assertEquals(Integer.valueOf(0), record.getExitValue());
+    assertEquals(Long.valueOf(1234L), record.getProcessMilliseconds());
+    assertNull(record.getProcessCpuMilliseconds());
+  }
+
+  /**
+   * Freeze window fields, including nulls for steps that never happened, survive the journal line format.
+   */
+  @Test
+  public void testLine_FreezeWindow()
+  {
+    FreezeWindow freezeWindow = new FreezeWindow();
+    freezeWindow.setEnvName("live");
+    freezeWindow.setFreezeRequestedTime(START_TIME);
+    freezeWindow.setFrozenTime(START_TIME);
+    freezeWindow.setThawRequestedTime(END_TIME);
+    freezeWindow.setWindowMilliseconds(END_TIME.getTime() - START_TIME.getTime());
+    freezeWindow.setBudgetSeconds(600L);
+    freezeWindow.setBudgetExceeded(true);
+    HistoryRecord record = HistoryRecord.fromLine(HistoryRecord.freezeWindow(12L, 7L, 0L, freezeWindow).toLine());
+    assertEquals(12L, record.getSeq());
+    assertEquals(HistoryRecord.Type.FREEZE_WINDOW, record.getType());
+    assertEquals(7L, record.getParentKey());
+    assertEquals(0L, record.getParentId());
+    JobHistory jobHistory = makeJobHistory();
+    FreezeWindow restored = record.makeFreezeWindow(jobHistory);
+    assertSame(jobHistory, restored.getJobHistory());
+    assertEquals("live", restored.getEnvName());
+    assertEquals(START_TIME, restored.getFreezeRequestedTime());
+    assertEquals(START_TIME, restored.getFrozenTime());
+    assertNull(restored.getSnapshotStartedTime());
+    assertNull(restored.getSnapshotAvailableTime());
+    assertEquals(END_TIME, restored.getThawRequestedTime());
+    assertNull(restored.getNormalTime());
+    assertEquals(END_TIME.getTime() - START_TIME.getTime(), restored.getWindowMilliseconds());
+    assertEquals(600L, restored.getBudgetSeconds());
+    assertTrue(restored.isBudgetExceeded());
+  }
+
+  /**
+   * A torn line is rejected.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testLine_Torn()
+  {
+    String line = HistoryRecord.openJob(7L, makeJobHistory()).toLine();
+    HistoryRecord.fromLine(line.substring(0, line.length() / 2));
+  }
+
+  /**
+   * Closes fold into opens of the same row in the batch, and stay separate otherwise.
+   */
+  @Test
+  public void testCoalesce()
+  {
+    JobHistory jobHistory = makeJobHistory();
+    TaskHistory taskHistory = makeTaskHistory(jobHistory);
+    HistoryRecord openJob = HistoryRecord.openJob(1L, jobHistory);
+    HistoryRecord openTask = HistoryRecord.openTask(2L, 1L, taskHistory);
+    taskHistory.setEndTime(END_TIME);
+    taskHistory.setStatus(TaskStatus.DONE);
+    taskHistory.setExitValue(0);
+    HistoryRecord closeTask = HistoryRecord.closeTask(3L, 2L, taskHistory);
+    HistoryRecord closeOlderTask = HistoryRecord.closeTask(4L, 99L, taskHistory);
+
+    List<HistoryRecord> coalesced = HistoryRecord.coalesce(Arrays.asList(openJob, openTask, closeTask, closeOlderTask));
+
+    assertEquals(3, coalesced.size());
+    assertEquals(HistoryRecord.Type.OPEN_JOB, coalesced.get(0).getType());
+    HistoryRecord closedOpenTask = coalesced.get(1);
+    assertEquals(HistoryRecord.Type.OPEN_TASK, closedOpenTask.getType());
+    assertEquals(2L, closedOpenTask.getKey());
+    assertEquals(1L, closedOpenTask.getParentKey());
+    TaskHistory restored = closedOpenTask.makeTaskHistory(jobHistory);
+    assertEquals(START_TIME, restored.getStartTime());
+    assertEquals(END_TIME, restored.getEndTime());
+    assertEquals(TaskStatus.DONE, restored.getStatus());
+    assertEquals(Integer.valueOf(0), restored.getExitValue());
+    assertEquals(closeOlderTask, coalesced.get(2));
+  }
+}
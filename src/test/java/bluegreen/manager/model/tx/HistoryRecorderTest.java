@@ -0,0 +1,343 @@
+package bluegreen.manager.model.tx;
+
+import java.io.File;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import bluegreen.manager.jobs.Job;
+import bluegreen.manager.jobs.JobFakery;
+import bluegreen.manager.model.domain.FreezeWindow;
+import bluegreen.manager.model.domain.JobHistory;
+import bluegreen.manager.model.domain.JobStatus;
+import bluegreen.manager.model.domain.TaskHistory;
+import bluegreen.manager.model.domain.TaskStatus;
+import bluegreen.manager.tasks.Task;
+import bluegreen.manager.tasks.TaskFakery;
+import bluegreen.manager.utils.NowFactory;
+import static bluegreen.manager.utils.TimeFakery.START_TIME;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the write-behind recording of job and task history, against a fake db.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class HistoryRecorderTest
+{
+  private static final long WAIT_MILLISECONDS = 10000L;
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @InjectMocks
+  private HistoryRecorder historyRecorder;
+
+  @Mock
+  private NowFactory mockNowFactory;
+
+  @Mock
+  private TaskHistoryTx mockTaskHistoryTx;
+
+  @Mock
+  private JobHistoryTx mockJobHistoryTx;
+
+  @Mock
+  private FreezeWindowTx mockFreezeWindowTx;
+
+  @Mock
+  private HistoryBatchTx mockHistoryBatchTx;
+
+  private TaskFakery taskFakery = new TaskFakery();
+  private JobFakery jobFakery = new JobFakery(taskFakery);
+  private File journalFile;
+  private FakeDb fakeDb = new FakeDb();
+
+  @Before
+  public void setUp()
+  {
+    when(mockNowFactory.now()).thenReturn(START_TIME);
+    journalFile = new File(temporaryFolder.getRoot(), "history.journal");
+    historyRecorder.setJournalFile(journalFile.getPath());
+    historyRecorder.setRetrySeconds(1L);
+  }
+
+  @After
+  public void tearDown() throws Exception
+  {
+    historyRecorder.stop();
+  }
+
+  /**
+   * Records every written record, and assigns ids to opened rows.
+   */
+  private static class FakeDb implements Answer<Map<Long, Long>>
+  {
+    private final List<HistoryRecord> written = new ArrayList<HistoryRecord>();
+    private int numFailuresLeft;
+    private long nextId = 100L;
+
+    @Override
+    public synchronized Map<Long, Long> answer(InvocationOnMock invocation) throws Throwable
+    {
+      if (numFailuresLeft > 0)
+      {
+        --numFailuresLeft;
+        throw new RuntimeException("db is down");
+      }
+      List<HistoryRecord> records = (List<HistoryRecord>) invocation.getArguments()[0];
+      Map<Long, Long> newIds = new HashMap<Long, Long>();
+      for (HistoryRecord record : records)
+      {
+        written.add(record);
+        if (record.isOpen())
+        {
+          newIds.put(record.getKey(), nextId++);
+        }
+      }
+      return newIds;
+    }
+
+    private synchronized List<HistoryRecord> getWritten()
+    {
+      return new ArrayList<HistoryRecord>(written);
+    }
+  }
+
+  private void stubFakeDb()
+  {
+    when(mockHistoryBatchTx.writeBatch(anyListOf(HistoryRecord.class), anyMapOf(Long.class, Long.class)))
+        .then(fakeDb);
+  }
+
+  /**
+   * Records one job of two tasks, one processed and one skipped.  Returns the job history.
+   */
+  private JobHistory recordJob()
+  {
+    Job job = jobFakery.makeFakeJob();
+    JobHistory jobHistory = historyRecorder.newJobHistoryProcessing(job, START_TIME);
+    TaskHistory taskHistory = historyRecorder.newTaskHistoryProcessing(taskFakery.makeFakeTask(0), jobHistory);
+    historyRecorder.newTaskHistorySkipped(taskFakery.makeFakeTask(1), jobHistory);
+    historyRecorder.closeTaskHistory(taskHistory, TaskStatus.DONE);
+    historyRecorder.closeJobHistory(jobHistory, JobStatus.DONE);
+    return jobHistory;
+  }
+
+  private void waitForCommitted(long numCommitted) throws InterruptedException
+  {
+    long deadline = System.currentTimeMillis() + WAIT_MILLISECONDS;
+    while (historyRecorder.getNumCommitted() < numCommitted && System.currentTimeMillis() < deadline)
+    {
+      Thread.sleep(20L);
+    }
+    assertEquals(numCommitted, historyRecorder.getNumCommitted());
+  }
+
+  /**
+   * The backlog clears just after its last batch is committed, so wait for that too.
+   */
+  private void waitForNoBacklog() throws InterruptedException
+  {
+    long deadline = System.currentTimeMillis() + WAIT_MILLISECONDS;
+    while (historyRecorder.isBacklogged() && System.currentTimeMillis() < deadline)
+    {
+      Thread.sleep(20L);
+    }
+    assertFalse(historyRecorder.isBacklogged());
+  }
+
+  /**
+   * Checks that the written records open the job before its tasks, and leave the job done.  (Depending on how the
+   * writer batched them, the job is done in its close record or in its open record coalesced with the close.)
+   */
+  private void assertJobWritten(List<HistoryRecord> written)
+  {
+    assertEquals(HistoryRecord.Type.OPEN_JOB, written.get(0).getType());
+    long lastSeq = 0L;
+    HistoryRecord lastJobRecord = null;
+    for (HistoryRecord record : written)
+    {
+      assertTrue(record.getSeq() > lastSeq);
+      lastSeq = record.getSeq();
+      if (record.getType() == HistoryRecord.Type.OPEN_JOB || record.getType() == HistoryRecord.Type.CLOSE_JOB)
+      {
+        lastJobRecord = record;
+      }
+    }
+    assertEquals(JobStatus.DONE, lastJobRecord.getJobStatus());
+  }
+
+  /**
+   * The live entities are filled in right away, and the records reach the db in order by the time flush returns.
+   */
+  @Test
+  public void testRecord_Flush() throws Exception
+  {
+    stubFakeDb();
+    historyRecorder.start();
+
+    JobHistory jobHistory = recordJob();
+    historyRecorder.flush();
+
+    assertEquals(JobStatus.DONE, jobHistory.getStatus());
+    assertEquals(2, jobHistory.getTaskHistories().size());
+    assertEquals(TaskStatus.DONE, jobHistory.getTaskHistories().get(0).getStatus());
+    assertEquals(TaskStatus.SKIPPED, jobHistory.getTaskHistories().get(1).getStatus());
+    assertEquals(5L, historyRecorder.getNumCommitted());
+    assertJobWritten(fakeDb.getWritten());
+    verifyZeroInteractions(mockTaskHistoryTx, mockJobHistoryTx);
+  }
+
+  /**
+   * A freeze window recorded before its job reaches the db is written after the job, keyed by the job.
+   */
+  @Test
+  public void testNewFreezeWindow() throws Exception
+  {
+    stubFakeDb();
+    historyRecorder.start();
+
+    JobHistory jobHistory = historyRecorder.newJobHistoryProcessing(jobFakery.makeFakeJob(), START_TIME);
+    historyRecorder.newFreezeWindow(new FreezeWindow(), jobHistory);
+    historyRecorder.closeJobHistory(jobHistory, JobStatus.DONE);
+    historyRecorder.flush();
+
+    List<HistoryRecord> written = fakeDb.getWritten();
+    assertEquals(HistoryRecord.Type.FREEZE_WINDOW, written.get(1).getType());
+    assertEquals(written.get(0).getKey(), written.get(1).getParentKey());
+    assertJobWritten(written);
+    verifyZeroInteractions(mockFreezeWindowTx);
+  }
+
+  /**
+   * While the db is down, flush returns once the records are journaled, and they reach the db when it comes back.
+   */
+  @Test
+  public void testRecord_DbDown() throws Exception
+  {
+    fakeDb.numFailuresLeft = 1;
+    stubFakeDb();
+    historyRecorder.start();
+
+    historyRecorder.newJobHistoryProcessing(jobFakery.makeFakeJob(), START_TIME);
+    historyRecorder.flush();
+    assertTrue(historyRecorder.isBacklogged());
+    assertEquals(0L, historyRecorder.getNumCommitted());
+
+    waitForCommitted(1L);
+    waitForNoBacklog();
+    assertEquals(HistoryRecord.Type.OPEN_JOB, fakeDb.getWritten().get(0).getType());
+  }
+
+  /**
+   * flushBacklog retries a backlog right away, without waiting out the retry interval, and returns once it is in the
+   * db.
+   */
+  @Test
+  public void testFlushBacklog_RetriesNow() throws Exception
+  {
+    fakeDb.numFailuresLeft = 1;
+    stubFakeDb();
+    historyRecorder.setRetrySeconds(60L);
+    historyRecorder.start();
+
+    historyRecorder.newJobHistoryProcessing(jobFakery.makeFakeJob(), START_TIME);
+    historyRecorder.flushBacklog();
+
+    assertEquals(1L, historyRecorder.getNumCommitted());
+    assertFalse(historyRecorder.isBacklogged());
+    assertEquals(HistoryRecord.Type.OPEN_JOB, fakeDb.getWritten().get(0).getType());
+  }
+
+  /**
+   * flushBacklog throws if the db is still down, rather than let the caller read incomplete history.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testFlushBacklog_DbStillDown() throws Exception
+  {
+    fakeDb.numFailuresLeft = 2;
+    stubFakeDb();
+    historyRecorder.setRetrySeconds(60L);
+    historyRecorder.start();
+
+    historyRecorder.newJobHistoryProcessing(jobFakery.makeFakeJob(), START_TIME);
+    historyRecorder.flushBacklog();
+  }
+
+  /**
+   * Records journaled by a process that died before writing them to the db are written at startup.
+   */
+  @Test
+  public void testStart_Replay() throws Exception
+  {
+    JobHistory jobHistory = new JobHistory();
+    jobHistory.setStartTime(new Timestamp(START_TIME.getTime()));
+    jobHistory.setJobName(JobFakery.JOB_NAME);
+    jobHistory.setEnv1(JobFakery.ENV_NAME1);
+    jobHistory.setCommandLine(JobFakery.COMMAND_LINE);
+    jobHistory.setStatus(JobStatus.PROCESSING);
+    HistoryJournal journal = HistoryJournal.open(journalFile);
+    journal.append(Arrays.asList(HistoryRecord.openJob(1L, jobHistory)));
+    journal.close();
+    stubFakeDb();
+
+    historyRecorder.start();
+    waitForCommitted(1L);
+
+    List<HistoryRecord> written = fakeDb.getWritten();
+    assertEquals(1, written.size());
+    assertEquals(JobFakery.JOB_NAME, written.get(0).makeJobHistory().getJobName());
+  }
+
+  /**
+   * With write-behind off, each change is written synchronously, as before.
+   */
+  @Test
+  public void testWriteBehindOff() throws Exception
+  {
+    historyRecorder.setWriteBehind(false);
+    historyRecorder.start();
+    Job job = jobFakery.makeFakeJob();
+    Task task = taskFakery.makeFakeTask(0);
+    JobHistory jobHistory = new JobHistory();
+    TaskHistory taskHistory = new TaskHistory();
+    when(mockJobHistoryTx.newJobHistoryProcessing(job, START_TIME)).thenReturn(jobHistory);
+    when(mockTaskHistoryTx.newTaskHistoryProcessing(task, jobHistory)).thenReturn(taskHistory);
+
+    historyRecorder.newJobHistoryProcessing(job, START_TIME);
+    historyRecorder.newTaskHistoryProcessing(task, jobHistory);
+    historyRecorder.closeTaskHistory(taskHistory, TaskStatus.DONE);
+    FreezeWindow freezeWindow = new FreezeWindow();
+    historyRecorder.newFreezeWindow(freezeWindow, jobHistory);
+    historyRecorder.closeJobHistory(jobHistory, JobStatus.DONE);
+    historyRecorder.flush();
+
+    verify(mockTaskHistoryTx).closeTaskHistory(taskHistory, TaskStatus.DONE);
+    verify(mockFreezeWindowTx).newFreezeWindow(freezeWindow, jobHistory);
+    verify(mockJobHistoryTx).closeJobHistory(jobHistory, JobStatus.DONE);
+    verifyZeroInteractions(mockHistoryBatchTx);
+    assertFalse(journalFile.exists());
+  }
+}
@@ -0,0 +1,70 @@
+package bluegreen.manager.model.tx;
+
+import java.sql.Timestamp;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import bluegreen.manager.utils.NowFactory;
+import static bluegreen.manager.utils.TimeFakery.START_TIME;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class HistoryRetentionTest
+{
+  private static final int RETENTION_DAYS = 30;
+  private static final int BATCH_SIZE = 10;
+
+  @InjectMocks
+  private HistoryRetention historyRetention;
+
+  @Mock
+  private NowFactory mockNowFactory;
+
+  @Mock
+  private JobHistoryTx mockJobHistoryTx;
+
+  @Before
+  public void setUp()
+  {
+    when(mockNowFactory.now()).thenReturn(START_TIME);
+    historyRetention.setRetentionDays(RETENTION_DAYS);
+    historyRetention.setArchiveBatchSize(BATCH_SIZE);
+  }
+
+  /**
+   * Archives full batches until a short one, all with the same cutoff.
+   */
+  @Test
+  public void testArchiveOldHistory()
+  {
+    when(mockJobHistoryTx.archiveJobHistories(any(Timestamp.class), anyInt())).thenReturn(BATCH_SIZE, BATCH_SIZE, 3);
+
+    assertEquals(2 * BATCH_SIZE + 3, historyRetention.archiveOldHistory());
+
+    Timestamp cutoff = new Timestamp(START_TIME.getTime() - RETENTION_DAYS * 24L * 60L * 60L * 1000L);
+    verify(mockJobHistoryTx, times(3)).archiveJobHistories(cutoff, BATCH_SIZE);
+  }
+
+  /**
+   * Nothing old enough, one empty batch.
+   */
+  @Test
+  public void testArchiveOldHistory_None()
+  {
+    when(mockJobHistoryTx.archiveJobHistories(any(Timestamp.class), anyInt())).thenReturn(0);
+
+    assertEquals(0, historyRetention.archiveOldHistory());
+
+    verify(mockJobHistoryTx, times(1)).archiveJobHistories(any(Timestamp.class), anyInt());
+  }
+}
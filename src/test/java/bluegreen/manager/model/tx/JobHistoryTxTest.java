@@ -1,15 +1,23 @@
 package bluegreen.manager.model.tx;
 
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import bluegreen.manager.jobs.Job;
 import bluegreen.manager.jobs.JobFakery;
+import bluegreen.manager.model.dao.FreezeWindowDAO;
 import bluegreen.manager.model.dao.JobHistoryDAO;
+import bluegreen.manager.model.dao.TaskHistoryDAO;
 import bluegreen.manager.model.domain.JobHistory;
 import bluegreen.manager.model.domain.JobStatus;
 import bluegreen.manager.tasks.TaskFakery;
@@ -18,7 +26,9 @@ import static bluegreen.manager.utils.TimeFakery.START_TIME;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 /**
@@ -38,6 +48,12 @@ public class JobHistoryTxTest
   @Mock
   private JobHistoryDAO mockJobHistoryDAO;
 
+  @Mock
+  private TaskHistoryDAO mockTaskHistoryDAO;
+
+  @Mock
+  private FreezeWindowDAO mockFreezeWindowDAO;
+
   private TaskFakery taskFakery = new TaskFakery();
   private JobFakery jobFakery = new JobFakery(taskFakery);
 
@@ -77,4 +93,37 @@ public class JobHistoryTxTest
     assertEquals(jobHistory.getStatus(), JobStatus.DONE);
     assertNotNull(jobHistory.getEndTime());
   }
+
+  /**
+   * Freeze windows and task histories are moved before their job histories, which they reference.
+   */
+  @Test
+  public void testArchiveJobHistories()
+  {
+    Timestamp cutoff = new Timestamp(START_TIME.getTime());
+    List<Long> ids = Arrays.asList(JOB_ID, JOB_ID + 1);
+    when(mockJobHistoryDAO.findClosedIdsStartedBefore(cutoff, 10)).thenReturn(ids);
+    when(mockJobHistoryDAO.archive(ids)).thenReturn(2);
+
+    assertEquals(2, jobHistoryTx.archiveJobHistories(cutoff, 10));
+
+    InOrder inOrder = inOrder(mockFreezeWindowDAO, mockTaskHistoryDAO, mockJobHistoryDAO);
+    inOrder.verify(mockFreezeWindowDAO).archiveByJobHistoryIds(ids);
+    inOrder.verify(mockTaskHistoryDAO).archiveByJobHistoryIds(ids);
+    inOrder.verify(mockJobHistoryDAO).archive(ids);
+  }
+
+  /**
+   * Nothing old enough, nothing moved.
+   */
+  @Test
+  public void testArchiveJobHistories_None()
+  {
+    Timestamp cutoff = new Timestamp(START_TIME.getTime());
+    when(mockJobHistoryDAO.findClosedIdsStartedBefore(cutoff, 10)).thenReturn(Collections.<Long>emptyList());
+
+    assertEquals(0, jobHistoryTx.archiveJobHistories(cutoff, 10));
+
+    verifyZeroInteractions(mockFreezeWindowDAO, mockTaskHistoryDAO);
+  }
 }
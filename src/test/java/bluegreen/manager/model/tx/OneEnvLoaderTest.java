@@ -29,13 +29,13 @@ public class OneEnvLoaderTest
   private OneEnvLoader oneEnvLoader;
 
   @Mock
-  private EnvironmentTx mockEnvironmentTx;
+  private EnvironmentCache mockEnvironmentCache;
 
   @Before
   public void setUp()
   {
-    when(mockEnvironmentTx.findNamedEnv(FAKE_EMPTY_ENV.getEnvName())).thenReturn(FAKE_EMPTY_ENV);
-    when(mockEnvironmentTx.findNamedEnv(FAKE_FULL_ENV.getEnvName())).thenReturn(FAKE_FULL_ENV);
+    when(mockEnvironmentCache.findNamedEnv(FAKE_EMPTY_ENV.getEnvName())).thenReturn(FAKE_EMPTY_ENV);
+    when(mockEnvironmentCache.findNamedEnv(FAKE_FULL_ENV.getEnvName())).thenReturn(FAKE_FULL_ENV);
   }
 
   /**
@@ -103,7 +103,7 @@ public class OneEnvLoaderTest
   {
     Environment anotherFullEnv = EnvironmentTestHelper.makeFakeFullEnvironment(1);
     anotherFullEnv.getApplicationVms().get(0).setApplications(null);
-    when(mockEnvironmentTx.findNamedEnv(anotherFullEnv.getEnvName())).thenReturn(anotherFullEnv);
+    when(mockEnvironmentCache.findNamedEnv(anotherFullEnv.getEnvName())).thenReturn(anotherFullEnv);
     oneEnvLoader.setEnvName(anotherFullEnv.getEnvName());
     oneEnvLoader.loadApplication();
   }
@@ -0,0 +1,123 @@
+package bluegreen.manager.model.tx;
+
+import java.sql.Timestamp;
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import bluegreen.manager.model.dao.StandbyDatabaseDAO;
+import bluegreen.manager.model.domain.StandbyDatabase;
+import bluegreen.manager.model.domain.StandbyStatus;
+import bluegreen.manager.utils.NowFactory;
+import static bluegreen.manager.utils.TimeFakery.START_TIME;
+import static bluegreen.manager.utils.TimeFakery.START_TIMESTAMP;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the lease transitions of standby databases in the warm pool.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class StandbyDatabaseTxTest
+{
+  private static final String ENV_NAME = "liveEnv";
+  private static final String LOGICAL_NAME = "lldata";
+  private static final long STANDBY_ID = 17L;
+
+  @InjectMocks
+  private StandbyDatabaseTx standbyDatabaseTx;
+
+  @Mock
+  private NowFactory mockNowFactory;
+
+  @Mock
+  private StandbyDatabaseDAO mockStandbyDatabaseDAO;
+
+  @Before
+  public void setUp()
+  {
+    when(mockNowFactory.now()).thenReturn(START_TIME);
+  }
+
+  private StandbyDatabase makeFakeStandby(StandbyStatus status)
+  {
+    StandbyDatabase standbyDatabase = new StandbyDatabase();
+    standbyDatabase.setId(STANDBY_ID);
+    standbyDatabase.setEnvName(ENV_NAME);
+    standbyDatabase.setLogicalName(LOGICAL_NAME);
+    standbyDatabase.setStatus(status);
+    return standbyDatabase;
+  }
+
+  /**
+   * New standby is BUILDING under the builder's lease.
+   */
+  @Test
+  public void testNewStandby()
+  {
+    StandbyDatabase standbyDatabase = standbyDatabaseTx.newStandby(ENV_NAME, LOGICAL_NAME, "bgstandby-1",
+        "snapshot-1", new Date(START_TIME.getTime() - 60000L), "builder");
+
+    verify(mockStandbyDatabaseDAO).persist(standbyDatabase);
+    assertEquals(StandbyStatus.BUILDING, standbyDatabase.getStatus());
+    assertEquals("builder", standbyDatabase.getLeaseOwner());
+    assertEquals(START_TIMESTAMP, standbyDatabase.getLeaseTime());
+    assertEquals(START_TIME.getTime() - 60000L, standbyDatabase.getSnapshotTime().getTime());
+  }
+
+  /**
+   * Ready releases the lease.
+   */
+  @Test
+  public void testMarkReady()
+  {
+    StandbyDatabase standbyDatabase = makeFakeStandby(StandbyStatus.BUILDING);
+    standbyDatabase.setLeaseOwner("builder");
+    standbyDatabase.setLeaseTime(START_TIMESTAMP);
+    when(mockStandbyDatabaseDAO.find(STANDBY_ID)).thenReturn(standbyDatabase);
+
+    standbyDatabaseTx.markReady(STANDBY_ID);
+
+    assertEquals(StandbyStatus.READY, standbyDatabase.getStatus());
+    assertNull(standbyDatabase.getLeaseOwner());
+    assertNull(standbyDatabase.getLeaseTime());
+  }
+
+  /**
+   * Claim leases the freshest ready standby to the claimant.
+   */
+  @Test
+  public void testClaim()
+  {
+    StandbyDatabase standbyDatabase = makeFakeStandby(StandbyStatus.READY);
+    Date minSnapshotTime = new Date(START_TIME.getTime() - 3600000L);
+    when(mockStandbyDatabaseDAO.findFreshestReady(ENV_NAME, LOGICAL_NAME, new Timestamp(minSnapshotTime.getTime())))
+        .thenReturn(standbyDatabase);
+
+    assertEquals(standbyDatabase, standbyDatabaseTx.claim(ENV_NAME, LOGICAL_NAME, minSnapshotTime, "stageEnv env2"));
+    assertEquals(StandbyStatus.CLAIMED, standbyDatabase.getStatus());
+    assertEquals("stageEnv env2", standbyDatabase.getLeaseOwner());
+    assertEquals(START_TIMESTAMP, standbyDatabase.getLeaseTime());
+  }
+
+  /**
+   * Nothing to claim = null.
+   */
+  @Test
+  public void testClaim_None()
+  {
+    when(mockStandbyDatabaseDAO.findFreshestReady(eq(ENV_NAME), anyString(), any(Timestamp.class))).thenReturn(null);
+
+    assertNull(standbyDatabaseTx.claim(ENV_NAME, LOGICAL_NAME, START_TIME, "stageEnv env2"));
+  }
+}
@@ -5,10 +5,12 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import bluegreen.manager.model.domain.Environment;
 import bluegreen.manager.model.domain.EnvironmentTestHelper;
+import bluegreen.manager.model.domain.PhysicalDatabase;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.mockito.Mockito.when;
@@ -41,15 +43,18 @@ public class TwoEnvLoaderTest
   private TwoEnvLoader twoEnvLoader;
 
   @Mock
-  private EnvironmentTx mockEnvironmentTx;
+  private EnvironmentCache mockEnvironmentCache;
+
+  @Spy
+  private EnvironmentHelper environmentHelper;
 
   @Before
   public void setUp()
   {
-    when(mockEnvironmentTx.findNamedEnv(FAKE_EMPTY_LIVE_ENV.getEnvName())).thenReturn(FAKE_EMPTY_LIVE_ENV);
-    when(mockEnvironmentTx.findNamedEnv(FAKE_FULL_LIVE_ENV.getEnvName())).thenReturn(FAKE_FULL_LIVE_ENV);
-    when(mockEnvironmentTx.findNamedEnv(FAKE_EMPTY_STAGE_ENV.getEnvName())).thenReturn(FAKE_EMPTY_STAGE_ENV);
-    when(mockEnvironmentTx.findNamedEnv(FAKE_FULL_STAGE_ENV.getEnvName())).thenReturn(FAKE_FULL_STAGE_ENV);
+    when(mockEnvironmentCache.findNamedEnv(FAKE_EMPTY_LIVE_ENV.getEnvName())).thenReturn(FAKE_EMPTY_LIVE_ENV);
+    when(mockEnvironmentCache.findNamedEnv(FAKE_FULL_LIVE_ENV.getEnvName())).thenReturn(FAKE_FULL_LIVE_ENV);
+    when(mockEnvironmentCache.findNamedEnv(FAKE_EMPTY_STAGE_ENV.getEnvName())).thenReturn(FAKE_EMPTY_STAGE_ENV);
+    when(mockEnvironmentCache.findNamedEnv(FAKE_FULL_STAGE_ENV.getEnvName())).thenReturn(FAKE_FULL_STAGE_ENV);
   }
 
   /**
@@ -64,10 +69,56 @@ public class TwoEnvLoaderTest
     assertEquals(NAME_FULL_LIVE, twoEnvLoader.getLiveEnv().getEnvName());
     assertNotNull(twoEnvLoader.getLiveApplicationVm());
     assertNotNull(twoEnvLoader.getLiveApplication());
-    assertNotNull(twoEnvLoader.getLivePhysicalDatabase());
+    assertEquals(1, twoEnvLoader.getLivePhysicalDatabases().size());
     assertEquals(NAME_FULL_STAGE, twoEnvLoader.getStageEnv().getEnvName());
     assertNotNull(twoEnvLoader.getStageApplicationVm());
-    assertNotNull(twoEnvLoader.getStagePhysicalDatabase());
+    assertEquals(1, twoEnvLoader.getStagePhysicalDatabases().size());
+  }
+
+  /**
+   * Envs with several logical databases: stage physicaldbs are paired with live ones by logical name.
+   */
+  @Test
+  public void testLoadDataModel_MultipleDatabases()
+  {
+    Environment liveEnv = makeFullEnv(0, "multiLive");
+    Environment stageEnv = makeFullEnv(1, "multiStage");
+    PhysicalDatabase stagePhysicalDatabaseB = EnvironmentTestHelper.addFakeDatabase(1, stageEnv, "logicalB", "stageB");
+    PhysicalDatabase stagePhysicalDatabaseA = EnvironmentTestHelper.addFakeDatabase(1, stageEnv, "logicalA", "stageA");
+    PhysicalDatabase livePhysicalDatabaseA = EnvironmentTestHelper.addFakeDatabase(0, liveEnv, "logicalA", "liveA");
+    PhysicalDatabase livePhysicalDatabaseB = EnvironmentTestHelper.addFakeDatabase(0, liveEnv, "logicalB", "liveB");
+    twoEnvLoader.setLiveEnvName(liveEnv.getEnvName());
+    twoEnvLoader.setStageEnvName(stageEnv.getEnvName());
+    twoEnvLoader.loadDataModel();
+
+    assertEquals(3, twoEnvLoader.getLivePhysicalDatabases().size());
+    assertEquals(livePhysicalDatabaseA, twoEnvLoader.getLivePhysicalDatabases().get(1));
+    assertEquals(stagePhysicalDatabaseA, twoEnvLoader.getStagePhysicalDatabases().get(1));
+    assertEquals(livePhysicalDatabaseB, twoEnvLoader.getLivePhysicalDatabases().get(2));
+    assertEquals(stagePhysicalDatabaseB, twoEnvLoader.getStagePhysicalDatabases().get(2));
+  }
+
+  /**
+   * Fail case: stage env lacks one of the live logical databases.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testLoadDataModel_UnmatchedDatabase()
+  {
+    Environment liveEnv = makeFullEnv(0, "unmatchedLive");
+    Environment stageEnv = makeFullEnv(1, "unmatchedStage");
+    EnvironmentTestHelper.addFakeDatabase(0, liveEnv, "logicalA", "liveA");
+    EnvironmentTestHelper.addFakeDatabase(1, stageEnv, "logicalB", "stageB");
+    twoEnvLoader.setLiveEnvName(liveEnv.getEnvName());
+    twoEnvLoader.setStageEnvName(stageEnv.getEnvName());
+    twoEnvLoader.loadDataModel();
+  }
+
+  private Environment makeFullEnv(int index, String envName)
+  {
+    Environment environment = EnvironmentTestHelper.makeFakeFullEnvironment(index);
+    environment.setEnvName(envName);
+    when(mockEnvironmentCache.findNamedEnv(envName)).thenReturn(environment);
+    return environment;
   }
 
   /**
@@ -91,7 +142,7 @@ public class TwoEnvLoaderTest
     anotherLiveEnv.getApplicationVms().get(0).setApplications(null);
     final String envName = "NoAppEnv";
     anotherLiveEnv.setEnvName(envName);
-    when(mockEnvironmentTx.findNamedEnv(envName)).thenReturn(anotherLiveEnv);
+    when(mockEnvironmentCache.findNamedEnv(envName)).thenReturn(anotherLiveEnv);
     twoEnvLoader.setLiveEnvName(envName);
     twoEnvLoader.setStageEnvName(NAME_FULL_STAGE);
     twoEnvLoader.loadDataModel();
@@ -107,7 +158,7 @@ public class TwoEnvLoaderTest
     anotherStageEnv.setLogicalDatabases(null);
     final String envName = "NoLogicalEnv";
     anotherStageEnv.setEnvName(envName);
-    when(mockEnvironmentTx.findNamedEnv(envName)).thenReturn(anotherStageEnv);
+    when(mockEnvironmentCache.findNamedEnv(envName)).thenReturn(anotherStageEnv);
     twoEnvLoader.setLiveEnvName(NAME_FULL_LIVE);
     twoEnvLoader.setStageEnvName(envName);
     twoEnvLoader.loadDataModel();
@@ -0,0 +1,94 @@
+package bluegreen.manager.model.tx;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import bluegreen.manager.model.dao.WaitHistoryDAO;
+import bluegreen.manager.model.domain.WaitHistory;
+import bluegreen.manager.utils.NowFactory;
+import static bluegreen.manager.utils.TimeFakery.START_TIME;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the recording of waits and the prediction of operation durations.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class WaitHistoryTxTest
+{
+  private static final String OPERATION = "someOperation";
+
+  @InjectMocks
+  private WaitHistoryTx waitHistoryTx;
+
+  @Mock
+  private NowFactory mockNowFactory;
+
+  @Mock
+  private WaitHistoryDAO mockWaitHistoryDAO;
+
+  @Before
+  public void setUp()
+  {
+    when(mockNowFactory.now()).thenReturn(START_TIME);
+  }
+
+  private List<WaitHistory> makeFakeWaitHistories(long... elapsedMilliseconds)
+  {
+    List<WaitHistory> waitHistories = new ArrayList<WaitHistory>();
+    for (long elapsed : elapsedMilliseconds)
+    {
+      WaitHistory waitHistory = new WaitHistory();
+      waitHistory.setOperation(OPERATION);
+      waitHistory.setDone(true);
+      waitHistory.setElapsedMilliseconds(elapsed);
+      waitHistory.setDetectionLagMilliseconds(2000L);
+      waitHistories.add(waitHistory);
+    }
+    return waitHistories;
+  }
+
+  @Test
+  public void testNewWaitHistory()
+  {
+    WaitHistory waitHistory = waitHistoryTx.newWaitHistory(OPERATION, "FIXED", true, 5, 60000L, 15000L);
+
+    verify(mockWaitHistoryDAO).persist(waitHistory);
+    assertEquals(START_TIME.getTime() - 60000L, waitHistory.getStartTime().getTime());
+    assertEquals(15000L, waitHistory.getDetectionLagMilliseconds());
+    assertTrue(waitHistory.isDone());
+  }
+
+  /**
+   * Median of recent durations, less half the detection lag.
+   */
+  @Test
+  public void testFindExpectedDuration()
+  {
+    when(mockWaitHistoryDAO.findRecentDone(eq(OPERATION), anyInt()))
+        .thenReturn(makeFakeWaitHistories(90000L, 50000L, 70000L, 400000L));
+
+    assertEquals(Long.valueOf(89000L), waitHistoryTx.findExpectedDurationMilliseconds(OPERATION));
+  }
+
+  @Test
+  public void testFindExpectedDuration_NotEnoughHistory()
+  {
+    when(mockWaitHistoryDAO.findRecentDone(eq(OPERATION), anyInt()))
+        .thenReturn(makeFakeWaitHistories(90000L, 50000L));
+
+    assertNull(waitHistoryTx.findExpectedDurationMilliseconds(OPERATION));
+  }
+}
@@ -81,6 +81,47 @@ public class StringSubstituterBaseImplTest
     assertTrue(result.getExpurgated().contains("--arg2 " + VALUE2));
   }
 
+  /**
+   * A parsed template gives the same result as its string, every time it is rendered.
+   */
+  @Test
+  public void testSubstituteVariables_CommandTemplate()
+  {
+    stringSubstituterBaseImpl.addSubstitution(KEY1, VALUE1);
+    stringSubstituterBaseImpl.addSubstitution(KEY2, VALUE2);
+    CommandTemplate commandTemplate = CommandTemplate.parse(TEMPLATE_EXPURGATE);
+    SubstituterResult expected = stringSubstituterBaseImpl.substituteVariables(TEMPLATE_EXPURGATE);
+    for (int idx = 0; idx < 2; ++idx)
+    {
+      SubstituterResult result = stringSubstituterBaseImpl.substituteVariables(commandTemplate);
+      assertEquals(expected.getSubstituted(), result.getSubstituted());
+      assertEquals(expected.getExpurgated(), result.getExpurgated());
+    }
+  }
+
+  /**
+   * Unknown variables and unclosed braces are left as is, without hiding the variables around them.
+   */
+  @Test
+  public void testSubstituteVariables_Unmatched()
+  {
+    stringSubstituterBaseImpl.addSubstitution(KEY1, VALUE1);
+    String template = "a %{nope} b %{{" + KEY1 + "} c %{" + KEY1 + "} d %{";
+    SubstituterResult result = stringSubstituterBaseImpl.substituteVariables(template);
+    assertEquals("a %{nope} b %{{" + KEY1 + "} c " + VALUE1 + " d %{", result.getSubstituted());
+    assertEquals(result.getSubstituted(), result.getExpurgated());
+  }
+
+  /**
+   * Blank template: error.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testSubstituteVariables_Blank()
+  {
+    stringSubstituterBaseImpl.addSubstitution(KEY1, VALUE1);
+    stringSubstituterBaseImpl.substituteVariables(CommandTemplate.parse(" "));
+  }
+
   private static class FakeStringSubstituterBaseImpl extends StringSubstituterBaseImpl
   {
     @Override
@@ -0,0 +1,133 @@
+package bluegreen.manager.substituter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static bluegreen.manager.substituter.StringSubstituter.BLEEP;
+import static bluegreen.manager.substituter.StringSubstituter.CLOSE_EXPURGATE;
+import static bluegreen.manager.substituter.StringSubstituter.CLOSE_SUBSTITUTE;
+import static bluegreen.manager.substituter.StringSubstituter.OPEN_EXPURGATE;
+import static bluegreen.manager.substituter.StringSubstituter.OPEN_SUBSTITUTE;
+
+/**
+ * Compares the compiled command template against the old replace-every-key substitution, for growing numbers of
+ * substitution and environment variables, and times StringSubstituterBaseImpl.substituteVariables as tasks call it
+ * (against the real process environment).
+ * <p/>
+ * Not a unit test.  Run after 'mvn test-compile' with the test classpath:
+ * java -cp target/test-classes:target/classes:(test deps) org.openjdk.jmh.Main StringSubstituterBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringSubstituterBenchmark
+{
+  private static final String TEMPLATE = "PATH=%{PATH} HOME=%{HOME} ./deploy.sh --live %{liveEnv} --stage %{stageEnv}"
+      + " --db %{stageDbUrl} --user %{dbUser} --password %{{dbPassword}} --app %{applicationVmMap}"
+      + " --unknown %{notAVariable}";
+
+  @Param({ "10", "1000", "10000" })
+  private int numVariables;
+
+  private Map<String, String> substitutions;
+  private Map<String, String> environment;
+  private CommandTemplate commandTemplate;
+  private StringSubstituterBaseImpl stringSubstituter;
+
+  @Setup
+  public void setUp()
+  {
+    substitutions = new HashMap<String, String>();
+    environment = new HashMap<String, String>();
+    for (int idx = 0; idx < numVariables; ++idx)
+    {
+      substitutions.put("extraSubstitution" + idx, "value" + idx);
+      environment.put("ENV_VAR_" + idx, "/some/env/value/" + idx);
+    }
+    substitutions.put("liveEnv", "prod-blue");
+    substitutions.put("stageEnv", "prod-green");
+    substitutions.put("stageDbUrl", "jdbc:mysql://stagehost:3306/app");
+    substitutions.put("dbUser", "appuser");
+    substitutions.put("dbPassword", "s3cret");
+    substitutions.put("applicationVmMap", "10.0.0.1:8080,10.0.0.2:8080");
+    environment.put("PATH", "/usr/local/bin:/usr/bin:/bin");
+    environment.put("HOME", "/home/deploy");
+    commandTemplate = CommandTemplate.parse(TEMPLATE);
+    stringSubstituter = new StringSubstituterBaseImpl()
+    {
+      @Override
+      public void loadDataModel()
+      {
+      }
+    };
+    stringSubstituter.substitutions = substitutions;
+  }
+
+  /**
+   * Old algorithm: two full-string replacements per key per result, over both maps.
+   */
+  @Benchmark
+  public SubstituterResult replaceEveryKey()
+  {
+    SubstituterResult result = new SubstituterResult(TEMPLATE, TEMPLATE);
+    replaceEveryKey(result, substitutions);
+    replaceEveryKey(result, environment);
+    return result;
+  }
+
+  @Benchmark
+  public SubstituterResult parseAndRender()
+  {
+    return CommandTemplate.parse(TEMPLATE).render(substitutions, environment);
+  }
+
+  @Benchmark
+  public SubstituterResult renderCompiled()
+  {
+    return commandTemplate.render(substitutions, environment);
+  }
+
+  @Benchmark
+  public SubstituterResult substituteVariables()
+  {
+    return stringSubstituter.substituteVariables(TEMPLATE);
+  }
+
+  @Benchmark
+  public SubstituterResult substituteVariablesCompiled()
+  {
+    return stringSubstituter.substituteVariables(commandTemplate);
+  }
+
+  private static void replaceEveryKey(SubstituterResult result, Map<String, String> map)
+  {
+    String substituted = result.getSubstituted();
+    String expurgated = result.getExpurgated();
+    for (Map.Entry<String, String> entry : map.entrySet())
+    {
+      String normal = OPEN_SUBSTITUTE + entry.getKey() + CLOSE_SUBSTITUTE;
+      String secret = OPEN_EXPURGATE + entry.getKey() + CLOSE_EXPURGATE;
+      substituted = StringUtils.replace(StringUtils.replace(substituted, normal, entry.getValue()), secret, entry.getValue());
+      expurgated = StringUtils.replace(StringUtils.replace(expurgated, normal, entry.getValue()), secret, BLEEP);
+    }
+    result.setSubstituted(substituted);
+    result.setExpurgated(expurgated);
+  }
+}
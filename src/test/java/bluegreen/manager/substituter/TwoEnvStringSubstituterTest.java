@@ -1,5 +1,6 @@
 package bluegreen.manager.substituter;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Pattern;
@@ -18,6 +19,7 @@ import bluegreen.manager.model.domain.PhysicalDatabase;
 import bluegreen.manager.model.tx.EnvLoaderFactory;
 import bluegreen.manager.model.tx.TwoEnvLoader;
 import static bluegreen.manager.substituter.StringSubstituter.BLEEP;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -48,8 +50,8 @@ public class TwoEnvStringSubstituterTest
     when(mockEnvLoaderFactory.createTwo(FAKE_LIVE_ENV.getEnvName(), FAKE_STAGE_ENV.getEnvName())).thenReturn(mockTwoEnvLoader);
     when(mockTwoEnvLoader.getLiveApplicationVm()).thenReturn(FAKE_LIVE_ENV.getApplicationVms().get(0));
     when(mockTwoEnvLoader.getStageApplicationVm()).thenReturn(FAKE_STAGE_ENV.getApplicationVms().get(0));
-    when(mockTwoEnvLoader.getLivePhysicalDatabase()).thenReturn(FAKE_LIVE_ENV.getLogicalDatabases().get(0).getPhysicalDatabase());
-    when(mockTwoEnvLoader.getStagePhysicalDatabase()).thenReturn(FAKE_STAGE_ENV.getLogicalDatabases().get(0).getPhysicalDatabase());
+    when(mockTwoEnvLoader.getLivePhysicalDatabases()).thenReturn(Arrays.asList(FAKE_LIVE_ENV.getLogicalDatabases().get(0).getPhysicalDatabase()));
+    when(mockTwoEnvLoader.getStagePhysicalDatabases()).thenReturn(Arrays.asList(FAKE_STAGE_ENV.getLogicalDatabases().get(0).getPhysicalDatabase()));
   }
 
   @Test
@@ -83,4 +85,23 @@ public class TwoEnvStringSubstituterTest
     assertTrue(result.getSubstituted().contains("EXTRA=Extra Substitution Value"));
   }
 
-}
\ No newline at end of file
+  /**
+   * PHYSICAL_DB_MAP should list every live,stage pair.
+   */
+  @Test
+  public void testSubstituteVariables_MultipleDatabases()
+  {
+    Environment liveEnv = EnvironmentTestHelper.makeFakeFullEnvironment(0);
+    Environment stageEnv = EnvironmentTestHelper.makeFakeFullEnvironment(1);
+    PhysicalDatabase livePhysicalDatabaseA = EnvironmentTestHelper.addFakeDatabase(0, liveEnv, "logicalA", "liveA");
+    PhysicalDatabase stagePhysicalDatabaseA = EnvironmentTestHelper.addFakeDatabase(1, stageEnv, "logicalA", "stageA");
+    when(mockTwoEnvLoader.getLivePhysicalDatabases()).thenReturn(Arrays.asList(
+        liveEnv.getLogicalDatabases().get(0).getPhysicalDatabase(), livePhysicalDatabaseA));
+    when(mockTwoEnvLoader.getStagePhysicalDatabases()).thenReturn(Arrays.asList(
+        stageEnv.getLogicalDatabases().get(0).getPhysicalDatabase(), stagePhysicalDatabaseA));
+    twoEnvStringSubstituter.loadDataModel();
+    SubstituterResult result = twoEnvStringSubstituter.substituteVariables("PHYSICAL_DB_MAP=%{physicalDbMap};");
+    assertEquals("PHYSICAL_DB_MAP=physDb1,physDb2,liveA,stageA;", result.getSubstituted());
+  }
+
+}
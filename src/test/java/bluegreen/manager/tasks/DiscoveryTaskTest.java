@@ -67,7 +67,7 @@ public class DiscoveryTaskTest
     when(mockOneEnvLoader.getEnvironment()).thenReturn(fakeEnv);
     when(mockOneEnvLoader.getApplication()).thenReturn(FAKE_APPLICATION);
     when(mockApplicationClientFactory.create(anyString(), anyString())).thenReturn(mockApplicationClient);
-    when(mockApplicationClient.authenticate(FAKE_APPLICATION)).thenReturn(mockApplicationSession);
+    when(mockApplicationClient.openSession(FAKE_APPLICATION)).thenReturn(mockApplicationSession);
     when(mockOneEnvLoader.context()).thenReturn("(Context) ");
     discoveryTask.assign(1, fakeEnv.getEnvName());
   }
@@ -260,4 +260,13 @@ public class FreezeTaskTest extends TransitionTaskBaseTest
     testProcess_ThreeFlushingThenEnd(fakeProgress(DbFreezeMode.FLUSHING), TaskStatus.ERROR);
   }
 
-}
\ No newline at end of file
+  /**
+   * Tests the case where the application supports long-polling.
+   */
+  @Test
+  public void testProcess_LongPoll() throws InterruptedException
+  {
+    testProcess_LongPoll(freezeTask, DbFreezeMode.NORMAL, DbFreezeMode.FLUSHING, DbFreezeRest.PUT_ENTER_DB_FREEZE,
+        fakeProgress(DbFreezeMode.FROZEN));
+  }
+}
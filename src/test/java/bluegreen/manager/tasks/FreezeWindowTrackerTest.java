@@ -0,0 +1,134 @@
+package bluegreen.manager.tasks;
+
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import bluegreen.manager.client.app.DbFreezeMode;
+import bluegreen.manager.model.domain.FreezeWindow;
+import bluegreen.manager.utils.NowFactory;
+import static bluegreen.manager.utils.TimeFakery.START_TIME;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the recording of the freeze window and the freeze budget.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class FreezeWindowTrackerTest
+{
+  private static final String ENV_NAME = "liveEnv";
+  private static final long BUDGET_SECONDS = 600L;
+
+  @Mock
+  private NowFactory mockNowFactory;
+
+  private FreezeWindowTracker tracker;
+
+  @Before
+  public void setUp()
+  {
+    tracker = new FreezeWindowTracker(mockNowFactory, ENV_NAME, BUDGET_SECONDS);
+  }
+
+  private void at(long offsetMilliseconds)
+  {
+    when(mockNowFactory.now()).thenReturn(new Date(START_TIME.getTime() + offsetMilliseconds));
+  }
+
+  /**
+   * A complete window runs from the freeze request to NORMAL.
+   */
+  @Test
+  public void testMakeFreezeWindow_Complete()
+  {
+    at(0L);
+    tracker.transitionRequested(DbFreezeMode.FROZEN);
+    at(2000L);
+    tracker.transitionReached(DbFreezeMode.FROZEN);
+    at(3000L);
+    tracker.snapshotStarted();
+    at(90000L);
+    tracker.snapshotAvailable();
+    at(91000L);
+    tracker.transitionRequested(DbFreezeMode.NORMAL);
+    at(95000L);
+    tracker.transitionReached(DbFreezeMode.NORMAL);
+
+    FreezeWindow freezeWindow = tracker.makeFreezeWindow();
+    assertEquals(ENV_NAME, freezeWindow.getEnvName());
+    assertEquals(START_TIME.getTime(), freezeWindow.getFreezeRequestedTime().getTime());
+    assertEquals(START_TIME.getTime() + 90000L, freezeWindow.getSnapshotAvailableTime().getTime());
+    assertEquals(START_TIME.getTime() + 95000L, freezeWindow.getNormalTime().getTime());
+    assertEquals(95000L, freezeWindow.getWindowMilliseconds());
+    assertEquals(BUDGET_SECONDS, freezeWindow.getBudgetSeconds());
+    assertFalse(freezeWindow.isBudgetExceeded());
+    assertFalse(tracker.isThawPending());
+  }
+
+  /**
+   * A window that never got back to NORMAL ends at its last recorded step.
+   */
+  @Test
+  public void testMakeFreezeWindow_Incomplete()
+  {
+    at(0L);
+    tracker.transitionRequested(DbFreezeMode.FROZEN);
+    at(2000L);
+    tracker.transitionReached(DbFreezeMode.FROZEN);
+    at(3000L);
+    tracker.snapshotStarted();
+
+    FreezeWindow freezeWindow = tracker.makeFreezeWindow();
+    assertNull(freezeWindow.getSnapshotAvailableTime());
+    assertNull(freezeWindow.getNormalTime());
+    assertEquals(3000L, freezeWindow.getWindowMilliseconds());
+    assertTrue(tracker.isThawPending());
+  }
+
+  /**
+   * Budget counts down from the freeze request, and never goes negative.
+   */
+  @Test
+  public void testGetRemainingBudgetMilliseconds()
+  {
+    at(0L);
+    assertEquals(Long.valueOf(600000L), tracker.getRemainingBudgetMilliseconds());
+    tracker.transitionRequested(DbFreezeMode.FROZEN);
+    at(100000L);
+    assertEquals(Long.valueOf(500000L), tracker.getRemainingBudgetMilliseconds());
+    at(700000L);
+    assertEquals(Long.valueOf(0L), tracker.getRemainingBudgetMilliseconds());
+  }
+
+  /**
+   * Zero budget means unlimited.
+   */
+  @Test
+  public void testGetRemainingBudgetMilliseconds_Unlimited()
+  {
+    tracker = new FreezeWindowTracker(mockNowFactory, ENV_NAME, 0L);
+    at(0L);
+    tracker.transitionRequested(DbFreezeMode.FROZEN);
+    assertNull(tracker.getRemainingBudgetMilliseconds());
+  }
+
+  @Test
+  public void testBudgetExceeded()
+  {
+    at(0L);
+    tracker.transitionRequested(DbFreezeMode.FROZEN);
+    at(600000L);
+    tracker.budgetExceeded();
+    assertTrue(tracker.isBudgetExceeded());
+    assertTrue(tracker.isThawPending());
+    assertTrue(tracker.makeFreezeWindow().isBudgetExceeded());
+  }
+}
@@ -1,6 +1,8 @@
 package bluegreen.manager.tasks;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.io.IOUtils;
 import org.junit.Before;
@@ -8,11 +10,14 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 
 import bluegreen.manager.model.domain.Environment;
 import bluegreen.manager.model.domain.EnvironmentTestHelper;
 import bluegreen.manager.model.domain.TaskStatus;
+import bluegreen.manager.substituter.CommandTemplate;
 import bluegreen.manager.substituter.OneEnvStringSubstituter;
 import bluegreen.manager.substituter.StringSubstituterFactory;
 import bluegreen.manager.substituter.SubstituterResult;
@@ -20,11 +25,14 @@ import bluegreen.manager.substituter.TwoEnvStringSubstituter;
 import bluegreen.manager.utils.ProcessBuilderAdapter;
 import bluegreen.manager.utils.ProcessBuilderAdapterFactory;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
-import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyMapOf;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -68,17 +76,50 @@ public class LocalShellTaskTest
   {
     when(mockStringSubstituterFactory.createTwo(anyString(), anyString(), anyMapOf(String.class, String.class)))
         .thenReturn(mockTwoEnvStringSubstituter);
-    when(mockTwoEnvStringSubstituter.substituteVariables(anyString())).thenReturn(SUBSTITUTED_COMMAND);
+    when(mockTwoEnvStringSubstituter.substituteVariables(any(CommandTemplate.class))).thenReturn(SUBSTITUTED_COMMAND);
     localShellTask.assign(1, FAKE_LIVE_ENV.getEnvName(), FAKE_STAGE_ENV.getEnvName(), shellConfig, true);
   }
 
   private void setUpProcessBuilder(String fakeOutput, int fakeExitValue) throws IOException
   {
     when(mockProcessBuilderAdapterFactory.create(any(String[].class))).thenReturn(mockProcessBuilderAdapter);
-    when(mockProcessBuilderAdapter.redirectErrorStream(anyBoolean())).thenReturn(mockProcessBuilderAdapter);
     when(mockProcessBuilderAdapter.start()).thenReturn(mockProcess);
     when(mockProcess.getInputStream()).thenReturn(IOUtils.toInputStream(fakeOutput));
     when(mockProcess.exitValue()).thenReturn(fakeExitValue);
+    try
+    {
+      when(mockProcess.waitFor(anyLong(), any(TimeUnit.class))).thenReturn(true);
+    }
+    catch (InterruptedException e)
+    {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Makes the fake process run until destroyed.
+   */
+  private void setUpProcessRunsUntilDestroyed() throws InterruptedException
+  {
+    final AtomicBoolean destroyed = new AtomicBoolean();
+    doAnswer(new Answer<Void>()
+    {
+      @Override
+      public Void answer(InvocationOnMock invocation)
+      {
+        destroyed.set(true);
+        return null;
+      }
+    }).when(mockProcess).destroy();
+    when(mockProcess.waitFor(anyLong(), any(TimeUnit.class))).thenAnswer(new Answer<Boolean>()
+    {
+      @Override
+      public Boolean answer(InvocationOnMock invocation) throws InterruptedException
+      {
+        Thread.sleep(10L);
+        return destroyed.get();
+      }
+    });
   }
 
   private void verifyProcessBuilder() throws IOException
@@ -98,17 +139,45 @@ public class LocalShellTaskTest
     setUpProcessBuilder("Output: completed normally\nYes we really did\n", EXITCODE_SUCCESS);
     assertEquals(TaskStatus.DONE, localShellTask.process(false));
     verifyProcessBuilder();
+    assertEquals(EXITCODE_SUCCESS.intValue(), localShellTask.getProcessStats().getExitValue());
   }
 
   /**
    * Process output is flagged by the configured error regexp.
    */
   @Test
-  public void testProcess_RegexpError() throws IOException
+  public void testProcess_RegexpError() throws IOException, InterruptedException
   {
     setUpProcessBuilder("Output: An ERROR happened!\nBut still returning successful exitValue!!\n", EXITCODE_SUCCESS);
+    setUpProcessRunsUntilDestroyed();
     assertEquals(TaskStatus.ERROR, localShellTask.process(false));
     verifyProcessBuilder();
+    verify(mockProcess).destroy();
+  }
+
+  /**
+   * Process that runs past the configured timeout is terminated, and fails even with a successful exitValue.
+   */
+  @Test
+  public void testProcess_Timeout() throws IOException, InterruptedException
+  {
+    setUpProcessBuilder("Output: still working on it...\n", EXITCODE_SUCCESS);
+    setUpProcessRunsUntilDestroyed();
+    shellConfig.setTimeoutSeconds(1);
+    assertEquals(TaskStatus.ERROR, localShellTask.process(false));
+    verify(mockProcess).destroy();
+    assertTrue(localShellTask.getProcessStats().isTimedOut());
+  }
+
+  /**
+   * Output that never matches the error regexp does not kill the process.
+   */
+  @Test
+  public void testProcess_NoKillWhenClean() throws IOException
+  {
+    setUpProcessBuilder("Output: completed normally\n", EXITCODE_SUCCESS);
+    assertEquals(TaskStatus.DONE, localShellTask.process(false));
+    verify(mockProcess, never()).destroy();
   }
 
   /**
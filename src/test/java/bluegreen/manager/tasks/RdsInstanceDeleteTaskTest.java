@@ -67,6 +67,9 @@ public class RdsInstanceDeleteTaskTest
   @Mock
   private ThreadSleeper mockThreadSleeper;
 
+  @Mock
+  private PollingPolicyFactory mockPollingPolicyFactory;
+
   /*
   Note: the process(true) tests below will modify the deleteEnv.
    */
@@ -78,8 +81,7 @@ public class RdsInstanceDeleteTaskTest
   {
     when(mockEnvLoaderFactory.createOne(deleteEnv.getEnvName())).thenReturn(mockOneEnvLoader);
     when(mockOneEnvLoader.getEnvironment()).thenReturn(deleteEnv);
-    when(mockOneEnvLoader.getLogicalDatabase()).thenReturn(deleteEnv.getLogicalDatabases().get(0));
-    when(mockOneEnvLoader.getPhysicalDatabase()).thenReturn(deleteEnv.getLogicalDatabases().get(0).getPhysicalDatabase());
+    when(mockOneEnvLoader.getLogicalDatabases()).thenReturn(deleteEnv.getLogicalDatabases());
     rdsInstanceDeleteTask.assign(1, deleteEnv.getEnvName());
     rdsInstanceDeleteTask.loadDataModel();
   }
@@ -130,22 +132,22 @@ public class RdsInstanceDeleteTaskTest
     when(mockRdsClient.deleteInstance(instanceId)).thenReturn(fakeInstance(RdsInstanceStatus.DELETING/*status #0*/));
     if (thirdStatus != null)
     {
-      when(mockRdsClient.describeInstance(instanceId))
+      when(mockRdsClient.pollInstance(instanceId))
           .thenReturn(fakeInstance(RdsInstanceStatus.DELETING)) //Followup waitNum#1
           .thenReturn(fakeInstance(RdsInstanceStatus.DELETING)) //Followup waitNum#2
           .thenReturn(fakeInstance(thirdStatus));
     }
     else
     {
-      when(mockRdsClient.describeInstance(instanceId))
+      when(mockRdsClient.pollInstance(instanceId))
           .thenReturn(fakeInstance(RdsInstanceStatus.DELETING)) //Followup waitNum#1
           .thenReturn(fakeInstance(RdsInstanceStatus.DELETING)) //Followup waitNum#2
           .thenThrow(new DBInstanceNotFoundException("not found")); //Checker should catch it
     }
 
-    rdsInstanceDeleteTask.deleteInstance(false);
+    rdsInstanceDeleteTask.deleteInstance(fakeDeleteEnv.getLogicalDatabases().get(0), false);
 
-    verify(mockRdsClient, times(3)).describeInstance(instanceId);
+    verify(mockRdsClient, times(3)).pollInstance(instanceId);
   }
 
   /**
@@ -182,7 +184,7 @@ public class RdsInstanceDeleteTaskTest
     DBInstance dbInstance = fakeInstance(RdsInstanceStatus.DELETING);
     when(mockRdsAnalyzer.findSelfNamedParamGroupName(dbInstance)).thenReturn(paramGroupName);
 
-    rdsInstanceDeleteTask.deleteParameterGroup(dbInstance, false);
+    rdsInstanceDeleteTask.deleteParameterGroup(fakeDeleteEnv.getLogicalDatabases().get(0), dbInstance, false);
   }
 
   /**
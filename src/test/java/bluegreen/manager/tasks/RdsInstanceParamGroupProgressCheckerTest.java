@@ -136,11 +136,11 @@ public class RdsInstanceParamGroupProgressCheckerTest
   }
 
   /**
-   * Prepare the mock return value of describeInstance.
+   * Prepare the mock return value of pollInstance.
    */
   private void whenDescribeInstance(DBInstance dbInstance)
   {
-    when(mockRdsClient.describeInstance(INSTANCE_ID)).thenReturn(dbInstance);
+    when(mockRdsClient.pollInstance(INSTANCE_ID)).thenReturn(dbInstance);
   }
 
   /**
@@ -148,7 +148,7 @@ public class RdsInstanceParamGroupProgressCheckerTest
    */
   private void verifyDescribeInstance()
   {
-    verify(mockRdsClient).describeInstance(INSTANCE_ID);
+    verify(mockRdsClient).pollInstance(INSTANCE_ID);
   }
 
 
@@ -6,6 +6,7 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
 import com.amazonaws.services.rds.model.DBInstance;
+import com.amazonaws.services.rds.model.DBInstanceNotFoundException;
 
 import bluegreen.manager.client.aws.RdsClient;
 import bluegreen.manager.client.aws.RdsInstanceStatus;
@@ -66,6 +67,7 @@ public class RdsInstanceProgressCheckerTest
     testGetDescription("Modify", RdsInstanceStatus.MODIFYING);
     testGetDescription("Delete", RdsInstanceStatus.DELETING);
     testGetDescription("Reboot", RdsInstanceStatus.REBOOTING);
+    testGetDescription("Rename", RdsInstanceStatus.RENAMING);
   }
 
   /**
@@ -178,11 +180,11 @@ public class RdsInstanceProgressCheckerTest
   }
 
   /**
-   * Prepare the mock return value of describeInstance.
+   * Prepare the mock return value of pollInstance.
    */
   private void whenDescribeInstance(DBInstance dbInstance)
   {
-    when(mockRdsClient.describeInstance(INSTANCE_ID)).thenReturn(dbInstance);
+    when(mockRdsClient.pollInstance(INSTANCE_ID)).thenReturn(dbInstance);
   }
 
   /**
@@ -190,7 +192,7 @@ public class RdsInstanceProgressCheckerTest
    */
   private void verifyDescribeInstance()
   {
-    verify(mockRdsClient).describeInstance(INSTANCE_ID);
+    verify(mockRdsClient).pollInstance(INSTANCE_ID);
   }
 
 
@@ -341,4 +343,41 @@ public class RdsInstanceProgressCheckerTest
   {
     testFollowupCheck_Final(RdsInstanceStatus.REBOOTING, RdsInstanceStatus.AVAILABLE);
   }
-}
\ No newline at end of file
+
+  /**
+   * Rename: initial response still has the old name, which is fine, and cannot be done yet.
+   */
+  @Test
+  public void testInitialCheckRename_OldName()
+  {
+    RdsInstanceProgressChecker progressChecker = makeProgressChecker(
+        fakeInstance(ANOTHER_INSTANCE_ID, RdsInstanceStatus.AVAILABLE), RdsInstanceStatus.RENAMING);
+    progressChecker.initialCheck();
+    assertFalse(progressChecker.isDone());
+  }
+
+  /**
+   * Rename: new name not found yet = keep waiting.
+   */
+  @Test
+  public void testFollowupCheckRename_NotFoundYet()
+  {
+    RdsInstanceProgressChecker progressChecker = makeProgressChecker(
+        fakeInstance(ANOTHER_INSTANCE_ID, RdsInstanceStatus.AVAILABLE), RdsInstanceStatus.RENAMING);
+    when(mockRdsClient.pollInstance(INSTANCE_ID)).thenThrow(DBInstanceNotFoundException.class);
+    progressChecker.followupCheck(WAIT_NUM);
+    assertFalse(progressChecker.isDone());
+  }
+
+  @Test
+  public void testFollowupCheckRename_Intermediate()
+  {
+    testFollowupCheck_Intermediate(RdsInstanceStatus.RENAMING, RdsInstanceStatus.RENAMING);
+  }
+
+  @Test
+  public void testFollowupCheckRename_Final()
+  {
+    testFollowupCheck_Final(RdsInstanceStatus.RENAMING, RdsInstanceStatus.AVAILABLE);
+  }
+}
@@ -0,0 +1,143 @@
+package bluegreen.manager.tasks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.LogManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.services.rds.model.DBInstance;
+import com.amazonaws.services.rds.model.DBParameterGroupStatus;
+
+import bluegreen.manager.client.aws.RdsAnalyzer;
+import bluegreen.manager.client.aws.RdsClient;
+import bluegreen.manager.client.aws.RdsInstanceStatus;
+import bluegreen.manager.client.aws.RdsParameterApplyStatus;
+
+/**
+ * Runs the RDS instance progress checkers through a whole modify, from the initial check through a growing number of
+ * followup polls to done, against a fake RdsClient that replays canned instances.  Measures the checkers' own state
+ * machine (status matching, paramgroup lookup, log message building), not the waits between polls.
+ * <p/>
+ * The checkers' loggers are raised to WARN, as "is done" would otherwise be logged on every invocation.
+ * <p/>
+ * Not a unit test.  Run after 'mvn test-compile' with the test classpath:
+ * java -cp target/test-classes:target/classes:(test deps) org.openjdk.jmh.Main RdsProgressCheckerBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RdsProgressCheckerBenchmark
+{
+  private static final String INSTANCE_NAME = "prod-green-appdb";
+  private static final String PARAM_GROUP_NAME = "paramgroup-" + INSTANCE_NAME;
+  private static final int NUM_OTHER_PARAM_GROUPS = 10;
+
+  @Param({ "1", "10", "100" })
+  private int numPolls;
+
+  private RdsAnalyzer rdsAnalyzer = new RdsAnalyzer();
+  private DBInstance initialInstance;
+  private ReplayingRdsClient rdsClient;
+
+  @Setup
+  public void setUp()
+  {
+    LogManager.getLogger(RdsInstanceProgressChecker.class).setLevel(Level.WARN);
+    LogManager.getLogger(RdsInstanceParamGroupProgressChecker.class).setLevel(Level.WARN);
+    initialInstance = makeInstance(RdsInstanceStatus.MODIFYING, RdsParameterApplyStatus.APPLYING);
+    List<DBInstance> polledInstances = new ArrayList<DBInstance>();
+    for (int idx = 1; idx < numPolls; ++idx)
+    {
+      polledInstances.add(makeInstance(RdsInstanceStatus.MODIFYING, RdsParameterApplyStatus.APPLYING));
+    }
+    polledInstances.add(makeInstance(RdsInstanceStatus.AVAILABLE, RdsParameterApplyStatus.PENDING_REBOOT));
+    rdsClient = new ReplayingRdsClient(polledInstances);
+  }
+
+  private DBInstance makeInstance(RdsInstanceStatus instanceStatus, RdsParameterApplyStatus paramGroupStatus)
+  {
+    List<DBParameterGroupStatus> paramGroups = new ArrayList<DBParameterGroupStatus>();
+    for (int idx = 0; idx < NUM_OTHER_PARAM_GROUPS; ++idx)
+    {
+      paramGroups.add(new DBParameterGroupStatus().withDBParameterGroupName("paramgroup-other" + idx)
+          .withParameterApplyStatus(RdsParameterApplyStatus.IN_SYNC.toString()));
+    }
+    paramGroups.add(new DBParameterGroupStatus().withDBParameterGroupName(PARAM_GROUP_NAME)
+        .withParameterApplyStatus(paramGroupStatus.toString()));
+    return new DBInstance().withDBInstanceIdentifier(INSTANCE_NAME)
+        .withDBInstanceStatus(instanceStatus.toString())
+        .withDBParameterGroups(paramGroups);
+  }
+
+  @Benchmark
+  public DBInstance instanceProgress()
+  {
+    return runToDone(new RdsInstanceProgressChecker(INSTANCE_NAME, "", rdsClient, initialInstance,
+        RdsInstanceStatus.MODIFYING));
+  }
+
+  @Benchmark
+  public DBInstance instanceParamGroupProgress()
+  {
+    return runToDone(new RdsInstanceParamGroupProgressChecker(INSTANCE_NAME, PARAM_GROUP_NAME, "", rdsClient,
+        rdsAnalyzer, initialInstance, RdsInstanceStatus.MODIFYING));
+  }
+
+  private DBInstance runToDone(RdsInstanceProgressChecker progressChecker)
+  {
+    rdsClient.rewind();
+    progressChecker.initialCheck();
+    int waitNum = 0;
+    while (!progressChecker.isDone())
+    {
+      progressChecker.followupCheck(++waitNum);
+    }
+    if (progressChecker.getResult() == null)
+    {
+      throw new IllegalStateException(progressChecker.getDescription() + " did not succeed");
+    }
+    return progressChecker.getResult();
+  }
+
+  /**
+   * Answers each poll with the next canned instance.
+   */
+  private static class ReplayingRdsClient extends RdsClient
+  {
+    private final List<DBInstance> polledInstances;
+    private int nextIdx;
+
+    ReplayingRdsClient(List<DBInstance> polledInstances)
+    {
+      super(null);
+      this.polledInstances = polledInstances;
+    }
+
+    void rewind()
+    {
+      nextIdx = 0;
+    }
+
+    @Override
+    public DBInstance pollInstance(String instanceName)
+    {
+      return polledInstances.get(nextIdx++);
+    }
+  }
+}
@@ -119,7 +119,7 @@ public class RdsSnapshotDeletedProgressCheckerTest extends RdsSnapshotProgressCh
   public void testFollowupCheck_NotFoundExceptionIsDone()
   {
     RdsSnapshotDeletedProgressChecker progressChecker = makeProgressChecker(fakeSnapshot(SNAPSHOT_ID, RdsSnapshotStatus.DELETING));
-    when(mockRdsClient.describeSnapshot(SNAPSHOT_ID)).thenThrow(DBSnapshotNotFoundException.class);
+    when(mockRdsClient.pollSnapshot(SNAPSHOT_ID)).thenThrow(DBSnapshotNotFoundException.class);
     progressChecker.followupCheck(WAIT_NUM);
     assertTrue(progressChecker.isDone());
     assertTrue(progressChecker.getResult());
@@ -62,11 +62,11 @@ public class RdsSnapshotProgressCheckerTestBase
   }
 
   /**
-   * Prepare the mock return value of describeSnapshot.
+   * Prepare the mock return value of pollSnapshot.
    */
   protected void whenDescribeSnapshot(DBSnapshot dbSnapshot)
   {
-    when(mockRdsClient.describeSnapshot(SNAPSHOT_ID)).thenReturn(dbSnapshot);
+    when(mockRdsClient.pollSnapshot(SNAPSHOT_ID)).thenReturn(dbSnapshot);
   }
 
   /**
@@ -74,7 +74,7 @@ public class RdsSnapshotProgressCheckerTestBase
    */
   protected void verifyDescribeSnapshot()
   {
-    verify(mockRdsClient).describeSnapshot(SNAPSHOT_ID);
+    verify(mockRdsClient).pollSnapshot(SNAPSHOT_ID);
   }
 
   /**
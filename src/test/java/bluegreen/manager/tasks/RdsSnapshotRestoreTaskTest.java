@@ -3,17 +3,22 @@ package bluegreen.manager.tasks;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 
 import com.amazonaws.services.rds.model.DBInstance;
 import com.amazonaws.services.rds.model.DBParameterGroup;
@@ -26,6 +31,7 @@ import com.amazonaws.services.rds.model.Endpoint;
 import bluegreen.manager.client.aws.RdsAnalyzer;
 import bluegreen.manager.client.aws.RdsClient;
 import bluegreen.manager.client.aws.RdsClientFactory;
+import bluegreen.manager.client.aws.RdsDescribeCoalescer;
 import bluegreen.manager.client.aws.RdsInstanceStatus;
 import bluegreen.manager.client.aws.RdsParameterApplyStatus;
 import bluegreen.manager.client.aws.RdsSnapshotStatus;
@@ -36,15 +42,22 @@ import static bluegreen.manager.model.domain.DatabaseTestHelper.LIVE_PHYSICAL_NA
 import bluegreen.manager.model.domain.Environment;
 import bluegreen.manager.model.domain.LogicalDatabase;
 import bluegreen.manager.model.domain.PhysicalDatabase;
+import bluegreen.manager.model.domain.StandbyDatabase;
 import bluegreen.manager.model.domain.TaskStatus;
 import bluegreen.manager.model.tx.EnvironmentTx;
-import bluegreen.manager.utils.ThreadSleeper;
+import bluegreen.manager.model.tx.StandbyDatabaseTx;
+import bluegreen.manager.utils.NowFactory;
 import bluegreen.manager.utils.WaiterParameters;
+import bluegreen.manager.utils.WaiterScheduler;
+import static bluegreen.manager.utils.TimeFakery.START_TIME;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -58,6 +71,9 @@ public class RdsSnapshotRestoreTaskTest
   private static final PhysicalDatabase FAKE_PHYSICAL_DATABASE = DatabaseTestHelper.makeFakeLiveDatabase();
   private static final String STAGE_ENV_NAME = "stageEnv";
   private static final String STAGE_PHYSICAL_NAME = "spdata";
+  private static final String LIVE_LOGICAL_NAME_2 = "lldata2";
+  private static final String LIVE_PHYSICAL_NAME_2 = "lpdata2";
+  private static final String STAGE_PHYSICAL_NAME_2 = "spdata2";
   private static final String FAKE_SNAPSHOT_ID = "the-snapshot-123";
   private static final String LIVE_PARAM_GROUP_NAME = "live-param-group";
   private static final String SIMPLE_STAGE_PARAM_GROUP_NAME = "stage-param-group";
@@ -85,27 +101,66 @@ public class RdsSnapshotRestoreTaskTest
   @Mock
   private RdsClientFactory mockRdsClientFactory;
 
+  @Mock
+  private RdsDescribeCoalescer mockRdsDescribeCoalescer;
+
   @Spy //Would be nice to Mock instead of Spy, but would need more when().thenReturn() in restoreSetup
   private RdsAnalyzer mockRdsAnalyzer;
 
   @Mock
   private RdsClient mockRdsClient;
 
+  @Spy
+  private WaiterScheduler waiterScheduler = new WaiterScheduler();
+
   @Mock
-  private ThreadSleeper mockThreadSleeper;
+  private PollingPolicyFactory mockPollingPolicyFactory;
+
+  @Mock
+  private StandbyDatabaseTx mockStandbyDatabaseTx;
+
+  @Mock
+  private NowFactory mockNowFactory;
+
+  @Before
+  public void setUp()
+  {
+    waiterScheduler.startScheduler();
+    when(mockRdsClient.pollInstance(anyString())).thenCallRealMethod(); //No coalescer, so describes
+    when(mockRdsClient.pollSnapshot(anyString())).thenCallRealMethod();
+  }
+
+  @After
+  public void tearDown()
+  {
+    waiterScheduler.stopScheduler();
+  }
 
   /**
    * Initializes the object-under-test for the "normal" case where live/stage envs meet preconditions.
    */
   private void normalSetup()
   {
-    when(mockEnvironmentTx.findNamedEnv(LIVE_ENV_NAME)).thenReturn(FAKE_PHYSICAL_DATABASE.getLogicalDatabase().getEnvironment());
+    setup(FAKE_PHYSICAL_DATABASE.getLogicalDatabase().getEnvironment(), DB_MAP, RdsSnapshotRestoreTask.Phase.SNAPSHOT_AND_RESTORE);
+  }
+
+  private void setup(Environment liveEnv, Map<String, String> dbMap, RdsSnapshotRestoreTask.Phase phase)
+  {
+    when(mockEnvironmentTx.findNamedEnv(LIVE_ENV_NAME)).thenReturn(liveEnv);
     when(mockEnvironmentTx.findNamedEnv(STAGE_ENV_NAME)).thenReturn(null);
     when(mockRdsClientFactory.create()).thenReturn(mockRdsClient);
-    rdsSnapshotRestoreTask.assign(1, LIVE_ENV_NAME, STAGE_ENV_NAME, DB_MAP);
+    rdsSnapshotRestoreTask.assign(1, LIVE_ENV_NAME, STAGE_ENV_NAME, dbMap, phase);
     rdsSnapshotRestoreTask.loadDataModel();
   }
 
+  /**
+   * The one stage copy made by normalSetup.
+   */
+  private RdsStageCopy firstCopy()
+  {
+    return rdsSnapshotRestoreTask.getStageCopies().get(0);
+  }
+
   /**
    * Live context after assign should show env/logical/physical.
    */
@@ -113,7 +168,7 @@ public class RdsSnapshotRestoreTaskTest
   public void testLiveContext()
   {
     normalSetup();
-    String context = rdsSnapshotRestoreTask.liveContext();
+    String context = rdsSnapshotRestoreTask.liveContext(firstCopy());
     assertTrue(context.contains(LIVE_ENV_NAME));
     assertTrue(context.contains(LIVE_LOGICAL_NAME));
     assertTrue(context.contains(LIVE_PHYSICAL_NAME));
@@ -126,7 +181,7 @@ public class RdsSnapshotRestoreTaskTest
   public void testStageContext()
   {
     normalSetup();
-    String context = rdsSnapshotRestoreTask.stageContext();
+    String context = rdsSnapshotRestoreTask.stageContext(firstCopy());
     assertTrue(context.contains(STAGE_ENV_NAME));
     assertTrue(context.contains(LIVE_LOGICAL_NAME)); //Stage logical is taken from live logical name.
     assertTrue(context.contains(STAGE_PHYSICAL_NAME));
@@ -143,7 +198,7 @@ public class RdsSnapshotRestoreTaskTest
     when(mockRdsClient.describeSnapshot(anyString())).thenReturn(dbSnapshot).thenThrow(DBSnapshotNotFoundException.class);
     when(mockRdsClient.deleteSnapshot(anyString())).thenReturn(dbSnapshot);
 
-    rdsSnapshotRestoreTask.deletePriorLiveSnapshot(false/*noop*/);
+    rdsSnapshotRestoreTask.deletePriorLiveSnapshots(false/*noop*/);
 
     verify(mockRdsClient, times(2)).describeSnapshot(anyString());
     verify(mockRdsClient).deleteSnapshot(anyString());
@@ -158,7 +213,7 @@ public class RdsSnapshotRestoreTaskTest
     normalSetup();
     when(mockRdsClient.describeSnapshot(anyString())).thenThrow(DBSnapshotNotFoundException.class);
 
-    rdsSnapshotRestoreTask.deletePriorLiveSnapshot(false/*noop*/);
+    rdsSnapshotRestoreTask.deletePriorLiveSnapshots(false/*noop*/);
 
     verify(mockRdsClient).describeSnapshot(anyString());
     verify(mockRdsClient, never()).deleteSnapshot(anyString());
@@ -181,7 +236,7 @@ public class RdsSnapshotRestoreTaskTest
   private DBSnapshot makeFakeSnapshot(RdsSnapshotStatus status)
   {
     DBSnapshot dbSnapshot = new DBSnapshot();
-    dbSnapshot.setDBSnapshotIdentifier(rdsSnapshotRestoreTask.makeSnapshotId());
+    dbSnapshot.setDBSnapshotIdentifier(rdsSnapshotRestoreTask.makeSnapshotId(firstCopy()));
     dbSnapshot.setStatus(status.toString());
     return dbSnapshot;
   }
@@ -196,7 +251,8 @@ public class RdsSnapshotRestoreTaskTest
     DBSnapshot dbSnapshot = makeFakeSnapshot(RdsSnapshotStatus.AVAILABLE);
     when(mockRdsClient.createSnapshot(anyString(), anyString())).thenReturn(dbSnapshot);
 
-    assertEquals(dbSnapshot, rdsSnapshotRestoreTask.snapshotLive(false/*noop*/));
+    assertEquals(Arrays.asList(dbSnapshot), rdsSnapshotRestoreTask.snapshotLive(false/*noop*/));
+    assertEquals(dbSnapshot, firstCopy().getDbSnapshot());
   }
 
   /**
@@ -360,12 +416,14 @@ public class RdsSnapshotRestoreTaskTest
     normalSetup();
     RestoreStageFakeData data = restoreSetup(FAKE_SNAPSHOT_ID, stageParamGroupName,
         stageRestoreInstanceStatus, stageModifyInstanceStatus, stageModifyParamStatus);
+    firstCopy().setDbSnapshot(data.getDbSnapshot());
+    firstCopy().setStageParamGroup(data.getStageParamGroup());
+    firstCopy().setLiveInstance(data.getLiveInstance());
     DBInstance resultInstance = null;
     Throwable exception = null;
     try
     {
-      resultInstance = rdsSnapshotRestoreTask.restoreStage(data.getDbSnapshot(), data.getStageParamGroup(),
-          data.getLiveInstance(), false/*noop*/);
+      resultInstance = rdsSnapshotRestoreTask.restoreStage(false/*noop*/).get(0);
     }
     catch (Throwable e)
     {
@@ -431,9 +489,9 @@ public class RdsSnapshotRestoreTaskTest
   public void testInitModel()
   {
     normalSetup();
-    rdsSnapshotRestoreTask.initModel(STAGE_PHYSICAL_NAME);
-    LogicalDatabase stageLogicalDatabase = rdsSnapshotRestoreTask.getStageLogicalDatabase();
-    PhysicalDatabase stagePhysicalDatabase = rdsSnapshotRestoreTask.getStagePhysicalDatabase();
+    rdsSnapshotRestoreTask.initModel();
+    LogicalDatabase stageLogicalDatabase = firstCopy().getStageLogicalDatabase();
+    PhysicalDatabase stagePhysicalDatabase = firstCopy().getStagePhysicalDatabase();
     assertEquals(fakeStageEnv, stageLogicalDatabase.getEnvironment());
     assertEquals(LIVE_LOGICAL_NAME, stageLogicalDatabase.getLogicalName());
     assertEquals(STAGE_PHYSICAL_NAME, stagePhysicalDatabase.getInstanceName());
@@ -523,7 +581,7 @@ public class RdsSnapshotRestoreTaskTest
                                      boolean noop)
   {
     normalSetup();
-    String snapshotId = rdsSnapshotRestoreTask.makeSnapshotId();
+    String snapshotId = rdsSnapshotRestoreTask.makeSnapshotId(firstCopy());
     RestoreStageFakeData data = restoreSetup(snapshotId, UGLY_STAGE_PARAM_GROUP_NAME,
         stageRestoreInstanceStatus, stageModifyInstanceStatus, stageModifyParamStatus);
     when(mockRdsClient.describeInstance(LIVE_PHYSICAL_NAME)).thenReturn(data.getLiveInstance());
@@ -589,4 +647,209 @@ public class RdsSnapshotRestoreTaskTest
     verify(mockRdsClient).describeInstance(LIVE_PHYSICAL_NAME);
     verifyNoMoreInteractions(mockRdsClient);
   }
-}
\ No newline at end of file
+
+  /**
+   * Makes a live env with a second logical database, alongside the usual one.
+   */
+  private Environment makeTwoDatabaseLiveEnv()
+  {
+    Environment liveEnv = DatabaseTestHelper.makeFakeLiveDatabase().getLogicalDatabase().getEnvironment();
+    PhysicalDatabase livePhysicalDatabase2 = new PhysicalDatabase();
+    livePhysicalDatabase2.setDatabaseType(FAKE_PHYSICAL_DATABASE.getDatabaseType());
+    livePhysicalDatabase2.setInstanceName(LIVE_PHYSICAL_NAME_2);
+    livePhysicalDatabase2.setLive(true);
+    livePhysicalDatabase2.setUrl(FAKE_PHYSICAL_DATABASE.getUrl());
+    LogicalDatabase liveLogicalDatabase2 = new LogicalDatabase();
+    liveLogicalDatabase2.setLogicalName(LIVE_LOGICAL_NAME_2);
+    liveLogicalDatabase2.setPhysicalDatabase(livePhysicalDatabase2);
+    livePhysicalDatabase2.setLogicalDatabase(liveLogicalDatabase2);
+    liveLogicalDatabase2.setEnvironment(liveEnv);
+    liveEnv.getLogicalDatabases().add(liveLogicalDatabase2);
+    return liveEnv;
+  }
+
+  private Map<String, String> makeTwoDatabaseDbMap(String stagePhysicalName2)
+  {
+    Map<String, String> dbMap = new HashMap<String, String>();
+    dbMap.put(LIVE_LOGICAL_NAME, STAGE_PHYSICAL_NAME);
+    dbMap.put(LIVE_LOGICAL_NAME_2, stagePhysicalName2);
+    return dbMap;
+  }
+
+  /**
+   * Fakes RDS responses for any instance or snapshot name, already in the final expected state.
+   */
+  private void multiSetup()
+  {
+    final RestoreStageFakeData data = new RestoreStageFakeData(FAKE_SNAPSHOT_ID, SIMPLE_STAGE_PARAM_GROUP_NAME,
+        RdsInstanceStatus.AVAILABLE, RdsInstanceStatus.AVAILABLE, RdsParameterApplyStatus.PENDING_REBOOT);
+    when(mockRdsClient.describeInstance(anyString())).thenAnswer(new Answer<DBInstance>()
+    {
+      @Override
+      public DBInstance answer(InvocationOnMock invocation) throws Throwable
+      {
+        return data.makeInstance((String) invocation.getArguments()[0], RdsInstanceStatus.AVAILABLE);
+      }
+    });
+    when(mockRdsClient.describeSnapshot(anyString())).thenThrow(DBSnapshotNotFoundException.class);
+    when(mockRdsClient.createSnapshot(anyString(), anyString())).thenAnswer(new Answer<DBSnapshot>()
+    {
+      @Override
+      public DBSnapshot answer(InvocationOnMock invocation) throws Throwable
+      {
+        DBSnapshot dbSnapshot = new DBSnapshot();
+        dbSnapshot.setDBSnapshotIdentifier((String) invocation.getArguments()[0]);
+        dbSnapshot.setStatus(RdsSnapshotStatus.AVAILABLE.toString());
+        return dbSnapshot;
+      }
+    });
+    when(mockRdsAnalyzer.findSelfNamedOrDefaultParamGroupName(any(DBInstance.class))).thenReturn(LIVE_PARAM_GROUP_NAME);
+    when(mockRdsClient.copyParameterGroup(anyString(), anyString())).thenReturn(data.getStageParamGroup());
+    Answer<DBInstance> stageInstanceAnswer = new Answer<DBInstance>()
+    {
+      @Override
+      public DBInstance answer(InvocationOnMock invocation) throws Throwable
+      {
+        return data.makeInstance((String) invocation.getArguments()[0], RdsInstanceStatus.AVAILABLE,
+            SIMPLE_STAGE_PARAM_GROUP_NAME, RdsParameterApplyStatus.PENDING_REBOOT);
+      }
+    };
+    when(mockRdsClient.restoreInstanceFromSnapshot(anyString(), anyString(), anyString())).thenAnswer(stageInstanceAnswer);
+    when(mockRdsClient.modifyInstanceWithSecgrpParamgrp(anyString(), any(Collection.class), anyString())).thenAnswer(stageInstanceAnswer);
+    when(mockRdsClient.rebootInstance(anyString())).thenAnswer(stageInstanceAnswer);
+    when(mockRdsClient.renameInstance(anyString(), anyString())).thenAnswer(stageInstanceAnswer);
+  }
+
+  /**
+   * Pass case with two live databases: both snapshots are taken before either is restored, and one stage env is
+   * registered holding both stage databases.
+   */
+  @Test
+  public void testProcess_MultipleDatabases()
+  {
+    setup(makeTwoDatabaseLiveEnv(), makeTwoDatabaseDbMap(STAGE_PHYSICAL_NAME_2), RdsSnapshotRestoreTask.Phase.SNAPSHOT_AND_RESTORE);
+    multiSetup();
+
+    assertEquals(TaskStatus.DONE, rdsSnapshotRestoreTask.process(false));
+
+    InOrder inOrder = inOrder(mockRdsClient);
+    inOrder.verify(mockRdsClient, times(2)).createSnapshot(anyString(), anyString());
+    inOrder.verify(mockRdsClient, times(2)).restoreInstanceFromSnapshot(anyString(), anyString(), anyString());
+    inOrder.verify(mockRdsClient, times(2)).modifyInstanceWithSecgrpParamgrp(anyString(), any(Collection.class), anyString());
+    inOrder.verify(mockRdsClient, times(2)).rebootInstance(anyString());
+    verify(mockRdsClient).createSnapshot(anyString(), eq(LIVE_PHYSICAL_NAME));
+    verify(mockRdsClient).createSnapshot(anyString(), eq(LIVE_PHYSICAL_NAME_2));
+    verify(mockRdsClient).restoreInstanceFromSnapshot(eq(STAGE_PHYSICAL_NAME), anyString(), anyString());
+    verify(mockRdsClient).restoreInstanceFromSnapshot(eq(STAGE_PHYSICAL_NAME_2), anyString(), anyString());
+    verify(mockEnvironmentTx).newEnvironment(any(Environment.class));
+    assertEquals(2, rdsSnapshotRestoreTask.getStageEnv().getLogicalDatabases().size());
+  }
+
+  /**
+   * Snapshot phase only: takes the snapshots but restores nothing.
+   */
+  @Test
+  public void testProcess_SnapshotPhase()
+  {
+    setup(makeTwoDatabaseLiveEnv(), makeTwoDatabaseDbMap(STAGE_PHYSICAL_NAME_2), RdsSnapshotRestoreTask.Phase.SNAPSHOT);
+    multiSetup();
+
+    assertEquals(TaskStatus.DONE, rdsSnapshotRestoreTask.process(false));
+
+    verify(mockRdsClient, times(2)).createSnapshot(anyString(), anyString());
+    verify(mockRdsClient, never()).restoreInstanceFromSnapshot(anyString(), anyString(), anyString());
+    verify(mockEnvironmentTx, never()).newEnvironment(any(Environment.class));
+  }
+
+  /**
+   * Restore phase only: finds the existing snapshots instead of taking new ones.
+   */
+  @Test
+  public void testProcess_RestorePhase()
+  {
+    setup(FAKE_PHYSICAL_DATABASE.getLogicalDatabase().getEnvironment(), DB_MAP, RdsSnapshotRestoreTask.Phase.RESTORE);
+    multiSetup();
+    DBSnapshot dbSnapshot = makeFakeSnapshot(RdsSnapshotStatus.AVAILABLE);
+    doReturn(dbSnapshot).when(mockRdsClient).describeSnapshot(dbSnapshot.getDBSnapshotIdentifier());
+
+    assertEquals(TaskStatus.DONE, rdsSnapshotRestoreTask.process(false));
+
+    verify(mockRdsClient, never()).deleteSnapshot(anyString());
+    verify(mockRdsClient, never()).createSnapshot(anyString(), anyString());
+    verify(mockRdsClient).restoreInstanceFromSnapshot(STAGE_PHYSICAL_NAME, dbSnapshot.getDBSnapshotIdentifier(), SUBNET_GROUP);
+  }
+
+  /**
+   * Restore phase only: error if the snapshot is not available.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testProcess_RestorePhaseSnapshotNotAvailable()
+  {
+    setup(FAKE_PHYSICAL_DATABASE.getLogicalDatabase().getEnvironment(), DB_MAP, RdsSnapshotRestoreTask.Phase.RESTORE);
+    multiSetup();
+    doReturn(makeFakeSnapshot(RdsSnapshotStatus.CREATING)).when(mockRdsClient).describeSnapshot(anyString());
+
+    rdsSnapshotRestoreTask.process(false);
+  }
+
+  /**
+   * Restore phase with the standby pool enabled: the first database claims a standby and renames it, the second has
+   * none ready so restores from its snapshot as usual.
+   */
+  @Test
+  public void testProcess_ClaimStandby()
+  {
+    setup(makeTwoDatabaseLiveEnv(), makeTwoDatabaseDbMap(STAGE_PHYSICAL_NAME_2), RdsSnapshotRestoreTask.Phase.RESTORE);
+    multiSetup();
+    doReturn(makeFakeSnapshot(RdsSnapshotStatus.AVAILABLE)).when(mockRdsClient).describeSnapshot(anyString());
+    rdsSnapshotRestoreTask.setStandbyEnabled(true);
+    when(mockNowFactory.now()).thenReturn(START_TIME);
+    StandbyDatabase standbyDatabase = new StandbyDatabase();
+    standbyDatabase.setId(7L);
+    standbyDatabase.setInstanceName("bgstandby-1");
+    when(mockStandbyDatabaseTx.claim(eq(LIVE_ENV_NAME), eq(LIVE_LOGICAL_NAME), any(Date.class), anyString()))
+        .thenReturn(standbyDatabase);
+
+    assertEquals(TaskStatus.DONE, rdsSnapshotRestoreTask.process(false));
+
+    verify(mockRdsClient).renameInstance("bgstandby-1", STAGE_PHYSICAL_NAME);
+    verify(mockRdsClient, never()).restoreInstanceFromSnapshot(eq(STAGE_PHYSICAL_NAME), anyString(), anyString());
+    verify(mockRdsClient).restoreInstanceFromSnapshot(eq(STAGE_PHYSICAL_NAME_2), anyString(), anyString());
+    verify(mockRdsClient, times(2)).rebootInstance(anyString());
+    verify(mockStandbyDatabaseTx).forget(7L);
+  }
+
+  /**
+   * Standby pool disabled by default: nothing is claimed.
+   */
+  @Test
+  public void testProcess_StandbyDisabled()
+  {
+    setup(FAKE_PHYSICAL_DATABASE.getLogicalDatabase().getEnvironment(), DB_MAP, RdsSnapshotRestoreTask.Phase.RESTORE);
+    multiSetup();
+    doReturn(makeFakeSnapshot(RdsSnapshotStatus.AVAILABLE)).when(mockRdsClient).describeSnapshot(anyString());
+
+    rdsSnapshotRestoreTask.process(false);
+
+    verify(mockStandbyDatabaseTx, never()).claim(anyString(), anyString(), any(Date.class), anyString());
+    verify(mockStandbyDatabaseTx, never()).forget(anyLong());
+  }
+
+  /**
+   * Two live databases cannot share a stage instname.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testLoadDataModel_DuplicateStageName()
+  {
+    setup(makeTwoDatabaseLiveEnv(), makeTwoDatabaseDbMap(STAGE_PHYSICAL_NAME), RdsSnapshotRestoreTask.Phase.SNAPSHOT_AND_RESTORE);
+  }
+
+  /**
+   * Every live database must be mapped.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testLoadDataModel_Unmapped()
+  {
+    setup(makeTwoDatabaseLiveEnv(), DB_MAP, RdsSnapshotRestoreTask.Phase.SNAPSHOT_AND_RESTORE);
+  }
+}
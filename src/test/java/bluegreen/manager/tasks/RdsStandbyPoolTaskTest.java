@@ -0,0 +1,372 @@
+package bluegreen.manager.tasks;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import com.amazonaws.services.rds.model.DBInstance;
+import com.amazonaws.services.rds.model.DBInstanceNotFoundException;
+import com.amazonaws.services.rds.model.DBSnapshot;
+import com.amazonaws.services.rds.model.DBSnapshotNotFoundException;
+
+import bluegreen.manager.client.aws.RdsClient;
+import bluegreen.manager.client.aws.RdsClientFactory;
+import bluegreen.manager.client.aws.RdsDescribeCoalescer;
+import bluegreen.manager.client.aws.RdsInstanceStatus;
+import bluegreen.manager.client.aws.RdsSnapshotStatus;
+import bluegreen.manager.model.domain.DatabaseTestHelper;
+import static bluegreen.manager.model.domain.DatabaseTestHelper.LIVE_ENV_NAME;
+import static bluegreen.manager.model.domain.DatabaseTestHelper.LIVE_LOGICAL_NAME;
+import bluegreen.manager.model.domain.StandbyDatabase;
+import bluegreen.manager.model.domain.StandbyStatus;
+import bluegreen.manager.model.domain.TaskStatus;
+import bluegreen.manager.model.tx.EnvironmentTx;
+import bluegreen.manager.model.tx.StandbyDatabaseTx;
+import bluegreen.manager.utils.NowFactory;
+import bluegreen.manager.utils.WaiterParameters;
+import bluegreen.manager.utils.WaiterScheduler;
+import static bluegreen.manager.utils.TimeFakery.START_TIME;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests retiring and building of standbys in the warm pool.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class RdsStandbyPoolTaskTest
+{
+  private static final long MINUTE = 60L * 1000L;
+  private static final Date SNAPSHOT_TIME = new Date(START_TIME.getTime() - 10L * MINUTE);
+
+  @InjectMocks
+  private RdsStandbyPoolTask rdsStandbyPoolTask;
+
+  @Spy
+  protected WaiterParameters fakeWaiterParameters = new WaiterParameters(10L, 10L, 2, 20);
+
+  @Mock
+  private EnvironmentTx mockEnvironmentTx;
+
+  @Mock
+  private StandbyDatabaseTx mockStandbyDatabaseTx;
+
+  @Mock
+  private RdsClientFactory mockRdsClientFactory;
+
+  @Mock
+  private RdsDescribeCoalescer mockRdsDescribeCoalescer;
+
+  @Mock
+  private RdsClient mockRdsClient;
+
+  @Spy
+  private WaiterScheduler waiterScheduler = new WaiterScheduler();
+
+  @Mock
+  private PollingPolicyFactory mockPollingPolicyFactory;
+
+  @Mock
+  private NowFactory mockNowFactory;
+
+  private long nextStandbyId = 100L;
+
+  @Before
+  public void setUp()
+  {
+    waiterScheduler.startScheduler();
+    when(mockRdsClient.pollInstance(anyString())).thenCallRealMethod(); //No coalescer, so describes
+    when(mockRdsClient.pollSnapshot(anyString())).thenCallRealMethod();
+    when(mockEnvironmentTx.findNamedEnv(LIVE_ENV_NAME))
+        .thenReturn(DatabaseTestHelper.makeFakeLiveDatabase().getLogicalDatabase().getEnvironment());
+    when(mockRdsClientFactory.create()).thenReturn(mockRdsClient);
+    when(mockNowFactory.now()).thenReturn(START_TIME);
+    when(mockRdsClient.describeInstance(anyString())).thenReturn(new DBInstance());
+    when(mockStandbyDatabaseTx.newStandby(anyString(), anyString(), anyString(), anyString(), any(Date.class), anyString()))
+        .thenAnswer(new Answer<StandbyDatabase>()
+        {
+          @Override
+          public StandbyDatabase answer(InvocationOnMock invocation) throws Throwable
+          {
+            return makeFakeStandby((String) invocation.getArguments()[2], StandbyStatus.BUILDING,
+                (Date) invocation.getArguments()[4]);
+          }
+        });
+    when(mockRdsClient.copySnapshot(anyString(), anyString())).thenAnswer(new Answer<DBSnapshot>()
+    {
+      @Override
+      public DBSnapshot answer(InvocationOnMock invocation) throws Throwable
+      {
+        return makeFakeSnapshot((String) invocation.getArguments()[1], RdsSnapshotStatus.AVAILABLE);
+      }
+    });
+  }
+
+  @After
+  public void tearDown()
+  {
+    waiterScheduler.stopScheduler();
+  }
+
+  private StandbyDatabase makeFakeStandby(String instanceName, StandbyStatus status, Date snapshotTime)
+  {
+    StandbyDatabase standbyDatabase = new StandbyDatabase();
+    standbyDatabase.setId(nextStandbyId++);
+    standbyDatabase.setEnvName(LIVE_ENV_NAME);
+    standbyDatabase.setLogicalName(LIVE_LOGICAL_NAME);
+    standbyDatabase.setInstanceName(instanceName);
+    standbyDatabase.setStatus(status);
+    standbyDatabase.setSnapshotTime(new Timestamp(snapshotTime.getTime()));
+    return standbyDatabase;
+  }
+
+  private DBSnapshot makeFakeSnapshot(String snapshotId, RdsSnapshotStatus status)
+  {
+    DBSnapshot dbSnapshot = new DBSnapshot();
+    dbSnapshot.setDBSnapshotIdentifier(snapshotId);
+    dbSnapshot.setStatus(status.toString());
+    dbSnapshot.setSnapshotCreateTime(SNAPSHOT_TIME);
+    return dbSnapshot;
+  }
+
+  private void whenSnapshotAvailable()
+  {
+    when(mockRdsClient.describeSnapshot(anyString())).thenReturn(makeFakeSnapshot("the-snapshot", RdsSnapshotStatus.AVAILABLE));
+  }
+
+  /**
+   * Id of the pool's copy of the bluegreen snapshot taken at SNAPSHOT_TIME.
+   */
+  private String makeSnapshotCopyId()
+  {
+    return rdsStandbyPoolTask.makeSnapshotCopyId(DatabaseTestHelper.makeFakeLiveDatabase().getLogicalDatabase(),
+        makeFakeSnapshot("the-snapshot", RdsSnapshotStatus.AVAILABLE));
+  }
+
+  /**
+   * Restored standbys come back in the given status, under the requested name.
+   */
+  private void whenRestore(final RdsInstanceStatus status)
+  {
+    when(mockRdsClient.restoreInstanceFromSnapshot(anyString(), anyString(), anyString())).thenAnswer(new Answer<DBInstance>()
+    {
+      @Override
+      public DBInstance answer(InvocationOnMock invocation) throws Throwable
+      {
+        DBInstance dbInstance = new DBInstance();
+        dbInstance.setDBInstanceIdentifier((String) invocation.getArguments()[0]);
+        dbInstance.setDBInstanceStatus(status.toString());
+        return dbInstance;
+      }
+    });
+  }
+
+  private void whenStandbys(StandbyDatabase... standbys)
+  {
+    when(mockStandbyDatabaseTx.findStandbys(LIVE_ENV_NAME, LIVE_LOGICAL_NAME))
+        .thenReturn(new ArrayList<StandbyDatabase>(Arrays.asList(standbys)));
+  }
+
+  /**
+   * Empty pool: copies the snapshot, builds poolSize standbys from the copy, and marks them ready.
+   */
+  @Test
+  public void testProcess_EmptyPool()
+  {
+    whenSnapshotAvailable();
+    whenRestore(RdsInstanceStatus.AVAILABLE);
+    whenStandbys();
+    rdsStandbyPoolTask.assign(1, LIVE_ENV_NAME, 2);
+
+    assertEquals(TaskStatus.DONE, rdsStandbyPoolTask.process(false));
+
+    String snapshotCopyId = makeSnapshotCopyId();
+    verify(mockRdsClient).copySnapshot("the-snapshot", snapshotCopyId);
+    verify(mockRdsClient, times(2)).restoreInstanceFromSnapshot(anyString(), eq(snapshotCopyId), anyString());
+    verify(mockRdsClient, never()).restoreInstanceFromSnapshot(anyString(), eq("the-snapshot"), anyString());
+    verify(mockStandbyDatabaseTx, times(2)).newStandby(anyString(), anyString(), anyString(), eq(snapshotCopyId),
+        any(Date.class), anyString());
+    verify(mockStandbyDatabaseTx, times(2)).markReady(anyLong());
+  }
+
+  /**
+   * A copy made by an earlier run is reused, not copied again.
+   */
+  @Test
+  public void testProcess_SnapshotCopyExists()
+  {
+    rdsStandbyPoolTask.assign(1, LIVE_ENV_NAME, 1);
+    whenSnapshotAvailable();
+    whenRestore(RdsInstanceStatus.AVAILABLE);
+    whenStandbys();
+    String snapshotCopyId = makeSnapshotCopyId();
+    when(mockRdsClient.describeInstanceSnapshots(anyString()))
+        .thenReturn(Arrays.asList(makeFakeSnapshot(snapshotCopyId, RdsSnapshotStatus.AVAILABLE)));
+
+    rdsStandbyPoolTask.process(false);
+
+    verify(mockRdsClient, never()).copySnapshot(anyString(), anyString());
+    verify(mockRdsClient).restoreInstanceFromSnapshot(anyString(), eq(snapshotCopyId), anyString());
+    verify(mockRdsClient, never()).deleteSnapshot(anyString());
+  }
+
+  /**
+   * Copies of older snapshots are deleted once no standby needs them.  The bluegreen snapshot and copies still in use
+   * are kept.
+   */
+  @Test
+  public void testProcess_DeleteUnusedSnapshotCopies()
+  {
+    rdsStandbyPoolTask.assign(1, LIVE_ENV_NAME, 1);
+    whenSnapshotAvailable();
+    String snapshotCopyId = makeSnapshotCopyId();
+    String usedCopyId = snapshotCopyId + "used";
+    String unusedCopyId = snapshotCopyId + "unused";
+    StandbyDatabase readyStandby = makeFakeStandby("bgstandby-ready", StandbyStatus.READY, SNAPSHOT_TIME);
+    readyStandby.setSnapshotId(usedCopyId);
+    whenStandbys(readyStandby);
+    when(mockRdsClient.describeInstanceSnapshots(anyString())).thenReturn(Arrays.asList(
+        makeFakeSnapshot("the-snapshot", RdsSnapshotStatus.AVAILABLE),
+        makeFakeSnapshot(snapshotCopyId, RdsSnapshotStatus.AVAILABLE),
+        makeFakeSnapshot(usedCopyId, RdsSnapshotStatus.AVAILABLE),
+        makeFakeSnapshot(unusedCopyId, RdsSnapshotStatus.AVAILABLE)));
+
+    rdsStandbyPoolTask.process(false);
+
+    verify(mockRdsClient).deleteSnapshot(unusedCopyId);
+    verify(mockRdsClient, times(1)).deleteSnapshot(anyString());
+  }
+
+  /**
+   * A ready standby from an older snapshot is retired and replaced.
+   */
+  @Test
+  public void testProcess_Superseded()
+  {
+    whenSnapshotAvailable();
+    whenRestore(RdsInstanceStatus.AVAILABLE);
+    StandbyDatabase oldStandby = makeFakeStandby("bgstandby-old", StandbyStatus.READY,
+        new Date(SNAPSHOT_TIME.getTime() - 60L * MINUTE));
+    whenStandbys(oldStandby);
+    rdsStandbyPoolTask.assign(1, LIVE_ENV_NAME, 1);
+
+    rdsStandbyPoolTask.process(false);
+
+    verify(mockRdsClient).deleteInstance("bgstandby-old");
+    verify(mockStandbyDatabaseTx).forget(oldStandby.getId());
+    verify(mockRdsClient).restoreInstanceFromSnapshot(anyString(), anyString(), anyString());
+  }
+
+  /**
+   * An expired claim is cleaned up even if its instance is gone, and a current ready standby fills the pool.
+   */
+  @Test
+  public void testProcess_ExpiredClaim()
+  {
+    whenSnapshotAvailable();
+    StandbyDatabase claimedStandby = makeFakeStandby("bgstandby-claimed", StandbyStatus.CLAIMED, SNAPSHOT_TIME);
+    claimedStandby.setLeaseTime(new Timestamp(START_TIME.getTime() - 24L * 60L * MINUTE));
+    StandbyDatabase readyStandby = makeFakeStandby("bgstandby-ready", StandbyStatus.READY, SNAPSHOT_TIME);
+    whenStandbys(claimedStandby, readyStandby);
+    when(mockRdsClient.deleteInstance("bgstandby-claimed")).thenThrow(DBInstanceNotFoundException.class);
+    rdsStandbyPoolTask.assign(1, LIVE_ENV_NAME, 1);
+
+    rdsStandbyPoolTask.process(false);
+
+    verify(mockStandbyDatabaseTx).forget(claimedStandby.getId());
+    verify(mockRdsClient, never()).deleteInstance("bgstandby-ready");
+    verify(mockRdsClient, never()).restoreInstanceFromSnapshot(anyString(), anyString(), anyString());
+  }
+
+  /**
+   * No snapshot: nothing to build from, and not an error.
+   */
+  @Test
+  public void testProcess_NoSnapshot()
+  {
+    when(mockRdsClient.describeSnapshot(anyString())).thenThrow(DBSnapshotNotFoundException.class);
+    whenStandbys();
+    rdsStandbyPoolTask.assign(1, LIVE_ENV_NAME, 2);
+
+    assertEquals(TaskStatus.DONE, rdsStandbyPoolTask.process(false));
+
+    verify(mockRdsClient, never()).restoreInstanceFromSnapshot(anyString(), anyString(), anyString());
+  }
+
+  /**
+   * Snapshot older than the max age: not used.
+   */
+  @Test
+  public void testProcess_SnapshotTooOld()
+  {
+    whenSnapshotAvailable();
+    whenStandbys();
+    rdsStandbyPoolTask.setMaxSnapshotAgeMinutes(5L);
+    rdsStandbyPoolTask.assign(1, LIVE_ENV_NAME, 2);
+
+    rdsStandbyPoolTask.process(false);
+
+    verify(mockRdsClient, never()).restoreInstanceFromSnapshot(anyString(), anyString(), anyString());
+  }
+
+  /**
+   * Noop: no changes to RDS or to the pool.
+   */
+  @Test
+  public void testProcess_Noop()
+  {
+    whenSnapshotAvailable();
+    whenStandbys(makeFakeStandby("bgstandby-old", StandbyStatus.READY, new Date(SNAPSHOT_TIME.getTime() - MINUTE)));
+    rdsStandbyPoolTask.assign(1, LIVE_ENV_NAME, 2);
+
+    assertEquals(TaskStatus.NOOP, rdsStandbyPoolTask.process(true));
+
+    verify(mockRdsClient, never()).deleteInstance(anyString());
+    verify(mockRdsClient, never()).copySnapshot(anyString(), anyString());
+    verify(mockRdsClient, never()).restoreInstanceFromSnapshot(anyString(), anyString(), anyString());
+    verify(mockRdsClient, never()).deleteSnapshot(anyString());
+    verify(mockStandbyDatabaseTx, never()).forget(anyLong());
+  }
+
+  /**
+   * A standby that fails to restore is not marked ready, and fails the task.
+   */
+  @Test
+  public void testProcess_RestoreFails()
+  {
+    whenSnapshotAvailable();
+    whenRestore(RdsInstanceStatus.FAILED);
+    whenStandbys();
+    rdsStandbyPoolTask.assign(1, LIVE_ENV_NAME, 1);
+    try
+    {
+      rdsStandbyPoolTask.process(false);
+      fail();
+    }
+    catch (RuntimeException e)
+    {
+      assertTrue(e.getMessage().contains("did not become available"));
+    }
+    verify(mockStandbyDatabaseTx, never()).markReady(anyLong());
+  }
+}
@@ -10,11 +10,13 @@ import org.mockito.runners.MockitoJUnitRunner;
 import bluegreen.manager.client.ssh.SshClient;
 import bluegreen.manager.client.ssh.SshTarget;
 import bluegreen.manager.model.domain.TaskStatus;
+import bluegreen.manager.substituter.CommandTemplate;
 import bluegreen.manager.substituter.OneEnvStringSubstituter;
 import bluegreen.manager.substituter.StringSubstituterFactory;
 import bluegreen.manager.substituter.SubstituterResult;
 import bluegreen.manager.utils.ShellResult;
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyMap;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.verify;
@@ -50,7 +52,7 @@ public class RemoteShellTaskTest
   public void setUp()
   {
     when(mockStringSubstituterFactory.createOne(anyString(), anyMap())).thenReturn(mockOneEnvStringSubstituter);
-    when(mockOneEnvStringSubstituter.substituteVariables(anyString())).thenReturn(SUBSTITUTED_COMMAND);
+    when(mockOneEnvStringSubstituter.substituteVariables(any(CommandTemplate.class))).thenReturn(SUBSTITUTED_COMMAND);
     when(mockSshClient.execCommand(SUBSTITUTED_COMMAND)).thenReturn(new ShellResult(OUTPUT, EXIT_VALUE));
     remoteShellTask.assign(1, ENV_NAME, new ShellConfig(COMMAND, null, REGEXP_ERROR, null, null));
   }
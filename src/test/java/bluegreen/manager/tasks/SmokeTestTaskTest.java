@@ -56,7 +56,7 @@ public class SmokeTestTaskTest
     when(mockOneEnvLoader.getEnvironment()).thenReturn(fakeEnv);
     when(mockOneEnvLoader.getApplication()).thenReturn(FAKE_APPLICATION);
     when(mockApplicationClientFactory.create(anyString(), anyString())).thenReturn(mockApplicationClient);
-    when(mockApplicationClient.authenticate(FAKE_APPLICATION)).thenReturn(mockApplicationSession);
+    when(mockApplicationClient.openSession(FAKE_APPLICATION)).thenReturn(mockApplicationSession);
     when(mockOneEnvLoader.context()).thenReturn("(Context) ");
     smokeTestTask.assign(1, fakeEnv.getEnvName());
   }
@@ -74,6 +74,6 @@ public class SmokeTestTaskTest
   {
     assertEquals(TaskStatus.DONE, smokeTestTask.process(false));
     verify(mockOneEnvLoader).loadApplication();
-    verify(mockApplicationClient).authenticate(FAKE_APPLICATION);
+    verify(mockApplicationClient).openSession(FAKE_APPLICATION);
   }
 }
\ No newline at end of file
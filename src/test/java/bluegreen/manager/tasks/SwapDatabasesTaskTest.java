@@ -1,5 +1,7 @@
 package bluegreen.manager.tasks;
 
+import java.util.Arrays;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -46,9 +48,9 @@ public class SwapDatabasesTaskTest
   public void setUp()
   {
     when(mockEnvLoaderFactory.createTwo(fakeLiveEnv.getEnvName(), fakeStageEnv.getEnvName())).thenReturn(mockTwoEnvLoader);
-    when(mockTwoEnvLoader.getLivePhysicalDatabase()).thenReturn(fakeLiveEnv.getLogicalDatabases().get(0).getPhysicalDatabase());
+    when(mockTwoEnvLoader.getLivePhysicalDatabases()).thenReturn(Arrays.asList(fakeLiveEnv.getLogicalDatabases().get(0).getPhysicalDatabase()));
     when(mockTwoEnvLoader.getStageEnv()).thenReturn(fakeStageEnv);
-    when(mockTwoEnvLoader.getStagePhysicalDatabase()).thenReturn(fakeStageEnv.getLogicalDatabases().get(0).getPhysicalDatabase());
+    when(mockTwoEnvLoader.getStagePhysicalDatabases()).thenReturn(Arrays.asList(fakeStageEnv.getLogicalDatabases().get(0).getPhysicalDatabase()));
     swapDatabasesTask.assign(1, fakeLiveEnv.getEnvName() /*old*/, fakeStageEnv.getEnvName() /*new*/);
   }
 
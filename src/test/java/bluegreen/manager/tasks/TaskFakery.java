@@ -89,6 +89,12 @@ public class TaskFakery
       {
         return makeFakeTaskName(idx);
       }
+
+      @Override
+      public boolean isIrreversible()
+      {
+        return false;
+      }
     };
   }
 
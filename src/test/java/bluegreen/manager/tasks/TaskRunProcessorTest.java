@@ -2,6 +2,7 @@ package bluegreen.manager.tasks;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
@@ -12,11 +13,14 @@ import bluegreen.manager.jobs.SkipRemarkHelper;
 import bluegreen.manager.model.domain.JobHistory;
 import bluegreen.manager.model.domain.TaskHistory;
 import bluegreen.manager.model.domain.TaskStatus;
-import bluegreen.manager.model.tx.TaskHistoryTx;
+import bluegreen.manager.model.tx.HistoryRecorder;
+import bluegreen.manager.utils.MetricRegistry;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -35,7 +39,10 @@ public class TaskRunProcessorTest
   private SkipRemarkHelper mockSkipRemarkHelper;
 
   @Mock
-  private TaskHistoryTx mockTaskHistoryTx;
+  private HistoryRecorder mockHistoryRecorder;
+
+  @Spy
+  private MetricRegistry metricRegistry = new MetricRegistry();
 
   private TaskFakery taskFakery = new TaskFakery();
   private JobFakery jobFakery = new JobFakery(taskFakery);
@@ -138,7 +145,7 @@ public class TaskRunProcessorTest
     TaskStatus taskStatus = testOpenProcessCloseTask(noop, mockTask, null);
 
     assertEquals(expectedStatus, taskStatus);
-    verifyZeroInteractions(mockTaskHistoryTx);
+    verifyZeroInteractions(mockHistoryRecorder);
     verify(mockTask).process(noop);
   }
 
@@ -160,9 +167,31 @@ public class TaskRunProcessorTest
     TaskStatus taskStatus = testOpenProcessCloseTask(noop, mockTask, mockTaskHistory);
 
     assertEquals(expectedStatus, taskStatus);
-    verify(mockTaskHistoryTx).newTaskHistoryProcessing(mockTask, null);
+    verify(mockHistoryRecorder).newTaskHistoryProcessing(mockTask, null);
     verify(mockTask).process(noop);
-    verify(mockTaskHistoryTx).closeTaskHistory(mockTaskHistory, expectedStatus);
+    verify(mockHistoryRecorder).closeTaskHistory(mockTaskHistory, expectedStatus);
+    verify(mockHistoryRecorder, never()).flush();
+  }
+
+  /**
+   * Tests that the history is flushed after opening an irreversible task and before processing it.
+   */
+  @Test
+  public void testOpenProcessCloseTask_Irreversible()
+  {
+    boolean noop = false;
+    Task mockTask = mock(Task.class);
+    when(mockTask.isIrreversible()).thenReturn(true);
+    when(mockTask.process(noop)).thenReturn(TaskStatus.DONE);
+    TaskHistory mockTaskHistory = mock(TaskHistory.class);
+
+    testOpenProcessCloseTask(noop, mockTask, mockTaskHistory);
+
+    InOrder inorder = inOrder(mockHistoryRecorder, mockTask);
+    inorder.verify(mockHistoryRecorder).newTaskHistoryProcessing(mockTask, null);
+    inorder.verify(mockHistoryRecorder).flush();
+    inorder.verify(mockTask).process(noop);
+    inorder.verify(mockHistoryRecorder).closeTaskHistory(mockTaskHistory, TaskStatus.DONE);
   }
 
   /**
@@ -178,7 +207,7 @@ public class TaskRunProcessorTest
     Task mockTask = mock(Task.class);
     when(mockTask.process(noop)).thenThrow(RuntimeException.class);
     TaskHistory mockTaskHistory = mock(TaskHistory.class);
-    when(mockTaskHistoryTx.newTaskHistoryProcessing(mockTask, null)).thenReturn(mockTaskHistory);
+    when(mockHistoryRecorder.newTaskHistoryProcessing(mockTask, null)).thenReturn(mockTaskHistory);
 
     boolean caught = false;
     TaskStatus taskStatus = null;
@@ -194,9 +223,27 @@ public class TaskRunProcessorTest
 
     assertTrue(caught);
     assertNull(taskStatus);
-    verify(mockTaskHistoryTx).newTaskHistoryProcessing(mockTask, null);
+    verify(mockHistoryRecorder).newTaskHistoryProcessing(mockTask, null);
     verify(mockTask).process(noop);
-    verify(mockTaskHistoryTx).closeTaskHistory(mockTaskHistory, TaskStatus.ERROR);
+    verify(mockHistoryRecorder).closeTaskHistory(mockTaskHistory, TaskStatus.ERROR);
+  }
+
+  /**
+   * Tests that an attempt is counted by status, and a processed task is timed.
+   */
+  @Test
+  public void testAttemptTask_Metrics()
+  {
+    Task mockTask = mock(Task.class);
+    when(mockTask.getName()).thenReturn("FakeTask");
+    when(mockTask.process(false)).thenReturn(TaskStatus.DONE);
+
+    taskRunProcessor.attemptTask(new TaskRun(mockTask, false, false, null, null));
+
+    assertEquals(1L, metricRegistry.counter("bluegreen_tasks_total", "",
+        "task", "FakeTask", "status", "DONE").getCount());
+    assertEquals(1L, metricRegistry.histogram("bluegreen_task_milliseconds", "", MetricRegistry.LONG_DURATION_BUCKETS,
+        "task", "FakeTask").getCount());
   }
 
   /**
@@ -210,7 +257,7 @@ public class TaskRunProcessorTest
     TaskRun taskRun = new TaskRun(mockTask, noop, force, newJobHistory, oldJobHistory);
     if (mockTaskHistory != null)
     {
-      when(mockTaskHistoryTx.newTaskHistoryProcessing(mockTask, newJobHistory)).thenReturn(mockTaskHistory);
+      when(mockHistoryRecorder.newTaskHistoryProcessing(mockTask, newJobHistory)).thenReturn(mockTaskHistory);
     }
 
     return taskRunProcessor.openProcessCloseTask(taskRun);
@@ -232,6 +279,6 @@ public class TaskRunProcessorTest
     TaskStatus taskStatus = taskRunProcessor.skipTaskHistory(taskRun);
 
     assertEquals(taskStatus, TaskStatus.SKIPPED);
-    verify(mockTaskHistoryTx).newTaskHistorySkipped(task, newJobHistory);
+    verify(mockHistoryRecorder).newTaskHistorySkipped(task, newJobHistory);
   }
 }
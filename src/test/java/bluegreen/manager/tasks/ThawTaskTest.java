@@ -260,4 +260,13 @@ public class ThawTaskTest extends TransitionTaskBaseTest
     testProcess_ThreeFlushingThenEnd(fakeProgress(DbFreezeMode.THAW), TaskStatus.ERROR);
   }
 
+  /**
+   * Tests the case where the application supports long-polling.
+   */
+  @Test
+  public void testProcess_LongPoll() throws InterruptedException
+  {
+    testProcess_LongPoll(thawTask, DbFreezeMode.FROZEN, DbFreezeMode.THAW, DbFreezeRest.PUT_EXIT_DB_FREEZE,
+        fakeProgress(DbFreezeMode.NORMAL));
+  }
 }
@@ -12,8 +12,11 @@ import bluegreen.manager.client.app.DbFreezeProgress;
 import bluegreen.manager.model.domain.Application;
 import static bluegreen.manager.tasks.TransitionTestHelper.TRANSITION_PARAMETERS;
 import static bluegreen.manager.tasks.TransitionTestHelper.VERB;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -21,6 +24,7 @@ public class TransitionProgressCheckerTest
 {
   private static final String LOG_CONTEXT = "(Log Context) ";
   private static final int WAIT_NUM = 1;
+  private static final int LONG_POLL_SECONDS = 10;
 
   @Mock
   private ApplicationClient mockApplicationClient;
@@ -43,6 +47,14 @@ public class TransitionProgressCheckerTest
         mockApplicationClient, mockApplicationSession, mockApplication);
   }
 
+  private TransitionProgressChecker makeLongPollingChecker()
+  {
+    TransitionProgressChecker progressChecker = new TransitionProgressChecker(TRANSITION_PARAMETERS, LOG_CONTEXT,
+        fakeProgress(DbFreezeMode.THAW), mockApplicationClient, mockApplicationSession, mockApplication, LONG_POLL_SECONDS);
+    progressChecker.initialCheck();
+    return progressChecker;
+  }
+
   private DbFreezeProgress fakeLockErrorProgress()
   {
     return transitionTestHelper.fakeLockErrorProgress();
@@ -206,4 +218,59 @@ public class TransitionProgressCheckerTest
     TransitionProgressChecker progressChecker = makeProgressChecker(fakeProgress(DbFreezeMode.THAW));
     assertFalse(progressChecker.timeout());
   }
-}
\ No newline at end of file
+
+  /**
+   * Long-poll sees the change of mode.  Done, good result, and no plain poll.
+   */
+  @Test
+  public void testFollowupCheck_LongPoll()
+  {
+    TransitionProgressChecker progressChecker = makeLongPollingChecker();
+    when(mockApplicationClient.getDbFreezeProgressChange(mockApplication, mockApplicationSession, DbFreezeMode.THAW,
+        LONG_POLL_SECONDS, WAIT_NUM)).thenReturn(fakeProgress(DbFreezeMode.NORMAL));
+
+    assertTrue(progressChecker.isLongPolling());
+    progressChecker.followupCheck(WAIT_NUM);
+
+    assertTrue(progressChecker.isDone());
+    assertTrue(progressChecker.getResult());
+    assertTrue(progressChecker.isLongPolling());
+    verify(mockApplicationClient, never()).getDbFreezeProgress(mockApplication, mockApplicationSession, WAIT_NUM);
+  }
+
+  /**
+   * Application answers the long-poll right away with the same mode, so it must have ignored the long-poll
+   * parameters.  Not done, and falls back to polling.
+   */
+  @Test
+  public void testFollowupCheck_LongPollIgnored()
+  {
+    TransitionProgressChecker progressChecker = makeLongPollingChecker();
+    when(mockApplicationClient.getDbFreezeProgressChange(mockApplication, mockApplicationSession, DbFreezeMode.THAW,
+        LONG_POLL_SECONDS, WAIT_NUM)).thenReturn(fakeProgress(DbFreezeMode.THAW));
+
+    progressChecker.followupCheck(WAIT_NUM);
+
+    assertFalse(progressChecker.isDone());
+    assertFalse(progressChecker.isLongPolling());
+  }
+
+  /**
+   * Application rejects the long-poll.  Falls back to a plain poll.
+   */
+  @Test
+  public void testFollowupCheck_LongPollRejected()
+  {
+    TransitionProgressChecker progressChecker = makeLongPollingChecker();
+    when(mockApplicationClient.getDbFreezeProgressChange(mockApplication, mockApplicationSession, DbFreezeMode.THAW,
+        LONG_POLL_SECONDS, WAIT_NUM)).thenThrow(new RuntimeException("GET: 400 Bad Request"));
+    when(mockApplicationClient.getDbFreezeProgress(mockApplication, mockApplicationSession, WAIT_NUM))
+        .thenReturn(fakeProgress(DbFreezeMode.NORMAL));
+
+    progressChecker.followupCheck(WAIT_NUM);
+
+    assertTrue(progressChecker.isDone());
+    assertEquals(Boolean.TRUE, progressChecker.getResult());
+    assertFalse(progressChecker.isLongPolling());
+  }
+}
@@ -16,6 +16,7 @@ import bluegreen.manager.model.domain.EnvironmentTestHelper;
 import bluegreen.manager.model.domain.TaskStatus;
 import bluegreen.manager.model.tx.EnvLoaderFactory;
 import bluegreen.manager.model.tx.OneEnvLoader;
+import bluegreen.manager.utils.FixedPollingPolicy;
 import bluegreen.manager.utils.ThreadSleeper;
 import bluegreen.manager.utils.WaiterParameters;
 import static org.junit.Assert.assertEquals;
@@ -59,6 +60,9 @@ public abstract class TransitionTaskBaseTest
   @Mock
   protected ThreadSleeper mockThreadSleeper;
 
+  @Mock
+  protected PollingPolicyFactory mockPollingPolicyFactory;
+
   @Mock
   protected Executor mockExecutor;
 
@@ -80,7 +84,9 @@ public abstract class TransitionTaskBaseTest
     when(mockOneEnvLoader.getEnvironment()).thenReturn(FAKE_APPLICATION.getApplicationVm().getEnvironment());
     when(mockOneEnvLoader.getApplication()).thenReturn(FAKE_APPLICATION);
     when(mockApplicationClientFactory.create(anyString(), anyString())).thenReturn(mockApplicationClient);
-    when(mockApplicationClient.authenticate(FAKE_APPLICATION)).thenReturn(fakeSession);
+    when(mockApplicationClient.openSession(FAKE_APPLICATION)).thenReturn(fakeSession);
+    when(mockPollingPolicyFactory.create(eq(fakeWaiterParameters), anyString()))
+        .thenReturn(new FixedPollingPolicy(fakeWaiterParameters));
     transitionTask.assignTransition(1, envName);
     transitionTask.loadDataModel();
     transitionTask.initApplicationSession();
@@ -335,6 +341,7 @@ public abstract class TransitionTaskBaseTest
         .thenReturn(fourthProgress);                                     //progress #3, after 3rd wait
     when(mockApplicationClient.putRequestTransition(eq(FAKE_APPLICATION), eq(fakeSession), eq(transitionMethodPath), anyInt()))
         .thenReturn(fakeProgress(transitionalMode)/*progress #0*/);
+    transitionTask.setLongPoll(false);
 
     TaskStatus taskStatus = transitionTask.process(false);
 
@@ -343,4 +350,27 @@ public abstract class TransitionTaskBaseTest
     verify(mockThreadSleeper, times(3)).sleep(anyLong());
   }
 
+  /**
+   * Tests the case where the application supports long-polling: the change to the end mode is seen by the first
+   * followup check, without sleeping in between.
+   */
+  protected void testProcess_LongPoll(TransitionTask transitionTask,
+                                      DbFreezeMode startMode,
+                                      DbFreezeMode transitionalMode,
+                                      String transitionMethodPath,
+                                      DbFreezeProgress endProgress) throws InterruptedException
+  {
+    whenGetDbFreezeProgress(fakeProgress(startMode));
+    when(mockApplicationClient.putRequestTransition(eq(FAKE_APPLICATION), eq(fakeSession), eq(transitionMethodPath), anyInt()))
+        .thenReturn(fakeProgress(transitionalMode));
+    when(mockApplicationClient.getDbFreezeProgressChange(eq(FAKE_APPLICATION), eq(fakeSession), eq(transitionalMode),
+        anyInt(), anyInt())).thenReturn(endProgress);
+
+    TaskStatus taskStatus = transitionTask.process(false);
+
+    assertEquals(TaskStatus.DONE, taskStatus);
+    verifyGetDbFreezeProgress();
+    verify(mockThreadSleeper).sleep(0L);
+  }
+
 }
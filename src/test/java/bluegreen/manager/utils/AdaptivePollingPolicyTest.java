@@ -0,0 +1,92 @@
+package bluegreen.manager.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the delays and timeout of the adaptive polling policy.
+ */
+public class AdaptivePollingPolicyTest
+{
+  private static final WaiterParameters WAITER_PARAMS = new WaiterParameters(10000L, 20000L, 1, 30);
+  private static final long EXPECTED_DURATION = 600000L;
+
+  private AdaptivePollingPolicy policy = new AdaptivePollingPolicy(WAITER_PARAMS, EXPECTED_DURATION);
+
+  /**
+   * Far from the expected finish, each delay halves the remaining time.
+   */
+  @Test
+  public void testGetDelay_Early()
+  {
+    assertEquals(75000L, policy.getDelayMilliseconds(3, 450000L));
+    assertEquals(37500L, policy.getDelayMilliseconds(4, 525000L));
+  }
+
+  /**
+   * The first delay is at most the initial delay, later ones at most a few followup delays, however long the
+   * expected duration.
+   */
+  @Test
+  public void testGetDelay_Capped()
+  {
+    assertEquals(10000L, policy.getDelayMilliseconds(1, 0L));
+    assertEquals(20000L * AdaptivePollingPolicy.MAX_DELAY_FACTOR, policy.getDelayMilliseconds(2, 10000L));
+    assertEquals(20000L * AdaptivePollingPolicy.MAX_DELAY_FACTOR, policy.getDelayMilliseconds(3, 300000L));
+  }
+
+  /**
+   * Near and just past the expected finish, polling is dense.
+   */
+  @Test
+  public void testGetDelay_NearFinish()
+  {
+    assertEquals(5000L, policy.getDenseDelayMilliseconds());
+    assertEquals(5000L, policy.getDelayMilliseconds(6, 595000L));
+    assertEquals(5000L, policy.getDelayMilliseconds(7, 700000L));
+  }
+
+  /**
+   * Long past the expected finish, polling falls back to the fixed followup delay.
+   */
+  @Test
+  public void testGetDelay_Overrun()
+  {
+    assertEquals(20000L, policy.getDelayMilliseconds(20, 800000L));
+  }
+
+  /**
+   * Adaptive polling makes fewer checks than fixed polling to reach the expected finish, and notices it sooner.
+   */
+  @Test
+  public void testFewerChecksLessLag()
+  {
+    int numAdaptiveChecks = 0;
+    long elapsed = 0L;
+    long lastDelay = 0L;
+    while (elapsed < EXPECTED_DURATION)
+    {
+      ++numAdaptiveChecks;
+      lastDelay = policy.getDelayMilliseconds(numAdaptiveChecks, elapsed);
+      elapsed += lastDelay;
+    }
+    final int numFixedChecks = (int) ((EXPECTED_DURATION - 10000L) / 20000L) + 1;
+    assertTrue(numAdaptiveChecks < numFixedChecks);
+    assertTrue(lastDelay < WAITER_PARAMS.getFollowupWaitDelayMilliseconds());
+  }
+
+  /**
+   * Timeout comes at the same wall-clock budget as fixed polling.
+   */
+  @Test
+  public void testIsExhausted()
+  {
+    final long budget = 10000L + 29 * 20000L;
+    assertFalse(policy.isExhausted(10, budget - 1));
+    assertTrue(policy.isExhausted(10, budget));
+    assertTrue(policy.isExhausted(30 * AdaptivePollingPolicy.DENSITY_FACTOR + 1, 0L));
+  }
+}
@@ -0,0 +1,68 @@
+package bluegreen.manager.utils;
+
+import org.junit.Test;
+
+import com.zaxxer.hikari.metrics.MetricsTracker;
+import com.zaxxer.hikari.metrics.PoolStats;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the collection of connection pool metrics.
+ */
+public class DataSourcePoolMetricsTest
+{
+  private DataSourcePoolMetrics dataSourcePoolMetrics = new DataSourcePoolMetrics();
+
+  /**
+   * No pool yet: counts are zero.
+   */
+  @Test
+  public void testNoPool()
+  {
+    assertEquals(0, dataSourcePoolMetrics.getActiveConnections());
+    assertEquals(0, dataSourcePoolMetrics.getIdleConnections());
+    assertEquals(0L, dataSourcePoolMetrics.getWaitHistogram().getCount());
+  }
+
+  /**
+   * Waits, usage and timeouts recorded by the pool are collected; counts come from the pool stats.
+   */
+  @Test
+  public void testCreate()
+  {
+    MetricsTracker tracker = dataSourcePoolMetrics.create("discovery", new FakePoolStats(3, 2, 1));
+    tracker.recordConnectionAcquiredNanos(5000000L);
+    tracker.recordConnectionAcquiredNanos(1000000L);
+    tracker.recordConnectionUsageMillis(40L);
+    tracker.recordConnectionTimeout();
+
+    assertEquals(2L, dataSourcePoolMetrics.getWaitHistogram().getCount());
+    assertEquals(5L, dataSourcePoolMetrics.getWaitHistogram().getMaxMilliseconds());
+    assertEquals(40L, dataSourcePoolMetrics.getUsageHistogram().getMaxMilliseconds());
+    assertEquals(1L, dataSourcePoolMetrics.getNumTimeouts());
+    assertEquals(3, dataSourcePoolMetrics.getActiveConnections());
+    assertEquals(2, dataSourcePoolMetrics.getIdleConnections());
+    assertEquals(5, dataSourcePoolMetrics.getTotalConnections());
+    assertEquals(1, dataSourcePoolMetrics.getPendingThreads());
+    assertTrue(dataSourcePoolMetrics.summarize().startsWith("Connection pool 'discovery': active=3, idle=2"));
+  }
+
+  private static class FakePoolStats extends PoolStats
+  {
+    private FakePoolStats(int active, int idle, int pending)
+    {
+      super(0L);
+      this.activeConnections = active;
+      this.idleConnections = idle;
+      this.totalConnections = active + idle;
+      this.pendingThreads = pending;
+    }
+
+    @Override
+    protected void update()
+    {
+      //Fixed
+    }
+  }
+}
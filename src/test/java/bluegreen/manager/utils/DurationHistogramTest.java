@@ -0,0 +1,83 @@
+package bluegreen.manager.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the bucketing and percentile estimates of the duration histogram.
+ */
+public class DurationHistogramTest
+{
+  private DurationHistogram durationHistogram = new DurationHistogram();
+
+  @Test
+  public void testEmpty()
+  {
+    assertEquals(0L, durationHistogram.getCount());
+    assertEquals(0L, durationHistogram.getMeanMilliseconds());
+    assertEquals(0L, durationHistogram.getPercentileMilliseconds(0.5));
+  }
+
+  /**
+   * Every duration falls within its bucket, and the bucket is at most 1/16 of its lower bound wide.
+   */
+  @Test
+  public void testBuckets()
+  {
+    for (long milliseconds : new long[] { 0L, 1L, 15L, 16L, 17L, 31L, 32L, 33L, 1000L, 65535L, 3600000L,
+        1L << 40, Long.MAX_VALUE })
+    {
+      int bucket = DurationHistogram.findBucket(milliseconds);
+      long upperBound = DurationHistogram.getBucketUpperBound(bucket);
+      long lowerBound = bucket == 0 ? 0L : DurationHistogram.getBucketUpperBound(bucket - 1) + 1;
+      assertTrue(milliseconds + " above bucket " + bucket, milliseconds <= upperBound);
+      assertTrue(milliseconds + " below bucket " + bucket, milliseconds >= lowerBound);
+      assertTrue(milliseconds + " in too wide a bucket", upperBound - lowerBound <= Math.max(0L, lowerBound / 16L));
+    }
+  }
+
+  /**
+   * Percentiles of long durations are within about 6% of exact, and never more than the max.
+   */
+  @Test
+  public void testPercentiles()
+  {
+    for (long seconds = 1; seconds <= 1000; ++seconds)
+    {
+      durationHistogram.record(seconds * 1000L);
+    }
+    assertEquals(1000L, durationHistogram.getCount());
+    assertEquals(500500L, durationHistogram.getMeanMilliseconds());
+    assertWithin(500000L, durationHistogram.getPercentileMilliseconds(0.5));
+    assertWithin(900000L, durationHistogram.getPercentileMilliseconds(0.9));
+    assertWithin(990000L, durationHistogram.getPercentileMilliseconds(0.99));
+    assertEquals(1000000L, durationHistogram.getPercentileMilliseconds(1.0));
+  }
+
+  private void assertWithin(long expected, long actual)
+  {
+    assertTrue(actual + " below " + expected, actual >= expected);
+    assertTrue(actual + " too far above " + expected, actual <= expected * 107L / 100L);
+  }
+
+  /**
+   * Adding merges counts, including buckets beyond those of the target.
+   */
+  @Test
+  public void testAdd()
+  {
+    DurationHistogram other = new DurationHistogram();
+    durationHistogram.record(10L);
+    other.record(7200000L);
+    other.record(-5L);
+
+    durationHistogram.add(other);
+
+    assertEquals(3L, durationHistogram.getCount());
+    assertEquals(7200000L, durationHistogram.getMaxMilliseconds());
+    assertEquals(0L, durationHistogram.getPercentileMilliseconds(0.3));
+    assertWithin(7200000L, durationHistogram.getPercentileMilliseconds(0.99));
+  }
+}
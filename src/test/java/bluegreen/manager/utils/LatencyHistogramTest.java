@@ -0,0 +1,56 @@
+package bluegreen.manager.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the bucketing and percentile estimates of the latency histogram.
+ */
+public class LatencyHistogramTest
+{
+  private LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+  @Test
+  public void testEmpty()
+  {
+    assertEquals(0L, latencyHistogram.getCount());
+    assertEquals(0L, latencyHistogram.getMeanMilliseconds());
+    assertEquals(0L, latencyHistogram.getPercentileMilliseconds(0.5));
+  }
+
+  /**
+   * Percentiles are bucket upper bounds, never more than the max.
+   */
+  @Test
+  public void testPercentiles()
+  {
+    for (int idx = 0; idx < 90; ++idx)
+    {
+      latencyHistogram.record(3L);
+    }
+    for (int idx = 0; idx < 10; ++idx)
+    {
+      latencyHistogram.record(100L);
+    }
+
+    assertEquals(100L, latencyHistogram.getCount());
+    assertEquals(12L, latencyHistogram.getMeanMilliseconds());
+    assertEquals(4L, latencyHistogram.getPercentileMilliseconds(0.5));
+    assertEquals(4L, latencyHistogram.getPercentileMilliseconds(0.9));
+    assertEquals(100L, latencyHistogram.getPercentileMilliseconds(0.99));
+    assertEquals(100L, latencyHistogram.getMaxMilliseconds());
+    assertTrue(latencyHistogram.summarize().startsWith("n=100, mean=12ms"));
+  }
+
+  /**
+   * Latencies beyond the last bucket are reported as the max.
+   */
+  @Test
+  public void testHuge()
+  {
+    latencyHistogram.record(1000000L);
+    assertEquals(1000000L, latencyHistogram.getPercentileMilliseconds(0.5));
+  }
+}
@@ -0,0 +1,186 @@
+package bluegreen.manager.utils;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the metric registry and its Prometheus text, JMX and file exports.
+ */
+public class MetricRegistryTest
+{
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private MetricRegistry metricRegistry = new MetricRegistry();
+
+  @After
+  public void tearDown()
+  {
+    metricRegistry.stopJmx();
+  }
+
+  /**
+   * The same name and labels give the same counter, other labels another.
+   */
+  @Test
+  public void testCounter()
+  {
+    Counter counter = metricRegistry.counter("bluegreen_things_total", "Things", "kind", "a");
+    counter.increment();
+    counter.add(2L);
+
+    assertSame(counter, metricRegistry.counter("bluegreen_things_total", "Things", "kind", "a"));
+    assertEquals(3L, counter.getCount());
+    assertEquals(0L, metricRegistry.counter("bluegreen_things_total", "Things", "kind", "b").getCount());
+  }
+
+  /**
+   * A name is one type of metric.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testCounter_TypeMismatch()
+  {
+    metricRegistry.counter("bluegreen_things", "Things");
+    metricRegistry.histogram("bluegreen_things", "Things");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCounter_OddLabels()
+  {
+    metricRegistry.counter("bluegreen_things_total", "Things", "kind");
+  }
+
+  /**
+   * Counters and gauges are written with help, type and escaped labels, families sorted by name.
+   */
+  @Test
+  public void testFormatPrometheus()
+  {
+    metricRegistry.gauge("bluegreen_level", "Current level", new Gauge()
+    {
+      @Override
+      public double getValue()
+      {
+        return 2.5;
+      }
+    });
+    metricRegistry.counter("bluegreen_calls_total", "Calls\nmade", "path", "a\"b\\c").increment();
+
+    assertEquals("# HELP bluegreen_calls_total Calls\\nmade\n"
+        + "# TYPE bluegreen_calls_total counter\n"
+        + "bluegreen_calls_total{path=\"a\\\"b\\\\c\"} 1\n"
+        + "# HELP bluegreen_level Current level\n"
+        + "# TYPE bluegreen_level gauge\n"
+        + "bluegreen_level 2.5\n", metricRegistry.formatPrometheus());
+  }
+
+  /**
+   * Histogram buckets are cumulative, and end with +Inf, sum and count.
+   */
+  @Test
+  public void testFormatPrometheus_Histogram()
+  {
+    LatencyHistogram histogram = metricRegistry.histogram("bluegreen_call_milliseconds", "Call time", 4, "op", "x");
+    histogram.record(1L);
+    histogram.record(3L);
+    histogram.record(100L);
+
+    assertEquals("# HELP bluegreen_call_milliseconds Call time\n"
+        + "# TYPE bluegreen_call_milliseconds histogram\n"
+        + "bluegreen_call_milliseconds_bucket{op=\"x\",le=\"1\"} 1\n"
+        + "bluegreen_call_milliseconds_bucket{op=\"x\",le=\"2\"} 1\n"
+        + "bluegreen_call_milliseconds_bucket{op=\"x\",le=\"4\"} 2\n"
+        + "bluegreen_call_milliseconds_bucket{op=\"x\",le=\"+Inf\"} 3\n"
+        + "bluegreen_call_milliseconds_sum{op=\"x\"} 104\n"
+        + "bluegreen_call_milliseconds_count{op=\"x\"} 3\n", metricRegistry.formatPrometheus());
+  }
+
+  /**
+   * Metrics made before and after JMX starts are registered, and unregistered when it stops.
+   */
+  @Test
+  public void testJmx() throws Exception
+  {
+    MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    metricRegistry.counter("bluegreen_jmx_total", "Before start", "kind", "a:b").add(4L);
+    metricRegistry.startJmx();
+    metricRegistry.histogram("bluegreen_jmx_milliseconds", "After start").record(7L);
+
+    ObjectName counterName = new ObjectName("bluegreen.manager:type=Metrics,name=bluegreen_jmx_total,kind=\"a:b\"");
+    ObjectName histogramName = new ObjectName("bluegreen.manager:type=Metrics,name=bluegreen_jmx_milliseconds");
+    assertEquals(4L, mBeanServer.getAttribute(counterName, "Count"));
+    assertEquals(7L, mBeanServer.getAttribute(histogramName, "MaxMilliseconds"));
+
+    metricRegistry.stopJmx();
+    assertFalse(mBeanServer.isRegistered(counterName));
+    assertFalse(mBeanServer.isRegistered(histogramName));
+  }
+
+  /**
+   * Gauges are registered as MBeans with a Value attribute.
+   */
+  @Test
+  public void testJmx_Gauge() throws Exception
+  {
+    metricRegistry.startJmx();
+    metricRegistry.gauge("bluegreen_jmx_level", "Level", new Gauge()
+    {
+      @Override
+      public double getValue()
+      {
+        return 3.0;
+      }
+    });
+
+    ObjectName gaugeName = new ObjectName("bluegreen.manager:type=Metrics,name=bluegreen_jmx_level");
+    assertEquals(3.0, ManagementFactory.getPlatformMBeanServer().getAttribute(gaugeName, "Value"));
+  }
+
+  /**
+   * The file is named after the run and holds the Prometheus text.
+   */
+  @Test
+  public void testWriteFile() throws Exception
+  {
+    metricRegistry.setMetricsDir(temporaryFolder.getRoot().getPath() + "/metrics");
+    metricRegistry.counter("bluegreen_things_total", "Things").increment();
+
+    File file = metricRegistry.writeFile("StagingDeployJob");
+
+    assertTrue(file.getName().matches("StagingDeployJob-\\d{8}-\\d{6}-\\d{3}\\.prom"));
+    assertEquals(metricRegistry.formatPrometheus(), FileUtils.readFileToString(file, "UTF-8"));
+  }
+
+  @Test
+  public void testFormatValue()
+  {
+    assertEquals("3", MetricRegistry.formatValue(3.0));
+    assertEquals("0.25", MetricRegistry.formatValue(0.25));
+    assertEquals("NaN", MetricRegistry.formatValue(Double.NaN));
+    assertEquals("+Inf", MetricRegistry.formatValue(Double.POSITIVE_INFINITY));
+  }
+
+  /**
+   * Names that would break a JMX object name are quoted.
+   */
+  @Test
+  public void testMakeObjectName() throws Exception
+  {
+    assertEquals("rds/us-west-2", MetricRegistry.makeObjectName("m", new String[] { "client", "rds/us-west-2" })
+        .getKeyProperty("client"));
+    assertEquals("\"a,b\"", MetricRegistry.makeObjectName("m", new String[] { "k", "a,b" }).getKeyProperty("k"));
+  }
+}
@@ -0,0 +1,72 @@
+package bluegreen.manager.utils;
+
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the line-by-line scanning of shell output.
+ */
+public class ShellOutputScannerTest
+{
+  private static final Pattern PATTERN_ERROR = Pattern.compile("(FATAL|ERROR)");
+  private static final Pattern PATTERN_CAPTURE = Pattern.compile("ip=(\\S+) host=(\\S+)");
+
+  /**
+   * Scanning stops at the first error line.
+   */
+  @Test
+  public void testScanLine_Error()
+  {
+    ShellOutputScanner scanner = new ShellOutputScanner(PATTERN_ERROR, null);
+    assertTrue(scanner.scanLine("all good"));
+    assertFalse(scanner.scanLine("FATAL: disk full"));
+    assertTrue(scanner.isErrorFound());
+    assertEquals("FATAL: disk full", scanner.getErrorLine());
+  }
+
+  /**
+   * Only the most recent lines are kept, but all are counted.
+   */
+  @Test
+  public void testGetRecentOutput_Bounded()
+  {
+    ShellOutputScanner scanner = new ShellOutputScanner(PATTERN_ERROR, null, 2);
+    for (int idx = 1; idx <= 5; ++idx)
+    {
+      scanner.scanLine("line " + idx);
+    }
+    assertEquals("line 4\nline 5\n", scanner.getRecentOutput());
+    assertEquals(5L, scanner.getNumLines());
+    assertFalse(scanner.isErrorFound());
+  }
+
+  /**
+   * The first capture match is kept even after it leaves the recent output.
+   */
+  @Test
+  public void testGetCaptureMatch()
+  {
+    ShellOutputScanner scanner = new ShellOutputScanner(PATTERN_ERROR, PATTERN_CAPTURE, 1);
+    scanner.scanLine("ip=10.0.0.1 host=first");
+    scanner.scanLine("ip=10.0.0.2 host=second");
+    scanner.scanLine("done");
+    MatchResult match = scanner.getCaptureMatch();
+    assertEquals("10.0.0.1", match.group(1));
+    assertEquals("first", match.group(2));
+  }
+
+  @Test
+  public void testGetCaptureMatch_None()
+  {
+    ShellOutputScanner scanner = new ShellOutputScanner(null, PATTERN_CAPTURE);
+    scanner.scanLine("nothing to see");
+    assertNull(scanner.getCaptureMatch());
+  }
+}
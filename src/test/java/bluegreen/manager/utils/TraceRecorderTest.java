@@ -0,0 +1,63 @@
+package bluegreen.manager.utils;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TraceRecorderTest
+{
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private TraceRecorder traceRecorder = new TraceRecorder();
+
+  @After
+  public void tearDown()
+  {
+    Tracing.setCurrent(null);
+  }
+
+  /**
+   * The job span is current while the job runs, and the trace is written to the trace dir when it ends.
+   */
+  @Test
+  public void testJobTrace() throws Exception
+  {
+    File traceDir = new File(temporaryFolder.getRoot(), "traces");
+    traceRecorder.setTraceDir(traceDir.getPath());
+
+    Span jobSpan = traceRecorder.startJobTrace("StagingDeployJob live stage");
+    assertSame(jobSpan, Tracing.getCurrent());
+    Tracing.start("aws", "rds.describeDBInstances").end();
+    File file = traceRecorder.endJobTrace(jobSpan, "DONE");
+
+    assertNull(Tracing.getCurrent());
+    assertEquals(traceDir, file.getParentFile());
+    assertTrue(file.getName().startsWith("StagingDeployJob-live-stage-"));
+    assertTrue(file.getName().endsWith(".trace.json"));
+    String json = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+    assertThat(json, containsString("\"name\":\"rds.describeDBInstances\""));
+    assertThat(json, containsString("\"args\":{\"status\":\"DONE\"}"));
+  }
+
+  /**
+   * A job whose trace was not started (tracing off) writes nothing.
+   */
+  @Test
+  public void testEndJobTrace_NotStarted()
+  {
+    assertNull(traceRecorder.endJobTrace(null, "DONE"));
+  }
+}
@@ -0,0 +1,109 @@
+package bluegreen.manager.utils;
+
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TracingTest
+{
+  @After
+  public void tearDown()
+  {
+    Tracing.setCurrent(null);
+  }
+
+  /**
+   * Outside a trace, spans record nothing and do not become current.
+   */
+  @Test
+  public void testStart_NotTracing()
+  {
+    Span span = Tracing.start("aws", "call");
+    span.addArg("key", "value");
+    span.end();
+
+    assertFalse(span.isRecording());
+    assertNull(span.getTrace());
+    assertNull(Tracing.getCurrent());
+    assertFalse(Tracing.startLane("task", "theTask", "Task #1").isRecording());
+  }
+
+  /**
+   * Started spans become current and nest on their parent's lane; ending a span makes its parent current again.
+   */
+  @Test
+  public void testStart_Nesting()
+  {
+    Span jobSpan = Tracing.startTrace("job", "theJob");
+    Span taskSpan = Tracing.startLane("task", "theTask", "Task #1");
+    Span callSpan = Tracing.start("aws", "call");
+    assertSame(callSpan, Tracing.getCurrent());
+    callSpan.addArg("attempts", 2);
+    callSpan.end();
+    assertSame(taskSpan, Tracing.getCurrent());
+    taskSpan.end();
+    assertSame(jobSpan, Tracing.getCurrent());
+    jobSpan.end();
+    assertNull(Tracing.getCurrent());
+
+    List<Map<String, Object>> events = jobSpan.getTrace().getSpanEvents();
+    assertEquals(3, events.size());
+    assertEquals("call", events.get(0).get("name"));
+    assertEquals("aws", events.get(0).get("cat"));
+    assertEquals("X", events.get(0).get("ph"));
+    assertEquals(2, ((Map) events.get(0).get("args")).get("attempts"));
+    assertEquals(2, events.get(0).get("tid"));
+    assertEquals(2, events.get(1).get("tid"));
+    assertEquals(1, events.get(2).get("tid"));
+    assertTrue((Long) events.get(2).get("dur") >= (Long) events.get(1).get("dur"));
+  }
+
+  /**
+   * Ending a span twice records it once.
+   */
+  @Test
+  public void testEnd_Twice()
+  {
+    Span jobSpan = Tracing.startTrace("job", "theJob");
+    jobSpan.end();
+    jobSpan.end();
+
+    assertEquals(1, jobSpan.getTrace().getNumSpans());
+  }
+
+  /**
+   * The trace is written as a Chrome trace-event object, with the process and lanes named.
+   */
+  @Test
+  public void testWriteJson() throws Exception
+  {
+    Span jobSpan = Tracing.startTrace("job", "theJob \"live\"");
+    Tracing.startLane("task", "theTask", "Task #1").end();
+    jobSpan.end();
+    StringWriter writer = new StringWriter();
+
+    jobSpan.getTrace().writeJson(writer);
+
+    Map json = new Gson().fromJson(writer.toString(), Map.class);
+    List<Map> traceEvents = (List<Map>) json.get("traceEvents");
+    assertEquals(7, traceEvents.size());
+    assertEquals("process_name", traceEvents.get(0).get("name"));
+    assertEquals("theJob \"live\"", ((Map) traceEvents.get(0).get("args")).get("name"));
+    assertEquals("thread_name", traceEvents.get(3).get("name"));
+    assertEquals("Task #1", ((Map) traceEvents.get(3).get("args")).get("name"));
+    assertEquals("theTask", traceEvents.get(5).get("name"));
+    assertEquals("theJob \"live\"", traceEvents.get(6).get("name"));
+    assertEquals("ms", json.get("displayTimeUnit"));
+  }
+}
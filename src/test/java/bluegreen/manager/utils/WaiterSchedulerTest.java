@@ -0,0 +1,221 @@
+package bluegreen.manager.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the non-blocking waiter engine with fake progress checkers.
+ */
+public class WaiterSchedulerTest
+{
+  private static final WaiterParameters FAST_WAITER_PARAMS = new WaiterParameters(5L, 5L, 100, 20);
+  private static final long TEST_TIMEOUT_SECONDS = 10L;
+
+  private WaiterScheduler waiterScheduler = new WaiterScheduler();
+
+  @Before
+  public void setUp()
+  {
+    waiterScheduler.setPoolSize(1);
+    waiterScheduler.startScheduler();
+  }
+
+  @After
+  public void tearDown()
+  {
+    waiterScheduler.stopScheduler();
+    Tracing.setCurrent(null);
+  }
+
+  /**
+   * Many concurrent waits share a single scheduler thread and all reach their results.
+   */
+  @Test
+  public void testSubmit_ManyWaitsOneThread() throws Exception
+  {
+    final int numWaits = 50;
+    List<Future<String>> futures = new ArrayList<Future<String>>();
+    for (int idx = 0; idx < numWaits; ++idx)
+    {
+      futures.add(waiterScheduler.submit(FAST_WAITER_PARAMS, new FakeProgressChecker("op" + idx, 1 + idx % 5)));
+    }
+    for (int idx = 0; idx < numWaits; ++idx)
+    {
+      assertEquals("op" + idx + " done", futures.get(idx).get(TEST_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+    assertEquals(0, waiterScheduler.getNumActiveWaits());
+  }
+
+  /**
+   * A wait that never finishes yields the timeout result after max num waits.
+   */
+  @Test
+  public void testSubmit_Timeout() throws Exception
+  {
+    FakeProgressChecker progressChecker = new FakeProgressChecker("slow", 1000);
+    Future<String> future = waiterScheduler.submit(new WaiterParameters(1L, 1L, 100, 3), progressChecker);
+
+    assertEquals("slow timeout", future.get(TEST_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    assertEquals(4, progressChecker.numChecks);
+  }
+
+  /**
+   * An exception from the progress checker fails the future.
+   */
+  @Test
+  public void testSubmit_Throw() throws Exception
+  {
+    FakeProgressChecker progressChecker = new FakeProgressChecker("broken", 2);
+    progressChecker.throwOnCheck = 2;
+    Future<String> future = waiterScheduler.submit(FAST_WAITER_PARAMS, progressChecker);
+    try
+    {
+      future.get(TEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      fail();
+    }
+    catch (ExecutionException e)
+    {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  /**
+   * Cancelling the future stops further checks.
+   */
+  @Test
+  public void testSubmit_Cancel() throws Exception
+  {
+    FakeProgressChecker progressChecker = new FakeProgressChecker("cancelled", 1000);
+    Future<String> future = waiterScheduler.submit(new WaiterParameters(5L, 5L, 100, 1000), progressChecker);
+    Thread.sleep(30L);
+    assertTrue(future.cancel(false));
+    Thread.sleep(30L);
+    final int numChecks = progressChecker.numChecks;
+    Thread.sleep(30L);
+
+    assertEquals(numChecks, progressChecker.numChecks);
+    assertFalse(progressChecker.isDone());
+    assertTrue(future.isCancelled());
+    assertTrue(future.isDone());
+    assertFalse(future.cancel(false));
+    try
+    {
+      future.get(TEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      fail();
+    }
+    catch (CancellationException e)
+    {
+      //Expected
+    }
+  }
+
+  /**
+   * A submitted wait is traced on its own lane under the submitter's span, with the spans of its checks nested in it.
+   */
+  @Test
+  public void testSubmit_Trace() throws Exception
+  {
+    Span taskSpan = Tracing.startTrace("task", "theTask");
+    FakeProgressChecker progressChecker = new FakeProgressChecker("traced", 3);
+    progressChecker.traceChecks = true;
+    Future<String> future = waiterScheduler.submit(FAST_WAITER_PARAMS, progressChecker);
+    future.get(TEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    taskSpan.end();
+
+    assertEquals(null, Tracing.getCurrent());
+    List<Map<String, Object>> events = taskSpan.getTrace().getSpanEvents();
+    assertEquals(5, events.size());
+    Map<String, Object> waitEvent = events.get(3);
+    assertEquals("traced", waitEvent.get("name"));
+    assertEquals("wait", waitEvent.get("cat"));
+    assertEquals(3, ((Map) waitEvent.get("args")).get("checks"));
+    assertNotEquals(events.get(4).get("tid"), waitEvent.get("tid"));
+    for (int idx = 0; idx < 3; ++idx)
+    {
+      assertEquals("check", events.get(idx).get("name"));
+      assertEquals(waitEvent.get("tid"), events.get(idx).get("tid"));
+    }
+  }
+
+  /**
+   * Done after a fixed number of checks.
+   */
+  private static class FakeProgressChecker implements ProgressChecker<String>
+  {
+    private final String name;
+    private final int numChecksUntilDone;
+    private volatile int numChecks;
+    private int throwOnCheck = -1;
+    private boolean traceChecks;
+
+    private FakeProgressChecker(String name, int numChecksUntilDone)
+    {
+      this.name = name;
+      this.numChecksUntilDone = numChecksUntilDone;
+    }
+
+    @Override
+    public String getDescription()
+    {
+      return name;
+    }
+
+    @Override
+    public void initialCheck()
+    {
+      check();
+    }
+
+    @Override
+    public void followupCheck(int waitNum)
+    {
+      check();
+    }
+
+    private void check()
+    {
+      if (traceChecks)
+      {
+        Tracing.start("aws", "check").end();
+      }
+      ++numChecks;
+      if (numChecks == throwOnCheck)
+      {
+        throw new IllegalStateException("fake failure");
+      }
+    }
+
+    @Override
+    public boolean isDone()
+    {
+      return numChecks >= numChecksUntilDone;
+    }
+
+    @Override
+    public String getResult()
+    {
+      return name + " done";
+    }
+
+    @Override
+    public String timeout()
+    {
+      return name + " timeout";
+    }
+  }
+}